@@ -123,19 +123,19 @@ java_type = {
 def get_java_type(type):
     return java_type[type]
 
-random_value_function = {
-    'int8':   'Utils.getRandomByte()',
-    'uint8':  'Utils.getRandomShort()',
-    'int16':  'Utils.getRandomShort()',
-    'uint16': 'Utils.getRandomInt()',
-    'int32':  'Utils.getRandomInt()',
-    'uint32': 'Utils.getRandomLong()',
-    'int64':  'Utils.getRandomLong()',
-    'uint64': 'Utils.getRandomLong()',
-    'float':  'Utils.getRandomFloat()',
-    'bool':   'Utils.getRandomBoolean()',
-    'char':   'Utils.getRandomChar()',
-    'string': 'Utils.getRandomString()'
+default_value_function = {
+    'int8':   'Utils.getDefaultByte()',
+    'uint8':  'Utils.getDefaultShort()',
+    'int16':  'Utils.getDefaultShort()',
+    'uint16': 'Utils.getDefaultInt()',
+    'int32':  'Utils.getDefaultInt()',
+    'uint32': 'Utils.getDefaultLong()',
+    'int64':  'Utils.getDefaultLong()',
+    'uint64': 'Utils.getDefaultLong()',
+    'float':  'Utils.getDefaultFloat()',
+    'bool':   'Utils.getDefaultBoolean()',
+    'char':   'Utils.getDefaultChar()',
+    'string': 'Utils.getDefaultString()'
 }
 
 random_value_function_4test = {
@@ -154,8 +154,8 @@ random_value_function_4test = {
 }
 
 
-def get_random_value_function(datatype):
-    return random_value_function[datatype]
+def get_default_value_function(datatype):
+    return default_value_function[datatype]
 
 def get_random_value_function_4test(datatype):
     return random_value_function_4test[datatype]
@@ -191,8 +191,8 @@ class JavaElement(common.Element):
         'string': 'byte'
     }
 
-    def get_random_value_function(self):
-        return get_random_value_function(self.get_type())
+    def get_default_value_function(self):
+        return get_default_value_function(self.get_type())
     
     def get_java_type(self):
         return get_java_type(self.get_type())
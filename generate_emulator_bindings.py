@@ -31,6 +31,9 @@ import common
 import emulator_common
 import emulator_license
 
+def down_case_first(name):
+    return name[0].lower() + name[1:]
+
 class JavaBindingsDevice(emulator_common.JavaDevice):
     def get_generated_hint_docstring(self):
         hint = """
@@ -44,32 +47,46 @@ class JavaBindingsDevice(emulator_common.JavaDevice):
         return hint
 
     def get_java_import(self):
+        callback_imports = ''
+        if self.get_period_callbacks():
+            callback_imports = """import org.m1theo.tfemulator.callbacks.CallbackScheduler;
+import org.m1theo.tfemulator.callbacks.PeriodicCallback;
+"""
+        if self.get_threshold_callbacks():
+            callback_imports += """import org.m1theo.tfemulator.callbacks.ThresholdCallback;
+import org.m1theo.tfemulator.callbacks.ValueType;
+"""
+        value_imports = ''
+        callback_values = [packet for packet, setter_name, field_name in self.get_period_callbacks()
+                           if packet.uses_value_sources()]
+        if self.get_value_sensors() or callback_values or self.get_threshold_callbacks():
+            value_imports = 'import org.m1theo.tfemulator.values.ValueSource;\n'
         include = """
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
-import org.m1theo.tfemulator.protocol.Packet;
-"""
-        return include
+{0}import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+{1}"""
+        return include.format(callback_imports, value_imports)
 
     def get_java_class(self):
         class_str = """
 /**
  * {1}
  */
-public class {0} extends AbstractVerticle {{
+public class {0} extends Device {{
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = {2};
 public final static String DEVICE_DISPLAY_NAME = "{3}";
@@ -84,7 +101,147 @@ public final static String DEVICE_DISPLAY_NAME = "{3}";
     def get_start_method_end(self):
         cbs_end = '  }\n'
         return cbs_end
+
+    def get_stop_method(self):
+        stop = """
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {{
+{0}    router().unregister(uidBytes);
+  }}
+"""
+        cancel = '    {0}Callback.setPeriod(0);\n'
+        disable = '    {0}Callback.disable();\n'
+        cancels = ''
+        for packet, setter_name, field in self.get_period_callbacks():
+            cancels += cancel.format(down_case_first(packet.get_camel_case_name()))
+        for packet, setter_name, field in self.get_threshold_callbacks():
+            cancels += disable.format(down_case_first(packet.get_camel_case_name()))
+        return stop.format(cancels)
+
+    def get_period_callbacks(self):
+        # the periodic callbacks and the setters of their periods, e.g. CALLBACK_TEMPERATURE and
+        # setTemperatureCallbackPeriod, Bricks use setAccelerationPeriod
+        setters = {}
+        setters.update(self.get_actors())
+        setters.update(self.get_callback_setters())
+        callbacks = []
+        for packet in self.get_packets('callback'):
+            name = packet.get_camel_case_name()
+            if name.endswith('Reached'):
+                continue
+            for setter_name in ('set' + name + 'CallbackPeriod', 'set' + name + 'Period'):
+                if setter_name in setters:
+                    callbacks.append((packet, setter_name, setters[setter_name][1]))
+        return callbacks
+
+    def get_threshold_callbacks(self):
+        # the *_REACHED callbacks and the setters of their thresholds, e.g.
+        # CALLBACK_TEMPERATURE_REACHED and setTemperatureCallbackThreshold. Thresholds with a
+        # channel or sensor index in front of the option are skipped, the emulated devices keep
+        # only one value per function.
+        setters = self.get_callback_setters()
+        callbacks = []
+        for packet in self.get_packets('callback'):
+            name = packet.get_camel_case_name()
+            if not name.endswith('Reached'):
+                continue
+            setter_name = 'set' + name[:-len('Reached')] + 'CallbackThreshold'
+            if setter_name not in setters:
+                continue
+            if setters[setter_name][0].get_elements('in')[0].get_type() != 'char':
+                continue
+            callbacks.append((packet, setter_name, setters[setter_name][1]))
+        return callbacks
+
+    def get_callback_fields(self):
+        field = '  private PeriodicCallback {0}Callback;\n'
+        threshold_field = '  private ThresholdCallback {0}Callback;\n'
+        fields = ''
+        for packet, setter_name, field_name in self.get_period_callbacks():
+            fields += field.format(down_case_first(packet.get_camel_case_name()))
+        for packet, setter_name, field_name in self.get_threshold_callbacks():
+            fields += threshold_field.format(down_case_first(packet.get_camel_case_name()))
+        return fields
+
+    def get_callback_start(self):
+        callbacks = self.get_period_callbacks()
+        if not callbacks:
+            return ''
+        start = '\n    CallbackScheduler scheduler = CallbackScheduler.get(vertx);\n'
+        create = """    {0}Callback = scheduler.newCallback(router, uidBytes, CALLBACK_{1}, 8 + {2}, out -> {{
+{3}    }});
+"""
+        create_threshold = """    {0}Callback = scheduler.newThresholdCallback(router, uidBytes, CALLBACK_{1},
+        ValueType.{2}, {3}, values -> {{
+{4}        }});
+"""
+        # the getter and the callbacks of a value share its sources (one sample per clock time), a
+        # callback without a getter asks for them itself
+        sources = '    ValueSource[] {0}Values = valueSources("{0}", {1});\n'
+        value_fields = set(name for packet, name in self.get_value_sensors())
+        for packet, setter_name, field_name in callbacks:
+            name = down_case_first(packet.get_camel_case_name())
+            value_name = self.get_value_name(packet.get_camel_case_name())
+            writes, bufferbytes = packet.get_emulator_writer_calls(value_name + 'Values')
+            if packet.uses_value_sources() and value_name not in value_fields:
+                start += sources.format(value_name, len(packet.get_elements('out')))
+                value_fields.add(value_name)
+            start += create.format(name,
+                                   packet.get_upper_case_name(),
+                                   bufferbytes,
+                                   writes.replace('writer.', 'out.'))
+        for packet, setter_name, field_name in self.get_threshold_callbacks():
+            name = down_case_first(packet.get_camel_case_name())
+            value_name = self.get_value_name(packet.get_camel_case_name()[:-len('Reached')])
+            value_type, count, samples = packet.get_emulator_sampler(value_name + 'Values')
+            if value_name not in value_fields:
+                start += sources.format(value_name, len(packet.get_elements('out')))
+                value_fields.add(value_name)
+            start += create_threshold.format(name,
+                                             packet.get_upper_case_name(),
+                                             value_type,
+                                             count,
+                                             samples)
+        return start
     
+    def get_value_name(self, name):
+        # the name of the values of a callback in the device config, the one of the matching getter
+        # getX or getXValue (e.g. DistanceUS), the callbacks report the same value
+        sensors = self.get_sensors()
+        for getter in ('get' + name, 'get' + name + 'Value'):
+            if getter in sensors:
+                return down_case_first(getter[3:])
+        return down_case_first(name)
+
+    def get_value_sensors(self):
+        # the sensor getters with values from a ValueSource and the name of their values
+        sensors = self.get_sensors()
+        value_sensors = []
+        for key in sensors.keys():
+            packet = sensors[key]
+            if packet.uses_value_sources():
+                value_sensors.append((packet, down_case_first(packet.get_camel_case_name()[3:])))
+        return value_sensors
+
+    def get_value_fields(self):
+        field = '  private ValueSource[] {0}Values;\n'
+        fields = ''
+        for packet, name in self.get_value_sensors():
+            fields += field.format(name)
+        return fields
+
+    def get_value_start(self):
+        init = '    {0}Values = valueSources("{0}", {1});\n'
+        start = ''
+        for packet, name in self.get_value_sensors():
+            start += init.format(name, len(packet.get_elements('out')))
+        if start:
+            start = '\n' + start
+        return start
+
     def get_java_class_end(self):
         cbs_end = '}\n'
         return cbs_end
@@ -170,67 +327,57 @@ public final static String DEVICE_DISPLAY_NAME = "{3}";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + {0}.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
-
-    vertx.eventBus().consumer(uidString, message -> {{
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {{}}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {{
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {{
-            if (buffer != null) {{
-              logger.trace(
-                  "sending answer: {{}}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            }} else {{
-              logger.trace("buffer is null");
-            }}
+    Router router = router();
+{values}{callbacks}
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {{
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {{
+        if (buffer != null) {{
+          if (trace.sampled()) {{
+            trace.sent(buffer, handlerid);
+          }}
+          vertx.eventBus().send(handlerid, buffer);
+        }} else if (logger.isTraceEnabled()) {{
+          logger.trace("buffer is null");
         }}
       }}
       }});
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {{
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {{
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {{
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }}
-          }} else {{
-            logger.error("no handlerids found");
-          }}
-        }});
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
 
 """
 
-        return con.format(self.get_java_class_name(), *self.get_api_version())
+        return con.format(self.get_java_class_name(), *self.get_api_version(),
+                          values=self.get_value_start(),
+                          callbacks=self.get_callback_start())
 
     def get_call_function(self):
         ifelse = ""
+        # the case labels are dense, javac compiles the switch to a tableswitch
         funcstart = """
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }"""
+    switch (functionId) {"""
 
         func = """
-    else if (functionId == FUNCTION_{1}) {{
-      buffer = {0}(packet);
-    }}"""
+      case FUNCTION_{1}:
+        buffer = {0}(packet);
+        break;"""
 
         funcend = """
-    else {
-      // TODO: raise Exception or log error
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -271,18 +418,18 @@ public final static String DEVICE_DISPLAY_NAME = "{3}";
    * 
    */
   private Buffer {0}(Packet packet) {{
-    logger.debug("function {0}");
-    if (packet.getResponseExpected()) {{
+    if (logger.isDebugEnabled()) {{
+      logger.debug("function {0}");
+    }}
+{4}    if (packet.getResponseExpected()) {{
       byte length = (byte) 8 + {3};
       byte functionId = FUNCTION_{1};
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 {2}
-      return buffer;
+      return writer.buffer();
     }}
-{4}
+
     return null;
   }}
 """
@@ -293,7 +440,7 @@ public final static String DEVICE_DISPLAY_NAME = "{3}";
   }}
 """
 
-        value_buffer = '      buffer.appendBuffer(this.{0});'
+        value_buffer = '      writer.writeBuffer(this.{0});'
         set_field = ''
         
         cls = self.get_camel_case_name()
@@ -304,11 +451,12 @@ public final static String DEVICE_DISPLAY_NAME = "{3}";
     #for packet in self.get_packets('function'):
             name_lower = packet.get_headless_camel_case_name()
             name_upper = packet.get_upper_case_name()
-            buffers, bufferbytes = packet.get_emulator_return_values()
+            writes, bufferbytes = packet.get_emulator_writer_calls(
+                down_case_first(packet.get_camel_case_name()[3:]) + 'Values')
 
             methods += method.format(name_lower,
                                      name_upper,
-                                     buffers, 
+                                     writes, 
                                      bufferbytes,
                                      set_field)
         actor_getters = {}
@@ -334,9 +482,33 @@ public final static String DEVICE_DISPLAY_NAME = "{3}";
         setter.update(self.get_callback_setters())
         setter.update(self.get_enablers())
         setter.update(self.get_disablers())
+        period_setters = {}
+        for packet, setter_name, field_name in self.get_period_callbacks():
+            period_setters[setter_name] = down_case_first(packet.get_camel_case_name())
+        threshold_setters = {}
+        for packet, setter_name, field_name in self.get_threshold_callbacks():
+            threshold_setters[setter_name] = down_case_first(packet.get_camel_case_name())
+        # a request with a payload of another size gets an error response, nothing is stored or
+        # decoded
+        guard = """    if (packet.getLength() - 8 != {0}) {{
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }}
+"""
         for key in setter.keys():
             packet = setter[key][0]
-            set_field = '    this.{0} = packet.getPayload();'.format(setter[key][1])
+            set_field = guard.format(packet.get_emulator_request_size())
+            # store the value before answering, the bindings expect a response for most setters
+            set_field += '    this.{0} = packet.copyPayload();\n'.format(setter[key][1])
+            if key in period_setters:
+                set_field += '    {0}Callback.setPeriod(Utils.decodeUInt32(this.{1}, 0));\n'.format(
+                    period_setters[key], setter[key][1])
+            if key in threshold_setters:
+                set_field += '    {0}Callback.setThreshold(this.{1});\n'.format(
+                    threshold_setters[key], setter[key][1])
+            if key == 'setDebouncePeriod':
+                for name in sorted(threshold_setters.values()):
+                    set_field += '    {0}Callback.setDebounce(Utils.decodeUInt32(this.{1}, 0));\n'.format(
+                        name, setter[key][1])
             value_field = '//TODO response expected bei settern'
             name_lower = packet.get_headless_camel_case_name()
             name_upper = packet.get_upper_case_name()
@@ -351,7 +523,7 @@ public final static String DEVICE_DISPLAY_NAME = "{3}";
         for key in getIdentity.keys():
             packet = getIdentity[key]
             set_field = ''
-            value_field = '       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));'
+            value_field = '      writer.writeBuffer(identityPayload());'
             name_lower = packet.get_headless_camel_case_name()
             name_upper = packet.get_upper_case_name()
             bufferbytes = packet.get_emulator_return_values()[1]
@@ -779,6 +951,8 @@ public class {0}Test {{
         source += self.get_java_function_id_definitions()
         source += self.get_java_constants()
         source += self.get_emulator_actor_fields()
+        source += self.get_value_fields()
+        source += self.get_callback_fields()
         
         #TODO: I think listeners are not needed
         #source += self.get_java_listener_lists()
@@ -797,6 +971,7 @@ public class {0}Test {{
         # TODO: remove listener definitions for now
         #source += self.get_java_callback_listener_definitions()
         source += self.get_start_method_end()
+        source += self.get_stop_method()
 
         source += self.get_call_function()
 
@@ -831,17 +1006,17 @@ class JavaBindingsPacket(emulator_common.JavaPacket):
                 return_type = element.get_java_type()
                 if element.get_cardinality() > 1:
                     return_type += '[]'
-                    test_values += test_assert_arr.format(element.get_random_value_function(), value_field)
+                    test_values += test_assert_arr.format(element.get_default_value_function(), value_field)
                 else:
-                    test_values += test_assert.format(element.get_random_value_function(), value_field)
+                    test_values += test_assert.format(element.get_default_value_function(), value_field)
         elif len(self.get_elements('out')) > 1:
             value_field = '.{0}'
             for element in self.get_elements('out'):
                 if element.get_cardinality() > 1 and element.get_type() != 'string':
-                    test_values += test_assert_arr.format(element.get_random_value_function(),
+                    test_values += test_assert_arr.format(element.get_default_value_function(),
                                                           value_field.format(element.get_headless_camel_case_name()))
                 else:
-                    test_values += test_assert.format(element.get_random_value_function(), 
+                    test_values += test_assert.format(element.get_default_value_function(), 
                                                   value_field.format(element.get_headless_camel_case_name()))
         if len(self.get_elements('in')) != 0:
             for element in self.get_elements('in'):
@@ -859,42 +1034,110 @@ class JavaBindingsPacket(emulator_common.JavaPacket):
         for element in self.get_elements('out'):
             call = ""
             if element.get_type() == 'int8':
-                call = 'Utils.get1ByteRandomValue({0})'
+                call = 'Utils.get1ByteDefaultValue({0})'
                 bufferbytes += 1 * element.get_cardinality()
             elif element.get_type() == 'uint8':
-                call = 'Utils.get1ByteURandomValue({0})'
+                call = 'Utils.get1ByteUDefaultValue({0})'
                 bufferbytes += 1 * element.get_cardinality()
             elif element.get_type() == 'int16':
-                call = 'Utils.get2ByteRandomValue({0})'
+                call = 'Utils.get2ByteDefaultValue({0})'
                 bufferbytes += 2 * element.get_cardinality()
             elif element.get_type() == 'uint16':
-                call = 'Utils.get2ByteURandomValue({0})'
+                call = 'Utils.get2ByteUDefaultValue({0})'
                 bufferbytes += 2 * element.get_cardinality()
             elif element.get_type() == 'int32':
-                call = 'Utils.get4ByteRandomValue({0})'
+                call = 'Utils.get4ByteDefaultValue({0})'
                 bufferbytes += 4 * element.get_cardinality()
             elif element.get_type() == 'uint32':
-                call = 'Utils.get4ByteURandomValue({0})'
+                call = 'Utils.get4ByteUDefaultValue({0})'
                 bufferbytes += 4 * element.get_cardinality()
             elif element.get_type() == 'uint64':
-                call = 'Utils.get8ByteURandomValue({0})'
+                call = 'Utils.get8ByteUDefaultValue({0})'
                 bufferbytes += 8 * element.get_cardinality()
             elif element.get_type() == 'bool':
-                call = 'Utils.getBoolRandomValue({0})'
+                call = 'Utils.getBoolDefaultValue({0})'
                 bufferbytes += 1 * element.get_cardinality()
             elif element.get_type() == 'char':
-                call = 'Utils.getCharRandomValue(1)'
+                call = 'Utils.getCharDefaultValue(1)'
                 bufferbytes += 1 * element.get_cardinality()
             elif element.get_type() == 'string':
-                call = 'Utils.getCharRandomValue({0})'
+                call = 'Utils.getCharDefaultValue({0})'
                 bufferbytes += 1 * element.get_cardinality()
             elif element.get_type() == 'float':
-                call = 'Utils.getFloatRandomValue({0})'
+                call = 'Utils.getFloatDefaultValue({0})'
                 bufferbytes += 4 * element.get_cardinality()
             
             buffers += buff.format(call.format(element.get_cardinality()))
         return buffers, bufferbytes
 
+    # per element type: the ResponseWriter method, the Utils value, the size and the cast of a
+    # ValueSource value (None for values that don't come from a ValueSource)
+    emulator_writes = {'int8': ('writeInt8', 'getDefaultByte', 1, 'byte'),
+                       'uint8': ('writeUInt8', 'getDefaultShort', 1, 'short'),
+                       'int16': ('writeInt16', 'getDefaultShort', 2, 'short'),
+                       'uint16': ('writeUInt16', 'getDefaultInt', 2, 'int'),
+                       'int32': ('writeInt32', 'getDefaultInt', 4, 'int'),
+                       'uint32': ('writeUInt32', 'getDefaultLong', 4, 'long'),
+                       'uint64': ('writeUInt64', 'getDefaultLong', 8, 'long'),
+                       'bool': ('writeBool', 'getDefaultBoolean', 1, None),
+                       'char': ('writeChar', 'getDefaultChar', 1, None),
+                       'string': ('writeChar', 'getDefaultChar', 1, None),
+                       'float': ('writeFloat', 'getDefaultFloat', 4, 'float')}
+
+    def get_emulator_writer_calls(self, sources=None):
+        # same values as get_emulator_return_values, written in place by the ResponseWriter. With
+        # sources the numbers come from the ValueSources of the device, one source per element.
+        bufferbytes = 0
+        writes = ""
+        write = """      writer.{0}(Utils.{1}(), {2});
+"""
+        source_write = """      writer.{0}(({1}) {2}[{3}].next(), {4});
+"""
+        for index, element in enumerate(self.get_elements('out')):
+            method, value, size, cast = self.emulator_writes[element.get_type()]
+            cardinality = element.get_cardinality()
+            bufferbytes += size * cardinality
+            if element.get_type() == 'char':
+                # one char, repeated would be a string
+                writes += write.format(method, value, 1)
+            elif sources is not None and cast is not None:
+                writes += source_write.format(method, cast, sources, index, cardinality)
+            else:
+                writes += write.format(method, value, cardinality)
+        return writes, bufferbytes
+
+    def get_emulator_request_size(self):
+        # the payload size of a request, the sizes of the 'in' elements
+        size = 0
+        for element in self.get_elements('in'):
+            size += self.emulator_writes[element.get_type()][2] * element.get_cardinality()
+        return size
+
+    def uses_value_sources(self):
+        for element in self.get_elements('out'):
+            if self.emulator_writes[element.get_type()][3] is not None:
+                return True
+        return False
+
+    def get_emulator_sampler(self, sources):
+        # the values of a *_REACHED callback for the ThresholdCallback, all of them have one type
+        value_types = {'int8': 'INT8', 'uint8': 'UINT8', 'int16': 'INT16', 'uint16': 'UINT16',
+                       'int32': 'INT32', 'uint32': 'UINT32'}
+        sample = """          values[{0}] = (long) {1}[{2}].next();
+"""
+        types = set()
+        count = 0
+        samples = ''
+        for index, element in enumerate(self.get_elements('out')):
+            value_type = value_types[element.get_type()]
+            types.add(value_type)
+            for i in range(element.get_cardinality()):
+                samples += sample.format(count, sources, index)
+                count += 1
+        if len(types) != 1:
+            raise Exception('mixed threshold types in ' + self.get_camel_case_name())
+        return types.pop(), count, samples
+
 class JavaBindingsGenerator(common.BindingsGenerator):
     released_files_name_prefix = 'generator'
     testsubdir = os.path.join('tfemulator', 'src', 'test', 'java', 'org', 'm1theo', 'tfemulator', 'tests')
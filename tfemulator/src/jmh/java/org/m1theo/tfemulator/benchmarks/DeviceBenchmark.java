@@ -0,0 +1,125 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator.benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.devices.BrickletTemperature;
+import org.m1theo.tfemulator.protocol.Packet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+
+/*
+ * callFunction of a generated device, the Temperature Bricklet, for a getter of a sensor value, a
+ * getter and a setter of a configuration value, a setter that reschedules a callback and
+ * getIdentity. Only the device is measured, the answer is not sent.
+ *
+ * callFunction is private, the benchmark calls it through a method handle on the benchmark thread.
+ * The callbacks are changed through the scheduler like from the device context.
+ *
+ * mvn -Pjmh compile exec:exec -Djmh.args="DeviceBenchmark -prof gc"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DeviceBenchmark {
+  private final static String UID = "e9";
+
+  @Param({"getTemperature", "getTemperatureCallbackPeriod", "setI2CMode",
+      "setTemperatureCallbackPeriod", "getIdentity"})
+  String function;
+
+  Vertx vertx;
+  BrickletTemperature device;
+  MethodHandle callFunction;
+  Packet packet;
+
+  @Setup
+  public void setup() throws Throwable {
+    vertx = Vertx.vertx();
+    device = new BrickletTemperature();
+    CompletableFuture<String> deployed = new CompletableFuture<>();
+    vertx.deployVerticle(device,
+        new DeploymentOptions().setConfig(new JsonObject().put("uid", UID)), result -> {
+          if (result.succeeded()) {
+            deployed.complete(result.result());
+          } else {
+            deployed.completeExceptionally(result.cause());
+          }
+        });
+    deployed.get(10, TimeUnit.SECONDS);
+    Method method = BrickletTemperature.class.getDeclaredMethod("callFunction", Packet.class);
+    method.setAccessible(true);
+    callFunction = MethodHandles.lookup().unreflect(method);
+    packet = new Packet(request());
+  }
+
+  private Buffer request() {
+    long uid = Utils.uid2long(UID);
+    switch (function) {
+      case "getTemperature":
+        return Utils.createHeader(uid, (byte) 8, BrickletTemperature.FUNCTION_GET_TEMPERATURE,
+            (byte) 0x18, (byte) 0);
+      case "getTemperatureCallbackPeriod":
+        return Utils.createHeader(uid, (byte) 8,
+            BrickletTemperature.FUNCTION_GET_TEMPERATURE_CALLBACK_PERIOD, (byte) 0x18, (byte) 0);
+      case "setI2CMode":
+        return Utils.createHeader(uid, (byte) 9, BrickletTemperature.FUNCTION_SET_I2C_MODE,
+            (byte) 0x18, (byte) 0).appendByte((byte) 1);
+      case "setTemperatureCallbackPeriod":
+        return Utils.createHeader(uid, (byte) 12,
+            BrickletTemperature.FUNCTION_SET_TEMPERATURE_CALLBACK_PERIOD, (byte) 0x18, (byte) 0)
+            .appendInt(0);
+      default:
+        return Utils.createHeader(uid, (byte) 8, BrickletTemperature.FUNCTION_GET_IDENTITY,
+            (byte) 0x18, (byte) 0);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    vertx.close();
+  }
+
+  @Benchmark
+  public Buffer callFunction() throws Throwable {
+    return (Buffer) callFunction.invokeExact(device, packet);
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.protocol.FrameDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.buffer.Buffer;
+
+/*
+ * Decodes a read buffer of PACKETS requests and reads the header fields a device needs, once with
+ * the flyweight Packet on the FrameDecoder and once with a copy per frame and an eagerly parsed
+ * packet like before.
+ *
+ * Run with -prof gc to see the allocation per operation:
+ * mvn -Pjmh compile exec:exec -Djmh.args="PacketBenchmark -prof gc"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PacketBenchmark {
+  private final static int PACKETS = 16;
+
+  Buffer chunk;
+  FrameDecoder decoder;
+  int sink;
+
+  @Setup
+  public void setup() {
+    chunk = Buffer.buffer();
+    for (int i = 0; i < PACKETS; i++) {
+      if (i % 4 == 3) {
+        // a setter with a 4 byte payload
+        chunk.appendBuffer(
+            Utils.createHeader(100000 + i, (byte) 12, (byte) 2, (byte) 0x10, (byte) 0))
+            .appendInt(1000);
+      } else {
+        chunk.appendBuffer(
+            Utils.createHeader(100000 + i, (byte) 8, (byte) 1, (byte) 0x18, (byte) 0));
+      }
+    }
+    decoder = new FrameDecoder(packet -> {
+      sink += packet.getUidValue() + packet.getFunctionId() + packet.getOptions()
+          + (packet.getResponseExpected() ? 1 : 0);
+    });
+  }
+
+  @Benchmark
+  public int decodeFlyweight() {
+    decoder.handle(chunk);
+    return sink;
+  }
+
+  @Benchmark
+  public void decodeCopying(Blackhole bh) {
+    ByteBuf in = chunk.getByteBuf();
+    while (in.isReadable()) {
+      int length = in.getUnsignedByte(in.readerIndex() + FrameDecoder.LENGTH_OFFSET);
+      LegacyPacket packet = new LegacyPacket(Buffer.buffer(in.slice(in.readerIndex(), length)));
+      bh.consume(packet.uid);
+      bh.consume(packet.functionId);
+      bh.consume(packet.options);
+      bh.consume(packet.responseExpected);
+      in.skipBytes(length);
+    }
+  }
+
+  /*
+   * The packet as it was parsed before the flyweight: every field copied out of the frame.
+   */
+  static class LegacyPacket {
+    String uid;
+    Buffer length;
+    byte functionId;
+    byte options;
+    byte sequenceNumber;
+    boolean responseExpected;
+    Buffer errorCode;
+    Buffer payload;
+
+    LegacyPacket(Buffer buffer) {
+      byte[] data = buffer.getBytes();
+      ByteBuffer bb = ByteBuffer.wrap(data, 0, 4);
+      bb.order(ByteOrder.LITTLE_ENDIAN);
+      uid = Utils.base58Encode(bb.getInt());
+      length = Buffer.buffer();
+      length.appendByte(data[4]);
+      functionId = data[5];
+      options = data[6];
+      sequenceNumber = (byte) ((data[6] >> 4) & 0x0F);
+      responseExpected = ((data[6] >> 3) & 0x01) == 0x01;
+      errorCode = Buffer.buffer();
+      errorCode.appendByte((byte) ((data[7] >> 6) & 0x03));
+      if (data.length > 8) {
+        payload = Buffer.buffer();
+        payload.appendBytes(data, 8, data.length - 8);
+      }
+    }
+  }
+}
@@ -0,0 +1,201 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.m1theo.tfemulator.Router;
+import org.m1theo.tfemulator.UidMap;
+import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.protocol.Packet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.runner.IterationType;
+
+import com.sun.management.ThreadMXBean;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.EventBus;
+
+/*
+ * Compares the uid table of the Router with the former routing over base58 eventbus addresses.
+ *
+ * The resolve benchmarks only measure how the destination of a packet is found, the route
+ * benchmarks include handing the packet over to the device. Like in Brickd the handlers of
+ * routeUidTable are registered from a verticle and run on its context, so each packet goes through
+ * the inbox of the context, up to WINDOW packets are in flight. routeUidTable fails a measurement
+ * iteration that allocates more than MAX_BYTES_PER_OP, counted over all threads like -prof gc.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RouterBenchmark {
+  private final static String HANDLER_ID = "5c9f32a4-0d3b-4a5e-9d6c-3f4e1b2a7c80";
+  // within the ring of the inbox, more would go to its overflow
+  private final static int WINDOW = 120;
+  // the wakeups of the device context, the packets themselves allocate nothing
+  private final static double MAX_BYTES_PER_OP = 1;
+
+  @Param({"10", "1000"})
+  int devices;
+
+  Vertx vertx;
+  EventBus eb;
+  Router router;
+  AtomicLong handled = new AtomicLong();
+  long sent;
+  UidMap<Object> uidMap;
+  Buffer[] packets;
+  Packet packet = new Packet();
+  int next;
+
+  /*
+   * The bytes allocated by all threads during an iteration of routeUidTable.
+   */
+  @State(Scope.Thread)
+  public static class Allocation {
+    private final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long ops;
+    long allocated;
+
+    private long allocatedBytes() {
+      long sum = 0;
+      for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+        sum += Math.max(bytes, 0);
+      }
+      return sum;
+    }
+
+    @Setup(Level.Iteration)
+    public void start() {
+      ops = 0;
+      allocated = allocatedBytes();
+    }
+
+    @TearDown(Level.Iteration)
+    public void check(IterationParams params) {
+      double perOp = (double) (allocatedBytes() - allocated) / ops;
+      if (params.getType() == IterationType.MEASUREMENT && perOp > MAX_BYTES_PER_OP) {
+        throw new IllegalStateException("routeUidTable allocates " + perOp + " bytes per packet");
+      }
+    }
+  }
+
+  @Setup
+  public void setup() throws InterruptedException {
+    vertx = Vertx.vertx();
+    eb = vertx.eventBus();
+    router = Router.get(vertx);
+    uidMap = new UidMap<>();
+    Context context = vertx.getOrCreateContext();
+    packets = new Buffer[devices];
+    for (int i = 0; i < devices; i++) {
+      long uid = 100000 + i * 7919L;
+      eb.consumer(Utils.base58Encode(uid), message -> {
+      });
+      uidMap.put((int) uid, context);
+      packets[i] = Utils.createHeader(uid, (byte) 8, (byte) 1, (byte) 0x18, (byte) 0);
+    }
+    // like the devices, registered from a verticle of its own
+    CountDownLatch deployed = new CountDownLatch(1);
+    vertx.deployVerticle(new AbstractVerticle() {
+      @Override
+      public void start() {
+        for (int i = 0; i < devices; i++) {
+          router.register(100000 + i * 7919L, context,
+              (packet, handlerId) -> handled.incrementAndGet());
+        }
+      }
+    }, res -> deployed.countDown());
+    deployed.await();
+  }
+
+  @TearDown
+  public void tearDown() {
+    vertx.close();
+  }
+
+  private Buffer nextPacket() {
+    int i = next + 1;
+    if (i == packets.length) {
+      i = 0;
+    }
+    next = i;
+    return packets[i];
+  }
+
+  @Benchmark
+  public String resolveBase58Address() {
+    byte[] packet = nextPacket().getBytes();
+    ByteBuffer bb = ByteBuffer.wrap(packet);
+    bb.order(ByteOrder.LITTLE_ENDIAN);
+    return Utils.base58Encode(bb.getInt());
+  }
+
+  @Benchmark
+  public Object resolveUidMap() {
+    return uidMap.get(Integer.reverseBytes(nextPacket().getInt(0)));
+  }
+
+  @Benchmark
+  public void routeEventBus(Blackhole bh) {
+    Buffer buffer = nextPacket();
+    byte[] packet = buffer.getBytes();
+    ByteBuffer bb = ByteBuffer.wrap(packet);
+    bb.order(ByteOrder.LITTLE_ENDIAN);
+    String uidString = Utils.base58Encode(bb.getInt());
+    bh.consume(
+        eb.publish(uidString, buffer, new DeliveryOptions().addHeader("handlerid", HANDLER_ID)));
+  }
+
+  @Benchmark
+  public void routeUidTable(Allocation allocation) {
+    Buffer buffer = nextPacket();
+    router.route(packet.wrap(buffer, 0, buffer.length()), HANDLER_ID);
+    allocation.ops++;
+    sent++;
+    while (sent - handled.get() > WINDOW) {
+      // the device context is behind
+      Thread.yield();
+    }
+  }
+}
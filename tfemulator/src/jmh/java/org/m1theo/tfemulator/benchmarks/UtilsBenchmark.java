@@ -0,0 +1,112 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.protocol.Packet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.vertx.core.buffer.Buffer;
+
+/*
+ * The protocol helpers of Utils a request passes on its way through the emulator: the uid
+ * conversions, building a header, building the enumerate response of a device and reading the
+ * header fields of a request with the flyweight Packet.
+ *
+ * mvn -Pjmh compile exec:exec -Djmh.args="UtilsBenchmark -prof gc"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class UtilsBenchmark {
+  private final static int UIDS = 64;
+
+  long[] uids;
+  String[] uidStrings;
+  Buffer[] requests;
+  Packet packet = new Packet();
+  int next;
+
+  @Setup
+  public void setup() {
+    uids = new long[UIDS];
+    uidStrings = new String[UIDS];
+    requests = new Buffer[UIDS];
+    for (int i = 0; i < UIDS; i++) {
+      uids[i] = 100000 + i * 7919L;
+      uidStrings[i] = Utils.base58Encode(uids[i]);
+      requests[i] = Utils.createHeader(uids[i], (byte) 12, (byte) 2, (byte) 0x18, (byte) 0)
+          .appendInt(1000);
+    }
+  }
+
+  private int nextIndex() {
+    int i = next + 1;
+    if (i == UIDS) {
+      i = 0;
+    }
+    next = i;
+    return i;
+  }
+
+  @Benchmark
+  public String base58Encode() {
+    return Utils.base58Encode(uids[nextIndex()]);
+  }
+
+  @Benchmark
+  public long uid2long() {
+    return Utils.uid2long(uidStrings[nextIndex()]);
+  }
+
+  @Benchmark
+  public Buffer createHeader() {
+    return Utils.createHeader(uids[nextIndex()], (byte) 8, (byte) 1, (byte) 0x18, (byte) 0);
+  }
+
+  @Benchmark
+  public Buffer enumerateResponse() {
+    int i = nextIndex();
+    return Utils.getEnumerateResponse(uidStrings[i], uids[i], 216);
+  }
+
+  @Benchmark
+  public void parsePacket(Blackhole bh) {
+    Buffer buffer = requests[nextIndex()];
+    packet.wrap(buffer, 0, buffer.length());
+    bh.consume(packet.getUidValue());
+    bh.consume(packet.getFunctionId());
+    bh.consume(packet.getSequenceNumber());
+    bh.consume(packet.getResponseExpected());
+    bh.consume(packet.getPayload());
+  }
+}
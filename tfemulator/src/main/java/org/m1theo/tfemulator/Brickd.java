@@ -14,68 +14,490 @@
  */
 package org.m1theo.tfemulator;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.m1theo.tfemulator.callbacks.CallbackScheduler;
+import org.m1theo.tfemulator.capture.PacketCapture;
+import org.m1theo.tfemulator.metrics.Metrics;
+import org.m1theo.tfemulator.metrics.MetricsServer;
+import org.m1theo.tfemulator.protocol.FrameDecoder;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.shard.ShardFront;
+import org.m1theo.tfemulator.shard.ShardServer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.AsyncResult;
 import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Verticle;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.NetServerOptions;
 
 /*
+ * The emulated brickd. Listens on "port" (default 1234) for the devices of "devices".
+ *
+ * Several sites can be emulated in one process with "listeners", each listener has its own port
+ * and devices:
+ *
+ * "listeners": [{"name": "site1", "port": 4223, "devices": [...]},
+ *               {"name": "site2", "port": 4224, "devices": [...], "outbound": {...}}]
+ *
+ * The devices and connections of a listener only see each other, they have a Router of their own,
+ * so the same uid may be used on two sites. "server", "outbound" and "deviceHosts" of a listener
+ * default to the ones of the top level. The top level "port" and "devices" are the default
+ * listener, with "listeners" they are optional. All listeners share the event loops, the
+ * CallbackScheduler and the SimulationClock.
+ *
+ * A fleet too large for one process is split over several emulator processes by uid range: a
+ * listener with a "shard" object serves its devices to ShardFronts as well, a listener with a
+ * "front" object has no devices of its own but forwards to the shards (see ShardFront).
+ *
+ * Large fleets are configured with DeviceTemplates, entries for many devices of one type with
+ * consecutive uids.
+ *
+ * Brickd starts in phases: the config is checked, the device classes are loaded once per type,
+ * the devices are deployed in batches of "deployBatchSize" in parallel, and only when all of them
+ * are deployed the listeners start listening. The deployment of Brickd completes when the
+ * listeners listen, the time of each phase is logged. If a device fails to deploy, Brickd doesn't
+ * listen and its deployment fails, unless "partialStart" is true: then it starts with the devices
+ * that are there.
+ *
+ * With a "metrics" object the requests, callbacks, connections and queues are recorded and
+ * exported, see MetricsServer. "trace" samples the packet trace, see PacketTrace. "capture" writes
+ * the packets of all connections to pcapng files, see PacketCapture.
+ *
  * @author Theo Weiss
  */
 public class Brickd extends AbstractVerticle {
   public static String HANDLERIDMAP = "handlerids";
+  private final static int DEFAULT_PORT = 1234;
+  private final static int DEFAULT_DEPLOY_BATCH_SIZE = 256;
   private Logger logger;
+  private MetricsServer metricsServer;
+
+  private static class Listener {
+    final String name;
+    final JsonObject conf;
+    final int port;
+
+    Listener(String name, JsonObject conf, int port) {
+      this.name = name;
+      this.conf = conf;
+      this.port = port;
+    }
+  }
+
+  /*
+   * A verticle to deploy.
+   */
+  private static class Deployment {
+    final Class<? extends Verticle> type;
+    final JsonObject config;
+
+    Deployment(Class<? extends Verticle> type, JsonObject config) {
+      this.type = type;
+      this.config = config;
+    }
+  }
 
   @Override
-  public void start() throws Exception {
+  public void start(Future<Void> startFuture) throws Exception {
+    long started = System.nanoTime();
     logger = LoggerFactory.getLogger(getClass());
-    Integer port = config().getInteger("port");
-    if (port == null) {
-      port = 1234;
-    }
-    deployDeviceVerticals();
-    Router router = new Router(vertx.eventBus());
-    vertx.createNetServer().connectHandler(sock -> {
-      vertx.sharedData().getLocalMap(HANDLERIDMAP).put(sock.writeHandlerID(), "");
-      sock.closeHandler(n -> {
-        logger.trace("====removing handlerid on socket close: {}", sock.writeHandlerID());
-        vertx.sharedData().getLocalMap(HANDLERIDMAP).remove(sock.writeHandlerID());
-      });
-      sock.handler(buffer -> {
-        router.route(buffer);
-        logger.debug(Utils.packetHeader2String(buffer).toString());
+    logger.debug("config: {}", config().encodePrettily());
+    List<Listener> listeners = listeners();
+    SimulationClock.get(vertx).configure(config().getJsonObject("clock", new JsonObject()));
+    CallbackScheduler.get(vertx).start(context);
+    PacketTrace.get(vertx).configure(config().getJsonObject("trace", new JsonObject()));
+    JsonObject metricsConf = config().getJsonObject("metrics");
+    if (metricsConf != null) {
+      // before the devices register with the routers
+      Metrics.get(vertx).enable();
+      metricsServer = new MetricsServer(vertx, metricsConf);
+    }
+    JsonObject captureConf = config().getJsonObject("capture");
+    if (captureConf != null) {
+      PacketCapture.get(vertx).configure(captureConf);
+    }
+    long configured = System.nanoTime();
+
+    List<Deployment> deployments = new ArrayList<>();
+    deployments.add(new Deployment(CommonServices.class, config()));
+    int devices = 0;
+    for (Listener listener : listeners) {
+      if (!listener.conf.containsKey("front")) {
+        devices += addDevices(listener, deployments);
+      }
+    }
+    long loaded = System.nanoTime();
+
+    int deviceCount = devices;
+    int batchSize = config().getInteger("deployBatchSize", DEFAULT_DEPLOY_BATCH_SIZE);
+    int[] failed = new int[1];
+    deploy(deployments, 0, Math.max(1, batchSize), failed, v -> {
+      long deployed = System.nanoTime();
+      if (failed[0] > 0) {
+        String msg = failed[0] + " of " + deployments.size() + " deployments failed";
+        if (!config().getBoolean("partialStart", false)) {
+          startFailed(startFuture, new BrickdException(msg));
+          return;
+        }
+        logger.warn("{}, starting without them", msg);
+      }
+      listenAll(listeners, metricsServer, res -> {
+        if (res.failed()) {
+          startFailed(startFuture, res.cause());
+          return;
+        }
+        long listening = System.nanoTime();
+        long deployNanos = deployed - loaded;
+        // from the nanoseconds, a fast deployment takes less than a millisecond
+        String rate = deployNanos > 0 ? String.valueOf(deviceCount * 1000000000L / deployNanos)
+            : "unmeasured";
+        logger.info("started {} devices on {} listeners in {} ms: config {} ms, class load {} ms, "
+            + "deploy {} ms ({} devices/s), listen {} ms", deviceCount, listeners.size(),
+            millis(started, listening), millis(started, configured), millis(configured, loaded),
+            millis(loaded, deployed), rate, millis(deployed, listening));
+        startFuture.complete();
       });
-    }).listen(port);
-    logger.info("Brickd is now listening on port: {}", port);
+    });
+  }
 
+  private void startFailed(Future<Void> startFuture, Throwable cause) {
+    if (metricsServer != null) {
+      metricsServer.stop();
+    }
+    PacketCapture.get(vertx).close();
+    startFuture.fail(cause);
   }
 
-  private void deployDeviceVerticals() throws BrickdException {
-    logger.debug("config: {}", config().encodePrettily());
-    JsonArray devicesConf = config().getJsonArray("devices");
-    if (devicesConf == null) {
+  private static long millis(long from, long to) {
+    return (to - from) / 1000000;
+  }
+
+  /*
+   * Checks the listeners of the config, the default listener comes first.
+   */
+  private List<Listener> listeners() throws BrickdException {
+    JsonArray listenersConf = config().getJsonArray("listeners", new JsonArray());
+    boolean defaultListener = hasDevices(config());
+    if (listenersConf.isEmpty() && !defaultListener) {
       String msg = "Devices Configuration is missing! Fix config!";
       logger.error(msg);
       throw new BrickdException(msg);
     }
+    JsonObject outboundConf = config().getJsonObject("outbound", new JsonObject());
+    OutboundQueue.policy(outboundConf);
+    List<Listener> listeners = new ArrayList<>();
+    Set<String> names = new HashSet<>();
+    Set<Integer> ports = new HashSet<>();
+    if (defaultListener) {
+      int port = config().getInteger("port", DEFAULT_PORT);
+      names.add(Router.DEFAULT_LISTENER);
+      ports.add(port);
+      listeners.add(new Listener(Router.DEFAULT_LISTENER, config(), port));
+    }
+    for (Object listenerObj : listenersConf) {
+      JsonObject listener = (JsonObject) listenerObj;
+      String name = listener.getString("name");
+      Integer port = listener.getInteger("port");
+      if (name == null || name.isEmpty() || !names.add(name)) {
+        throw new BrickdException("listener needs a unique name: " + listener.encode());
+      }
+      if (port == null || !ports.add(port)) {
+        throw new BrickdException("listener " + name + " needs a port of its own");
+      }
+      if (!hasDevices(listener)) {
+        throw new BrickdException("listener " + name + " has no devices");
+      }
+      OutboundQueue.policy(listener.getJsonObject("outbound", outboundConf));
+      listeners.add(new Listener(name, listener, port));
+    }
+    return listeners;
+  }
+
+  /*
+   * A listener has devices of its own or forwards to the shards.
+   */
+  private static boolean hasDevices(JsonObject listenerConf) {
+    return listenerConf.getJsonArray("devices") != null || listenerConf.containsKey("front");
+  }
+
+  /*
+   * Deploys batchSize of the deployments starting at from in parallel, the next batch when all of
+   * them are done. Runs on the context of Brickd, where the completion handlers are called.
+   */
+  private void deploy(List<Deployment> deployments, int from, int batchSize, int[] failed,
+      Handler<Void> done) {
+    if (from >= deployments.size()) {
+      done.handle(null);
+      return;
+    }
+    int to = Math.min(from + batchSize, deployments.size());
+    int[] outstanding = {to - from};
+    Handler<AsyncResult<String>> completed = res -> {
+      if (res.failed()) {
+        failed[0]++;
+        logger.error("deployment failed: {}", res.cause().getMessage());
+      }
+      if (--outstanding[0] == 0) {
+        deploy(deployments, to, batchSize, failed, done);
+      }
+    };
+    for (int i = from; i < to; i++) {
+      Deployment deployment = deployments.get(i);
+      Verticle verticle;
+      try {
+        verticle = deployment.type.getDeclaredConstructor().newInstance();
+      } catch (ReflectiveOperationException e) {
+        completed.handle(Future.failedFuture(e));
+        continue;
+      }
+      vertx.deployVerticle(verticle, new DeploymentOptions().setConfig(deployment.config),
+          completed);
+    }
+  }
+
+  /*
+   * Starts listening on the ports of all listeners and their shard servers and starts the metrics
+   * server if there is one.
+   */
+  private void listenAll(List<Listener> listeners, MetricsServer metrics,
+      Handler<AsyncResult<Void>> done) {
+    int shards = 0;
+    for (Listener listener : listeners) {
+      if (listener.conf.containsKey("shard")) {
+        shards++;
+      }
+    }
+    // the shard servers listen on ports of their own
+    int[] outstanding = {listeners.size() + shards + (metrics != null ? 1 : 0)};
+    boolean[] failed = new boolean[1];
+    Handler<AsyncResult<Void>> listened = res -> {
+      if (failed[0]) {
+        return;
+      }
+      if (res.failed()) {
+        failed[0] = true;
+        done.handle(res);
+      } else if (--outstanding[0] == 0) {
+        done.handle(Future.succeededFuture());
+      }
+    };
+    for (Listener listener : listeners) {
+      try {
+        listen(listener, listened);
+      } catch (BrickdException e) {
+        listened.handle(Future.failedFuture(e));
+      }
+    }
+    if (metrics != null) {
+      metrics.start(listened);
+    }
+  }
 
-    // deploy common services
-    CommonServices commonServices = new CommonServices();
-    vertx.deployVerticle(commonServices, new DeploymentOptions().setConfig(config()));
+  @Override
+  public void stop() throws Exception {
+    if (metricsServer != null) {
+      metricsServer.stop();
+    }
+    PacketCapture.get(vertx).close();
+  }
 
-    // deploy configured devices: Bricks and Bricklets
-    for (Object deviceObj : devicesConf) {
+  /*
+   * Starts the listener, its devices are deployed.
+   */
+  private void listen(Listener listener, Handler<AsyncResult<Void>> listened)
+      throws BrickdException {
+    String label = listener.name.isEmpty() ? "" : " " + listener.name;
+    JsonObject listenerConf = listener.conf;
+    int port = listener.port;
+    Router router = Router.get(vertx, listener.name);
+    ShardFront front = null;
+    if (listenerConf.containsKey("front")) {
+      front = new ShardFront(vertx, listenerConf.getJsonObject("front"));
+      front.start();
+    }
+    if (listenerConf.containsKey("shard")) {
+      new ShardServer(vertx, router).listen(listenerConf.getJsonObject("shard"), listened);
+    }
+    ShardFront shardFront = front;
+    PacketTrace trace = PacketTrace.get(vertx);
+    PacketCapture capture = PacketCapture.get(vertx);
+    JsonObject outboundConf = listenerConf.getJsonObject("outbound",
+        config().getJsonObject("outbound", new JsonObject()));
+    OutboundQueue.Policy policy = OutboundQueue.policy(outboundConf);
+    JsonObject serverConf =
+        listenerConf.getJsonObject("server", config().getJsonObject("server", new JsonObject()));
+    vertx.createNetServer(serverOptions(serverConf)).connectHandler(sock -> {
+      // the packets for the connection go through its queue
+      OutboundQueue outbound = new OutboundQueue(vertx, sock, router, outboundConf, policy);
+      String handlerId = outbound.address();
+      vertx.sharedData().getLocalMap(HANDLERIDMAP).put(handlerId, "");
+      router.addConnection(handlerId, sock);
+      if (shardFront != null) {
+        shardFront.open(handlerId, sock);
+      }
+      sock.closeHandler(n -> {
+        logger.trace("====removing handlerid on socket close: {}", handlerId);
+        vertx.sharedData().getLocalMap(HANDLERIDMAP).remove(handlerId);
+        router.removeConnection(handlerId, sock);
+        outbound.close();
+        if (shardFront != null) {
+          shardFront.close(handlerId);
+        }
+        if (outbound.flushes() > 0) {
+          logger.debug("connection {}: {} packets in {} writes, {} per write", handlerId,
+              outbound.packets(), outbound.flushes(),
+              String.format("%.1f", (double) outbound.packets() / outbound.flushes()));
+        }
+      });
+      int connection = outbound.id();
+      FrameDecoder decoder = new FrameDecoder(packet -> {
+        if (capture.enabled()) {
+          capture.received(connection, packet);
+        }
+        if (trace.sampled()) {
+          trace.received(packet, handlerId);
+        }
+        if (shardFront != null) {
+          shardFront.forward(packet, handlerId);
+        } else {
+          router.route(packet, handlerId);
+        }
+      });
+      sock.handler(chunk -> {
+        outbound.received(chunk.length());
+        decoder.handle(chunk);
+      });
+    }).listen(port, res -> {
+      if (res.failed()) {
+        logger.error("Brickd{} can't listen on port {}: {}", label, port,
+            res.cause().getMessage());
+        listened.handle(Future.failedFuture(res.cause()));
+      } else {
+        logger.info("Brickd{} is now listening on port: {}", label, port);
+        listened.handle(Future.succeededFuture());
+      }
+    });
+  }
+
+  /*
+   * The socket options of the listener from the "server" object of the config, with the names of
+   * NetServerOptions, e.g.
+   *
+   * "server": {"tcpNoDelay": true, "receiveBufferSize": 65536, "sendBufferSize": 262144,
+   *            "acceptBacklog": 4096, "reuseAddress": true, "tcpKeepAlive": true}
+   *
+   * Unset options keep the Vert.x defaults: TCP_NODELAY on, the buffer sizes of a plain socket,
+   * backlog 1024.
+   */
+  private NetServerOptions serverOptions(JsonObject serverConf) {
+    NetServerOptions options = new NetServerOptions(serverConf);
+    logger.info("server options: tcpNoDelay {}, receiveBufferSize {}, sendBufferSize {}, "
+        + "acceptBacklog {}, reuseAddress {}", options.isTcpNoDelay(),
+        options.getReceiveBufferSize(), options.getSendBufferSize(), options.getAcceptBacklog(),
+        options.isReuseAddress());
+    return options;
+  }
+
+  /*
+   * Adds the enabled devices of the listener to deployments, returns their number. The classes
+   * are loaded once per type, devices of unknown types are left out. A named listener adds its
+   * name to the device configs, the devices use the router of the listener.
+   *
+   * Templates are checked here but expanded by DeviceHosts: one host per template, or the
+   * deviceHosts hosts share them like the other devices.
+   */
+  private int addDevices(Listener listener, List<Deployment> deployments)
+      throws BrickdException {
+    String name = listener.name;
+    List<JsonObject> devices = new ArrayList<>();
+    List<Class<? extends Device>> types = new ArrayList<>();
+    JsonArray templates = new JsonArray();
+    int count = 0;
+    for (Object deviceObj : listener.conf.getJsonArray("devices")) {
       JsonObject device = (JsonObject) deviceObj;
-      Boolean enabled = device.getBoolean("enabled", false);
-      String type = device.getString("type");
-      String uid = device.getString("uid");
-      if (enabled) {
-        vertx.deployVerticle("org.m1theo.tfemulator.devices." + type,
-            new DeploymentOptions().setConfig(new JsonObject().put("uid", uid)));
+      if (!device.getBoolean("enabled", false)) {
+        continue;
+      }
+      DeviceTemplate template = null;
+      if (DeviceTemplate.isTemplate(device)) {
+        template = new DeviceTemplate(device);
+      }
+      Class<? extends Device> type;
+      try {
+        type = Device.deviceClass(device.getString("type"));
+      } catch (BrickdException e) {
+        logger.error("{}, uid {} is not deployed", e.getMessage(),
+            template != null ? device.getValue("uidFrom") : device.getString("uid"));
+        continue;
+      }
+      JsonObject deviceConf = name.isEmpty() ? device : device.copy().put("listener", name);
+      if (template != null) {
+        templates.add(deviceConf);
+        count += template.count();
+      } else {
+        types.add(type);
+        devices.add(deviceConf);
+        count++;
+      }
+    }
+    int deviceHosts =
+        listener.conf.getInteger("deviceHosts", config().getInteger("deviceHosts", 0));
+    if (deviceHosts > 0) {
+      addDeviceHosts(name, devices, templates, deviceHosts, deployments);
+      return count;
+    }
+    // Bricks and Bricklets
+    for (int i = 0; i < devices.size(); i++) {
+      deployments.add(new Deployment(types.get(i), devices.get(i)));
+    }
+    for (Object template : templates) {
+      deployments.add(new Deployment(DeviceHost.class,
+          hostConf(name).put("templates", new JsonArray().add(template))));
+    }
+    return count;
+  }
+
+  private static JsonObject hostConf(String name) {
+    JsonObject hostConf = new JsonObject();
+    if (!name.isEmpty()) {
+      hostConf.put("listener", name);
+    }
+    return hostConf;
+  }
+
+  /*
+   * Splits the devices and templates into deviceHosts DeviceHost verticles, the devices are
+   * assigned by uid.
+   * Vert.x hands out the event loops round robin, so with as many hosts as event loops every
+   * event loop runs one host.
+   */
+  private void addDeviceHosts(String name, List<JsonObject> devices, JsonArray templates,
+      int deviceHosts, List<Deployment> deployments) {
+    JsonArray[] shards = new JsonArray[deviceHosts];
+    for (int i = 0; i < deviceHosts; i++) {
+      shards[i] = new JsonArray();
+    }
+    for (JsonObject device : devices) {
+      long uid = Utils.uid2long(device.getString("uid"));
+      shards[(int) (uid % deviceHosts)].add(device);
+    }
+    for (int i = 0; i < deviceHosts; i++) {
+      if (shards[i].isEmpty() && templates.isEmpty()) {
+        continue;
       }
+      // every host takes its part of the templates
+      deployments.add(new Deployment(DeviceHost.class, hostConf(name).put("devices", shards[i])
+          .put("templates", templates).put("hosts", deviceHosts).put("host", i)));
     }
   }
 }
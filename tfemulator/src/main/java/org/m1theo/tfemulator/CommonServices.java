@@ -18,8 +18,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.vertx.core.AbstractVerticle;
-import io.vertx.core.buffer.Buffer;
-import io.vertx.core.eventbus.EventBus;
 
 public class CommonServices extends AbstractVerticle {
   public static String BROADCAST_UID = "1";
@@ -29,10 +27,7 @@ public class CommonServices extends AbstractVerticle {
   @Override
   public void start() throws Exception {
     Logger logger = LoggerFactory.getLogger(getClass());
-    EventBus eb = vertx.eventBus();
-    eb.consumer(BROADCAST_UID, message -> {
-      logger.debug("recieved message: {}", Utils.packetHeader2String((Buffer) message.body()));
-    });
+    // broadcast messages are fanned out to the devices by the Router
     logger.info("CommonService is started!");
   }
 
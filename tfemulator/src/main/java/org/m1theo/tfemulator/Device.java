@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package org.m1theo.tfemulator;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.m1theo.tfemulator.values.DeviceValues;
+import org.m1theo.tfemulator.values.ValueSource;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+
+/*
+ * Base class of the emulated devices. A device runs either as a verticle of its own or inside a
+ * DeviceHost, which shares its context and its enumerate handler among many devices.
+ */
+public abstract class Device extends AbstractVerticle {
+  private final static String DEVICE_PACKAGE = "org.m1theo.tfemulator.devices.";
+  private final static ConcurrentMap<String, Class<? extends Device>> classes =
+      new ConcurrentHashMap<>();
+  private DeviceConfig deviceConfig;
+  private DeviceHost host;
+  private Buffer identity;
+  private Buffer enumerateResponse;
+  private DeviceValues values;
+
+  /*
+   * The class of the device type, e.g. "BrickletTemperature". Each type is loaded once.
+   */
+  public static Class<? extends Device> deviceClass(String type) throws BrickdException {
+    Class<? extends Device> deviceClass = classes.get(type);
+    if (deviceClass == null) {
+      try {
+        deviceClass = Class.forName(DEVICE_PACKAGE + type).asSubclass(Device.class);
+      } catch (ClassNotFoundException | ClassCastException e) {
+        throw new BrickdException("unknown device type " + type);
+      }
+      classes.put(type, deviceClass);
+    }
+    return deviceClass;
+  }
+
+  /*
+   * Runs the device inside host instead of deploying it, config is the configuration of the device.
+   */
+  void host(Vertx vertx, Context context, DeviceConfig config, DeviceHost host) {
+    init(vertx, context);
+    this.deviceConfig = config;
+    this.host = host;
+  }
+
+  /*
+   * The configuration of the device, devices read it from here and not from config(): a hosted
+   * device has no verticle config of its own.
+   */
+  protected DeviceConfig deviceConfig() {
+    if (deviceConfig == null) {
+      deviceConfig = new DeviceConfig(super.config());
+    }
+    return deviceConfig;
+  }
+
+  /*
+   * A copy of the configuration for a hosted device.
+   */
+  @Override
+  public JsonObject config() {
+    return host != null ? deviceConfig.toJson() : super.config();
+  }
+
+  /*
+   * Builds the identity and the enumerate response of the device and answers enumerate requests
+   * with it. Both are built once, getIdentity and enumerate send the same read only buffers every
+   * time. A hosted device only adds its response to the enumerate answer of the host.
+   */
+  protected void registerEnumerate(String uid, long uidBytes, int deviceIdentifier) {
+    // "connectedUid" and "position" tell where the device is plugged in
+    String connectedUid = deviceConfig().getString("connectedUid", uid);
+    String position = deviceConfig().getString("position");
+    char positionChar = position != null && !position.isEmpty() ? position.charAt(0)
+        : Utils.DEFAULT_POSITION;
+    identity = Utils.readOnly(Utils.getIdentityPayload(uid, uidBytes, connectedUid, positionChar,
+        deviceIdentifier));
+    enumerateResponse = Utils.readOnly(Utils.getEnumerateResponse(uid, uidBytes, connectedUid,
+        positionChar, deviceIdentifier));
+    if (host != null) {
+      host.addEnumerate(enumerateResponse);
+      return;
+    }
+    Router router = router();
+    router.registerBroadcast(uidBytes, context, (request, requesterId) -> {
+      // the eventbus copies the buffer for each connection
+      for (String handlerId : router.connections()) {
+        vertx.eventBus().send(handlerId, enumerateResponse);
+      }
+    });
+  }
+
+  /*
+   * The router of the Brickd listener the device belongs to, the "listener" of the device config.
+   */
+  protected Router router() {
+    return Router.get(vertx, deviceConfig().getString("listener"));
+  }
+
+  /*
+   * The sources of the count fields of the sensor value name, configured in the "values" of the
+   * device config. The getter and the callbacks of a value get the same sources. Called while the
+   * device starts.
+   */
+  protected ValueSource[] valueSources(String name, int count) throws BrickdException {
+    if (values == null) {
+      values = new DeviceValues(deviceConfig(), SimulationClock.get(vertx)::now);
+    }
+    return values.sources(name, count);
+  }
+
+  /*
+   * The payload of the getIdentity response, valid after registerEnumerate().
+   */
+  protected Buffer identityPayload() {
+    return identity;
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator;
+
+import io.vertx.core.json.JsonObject;
+
+/*
+ * The config of one device, read only. A single device reads its own config entry. The devices of
+ * a DeviceTemplate share the config of the template and only add their uid and their index in the
+ * template, so a fleet of any size keeps one small object per device and no map.
+ */
+public final class DeviceConfig {
+  private final JsonObject conf;
+  // 0 for a single device, its uid is in conf
+  private final long uid;
+  private final int index;
+
+  public DeviceConfig(JsonObject conf) {
+    this(conf, 0, 0);
+  }
+
+  DeviceConfig(JsonObject template, long uid, int index) {
+    this.conf = template;
+    this.uid = uid;
+    this.index = index;
+  }
+
+  /*
+   * The uid of the device, a device of a template builds it from the uid value. The devices read
+   * it once when they start.
+   */
+  public String uid() {
+    return uid != 0 ? Utils.base58Encode(uid) : conf.getString("uid");
+  }
+
+  /*
+   * The "seed" of the config, a device of a template adds its index so they don't all produce the
+   * same values.
+   */
+  public Long seed() {
+    Long seed = conf.getLong("seed");
+    return seed != null && uid != 0 ? Long.valueOf(seed + index) : seed;
+  }
+
+  public String getString(String key) {
+    return (String) getValue(key);
+  }
+
+  public String getString(String key, String def) {
+    String value = getString(key);
+    return value != null ? value : def;
+  }
+
+  public JsonObject getJsonObject(String key) {
+    return (JsonObject) getValue(key);
+  }
+
+  public JsonObject getJsonObject(String key, JsonObject def) {
+    JsonObject value = getJsonObject(key);
+    return value != null ? value : def;
+  }
+
+  public Object getValue(String key) {
+    if ("uid".equals(key)) {
+      return uid();
+    }
+    if ("seed".equals(key)) {
+      return seed();
+    }
+    if (uid != 0 && DeviceTemplate.isTemplateKey(key)) {
+      return null;
+    }
+    return conf.getValue(key);
+  }
+
+  /*
+   * A copy of the config as it would be written for this device alone.
+   */
+  public JsonObject toJson() {
+    if (uid == 0) {
+      return conf.copy();
+    }
+    JsonObject json = conf.copy();
+    json.remove("count");
+    json.remove("uidFrom");
+    json.remove("uidTo");
+    json.put("uid", uid());
+    Long seed = seed();
+    return seed != null ? json.put("seed", seed) : json;
+  }
+}
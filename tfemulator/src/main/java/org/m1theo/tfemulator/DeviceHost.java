@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package org.m1theo.tfemulator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/*
+ * Runs many devices in one verticle. The devices share the context of the host, so a host with
+ * thousands of devices is one deployment on one event loop instead of thousands.
+ *
+ * Enumerate requests are answered by the host: the enumerate responses of all its devices are
+ * concatenated once and written to each connection with a single send.
+ *
+ * The config is a "devices" array like the one of Brickd and the "listener" the devices belong to.
+ * Brickd deploys the hosts when "deviceHosts" is set, it splits the devices of each listener among
+ * them by uid. The DeviceTemplates in "templates" are expanded here, the host runs the devices of
+ * the templates with uid % "hosts" == "host".
+ */
+public class DeviceHost extends AbstractVerticle {
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+  private final List<Device> devices = new ArrayList<>();
+  private Buffer enumerate = Buffer.buffer();
+  private Router.PacketHandler enumerateHandler;
+
+  @Override
+  public void start() throws Exception {
+    for (Object deviceObj : config().getJsonArray("devices", new JsonArray())) {
+      startDevice(new DeviceConfig((JsonObject) deviceObj));
+    }
+    int hosts = config().getInteger("hosts", 1);
+    int host = config().getInteger("host", 0);
+    for (Object templateObj : config().getJsonArray("templates", new JsonArray())) {
+      new DeviceTemplate((JsonObject) templateObj).forEach(hosts, host, deviceConf -> {
+        try {
+          startDevice(deviceConf);
+        } catch (Exception e) {
+          logger.error("device {} failed to start: {}", deviceConf.uid(),
+              e.getMessage());
+        }
+      });
+    }
+    enumerate = Utils.readOnly(enumerate);
+    Router router = Router.get(vertx, config().getString("listener"));
+    enumerateHandler = (request, requesterId) -> {
+      for (String handlerId : router.connections()) {
+        vertx.eventBus().send(handlerId, enumerate);
+      }
+    };
+    router.registerBroadcast(Router.BROADCAST_UID, context, enumerateHandler);
+    logger.info("DeviceHost started with {} devices", devices.size());
+  }
+
+  private void startDevice(DeviceConfig deviceConf) throws Exception {
+    String type = deviceConf.getString("type");
+    String uid = deviceConf.uid();
+    Class<? extends Device> deviceClass;
+    try {
+      deviceClass = Device.deviceClass(type);
+    } catch (BrickdException e) {
+      logger.error("unknown device type {} of uid {}", type, uid);
+      return;
+    }
+    Device device;
+    try {
+      device = deviceClass.getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException e) {
+      throw new BrickdException("cannot create " + type + " " + uid + ": " + e);
+    }
+    device.host(vertx, context, deviceConf, this);
+    device.start();
+    devices.add(device);
+  }
+
+  @Override
+  public void stop() throws Exception {
+    Router.get(vertx, config().getString("listener")).unregisterBroadcast(enumerateHandler);
+    for (Device device : devices) {
+      device.stop();
+    }
+  }
+
+  /*
+   * Adds the enumerate response of a device, called while the devices are started.
+   */
+  void addEnumerate(Buffer response) {
+    enumerate.appendBuffer(response);
+  }
+}
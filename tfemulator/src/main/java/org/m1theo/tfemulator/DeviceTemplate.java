@@ -0,0 +1,113 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator;
+
+import java.util.function.Consumer;
+
+import io.vertx.core.json.JsonObject;
+
+/*
+ * A config entry for many devices of one type with consecutive uids instead of one entry each:
+ *
+ * {"type": "BrickletTemperature", "count": 1000, "uidFrom": "2Ah7T", "connectedUid": "6qzRzc",
+ *  "enabled": true, "values": {...}}
+ *
+ * The devices get the uids from "uidFrom" on, base58 or the 32 bit value. "uidTo" is the last uid,
+ * with both "count" may be left out. All other keys are the config of every device, "seed" is
+ * added to the offset of the device so they don't all produce the same values.
+ *
+ * The template is only expanded when the devices start, inside a DeviceHost. The config of a
+ * device is a DeviceConfig on the shared template with its uid, so a fleet of any size needs a
+ * small config and one small object per device.
+ */
+public class DeviceTemplate {
+  private final static long MAX_UID = 0xFFFFFFFFL;
+  private final JsonObject template;
+  private final String type;
+  private final long first;
+  private final int count;
+
+  static boolean isTemplateKey(Object key) {
+    return "count".equals(key) || "uidFrom".equals(key) || "uidTo".equals(key);
+  }
+
+  /*
+   * True if the config entry is a template.
+   */
+  public static boolean isTemplate(JsonObject entry) {
+    return entry.containsKey("uidFrom") || entry.containsKey("count");
+  }
+
+  public DeviceTemplate(JsonObject template) throws BrickdException {
+    this.template = template;
+    this.type = template.getString("type");
+    this.first = uid(template.getValue("uidFrom"));
+    Integer countConf = template.getInteger("count");
+    Object last = template.getValue("uidTo");
+    long size = last != null ? uid(last) - first + 1 : MAX_UID - first + 1;
+    if (size <= 0) {
+      throw new BrickdException("uidTo is before uidFrom: " + template.encode());
+    }
+    if (countConf == null && last == null) {
+      throw new BrickdException("template needs a count or uidTo: " + template.encode());
+    }
+    long templateCount = countConf != null ? countConf : size;
+    if (templateCount < 0 || templateCount > size || templateCount > Integer.MAX_VALUE) {
+      throw new BrickdException("template count doesn't fit its uids: " + template.encode());
+    }
+    this.count = (int) templateCount;
+  }
+
+  private static long uid(Object value) throws BrickdException {
+    if (value instanceof Number) {
+      long uid = ((Number) value).longValue();
+      if (uid > 0 && uid <= MAX_UID) {
+        return uid;
+      }
+    } else if (value != null) {
+      try {
+        long uid = Utils.uid2long(value.toString());
+        if (uid > 0) {
+          return uid;
+        }
+      } catch (RuntimeException e) {
+        // reported below
+      }
+    }
+    throw new BrickdException("invalid template uid: " + value);
+  }
+
+  public String type() {
+    return type;
+  }
+
+  public int count() {
+    return count;
+  }
+
+  /*
+   * Hands the config of the devices with uid % hosts == host to consumer, in uid order.
+   */
+  public void forEach(int hosts, int host, Consumer<DeviceConfig> consumer) {
+    for (int i = 0; i < count; i++) {
+      long uid = first + i;
+      if (uid % hosts == host) {
+        consumer.accept(new DeviceConfig(template, uid, i));
+      }
+    }
+  }
+}
@@ -0,0 +1,435 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.m1theo.tfemulator.capture.PacketCapture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.NetSocket;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+/*
+ * The outbound packets of one client connection. Responses, callbacks and enumerate answers are
+ * sent to address() on the eventbus like before, but instead of one socket write (and one
+ * syscall) per packet they are gathered and written together: at the end of the current event
+ * loop task queue, after maxDelay milliseconds if that is set, or as soon as maxBytes are pending.
+ *
+ * While the write queue of the socket is full the packets stay here. Once more than highWatermark
+ * bytes are waiting, the policy decides what happens to a client that doesn't keep up:
+ *
+ * pause        no more callbacks for the connection until it is down to lowWatermark
+ * drop         the oldest callbacks are dropped down to lowWatermark, responses and enumerate
+ *              answers are always kept
+ * disconnect   the connection is closed
+ *
+ * Configured with the "outbound" object of the Brickd config, e.g. {"maxBytes": 16384,
+ * "maxDelay": 0, "highWatermark": 1048576, "lowWatermark": 262144, "policy": "drop"}.
+ * "writeQueueMaxSize" sets the size of the write queue of the socket itself.
+ *
+ * Runs on the context of Brickd, which owns the socket. The counters are read by the Stats from
+ * other threads. Brickd counts the bytes it reads from the socket here as well, so a connection
+ * has both directions in one place.
+ *
+ * While the PacketCapture is on, the packets are captured as they are written to the socket, with
+ * the id() of the connection.
+ */
+public class OutboundQueue {
+  private final static Logger logger = LoggerFactory.getLogger(OutboundQueue.class);
+  private final static String ADDRESS_PREFIX = "tfemulator.outbound.";
+  public final static int DEFAULT_MAX_BYTES = 16384;
+  public final static int DEFAULT_HIGH_WATERMARK = 1024 * 1024;
+  private final static int FUNCTION_ID_OFFSET = 5;
+  private final static int OPTIONS_OFFSET = 6;
+
+  public enum Policy {
+    PAUSE, DROP, DISCONNECT
+  }
+
+  /*
+   * The totals of all connections of a Vertx instance and the live connections.
+   */
+  public static class Stats implements Shareable {
+    private final static String STATSMAP = "outboundstats";
+    private final AtomicLong packets = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong pauses = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong disconnects = new AtomicLong();
+    private final AtomicInteger connectionIds = new AtomicInteger();
+    private final ConcurrentMap<String, OutboundQueue> connections = new ConcurrentHashMap<>();
+
+    public static Stats get(Vertx vertx) {
+      LocalMap<String, Stats> map = vertx.sharedData().getLocalMap(STATSMAP);
+      Stats stats = map.get(STATSMAP);
+      if (stats == null) {
+        Stats newStats = new Stats();
+        stats = map.putIfAbsent(STATSMAP, newStats);
+        if (stats == null) {
+          stats = newStats;
+        }
+      }
+      return stats;
+    }
+
+    public long packets() {
+      return packets.get();
+    }
+
+    public long flushes() {
+      return flushes.get();
+    }
+
+    public long bytes() {
+      return bytes.get();
+    }
+
+    public long bytesReceived() {
+      return bytesReceived.get();
+    }
+
+    public double packetsPerFlush() {
+      long f = flushes.get();
+      return f == 0 ? 0 : (double) packets.get() / f;
+    }
+
+    /*
+     * How often connections were paused.
+     */
+    public long pauses() {
+      return pauses.get();
+    }
+
+    /*
+     * Callback packets dropped for connections that didn't keep up.
+     */
+    public long dropped() {
+      return dropped.get();
+    }
+
+    public long disconnects() {
+      return disconnects.get();
+    }
+
+    /*
+     * The open connections, e.g. to find the ones with a backlog.
+     */
+    public Collection<OutboundQueue> connections() {
+      return connections.values();
+    }
+  }
+
+  private final Vertx vertx;
+  private final Context context;
+  private final NetSocket socket;
+  private final Router router;
+  private final Stats stats;
+  private final PacketCapture capture;
+  private final int id;
+  private final int maxBytes;
+  private final long maxDelay;
+  private final long highWatermark;
+  private final long lowWatermark;
+  private final Policy policy;
+  private final String address;
+  private final String remoteAddress;
+  private final MessageConsumer<Buffer> consumer;
+  private final ArrayDeque<Buffer> pending = new ArrayDeque<>();
+  private boolean flushScheduled;
+  private boolean draining;
+  private boolean closed;
+  private volatile boolean paused;
+  private volatile long pendingBytes;
+  private volatile long packets;
+  private volatile long flushes;
+  private volatile long dropped;
+  private volatile long bytes;
+  private volatile long bytesReceived;
+
+  /*
+   * The policy of the outbound config, checked by Brickd when it starts.
+   */
+  public static Policy policy(JsonObject conf) throws BrickdException {
+    String policyName = conf.getString("policy", "pause");
+    try {
+      return Policy.valueOf(policyName.toUpperCase());
+    } catch (IllegalArgumentException e) {
+      throw new BrickdException("unknown outbound policy: " + policyName);
+    }
+  }
+
+  /*
+   * The queue of socket, a connection of the listener of router.
+   */
+  public OutboundQueue(Vertx vertx, NetSocket socket, Router router, JsonObject conf,
+      Policy policy) {
+    this.vertx = vertx;
+    this.context = vertx.getOrCreateContext();
+    this.socket = socket;
+    this.router = router;
+    this.stats = Stats.get(vertx);
+    this.capture = PacketCapture.get(vertx);
+    this.id = stats.connectionIds.incrementAndGet();
+    this.maxBytes = conf.getInteger("maxBytes", DEFAULT_MAX_BYTES);
+    this.maxDelay = conf.getLong("maxDelay", 0L);
+    this.highWatermark = conf.getLong("highWatermark", (long) DEFAULT_HIGH_WATERMARK);
+    this.lowWatermark = conf.getLong("lowWatermark", highWatermark / 4);
+    this.policy = policy;
+    this.address = ADDRESS_PREFIX + socket.writeHandlerID();
+    this.remoteAddress = String.valueOf(socket.remoteAddress());
+    this.consumer = vertx.eventBus().<Buffer>localConsumer(address, msg -> write(msg.body()));
+    Integer writeQueueMaxSize = conf.getInteger("writeQueueMaxSize");
+    if (writeQueueMaxSize != null) {
+      socket.setWriteQueueMaxSize(writeQueueMaxSize);
+    }
+    stats.connections.put(address, this);
+  }
+
+  /*
+   * The eventbus address the devices send the packets for this connection to.
+   */
+  public String address() {
+    return address;
+  }
+
+  public void write(Buffer packet) {
+    if (closed) {
+      return;
+    }
+    pending.add(packet);
+    pendingBytes += packet.length();
+    if (pendingBytes > highWatermark) {
+      overflow();
+      if (closed) {
+        return;
+      }
+    }
+    if (draining) {
+      // the drain handler writes it
+      return;
+    }
+    if (pendingBytes >= maxBytes) {
+      flush();
+    } else if (!flushScheduled) {
+      flushScheduled = true;
+      if (maxDelay > 0) {
+        vertx.setTimer(maxDelay, id -> scheduledFlush());
+      } else {
+        context.runOnContext(v -> scheduledFlush());
+      }
+    }
+  }
+
+  private void scheduledFlush() {
+    flushScheduled = false;
+    flush();
+  }
+
+  /*
+   * Writes the pending packets in chunks of up to maxBytes until the write queue of the socket is
+   * full. A new buffer is started for every chunk because the socket may still hold on to the
+   * written one.
+   */
+  public void flush() {
+    if (closed) {
+      return;
+    }
+    while (!pending.isEmpty()) {
+      if (socket.writeQueueFull()) {
+        if (!draining) {
+          draining = true;
+          socket.drainHandler(v -> {
+            draining = false;
+            flush();
+          });
+        }
+        return;
+      }
+      Buffer out = Buffer.buffer(Math.min((int) pendingBytes, maxBytes));
+      int count = 0;
+      while (!pending.isEmpty()
+          && (count == 0 || out.length() + pending.peek().length() <= maxBytes)) {
+        Buffer packet = pending.poll();
+        if (capture.enabled()) {
+          capture.sent(id, packet);
+        }
+        out.appendBuffer(packet);
+        count++;
+      }
+      pendingBytes -= out.length();
+      // counted first, the client may read the packets before write() returns
+      packets += count;
+      flushes++;
+      bytes += out.length();
+      stats.packets.addAndGet(count);
+      stats.flushes.incrementAndGet();
+      stats.bytes.addAndGet(out.length());
+      socket.write(out);
+    }
+    if (paused && pendingBytes <= lowWatermark) {
+      paused = false;
+      router.pauseCallbacks(address, false);
+      logger.info("connection {} caught up, callbacks resumed", remoteAddress);
+    }
+  }
+
+  private void overflow() {
+    switch (policy) {
+      case PAUSE:
+        if (!paused) {
+          paused = true;
+          stats.pauses.incrementAndGet();
+          router.pauseCallbacks(address, true);
+          logger.warn("connection {} is {} bytes behind, callbacks paused", remoteAddress,
+              pendingBytes);
+        }
+        break;
+      case DROP:
+        long before = dropped;
+        Iterator<Buffer> packets = pending.iterator();
+        while (pendingBytes > lowWatermark && packets.hasNext()) {
+          Buffer packet = packets.next();
+          if (isCallback(packet)) {
+            packets.remove();
+            pendingBytes -= packet.length();
+            dropped++;
+          }
+        }
+        if (dropped > before) {
+          stats.dropped.addAndGet(dropped - before);
+          logger.warn("connection {} doesn't keep up, dropped {} callbacks", remoteAddress,
+              dropped - before);
+        }
+        break;
+      default:
+        stats.disconnects.incrementAndGet();
+        logger.warn("connection {} is {} bytes behind, disconnecting", remoteAddress,
+            pendingBytes);
+        socket.close();
+        close();
+    }
+  }
+
+  private static boolean isCallback(Buffer packet) {
+    return isCallback(packet, 0);
+  }
+
+  /*
+   * True for a callback packet starting at offset of buffer. Callbacks have sequence number 0, so
+   * do the enumerate answers, which must not get lost.
+   */
+  public static boolean isCallback(Buffer buffer, int offset) {
+    int options = buffer.getByte(offset + OPTIONS_OFFSET) & 0xFF;
+    return (options >> 4) == 0
+        && buffer.getByte(offset + FUNCTION_ID_OFFSET) != CommonServices.CALLBACK_ENUMERATE;
+  }
+
+  /*
+   * Stops taking packets, the pending ones are dropped.
+   */
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    consumer.unregister();
+    stats.connections.remove(address);
+    pending.clear();
+    pendingBytes = 0;
+  }
+
+  /*
+   * Counts the bytes Brickd read from the socket.
+   */
+  public void received(int length) {
+    bytesReceived += length;
+    stats.bytesReceived.addAndGet(length);
+  }
+
+  /*
+   * The number of the connection, unique within the Vertx instance.
+   */
+  public int id() {
+    return id;
+  }
+
+  public String remoteAddress() {
+    return remoteAddress;
+  }
+
+  /*
+   * The name of the Brickd listener of the connection, empty for the default listener.
+   */
+  public String listener() {
+    return router.name();
+  }
+
+  public Policy policy() {
+    return policy;
+  }
+
+  /*
+   * The bytes waiting for the socket.
+   */
+  public long pendingBytes() {
+    return pendingBytes;
+  }
+
+  public boolean isPaused() {
+    return paused;
+  }
+
+  public long dropped() {
+    return dropped;
+  }
+
+  public long packets() {
+    return packets;
+  }
+
+  public long flushes() {
+    return flushes;
+  }
+
+  /*
+   * The bytes written to the socket.
+   */
+  public long bytes() {
+    return bytes;
+  }
+
+  public long bytesReceived() {
+    return bytesReceived;
+  }
+}
@@ -14,36 +14,511 @@
  */
 package org.m1theo.tfemulator;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
+import org.m1theo.tfemulator.metrics.DeviceMetrics;
+import org.m1theo.tfemulator.metrics.Metrics;
+import org.m1theo.tfemulator.protocol.Packet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
-import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.net.NetSocket;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
 
-public class Router {
-  private EventBus eb;
+/*
+ * Delivers packets to the devices. The routing table is keyed by the raw 32 bit uid of the packet
+ * header, packets with uid 0 (enumerate) are fanned out to all devices.
+ *
+ * There is one router per listener of Brickd: the devices and connections of a listener only see
+ * each other. get(vertx) is the router of the default listener, get(vertx, name) the one of a
+ * named listener. The devices get theirs with Device.router().
+ *
+ * The devices and DeviceHosts run on the contexts of their verticles. A handler registered on the
+ * context the packet is routed from gets the view of the FrameDecoder. For the other contexts the
+ * packet is copied into a slot of the Inbox of the device context, the slots are reused, so the
+ * request path of Brickd allocates nothing per packet.
+ *
+ * With the Metrics enabled the router records the requests of each device from routing to the end
+ * of the handler, the callbacks and the packets waiting for a device context.
+ */
+public class Router implements Shareable {
+  private final static String ROUTERMAP = "router";
+  public final static int BROADCAST_UID = 0;
+  public final static String DEFAULT_LISTENER = "";
+  private final static int FUNCTION_ID_OFFSET = 5;
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+  private final UidMap<Endpoint> devices = new UidMap<>();
+  private final ConcurrentMap<Context, Inbox> inboxes = new ConcurrentHashMap<>();
+  private volatile Endpoint[] broadcast = new Endpoint[0];
+  private volatile String[] connections = new String[0];
+  private volatile NetSocket[] sockets = new NetSocket[0];
+  // the connections minus the ones that are paused because they don't keep up
+  private volatile String[] callbackConnections = new String[0];
+  private final Set<String> paused = new HashSet<>();
+  private final String name;
+  // requests routed to a device context that it hasn't handled yet, with metrics only
+  private final LongAdder queued = new LongAdder();
+  private volatile boolean metered;
+
+  /*
+   * The routers of all listeners of a Vertx instance.
+   */
+  private static class Routers implements Shareable {
+    private final ConcurrentMap<String, Router> byName = new ConcurrentHashMap<>();
+    private volatile Router[] all = new Router[0];
+
+    synchronized Router get(String name) {
+      Router router = byName.get(name);
+      if (router == null) {
+        router = new Router(name);
+        byName.put(name, router);
+        Router[] routers = Arrays.copyOf(all, all.length + 1);
+        routers[all.length] = router;
+        all = routers;
+      }
+      return router;
+    }
+  }
+
+  /*
+   * Handles a packet for a device. handlerId is the write handler id of the socket the packet came
+   * from.
+   */
+  @FunctionalInterface
+  public interface PacketHandler {
+    void handle(Packet packet, String handlerId);
+  }
+
+  private static class Endpoint {
+    final int uid;
+    final Context context;
+    final PacketHandler handler;
+    final DeviceMetrics metrics;
+    final Inbox inbox;
+
+    Endpoint(int uid, Context context, PacketHandler handler, DeviceMetrics metrics,
+        Inbox inbox) {
+      this.uid = uid;
+      this.context = context;
+      this.handler = handler;
+      this.metrics = metrics;
+      this.inbox = inbox;
+    }
+  }
+
+  /*
+   * A packet waiting in an Inbox, with the bytes of a ring slot or a copy of its own.
+   */
+  private static class Slot {
+    final Packet packet = new Packet();
+    Endpoint endpoint;
+    String handlerId;
+    // System.nanoTime() of routing, with metrics only
+    long routed;
+  }
+
+  /*
+   * The packets for the handlers of one context. A single producer, single consumer ring of SLOTS
+   * slots with SLOT_SIZE bytes each, allocated with the first packet: the producer copies the
+   * packet into the next free slot, the context handles the slots in order and frees them.
+   *
+   * The first thread that routes to the inbox is the producer, the event loop of Brickd. Packets
+   * of other threads, packets longer than a slot and packets arriving while the ring is full are
+   * copied into the overflow queue, which is handled after the ring. Once there is overflow the
+   * producer adds to it until it is empty again, so the packets keep their order.
+   *
+   * The context is woken with runOnContext only when it isn't handling the inbox already, so a
+   * busy context takes many packets per wakeup.
+   */
+  private class Inbox implements Handler<Void> {
+    private final static int SLOTS = 128;
+    private final static int MASK = SLOTS - 1;
+    // the longest Tinkerforge packet
+    private final static int SLOT_SIZE = 80;
+    private final Context context;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final ConcurrentLinkedQueue<Slot> overflow = new ConcurrentLinkedQueue<>();
+    private volatile Thread producer;
+    // the ring, written by the producer only
+    private Buffer bytes;
+    private Slot[] slots;
+    private long cachedHead;
+
+    Inbox(Context context) {
+      this.context = context;
+    }
+
+    void offer(Endpoint endpoint, Packet packet, String handlerId, long routed) {
+      long t = tail.get();
+      if (isProducer() && overflow.isEmpty() && packet.getLength() <= SLOT_SIZE && hasRoom(t)) {
+        fill(slot(t, packet), endpoint, handlerId, routed);
+        // a volatile store, the context may be about to sleep, see handle()
+        tail.set(t + 1);
+      } else {
+        Slot slot = new Slot();
+        slot.packet.wrap(packet.getBuffer().getBuffer(packet.getOffset(),
+            packet.getOffset() + packet.getLength()), 0, packet.getLength());
+        overflow.add(fill(slot, endpoint, handlerId, routed));
+      }
+      if (!scheduled.get() && scheduled.compareAndSet(false, true)) {
+        context.runOnContext(this);
+      }
+    }
+
+    private Slot fill(Slot slot, Endpoint endpoint, String handlerId, long routed) {
+      slot.endpoint = endpoint;
+      slot.handlerId = handlerId;
+      slot.routed = routed;
+      return slot;
+    }
+
+    private boolean isProducer() {
+      if (producer == null) {
+        synchronized (this) {
+          if (producer == null) {
+            producer = Thread.currentThread();
+            bytes = Buffer.buffer(new byte[SLOTS * SLOT_SIZE]);
+            slots = new Slot[SLOTS];
+            for (int i = 0; i < SLOTS; i++) {
+              slots[i] = new Slot();
+            }
+          }
+        }
+      }
+      return producer == Thread.currentThread();
+    }
 
-  public Router(EventBus eb) {
-    this.eb = eb;
+    // true if the slot of position t is free, the head is read again only when it looks full
+    private boolean hasRoom(long t) {
+      if (t - cachedHead >= SLOTS) {
+        cachedHead = head.get();
+      }
+      return t - cachedHead < SLOTS;
+    }
+
+    // copies the packet into the slot of position t
+    private Slot slot(long t, Packet packet) {
+      int index = (int) t & MASK;
+      int start = index * SLOT_SIZE;
+      Buffer from = packet.getBuffer();
+      int offset = packet.getOffset();
+      int length = packet.getLength();
+      int i = 0;
+      for (; i + 8 <= length; i += 8) {
+        bytes.setLong(start + i, from.getLong(offset + i));
+      }
+      for (; i < length; i++) {
+        bytes.setByte(start + i, from.getByte(offset + i));
+      }
+      Slot slot = slots[index];
+      slot.packet.wrap(bytes, start, length);
+      return slot;
+    }
+
+    // handles the packets on the context until the inbox is empty
+    @Override
+    public void handle(Void v) {
+      do {
+        drain();
+        scheduled.set(false);
+      } while ((tail.get() != head.get() || !overflow.isEmpty())
+          && scheduled.compareAndSet(false, true));
+    }
+
+    private void drain() {
+      long h = head.get();
+      while (true) {
+        Slot slot;
+        boolean ring = h != tail.get();
+        if (ring) {
+          slot = slots[(int) h & MASK];
+        } else {
+          slot = overflow.poll();
+          if (slot == null) {
+            return;
+          }
+        }
+        Endpoint endpoint = slot.endpoint;
+        DeviceMetrics metrics = endpoint.metrics;
+        if (metrics != null) {
+          queued.decrement();
+          byte functionId = slot.packet.getFunctionId();
+          endpoint.handler.handle(slot.packet, slot.handlerId);
+          metrics.request(functionId, System.nanoTime() - slot.routed);
+        } else {
+          endpoint.handler.handle(slot.packet, slot.handlerId);
+        }
+        if (ring) {
+          // the slot may be reused from now on
+          head.lazySet(++h);
+        }
+      }
+    }
+  }
+
+  private Router(String name) {
+    this.name = name;
+  }
+
+  private static Routers routers(Vertx vertx) {
+    LocalMap<String, Routers> map = vertx.sharedData().getLocalMap(ROUTERMAP);
+    Routers routers = map.get(ROUTERMAP);
+    if (routers == null) {
+      Routers newRouters = new Routers();
+      routers = map.putIfAbsent(ROUTERMAP, newRouters);
+      if (routers == null) {
+        routers = newRouters;
+      }
+    }
+    return routers;
+  }
+
+  /*
+   * The router of the default listener.
+   */
+  public static Router get(Vertx vertx) {
+    return get(vertx, DEFAULT_LISTENER);
+  }
+
+  /*
+   * The router of the listener name, null is the default listener.
+   */
+  public static Router get(Vertx vertx, String name) {
+    Routers routers = routers(vertx);
+    String key = name == null ? DEFAULT_LISTENER : name;
+    Router router = routers.byName.get(key);
+    return router != null ? router : routers.get(key);
+  }
+
+  /*
+   * The routers of all listeners. The array must not be modified.
+   */
+  public static Router[] all(Vertx vertx) {
+    return routers(vertx).all;
+  }
+
+  /*
+   * The name of the listener, empty for the default listener.
+   */
+  public String name() {
+    return name;
+  }
+
+  private Inbox inbox(Context context) {
+    Inbox inbox = inboxes.get(context);
+    if (inbox == null) {
+      inbox = new Inbox(context);
+      Inbox old = inboxes.putIfAbsent(context, inbox);
+      if (old != null) {
+        inbox = old;
+      }
+    }
+    return inbox;
   }
 
   /*
-   * Extracts the uid and sends the buffer over the eventbus to device with this uid.
+   * Registers the handler for packets addressed to uid. The handler is called on context.
    */
-  public void route(Buffer buffer) {
-    Logger logger = LoggerFactory.getLogger(getClass());
-    byte[] packet = buffer.getBytes();
-    // ByteBuffer bb = ByteBuffer.wrap(packet, 8, packet.length - 8);
-    ByteBuffer bb = ByteBuffer.wrap(packet);
-    bb.order(ByteOrder.LITTLE_ENDIAN);
-    int uid = bb.getInt();
-    String uidString = Utils.base58Encode(uid);
-    logger.trace("routing msg for uid: {}", uidString);
-    eb.publish(uidString, buffer);
+  public void register(long uid, Context context, PacketHandler handler) {
+    Metrics metrics = Metrics.get(context.owner());
+    DeviceMetrics deviceMetrics = null;
+    if (metrics.enabled()) {
+      deviceMetrics = metrics.device(name, (int) uid);
+      metered = true;
+    }
+    Endpoint old = devices.put((int) uid,
+        new Endpoint((int) uid, context, handler, deviceMetrics, inbox(context)));
+    if (old != null) {
+      logger.warn("uid {} is used by more than one device{}", Utils.base58Encode(uid),
+          name.isEmpty() ? "" : " of listener " + name);
+    }
   }
 
+  /*
+   * Registers the handler for broadcast packets (enumerate) of the device with uid.
+   */
+  public synchronized void registerBroadcast(long uid, Context context, PacketHandler handler) {
+    Endpoint[] endpoints = Arrays.copyOf(broadcast, broadcast.length + 1);
+    endpoints[broadcast.length] = new Endpoint((int) uid, context, handler, null, inbox(context));
+    broadcast = endpoints;
+  }
 
+  /*
+   * Removes the device and broadcast handlers of uid.
+   */
+  public synchronized void unregister(long uid) {
+    devices.remove((int) uid);
+    broadcast = Arrays.stream(broadcast).filter(e -> e.uid != (int) uid).toArray(Endpoint[]::new);
+  }
+
+  /*
+   * Removes a broadcast handler, e.g. the shared enumerate handler of a DeviceHost.
+   */
+  public synchronized void unregisterBroadcast(PacketHandler handler) {
+    broadcast = Arrays.stream(broadcast).filter(e -> e.handler != handler).toArray(Endpoint[]::new);
+  }
+
+  /*
+   * Adds the write handler id of a client connection, callbacks are sent to all connections.
+   */
+  public synchronized void addConnection(String handlerId) {
+    String[] ids = Arrays.copyOf(connections, connections.length + 1);
+    ids[connections.length] = handlerId;
+    connections = ids;
+    updateCallbackConnections();
+  }
+
+  /*
+   * Adds a client connection of Brickd, the packets for it are sent to handlerId and the write
+   * queue of socket is watched by writeQueuesFull().
+   */
+  public synchronized void addConnection(String handlerId, NetSocket socket) {
+    addConnection(handlerId);
+    NetSocket[] newSockets = Arrays.copyOf(sockets, sockets.length + 1);
+    newSockets[sockets.length] = socket;
+    sockets = newSockets;
+  }
+
+  /*
+   * Removes the connection and its socket, socket may be null.
+   */
+  public synchronized void removeConnection(String handlerId, NetSocket socket) {
+    removeConnection(handlerId);
+    sockets = Arrays.stream(sockets).filter(s -> s != socket).toArray(NetSocket[]::new);
+  }
+
+  public synchronized void removeConnection(String handlerId) {
+    connections =
+        Arrays.stream(connections).filter(id -> !id.equals(handlerId)).toArray(String[]::new);
+    paused.remove(handlerId);
+    updateCallbackConnections();
+  }
+
+  /*
+   * Stops or resumes the callbacks for a connection that doesn't keep up with reading.
+   */
+  public synchronized void pauseCallbacks(String handlerId, boolean pause) {
+    if (pause ? paused.add(handlerId) : paused.remove(handlerId)) {
+      updateCallbackConnections();
+    }
+  }
+
+  private void updateCallbackConnections() {
+    callbackConnections =
+        Arrays.stream(connections).filter(id -> !paused.contains(id)).toArray(String[]::new);
+  }
+
+  /*
+   * The write handler ids of all client connections. The array must not be modified.
+   */
+  public String[] connections() {
+    return connections;
+  }
+
+  /*
+   * The connections that get the callbacks. The array must not be modified.
+   */
+  public String[] callbackConnections() {
+    return callbackConnections;
+  }
+
+  /*
+   * True if the write queue of a client connection is full. Must be called on the context of
+   * Brickd, which owns the sockets.
+   */
+  public boolean writeQueuesFull() {
+    for (NetSocket socket : sockets) {
+      if (socket.writeQueueFull()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /*
+   * Hands the packet to the device with the uid of the packet. The handlerId of the originating
+   * socket is passed along, devices send their answer only to this socket.
+   */
+  public void route(Packet packet, String handlerId) {
+    int uid = packet.getUidValue();
+    if (uid == BROADCAST_UID) {
+      logger.debug("broadcast msg: {}", packet);
+      for (Endpoint endpoint : broadcast) {
+        deliver(endpoint, packet, handlerId);
+      }
+      return;
+    }
+    Endpoint endpoint = devices.get(uid);
+    if (endpoint == null) {
+      if (logger.isTraceEnabled()) {
+        logger.trace("no device for uid: {}", Utils.base58Encode(uid));
+      }
+      return;
+    }
+    if (logger.isTraceEnabled()) {
+      logger.trace("routing msg for uid: {}", Utils.base58Encode(uid));
+    }
+    deliver(endpoint, packet, handlerId);
+  }
+
+  private void deliver(Endpoint endpoint, Packet packet, String handlerId) {
+    DeviceMetrics metrics = endpoint.metrics;
+    if (metrics != null) {
+      deliverMetered(endpoint, metrics, packet, handlerId);
+    } else if (Vertx.currentContext() == endpoint.context) {
+      endpoint.handler.handle(packet, handlerId);
+    } else {
+      // the usual case: packet is a view on the frame decoder buffer, it must not leave this
+      // thread
+      endpoint.inbox.offer(endpoint, packet, handlerId, 0);
+    }
+  }
+
+  private void deliverMetered(Endpoint endpoint, DeviceMetrics metrics, Packet packet,
+      String handlerId) {
+    long routed = System.nanoTime();
+    byte functionId = packet.getFunctionId();
+    if (Vertx.currentContext() == endpoint.context) {
+      endpoint.handler.handle(packet, handlerId);
+      metrics.request(functionId, System.nanoTime() - routed);
+    } else {
+      queued.increment();
+      endpoint.inbox.offer(endpoint, packet, handlerId, routed);
+    }
+  }
+
+  /*
+   * Counts a callback the CallbackScheduler sends for a device, with metrics only.
+   */
+  public void callbackSent(Buffer packet) {
+    if (!metered) {
+      return;
+    }
+    Endpoint endpoint = devices.get(Integer.reverseBytes(packet.getInt(0)));
+    if (endpoint != null && endpoint.metrics != null) {
+      endpoint.metrics.callback(packet.getByte(FUNCTION_ID_OFFSET));
+    }
+  }
+
+  /*
+   * The requests routed to device contexts which they haven't handled yet, with metrics only.
+   */
+  public long queued() {
+    return queued.sum();
+  }
 }
@@ -0,0 +1,127 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+/*
+ * The time of the emulated devices in milliseconds since the epoch. The callback periods, debounce
+ * periods and value generators all run on this clock. It is configured with the "clock" object of
+ * the Brickd config:
+ *
+ * {"mode": "real"}                    wall clock time, the default
+ * {"mode": "scaled", "speed": 100}    runs 100 times as fast as the wall clock
+ * {"mode": "discrete"}                the CallbackScheduler jumps from one callback to the next as
+ *                                     soon as the connections have taken the packets
+ *
+ * "start" sets the time the clock starts at, milliseconds or an ISO-8601 instant, e.g. the start
+ * of a recorded trace. It defaults to the current time.
+ *
+ * There is one clock per Vertx instance, Brickd configures it before anything else runs.
+ */
+public class SimulationClock implements Shareable {
+  private final static String CLOCKMAP = "simulationclock";
+
+  public enum Mode {
+    REAL, SCALED, DISCRETE
+  }
+
+  private volatile Mode mode = Mode.REAL;
+  private volatile double speed = 1;
+  private volatile long start = System.currentTimeMillis();
+  private volatile long origin = System.nanoTime();
+  // the time in discrete mode, only moved forward by the scheduler
+  private volatile long now;
+
+  public static SimulationClock get(Vertx vertx) {
+    LocalMap<String, SimulationClock> map = vertx.sharedData().getLocalMap(CLOCKMAP);
+    SimulationClock clock = map.get(CLOCKMAP);
+    if (clock == null) {
+      SimulationClock newClock = new SimulationClock();
+      clock = map.putIfAbsent(CLOCKMAP, newClock);
+      if (clock == null) {
+        clock = newClock;
+      }
+    }
+    return clock;
+  }
+
+  /*
+   * Sets mode, speed and start from conf, the clock starts over at start.
+   */
+  public synchronized void configure(JsonObject conf) throws BrickdException {
+    String modeName = conf.getString("mode", "real");
+    Mode newMode;
+    try {
+      newMode = Mode.valueOf(modeName.toUpperCase());
+    } catch (IllegalArgumentException e) {
+      throw new BrickdException("unknown clock mode: " + modeName);
+    }
+    double newSpeed = newMode == Mode.SCALED ? conf.getDouble("speed", 1.0) : 1.0;
+    if (newSpeed <= 0) {
+      throw new BrickdException("clock speed must be positive: " + newSpeed);
+    }
+    Object startConf = conf.getValue("start");
+    long newStart;
+    if (startConf == null) {
+      newStart = System.currentTimeMillis();
+    } else if (startConf instanceof Number) {
+      newStart = ((Number) startConf).longValue();
+    } else {
+      try {
+        newStart = Instant.parse(startConf.toString()).toEpochMilli();
+      } catch (DateTimeParseException e) {
+        throw new BrickdException("invalid clock start: " + startConf);
+      }
+    }
+    speed = newSpeed;
+    start = newStart;
+    now = newStart;
+    origin = System.nanoTime();
+    mode = newMode;
+  }
+
+  public Mode mode() {
+    return mode;
+  }
+
+  public long now() {
+    switch (mode) {
+      case DISCRETE:
+        return now;
+      case SCALED:
+        return start + (long) ((System.nanoTime() - origin) / 1000000.0 * speed);
+      default:
+        return start + (System.nanoTime() - origin) / 1000000;
+    }
+  }
+
+  /*
+   * Moves the discrete clock forward to time, it never goes back.
+   */
+  public void advanceTo(long time) {
+    if (time > now) {
+      now = time;
+    }
+  }
+}
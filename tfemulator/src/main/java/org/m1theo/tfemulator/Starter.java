@@ -34,6 +34,7 @@ import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
 import io.vertx.core.VertxException;
+import io.vertx.core.VertxOptions;
 import io.vertx.core.impl.Args;
 import io.vertx.core.json.DecodeException;
 import io.vertx.core.json.JsonObject;
@@ -56,12 +57,6 @@ public class Starter {
   }
 
   private void runVerticle(String main, Args args) {
-    Vertx vertx = Vertx.vertx();
-    if (vertx == null) {
-      // Throwable should have been logged at this point
-      return;
-    }
-
     String confArg = args.map.get("-conf");
     JsonObject conf;
 
@@ -86,6 +81,18 @@ public class Starter {
       displayUsage();
       return;
     }
+
+    VertxOptions options = new VertxOptions();
+    // the devices and connections are spread over the event loops, default 2 * cores
+    Integer eventLoops = conf.getInteger("eventLoops");
+    if (eventLoops != null) {
+      options.setEventLoopPoolSize(eventLoops);
+    }
+    Vertx vertx = Vertx.vertx(options);
+    if (vertx == null) {
+      // Throwable should have been logged at this point
+      return;
+    }
     DeploymentOptions deploymentOptions = new DeploymentOptions();
     deploymentOptions.setConfig(conf);
     String message = "deploying emulator verticle";
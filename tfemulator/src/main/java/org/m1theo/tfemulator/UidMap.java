@@ -0,0 +1,176 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * Open addressing hash map with primitive int keys (the 32 bit device uid).
+ *
+ * Lookups are lock free and allocate nothing, they run for every packet on the event loops.
+ * Updates are synchronized, they only happen when devices are deployed or undeployed.
+ *
+ * A slot is published by writing the key first and then the value with a volatile store. A reader
+ * loads the value first, if it is not null the key of the slot is visible too. Removed slots keep
+ * their key and get the REMOVED marker, so probe sequences of other keys stay intact.
+ */
+public class UidMap<V> {
+  private final static Object REMOVED = new Object();
+  private final static float LOAD_FACTOR = 0.5f;
+
+  private static class Table {
+    final int[] keys;
+    final AtomicReferenceArray<Object> values;
+    final int mask;
+
+    Table(int capacity) {
+      keys = new int[capacity];
+      values = new AtomicReferenceArray<>(capacity);
+      mask = capacity - 1;
+    }
+  }
+
+  private volatile Table table;
+  // number of used slots including removed ones
+  private int used;
+  private int size;
+
+  public UidMap() {
+    this(64);
+  }
+
+  public UidMap(int expectedSize) {
+    table = new Table(capacityFor(expectedSize));
+  }
+
+  @SuppressWarnings("unchecked")
+  public V get(int uid) {
+    Table t = table;
+    int i = hash(uid) & t.mask;
+    while (true) {
+      Object value = t.values.get(i);
+      if (value == null) {
+        return null;
+      }
+      if (t.keys[i] == uid) {
+        return value == REMOVED ? null : (V) value;
+      }
+      i = (i + 1) & t.mask;
+    }
+  }
+
+  /*
+   * Returns the previous value for the uid or null.
+   */
+  @SuppressWarnings("unchecked")
+  public synchronized V put(int uid, V value) {
+    if (value == null) {
+      throw new IllegalArgumentException("null values are not supported");
+    }
+    Table t = table;
+    int i = hash(uid) & t.mask;
+    while (true) {
+      Object old = t.values.get(i);
+      if (old == null) {
+        break;
+      }
+      if (t.keys[i] == uid) {
+        t.values.set(i, value);
+        if (old == REMOVED) {
+          size++;
+          return null;
+        }
+        return (V) old;
+      }
+      i = (i + 1) & t.mask;
+    }
+    if (used + 1 > t.keys.length * LOAD_FACTOR) {
+      table = t = rehash(t, capacityFor(size + 1));
+      i = hash(uid) & t.mask;
+      while (t.values.get(i) != null) {
+        i = (i + 1) & t.mask;
+      }
+    }
+    t.keys[i] = uid;
+    t.values.set(i, value);
+    used++;
+    size++;
+    return null;
+  }
+
+  @SuppressWarnings("unchecked")
+  public synchronized V remove(int uid) {
+    Table t = table;
+    int i = hash(uid) & t.mask;
+    while (true) {
+      Object old = t.values.get(i);
+      if (old == null) {
+        return null;
+      }
+      if (t.keys[i] == uid) {
+        if (old == REMOVED) {
+          return null;
+        }
+        t.values.set(i, REMOVED);
+        size--;
+        return (V) old;
+      }
+      i = (i + 1) & t.mask;
+    }
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+
+  private Table rehash(Table old, int capacity) {
+    Table t = new Table(capacity);
+    used = 0;
+    for (int j = 0; j < old.keys.length; j++) {
+      Object value = old.values.get(j);
+      if (value != null && value != REMOVED) {
+        int i = hash(old.keys[j]) & t.mask;
+        while (t.values.get(i) != null) {
+          i = (i + 1) & t.mask;
+        }
+        t.keys[i] = old.keys[j];
+        t.values.lazySet(i, value);
+        used++;
+      }
+    }
+    return t;
+  }
+
+  private static int capacityFor(int expectedSize) {
+    int capacity = 16;
+    while (capacity * LOAD_FACTOR < expectedSize) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+
+  // uids are not well distributed in the low bits, mix them (murmur3 finalizer)
+  private static int hash(int uid) {
+    int h = uid;
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+}
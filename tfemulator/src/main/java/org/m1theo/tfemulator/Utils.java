@@ -22,6 +22,9 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Scanner;
 
+import org.m1theo.tfemulator.values.ValueSource;
+
+import io.netty.buffer.Unpooled;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.json.DecodeException;
 import io.vertx.core.json.JsonObject;
@@ -33,6 +36,10 @@ public class Utils {
   // private final static String BASE58 =
   // "123456789abcdefghijkmnopqrstuvwxyzABCDEFGHJKLMNPQRSTUVWXYZ";
   public final static byte CALLBACK_ENUMERATE = (byte) 253;
+  public final static int ENUMERATE_LENGTH = 34;
+  public final static int IDENTITY_LENGTH = 25;
+  // the position of the identity when the config has none
+  public final static char DEFAULT_POSITION = '3';
 
   // TODO Start Move to protocol
   public static Buffer getPayloadFromData(Buffer buffer) {
@@ -105,12 +112,17 @@ public class Utils {
   }
   // TODO END Move to protocol
 
+  /*
+   * The get*DefaultValue functions give the initial values of the device fields: cardinality times
+   * the constant default of the type below, encoded.
+   */
+
   /*
    * get char values
    */
-  public static byte[] getCharRandomValue(int cardinality) {
-    char[] randomValue = new char[] {'a'}; // TODO randomize
-    byte[] bytes = new String(randomValue).getBytes();
+  public static byte[] getCharDefaultValue(int cardinality) {
+    char[] value = new char[] {getDefaultChar()};
+    byte[] bytes = new String(value).getBytes();
     Buffer buffer = Buffer.buffer();
     for (int i = 0; i < cardinality; i++) {
       buffer.appendBytes(bytes);
@@ -122,11 +134,11 @@ public class Utils {
   /*
    * get boolean value: 0 means false, 1 is true
    */
-  public static byte[] getBoolRandomValue(int cardinality) {
-    short randomValue = 0; // TODO randomize
+  public static byte[] getBoolDefaultValue(int cardinality) {
+    short value = (short) (getDefaultBoolean() ? 1 : 0);
     Buffer buffer = Buffer.buffer();
     for (int i = 0; i < cardinality; i++) {
-      buffer.appendByte(getUInt8(randomValue));
+      buffer.appendByte(getUInt8(value));
     }
     return buffer.getBytes();
   }
@@ -134,11 +146,11 @@ public class Utils {
   /*
    * get uint8 compatible byte values cardinality means the number of uint8 values
    */
-  public static byte[] get1ByteRandomValue(int cardinality) {
-    byte randomValue = 100; // TODO randomize
+  public static byte[] get1ByteDefaultValue(int cardinality) {
+    byte value = getDefaultByte();
     Buffer buffer = Buffer.buffer();
     for (int i = 0; i < cardinality; i++) {
-      buffer.appendByte(randomValue);
+      buffer.appendByte(value);
     }
     return buffer.getBytes();
   }
@@ -146,11 +158,11 @@ public class Utils {
   /*
    * get uint8 compatible byte values cardinality means the number of uint8 values
    */
-  public static byte[] get1ByteURandomValue(int cardinality) {
-    short randomValue = 100; // TODO randomize
+  public static byte[] get1ByteUDefaultValue(int cardinality) {
+    short value = getDefaultShort();
     Buffer buffer = Buffer.buffer();
     for (int i = 0; i < cardinality; i++) {
-      buffer.appendByte(getUInt8(randomValue));
+      buffer.appendByte(getUInt8(value));
     }
     return buffer.getBytes();
   }
@@ -158,11 +170,11 @@ public class Utils {
   /*
    * get int16 compatible byte values cardinality means the number of int16 values
    */
-  public static byte[] get2ByteRandomValue(int cardinality) {
-    int randomValue = 100; // TODO randomize
+  public static byte[] get2ByteDefaultValue(int cardinality) {
+    int value = getDefaultInt();
     Buffer buffer = Buffer.buffer();
     for (int i = 0; i < cardinality; i++) {
-      buffer.appendBytes(getUInt16(randomValue));
+      buffer.appendBytes(getUInt16(value));
     }
     return buffer.getBytes();
   }
@@ -170,11 +182,11 @@ public class Utils {
   /*
    * get uint16 compatible byte values cardinality means the number of uint16 values
    */
-  public static byte[] get2ByteURandomValue(int cardinality) {
-    int randomValue = 100; // TODO randomize
+  public static byte[] get2ByteUDefaultValue(int cardinality) {
+    int value = getDefaultInt();
     Buffer buffer = Buffer.buffer();
     for (int i = 0; i < cardinality; i++) {
-      buffer.appendBytes(getUInt16(randomValue));
+      buffer.appendBytes(getUInt16(value));
     }
     return buffer.getBytes();
   }
@@ -182,11 +194,11 @@ public class Utils {
   /*
    * get int32 compatible byte values cardinality means the number of int32 values
    */
-  public static byte[] get4ByteRandomValue(int cardinality) {
-    int randomValue = 100; // TODO randomize
+  public static byte[] get4ByteDefaultValue(int cardinality) {
+    int value = getDefaultInt();
     Buffer buffer = Buffer.buffer();
     for (int i = 0; i < cardinality; i++) {
-      buffer.appendBytes(getUInt32(randomValue));
+      buffer.appendBytes(getUInt32(value));
     }
     return buffer.getBytes();
   }
@@ -194,11 +206,11 @@ public class Utils {
   /*
    * get uint32 compatible byte values cardinality means the number of uint32 values
    */
-  public static byte[] get4ByteURandomValue(int cardinality) {
-    Long randomValue = (long) 100; // TODO randomize
+  public static byte[] get4ByteUDefaultValue(int cardinality) {
+    long value = getDefaultLong();
     Buffer buffer = Buffer.buffer();
     for (int i = 0; i < cardinality; i++) {
-      buffer.appendBytes(getUInt32(randomValue));
+      buffer.appendBytes(getUInt32(value));
     }
     return buffer.getBytes();
   }
@@ -206,11 +218,11 @@ public class Utils {
   /*
    * get uint64 compatible byte values cardinality means the number of uint64 values
    */
-  public static byte[] get8ByteURandomValue(int cardinality) {
-    Long randomValue = (long) 100; // TODO randomize
+  public static byte[] get8ByteUDefaultValue(int cardinality) {
+    long value = getDefaultLong();
     Buffer buffer = Buffer.buffer();
     for (int i = 0; i < cardinality; i++) {
-      buffer.appendBytes(getUInt32(randomValue));
+      buffer.appendBytes(getUInt32(value));
     }
     return buffer.getBytes();
   }
@@ -218,71 +230,77 @@ public class Utils {
   /*
    * get float byte values cardinality means the number of float values
    */
-  public static byte[] getFloatRandomValue(int cardinality) {
-    float randomValue = 100; // TODO randomize
+  public static byte[] getFloatDefaultValue(int cardinality) {
+    float value = getDefaultFloat();
     // Buffer buffer = Buffer.buffer();
     // for (int i = 0; i < cardinality - 1; i++) {
     // // TODO not sure if this is right: BrickRED uses bb.getLong in getFileInfo()
     // buffer.appendFloat(0);
     // }
-    // buffer.appendFloat(randomValue);
+    // buffer.appendFloat(value);
     // return buffer.getBytes();
     Buffer buffer = Buffer.buffer();
     for (int i = 0; i < cardinality; i++) {
-      buffer.appendBytes(getFloat(randomValue));
+      buffer.appendBytes(getFloat(value));
     }
     return buffer.getBytes();
   }
 
-  private static char[] getUidAs8ByteChar(String uid) {
-    char[] cs = uid.toCharArray();
-    char[] ncs = new char[8];
-
+  /*
+   * The uid as 8 chars, padded with '\0'.
+   */
+  private static void appendUidAs8ByteChar(Buffer buffer, String uid) {
     for (int i = 0; i < 8; i++) {
-      if (cs.length > i) {
-        ncs[i] = cs[i];
-      } else {
-        ncs[i] = '\0';
-      }
+      buffer.appendByte(i < uid.length() ? (byte) uid.charAt(i) : 0);
     }
-    return ncs;
   }
 
-
+  /*
+   * Builds the enumerate callback of a device. Devices build it once and keep it, see
+   * Device.registerEnumerate().
+   */
   public static Buffer getEnumerateResponse(String uidString, long uid, int deviceIdentifier) {
-    Buffer buffer = Buffer.buffer();
+    return getEnumerateResponse(uidString, uid, uidString, DEFAULT_POSITION, deviceIdentifier);
+  }
+
+  /*
+   * The enumerate callback of a device connected to the brick connectedUid at position.
+   */
+  public static Buffer getEnumerateResponse(String uidString, long uid, String connectedUid,
+      char position, int deviceIdentifier) {
+    Buffer buffer = Buffer.buffer(ENUMERATE_LENGTH);
     // header
-    buffer
-        .appendBuffer(createHeader(uid, (byte) 34, (byte) CALLBACK_ENUMERATE, (byte) 0, (byte) 0));
-    buffer.appendBuffer(getIdentityPayload(uidString, uid, deviceIdentifier));
+    buffer.appendBuffer(
+        createHeader(uid, (byte) ENUMERATE_LENGTH, CALLBACK_ENUMERATE, (byte) 0, (byte) 0));
+    buffer.appendBuffer(
+        getIdentityPayload(uidString, uid, connectedUid, position, deviceIdentifier));
 
     // enumeration type: short
     buffer.appendByte((byte) 0);
-    System.out.println("length " + buffer.getBytes().length);
-
-
     return buffer;
   }
 
   public static Buffer getIdentityPayload(String uidString, long uid, int deviceIdentifier) {
-    Buffer buffer = Buffer.buffer();
+    return getIdentityPayload(uidString, uid, uidString, DEFAULT_POSITION, deviceIdentifier);
+  }
+
+  /*
+   * The identity of a device connected to the brick connectedUid at position, '0'-'8' for the
+   * stack position of a brick, 'a'-'d' for the port of a bricklet.
+   */
+  public static Buffer getIdentityPayload(String uidString, long uid, String connectedUid,
+      char position, int deviceIdentifier) {
+    Buffer buffer = Buffer.buffer(IDENTITY_LENGTH);
     // body
     // 8 byte uid as char
-    char[] uidAs8ByteChar = getUidAs8ByteChar(uidString);
-    for (int i = 0; i < uidAs8ByteChar.length; i++) {
-      buffer.appendByte((byte) uidAs8ByteChar[i]);
-    }
+    appendUidAs8ByteChar(buffer, uidString);
 
     // 8 byte connnected uid
-    // TODO for now add own uid
-    for (int i = 0; i < uidAs8ByteChar.length; i++) {
-      buffer.appendByte((byte) uidAs8ByteChar[i]);
-    }
+    appendUidAs8ByteChar(buffer, connectedUid);
 
     // position
-    // Die Position kann '0'-'8' (Stack Position) sein.
     // type char
-    buffer.appendByte((byte) '3');
+    buffer.appendByte((byte) position);
 
     // hardware version 3 byte
     buffer.appendByte((byte) 2);
@@ -300,6 +318,13 @@ public class Utils {
     return buffer;
   }
 
+  /*
+   * Returns a read only view on buffer, for packets that are built once and sent many times.
+   */
+  public static Buffer readOnly(Buffer buffer) {
+    return Buffer.buffer(Unpooled.unmodifiableBuffer(buffer.getByteBuf()));
+  }
+
   public static byte[] getFloat(float numfloat) {
     // extract 3 bytes from the 4 byte java float
     int num = Float.floatToIntBits(numfloat);
@@ -324,6 +349,13 @@ public class Utils {
     return bytes;
   }
 
+  /*
+   * Reads a little endian uint32, e.g. a callback period from a setter payload.
+   */
+  public static long decodeUInt32(Buffer buffer, int pos) {
+    return Integer.reverseBytes(buffer.getInt(pos)) & 0xFFFFFFFFL;
+  }
+
   public static byte[] getUInt16(int num) {
     // java int is used for storing uint16 from / for network bufferes
     // extract two bytes from the 4 byte java int
@@ -418,35 +450,40 @@ public class Utils {
     return conf;
   }
 
-  public static int getRandomInt() {
-    return 100;
+  /*
+   * The constant defaults of the getters without a value source, the generated devices write them
+   * with the ResponseWriter. The numbers are the default value of the value sources, the byte[]
+   * variants above use the same constants.
+   */
+  public static int getDefaultInt() {
+    return (int) ValueSource.DEFAULT_VALUE;
   }
 
-  public static long getRandomLong() {
-    return 100L;
+  public static long getDefaultLong() {
+    return (long) ValueSource.DEFAULT_VALUE;
   }
 
-  public static short getRandomShort() {
-    return 100;
+  public static short getDefaultShort() {
+    return (short) ValueSource.DEFAULT_VALUE;
   }
 
-  public static float getRandomFloat() {
-    return (float) 100.0;
+  public static float getDefaultFloat() {
+    return (float) ValueSource.DEFAULT_VALUE;
   }
 
-  public static char getRandomChar() {
+  public static char getDefaultChar() {
     return 'a';
   }
 
-  public static boolean getRandomBoolean() {
+  public static boolean getDefaultBoolean() {
     return false;
   }
 
-  public static String getRandomString() {
+  public static String getDefaultString() {
     return "abc";
   }
 
-  public static byte getRandomByte() {
-    return 100;
+  public static byte getDefaultByte() {
+    return (byte) ValueSource.DEFAULT_VALUE;
   }
 }
@@ -0,0 +1,240 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator.callbacks;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.m1theo.tfemulator.OutboundQueue;
+import org.m1theo.tfemulator.Router;
+import org.m1theo.tfemulator.SimulationClock;
+import org.m1theo.tfemulator.callbacks.PeriodicCallback.PayloadWriter;
+import org.m1theo.tfemulator.callbacks.ThresholdCallback.Sampler;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+/*
+ * Sends the periodic and threshold callbacks of all devices. There is one scheduler per Vertx
+ * instance, it runs all callbacks on one TimingWheel which is driven by a single 1 ms Vert.x
+ * timer, no matter how many devices and callbacks there are. The timer only runs while callbacks
+ * are active.
+ *
+ * Brickd starts the scheduler on its context. Devices create their callbacks with newCallback()
+ * and newThresholdCallback() and change the settings from their own context, the changes are
+ * handed over through a queue.
+ *
+ * The time is the SimulationClock. In discrete mode there is no timer, the scheduler moves the
+ * clock straight to the next deadline as soon as the OutboundQueue of every connection has
+ * drained and the write queues of the sockets have room again, so a slow reader slows the clock
+ * down instead of losing callbacks to the drop policy. The queues live on the context of Brickd
+ * as well, so the packets of one deadline reach them before the next step runs. Without
+ * connections the clock stands still.
+ */
+public class CallbackScheduler implements Shareable {
+  private final static String SCHEDULERMAP = "callbackscheduler";
+  private final static long TICK_MS = 1;
+  private final Vertx vertx;
+  private final EventBus eb;
+  private final SimulationClock clock;
+  private final OutboundQueue.Stats outbound;
+  private final Queue<DeviceCallback> pending = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean running = new AtomicBoolean();
+  private volatile Context context;
+  // only used on context
+  private final TimingWheel wheel = new TimingWheel(0);
+  private long timerId;
+  // the step already gave the queues one turn to flush
+  private boolean waited;
+
+  private CallbackScheduler(Vertx vertx) {
+    this.vertx = vertx;
+    this.eb = vertx.eventBus();
+    this.clock = SimulationClock.get(vertx);
+    this.outbound = OutboundQueue.Stats.get(vertx);
+  }
+
+  public static CallbackScheduler get(Vertx vertx) {
+    LocalMap<String, CallbackScheduler> map = vertx.sharedData().getLocalMap(SCHEDULERMAP);
+    CallbackScheduler scheduler = map.get(SCHEDULERMAP);
+    if (scheduler == null) {
+      CallbackScheduler newScheduler = new CallbackScheduler(vertx);
+      scheduler = map.putIfAbsent(SCHEDULERMAP, newScheduler);
+      if (scheduler == null) {
+        scheduler = newScheduler;
+      }
+    }
+    return scheduler;
+  }
+
+  /*
+   * Runs the scheduler on context.
+   */
+  public void start(Context context) {
+    this.context = context;
+    if (!pending.isEmpty()) {
+      startTimer();
+    }
+  }
+
+  /*
+   * Creates a stopped callback of the device with uid, length is the length of the whole packet.
+   * The callback goes to the connections of router.
+   */
+  public PeriodicCallback newCallback(Router router, long uid, byte functionId, int length,
+      PayloadWriter payload) {
+    return new PeriodicCallback(this, router, uid, functionId, length, payload);
+  }
+
+  /*
+   * Creates a disabled CALLBACK_*_REACHED of the device with uid, count is the number of values of
+   * the callback. The callback goes to the connections of router.
+   */
+  public ThresholdCallback newThresholdCallback(Router router, long uid, byte functionId,
+      ValueType type, int count, Sampler sampler) {
+    return new ThresholdCallback(this, router, uid, functionId, type, count, sampler);
+  }
+
+  void submit(DeviceCallback callback) {
+    if (callback.queued.compareAndSet(false, true)) {
+      pending.offer(callback);
+    }
+    startTimer();
+  }
+
+  private void startTimer() {
+    Context ctx = context;
+    if (ctx != null && running.compareAndSet(false, true)) {
+      ctx.runOnContext(v -> {
+        if (wheel.isEmpty()) {
+          wheel.reset(clock.now());
+        }
+        if (clock.mode() == SimulationClock.Mode.DISCRETE) {
+          step();
+        } else {
+          timerId = vertx.setPeriodic(TICK_MS, this::tick);
+        }
+      });
+    }
+  }
+
+  private void tick(long id) {
+    long now = clock.now();
+    updatePending(now);
+    wheel.advance(now);
+    if (wheel.isEmpty()) {
+      vertx.cancelTimer(timerId);
+      stopped();
+    }
+  }
+
+  /*
+   * One step of the discrete clock: expire the next deadline and come back when the packets are
+   * written.
+   */
+  private void step() {
+    long now = clock.now();
+    updatePending(now);
+    if (wheel.isEmpty()) {
+      stopped();
+      return;
+    }
+    if (!writable()) {
+      // nobody takes the packets yet
+      vertx.setTimer(TICK_MS, id -> step());
+      return;
+    }
+    if (!drained()) {
+      if (waited) {
+        vertx.setTimer(TICK_MS, id -> step());
+      } else {
+        // the flushes of the last deadline are usually queued right behind us
+        waited = true;
+        context.runOnContext(v -> step());
+      }
+      return;
+    }
+    waited = false;
+    long next = Math.max(wheel.nextEvent(), now);
+    clock.advanceTo(next);
+    wheel.advance(next);
+    // queued behind the eventbus deliveries of the packets we just sent
+    context.runOnContext(v -> step());
+  }
+
+  /*
+   * True if there are connections and none of them has a full write queue.
+   */
+  private boolean writable() {
+    boolean connected = false;
+    for (Router router : Router.all(vertx)) {
+      if (router.writeQueuesFull()) {
+        return false;
+      }
+      connected |= router.connections().length > 0;
+    }
+    return connected;
+  }
+
+  /*
+   * True if no connection has packets waiting in its OutboundQueue.
+   */
+  private boolean drained() {
+    for (OutboundQueue queue : outbound.connections()) {
+      if (queue.pendingBytes() > 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void updatePending(long now) {
+    DeviceCallback callback;
+    while ((callback = pending.poll()) != null) {
+      callback.queued.set(false);
+      callback.update(wheel, now);
+    }
+  }
+
+  private void stopped() {
+    running.set(false);
+    // a callback may have been submitted while we were stopping
+    if (!pending.isEmpty()) {
+      startTimer();
+    }
+  }
+
+  /*
+   * Sends an encoded callback packet to all connections of router but the paused ones. The eventbus
+   * copies the buffer for each connection.
+   */
+  void send(Router router, Buffer packet) {
+    router.callbackSent(packet);
+    for (String handlerId : router.callbackConnections()) {
+      eb.send(handlerId, packet);
+    }
+  }
+
+  TimingWheel wheel() {
+    return wheel;
+  }
+}
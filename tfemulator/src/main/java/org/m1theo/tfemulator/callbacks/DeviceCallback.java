@@ -0,0 +1,59 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator.callbacks;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.m1theo.tfemulator.Router;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+
+/*
+ * A CALLBACK_* of one device that is sent by the CallbackScheduler. The device changes the settings
+ * from its own context and submits the callback, the scheduler applies the settings with update()
+ * on its context.
+ */
+abstract class DeviceCallback extends TimingWheel.Timeout {
+  protected final CallbackScheduler scheduler;
+  // the connections of the listener of the device get the callback
+  protected final Router router;
+  protected final long uid;
+  protected final byte functionId;
+  protected final byte length;
+  protected final ResponseWriter writer = new ResponseWriter();
+  final AtomicBoolean queued = new AtomicBoolean();
+
+  DeviceCallback(CallbackScheduler scheduler, Router router, long uid, byte functionId,
+      int length) {
+    this.scheduler = scheduler;
+    this.router = router;
+    this.uid = uid;
+    this.functionId = functionId;
+    this.length = (byte) length;
+  }
+
+  /*
+   * Applies the settings submitted by the device, called by the scheduler.
+   */
+  abstract void update(TimingWheel wheel, long now);
+
+  /*
+   * Starts the callback packet, callbacks have sequence number 0.
+   */
+  protected ResponseWriter header() {
+    return writer.header(uid, length, functionId, (byte) 0, (byte) 0);
+  }
+}
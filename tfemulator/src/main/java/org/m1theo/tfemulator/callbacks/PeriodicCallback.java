@@ -0,0 +1,97 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator.callbacks;
+
+import org.m1theo.tfemulator.Router;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+
+import io.vertx.core.buffer.Buffer;
+
+/*
+ * One CALLBACK_* of one device, sent every period milliseconds to the connections of its listener. A period of 0
+ * disables the callback, like on the real devices.
+ *
+ * setPeriod() may be called from the device context, everything else runs on the scheduler
+ * context.
+ */
+public class PeriodicCallback extends DeviceCallback {
+
+  /*
+   * Writes the payload of the callback packet.
+   */
+  @FunctionalInterface
+  public interface PayloadWriter {
+    void write(ResponseWriter writer);
+  }
+
+  private final PayloadWriter payload;
+  // set by the device, picked up by the scheduler
+  private volatile long requestedPeriod;
+  // only used on the scheduler context
+  private long period;
+
+  PeriodicCallback(CallbackScheduler scheduler, Router router, long uid, byte functionId,
+      int length, PayloadWriter payload) {
+    super(scheduler, router, uid, functionId, length);
+    this.payload = payload;
+  }
+
+  /*
+   * Sets the period in milliseconds, 0 stops the callback.
+   */
+  public void setPeriod(long period) {
+    requestedPeriod = period;
+    scheduler.submit(this);
+  }
+
+  public long getPeriod() {
+    return requestedPeriod;
+  }
+
+  @Override
+  void update(TimingWheel wheel, long now) {
+    long requested = requestedPeriod;
+    if (requested == period) {
+      return;
+    }
+    period = requested;
+    if (period <= 0) {
+      wheel.cancel(this);
+    } else {
+      wheel.schedule(this, now + period);
+    }
+  }
+
+  @Override
+  protected void expire(long now) {
+    if (period <= 0) {
+      return;
+    }
+    scheduler.send(router, encode());
+    // keep the rhythm, but don't try to catch up if we fell behind
+    long next = deadline() + period;
+    scheduler.wheel().schedule(this, next > now ? next : now + 1);
+  }
+
+  /*
+   * Writes the callback packet, it is valid until the next call.
+   */
+  Buffer encode() {
+    payload.write(header());
+    return writer.buffer();
+  }
+}
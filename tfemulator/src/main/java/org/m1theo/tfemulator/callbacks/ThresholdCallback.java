@@ -0,0 +1,196 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator.callbacks;
+
+import org.m1theo.tfemulator.Router;
+
+import io.vertx.core.buffer.Buffer;
+
+/*
+ * One CALLBACK_*_REACHED of one device. The threshold is the payload of the
+ * set*CallbackThreshold request: an option char followed by a min and a max for every value of the
+ * callback. It is decoded once when it is applied, sampling and checking the values works on
+ * primitive arrays and allocates nothing.
+ *
+ * The options are the ones of the devices:
+ * 'x' callback is turned off
+ * 'o' values are outside of min and max
+ * 'i' values are inside of min and max
+ * '<' values are smaller than min
+ * '>' values are greater than min
+ * Callbacks with more than one value (e.g. acceleration x, y, z) are only sent when all values
+ * meet the threshold.
+ *
+ * While the threshold is on, the values are sampled every SAMPLE_PERIOD milliseconds. When they
+ * meet the threshold the callback is sent, while it stays reached it is repeated once per debounce
+ * period.
+ *
+ * setThreshold() and setDebounce() may be called from the device context, everything else runs on
+ * the scheduler context.
+ */
+public class ThresholdCallback extends DeviceCallback {
+  public final static long SAMPLE_PERIOD = 10;
+  public final static long DEFAULT_DEBOUNCE = 100;
+  private final static char OFF = 'x';
+
+  /*
+   * Fills values with the current values of the device.
+   */
+  @FunctionalInterface
+  public interface Sampler {
+    void sample(long[] values);
+  }
+
+  private final ValueType type;
+  private final Sampler sampler;
+  // set by the device, picked up by the scheduler
+  private volatile Buffer requestedThreshold;
+  private volatile long requestedDebounce = DEFAULT_DEBOUNCE;
+  // only used on the scheduler context
+  private Buffer threshold;
+  private char option = OFF;
+  private long debounce = DEFAULT_DEBOUNCE;
+  private final long[] values;
+  private final long[] min;
+  private final long[] max;
+
+  ThresholdCallback(CallbackScheduler scheduler, Router router, long uid, byte functionId,
+      ValueType type, int count, Sampler sampler) {
+    super(scheduler, router, uid, functionId, 8 + type.size() * count);
+    this.type = type;
+    this.sampler = sampler;
+    values = new long[count];
+    min = new long[count];
+    max = new long[count];
+  }
+
+  /*
+   * Sets the threshold from the payload of a set*CallbackThreshold request, null turns it off.
+   */
+  public void setThreshold(Buffer threshold) {
+    requestedThreshold = threshold;
+    scheduler.submit(this);
+  }
+
+  /*
+   * Sets the debounce period in milliseconds.
+   */
+  public void setDebounce(long debounce) {
+    requestedDebounce = debounce;
+    scheduler.submit(this);
+  }
+
+  /*
+   * Turns the callback off, e.g. when the device is stopped.
+   */
+  public void disable() {
+    setThreshold(null);
+  }
+
+  public char getOption() {
+    return option;
+  }
+
+  @Override
+  void update(TimingWheel wheel, long now) {
+    debounce = requestedDebounce;
+    Buffer requested = requestedThreshold;
+    if (requested == threshold) {
+      return;
+    }
+    threshold = requested;
+    decode(requested);
+    if (option == OFF) {
+      wheel.cancel(this);
+    } else if (!isScheduled()) {
+      wheel.schedule(this, now);
+    }
+  }
+
+  private void decode(Buffer threshold) {
+    int size = type.size();
+    if (threshold == null || threshold.length() < 1 + 2 * size * values.length) {
+      option = OFF;
+      return;
+    }
+    option = (char) threshold.getByte(0);
+    for (int i = 0; i < values.length; i++) {
+      min[i] = type.decode(threshold, 1 + 2 * i * size);
+      max[i] = type.decode(threshold, 1 + (2 * i + 1) * size);
+    }
+    if (option != 'o' && option != 'i' && option != '<' && option != '>') {
+      option = OFF;
+    }
+  }
+
+  @Override
+  protected void expire(long now) {
+    if (option == OFF) {
+      return;
+    }
+    sampler.sample(values);
+    if (reached()) {
+      scheduler.send(router, encode());
+      scheduler.wheel().schedule(this, now + (debounce > 0 ? debounce : 1));
+    } else {
+      scheduler.wheel().schedule(this, now + SAMPLE_PERIOD);
+    }
+  }
+
+  /*
+   * Normalizes the sampled values and checks them against the threshold.
+   */
+  boolean reached() {
+    for (int i = 0; i < values.length; i++) {
+      long value = type.normalize(values[i]);
+      values[i] = value;
+      boolean met;
+      switch (option) {
+        case 'o':
+          met = value < min[i] || value > max[i];
+          break;
+        case 'i':
+          met = value >= min[i] && value <= max[i];
+          break;
+        case '<':
+          met = value < min[i];
+          break;
+        case '>':
+          met = value > min[i];
+          break;
+        default:
+          met = false;
+          break;
+      }
+      if (!met) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /*
+   * Writes the callback packet with the sampled values, it is valid until the next call.
+   */
+  Buffer encode() {
+    header();
+    for (int i = 0; i < values.length; i++) {
+      type.write(writer, values[i]);
+    }
+    return writer.buffer();
+  }
+}
@@ -0,0 +1,220 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator.callbacks;
+
+/*
+ * Hierarchical timing wheel with 4 levels of 256 slots, one tick per millisecond. Deadlines up to
+ * 2^32 ticks ahead (the range of the uint32 periods) are placed directly.
+ *
+ * Level 0 holds the timeouts of the next 256 ticks, level 1 the next 256 * 256 ticks and so on.
+ * Whenever level 0 wraps around, the next slot of level 1 is cascaded down, the same happens
+ * between the upper levels (like the classic Linux kernel timer wheel). Scheduling and cancelling
+ * are O(1), a tick costs the timeouts of one slot.
+ *
+ * Timeouts are intrusive list nodes, scheduling allocates nothing.
+ *
+ * Not thread safe, CallbackScheduler drives it from one context.
+ */
+public class TimingWheel {
+  private final static int LEVELS = 4;
+  private final static int WHEEL_BITS = 8;
+  private final static int SLOTS = 1 << WHEEL_BITS;
+  private final static int MASK = SLOTS - 1;
+  private final static long MAX_DELTA = (1L << (LEVELS * WHEEL_BITS)) - 1;
+
+  public abstract static class Timeout {
+    private long deadline;
+    private Timeout prev;
+    private Timeout next;
+    private int level = -1;
+    private int slot;
+
+    /*
+     * Called by advance() when the deadline is reached. May schedule the timeout again.
+     */
+    protected abstract void expire(long now);
+
+    public boolean isScheduled() {
+      return level >= 0;
+    }
+
+    public long deadline() {
+      return deadline;
+    }
+  }
+
+  private final Timeout[][] wheels = new Timeout[LEVELS][SLOTS];
+  // the next tick to process
+  private long base;
+  private int size;
+
+  public TimingWheel(long now) {
+    base = now;
+  }
+
+  public void schedule(Timeout timeout, long deadline) {
+    if (timeout.isScheduled()) {
+      unlink(timeout);
+      size--;
+    }
+    timeout.deadline = deadline;
+    add(timeout);
+    size++;
+  }
+
+  public void cancel(Timeout timeout) {
+    if (timeout.isScheduled()) {
+      unlink(timeout);
+      size--;
+    }
+  }
+
+  /*
+   * Moves an empty wheel to now, so advance() doesn't walk through the idle ticks.
+   */
+  public void reset(long now) {
+    if (size != 0) {
+      throw new IllegalStateException("wheel is not empty");
+    }
+    base = now;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /*
+   * The next tick advance() has work at: the first deadline on level 0 before level 0 wraps, else
+   * the wrap, which cascades the upper levels. Long.MAX_VALUE for an empty wheel. Lets a discrete
+   * clock jump over the idle ticks.
+   */
+  public long nextEvent() {
+    if (size == 0) {
+      return Long.MAX_VALUE;
+    }
+    if ((base & MASK) == 0) {
+      // the cascade is still to do
+      return base;
+    }
+    long wrap = (base | MASK) + 1;
+    for (long tick = base; tick < wrap; tick++) {
+      if (wheels[0][(int) (tick & MASK)] != null) {
+        return tick;
+      }
+    }
+    return wrap;
+  }
+
+  /*
+   * Expires all timeouts with a deadline up to and including now.
+   */
+  public void advance(long now) {
+    while (base <= now) {
+      int index = (int) (base & MASK);
+      if (index == 0) {
+        // level 0 wrapped, pull down the next slot of level 1 and of the levels above if they
+        // wrapped as well
+        for (int level = 1; level < LEVELS; level++) {
+          if (cascade(level, (int) ((base >>> (level * WHEEL_BITS)) & MASK)) != 0) {
+            break;
+          }
+        }
+      }
+      Timeout timeout = wheels[0][index];
+      wheels[0][index] = null;
+      long tick = base;
+      // timeouts scheduled from expire() must not land in the slot we are processing
+      base++;
+      while (timeout != null) {
+        Timeout next = timeout.next;
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.level = -1;
+        size--;
+        timeout.expire(tick);
+        timeout = next;
+      }
+    }
+  }
+
+  private int cascade(int level, int index) {
+    Timeout timeout = wheels[level][index];
+    wheels[level][index] = null;
+    while (timeout != null) {
+      Timeout next = timeout.next;
+      timeout.prev = null;
+      timeout.next = null;
+      add(timeout);
+      timeout = next;
+    }
+    return index;
+  }
+
+  private void add(Timeout timeout) {
+    long deadline = timeout.deadline;
+    long delta = deadline - base;
+    int level;
+    int slot;
+    if (delta < 0) {
+      // already due, expires with the next tick
+      level = 0;
+      slot = (int) (base & MASK);
+    } else if (delta < 1L << WHEEL_BITS) {
+      level = 0;
+      slot = (int) (deadline & MASK);
+    } else if (delta < 1L << (2 * WHEEL_BITS)) {
+      level = 1;
+      slot = (int) ((deadline >>> WHEEL_BITS) & MASK);
+    } else if (delta < 1L << (3 * WHEEL_BITS)) {
+      level = 2;
+      slot = (int) ((deadline >>> (2 * WHEEL_BITS)) & MASK);
+    } else {
+      if (delta > MAX_DELTA) {
+        deadline = base + MAX_DELTA;
+        timeout.deadline = deadline;
+      }
+      level = 3;
+      slot = (int) ((deadline >>> (3 * WHEEL_BITS)) & MASK);
+    }
+    Timeout head = wheels[level][slot];
+    timeout.next = head;
+    if (head != null) {
+      head.prev = timeout;
+    }
+    wheels[level][slot] = timeout;
+    timeout.level = level;
+    timeout.slot = slot;
+  }
+
+  private void unlink(Timeout timeout) {
+    if (timeout.prev != null) {
+      timeout.prev.next = timeout.next;
+    } else {
+      wheels[timeout.level][timeout.slot] = timeout.next;
+    }
+    if (timeout.next != null) {
+      timeout.next.prev = timeout.prev;
+    }
+    timeout.prev = null;
+    timeout.next = null;
+    timeout.level = -1;
+  }
+}
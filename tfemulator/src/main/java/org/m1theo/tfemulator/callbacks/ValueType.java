@@ -0,0 +1,84 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator.callbacks;
+
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+
+import io.vertx.core.buffer.Buffer;
+
+/*
+ * The integer types of threshold values. All of them fit into a long, so thresholds are compared
+ * without boxing no matter which type the device uses.
+ */
+public enum ValueType {
+  INT8(1, true), UINT8(1, false), INT16(2, true), UINT16(2, false), INT32(4, true), UINT32(4,
+      false);
+
+  private final int size;
+  private final boolean signed;
+
+  private ValueType(int size, boolean signed) {
+    this.size = size;
+    this.signed = signed;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /*
+   * Cuts a value down to what goes over the wire, e.g. 70000 is 4464 as uint16.
+   */
+  public long normalize(long value) {
+    switch (size) {
+      case 1:
+        return signed ? (byte) value : value & 0xFFL;
+      case 2:
+        return signed ? (short) value : value & 0xFFFFL;
+      default:
+        return signed ? (int) value : value & 0xFFFFFFFFL;
+    }
+  }
+
+  /*
+   * Reads a little endian value at pos.
+   */
+  public long decode(Buffer buffer, int pos) {
+    switch (size) {
+      case 1:
+        return normalize(buffer.getByte(pos));
+      case 2:
+        return normalize(Short.reverseBytes(buffer.getShort(pos)));
+      default:
+        return normalize(Integer.reverseBytes(buffer.getInt(pos)));
+    }
+  }
+
+  public void write(ResponseWriter writer, long value) {
+    switch (size) {
+      case 1:
+        writer.writeInt8((byte) value, 1);
+        break;
+      case 2:
+        writer.writeInt16((short) value, 1);
+        break;
+      default:
+        writer.writeInt32((int) value, 1);
+        break;
+    }
+  }
+}
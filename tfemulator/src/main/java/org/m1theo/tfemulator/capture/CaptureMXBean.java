@@ -0,0 +1,35 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator.capture;
+
+/*
+ * The packet capture over JMX, Enabled turns it on and off at runtime.
+ */
+public interface CaptureMXBean {
+  boolean isEnabled();
+
+  void setEnabled(boolean enabled);
+
+  long getPackets();
+
+  long getBytes();
+
+  /*
+   * The file written to, empty if there is none.
+   */
+  String getFile();
+}
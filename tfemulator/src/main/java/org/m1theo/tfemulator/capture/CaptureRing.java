@@ -0,0 +1,148 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator.capture;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import io.vertx.core.buffer.Buffer;
+
+/*
+ * A ring of pcapng files, each memory mapped at its full size. A packet is an Enhanced Packet Block
+ * written straight into the mapping, no syscall per packet. When the next block doesn't fit, the
+ * file is truncated to its blocks and the next file of the ring is started, after the last one the
+ * first is overwritten. Every file starts with its own section and interface, so each can be opened
+ * alone.
+ *
+ * The interface has the link type USER0 and nanosecond timestamps. The packet data is a pseudo
+ * header, the connection id (uint32 big endian), the direction (0 from the client, 1 to the client)
+ * and 3 reserved bytes, followed by the Tinkerforge packet. In Wireshark USER0 can be given a
+ * dissector for that in the DLT_USER preferences.
+ *
+ * The pages are written back by the OS, a file that is still written to, or was left by a process
+ * that died, ends with zeros after the last block.
+ *
+ * Not thread safe, PacketCapture serializes the writes.
+ */
+class CaptureRing {
+  final static int LINKTYPE_USER0 = 147;
+  final static int PSEUDO_HEADER_LENGTH = 8;
+  final static int MIN_FILE_SIZE = 4096;
+  private final static int SECTION_HEADER_BLOCK = 0x0A0D0D0A;
+  private final static int INTERFACE_DESCRIPTION_BLOCK = 1;
+  private final static int ENHANCED_PACKET_BLOCK = 6;
+  private final static int BYTE_ORDER_MAGIC = 0x1A2B3C4D;
+  private final static short OPTION_END = 0;
+  private final static short OPTION_TSRESOL = 9;
+  // block type, length, interface, timestamp, captured and original length, trailing length
+  private final static int PACKET_BLOCK_OVERHEAD = 32;
+
+  private final Path directory;
+  private final String prefix;
+  private final int fileSize;
+  private final int files;
+  private int index = -1;
+  private Path path;
+  private FileChannel channel;
+  private MappedByteBuffer map;
+
+  CaptureRing(Path directory, String prefix, int fileSize, int files) {
+    this.directory = directory;
+    this.prefix = prefix;
+    this.fileSize = fileSize;
+    this.files = files;
+  }
+
+  /*
+   * Writes length bytes of buffer from offset, timestamp is in nanoseconds since the epoch.
+   */
+  void write(long timestamp, int connection, int direction, Buffer buffer, int offset, int length)
+      throws IOException {
+    int captured = PSEUDO_HEADER_LENGTH + length;
+    int blockLength = PACKET_BLOCK_OVERHEAD + ((captured + 3) & ~3);
+    if (map == null || map.remaining() < blockLength) {
+      next();
+    }
+    MappedByteBuffer out = map;
+    out.putInt(ENHANCED_PACKET_BLOCK);
+    out.putInt(blockLength);
+    out.putInt(0);
+    out.putInt((int) (timestamp >>> 32));
+    out.putInt((int) timestamp);
+    out.putInt(captured);
+    out.putInt(captured);
+    out.putInt(Integer.reverseBytes(connection));
+    out.putInt(direction);
+    for (int i = 0; i < length; i++) {
+      out.put(buffer.getByte(offset + i));
+    }
+    for (int i = captured; (i & 3) != 0; i++) {
+      out.put((byte) 0);
+    }
+    out.putInt(blockLength);
+  }
+
+  /*
+   * The file written to, null before the first packet and after finish().
+   */
+  Path path() {
+    return channel != null ? path : null;
+  }
+
+  private void next() throws IOException {
+    finish();
+    index = (index + 1) % files;
+    path = directory.resolve(prefix + "-" + index + ".pcapng");
+    Files.createDirectories(directory);
+    channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    map = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+    map.order(ByteOrder.LITTLE_ENDIAN);
+    // section, unknown length
+    map.putInt(SECTION_HEADER_BLOCK).putInt(28).putInt(BYTE_ORDER_MAGIC).putShort((short) 1)
+        .putShort((short) 0).putLong(-1L).putInt(28);
+    // interface 0, no snap length, timestamps in nanoseconds
+    map.putInt(INTERFACE_DESCRIPTION_BLOCK).putInt(32).putShort((short) LINKTYPE_USER0)
+        .putShort((short) 0).putInt(0);
+    map.putShort(OPTION_TSRESOL).putShort((short) 1).put((byte) 9).put(new byte[3]);
+    map.putShort(OPTION_END).putShort((short) 0);
+    map.putInt(32);
+  }
+
+  /*
+   * Truncates the current file to its blocks and closes it, the next write starts the next file.
+   */
+  void finish() throws IOException {
+    if (channel == null) {
+      return;
+    }
+    try {
+      // the OS writes the pages back, the mapping goes away with the buffer and nothing touches it
+      // past the position
+      channel.truncate(map.position());
+    } finally {
+      channel.close();
+      channel = null;
+      map = null;
+    }
+  }
+}
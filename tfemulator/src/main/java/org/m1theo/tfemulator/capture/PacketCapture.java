@@ -0,0 +1,275 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator.capture;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.m1theo.tfemulator.BrickdException;
+import org.m1theo.tfemulator.protocol.FrameDecoder;
+import org.m1theo.tfemulator.protocol.Packet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+/*
+ * Captures the packets of all connections of Brickd into pcapng files, with a nanosecond timestamp
+ * and the id of the connection (see CaptureRing for the format). Configured with the "capture"
+ * object of the Brickd config:
+ *
+ * "capture": {"directory": "capture", "prefix": "brickd", "fileSize": 67108864, "files": 4,
+ *             "enabled": true, "jmx": true, "jmxName": "brickd"}
+ *
+ * Brickd captures the packets it reads, the OutboundQueue the packets when it writes them to the
+ * socket. While the capture is off that costs a volatile read per packet. It is turned on and off at
+ * runtime with enable() and disable() or the Enabled attribute of the MBean
+ * org.m1theo.tfemulator:type=Capture. Turning it off closes the file, so it can be opened right
+ * away, turning it on again starts the next file of the ring.
+ *
+ * There is one capture per Vertx instance. The writes are serialized, the connections of all
+ * listeners run on the context of Brickd anyway.
+ */
+public class PacketCapture implements Shareable {
+  private final static Logger logger = LoggerFactory.getLogger(PacketCapture.class);
+  private final static String CAPTUREMAP = "packetcapture";
+  public final static int DEFAULT_FILE_SIZE = 64 * 1024 * 1024;
+  public final static int DEFAULT_FILES = 4;
+  public final static int FROM_CLIENT = 0;
+  public final static int TO_CLIENT = 1;
+
+  private volatile boolean enabled;
+  // only used while holding the lock
+  private CaptureRing ring;
+  private long packets;
+  private long bytes;
+  private ObjectName objectName;
+  private final long epochOrigin = System.currentTimeMillis() * 1000000L;
+  private final long nanoOrigin = System.nanoTime();
+
+  public static PacketCapture get(Vertx vertx) {
+    LocalMap<String, PacketCapture> map = vertx.sharedData().getLocalMap(CAPTUREMAP);
+    PacketCapture capture = map.get(CAPTUREMAP);
+    if (capture == null) {
+      PacketCapture newCapture = new PacketCapture();
+      capture = map.putIfAbsent(CAPTUREMAP, newCapture);
+      if (capture == null) {
+        capture = newCapture;
+      }
+    }
+    return capture;
+  }
+
+  public synchronized void configure(JsonObject conf) throws BrickdException {
+    int fileSize = conf.getInteger("fileSize", DEFAULT_FILE_SIZE);
+    if (fileSize < CaptureRing.MIN_FILE_SIZE) {
+      throw new BrickdException("capture fileSize must be at least " + CaptureRing.MIN_FILE_SIZE
+          + ": " + fileSize);
+    }
+    int files = conf.getInteger("files", DEFAULT_FILES);
+    if (files < 1) {
+      throw new BrickdException("capture needs at least one file: " + files);
+    }
+    Path directory = Paths.get(conf.getString("directory", "capture"));
+    close();
+    ring = new CaptureRing(directory, conf.getString("prefix", "brickd"), fileSize, files);
+    if (conf.getBoolean("jmx", true)) {
+      try {
+        registerMBean(conf.getString("jmxName", "brickd"));
+      } catch (JMException e) {
+        throw new BrickdException("can't register the capture MBean: " + e.getMessage());
+      }
+    }
+    enabled = conf.getBoolean("enabled", true);
+    logger.info("packet capture to {}, {} files of {} bytes, {}", directory.toAbsolutePath(),
+        files, fileSize, enabled ? "on" : "off");
+  }
+
+  private void registerMBean(String name) throws JMException {
+    MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+    Jmx mbean = new Jmx(this);
+    for (int i = 1;; i++) {
+      ObjectName candidate = new ObjectName("org.m1theo.tfemulator:type=Capture,name="
+          + ObjectName.quote(i == 1 ? name : name + "-" + i));
+      try {
+        mbeanServer.registerMBean(mbean, candidate);
+        objectName = candidate;
+        return;
+      } catch (InstanceAlreadyExistsException e) {
+        // another emulator in this JVM
+      }
+    }
+  }
+
+  public boolean enabled() {
+    return enabled;
+  }
+
+  /*
+   * Turns the capture on, only after configure().
+   */
+  public synchronized void enable() {
+    if (ring == null) {
+      throw new IllegalStateException("the capture is not configured");
+    }
+    enabled = true;
+  }
+
+  /*
+   * Turns the capture off and closes the file.
+   */
+  public synchronized void disable() {
+    enabled = false;
+    if (ring != null) {
+      try {
+        ring.finish();
+      } catch (IOException e) {
+        logger.warn("can't close capture file: {}", e.getMessage());
+      }
+    }
+  }
+
+  /*
+   * Turns the capture off and unregisters the MBean, Brickd calls it when it stops.
+   */
+  public synchronized void close() {
+    disable();
+    ring = null;
+    if (objectName != null) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+      } catch (JMException e) {
+        logger.warn("can't unregister {}: {}", objectName, e.getMessage());
+      }
+      objectName = null;
+    }
+  }
+
+  /*
+   * A packet read from connection, call it only if enabled().
+   */
+  public void received(int connection, Packet packet) {
+    write(connection, FROM_CLIENT, packet.getBuffer(), packet.getOffset(), packet.getLength());
+  }
+
+  /*
+   * Packets written to connection, call it only if enabled(). A buffer may hold several packets,
+   * each is a packet block of its own.
+   */
+  public void sent(int connection, Buffer buffer) {
+    int offset = 0;
+    int end = buffer.length();
+    while (offset < end) {
+      int length = end - offset;
+      if (length >= FrameDecoder.HEADER_LENGTH) {
+        length = Math.min(length,
+            Math.max(FrameDecoder.HEADER_LENGTH,
+                buffer.getByte(offset + FrameDecoder.LENGTH_OFFSET) & 0xFF));
+      }
+      write(connection, TO_CLIENT, buffer, offset, length);
+      offset += length;
+    }
+  }
+
+  private synchronized void write(int connection, int direction, Buffer buffer, int offset,
+      int length) {
+    if (!enabled) {
+      // turned off since the caller checked
+      return;
+    }
+    long timestamp = epochOrigin + System.nanoTime() - nanoOrigin;
+    try {
+      ring.write(timestamp, connection, direction, buffer, offset, length);
+      packets++;
+      bytes += length;
+    } catch (IOException e) {
+      logger.error("packet capture failed, turned off: {}", e.getMessage());
+      disable();
+    }
+  }
+
+  public synchronized long packets() {
+    return packets;
+  }
+
+  public synchronized long bytes() {
+    return bytes;
+  }
+
+  /*
+   * The file written to, null if there is none.
+   */
+  public synchronized Path file() {
+    return ring != null ? ring.path() : null;
+  }
+
+  /*
+   * The name of the MBean, null without JMX.
+   */
+  public synchronized ObjectName objectName() {
+    return objectName;
+  }
+
+  private static class Jmx implements CaptureMXBean {
+    private final PacketCapture capture;
+
+    Jmx(PacketCapture capture) {
+      this.capture = capture;
+    }
+
+    @Override
+    public boolean isEnabled() {
+      return capture.enabled();
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+      if (enabled) {
+        capture.enable();
+      } else {
+        capture.disable();
+      }
+    }
+
+    @Override
+    public long getPackets() {
+      return capture.packets();
+    }
+
+    @Override
+    public long getBytes() {
+      return capture.bytes();
+    }
+
+    @Override
+    public String getFile() {
+      Path file = capture.file();
+      return file != null ? file.toString() : "";
+    }
+  }
+}
@@ -23,25 +23,28 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.callbacks.CallbackScheduler;
+import org.m1theo.tfemulator.callbacks.PeriodicCallback;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * Drives one brushed DC motor with up to 28V and 5A (peak)
  */
-public class BrickDC extends AbstractVerticle {
+public class BrickDC extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 11;
 public final static String DEVICE_DISPLAY_NAME = "DC Brick";
@@ -89,6 +92,12 @@ public final static String DEVICE_DISPLAY_NAME = "DC Brick";
   private Buffer minimumVoltage = getMinimumVoltageDefault();
   private Buffer StatusLED = isStatusLEDEnabledDefault();
   private Buffer acceleration = getAccelerationDefault();
+  private ValueSource[] currentVelocityValues;
+  private ValueSource[] stackInputVoltageValues;
+  private ValueSource[] externalInputVoltageValues;
+  private ValueSource[] currentConsumptionValues;
+  private ValueSource[] chipTemperatureValues;
+  private PeriodicCallback currentVelocityCallback;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -103,133 +112,140 @@ public final static String DEVICE_DISPLAY_NAME = "DC Brick";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickDC.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
-
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    Router router = router();
+
+    currentVelocityValues = valueSources("currentVelocity", 1);
+    stackInputVoltageValues = valueSources("stackInputVoltage", 1);
+    externalInputVoltageValues = valueSources("externalInputVoltage", 1);
+    currentConsumptionValues = valueSources("currentConsumption", 1);
+    chipTemperatureValues = valueSources("chipTemperature", 1);
+
+    CallbackScheduler scheduler = CallbackScheduler.get(vertx);
+    currentVelocityCallback = scheduler.newCallback(router, uidBytes, CALLBACK_CURRENT_VELOCITY, 8 + 2, out -> {
+      out.writeInt16((short) currentVelocityValues[0].next(), 1);
+    });
+
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
 
   }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    currentVelocityCallback.setPeriod(0);
+    router().unregister(uidBytes);
+  }
+
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_SET_VELOCITY) {
-      buffer = setVelocity(packet);
-    }
-    else if (functionId == FUNCTION_GET_VELOCITY) {
-      buffer = getVelocity(packet);
-    }
-    else if (functionId == FUNCTION_GET_CURRENT_VELOCITY) {
-      buffer = getCurrentVelocity(packet);
-    }
-    else if (functionId == FUNCTION_SET_ACCELERATION) {
-      buffer = setAcceleration(packet);
-    }
-    else if (functionId == FUNCTION_GET_ACCELERATION) {
-      buffer = getAcceleration(packet);
-    }
-    else if (functionId == FUNCTION_SET_PWM_FREQUENCY) {
-      buffer = setPWMFrequency(packet);
-    }
-    else if (functionId == FUNCTION_GET_PWM_FREQUENCY) {
-      buffer = getPWMFrequency(packet);
-    }
-    else if (functionId == FUNCTION_FULL_BRAKE) {
-      buffer = fullBrake(packet);
-    }
-    else if (functionId == FUNCTION_GET_STACK_INPUT_VOLTAGE) {
-      buffer = getStackInputVoltage(packet);
-    }
-    else if (functionId == FUNCTION_GET_EXTERNAL_INPUT_VOLTAGE) {
-      buffer = getExternalInputVoltage(packet);
-    }
-    else if (functionId == FUNCTION_GET_CURRENT_CONSUMPTION) {
-      buffer = getCurrentConsumption(packet);
-    }
-    else if (functionId == FUNCTION_ENABLE) {
-      buffer = enable(packet);
-    }
-    else if (functionId == FUNCTION_DISABLE) {
-      buffer = disable(packet);
-    }
-    else if (functionId == FUNCTION_IS_ENABLED) {
-      buffer = isEnabled(packet);
-    }
-    else if (functionId == FUNCTION_SET_MINIMUM_VOLTAGE) {
-      buffer = setMinimumVoltage(packet);
-    }
-    else if (functionId == FUNCTION_GET_MINIMUM_VOLTAGE) {
-      buffer = getMinimumVoltage(packet);
-    }
-    else if (functionId == FUNCTION_SET_DRIVE_MODE) {
-      buffer = setDriveMode(packet);
-    }
-    else if (functionId == FUNCTION_GET_DRIVE_MODE) {
-      buffer = getDriveMode(packet);
-    }
-    else if (functionId == FUNCTION_SET_CURRENT_VELOCITY_PERIOD) {
-      buffer = setCurrentVelocityPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_CURRENT_VELOCITY_PERIOD) {
-      buffer = getCurrentVelocityPeriod(packet);
-    }
-    else if (functionId == FUNCTION_ENABLE_STATUS_LED) {
-      buffer = enableStatusLED(packet);
-    }
-    else if (functionId == FUNCTION_DISABLE_STATUS_LED) {
-      buffer = disableStatusLED(packet);
-    }
-    else if (functionId == FUNCTION_IS_STATUS_LED_ENABLED) {
-      buffer = isStatusLEDEnabled(packet);
-    }
-    else if (functionId == FUNCTION_GET_CHIP_TEMPERATURE) {
-      buffer = getChipTemperature(packet);
-    }
-    else if (functionId == FUNCTION_RESET) {
-      buffer = reset(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_SET_VELOCITY:
+        buffer = setVelocity(packet);
+        break;
+      case FUNCTION_GET_VELOCITY:
+        buffer = getVelocity(packet);
+        break;
+      case FUNCTION_GET_CURRENT_VELOCITY:
+        buffer = getCurrentVelocity(packet);
+        break;
+      case FUNCTION_SET_ACCELERATION:
+        buffer = setAcceleration(packet);
+        break;
+      case FUNCTION_GET_ACCELERATION:
+        buffer = getAcceleration(packet);
+        break;
+      case FUNCTION_SET_PWM_FREQUENCY:
+        buffer = setPWMFrequency(packet);
+        break;
+      case FUNCTION_GET_PWM_FREQUENCY:
+        buffer = getPWMFrequency(packet);
+        break;
+      case FUNCTION_FULL_BRAKE:
+        buffer = fullBrake(packet);
+        break;
+      case FUNCTION_GET_STACK_INPUT_VOLTAGE:
+        buffer = getStackInputVoltage(packet);
+        break;
+      case FUNCTION_GET_EXTERNAL_INPUT_VOLTAGE:
+        buffer = getExternalInputVoltage(packet);
+        break;
+      case FUNCTION_GET_CURRENT_CONSUMPTION:
+        buffer = getCurrentConsumption(packet);
+        break;
+      case FUNCTION_ENABLE:
+        buffer = enable(packet);
+        break;
+      case FUNCTION_DISABLE:
+        buffer = disable(packet);
+        break;
+      case FUNCTION_IS_ENABLED:
+        buffer = isEnabled(packet);
+        break;
+      case FUNCTION_SET_MINIMUM_VOLTAGE:
+        buffer = setMinimumVoltage(packet);
+        break;
+      case FUNCTION_GET_MINIMUM_VOLTAGE:
+        buffer = getMinimumVoltage(packet);
+        break;
+      case FUNCTION_SET_DRIVE_MODE:
+        buffer = setDriveMode(packet);
+        break;
+      case FUNCTION_GET_DRIVE_MODE:
+        buffer = getDriveMode(packet);
+        break;
+      case FUNCTION_SET_CURRENT_VELOCITY_PERIOD:
+        buffer = setCurrentVelocityPeriod(packet);
+        break;
+      case FUNCTION_GET_CURRENT_VELOCITY_PERIOD:
+        buffer = getCurrentVelocityPeriod(packet);
+        break;
+      case FUNCTION_ENABLE_STATUS_LED:
+        buffer = enableStatusLED(packet);
+        break;
+      case FUNCTION_DISABLE_STATUS_LED:
+        buffer = disableStatusLED(packet);
+        break;
+      case FUNCTION_IS_STATUS_LED_ENABLED:
+        buffer = isStatusLEDEnabled(packet);
+        break;
+      case FUNCTION_GET_CHIP_TEMPERATURE:
+        buffer = getChipTemperature(packet);
+        break;
+      case FUNCTION_RESET:
+        buffer = reset(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -239,17 +255,17 @@ public final static String DEVICE_DISPLAY_NAME = "DC Brick";
    * 
    */
   private Buffer getCurrentVelocity(Packet packet) {
-    logger.debug("function getCurrentVelocity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getCurrentVelocity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_CURRENT_VELOCITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt16((short) currentVelocityValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -259,17 +275,17 @@ public final static String DEVICE_DISPLAY_NAME = "DC Brick";
    * 
    */
   private Buffer getStackInputVoltage(Packet packet) {
-    logger.debug("function getStackInputVoltage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getStackInputVoltage");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_STACK_INPUT_VOLTAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) stackInputVoltageValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -279,17 +295,17 @@ public final static String DEVICE_DISPLAY_NAME = "DC Brick";
    * 
    */
   private Buffer getExternalInputVoltage(Packet packet) {
-    logger.debug("function getExternalInputVoltage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getExternalInputVoltage");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_EXTERNAL_INPUT_VOLTAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) externalInputVoltageValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -299,17 +315,17 @@ public final static String DEVICE_DISPLAY_NAME = "DC Brick";
    * 
    */
   private Buffer getCurrentConsumption(Packet packet) {
-    logger.debug("function getCurrentConsumption");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getCurrentConsumption");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_CURRENT_CONSUMPTION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) currentConsumptionValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -319,17 +335,17 @@ public final static String DEVICE_DISPLAY_NAME = "DC Brick";
    * 
    */
   private Buffer getChipTemperature(Packet packet) {
-    logger.debug("function getChipTemperature");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getChipTemperature");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_CHIP_TEMPERATURE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt16((short) chipTemperatureValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -339,16 +355,16 @@ public final static String DEVICE_DISPLAY_NAME = "DC Brick";
    * 
    */
   private Buffer getPWMFrequency(Packet packet) {
-    logger.debug("function getPWMFrequency");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getPWMFrequency");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_PWM_FREQUENCY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.pWMFrequency);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.pWMFrequency);
+      return writer.buffer();
     }
 
     return null;
@@ -356,7 +372,7 @@ public final static String DEVICE_DISPLAY_NAME = "DC Brick";
 
   private Buffer getPWMFrequencyDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -364,16 +380,16 @@ public final static String DEVICE_DISPLAY_NAME = "DC Brick";
    * 
    */
   private Buffer getCurrentVelocityPeriod(Packet packet) {
-    logger.debug("function getCurrentVelocityPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getCurrentVelocityPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_CURRENT_VELOCITY_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.currentVelocityPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.currentVelocityPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -381,7 +397,7 @@ public final static String DEVICE_DISPLAY_NAME = "DC Brick";
 
   private Buffer getCurrentVelocityPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -389,16 +405,16 @@ public final static String DEVICE_DISPLAY_NAME = "DC Brick";
    * 
    */
   private Buffer getVelocity(Packet packet) {
-    logger.debug("function getVelocity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getVelocity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_VELOCITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.velocity);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.velocity);
+      return writer.buffer();
     }
 
     return null;
@@ -406,7 +422,7 @@ public final static String DEVICE_DISPLAY_NAME = "DC Brick";
 
   private Buffer getVelocityDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      buffer.appendBytes(Utils.get2ByteDefaultValue(1));        
       return buffer;
   }
 
@@ -414,16 +430,16 @@ public final static String DEVICE_DISPLAY_NAME = "DC Brick";
    * 
    */
   private Buffer getDriveMode(Packet packet) {
-    logger.debug("function getDriveMode");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDriveMode");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_DRIVE_MODE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.driveMode);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.driveMode);
+      return writer.buffer();
     }
 
     return null;
@@ -431,7 +447,7 @@ public final static String DEVICE_DISPLAY_NAME = "DC Brick";
 
   private Buffer getDriveModeDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -439,16 +455,16 @@ public final static String DEVICE_DISPLAY_NAME = "DC Brick";
    * 
    */
   private Buffer isEnabled(Packet packet) {
-    logger.debug("function isEnabled");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function isEnabled");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_IS_ENABLED;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.enabled);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.enabled);
+      return writer.buffer();
     }
 
     return null;
@@ -456,7 +472,7 @@ public final static String DEVICE_DISPLAY_NAME = "DC Brick";
 
   private Buffer isEnabledDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getBoolRandomValue(1));        
+      buffer.appendBytes(Utils.getBoolDefaultValue(1));        
       return buffer;
   }
 
@@ -464,16 +480,16 @@ public final static String DEVICE_DISPLAY_NAME = "DC Brick";
    * 
    */
   private Buffer getMinimumVoltage(Packet packet) {
-    logger.debug("function getMinimumVoltage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getMinimumVoltage");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_MINIMUM_VOLTAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.minimumVoltage);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.minimumVoltage);
+      return writer.buffer();
     }
 
     return null;
@@ -481,7 +497,7 @@ public final static String DEVICE_DISPLAY_NAME = "DC Brick";
 
   private Buffer getMinimumVoltageDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -489,16 +505,16 @@ public final static String DEVICE_DISPLAY_NAME = "DC Brick";
    * 
    */
   private Buffer isStatusLEDEnabled(Packet packet) {
-    logger.debug("function isStatusLEDEnabled");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function isStatusLEDEnabled");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_IS_STATUS_LED_ENABLED;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.StatusLED);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.StatusLED);
+      return writer.buffer();
     }
 
     return null;
@@ -506,7 +522,7 @@ public final static String DEVICE_DISPLAY_NAME = "DC Brick";
 
   private Buffer isStatusLEDEnabledDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getBoolRandomValue(1));        
+      buffer.appendBytes(Utils.getBoolDefaultValue(1));        
       return buffer;
   }
 
@@ -514,16 +530,16 @@ public final static String DEVICE_DISPLAY_NAME = "DC Brick";
    * 
    */
   private Buffer getAcceleration(Packet packet) {
-    logger.debug("function getAcceleration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAcceleration");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_ACCELERATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.acceleration);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.acceleration);
+      return writer.buffer();
     }
 
     return null;
@@ -531,7 +547,7 @@ public final static String DEVICE_DISPLAY_NAME = "DC Brick";
 
   private Buffer getAccelerationDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -539,18 +555,22 @@ public final static String DEVICE_DISPLAY_NAME = "DC Brick";
    * 
    */
   private Buffer disableStatusLED(Packet packet) {
-    logger.debug("function disableStatusLED");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function disableStatusLED");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.StatusLED = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_DISABLE_STATUS_LED;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.StatusLED = packet.getPayload();
+
     return null;
   }
 
@@ -558,18 +578,22 @@ public final static String DEVICE_DISPLAY_NAME = "DC Brick";
    * 
    */
   private Buffer setAcceleration(Packet packet) {
-    logger.debug("function setAcceleration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setAcceleration");
+    }
+    if (packet.getLength() - 8 != 2) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.acceleration = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_ACCELERATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.acceleration = packet.getPayload();
+
     return null;
   }
 
@@ -577,18 +601,22 @@ public final static String DEVICE_DISPLAY_NAME = "DC Brick";
    * 
    */
   private Buffer enableStatusLED(Packet packet) {
-    logger.debug("function enableStatusLED");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function enableStatusLED");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.StatusLED = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_ENABLE_STATUS_LED;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.StatusLED = packet.getPayload();
+
     return null;
   }
 
@@ -596,18 +624,22 @@ public final static String DEVICE_DISPLAY_NAME = "DC Brick";
    * 
    */
   private Buffer setDriveMode(Packet packet) {
-    logger.debug("function setDriveMode");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDriveMode");
+    }
+    if (packet.getLength() - 8 != 1) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.driveMode = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DRIVE_MODE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.driveMode = packet.getPayload();
+
     return null;
   }
 
@@ -615,18 +647,22 @@ public final static String DEVICE_DISPLAY_NAME = "DC Brick";
    * 
    */
   private Buffer enable(Packet packet) {
-    logger.debug("function enable");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function enable");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.enabled = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_ENABLE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.enabled = packet.getPayload();
+
     return null;
   }
 
@@ -634,18 +670,23 @@ public final static String DEVICE_DISPLAY_NAME = "DC Brick";
    * 
    */
   private Buffer setCurrentVelocityPeriod(Packet packet) {
-    logger.debug("function setCurrentVelocityPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setCurrentVelocityPeriod");
+    }
+    if (packet.getLength() - 8 != 2) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.currentVelocityPeriod = packet.copyPayload();
+    currentVelocityCallback.setPeriod(Utils.decodeUInt32(this.currentVelocityPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_CURRENT_VELOCITY_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.currentVelocityPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -653,18 +694,22 @@ public final static String DEVICE_DISPLAY_NAME = "DC Brick";
    * 
    */
   private Buffer setVelocity(Packet packet) {
-    logger.debug("function setVelocity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setVelocity");
+    }
+    if (packet.getLength() - 8 != 2) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.velocity = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_VELOCITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.velocity = packet.getPayload();
+
     return null;
   }
 
@@ -672,18 +717,22 @@ public final static String DEVICE_DISPLAY_NAME = "DC Brick";
    * 
    */
   private Buffer setPWMFrequency(Packet packet) {
-    logger.debug("function setPWMFrequency");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setPWMFrequency");
+    }
+    if (packet.getLength() - 8 != 2) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.pWMFrequency = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_PWM_FREQUENCY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.pWMFrequency = packet.getPayload();
+
     return null;
   }
 
@@ -691,18 +740,22 @@ public final static String DEVICE_DISPLAY_NAME = "DC Brick";
    * 
    */
   private Buffer disable(Packet packet) {
-    logger.debug("function disable");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function disable");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.enabled = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_DISABLE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.enabled = packet.getPayload();
+
     return null;
   }
 
@@ -710,18 +763,22 @@ public final static String DEVICE_DISPLAY_NAME = "DC Brick";
    * 
    */
   private Buffer setMinimumVoltage(Packet packet) {
-    logger.debug("function setMinimumVoltage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setMinimumVoltage");
+    }
+    if (packet.getLength() - 8 != 2) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.minimumVoltage = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_MINIMUM_VOLTAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.minimumVoltage = packet.getPayload();
+
     return null;
   }
 
@@ -729,16 +786,16 @@ public final static String DEVICE_DISPLAY_NAME = "DC Brick";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
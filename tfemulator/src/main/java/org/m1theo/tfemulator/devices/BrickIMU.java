@@ -23,25 +23,28 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.callbacks.CallbackScheduler;
+import org.m1theo.tfemulator.callbacks.PeriodicCallback;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * Full fledged AHRS with 9 degrees of freedom
  */
-public class BrickIMU extends AbstractVerticle {
+public class BrickIMU extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 16;
 public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
@@ -112,6 +115,20 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
   private Buffer angularVelocityPeriod = getAngularVelocityPeriodDefault();
   private Buffer allDataPeriod = getAllDataPeriodDefault();
   private Buffer quaternionPeriod = getQuaternionPeriodDefault();
+  private ValueSource[] iMUTemperatureValues;
+  private ValueSource[] quaternionValues;
+  private ValueSource[] orientationValues;
+  private ValueSource[] allDataValues;
+  private ValueSource[] angularVelocityValues;
+  private ValueSource[] chipTemperatureValues;
+  private ValueSource[] magneticFieldValues;
+  private ValueSource[] accelerationValues;
+  private PeriodicCallback accelerationCallback;
+  private PeriodicCallback magneticFieldCallback;
+  private PeriodicCallback angularVelocityCallback;
+  private PeriodicCallback allDataCallback;
+  private PeriodicCallback orientationCallback;
+  private PeriodicCallback quaternionCallback;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -126,172 +143,222 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickIMU.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
-
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    Router router = router();
+
+    iMUTemperatureValues = valueSources("iMUTemperature", 1);
+    quaternionValues = valueSources("quaternion", 4);
+    orientationValues = valueSources("orientation", 3);
+    allDataValues = valueSources("allData", 10);
+    angularVelocityValues = valueSources("angularVelocity", 3);
+    chipTemperatureValues = valueSources("chipTemperature", 1);
+    magneticFieldValues = valueSources("magneticField", 3);
+    accelerationValues = valueSources("acceleration", 3);
+
+    CallbackScheduler scheduler = CallbackScheduler.get(vertx);
+    accelerationCallback = scheduler.newCallback(router, uidBytes, CALLBACK_ACCELERATION, 8 + 6, out -> {
+      out.writeInt16((short) accelerationValues[0].next(), 1);
+      out.writeInt16((short) accelerationValues[1].next(), 1);
+      out.writeInt16((short) accelerationValues[2].next(), 1);
+    });
+    magneticFieldCallback = scheduler.newCallback(router, uidBytes, CALLBACK_MAGNETIC_FIELD, 8 + 6, out -> {
+      out.writeInt16((short) magneticFieldValues[0].next(), 1);
+      out.writeInt16((short) magneticFieldValues[1].next(), 1);
+      out.writeInt16((short) magneticFieldValues[2].next(), 1);
+    });
+    angularVelocityCallback = scheduler.newCallback(router, uidBytes, CALLBACK_ANGULAR_VELOCITY, 8 + 6, out -> {
+      out.writeInt16((short) angularVelocityValues[0].next(), 1);
+      out.writeInt16((short) angularVelocityValues[1].next(), 1);
+      out.writeInt16((short) angularVelocityValues[2].next(), 1);
+    });
+    allDataCallback = scheduler.newCallback(router, uidBytes, CALLBACK_ALL_DATA, 8 + 20, out -> {
+      out.writeInt16((short) allDataValues[0].next(), 1);
+      out.writeInt16((short) allDataValues[1].next(), 1);
+      out.writeInt16((short) allDataValues[2].next(), 1);
+      out.writeInt16((short) allDataValues[3].next(), 1);
+      out.writeInt16((short) allDataValues[4].next(), 1);
+      out.writeInt16((short) allDataValues[5].next(), 1);
+      out.writeInt16((short) allDataValues[6].next(), 1);
+      out.writeInt16((short) allDataValues[7].next(), 1);
+      out.writeInt16((short) allDataValues[8].next(), 1);
+      out.writeInt16((short) allDataValues[9].next(), 1);
+    });
+    orientationCallback = scheduler.newCallback(router, uidBytes, CALLBACK_ORIENTATION, 8 + 6, out -> {
+      out.writeInt16((short) orientationValues[0].next(), 1);
+      out.writeInt16((short) orientationValues[1].next(), 1);
+      out.writeInt16((short) orientationValues[2].next(), 1);
+    });
+    quaternionCallback = scheduler.newCallback(router, uidBytes, CALLBACK_QUATERNION, 8 + 16, out -> {
+      out.writeFloat((float) quaternionValues[0].next(), 1);
+      out.writeFloat((float) quaternionValues[1].next(), 1);
+      out.writeFloat((float) quaternionValues[2].next(), 1);
+      out.writeFloat((float) quaternionValues[3].next(), 1);
+    });
+
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
+
+  }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    accelerationCallback.setPeriod(0);
+    magneticFieldCallback.setPeriod(0);
+    angularVelocityCallback.setPeriod(0);
+    allDataCallback.setPeriod(0);
+    orientationCallback.setPeriod(0);
+    quaternionCallback.setPeriod(0);
+    router().unregister(uidBytes);
   }
 
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_GET_ACCELERATION) {
-      buffer = getAcceleration(packet);
-    }
-    else if (functionId == FUNCTION_GET_MAGNETIC_FIELD) {
-      buffer = getMagneticField(packet);
-    }
-    else if (functionId == FUNCTION_GET_ANGULAR_VELOCITY) {
-      buffer = getAngularVelocity(packet);
-    }
-    else if (functionId == FUNCTION_GET_ALL_DATA) {
-      buffer = getAllData(packet);
-    }
-    else if (functionId == FUNCTION_GET_ORIENTATION) {
-      buffer = getOrientation(packet);
-    }
-    else if (functionId == FUNCTION_GET_QUATERNION) {
-      buffer = getQuaternion(packet);
-    }
-    else if (functionId == FUNCTION_GET_IMU_TEMPERATURE) {
-      buffer = getIMUTemperature(packet);
-    }
-    else if (functionId == FUNCTION_LEDS_ON) {
-      buffer = ledsOn(packet);
-    }
-    else if (functionId == FUNCTION_LEDS_OFF) {
-      buffer = ledsOff(packet);
-    }
-    else if (functionId == FUNCTION_ARE_LEDS_ON) {
-      buffer = areLedsOn(packet);
-    }
-    else if (functionId == FUNCTION_SET_ACCELERATION_RANGE) {
-      buffer = setAccelerationRange(packet);
-    }
-    else if (functionId == FUNCTION_GET_ACCELERATION_RANGE) {
-      buffer = getAccelerationRange(packet);
-    }
-    else if (functionId == FUNCTION_SET_MAGNETOMETER_RANGE) {
-      buffer = setMagnetometerRange(packet);
-    }
-    else if (functionId == FUNCTION_GET_MAGNETOMETER_RANGE) {
-      buffer = getMagnetometerRange(packet);
-    }
-    else if (functionId == FUNCTION_SET_CONVERGENCE_SPEED) {
-      buffer = setConvergenceSpeed(packet);
-    }
-    else if (functionId == FUNCTION_GET_CONVERGENCE_SPEED) {
-      buffer = getConvergenceSpeed(packet);
-    }
-    else if (functionId == FUNCTION_SET_CALIBRATION) {
-      buffer = setCalibration(packet);
-    }
-    else if (functionId == FUNCTION_GET_CALIBRATION) {
-      buffer = getCalibration(packet);
-    }
-    else if (functionId == FUNCTION_SET_ACCELERATION_PERIOD) {
-      buffer = setAccelerationPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_ACCELERATION_PERIOD) {
-      buffer = getAccelerationPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_MAGNETIC_FIELD_PERIOD) {
-      buffer = setMagneticFieldPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_MAGNETIC_FIELD_PERIOD) {
-      buffer = getMagneticFieldPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_ANGULAR_VELOCITY_PERIOD) {
-      buffer = setAngularVelocityPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_ANGULAR_VELOCITY_PERIOD) {
-      buffer = getAngularVelocityPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_ALL_DATA_PERIOD) {
-      buffer = setAllDataPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_ALL_DATA_PERIOD) {
-      buffer = getAllDataPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_ORIENTATION_PERIOD) {
-      buffer = setOrientationPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_ORIENTATION_PERIOD) {
-      buffer = getOrientationPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_QUATERNION_PERIOD) {
-      buffer = setQuaternionPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_QUATERNION_PERIOD) {
-      buffer = getQuaternionPeriod(packet);
-    }
-    else if (functionId == FUNCTION_ORIENTATION_CALCULATION_ON) {
-      buffer = orientationCalculationOn(packet);
-    }
-    else if (functionId == FUNCTION_ORIENTATION_CALCULATION_OFF) {
-      buffer = orientationCalculationOff(packet);
-    }
-    else if (functionId == FUNCTION_IS_ORIENTATION_CALCULATION_ON) {
-      buffer = isOrientationCalculationOn(packet);
-    }
-    else if (functionId == FUNCTION_ENABLE_STATUS_LED) {
-      buffer = enableStatusLED(packet);
-    }
-    else if (functionId == FUNCTION_DISABLE_STATUS_LED) {
-      buffer = disableStatusLED(packet);
-    }
-    else if (functionId == FUNCTION_IS_STATUS_LED_ENABLED) {
-      buffer = isStatusLEDEnabled(packet);
-    }
-    else if (functionId == FUNCTION_GET_CHIP_TEMPERATURE) {
-      buffer = getChipTemperature(packet);
-    }
-    else if (functionId == FUNCTION_RESET) {
-      buffer = reset(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_GET_ACCELERATION:
+        buffer = getAcceleration(packet);
+        break;
+      case FUNCTION_GET_MAGNETIC_FIELD:
+        buffer = getMagneticField(packet);
+        break;
+      case FUNCTION_GET_ANGULAR_VELOCITY:
+        buffer = getAngularVelocity(packet);
+        break;
+      case FUNCTION_GET_ALL_DATA:
+        buffer = getAllData(packet);
+        break;
+      case FUNCTION_GET_ORIENTATION:
+        buffer = getOrientation(packet);
+        break;
+      case FUNCTION_GET_QUATERNION:
+        buffer = getQuaternion(packet);
+        break;
+      case FUNCTION_GET_IMU_TEMPERATURE:
+        buffer = getIMUTemperature(packet);
+        break;
+      case FUNCTION_LEDS_ON:
+        buffer = ledsOn(packet);
+        break;
+      case FUNCTION_LEDS_OFF:
+        buffer = ledsOff(packet);
+        break;
+      case FUNCTION_ARE_LEDS_ON:
+        buffer = areLedsOn(packet);
+        break;
+      case FUNCTION_SET_ACCELERATION_RANGE:
+        buffer = setAccelerationRange(packet);
+        break;
+      case FUNCTION_GET_ACCELERATION_RANGE:
+        buffer = getAccelerationRange(packet);
+        break;
+      case FUNCTION_SET_MAGNETOMETER_RANGE:
+        buffer = setMagnetometerRange(packet);
+        break;
+      case FUNCTION_GET_MAGNETOMETER_RANGE:
+        buffer = getMagnetometerRange(packet);
+        break;
+      case FUNCTION_SET_CONVERGENCE_SPEED:
+        buffer = setConvergenceSpeed(packet);
+        break;
+      case FUNCTION_GET_CONVERGENCE_SPEED:
+        buffer = getConvergenceSpeed(packet);
+        break;
+      case FUNCTION_SET_CALIBRATION:
+        buffer = setCalibration(packet);
+        break;
+      case FUNCTION_GET_CALIBRATION:
+        buffer = getCalibration(packet);
+        break;
+      case FUNCTION_SET_ACCELERATION_PERIOD:
+        buffer = setAccelerationPeriod(packet);
+        break;
+      case FUNCTION_GET_ACCELERATION_PERIOD:
+        buffer = getAccelerationPeriod(packet);
+        break;
+      case FUNCTION_SET_MAGNETIC_FIELD_PERIOD:
+        buffer = setMagneticFieldPeriod(packet);
+        break;
+      case FUNCTION_GET_MAGNETIC_FIELD_PERIOD:
+        buffer = getMagneticFieldPeriod(packet);
+        break;
+      case FUNCTION_SET_ANGULAR_VELOCITY_PERIOD:
+        buffer = setAngularVelocityPeriod(packet);
+        break;
+      case FUNCTION_GET_ANGULAR_VELOCITY_PERIOD:
+        buffer = getAngularVelocityPeriod(packet);
+        break;
+      case FUNCTION_SET_ALL_DATA_PERIOD:
+        buffer = setAllDataPeriod(packet);
+        break;
+      case FUNCTION_GET_ALL_DATA_PERIOD:
+        buffer = getAllDataPeriod(packet);
+        break;
+      case FUNCTION_SET_ORIENTATION_PERIOD:
+        buffer = setOrientationPeriod(packet);
+        break;
+      case FUNCTION_GET_ORIENTATION_PERIOD:
+        buffer = getOrientationPeriod(packet);
+        break;
+      case FUNCTION_SET_QUATERNION_PERIOD:
+        buffer = setQuaternionPeriod(packet);
+        break;
+      case FUNCTION_GET_QUATERNION_PERIOD:
+        buffer = getQuaternionPeriod(packet);
+        break;
+      case FUNCTION_ORIENTATION_CALCULATION_ON:
+        buffer = orientationCalculationOn(packet);
+        break;
+      case FUNCTION_ORIENTATION_CALCULATION_OFF:
+        buffer = orientationCalculationOff(packet);
+        break;
+      case FUNCTION_IS_ORIENTATION_CALCULATION_ON:
+        buffer = isOrientationCalculationOn(packet);
+        break;
+      case FUNCTION_ENABLE_STATUS_LED:
+        buffer = enableStatusLED(packet);
+        break;
+      case FUNCTION_DISABLE_STATUS_LED:
+        buffer = disableStatusLED(packet);
+        break;
+      case FUNCTION_IS_STATUS_LED_ENABLED:
+        buffer = isStatusLEDEnabled(packet);
+        break;
+      case FUNCTION_GET_CHIP_TEMPERATURE:
+        buffer = getChipTemperature(packet);
+        break;
+      case FUNCTION_RESET:
+        buffer = reset(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -301,17 +368,17 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
    * 
    */
   private Buffer getIMUTemperature(Packet packet) {
-    logger.debug("function getIMUTemperature");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIMUTemperature");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_IMU_TEMPERATURE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt16((short) iMUTemperatureValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -321,20 +388,20 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
    * 
    */
   private Buffer getQuaternion(Packet packet) {
-    logger.debug("function getQuaternion");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getQuaternion");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 16;
       byte functionId = FUNCTION_GET_QUATERNION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.getFloatRandomValue(1));        
-      buffer.appendBytes(Utils.getFloatRandomValue(1));        
-      buffer.appendBytes(Utils.getFloatRandomValue(1));        
-      buffer.appendBytes(Utils.getFloatRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeFloat((float) quaternionValues[0].next(), 1);
+      writer.writeFloat((float) quaternionValues[1].next(), 1);
+      writer.writeFloat((float) quaternionValues[2].next(), 1);
+      writer.writeFloat((float) quaternionValues[3].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -344,19 +411,19 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
    * 
    */
   private Buffer getOrientation(Packet packet) {
-    logger.debug("function getOrientation");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getOrientation");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 6;
       byte functionId = FUNCTION_GET_ORIENTATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt16((short) orientationValues[0].next(), 1);
+      writer.writeInt16((short) orientationValues[1].next(), 1);
+      writer.writeInt16((short) orientationValues[2].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -366,26 +433,26 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
    * 
    */
   private Buffer getAllData(Packet packet) {
-    logger.debug("function getAllData");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAllData");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 20;
       byte functionId = FUNCTION_GET_ALL_DATA;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt16((short) allDataValues[0].next(), 1);
+      writer.writeInt16((short) allDataValues[1].next(), 1);
+      writer.writeInt16((short) allDataValues[2].next(), 1);
+      writer.writeInt16((short) allDataValues[3].next(), 1);
+      writer.writeInt16((short) allDataValues[4].next(), 1);
+      writer.writeInt16((short) allDataValues[5].next(), 1);
+      writer.writeInt16((short) allDataValues[6].next(), 1);
+      writer.writeInt16((short) allDataValues[7].next(), 1);
+      writer.writeInt16((short) allDataValues[8].next(), 1);
+      writer.writeInt16((short) allDataValues[9].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -395,19 +462,19 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
    * 
    */
   private Buffer getAngularVelocity(Packet packet) {
-    logger.debug("function getAngularVelocity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAngularVelocity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 6;
       byte functionId = FUNCTION_GET_ANGULAR_VELOCITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt16((short) angularVelocityValues[0].next(), 1);
+      writer.writeInt16((short) angularVelocityValues[1].next(), 1);
+      writer.writeInt16((short) angularVelocityValues[2].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -417,17 +484,17 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
    * 
    */
   private Buffer getChipTemperature(Packet packet) {
-    logger.debug("function getChipTemperature");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getChipTemperature");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_CHIP_TEMPERATURE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt16((short) chipTemperatureValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -437,19 +504,19 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
    * 
    */
   private Buffer getMagneticField(Packet packet) {
-    logger.debug("function getMagneticField");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getMagneticField");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 6;
       byte functionId = FUNCTION_GET_MAGNETIC_FIELD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt16((short) magneticFieldValues[0].next(), 1);
+      writer.writeInt16((short) magneticFieldValues[1].next(), 1);
+      writer.writeInt16((short) magneticFieldValues[2].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -459,19 +526,19 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
    * 
    */
   private Buffer getAcceleration(Packet packet) {
-    logger.debug("function getAcceleration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAcceleration");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 6;
       byte functionId = FUNCTION_GET_ACCELERATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt16((short) accelerationValues[0].next(), 1);
+      writer.writeInt16((short) accelerationValues[1].next(), 1);
+      writer.writeInt16((short) accelerationValues[2].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -481,16 +548,16 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
    * 
    */
   private Buffer getOrientationPeriod(Packet packet) {
-    logger.debug("function getOrientationPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getOrientationPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_ORIENTATION_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.orientationPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.orientationPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -498,7 +565,7 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
 
   private Buffer getOrientationPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -506,16 +573,16 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
    * 
    */
   private Buffer areLedsOn(Packet packet) {
-    logger.debug("function areLedsOn");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function areLedsOn");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_ARE_LEDS_ON;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.leds);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.leds);
+      return writer.buffer();
     }
 
     return null;
@@ -523,7 +590,7 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
 
   private Buffer areLedsOnDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getBoolRandomValue(1));        
+      buffer.appendBytes(Utils.getBoolDefaultValue(1));        
       return buffer;
   }
 
@@ -531,16 +598,16 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
    * 
    */
   private Buffer getConvergenceSpeed(Packet packet) {
-    logger.debug("function getConvergenceSpeed");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getConvergenceSpeed");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_CONVERGENCE_SPEED;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.convergenceSpeed);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.convergenceSpeed);
+      return writer.buffer();
     }
 
     return null;
@@ -548,7 +615,7 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
 
   private Buffer getConvergenceSpeedDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -556,16 +623,16 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
    * 
    */
   private Buffer isStatusLEDEnabled(Packet packet) {
-    logger.debug("function isStatusLEDEnabled");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function isStatusLEDEnabled");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_IS_STATUS_LED_ENABLED;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.StatusLED);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.StatusLED);
+      return writer.buffer();
     }
 
     return null;
@@ -573,7 +640,7 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
 
   private Buffer isStatusLEDEnabledDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getBoolRandomValue(1));        
+      buffer.appendBytes(Utils.getBoolDefaultValue(1));        
       return buffer;
   }
 
@@ -581,16 +648,16 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
    * 
    */
   private Buffer getMagneticFieldPeriod(Packet packet) {
-    logger.debug("function getMagneticFieldPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getMagneticFieldPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_MAGNETIC_FIELD_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.magneticFieldPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.magneticFieldPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -598,7 +665,7 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
 
   private Buffer getMagneticFieldPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -606,16 +673,16 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
    * 
    */
   private Buffer getAccelerationPeriod(Packet packet) {
-    logger.debug("function getAccelerationPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAccelerationPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_ACCELERATION_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.accelerationPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.accelerationPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -623,7 +690,7 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
 
   private Buffer getAccelerationPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -631,16 +698,16 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
    * 
    */
   private Buffer getAccelerationRange(Packet packet) {
-    logger.debug("function getAccelerationRange");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAccelerationRange");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_ACCELERATION_RANGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.accelerationRange);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.accelerationRange);
+      return writer.buffer();
     }
 
     return null;
@@ -648,7 +715,7 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
 
   private Buffer getAccelerationRangeDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -656,16 +723,16 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
    * 
    */
   private Buffer getCalibration(Packet packet) {
-    logger.debug("function getCalibration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getCalibration");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 20;
       byte functionId = FUNCTION_GET_CALIBRATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.calibration);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.calibration);
+      return writer.buffer();
     }
 
     return null;
@@ -673,7 +740,7 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
 
   private Buffer getCalibrationDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get2ByteRandomValue(10));        
+      buffer.appendBytes(Utils.get2ByteDefaultValue(10));        
       return buffer;
   }
 
@@ -681,16 +748,16 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
    * 
    */
   private Buffer getMagnetometerRange(Packet packet) {
-    logger.debug("function getMagnetometerRange");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getMagnetometerRange");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_MAGNETOMETER_RANGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.magnetometerRange);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.magnetometerRange);
+      return writer.buffer();
     }
 
     return null;
@@ -698,7 +765,7 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
 
   private Buffer getMagnetometerRangeDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -706,16 +773,16 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
    * 
    */
   private Buffer getAngularVelocityPeriod(Packet packet) {
-    logger.debug("function getAngularVelocityPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAngularVelocityPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_ANGULAR_VELOCITY_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.angularVelocityPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.angularVelocityPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -723,7 +790,7 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
 
   private Buffer getAngularVelocityPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -731,16 +798,16 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
    * 
    */
   private Buffer getAllDataPeriod(Packet packet) {
-    logger.debug("function getAllDataPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAllDataPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_ALL_DATA_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.allDataPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.allDataPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -748,7 +815,7 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
 
   private Buffer getAllDataPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -756,16 +823,16 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
    * 
    */
   private Buffer getQuaternionPeriod(Packet packet) {
-    logger.debug("function getQuaternionPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getQuaternionPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_QUATERNION_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.quaternionPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.quaternionPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -773,7 +840,7 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
 
   private Buffer getQuaternionPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -781,18 +848,22 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
    * 
    */
   private Buffer setCalibration(Packet packet) {
-    logger.debug("function setCalibration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setCalibration");
+    }
+    if (packet.getLength() - 8 != 21) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.calibration = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_CALIBRATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.calibration = packet.getPayload();
+
     return null;
   }
 
@@ -800,18 +871,23 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
    * 
    */
   private Buffer setAllDataPeriod(Packet packet) {
-    logger.debug("function setAllDataPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setAllDataPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.allDataPeriod = packet.copyPayload();
+    allDataCallback.setPeriod(Utils.decodeUInt32(this.allDataPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_ALL_DATA_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.allDataPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -819,18 +895,22 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
    * 
    */
   private Buffer setMagnetometerRange(Packet packet) {
-    logger.debug("function setMagnetometerRange");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setMagnetometerRange");
+    }
+    if (packet.getLength() - 8 != 1) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.magnetometerRange = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_MAGNETOMETER_RANGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.magnetometerRange = packet.getPayload();
+
     return null;
   }
 
@@ -838,18 +918,23 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
    * 
    */
   private Buffer setAccelerationPeriod(Packet packet) {
-    logger.debug("function setAccelerationPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setAccelerationPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.accelerationPeriod = packet.copyPayload();
+    accelerationCallback.setPeriod(Utils.decodeUInt32(this.accelerationPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_ACCELERATION_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.accelerationPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -857,18 +942,23 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
    * 
    */
   private Buffer setMagneticFieldPeriod(Packet packet) {
-    logger.debug("function setMagneticFieldPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setMagneticFieldPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.magneticFieldPeriod = packet.copyPayload();
+    magneticFieldCallback.setPeriod(Utils.decodeUInt32(this.magneticFieldPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_MAGNETIC_FIELD_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.magneticFieldPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -876,18 +966,23 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
    * 
    */
   private Buffer setAngularVelocityPeriod(Packet packet) {
-    logger.debug("function setAngularVelocityPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setAngularVelocityPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.angularVelocityPeriod = packet.copyPayload();
+    angularVelocityCallback.setPeriod(Utils.decodeUInt32(this.angularVelocityPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_ANGULAR_VELOCITY_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.angularVelocityPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -895,18 +990,23 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
    * 
    */
   private Buffer setOrientationPeriod(Packet packet) {
-    logger.debug("function setOrientationPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setOrientationPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.orientationPeriod = packet.copyPayload();
+    orientationCallback.setPeriod(Utils.decodeUInt32(this.orientationPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_ORIENTATION_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.orientationPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -914,18 +1014,22 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
    * 
    */
   private Buffer setConvergenceSpeed(Packet packet) {
-    logger.debug("function setConvergenceSpeed");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setConvergenceSpeed");
+    }
+    if (packet.getLength() - 8 != 2) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.convergenceSpeed = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_CONVERGENCE_SPEED;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.convergenceSpeed = packet.getPayload();
+
     return null;
   }
 
@@ -933,18 +1037,23 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
    * 
    */
   private Buffer setQuaternionPeriod(Packet packet) {
-    logger.debug("function setQuaternionPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setQuaternionPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.quaternionPeriod = packet.copyPayload();
+    quaternionCallback.setPeriod(Utils.decodeUInt32(this.quaternionPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_QUATERNION_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.quaternionPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -952,18 +1061,22 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
    * 
    */
   private Buffer ledsOff(Packet packet) {
-    logger.debug("function ledsOff");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function ledsOff");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.leds = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_LEDS_OFF;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.leds = packet.getPayload();
+
     return null;
   }
 
@@ -971,18 +1084,22 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
    * 
    */
   private Buffer enableStatusLED(Packet packet) {
-    logger.debug("function enableStatusLED");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function enableStatusLED");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.StatusLED = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_ENABLE_STATUS_LED;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.StatusLED = packet.getPayload();
+
     return null;
   }
 
@@ -990,18 +1107,22 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
    * 
    */
   private Buffer setAccelerationRange(Packet packet) {
-    logger.debug("function setAccelerationRange");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setAccelerationRange");
+    }
+    if (packet.getLength() - 8 != 1) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.accelerationRange = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_ACCELERATION_RANGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.accelerationRange = packet.getPayload();
+
     return null;
   }
 
@@ -1009,18 +1130,22 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
    * 
    */
   private Buffer disableStatusLED(Packet packet) {
-    logger.debug("function disableStatusLED");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function disableStatusLED");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.StatusLED = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_DISABLE_STATUS_LED;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.StatusLED = packet.getPayload();
+
     return null;
   }
 
@@ -1028,18 +1153,22 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
    * 
    */
   private Buffer ledsOn(Packet packet) {
-    logger.debug("function ledsOn");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function ledsOn");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.leds = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_LEDS_ON;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.leds = packet.getPayload();
+
     return null;
   }
 
@@ -1047,16 +1176,16 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
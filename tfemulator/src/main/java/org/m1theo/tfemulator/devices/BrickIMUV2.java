@@ -23,25 +23,28 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.callbacks.CallbackScheduler;
+import org.m1theo.tfemulator.callbacks.PeriodicCallback;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * Full fledged AHRS with 9 degrees of freedom
  */
-public class BrickIMUV2 extends AbstractVerticle {
+public class BrickIMUV2 extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 18;
 public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
@@ -106,6 +109,25 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
   private Buffer allDataPeriod = getAllDataPeriodDefault();
   private Buffer quaternionPeriod = getQuaternionPeriodDefault();
   private Buffer gravityVectorPeriod = getGravityVectorPeriodDefault();
+  private ValueSource[] linearAccelerationValues;
+  private ValueSource[] angularVelocityValues;
+  private ValueSource[] orientationValues;
+  private ValueSource[] temperatureValues;
+  private ValueSource[] allDataValues;
+  private ValueSource[] quaternionValues;
+  private ValueSource[] chipTemperatureValues;
+  private ValueSource[] magneticFieldValues;
+  private ValueSource[] gravityVectorValues;
+  private ValueSource[] accelerationValues;
+  private PeriodicCallback accelerationCallback;
+  private PeriodicCallback magneticFieldCallback;
+  private PeriodicCallback angularVelocityCallback;
+  private PeriodicCallback temperatureCallback;
+  private PeriodicCallback linearAccelerationCallback;
+  private PeriodicCallback gravityVectorCallback;
+  private PeriodicCallback orientationCallback;
+  private PeriodicCallback quaternionCallback;
+  private PeriodicCallback allDataCallback;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -120,166 +142,233 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickIMUV2.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
-
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    Router router = router();
+
+    linearAccelerationValues = valueSources("linearAcceleration", 3);
+    angularVelocityValues = valueSources("angularVelocity", 3);
+    orientationValues = valueSources("orientation", 3);
+    temperatureValues = valueSources("temperature", 1);
+    allDataValues = valueSources("allData", 9);
+    quaternionValues = valueSources("quaternion", 4);
+    chipTemperatureValues = valueSources("chipTemperature", 1);
+    magneticFieldValues = valueSources("magneticField", 3);
+    gravityVectorValues = valueSources("gravityVector", 3);
+    accelerationValues = valueSources("acceleration", 3);
+
+    CallbackScheduler scheduler = CallbackScheduler.get(vertx);
+    accelerationCallback = scheduler.newCallback(router, uidBytes, CALLBACK_ACCELERATION, 8 + 6, out -> {
+      out.writeInt16((short) accelerationValues[0].next(), 1);
+      out.writeInt16((short) accelerationValues[1].next(), 1);
+      out.writeInt16((short) accelerationValues[2].next(), 1);
+    });
+    magneticFieldCallback = scheduler.newCallback(router, uidBytes, CALLBACK_MAGNETIC_FIELD, 8 + 6, out -> {
+      out.writeInt16((short) magneticFieldValues[0].next(), 1);
+      out.writeInt16((short) magneticFieldValues[1].next(), 1);
+      out.writeInt16((short) magneticFieldValues[2].next(), 1);
+    });
+    angularVelocityCallback = scheduler.newCallback(router, uidBytes, CALLBACK_ANGULAR_VELOCITY, 8 + 6, out -> {
+      out.writeInt16((short) angularVelocityValues[0].next(), 1);
+      out.writeInt16((short) angularVelocityValues[1].next(), 1);
+      out.writeInt16((short) angularVelocityValues[2].next(), 1);
+    });
+    temperatureCallback = scheduler.newCallback(router, uidBytes, CALLBACK_TEMPERATURE, 8 + 1, out -> {
+      out.writeInt8((byte) temperatureValues[0].next(), 1);
+    });
+    linearAccelerationCallback = scheduler.newCallback(router, uidBytes, CALLBACK_LINEAR_ACCELERATION, 8 + 6, out -> {
+      out.writeInt16((short) linearAccelerationValues[0].next(), 1);
+      out.writeInt16((short) linearAccelerationValues[1].next(), 1);
+      out.writeInt16((short) linearAccelerationValues[2].next(), 1);
+    });
+    gravityVectorCallback = scheduler.newCallback(router, uidBytes, CALLBACK_GRAVITY_VECTOR, 8 + 6, out -> {
+      out.writeInt16((short) gravityVectorValues[0].next(), 1);
+      out.writeInt16((short) gravityVectorValues[1].next(), 1);
+      out.writeInt16((short) gravityVectorValues[2].next(), 1);
+    });
+    orientationCallback = scheduler.newCallback(router, uidBytes, CALLBACK_ORIENTATION, 8 + 6, out -> {
+      out.writeInt16((short) orientationValues[0].next(), 1);
+      out.writeInt16((short) orientationValues[1].next(), 1);
+      out.writeInt16((short) orientationValues[2].next(), 1);
+    });
+    quaternionCallback = scheduler.newCallback(router, uidBytes, CALLBACK_QUATERNION, 8 + 8, out -> {
+      out.writeInt16((short) quaternionValues[0].next(), 1);
+      out.writeInt16((short) quaternionValues[1].next(), 1);
+      out.writeInt16((short) quaternionValues[2].next(), 1);
+      out.writeInt16((short) quaternionValues[3].next(), 1);
+    });
+    allDataCallback = scheduler.newCallback(router, uidBytes, CALLBACK_ALL_DATA, 8 + 46, out -> {
+      out.writeInt16((short) allDataValues[0].next(), 3);
+      out.writeInt16((short) allDataValues[1].next(), 3);
+      out.writeInt16((short) allDataValues[2].next(), 3);
+      out.writeInt16((short) allDataValues[3].next(), 3);
+      out.writeInt16((short) allDataValues[4].next(), 4);
+      out.writeInt16((short) allDataValues[5].next(), 3);
+      out.writeInt16((short) allDataValues[6].next(), 3);
+      out.writeInt8((byte) allDataValues[7].next(), 1);
+      out.writeUInt8((short) allDataValues[8].next(), 1);
+    });
+
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
+
+  }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    accelerationCallback.setPeriod(0);
+    magneticFieldCallback.setPeriod(0);
+    angularVelocityCallback.setPeriod(0);
+    temperatureCallback.setPeriod(0);
+    linearAccelerationCallback.setPeriod(0);
+    gravityVectorCallback.setPeriod(0);
+    orientationCallback.setPeriod(0);
+    quaternionCallback.setPeriod(0);
+    allDataCallback.setPeriod(0);
+    router().unregister(uidBytes);
   }
 
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_GET_ACCELERATION) {
-      buffer = getAcceleration(packet);
-    }
-    else if (functionId == FUNCTION_GET_MAGNETIC_FIELD) {
-      buffer = getMagneticField(packet);
-    }
-    else if (functionId == FUNCTION_GET_ANGULAR_VELOCITY) {
-      buffer = getAngularVelocity(packet);
-    }
-    else if (functionId == FUNCTION_GET_TEMPERATURE) {
-      buffer = getTemperature(packet);
-    }
-    else if (functionId == FUNCTION_GET_ORIENTATION) {
-      buffer = getOrientation(packet);
-    }
-    else if (functionId == FUNCTION_GET_LINEAR_ACCELERATION) {
-      buffer = getLinearAcceleration(packet);
-    }
-    else if (functionId == FUNCTION_GET_GRAVITY_VECTOR) {
-      buffer = getGravityVector(packet);
-    }
-    else if (functionId == FUNCTION_GET_QUATERNION) {
-      buffer = getQuaternion(packet);
-    }
-    else if (functionId == FUNCTION_GET_ALL_DATA) {
-      buffer = getAllData(packet);
-    }
-    else if (functionId == FUNCTION_LEDS_ON) {
-      buffer = ledsOn(packet);
-    }
-    else if (functionId == FUNCTION_LEDS_OFF) {
-      buffer = ledsOff(packet);
-    }
-    else if (functionId == FUNCTION_ARE_LEDS_ON) {
-      buffer = areLedsOn(packet);
-    }
-    else if (functionId == FUNCTION_SAVE_CALIBRATION) {
-      buffer = saveCalibration(packet);
-    }
-    else if (functionId == FUNCTION_SET_ACCELERATION_PERIOD) {
-      buffer = setAccelerationPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_ACCELERATION_PERIOD) {
-      buffer = getAccelerationPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_MAGNETIC_FIELD_PERIOD) {
-      buffer = setMagneticFieldPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_MAGNETIC_FIELD_PERIOD) {
-      buffer = getMagneticFieldPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_ANGULAR_VELOCITY_PERIOD) {
-      buffer = setAngularVelocityPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_ANGULAR_VELOCITY_PERIOD) {
-      buffer = getAngularVelocityPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_TEMPERATURE_PERIOD) {
-      buffer = setTemperaturePeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_TEMPERATURE_PERIOD) {
-      buffer = getTemperaturePeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_ORIENTATION_PERIOD) {
-      buffer = setOrientationPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_ORIENTATION_PERIOD) {
-      buffer = getOrientationPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_LINEAR_ACCELERATION_PERIOD) {
-      buffer = setLinearAccelerationPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_LINEAR_ACCELERATION_PERIOD) {
-      buffer = getLinearAccelerationPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_GRAVITY_VECTOR_PERIOD) {
-      buffer = setGravityVectorPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_GRAVITY_VECTOR_PERIOD) {
-      buffer = getGravityVectorPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_QUATERNION_PERIOD) {
-      buffer = setQuaternionPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_QUATERNION_PERIOD) {
-      buffer = getQuaternionPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_ALL_DATA_PERIOD) {
-      buffer = setAllDataPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_ALL_DATA_PERIOD) {
-      buffer = getAllDataPeriod(packet);
-    }
-    else if (functionId == FUNCTION_ENABLE_STATUS_LED) {
-      buffer = enableStatusLED(packet);
-    }
-    else if (functionId == FUNCTION_DISABLE_STATUS_LED) {
-      buffer = disableStatusLED(packet);
-    }
-    else if (functionId == FUNCTION_IS_STATUS_LED_ENABLED) {
-      buffer = isStatusLEDEnabled(packet);
-    }
-    else if (functionId == FUNCTION_GET_CHIP_TEMPERATURE) {
-      buffer = getChipTemperature(packet);
-    }
-    else if (functionId == FUNCTION_RESET) {
-      buffer = reset(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_GET_ACCELERATION:
+        buffer = getAcceleration(packet);
+        break;
+      case FUNCTION_GET_MAGNETIC_FIELD:
+        buffer = getMagneticField(packet);
+        break;
+      case FUNCTION_GET_ANGULAR_VELOCITY:
+        buffer = getAngularVelocity(packet);
+        break;
+      case FUNCTION_GET_TEMPERATURE:
+        buffer = getTemperature(packet);
+        break;
+      case FUNCTION_GET_ORIENTATION:
+        buffer = getOrientation(packet);
+        break;
+      case FUNCTION_GET_LINEAR_ACCELERATION:
+        buffer = getLinearAcceleration(packet);
+        break;
+      case FUNCTION_GET_GRAVITY_VECTOR:
+        buffer = getGravityVector(packet);
+        break;
+      case FUNCTION_GET_QUATERNION:
+        buffer = getQuaternion(packet);
+        break;
+      case FUNCTION_GET_ALL_DATA:
+        buffer = getAllData(packet);
+        break;
+      case FUNCTION_LEDS_ON:
+        buffer = ledsOn(packet);
+        break;
+      case FUNCTION_LEDS_OFF:
+        buffer = ledsOff(packet);
+        break;
+      case FUNCTION_ARE_LEDS_ON:
+        buffer = areLedsOn(packet);
+        break;
+      case FUNCTION_SAVE_CALIBRATION:
+        buffer = saveCalibration(packet);
+        break;
+      case FUNCTION_SET_ACCELERATION_PERIOD:
+        buffer = setAccelerationPeriod(packet);
+        break;
+      case FUNCTION_GET_ACCELERATION_PERIOD:
+        buffer = getAccelerationPeriod(packet);
+        break;
+      case FUNCTION_SET_MAGNETIC_FIELD_PERIOD:
+        buffer = setMagneticFieldPeriod(packet);
+        break;
+      case FUNCTION_GET_MAGNETIC_FIELD_PERIOD:
+        buffer = getMagneticFieldPeriod(packet);
+        break;
+      case FUNCTION_SET_ANGULAR_VELOCITY_PERIOD:
+        buffer = setAngularVelocityPeriod(packet);
+        break;
+      case FUNCTION_GET_ANGULAR_VELOCITY_PERIOD:
+        buffer = getAngularVelocityPeriod(packet);
+        break;
+      case FUNCTION_SET_TEMPERATURE_PERIOD:
+        buffer = setTemperaturePeriod(packet);
+        break;
+      case FUNCTION_GET_TEMPERATURE_PERIOD:
+        buffer = getTemperaturePeriod(packet);
+        break;
+      case FUNCTION_SET_ORIENTATION_PERIOD:
+        buffer = setOrientationPeriod(packet);
+        break;
+      case FUNCTION_GET_ORIENTATION_PERIOD:
+        buffer = getOrientationPeriod(packet);
+        break;
+      case FUNCTION_SET_LINEAR_ACCELERATION_PERIOD:
+        buffer = setLinearAccelerationPeriod(packet);
+        break;
+      case FUNCTION_GET_LINEAR_ACCELERATION_PERIOD:
+        buffer = getLinearAccelerationPeriod(packet);
+        break;
+      case FUNCTION_SET_GRAVITY_VECTOR_PERIOD:
+        buffer = setGravityVectorPeriod(packet);
+        break;
+      case FUNCTION_GET_GRAVITY_VECTOR_PERIOD:
+        buffer = getGravityVectorPeriod(packet);
+        break;
+      case FUNCTION_SET_QUATERNION_PERIOD:
+        buffer = setQuaternionPeriod(packet);
+        break;
+      case FUNCTION_GET_QUATERNION_PERIOD:
+        buffer = getQuaternionPeriod(packet);
+        break;
+      case FUNCTION_SET_ALL_DATA_PERIOD:
+        buffer = setAllDataPeriod(packet);
+        break;
+      case FUNCTION_GET_ALL_DATA_PERIOD:
+        buffer = getAllDataPeriod(packet);
+        break;
+      case FUNCTION_ENABLE_STATUS_LED:
+        buffer = enableStatusLED(packet);
+        break;
+      case FUNCTION_DISABLE_STATUS_LED:
+        buffer = disableStatusLED(packet);
+        break;
+      case FUNCTION_IS_STATUS_LED_ENABLED:
+        buffer = isStatusLEDEnabled(packet);
+        break;
+      case FUNCTION_GET_CHIP_TEMPERATURE:
+        buffer = getChipTemperature(packet);
+        break;
+      case FUNCTION_RESET:
+        buffer = reset(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -289,19 +378,19 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
    * 
    */
   private Buffer getLinearAcceleration(Packet packet) {
-    logger.debug("function getLinearAcceleration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getLinearAcceleration");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 6;
       byte functionId = FUNCTION_GET_LINEAR_ACCELERATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt16((short) linearAccelerationValues[0].next(), 1);
+      writer.writeInt16((short) linearAccelerationValues[1].next(), 1);
+      writer.writeInt16((short) linearAccelerationValues[2].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -311,19 +400,19 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
    * 
    */
   private Buffer getAngularVelocity(Packet packet) {
-    logger.debug("function getAngularVelocity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAngularVelocity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 6;
       byte functionId = FUNCTION_GET_ANGULAR_VELOCITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt16((short) angularVelocityValues[0].next(), 1);
+      writer.writeInt16((short) angularVelocityValues[1].next(), 1);
+      writer.writeInt16((short) angularVelocityValues[2].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -333,19 +422,19 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
    * 
    */
   private Buffer getOrientation(Packet packet) {
-    logger.debug("function getOrientation");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getOrientation");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 6;
       byte functionId = FUNCTION_GET_ORIENTATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt16((short) orientationValues[0].next(), 1);
+      writer.writeInt16((short) orientationValues[1].next(), 1);
+      writer.writeInt16((short) orientationValues[2].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -355,17 +444,17 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
    * 
    */
   private Buffer getTemperature(Packet packet) {
-    logger.debug("function getTemperature");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getTemperature");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_TEMPERATURE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get1ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt8((byte) temperatureValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -375,25 +464,25 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
    * 
    */
   private Buffer getAllData(Packet packet) {
-    logger.debug("function getAllData");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAllData");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 46;
       byte functionId = FUNCTION_GET_ALL_DATA;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteRandomValue(3));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(3));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(3));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(3));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(4));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(3));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(3));        
-      buffer.appendBytes(Utils.get1ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt16((short) allDataValues[0].next(), 3);
+      writer.writeInt16((short) allDataValues[1].next(), 3);
+      writer.writeInt16((short) allDataValues[2].next(), 3);
+      writer.writeInt16((short) allDataValues[3].next(), 3);
+      writer.writeInt16((short) allDataValues[4].next(), 4);
+      writer.writeInt16((short) allDataValues[5].next(), 3);
+      writer.writeInt16((short) allDataValues[6].next(), 3);
+      writer.writeInt8((byte) allDataValues[7].next(), 1);
+      writer.writeUInt8((short) allDataValues[8].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -403,20 +492,20 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
    * 
    */
   private Buffer getQuaternion(Packet packet) {
-    logger.debug("function getQuaternion");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getQuaternion");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 8;
       byte functionId = FUNCTION_GET_QUATERNION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt16((short) quaternionValues[0].next(), 1);
+      writer.writeInt16((short) quaternionValues[1].next(), 1);
+      writer.writeInt16((short) quaternionValues[2].next(), 1);
+      writer.writeInt16((short) quaternionValues[3].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -426,17 +515,17 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
    * 
    */
   private Buffer getChipTemperature(Packet packet) {
-    logger.debug("function getChipTemperature");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getChipTemperature");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_CHIP_TEMPERATURE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt16((short) chipTemperatureValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -446,19 +535,19 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
    * 
    */
   private Buffer getMagneticField(Packet packet) {
-    logger.debug("function getMagneticField");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getMagneticField");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 6;
       byte functionId = FUNCTION_GET_MAGNETIC_FIELD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt16((short) magneticFieldValues[0].next(), 1);
+      writer.writeInt16((short) magneticFieldValues[1].next(), 1);
+      writer.writeInt16((short) magneticFieldValues[2].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -468,19 +557,19 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
    * 
    */
   private Buffer getGravityVector(Packet packet) {
-    logger.debug("function getGravityVector");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getGravityVector");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 6;
       byte functionId = FUNCTION_GET_GRAVITY_VECTOR;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt16((short) gravityVectorValues[0].next(), 1);
+      writer.writeInt16((short) gravityVectorValues[1].next(), 1);
+      writer.writeInt16((short) gravityVectorValues[2].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -490,19 +579,19 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
    * 
    */
   private Buffer getAcceleration(Packet packet) {
-    logger.debug("function getAcceleration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAcceleration");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 6;
       byte functionId = FUNCTION_GET_ACCELERATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt16((short) accelerationValues[0].next(), 1);
+      writer.writeInt16((short) accelerationValues[1].next(), 1);
+      writer.writeInt16((short) accelerationValues[2].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -512,16 +601,16 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
    * 
    */
   private Buffer getTemperaturePeriod(Packet packet) {
-    logger.debug("function getTemperaturePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getTemperaturePeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_TEMPERATURE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.temperaturePeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.temperaturePeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -529,7 +618,7 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
 
   private Buffer getTemperaturePeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -537,16 +626,16 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
    * 
    */
   private Buffer areLedsOn(Packet packet) {
-    logger.debug("function areLedsOn");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function areLedsOn");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_ARE_LEDS_ON;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.leds);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.leds);
+      return writer.buffer();
     }
 
     return null;
@@ -554,7 +643,7 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
 
   private Buffer areLedsOnDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getBoolRandomValue(1));        
+      buffer.appendBytes(Utils.getBoolDefaultValue(1));        
       return buffer;
   }
 
@@ -562,16 +651,16 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
    * 
    */
   private Buffer getOrientationPeriod(Packet packet) {
-    logger.debug("function getOrientationPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getOrientationPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_ORIENTATION_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.orientationPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.orientationPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -579,7 +668,7 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
 
   private Buffer getOrientationPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -587,16 +676,16 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
    * 
    */
   private Buffer isStatusLEDEnabled(Packet packet) {
-    logger.debug("function isStatusLEDEnabled");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function isStatusLEDEnabled");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_IS_STATUS_LED_ENABLED;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.StatusLED);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.StatusLED);
+      return writer.buffer();
     }
 
     return null;
@@ -604,7 +693,7 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
 
   private Buffer isStatusLEDEnabledDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getBoolRandomValue(1));        
+      buffer.appendBytes(Utils.getBoolDefaultValue(1));        
       return buffer;
   }
 
@@ -612,16 +701,16 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
    * 
    */
   private Buffer getMagneticFieldPeriod(Packet packet) {
-    logger.debug("function getMagneticFieldPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getMagneticFieldPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_MAGNETIC_FIELD_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.magneticFieldPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.magneticFieldPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -629,7 +718,7 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
 
   private Buffer getMagneticFieldPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -637,16 +726,16 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
    * 
    */
   private Buffer getAccelerationPeriod(Packet packet) {
-    logger.debug("function getAccelerationPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAccelerationPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_ACCELERATION_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.accelerationPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.accelerationPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -654,7 +743,7 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
 
   private Buffer getAccelerationPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -662,16 +751,16 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
    * 
    */
   private Buffer getLinearAccelerationPeriod(Packet packet) {
-    logger.debug("function getLinearAccelerationPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getLinearAccelerationPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_LINEAR_ACCELERATION_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.linearAccelerationPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.linearAccelerationPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -679,7 +768,7 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
 
   private Buffer getLinearAccelerationPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -687,16 +776,16 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
    * 
    */
   private Buffer getAngularVelocityPeriod(Packet packet) {
-    logger.debug("function getAngularVelocityPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAngularVelocityPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_ANGULAR_VELOCITY_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.angularVelocityPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.angularVelocityPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -704,7 +793,7 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
 
   private Buffer getAngularVelocityPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -712,16 +801,16 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
    * 
    */
   private Buffer getAllDataPeriod(Packet packet) {
-    logger.debug("function getAllDataPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAllDataPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_ALL_DATA_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.allDataPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.allDataPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -729,7 +818,7 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
 
   private Buffer getAllDataPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -737,16 +826,16 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
    * 
    */
   private Buffer getQuaternionPeriod(Packet packet) {
-    logger.debug("function getQuaternionPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getQuaternionPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_QUATERNION_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.quaternionPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.quaternionPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -754,7 +843,7 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
 
   private Buffer getQuaternionPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -762,16 +851,16 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
    * 
    */
   private Buffer getGravityVectorPeriod(Packet packet) {
-    logger.debug("function getGravityVectorPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getGravityVectorPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_GRAVITY_VECTOR_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.gravityVectorPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.gravityVectorPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -779,7 +868,7 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
 
   private Buffer getGravityVectorPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -787,18 +876,23 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
    * 
    */
   private Buffer setAllDataPeriod(Packet packet) {
-    logger.debug("function setAllDataPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setAllDataPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.allDataPeriod = packet.copyPayload();
+    allDataCallback.setPeriod(Utils.decodeUInt32(this.allDataPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_ALL_DATA_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.allDataPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -806,18 +900,23 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
    * 
    */
   private Buffer setMagneticFieldPeriod(Packet packet) {
-    logger.debug("function setMagneticFieldPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setMagneticFieldPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.magneticFieldPeriod = packet.copyPayload();
+    magneticFieldCallback.setPeriod(Utils.decodeUInt32(this.magneticFieldPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_MAGNETIC_FIELD_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.magneticFieldPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -825,18 +924,23 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
    * 
    */
   private Buffer setAccelerationPeriod(Packet packet) {
-    logger.debug("function setAccelerationPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setAccelerationPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.accelerationPeriod = packet.copyPayload();
+    accelerationCallback.setPeriod(Utils.decodeUInt32(this.accelerationPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_ACCELERATION_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.accelerationPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -844,18 +948,23 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
    * 
    */
   private Buffer setAngularVelocityPeriod(Packet packet) {
-    logger.debug("function setAngularVelocityPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setAngularVelocityPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.angularVelocityPeriod = packet.copyPayload();
+    angularVelocityCallback.setPeriod(Utils.decodeUInt32(this.angularVelocityPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_ANGULAR_VELOCITY_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.angularVelocityPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -863,18 +972,23 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
    * 
    */
   private Buffer setTemperaturePeriod(Packet packet) {
-    logger.debug("function setTemperaturePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setTemperaturePeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.temperaturePeriod = packet.copyPayload();
+    temperatureCallback.setPeriod(Utils.decodeUInt32(this.temperaturePeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_TEMPERATURE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.temperaturePeriod = packet.getPayload();
+
     return null;
   }
 
@@ -882,18 +996,23 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
    * 
    */
   private Buffer setOrientationPeriod(Packet packet) {
-    logger.debug("function setOrientationPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setOrientationPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.orientationPeriod = packet.copyPayload();
+    orientationCallback.setPeriod(Utils.decodeUInt32(this.orientationPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_ORIENTATION_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.orientationPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -901,18 +1020,23 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
    * 
    */
   private Buffer setQuaternionPeriod(Packet packet) {
-    logger.debug("function setQuaternionPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setQuaternionPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.quaternionPeriod = packet.copyPayload();
+    quaternionCallback.setPeriod(Utils.decodeUInt32(this.quaternionPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_QUATERNION_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.quaternionPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -920,18 +1044,22 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
    * 
    */
   private Buffer ledsOff(Packet packet) {
-    logger.debug("function ledsOff");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function ledsOff");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.leds = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_LEDS_OFF;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.leds = packet.getPayload();
+
     return null;
   }
 
@@ -939,18 +1067,23 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
    * 
    */
   private Buffer setLinearAccelerationPeriod(Packet packet) {
-    logger.debug("function setLinearAccelerationPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setLinearAccelerationPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.linearAccelerationPeriod = packet.copyPayload();
+    linearAccelerationCallback.setPeriod(Utils.decodeUInt32(this.linearAccelerationPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_LINEAR_ACCELERATION_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.linearAccelerationPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -958,18 +1091,22 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
    * 
    */
   private Buffer enableStatusLED(Packet packet) {
-    logger.debug("function enableStatusLED");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function enableStatusLED");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.StatusLED = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_ENABLE_STATUS_LED;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.StatusLED = packet.getPayload();
+
     return null;
   }
 
@@ -977,18 +1114,23 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
    * 
    */
   private Buffer setGravityVectorPeriod(Packet packet) {
-    logger.debug("function setGravityVectorPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setGravityVectorPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.gravityVectorPeriod = packet.copyPayload();
+    gravityVectorCallback.setPeriod(Utils.decodeUInt32(this.gravityVectorPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_GRAVITY_VECTOR_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.gravityVectorPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -996,18 +1138,22 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
    * 
    */
   private Buffer disableStatusLED(Packet packet) {
-    logger.debug("function disableStatusLED");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function disableStatusLED");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.StatusLED = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_DISABLE_STATUS_LED;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.StatusLED = packet.getPayload();
+
     return null;
   }
 
@@ -1015,18 +1161,22 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
    * 
    */
   private Buffer ledsOn(Packet packet) {
-    logger.debug("function ledsOn");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function ledsOn");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.leds = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_LEDS_ON;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.leds = packet.getPayload();
+
     return null;
   }
 
@@ -1034,16 +1184,16 @@ public final static String DEVICE_DISPLAY_NAME = "IMU Brick 2.0";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
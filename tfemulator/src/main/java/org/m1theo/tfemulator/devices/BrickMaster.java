@@ -23,25 +23,30 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.callbacks.CallbackScheduler;
+import org.m1theo.tfemulator.callbacks.PeriodicCallback;
+import org.m1theo.tfemulator.callbacks.ThresholdCallback;
+import org.m1theo.tfemulator.callbacks.ValueType;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * Basis to build stacks and has 4 Bricklet ports
  */
-public class BrickMaster extends AbstractVerticle {
+public class BrickMaster extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 13;
 public final static String DEVICE_DISPLAY_NAME = "Master Brick";
@@ -206,6 +211,22 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
   private Buffer StatusLED = isStatusLEDEnabledDefault();
   private Buffer wifiCertificate = getWifiCertificateDefault();
   private Buffer stackCurrentCallbackThreshold = getStackCurrentCallbackThresholdDefault();
+  private ValueSource[] uSBVoltageValues;
+  private ValueSource[] wifiStatusValues;
+  private ValueSource[] chibiErrorLogValues;
+  private ValueSource[] wifiBufferInfoValues;
+  private ValueSource[] stackVoltageValues;
+  private ValueSource[] chibiSignalStrengthValues;
+  private ValueSource[] rS485ErrorLogValues;
+  private ValueSource[] ethernetStatusValues;
+  private ValueSource[] chipTemperatureValues;
+  private ValueSource[] stackCurrentValues;
+  private PeriodicCallback stackCurrentCallback;
+  private PeriodicCallback stackVoltageCallback;
+  private PeriodicCallback uSBVoltageCallback;
+  private ThresholdCallback stackCurrentReachedCallback;
+  private ThresholdCallback stackVoltageReachedCallback;
+  private ThresholdCallback uSBVoltageReachedCallback;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -220,283 +241,318 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickMaster.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
+    Router router = router();
+
+    uSBVoltageValues = valueSources("uSBVoltage", 1);
+    wifiStatusValues = valueSources("wifiStatus", 10);
+    chibiErrorLogValues = valueSources("chibiErrorLog", 4);
+    wifiBufferInfoValues = valueSources("wifiBufferInfo", 3);
+    stackVoltageValues = valueSources("stackVoltage", 1);
+    chibiSignalStrengthValues = valueSources("chibiSignalStrength", 1);
+    rS485ErrorLogValues = valueSources("rS485ErrorLog", 1);
+    ethernetStatusValues = valueSources("ethernetStatus", 7);
+    chipTemperatureValues = valueSources("chipTemperature", 1);
+    stackCurrentValues = valueSources("stackCurrent", 1);
+
+    CallbackScheduler scheduler = CallbackScheduler.get(vertx);
+    stackCurrentCallback = scheduler.newCallback(router, uidBytes, CALLBACK_STACK_CURRENT, 8 + 2, out -> {
+      out.writeUInt16((int) stackCurrentValues[0].next(), 1);
+    });
+    stackVoltageCallback = scheduler.newCallback(router, uidBytes, CALLBACK_STACK_VOLTAGE, 8 + 2, out -> {
+      out.writeUInt16((int) stackVoltageValues[0].next(), 1);
+    });
+    uSBVoltageCallback = scheduler.newCallback(router, uidBytes, CALLBACK_USB_VOLTAGE, 8 + 2, out -> {
+      out.writeUInt16((int) uSBVoltageValues[0].next(), 1);
+    });
+    stackCurrentReachedCallback = scheduler.newThresholdCallback(router, uidBytes, CALLBACK_STACK_CURRENT_REACHED,
+        ValueType.UINT16, 1, values -> {
+          values[0] = (long) stackCurrentValues[0].next();
+        });
+    stackVoltageReachedCallback = scheduler.newThresholdCallback(router, uidBytes, CALLBACK_STACK_VOLTAGE_REACHED,
+        ValueType.UINT16, 1, values -> {
+          values[0] = (long) stackVoltageValues[0].next();
+        });
+    uSBVoltageReachedCallback = scheduler.newThresholdCallback(router, uidBytes, CALLBACK_USB_VOLTAGE_REACHED,
+        ValueType.UINT16, 1, values -> {
+          values[0] = (long) uSBVoltageValues[0].next();
+        });
 
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
+
+  }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    stackCurrentCallback.setPeriod(0);
+    stackVoltageCallback.setPeriod(0);
+    uSBVoltageCallback.setPeriod(0);
+    stackCurrentReachedCallback.disable();
+    stackVoltageReachedCallback.disable();
+    uSBVoltageReachedCallback.disable();
+    router().unregister(uidBytes);
   }
 
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_GET_STACK_VOLTAGE) {
-      buffer = getStackVoltage(packet);
-    }
-    else if (functionId == FUNCTION_GET_STACK_CURRENT) {
-      buffer = getStackCurrent(packet);
-    }
-    else if (functionId == FUNCTION_SET_EXTENSION_TYPE) {
-      buffer = setExtensionType(packet);
-    }
-    else if (functionId == FUNCTION_GET_EXTENSION_TYPE) {
-      buffer = getExtensionType(packet);
-    }
-    else if (functionId == FUNCTION_IS_CHIBI_PRESENT) {
-      buffer = isChibiPresent(packet);
-    }
-    else if (functionId == FUNCTION_SET_CHIBI_ADDRESS) {
-      buffer = setChibiAddress(packet);
-    }
-    else if (functionId == FUNCTION_GET_CHIBI_ADDRESS) {
-      buffer = getChibiAddress(packet);
-    }
-    else if (functionId == FUNCTION_SET_CHIBI_MASTER_ADDRESS) {
-      buffer = setChibiMasterAddress(packet);
-    }
-    else if (functionId == FUNCTION_GET_CHIBI_MASTER_ADDRESS) {
-      buffer = getChibiMasterAddress(packet);
-    }
-    else if (functionId == FUNCTION_SET_CHIBI_SLAVE_ADDRESS) {
-      buffer = setChibiSlaveAddress(packet);
-    }
-    else if (functionId == FUNCTION_GET_CHIBI_SLAVE_ADDRESS) {
-      buffer = getChibiSlaveAddress(packet);
-    }
-    else if (functionId == FUNCTION_GET_CHIBI_SIGNAL_STRENGTH) {
-      buffer = getChibiSignalStrength(packet);
-    }
-    else if (functionId == FUNCTION_GET_CHIBI_ERROR_LOG) {
-      buffer = getChibiErrorLog(packet);
-    }
-    else if (functionId == FUNCTION_SET_CHIBI_FREQUENCY) {
-      buffer = setChibiFrequency(packet);
-    }
-    else if (functionId == FUNCTION_GET_CHIBI_FREQUENCY) {
-      buffer = getChibiFrequency(packet);
-    }
-    else if (functionId == FUNCTION_SET_CHIBI_CHANNEL) {
-      buffer = setChibiChannel(packet);
-    }
-    else if (functionId == FUNCTION_GET_CHIBI_CHANNEL) {
-      buffer = getChibiChannel(packet);
-    }
-    else if (functionId == FUNCTION_IS_RS485_PRESENT) {
-      buffer = isRS485Present(packet);
-    }
-    else if (functionId == FUNCTION_SET_RS485_ADDRESS) {
-      buffer = setRS485Address(packet);
-    }
-    else if (functionId == FUNCTION_GET_RS485_ADDRESS) {
-      buffer = getRS485Address(packet);
-    }
-    else if (functionId == FUNCTION_SET_RS485_SLAVE_ADDRESS) {
-      buffer = setRS485SlaveAddress(packet);
-    }
-    else if (functionId == FUNCTION_GET_RS485_SLAVE_ADDRESS) {
-      buffer = getRS485SlaveAddress(packet);
-    }
-    else if (functionId == FUNCTION_GET_RS485_ERROR_LOG) {
-      buffer = getRS485ErrorLog(packet);
-    }
-    else if (functionId == FUNCTION_SET_RS485_CONFIGURATION) {
-      buffer = setRS485Configuration(packet);
-    }
-    else if (functionId == FUNCTION_GET_RS485_CONFIGURATION) {
-      buffer = getRS485Configuration(packet);
-    }
-    else if (functionId == FUNCTION_IS_WIFI_PRESENT) {
-      buffer = isWifiPresent(packet);
-    }
-    else if (functionId == FUNCTION_SET_WIFI_CONFIGURATION) {
-      buffer = setWifiConfiguration(packet);
-    }
-    else if (functionId == FUNCTION_GET_WIFI_CONFIGURATION) {
-      buffer = getWifiConfiguration(packet);
-    }
-    else if (functionId == FUNCTION_SET_WIFI_ENCRYPTION) {
-      buffer = setWifiEncryption(packet);
-    }
-    else if (functionId == FUNCTION_GET_WIFI_ENCRYPTION) {
-      buffer = getWifiEncryption(packet);
-    }
-    else if (functionId == FUNCTION_GET_WIFI_STATUS) {
-      buffer = getWifiStatus(packet);
-    }
-    else if (functionId == FUNCTION_REFRESH_WIFI_STATUS) {
-      buffer = refreshWifiStatus(packet);
-    }
-    else if (functionId == FUNCTION_SET_WIFI_CERTIFICATE) {
-      buffer = setWifiCertificate(packet);
-    }
-    else if (functionId == FUNCTION_GET_WIFI_CERTIFICATE) {
-      buffer = getWifiCertificate(packet);
-    }
-    else if (functionId == FUNCTION_SET_WIFI_POWER_MODE) {
-      buffer = setWifiPowerMode(packet);
-    }
-    else if (functionId == FUNCTION_GET_WIFI_POWER_MODE) {
-      buffer = getWifiPowerMode(packet);
-    }
-    else if (functionId == FUNCTION_GET_WIFI_BUFFER_INFO) {
-      buffer = getWifiBufferInfo(packet);
-    }
-    else if (functionId == FUNCTION_SET_WIFI_REGULATORY_DOMAIN) {
-      buffer = setWifiRegulatoryDomain(packet);
-    }
-    else if (functionId == FUNCTION_GET_WIFI_REGULATORY_DOMAIN) {
-      buffer = getWifiRegulatoryDomain(packet);
-    }
-    else if (functionId == FUNCTION_GET_USB_VOLTAGE) {
-      buffer = getUSBVoltage(packet);
-    }
-    else if (functionId == FUNCTION_SET_LONG_WIFI_KEY) {
-      buffer = setLongWifiKey(packet);
-    }
-    else if (functionId == FUNCTION_GET_LONG_WIFI_KEY) {
-      buffer = getLongWifiKey(packet);
-    }
-    else if (functionId == FUNCTION_SET_WIFI_HOSTNAME) {
-      buffer = setWifiHostname(packet);
-    }
-    else if (functionId == FUNCTION_GET_WIFI_HOSTNAME) {
-      buffer = getWifiHostname(packet);
-    }
-    else if (functionId == FUNCTION_SET_STACK_CURRENT_CALLBACK_PERIOD) {
-      buffer = setStackCurrentCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_STACK_CURRENT_CALLBACK_PERIOD) {
-      buffer = getStackCurrentCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_STACK_VOLTAGE_CALLBACK_PERIOD) {
-      buffer = setStackVoltageCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_STACK_VOLTAGE_CALLBACK_PERIOD) {
-      buffer = getStackVoltageCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_USB_VOLTAGE_CALLBACK_PERIOD) {
-      buffer = setUSBVoltageCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_USB_VOLTAGE_CALLBACK_PERIOD) {
-      buffer = getUSBVoltageCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_STACK_CURRENT_CALLBACK_THRESHOLD) {
-      buffer = setStackCurrentCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_GET_STACK_CURRENT_CALLBACK_THRESHOLD) {
-      buffer = getStackCurrentCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_SET_STACK_VOLTAGE_CALLBACK_THRESHOLD) {
-      buffer = setStackVoltageCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_GET_STACK_VOLTAGE_CALLBACK_THRESHOLD) {
-      buffer = getStackVoltageCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_SET_USB_VOLTAGE_CALLBACK_THRESHOLD) {
-      buffer = setUSBVoltageCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_GET_USB_VOLTAGE_CALLBACK_THRESHOLD) {
-      buffer = getUSBVoltageCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_SET_DEBOUNCE_PERIOD) {
-      buffer = setDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_DEBOUNCE_PERIOD) {
-      buffer = getDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_IS_ETHERNET_PRESENT) {
-      buffer = isEthernetPresent(packet);
-    }
-    else if (functionId == FUNCTION_SET_ETHERNET_CONFIGURATION) {
-      buffer = setEthernetConfiguration(packet);
-    }
-    else if (functionId == FUNCTION_GET_ETHERNET_CONFIGURATION) {
-      buffer = getEthernetConfiguration(packet);
-    }
-    else if (functionId == FUNCTION_GET_ETHERNET_STATUS) {
-      buffer = getEthernetStatus(packet);
-    }
-    else if (functionId == FUNCTION_SET_ETHERNET_HOSTNAME) {
-      buffer = setEthernetHostname(packet);
-    }
-    else if (functionId == FUNCTION_SET_ETHERNET_MAC_ADDRESS) {
-      buffer = setEthernetMACAddress(packet);
-    }
-    else if (functionId == FUNCTION_SET_ETHERNET_WEBSOCKET_CONFIGURATION) {
-      buffer = setEthernetWebsocketConfiguration(packet);
-    }
-    else if (functionId == FUNCTION_GET_ETHERNET_WEBSOCKET_CONFIGURATION) {
-      buffer = getEthernetWebsocketConfiguration(packet);
-    }
-    else if (functionId == FUNCTION_SET_ETHERNET_AUTHENTICATION_SECRET) {
-      buffer = setEthernetAuthenticationSecret(packet);
-    }
-    else if (functionId == FUNCTION_GET_ETHERNET_AUTHENTICATION_SECRET) {
-      buffer = getEthernetAuthenticationSecret(packet);
-    }
-    else if (functionId == FUNCTION_SET_WIFI_AUTHENTICATION_SECRET) {
-      buffer = setWifiAuthenticationSecret(packet);
-    }
-    else if (functionId == FUNCTION_GET_WIFI_AUTHENTICATION_SECRET) {
-      buffer = getWifiAuthenticationSecret(packet);
-    }
-    else if (functionId == FUNCTION_ENABLE_STATUS_LED) {
-      buffer = enableStatusLED(packet);
-    }
-    else if (functionId == FUNCTION_DISABLE_STATUS_LED) {
-      buffer = disableStatusLED(packet);
-    }
-    else if (functionId == FUNCTION_IS_STATUS_LED_ENABLED) {
-      buffer = isStatusLEDEnabled(packet);
-    }
-    else if (functionId == FUNCTION_GET_CHIP_TEMPERATURE) {
-      buffer = getChipTemperature(packet);
-    }
-    else if (functionId == FUNCTION_RESET) {
-      buffer = reset(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_GET_STACK_VOLTAGE:
+        buffer = getStackVoltage(packet);
+        break;
+      case FUNCTION_GET_STACK_CURRENT:
+        buffer = getStackCurrent(packet);
+        break;
+      case FUNCTION_SET_EXTENSION_TYPE:
+        buffer = setExtensionType(packet);
+        break;
+      case FUNCTION_GET_EXTENSION_TYPE:
+        buffer = getExtensionType(packet);
+        break;
+      case FUNCTION_IS_CHIBI_PRESENT:
+        buffer = isChibiPresent(packet);
+        break;
+      case FUNCTION_SET_CHIBI_ADDRESS:
+        buffer = setChibiAddress(packet);
+        break;
+      case FUNCTION_GET_CHIBI_ADDRESS:
+        buffer = getChibiAddress(packet);
+        break;
+      case FUNCTION_SET_CHIBI_MASTER_ADDRESS:
+        buffer = setChibiMasterAddress(packet);
+        break;
+      case FUNCTION_GET_CHIBI_MASTER_ADDRESS:
+        buffer = getChibiMasterAddress(packet);
+        break;
+      case FUNCTION_SET_CHIBI_SLAVE_ADDRESS:
+        buffer = setChibiSlaveAddress(packet);
+        break;
+      case FUNCTION_GET_CHIBI_SLAVE_ADDRESS:
+        buffer = getChibiSlaveAddress(packet);
+        break;
+      case FUNCTION_GET_CHIBI_SIGNAL_STRENGTH:
+        buffer = getChibiSignalStrength(packet);
+        break;
+      case FUNCTION_GET_CHIBI_ERROR_LOG:
+        buffer = getChibiErrorLog(packet);
+        break;
+      case FUNCTION_SET_CHIBI_FREQUENCY:
+        buffer = setChibiFrequency(packet);
+        break;
+      case FUNCTION_GET_CHIBI_FREQUENCY:
+        buffer = getChibiFrequency(packet);
+        break;
+      case FUNCTION_SET_CHIBI_CHANNEL:
+        buffer = setChibiChannel(packet);
+        break;
+      case FUNCTION_GET_CHIBI_CHANNEL:
+        buffer = getChibiChannel(packet);
+        break;
+      case FUNCTION_IS_RS485_PRESENT:
+        buffer = isRS485Present(packet);
+        break;
+      case FUNCTION_SET_RS485_ADDRESS:
+        buffer = setRS485Address(packet);
+        break;
+      case FUNCTION_GET_RS485_ADDRESS:
+        buffer = getRS485Address(packet);
+        break;
+      case FUNCTION_SET_RS485_SLAVE_ADDRESS:
+        buffer = setRS485SlaveAddress(packet);
+        break;
+      case FUNCTION_GET_RS485_SLAVE_ADDRESS:
+        buffer = getRS485SlaveAddress(packet);
+        break;
+      case FUNCTION_GET_RS485_ERROR_LOG:
+        buffer = getRS485ErrorLog(packet);
+        break;
+      case FUNCTION_SET_RS485_CONFIGURATION:
+        buffer = setRS485Configuration(packet);
+        break;
+      case FUNCTION_GET_RS485_CONFIGURATION:
+        buffer = getRS485Configuration(packet);
+        break;
+      case FUNCTION_IS_WIFI_PRESENT:
+        buffer = isWifiPresent(packet);
+        break;
+      case FUNCTION_SET_WIFI_CONFIGURATION:
+        buffer = setWifiConfiguration(packet);
+        break;
+      case FUNCTION_GET_WIFI_CONFIGURATION:
+        buffer = getWifiConfiguration(packet);
+        break;
+      case FUNCTION_SET_WIFI_ENCRYPTION:
+        buffer = setWifiEncryption(packet);
+        break;
+      case FUNCTION_GET_WIFI_ENCRYPTION:
+        buffer = getWifiEncryption(packet);
+        break;
+      case FUNCTION_GET_WIFI_STATUS:
+        buffer = getWifiStatus(packet);
+        break;
+      case FUNCTION_REFRESH_WIFI_STATUS:
+        buffer = refreshWifiStatus(packet);
+        break;
+      case FUNCTION_SET_WIFI_CERTIFICATE:
+        buffer = setWifiCertificate(packet);
+        break;
+      case FUNCTION_GET_WIFI_CERTIFICATE:
+        buffer = getWifiCertificate(packet);
+        break;
+      case FUNCTION_SET_WIFI_POWER_MODE:
+        buffer = setWifiPowerMode(packet);
+        break;
+      case FUNCTION_GET_WIFI_POWER_MODE:
+        buffer = getWifiPowerMode(packet);
+        break;
+      case FUNCTION_GET_WIFI_BUFFER_INFO:
+        buffer = getWifiBufferInfo(packet);
+        break;
+      case FUNCTION_SET_WIFI_REGULATORY_DOMAIN:
+        buffer = setWifiRegulatoryDomain(packet);
+        break;
+      case FUNCTION_GET_WIFI_REGULATORY_DOMAIN:
+        buffer = getWifiRegulatoryDomain(packet);
+        break;
+      case FUNCTION_GET_USB_VOLTAGE:
+        buffer = getUSBVoltage(packet);
+        break;
+      case FUNCTION_SET_LONG_WIFI_KEY:
+        buffer = setLongWifiKey(packet);
+        break;
+      case FUNCTION_GET_LONG_WIFI_KEY:
+        buffer = getLongWifiKey(packet);
+        break;
+      case FUNCTION_SET_WIFI_HOSTNAME:
+        buffer = setWifiHostname(packet);
+        break;
+      case FUNCTION_GET_WIFI_HOSTNAME:
+        buffer = getWifiHostname(packet);
+        break;
+      case FUNCTION_SET_STACK_CURRENT_CALLBACK_PERIOD:
+        buffer = setStackCurrentCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_STACK_CURRENT_CALLBACK_PERIOD:
+        buffer = getStackCurrentCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_STACK_VOLTAGE_CALLBACK_PERIOD:
+        buffer = setStackVoltageCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_STACK_VOLTAGE_CALLBACK_PERIOD:
+        buffer = getStackVoltageCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_USB_VOLTAGE_CALLBACK_PERIOD:
+        buffer = setUSBVoltageCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_USB_VOLTAGE_CALLBACK_PERIOD:
+        buffer = getUSBVoltageCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_STACK_CURRENT_CALLBACK_THRESHOLD:
+        buffer = setStackCurrentCallbackThreshold(packet);
+        break;
+      case FUNCTION_GET_STACK_CURRENT_CALLBACK_THRESHOLD:
+        buffer = getStackCurrentCallbackThreshold(packet);
+        break;
+      case FUNCTION_SET_STACK_VOLTAGE_CALLBACK_THRESHOLD:
+        buffer = setStackVoltageCallbackThreshold(packet);
+        break;
+      case FUNCTION_GET_STACK_VOLTAGE_CALLBACK_THRESHOLD:
+        buffer = getStackVoltageCallbackThreshold(packet);
+        break;
+      case FUNCTION_SET_USB_VOLTAGE_CALLBACK_THRESHOLD:
+        buffer = setUSBVoltageCallbackThreshold(packet);
+        break;
+      case FUNCTION_GET_USB_VOLTAGE_CALLBACK_THRESHOLD:
+        buffer = getUSBVoltageCallbackThreshold(packet);
+        break;
+      case FUNCTION_SET_DEBOUNCE_PERIOD:
+        buffer = setDebouncePeriod(packet);
+        break;
+      case FUNCTION_GET_DEBOUNCE_PERIOD:
+        buffer = getDebouncePeriod(packet);
+        break;
+      case FUNCTION_IS_ETHERNET_PRESENT:
+        buffer = isEthernetPresent(packet);
+        break;
+      case FUNCTION_SET_ETHERNET_CONFIGURATION:
+        buffer = setEthernetConfiguration(packet);
+        break;
+      case FUNCTION_GET_ETHERNET_CONFIGURATION:
+        buffer = getEthernetConfiguration(packet);
+        break;
+      case FUNCTION_GET_ETHERNET_STATUS:
+        buffer = getEthernetStatus(packet);
+        break;
+      case FUNCTION_SET_ETHERNET_HOSTNAME:
+        buffer = setEthernetHostname(packet);
+        break;
+      case FUNCTION_SET_ETHERNET_MAC_ADDRESS:
+        buffer = setEthernetMACAddress(packet);
+        break;
+      case FUNCTION_SET_ETHERNET_WEBSOCKET_CONFIGURATION:
+        buffer = setEthernetWebsocketConfiguration(packet);
+        break;
+      case FUNCTION_GET_ETHERNET_WEBSOCKET_CONFIGURATION:
+        buffer = getEthernetWebsocketConfiguration(packet);
+        break;
+      case FUNCTION_SET_ETHERNET_AUTHENTICATION_SECRET:
+        buffer = setEthernetAuthenticationSecret(packet);
+        break;
+      case FUNCTION_GET_ETHERNET_AUTHENTICATION_SECRET:
+        buffer = getEthernetAuthenticationSecret(packet);
+        break;
+      case FUNCTION_SET_WIFI_AUTHENTICATION_SECRET:
+        buffer = setWifiAuthenticationSecret(packet);
+        break;
+      case FUNCTION_GET_WIFI_AUTHENTICATION_SECRET:
+        buffer = getWifiAuthenticationSecret(packet);
+        break;
+      case FUNCTION_ENABLE_STATUS_LED:
+        buffer = enableStatusLED(packet);
+        break;
+      case FUNCTION_DISABLE_STATUS_LED:
+        buffer = disableStatusLED(packet);
+        break;
+      case FUNCTION_IS_STATUS_LED_ENABLED:
+        buffer = isStatusLEDEnabled(packet);
+        break;
+      case FUNCTION_GET_CHIP_TEMPERATURE:
+        buffer = getChipTemperature(packet);
+        break;
+      case FUNCTION_RESET:
+        buffer = reset(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -506,17 +562,17 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getUSBVoltage(Packet packet) {
-    logger.debug("function getUSBVoltage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getUSBVoltage");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_USB_VOLTAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) uSBVoltageValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -526,26 +582,26 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getWifiStatus(Packet packet) {
-    logger.debug("function getWifiStatus");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getWifiStatus");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 36;
       byte functionId = FUNCTION_GET_WIFI_STATUS;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get1ByteURandomValue(6));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(6));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(4));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(4));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(4));        
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt8((short) wifiStatusValues[0].next(), 6);
+      writer.writeUInt8((short) wifiStatusValues[1].next(), 6);
+      writer.writeUInt8((short) wifiStatusValues[2].next(), 1);
+      writer.writeInt16((short) wifiStatusValues[3].next(), 1);
+      writer.writeUInt8((short) wifiStatusValues[4].next(), 4);
+      writer.writeUInt8((short) wifiStatusValues[5].next(), 4);
+      writer.writeUInt8((short) wifiStatusValues[6].next(), 4);
+      writer.writeUInt32((long) wifiStatusValues[7].next(), 1);
+      writer.writeUInt32((long) wifiStatusValues[8].next(), 1);
+      writer.writeUInt8((short) wifiStatusValues[9].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -555,20 +611,20 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getChibiErrorLog(Packet packet) {
-    logger.debug("function getChibiErrorLog");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getChibiErrorLog");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 8;
       byte functionId = FUNCTION_GET_CHIBI_ERROR_LOG;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) chibiErrorLogValues[0].next(), 1);
+      writer.writeUInt16((int) chibiErrorLogValues[1].next(), 1);
+      writer.writeUInt16((int) chibiErrorLogValues[2].next(), 1);
+      writer.writeUInt16((int) chibiErrorLogValues[3].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -578,19 +634,19 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getWifiBufferInfo(Packet packet) {
-    logger.debug("function getWifiBufferInfo");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getWifiBufferInfo");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 8;
       byte functionId = FUNCTION_GET_WIFI_BUFFER_INFO;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt32((long) wifiBufferInfoValues[0].next(), 1);
+      writer.writeUInt16((int) wifiBufferInfoValues[1].next(), 1);
+      writer.writeUInt16((int) wifiBufferInfoValues[2].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -600,17 +656,17 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getStackVoltage(Packet packet) {
-    logger.debug("function getStackVoltage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getStackVoltage");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_STACK_VOLTAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) stackVoltageValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -620,17 +676,17 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getChibiSignalStrength(Packet packet) {
-    logger.debug("function getChibiSignalStrength");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getChibiSignalStrength");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_CHIBI_SIGNAL_STRENGTH;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt8((short) chibiSignalStrengthValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -640,17 +696,17 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getRS485ErrorLog(Packet packet) {
-    logger.debug("function getRS485ErrorLog");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getRS485ErrorLog");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_RS485_ERROR_LOG;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) rS485ErrorLogValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -660,23 +716,23 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getEthernetStatus(Packet packet) {
-    logger.debug("function getEthernetStatus");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getEthernetStatus");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 58;
       byte functionId = FUNCTION_GET_ETHERNET_STATUS;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get1ByteURandomValue(6));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(4));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(4));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(4));        
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
-      buffer.appendBytes(Utils.getCharRandomValue(32));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt8((short) ethernetStatusValues[0].next(), 6);
+      writer.writeUInt8((short) ethernetStatusValues[1].next(), 4);
+      writer.writeUInt8((short) ethernetStatusValues[2].next(), 4);
+      writer.writeUInt8((short) ethernetStatusValues[3].next(), 4);
+      writer.writeUInt32((long) ethernetStatusValues[4].next(), 1);
+      writer.writeUInt32((long) ethernetStatusValues[5].next(), 1);
+      writer.writeChar(Utils.getDefaultChar(), 32);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -686,17 +742,17 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getChipTemperature(Packet packet) {
-    logger.debug("function getChipTemperature");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getChipTemperature");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_CHIP_TEMPERATURE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt16((short) chipTemperatureValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -706,17 +762,17 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getStackCurrent(Packet packet) {
-    logger.debug("function getStackCurrent");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getStackCurrent");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_STACK_CURRENT;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) stackCurrentValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -726,16 +782,16 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getStackVoltageCallbackPeriod(Packet packet) {
-    logger.debug("function getStackVoltageCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getStackVoltageCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_STACK_VOLTAGE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.stackVoltageCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.stackVoltageCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -743,7 +799,7 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
 
   private Buffer getStackVoltageCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -751,16 +807,16 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getWifiHostname(Packet packet) {
-    logger.debug("function getWifiHostname");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getWifiHostname");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 16;
       byte functionId = FUNCTION_GET_WIFI_HOSTNAME;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.wifiHostname);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.wifiHostname);
+      return writer.buffer();
     }
 
     return null;
@@ -768,7 +824,7 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
 
   private Buffer getWifiHostnameDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(16));        
+      buffer.appendBytes(Utils.getCharDefaultValue(16));        
       return buffer;
   }
 
@@ -776,16 +832,16 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getStackVoltageCallbackThreshold(Packet packet) {
-    logger.debug("function getStackVoltageCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getStackVoltageCallbackThreshold");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 5;
       byte functionId = FUNCTION_GET_STACK_VOLTAGE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.stackVoltageCallbackThreshold);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.stackVoltageCallbackThreshold);
+      return writer.buffer();
     }
 
     return null;
@@ -793,9 +849,9 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
 
   private Buffer getStackVoltageCallbackThresholdDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -803,16 +859,16 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getStackCurrentCallbackPeriod(Packet packet) {
-    logger.debug("function getStackCurrentCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getStackCurrentCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_STACK_CURRENT_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.stackCurrentCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.stackCurrentCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -820,7 +876,7 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
 
   private Buffer getStackCurrentCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -828,16 +884,16 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getUSBVoltageCallbackThreshold(Packet packet) {
-    logger.debug("function getUSBVoltageCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getUSBVoltageCallbackThreshold");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 5;
       byte functionId = FUNCTION_GET_USB_VOLTAGE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.uSBVoltageCallbackThreshold);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.uSBVoltageCallbackThreshold);
+      return writer.buffer();
     }
 
     return null;
@@ -845,9 +901,9 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
 
   private Buffer getUSBVoltageCallbackThresholdDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -855,16 +911,16 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getChibiAddress(Packet packet) {
-    logger.debug("function getChibiAddress");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getChibiAddress");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_CHIBI_ADDRESS;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.chibiAddress);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.chibiAddress);
+      return writer.buffer();
     }
 
     return null;
@@ -872,7 +928,7 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
 
   private Buffer getChibiAddressDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -880,16 +936,16 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getRS485Address(Packet packet) {
-    logger.debug("function getRS485Address");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getRS485Address");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_RS485_ADDRESS;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.rS485Address);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.rS485Address);
+      return writer.buffer();
     }
 
     return null;
@@ -897,7 +953,7 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
 
   private Buffer getRS485AddressDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -905,16 +961,16 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getChibiFrequency(Packet packet) {
-    logger.debug("function getChibiFrequency");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getChibiFrequency");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_CHIBI_FREQUENCY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.chibiFrequency);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.chibiFrequency);
+      return writer.buffer();
     }
 
     return null;
@@ -922,7 +978,7 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
 
   private Buffer getChibiFrequencyDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -930,16 +986,16 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getWifiConfiguration(Packet packet) {
-    logger.debug("function getWifiConfiguration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getWifiConfiguration");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 47;
       byte functionId = FUNCTION_GET_WIFI_CONFIGURATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.wifiConfiguration);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.wifiConfiguration);
+      return writer.buffer();
     }
 
     return null;
@@ -947,12 +1003,12 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
 
   private Buffer getWifiConfigurationDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(32));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(4));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(4));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(4));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(32));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(4));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(4));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(4));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -960,16 +1016,16 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getEthernetWebsocketConfiguration(Packet packet) {
-    logger.debug("function getEthernetWebsocketConfiguration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getEthernetWebsocketConfiguration");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 3;
       byte functionId = FUNCTION_GET_ETHERNET_WEBSOCKET_CONFIGURATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.ethernetWebsocketConfiguration);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.ethernetWebsocketConfiguration);
+      return writer.buffer();
     }
 
     return null;
@@ -977,8 +1033,8 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
 
   private Buffer getEthernetWebsocketConfigurationDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -986,16 +1042,16 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getWifiEncryption(Packet packet) {
-    logger.debug("function getWifiEncryption");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getWifiEncryption");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 59;
       byte functionId = FUNCTION_GET_WIFI_ENCRYPTION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.wifiEncryption);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.wifiEncryption);
+      return writer.buffer();
     }
 
     return null;
@@ -1003,13 +1059,13 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
 
   private Buffer getWifiEncryptionDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.getCharRandomValue(50));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(50));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -1017,16 +1073,16 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getWifiRegulatoryDomain(Packet packet) {
-    logger.debug("function getWifiRegulatoryDomain");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getWifiRegulatoryDomain");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_WIFI_REGULATORY_DOMAIN;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.wifiRegulatoryDomain);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.wifiRegulatoryDomain);
+      return writer.buffer();
     }
 
     return null;
@@ -1034,7 +1090,7 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
 
   private Buffer getWifiRegulatoryDomainDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -1042,16 +1098,16 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getDebouncePeriod(Packet packet) {
-    logger.debug("function getDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDebouncePeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.debouncePeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.debouncePeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -1059,7 +1115,7 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
 
   private Buffer getDebouncePeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -1067,16 +1123,16 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getEthernetConfiguration(Packet packet) {
-    logger.debug("function getEthernetConfiguration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getEthernetConfiguration");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 15;
       byte functionId = FUNCTION_GET_ETHERNET_CONFIGURATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.ethernetConfiguration);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.ethernetConfiguration);
+      return writer.buffer();
     }
 
     return null;
@@ -1084,11 +1140,11 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
 
   private Buffer getEthernetConfigurationDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(4));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(4));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(4));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(4));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(4));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(4));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -1096,16 +1152,16 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getEthernetAuthenticationSecret(Packet packet) {
-    logger.debug("function getEthernetAuthenticationSecret");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getEthernetAuthenticationSecret");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 64;
       byte functionId = FUNCTION_GET_ETHERNET_AUTHENTICATION_SECRET;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.ethernetAuthenticationSecret);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.ethernetAuthenticationSecret);
+      return writer.buffer();
     }
 
     return null;
@@ -1113,7 +1169,7 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
 
   private Buffer getEthernetAuthenticationSecretDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(64));        
+      buffer.appendBytes(Utils.getCharDefaultValue(64));        
       return buffer;
   }
 
@@ -1121,16 +1177,16 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getUSBVoltageCallbackPeriod(Packet packet) {
-    logger.debug("function getUSBVoltageCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getUSBVoltageCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_USB_VOLTAGE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.uSBVoltageCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.uSBVoltageCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -1138,7 +1194,7 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
 
   private Buffer getUSBVoltageCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -1146,16 +1202,16 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getExtensionType(Packet packet) {
-    logger.debug("function getExtensionType");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getExtensionType");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_EXTENSION_TYPE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.extensionType);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.extensionType);
+      return writer.buffer();
     }
 
     return null;
@@ -1163,7 +1219,7 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
 
   private Buffer getExtensionTypeDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -1171,16 +1227,16 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getLongWifiKey(Packet packet) {
-    logger.debug("function getLongWifiKey");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getLongWifiKey");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 64;
       byte functionId = FUNCTION_GET_LONG_WIFI_KEY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.longWifiKey);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.longWifiKey);
+      return writer.buffer();
     }
 
     return null;
@@ -1188,7 +1244,7 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
 
   private Buffer getLongWifiKeyDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(64));        
+      buffer.appendBytes(Utils.getCharDefaultValue(64));        
       return buffer;
   }
 
@@ -1196,16 +1252,16 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getChibiMasterAddress(Packet packet) {
-    logger.debug("function getChibiMasterAddress");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getChibiMasterAddress");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_CHIBI_MASTER_ADDRESS;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.chibiMasterAddress);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.chibiMasterAddress);
+      return writer.buffer();
     }
 
     return null;
@@ -1213,7 +1269,7 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
 
   private Buffer getChibiMasterAddressDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -1221,16 +1277,16 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getChibiChannel(Packet packet) {
-    logger.debug("function getChibiChannel");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getChibiChannel");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_CHIBI_CHANNEL;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.chibiChannel);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.chibiChannel);
+      return writer.buffer();
     }
 
     return null;
@@ -1238,7 +1294,7 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
 
   private Buffer getChibiChannelDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -1246,16 +1302,16 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getChibiSlaveAddress(Packet packet) {
-    logger.debug("function getChibiSlaveAddress");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getChibiSlaveAddress");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_CHIBI_SLAVE_ADDRESS;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.chibiSlaveAddress);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.chibiSlaveAddress);
+      return writer.buffer();
     }
 
     return null;
@@ -1263,7 +1319,7 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
 
   private Buffer getChibiSlaveAddressDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -1271,16 +1327,16 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getWifiPowerMode(Packet packet) {
-    logger.debug("function getWifiPowerMode");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getWifiPowerMode");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_WIFI_POWER_MODE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.wifiPowerMode);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.wifiPowerMode);
+      return writer.buffer();
     }
 
     return null;
@@ -1288,7 +1344,7 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
 
   private Buffer getWifiPowerModeDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -1296,16 +1352,16 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getWifiAuthenticationSecret(Packet packet) {
-    logger.debug("function getWifiAuthenticationSecret");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getWifiAuthenticationSecret");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 64;
       byte functionId = FUNCTION_GET_WIFI_AUTHENTICATION_SECRET;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.wifiAuthenticationSecret);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.wifiAuthenticationSecret);
+      return writer.buffer();
     }
 
     return null;
@@ -1313,7 +1369,7 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
 
   private Buffer getWifiAuthenticationSecretDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(64));        
+      buffer.appendBytes(Utils.getCharDefaultValue(64));        
       return buffer;
   }
 
@@ -1321,16 +1377,16 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getRS485SlaveAddress(Packet packet) {
-    logger.debug("function getRS485SlaveAddress");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getRS485SlaveAddress");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_RS485_SLAVE_ADDRESS;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.rS485SlaveAddress);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.rS485SlaveAddress);
+      return writer.buffer();
     }
 
     return null;
@@ -1338,7 +1394,7 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
 
   private Buffer getRS485SlaveAddressDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -1346,16 +1402,16 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getRS485Configuration(Packet packet) {
-    logger.debug("function getRS485Configuration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getRS485Configuration");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 6;
       byte functionId = FUNCTION_GET_RS485_CONFIGURATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.rS485Configuration);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.rS485Configuration);
+      return writer.buffer();
     }
 
     return null;
@@ -1363,9 +1419,9 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
 
   private Buffer getRS485ConfigurationDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -1373,16 +1429,16 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer isStatusLEDEnabled(Packet packet) {
-    logger.debug("function isStatusLEDEnabled");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function isStatusLEDEnabled");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_IS_STATUS_LED_ENABLED;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.StatusLED);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.StatusLED);
+      return writer.buffer();
     }
 
     return null;
@@ -1390,7 +1446,7 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
 
   private Buffer isStatusLEDEnabledDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getBoolRandomValue(1));        
+      buffer.appendBytes(Utils.getBoolDefaultValue(1));        
       return buffer;
   }
 
@@ -1398,16 +1454,16 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getWifiCertificate(Packet packet) {
-    logger.debug("function getWifiCertificate");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getWifiCertificate");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 33;
       byte functionId = FUNCTION_GET_WIFI_CERTIFICATE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.wifiCertificate);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.wifiCertificate);
+      return writer.buffer();
     }
 
     return null;
@@ -1415,8 +1471,8 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
 
   private Buffer getWifiCertificateDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(32));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(32));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -1424,16 +1480,16 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getStackCurrentCallbackThreshold(Packet packet) {
-    logger.debug("function getStackCurrentCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getStackCurrentCallbackThreshold");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 5;
       byte functionId = FUNCTION_GET_STACK_CURRENT_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.stackCurrentCallbackThreshold);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.stackCurrentCallbackThreshold);
+      return writer.buffer();
     }
 
     return null;
@@ -1441,9 +1497,9 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
 
   private Buffer getStackCurrentCallbackThresholdDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -1451,18 +1507,22 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer setEthernetConfiguration(Packet packet) {
-    logger.debug("function setEthernetConfiguration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setEthernetConfiguration");
+    }
+    if (packet.getLength() - 8 != 15) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.ethernetConfiguration = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_ETHERNET_CONFIGURATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.ethernetConfiguration = packet.getPayload();
+
     return null;
   }
 
@@ -1470,18 +1530,22 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer setWifiHostname(Packet packet) {
-    logger.debug("function setWifiHostname");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setWifiHostname");
+    }
+    if (packet.getLength() - 8 != 16) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.wifiHostname = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_WIFI_HOSTNAME;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.wifiHostname = packet.getPayload();
+
     return null;
   }
 
@@ -1489,18 +1553,22 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer setWifiAuthenticationSecret(Packet packet) {
-    logger.debug("function setWifiAuthenticationSecret");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setWifiAuthenticationSecret");
+    }
+    if (packet.getLength() - 8 != 64) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.wifiAuthenticationSecret = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_WIFI_AUTHENTICATION_SECRET;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.wifiAuthenticationSecret = packet.getPayload();
+
     return null;
   }
 
@@ -1508,18 +1576,22 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer setChibiAddress(Packet packet) {
-    logger.debug("function setChibiAddress");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setChibiAddress");
+    }
+    if (packet.getLength() - 8 != 1) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.chibiAddress = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_CHIBI_ADDRESS;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.chibiAddress = packet.getPayload();
+
     return null;
   }
 
@@ -1527,18 +1599,22 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer setChibiSlaveAddress(Packet packet) {
-    logger.debug("function setChibiSlaveAddress");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setChibiSlaveAddress");
+    }
+    if (packet.getLength() - 8 != 2) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.chibiSlaveAddress = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_CHIBI_SLAVE_ADDRESS;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.chibiSlaveAddress = packet.getPayload();
+
     return null;
   }
 
@@ -1546,18 +1622,22 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer setRS485Address(Packet packet) {
-    logger.debug("function setRS485Address");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setRS485Address");
+    }
+    if (packet.getLength() - 8 != 1) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.rS485Address = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_RS485_ADDRESS;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.rS485Address = packet.getPayload();
+
     return null;
   }
 
@@ -1565,18 +1645,23 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer setUSBVoltageCallbackPeriod(Packet packet) {
-    logger.debug("function setUSBVoltageCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setUSBVoltageCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.uSBVoltageCallbackPeriod = packet.copyPayload();
+    uSBVoltageCallback.setPeriod(Utils.decodeUInt32(this.uSBVoltageCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_USB_VOLTAGE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.uSBVoltageCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -1584,18 +1669,23 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer setStackVoltageCallbackThreshold(Packet packet) {
-    logger.debug("function setStackVoltageCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setStackVoltageCallbackThreshold");
+    }
+    if (packet.getLength() - 8 != 5) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.stackVoltageCallbackThreshold = packet.copyPayload();
+    stackVoltageReachedCallback.setThreshold(this.stackVoltageCallbackThreshold);
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_STACK_VOLTAGE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.stackVoltageCallbackThreshold = packet.getPayload();
+
     return null;
   }
 
@@ -1603,18 +1693,22 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer setRS485Configuration(Packet packet) {
-    logger.debug("function setRS485Configuration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setRS485Configuration");
+    }
+    if (packet.getLength() - 8 != 6) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.rS485Configuration = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_RS485_CONFIGURATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.rS485Configuration = packet.getPayload();
+
     return null;
   }
 
@@ -1622,18 +1716,22 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer setWifiConfiguration(Packet packet) {
-    logger.debug("function setWifiConfiguration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setWifiConfiguration");
+    }
+    if (packet.getLength() - 8 != 47) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.wifiConfiguration = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_WIFI_CONFIGURATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.wifiConfiguration = packet.getPayload();
+
     return null;
   }
 
@@ -1641,18 +1739,22 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer setRS485SlaveAddress(Packet packet) {
-    logger.debug("function setRS485SlaveAddress");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setRS485SlaveAddress");
+    }
+    if (packet.getLength() - 8 != 2) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.rS485SlaveAddress = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_RS485_SLAVE_ADDRESS;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.rS485SlaveAddress = packet.getPayload();
+
     return null;
   }
 
@@ -1660,18 +1762,23 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer setStackCurrentCallbackThreshold(Packet packet) {
-    logger.debug("function setStackCurrentCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setStackCurrentCallbackThreshold");
+    }
+    if (packet.getLength() - 8 != 5) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.stackCurrentCallbackThreshold = packet.copyPayload();
+    stackCurrentReachedCallback.setThreshold(this.stackCurrentCallbackThreshold);
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_STACK_CURRENT_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.stackCurrentCallbackThreshold = packet.getPayload();
+
     return null;
   }
 
@@ -1679,18 +1786,22 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer enableStatusLED(Packet packet) {
-    logger.debug("function enableStatusLED");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function enableStatusLED");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.StatusLED = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_ENABLE_STATUS_LED;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.StatusLED = packet.getPayload();
+
     return null;
   }
 
@@ -1698,18 +1809,22 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer setWifiPowerMode(Packet packet) {
-    logger.debug("function setWifiPowerMode");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setWifiPowerMode");
+    }
+    if (packet.getLength() - 8 != 1) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.wifiPowerMode = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_WIFI_POWER_MODE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.wifiPowerMode = packet.getPayload();
+
     return null;
   }
 
@@ -1717,18 +1832,22 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer setEthernetWebsocketConfiguration(Packet packet) {
-    logger.debug("function setEthernetWebsocketConfiguration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setEthernetWebsocketConfiguration");
+    }
+    if (packet.getLength() - 8 != 3) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.ethernetWebsocketConfiguration = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_ETHERNET_WEBSOCKET_CONFIGURATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.ethernetWebsocketConfiguration = packet.getPayload();
+
     return null;
   }
 
@@ -1736,18 +1855,22 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer setEthernetAuthenticationSecret(Packet packet) {
-    logger.debug("function setEthernetAuthenticationSecret");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setEthernetAuthenticationSecret");
+    }
+    if (packet.getLength() - 8 != 64) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.ethernetAuthenticationSecret = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_ETHERNET_AUTHENTICATION_SECRET;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.ethernetAuthenticationSecret = packet.getPayload();
+
     return null;
   }
 
@@ -1755,18 +1878,25 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer setDebouncePeriod(Packet packet) {
-    logger.debug("function setDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDebouncePeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.debouncePeriod = packet.copyPayload();
+    stackCurrentReachedCallback.setDebounce(Utils.decodeUInt32(this.debouncePeriod, 0));
+    stackVoltageReachedCallback.setDebounce(Utils.decodeUInt32(this.debouncePeriod, 0));
+    uSBVoltageReachedCallback.setDebounce(Utils.decodeUInt32(this.debouncePeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.debouncePeriod = packet.getPayload();
+
     return null;
   }
 
@@ -1774,18 +1904,22 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer setChibiMasterAddress(Packet packet) {
-    logger.debug("function setChibiMasterAddress");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setChibiMasterAddress");
+    }
+    if (packet.getLength() - 8 != 1) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.chibiMasterAddress = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_CHIBI_MASTER_ADDRESS;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.chibiMasterAddress = packet.getPayload();
+
     return null;
   }
 
@@ -1793,18 +1927,22 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer setChibiChannel(Packet packet) {
-    logger.debug("function setChibiChannel");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setChibiChannel");
+    }
+    if (packet.getLength() - 8 != 1) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.chibiChannel = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_CHIBI_CHANNEL;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.chibiChannel = packet.getPayload();
+
     return null;
   }
 
@@ -1812,18 +1950,22 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer setExtensionType(Packet packet) {
-    logger.debug("function setExtensionType");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setExtensionType");
+    }
+    if (packet.getLength() - 8 != 5) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.extensionType = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_EXTENSION_TYPE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.extensionType = packet.getPayload();
+
     return null;
   }
 
@@ -1831,18 +1973,22 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer setWifiCertificate(Packet packet) {
-    logger.debug("function setWifiCertificate");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setWifiCertificate");
+    }
+    if (packet.getLength() - 8 != 35) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.wifiCertificate = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_WIFI_CERTIFICATE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.wifiCertificate = packet.getPayload();
+
     return null;
   }
 
@@ -1850,18 +1996,23 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer setUSBVoltageCallbackThreshold(Packet packet) {
-    logger.debug("function setUSBVoltageCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setUSBVoltageCallbackThreshold");
+    }
+    if (packet.getLength() - 8 != 5) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.uSBVoltageCallbackThreshold = packet.copyPayload();
+    uSBVoltageReachedCallback.setThreshold(this.uSBVoltageCallbackThreshold);
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_USB_VOLTAGE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.uSBVoltageCallbackThreshold = packet.getPayload();
+
     return null;
   }
 
@@ -1869,18 +2020,23 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer setStackCurrentCallbackPeriod(Packet packet) {
-    logger.debug("function setStackCurrentCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setStackCurrentCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.stackCurrentCallbackPeriod = packet.copyPayload();
+    stackCurrentCallback.setPeriod(Utils.decodeUInt32(this.stackCurrentCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_STACK_CURRENT_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.stackCurrentCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -1888,18 +2044,22 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer setWifiRegulatoryDomain(Packet packet) {
-    logger.debug("function setWifiRegulatoryDomain");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setWifiRegulatoryDomain");
+    }
+    if (packet.getLength() - 8 != 1) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.wifiRegulatoryDomain = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_WIFI_REGULATORY_DOMAIN;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.wifiRegulatoryDomain = packet.getPayload();
+
     return null;
   }
 
@@ -1907,18 +2067,22 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer setChibiFrequency(Packet packet) {
-    logger.debug("function setChibiFrequency");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setChibiFrequency");
+    }
+    if (packet.getLength() - 8 != 1) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.chibiFrequency = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_CHIBI_FREQUENCY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.chibiFrequency = packet.getPayload();
+
     return null;
   }
 
@@ -1926,18 +2090,23 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer setStackVoltageCallbackPeriod(Packet packet) {
-    logger.debug("function setStackVoltageCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setStackVoltageCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.stackVoltageCallbackPeriod = packet.copyPayload();
+    stackVoltageCallback.setPeriod(Utils.decodeUInt32(this.stackVoltageCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_STACK_VOLTAGE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.stackVoltageCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -1945,18 +2114,22 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer setLongWifiKey(Packet packet) {
-    logger.debug("function setLongWifiKey");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setLongWifiKey");
+    }
+    if (packet.getLength() - 8 != 64) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.longWifiKey = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_LONG_WIFI_KEY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.longWifiKey = packet.getPayload();
+
     return null;
   }
 
@@ -1964,18 +2137,22 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer setWifiEncryption(Packet packet) {
-    logger.debug("function setWifiEncryption");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setWifiEncryption");
+    }
+    if (packet.getLength() - 8 != 59) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.wifiEncryption = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_WIFI_ENCRYPTION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.wifiEncryption = packet.getPayload();
+
     return null;
   }
 
@@ -1983,18 +2160,22 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer disableStatusLED(Packet packet) {
-    logger.debug("function disableStatusLED");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function disableStatusLED");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.StatusLED = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_DISABLE_STATUS_LED;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.StatusLED = packet.getPayload();
+
     return null;
   }
 
@@ -2002,16 +2183,16 @@ public final static String DEVICE_DISPLAY_NAME = "Master Brick";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
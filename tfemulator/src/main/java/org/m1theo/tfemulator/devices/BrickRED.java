@@ -23,25 +23,26 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * Executes user programs and controls other Bricks/Bricklets standalone
  */
-public class BrickRED extends AbstractVerticle {
+public class BrickRED extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 17;
 public final static String DEVICE_DISPLAY_NAME = "RED Brick";
@@ -233,6 +234,23 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
   private Buffer fileEvents = getFileEventsDefault();
   private Buffer customProgramOptionValue = getCustomProgramOptionValueDefault();
   private Buffer programCommand = getProgramCommandDefault();
+  private ValueSource[] stringLengthValues;
+  private ValueSource[] nextDirectoryEntryValues;
+  private ValueSource[] processesValues;
+  private ValueSource[] processIdentityValues;
+  private ValueSource[] lastSpawnedProgramProcessValues;
+  private ValueSource[] fileInfoValues;
+  private ValueSource[] programIdentifierValues;
+  private ValueSource[] programsValues;
+  private ValueSource[] listItemValues;
+  private ValueSource[] customProgramOptionNamesValues;
+  private ValueSource[] listLengthValues;
+  private ValueSource[] programRootDirectoryValues;
+  private ValueSource[] processStateValues;
+  private ValueSource[] programSchedulerStateValues;
+  private ValueSource[] processCommandValues;
+  private ValueSource[] directoryNameValues;
+  private ValueSource[] processStdioValues;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -247,238 +265,251 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickRED.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
-
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    Router router = router();
+
+    stringLengthValues = valueSources("stringLength", 2);
+    nextDirectoryEntryValues = valueSources("nextDirectoryEntry", 3);
+    processesValues = valueSources("processes", 2);
+    processIdentityValues = valueSources("processIdentity", 4);
+    lastSpawnedProgramProcessValues = valueSources("lastSpawnedProgramProcess", 3);
+    fileInfoValues = valueSources("fileInfo", 11);
+    programIdentifierValues = valueSources("programIdentifier", 2);
+    programsValues = valueSources("programs", 2);
+    listItemValues = valueSources("listItem", 3);
+    customProgramOptionNamesValues = valueSources("customProgramOptionNames", 2);
+    listLengthValues = valueSources("listLength", 2);
+    programRootDirectoryValues = valueSources("programRootDirectory", 2);
+    processStateValues = valueSources("processState", 4);
+    programSchedulerStateValues = valueSources("programSchedulerState", 4);
+    processCommandValues = valueSources("processCommand", 5);
+    directoryNameValues = valueSources("directoryName", 2);
+    processStdioValues = valueSources("processStdio", 4);
+
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
+
+  }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    router().unregister(uidBytes);
   }
 
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_CREATE_SESSION) {
-      buffer = createSession(packet);
-    }
-    else if (functionId == FUNCTION_EXPIRE_SESSION) {
-      buffer = expireSession(packet);
-    }
-    else if (functionId == FUNCTION_EXPIRE_SESSION_UNCHECKED) {
-      buffer = expireSessionUnchecked(packet);
-    }
-    else if (functionId == FUNCTION_KEEP_SESSION_ALIVE) {
-      buffer = keepSessionAlive(packet);
-    }
-    else if (functionId == FUNCTION_RELEASE_OBJECT) {
-      buffer = releaseObject(packet);
-    }
-    else if (functionId == FUNCTION_RELEASE_OBJECT_UNCHECKED) {
-      buffer = releaseObjectUnchecked(packet);
-    }
-    else if (functionId == FUNCTION_ALLOCATE_STRING) {
-      buffer = allocateString(packet);
-    }
-    else if (functionId == FUNCTION_TRUNCATE_STRING) {
-      buffer = truncateString(packet);
-    }
-    else if (functionId == FUNCTION_GET_STRING_LENGTH) {
-      buffer = getStringLength(packet);
-    }
-    else if (functionId == FUNCTION_SET_STRING_CHUNK) {
-      buffer = setStringChunk(packet);
-    }
-    else if (functionId == FUNCTION_GET_STRING_CHUNK) {
-      buffer = getStringChunk(packet);
-    }
-    else if (functionId == FUNCTION_ALLOCATE_LIST) {
-      buffer = allocateList(packet);
-    }
-    else if (functionId == FUNCTION_GET_LIST_LENGTH) {
-      buffer = getListLength(packet);
-    }
-    else if (functionId == FUNCTION_GET_LIST_ITEM) {
-      buffer = getListItem(packet);
-    }
-    else if (functionId == FUNCTION_APPEND_TO_LIST) {
-      buffer = appendToList(packet);
-    }
-    else if (functionId == FUNCTION_REMOVE_FROM_LIST) {
-      buffer = removeFromList(packet);
-    }
-    else if (functionId == FUNCTION_OPEN_FILE) {
-      buffer = openFile(packet);
-    }
-    else if (functionId == FUNCTION_CREATE_PIPE) {
-      buffer = createPipe(packet);
-    }
-    else if (functionId == FUNCTION_GET_FILE_INFO) {
-      buffer = getFileInfo(packet);
-    }
-    else if (functionId == FUNCTION_READ_FILE) {
-      buffer = readFile(packet);
-    }
-    else if (functionId == FUNCTION_READ_FILE_ASYNC) {
-      buffer = readFileAsync(packet);
-    }
-    else if (functionId == FUNCTION_ABORT_ASYNC_FILE_READ) {
-      buffer = abortAsyncFileRead(packet);
-    }
-    else if (functionId == FUNCTION_WRITE_FILE) {
-      buffer = writeFile(packet);
-    }
-    else if (functionId == FUNCTION_WRITE_FILE_UNCHECKED) {
-      buffer = writeFileUnchecked(packet);
-    }
-    else if (functionId == FUNCTION_WRITE_FILE_ASYNC) {
-      buffer = writeFileAsync(packet);
-    }
-    else if (functionId == FUNCTION_SET_FILE_POSITION) {
-      buffer = setFilePosition(packet);
-    }
-    else if (functionId == FUNCTION_GET_FILE_POSITION) {
-      buffer = getFilePosition(packet);
-    }
-    else if (functionId == FUNCTION_SET_FILE_EVENTS) {
-      buffer = setFileEvents(packet);
-    }
-    else if (functionId == FUNCTION_GET_FILE_EVENTS) {
-      buffer = getFileEvents(packet);
-    }
-    else if (functionId == FUNCTION_OPEN_DIRECTORY) {
-      buffer = openDirectory(packet);
-    }
-    else if (functionId == FUNCTION_GET_DIRECTORY_NAME) {
-      buffer = getDirectoryName(packet);
-    }
-    else if (functionId == FUNCTION_GET_NEXT_DIRECTORY_ENTRY) {
-      buffer = getNextDirectoryEntry(packet);
-    }
-    else if (functionId == FUNCTION_REWIND_DIRECTORY) {
-      buffer = rewindDirectory(packet);
-    }
-    else if (functionId == FUNCTION_CREATE_DIRECTORY) {
-      buffer = createDirectory(packet);
-    }
-    else if (functionId == FUNCTION_GET_PROCESSES) {
-      buffer = getProcesses(packet);
-    }
-    else if (functionId == FUNCTION_SPAWN_PROCESS) {
-      buffer = spawnProcess(packet);
-    }
-    else if (functionId == FUNCTION_KILL_PROCESS) {
-      buffer = killProcess(packet);
-    }
-    else if (functionId == FUNCTION_GET_PROCESS_COMMAND) {
-      buffer = getProcessCommand(packet);
-    }
-    else if (functionId == FUNCTION_GET_PROCESS_IDENTITY) {
-      buffer = getProcessIdentity(packet);
-    }
-    else if (functionId == FUNCTION_GET_PROCESS_STDIO) {
-      buffer = getProcessStdio(packet);
-    }
-    else if (functionId == FUNCTION_GET_PROCESS_STATE) {
-      buffer = getProcessState(packet);
-    }
-    else if (functionId == FUNCTION_GET_PROGRAMS) {
-      buffer = getPrograms(packet);
-    }
-    else if (functionId == FUNCTION_DEFINE_PROGRAM) {
-      buffer = defineProgram(packet);
-    }
-    else if (functionId == FUNCTION_PURGE_PROGRAM) {
-      buffer = purgeProgram(packet);
-    }
-    else if (functionId == FUNCTION_GET_PROGRAM_IDENTIFIER) {
-      buffer = getProgramIdentifier(packet);
-    }
-    else if (functionId == FUNCTION_GET_PROGRAM_ROOT_DIRECTORY) {
-      buffer = getProgramRootDirectory(packet);
-    }
-    else if (functionId == FUNCTION_SET_PROGRAM_COMMAND) {
-      buffer = setProgramCommand(packet);
-    }
-    else if (functionId == FUNCTION_GET_PROGRAM_COMMAND) {
-      buffer = getProgramCommand(packet);
-    }
-    else if (functionId == FUNCTION_SET_PROGRAM_STDIO_REDIRECTION) {
-      buffer = setProgramStdioRedirection(packet);
-    }
-    else if (functionId == FUNCTION_GET_PROGRAM_STDIO_REDIRECTION) {
-      buffer = getProgramStdioRedirection(packet);
-    }
-    else if (functionId == FUNCTION_SET_PROGRAM_SCHEDULE) {
-      buffer = setProgramSchedule(packet);
-    }
-    else if (functionId == FUNCTION_GET_PROGRAM_SCHEDULE) {
-      buffer = getProgramSchedule(packet);
-    }
-    else if (functionId == FUNCTION_GET_PROGRAM_SCHEDULER_STATE) {
-      buffer = getProgramSchedulerState(packet);
-    }
-    else if (functionId == FUNCTION_CONTINUE_PROGRAM_SCHEDULE) {
-      buffer = continueProgramSchedule(packet);
-    }
-    else if (functionId == FUNCTION_START_PROGRAM) {
-      buffer = startProgram(packet);
-    }
-    else if (functionId == FUNCTION_GET_LAST_SPAWNED_PROGRAM_PROCESS) {
-      buffer = getLastSpawnedProgramProcess(packet);
-    }
-    else if (functionId == FUNCTION_GET_CUSTOM_PROGRAM_OPTION_NAMES) {
-      buffer = getCustomProgramOptionNames(packet);
-    }
-    else if (functionId == FUNCTION_SET_CUSTOM_PROGRAM_OPTION_VALUE) {
-      buffer = setCustomProgramOptionValue(packet);
-    }
-    else if (functionId == FUNCTION_GET_CUSTOM_PROGRAM_OPTION_VALUE) {
-      buffer = getCustomProgramOptionValue(packet);
-    }
-    else if (functionId == FUNCTION_REMOVE_CUSTOM_PROGRAM_OPTION) {
-      buffer = removeCustomProgramOption(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_CREATE_SESSION:
+        buffer = createSession(packet);
+        break;
+      case FUNCTION_EXPIRE_SESSION:
+        buffer = expireSession(packet);
+        break;
+      case FUNCTION_EXPIRE_SESSION_UNCHECKED:
+        buffer = expireSessionUnchecked(packet);
+        break;
+      case FUNCTION_KEEP_SESSION_ALIVE:
+        buffer = keepSessionAlive(packet);
+        break;
+      case FUNCTION_RELEASE_OBJECT:
+        buffer = releaseObject(packet);
+        break;
+      case FUNCTION_RELEASE_OBJECT_UNCHECKED:
+        buffer = releaseObjectUnchecked(packet);
+        break;
+      case FUNCTION_ALLOCATE_STRING:
+        buffer = allocateString(packet);
+        break;
+      case FUNCTION_TRUNCATE_STRING:
+        buffer = truncateString(packet);
+        break;
+      case FUNCTION_GET_STRING_LENGTH:
+        buffer = getStringLength(packet);
+        break;
+      case FUNCTION_SET_STRING_CHUNK:
+        buffer = setStringChunk(packet);
+        break;
+      case FUNCTION_GET_STRING_CHUNK:
+        buffer = getStringChunk(packet);
+        break;
+      case FUNCTION_ALLOCATE_LIST:
+        buffer = allocateList(packet);
+        break;
+      case FUNCTION_GET_LIST_LENGTH:
+        buffer = getListLength(packet);
+        break;
+      case FUNCTION_GET_LIST_ITEM:
+        buffer = getListItem(packet);
+        break;
+      case FUNCTION_APPEND_TO_LIST:
+        buffer = appendToList(packet);
+        break;
+      case FUNCTION_REMOVE_FROM_LIST:
+        buffer = removeFromList(packet);
+        break;
+      case FUNCTION_OPEN_FILE:
+        buffer = openFile(packet);
+        break;
+      case FUNCTION_CREATE_PIPE:
+        buffer = createPipe(packet);
+        break;
+      case FUNCTION_GET_FILE_INFO:
+        buffer = getFileInfo(packet);
+        break;
+      case FUNCTION_READ_FILE:
+        buffer = readFile(packet);
+        break;
+      case FUNCTION_READ_FILE_ASYNC:
+        buffer = readFileAsync(packet);
+        break;
+      case FUNCTION_ABORT_ASYNC_FILE_READ:
+        buffer = abortAsyncFileRead(packet);
+        break;
+      case FUNCTION_WRITE_FILE:
+        buffer = writeFile(packet);
+        break;
+      case FUNCTION_WRITE_FILE_UNCHECKED:
+        buffer = writeFileUnchecked(packet);
+        break;
+      case FUNCTION_WRITE_FILE_ASYNC:
+        buffer = writeFileAsync(packet);
+        break;
+      case FUNCTION_SET_FILE_POSITION:
+        buffer = setFilePosition(packet);
+        break;
+      case FUNCTION_GET_FILE_POSITION:
+        buffer = getFilePosition(packet);
+        break;
+      case FUNCTION_SET_FILE_EVENTS:
+        buffer = setFileEvents(packet);
+        break;
+      case FUNCTION_GET_FILE_EVENTS:
+        buffer = getFileEvents(packet);
+        break;
+      case FUNCTION_OPEN_DIRECTORY:
+        buffer = openDirectory(packet);
+        break;
+      case FUNCTION_GET_DIRECTORY_NAME:
+        buffer = getDirectoryName(packet);
+        break;
+      case FUNCTION_GET_NEXT_DIRECTORY_ENTRY:
+        buffer = getNextDirectoryEntry(packet);
+        break;
+      case FUNCTION_REWIND_DIRECTORY:
+        buffer = rewindDirectory(packet);
+        break;
+      case FUNCTION_CREATE_DIRECTORY:
+        buffer = createDirectory(packet);
+        break;
+      case FUNCTION_GET_PROCESSES:
+        buffer = getProcesses(packet);
+        break;
+      case FUNCTION_SPAWN_PROCESS:
+        buffer = spawnProcess(packet);
+        break;
+      case FUNCTION_KILL_PROCESS:
+        buffer = killProcess(packet);
+        break;
+      case FUNCTION_GET_PROCESS_COMMAND:
+        buffer = getProcessCommand(packet);
+        break;
+      case FUNCTION_GET_PROCESS_IDENTITY:
+        buffer = getProcessIdentity(packet);
+        break;
+      case FUNCTION_GET_PROCESS_STDIO:
+        buffer = getProcessStdio(packet);
+        break;
+      case FUNCTION_GET_PROCESS_STATE:
+        buffer = getProcessState(packet);
+        break;
+      case FUNCTION_GET_PROGRAMS:
+        buffer = getPrograms(packet);
+        break;
+      case FUNCTION_DEFINE_PROGRAM:
+        buffer = defineProgram(packet);
+        break;
+      case FUNCTION_PURGE_PROGRAM:
+        buffer = purgeProgram(packet);
+        break;
+      case FUNCTION_GET_PROGRAM_IDENTIFIER:
+        buffer = getProgramIdentifier(packet);
+        break;
+      case FUNCTION_GET_PROGRAM_ROOT_DIRECTORY:
+        buffer = getProgramRootDirectory(packet);
+        break;
+      case FUNCTION_SET_PROGRAM_COMMAND:
+        buffer = setProgramCommand(packet);
+        break;
+      case FUNCTION_GET_PROGRAM_COMMAND:
+        buffer = getProgramCommand(packet);
+        break;
+      case FUNCTION_SET_PROGRAM_STDIO_REDIRECTION:
+        buffer = setProgramStdioRedirection(packet);
+        break;
+      case FUNCTION_GET_PROGRAM_STDIO_REDIRECTION:
+        buffer = getProgramStdioRedirection(packet);
+        break;
+      case FUNCTION_SET_PROGRAM_SCHEDULE:
+        buffer = setProgramSchedule(packet);
+        break;
+      case FUNCTION_GET_PROGRAM_SCHEDULE:
+        buffer = getProgramSchedule(packet);
+        break;
+      case FUNCTION_GET_PROGRAM_SCHEDULER_STATE:
+        buffer = getProgramSchedulerState(packet);
+        break;
+      case FUNCTION_CONTINUE_PROGRAM_SCHEDULE:
+        buffer = continueProgramSchedule(packet);
+        break;
+      case FUNCTION_START_PROGRAM:
+        buffer = startProgram(packet);
+        break;
+      case FUNCTION_GET_LAST_SPAWNED_PROGRAM_PROCESS:
+        buffer = getLastSpawnedProgramProcess(packet);
+        break;
+      case FUNCTION_GET_CUSTOM_PROGRAM_OPTION_NAMES:
+        buffer = getCustomProgramOptionNames(packet);
+        break;
+      case FUNCTION_SET_CUSTOM_PROGRAM_OPTION_VALUE:
+        buffer = setCustomProgramOptionValue(packet);
+        break;
+      case FUNCTION_GET_CUSTOM_PROGRAM_OPTION_VALUE:
+        buffer = getCustomProgramOptionValue(packet);
+        break;
+      case FUNCTION_REMOVE_CUSTOM_PROGRAM_OPTION:
+        buffer = removeCustomProgramOption(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -488,18 +519,18 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
    * 
    */
   private Buffer getStringLength(Packet packet) {
-    logger.debug("function getStringLength");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getStringLength");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 5;
       byte functionId = FUNCTION_GET_STRING_LENGTH;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt8((short) stringLengthValues[0].next(), 1);
+      writer.writeUInt32((long) stringLengthValues[1].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -509,19 +540,19 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
    * 
    */
   private Buffer getNextDirectoryEntry(Packet packet) {
-    logger.debug("function getNextDirectoryEntry");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getNextDirectoryEntry");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_NEXT_DIRECTORY_ENTRY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt8((short) nextDirectoryEntryValues[0].next(), 1);
+      writer.writeUInt16((int) nextDirectoryEntryValues[1].next(), 1);
+      writer.writeUInt8((short) nextDirectoryEntryValues[2].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -531,18 +562,18 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
    * 
    */
   private Buffer getProcesses(Packet packet) {
-    logger.debug("function getProcesses");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getProcesses");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 3;
       byte functionId = FUNCTION_GET_PROCESSES;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt8((short) processesValues[0].next(), 1);
+      writer.writeUInt16((int) processesValues[1].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -552,20 +583,20 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
    * 
    */
   private Buffer getProcessIdentity(Packet packet) {
-    logger.debug("function getProcessIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getProcessIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 13;
       byte functionId = FUNCTION_GET_PROCESS_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt8((short) processIdentityValues[0].next(), 1);
+      writer.writeUInt32((long) processIdentityValues[1].next(), 1);
+      writer.writeUInt32((long) processIdentityValues[2].next(), 1);
+      writer.writeUInt32((long) processIdentityValues[3].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -575,19 +606,19 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
    * 
    */
   private Buffer getLastSpawnedProgramProcess(Packet packet) {
-    logger.debug("function getLastSpawnedProgramProcess");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getLastSpawnedProgramProcess");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 11;
       byte functionId = FUNCTION_GET_LAST_SPAWNED_PROGRAM_PROCESS;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get8ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt8((short) lastSpawnedProgramProcessValues[0].next(), 1);
+      writer.writeUInt16((int) lastSpawnedProgramProcessValues[1].next(), 1);
+      writer.writeUInt64((long) lastSpawnedProgramProcessValues[2].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -597,27 +628,27 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
    * 
    */
   private Buffer getFileInfo(Packet packet) {
-    logger.debug("function getFileInfo");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getFileInfo");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 50;
       byte functionId = FUNCTION_GET_FILE_INFO;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get8ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get8ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get8ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get8ByteURandomValue(1));        
-
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt8((short) fileInfoValues[0].next(), 1);
+      writer.writeUInt8((short) fileInfoValues[1].next(), 1);
+      writer.writeUInt16((int) fileInfoValues[2].next(), 1);
+      writer.writeUInt32((long) fileInfoValues[3].next(), 1);
+      writer.writeUInt16((int) fileInfoValues[4].next(), 1);
+      writer.writeUInt32((long) fileInfoValues[5].next(), 1);
+      writer.writeUInt32((long) fileInfoValues[6].next(), 1);
+      writer.writeUInt64((long) fileInfoValues[7].next(), 1);
+      writer.writeUInt64((long) fileInfoValues[8].next(), 1);
+      writer.writeUInt64((long) fileInfoValues[9].next(), 1);
+      writer.writeUInt64((long) fileInfoValues[10].next(), 1);
+
+      return writer.buffer();
     }
 
     return null;
@@ -627,18 +658,18 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
    * 
    */
   private Buffer getProgramIdentifier(Packet packet) {
-    logger.debug("function getProgramIdentifier");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getProgramIdentifier");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 3;
       byte functionId = FUNCTION_GET_PROGRAM_IDENTIFIER;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt8((short) programIdentifierValues[0].next(), 1);
+      writer.writeUInt16((int) programIdentifierValues[1].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -648,18 +679,18 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
    * 
    */
   private Buffer getPrograms(Packet packet) {
-    logger.debug("function getPrograms");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getPrograms");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 3;
       byte functionId = FUNCTION_GET_PROGRAMS;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt8((short) programsValues[0].next(), 1);
+      writer.writeUInt16((int) programsValues[1].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -669,19 +700,19 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
    * 
    */
   private Buffer getListItem(Packet packet) {
-    logger.debug("function getListItem");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getListItem");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_LIST_ITEM;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt8((short) listItemValues[0].next(), 1);
+      writer.writeUInt16((int) listItemValues[1].next(), 1);
+      writer.writeUInt8((short) listItemValues[2].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -691,18 +722,18 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
    * 
    */
   private Buffer getCustomProgramOptionNames(Packet packet) {
-    logger.debug("function getCustomProgramOptionNames");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getCustomProgramOptionNames");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 3;
       byte functionId = FUNCTION_GET_CUSTOM_PROGRAM_OPTION_NAMES;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt8((short) customProgramOptionNamesValues[0].next(), 1);
+      writer.writeUInt16((int) customProgramOptionNamesValues[1].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -712,18 +743,18 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
    * 
    */
   private Buffer getListLength(Packet packet) {
-    logger.debug("function getListLength");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getListLength");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 3;
       byte functionId = FUNCTION_GET_LIST_LENGTH;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt8((short) listLengthValues[0].next(), 1);
+      writer.writeUInt16((int) listLengthValues[1].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -733,18 +764,18 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
    * 
    */
   private Buffer getProgramRootDirectory(Packet packet) {
-    logger.debug("function getProgramRootDirectory");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getProgramRootDirectory");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 3;
       byte functionId = FUNCTION_GET_PROGRAM_ROOT_DIRECTORY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt8((short) programRootDirectoryValues[0].next(), 1);
+      writer.writeUInt16((int) programRootDirectoryValues[1].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -754,20 +785,20 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
    * 
    */
   private Buffer getProcessState(Packet packet) {
-    logger.debug("function getProcessState");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getProcessState");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 11;
       byte functionId = FUNCTION_GET_PROCESS_STATE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get8ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt8((short) processStateValues[0].next(), 1);
+      writer.writeUInt8((short) processStateValues[1].next(), 1);
+      writer.writeUInt64((long) processStateValues[2].next(), 1);
+      writer.writeUInt8((short) processStateValues[3].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -777,20 +808,20 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
    * 
    */
   private Buffer getProgramSchedulerState(Packet packet) {
-    logger.debug("function getProgramSchedulerState");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getProgramSchedulerState");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 12;
       byte functionId = FUNCTION_GET_PROGRAM_SCHEDULER_STATE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get8ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt8((short) programSchedulerStateValues[0].next(), 1);
+      writer.writeUInt8((short) programSchedulerStateValues[1].next(), 1);
+      writer.writeUInt64((long) programSchedulerStateValues[2].next(), 1);
+      writer.writeUInt16((int) programSchedulerStateValues[3].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -800,21 +831,21 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
    * 
    */
   private Buffer getProcessCommand(Packet packet) {
-    logger.debug("function getProcessCommand");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getProcessCommand");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 9;
       byte functionId = FUNCTION_GET_PROCESS_COMMAND;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt8((short) processCommandValues[0].next(), 1);
+      writer.writeUInt16((int) processCommandValues[1].next(), 1);
+      writer.writeUInt16((int) processCommandValues[2].next(), 1);
+      writer.writeUInt16((int) processCommandValues[3].next(), 1);
+      writer.writeUInt16((int) processCommandValues[4].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -824,18 +855,18 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
    * 
    */
   private Buffer getDirectoryName(Packet packet) {
-    logger.debug("function getDirectoryName");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDirectoryName");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 3;
       byte functionId = FUNCTION_GET_DIRECTORY_NAME;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt8((short) directoryNameValues[0].next(), 1);
+      writer.writeUInt16((int) directoryNameValues[1].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -845,20 +876,20 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
    * 
    */
   private Buffer getProcessStdio(Packet packet) {
-    logger.debug("function getProcessStdio");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getProcessStdio");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 7;
       byte functionId = FUNCTION_GET_PROCESS_STDIO;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt8((short) processStdioValues[0].next(), 1);
+      writer.writeUInt16((int) processStdioValues[1].next(), 1);
+      writer.writeUInt16((int) processStdioValues[2].next(), 1);
+      writer.writeUInt16((int) processStdioValues[3].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -868,16 +899,16 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
    * 
    */
   private Buffer getStringChunk(Packet packet) {
-    logger.debug("function getStringChunk");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getStringChunk");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 64;
       byte functionId = FUNCTION_GET_STRING_CHUNK;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.stringChunk);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.stringChunk);
+      return writer.buffer();
     }
 
     return null;
@@ -885,8 +916,8 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
 
   private Buffer getStringChunkDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.getCharRandomValue(63));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(63));        
       return buffer;
   }
 
@@ -894,16 +925,16 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
    * 
    */
   private Buffer getProgramStdioRedirection(Packet packet) {
-    logger.debug("function getProgramStdioRedirection");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getProgramStdioRedirection");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 10;
       byte functionId = FUNCTION_GET_PROGRAM_STDIO_REDIRECTION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.programStdioRedirection);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.programStdioRedirection);
+      return writer.buffer();
     }
 
     return null;
@@ -911,13 +942,13 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
 
   private Buffer getProgramStdioRedirectionDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -925,16 +956,16 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
    * 
    */
   private Buffer getProgramSchedule(Packet packet) {
-    logger.debug("function getProgramSchedule");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getProgramSchedule");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 9;
       byte functionId = FUNCTION_GET_PROGRAM_SCHEDULE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.programSchedule);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.programSchedule);
+      return writer.buffer();
     }
 
     return null;
@@ -942,11 +973,11 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
 
   private Buffer getProgramScheduleDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.getBoolRandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.getBoolDefaultValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -954,16 +985,16 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
    * 
    */
   private Buffer getFilePosition(Packet packet) {
-    logger.debug("function getFilePosition");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getFilePosition");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 9;
       byte functionId = FUNCTION_GET_FILE_POSITION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.filePosition);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.filePosition);
+      return writer.buffer();
     }
 
     return null;
@@ -971,8 +1002,8 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
 
   private Buffer getFilePositionDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get8ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get8ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -980,16 +1011,16 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
    * 
    */
   private Buffer getFileEvents(Packet packet) {
-    logger.debug("function getFileEvents");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getFileEvents");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 3;
       byte functionId = FUNCTION_GET_FILE_EVENTS;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.fileEvents);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.fileEvents);
+      return writer.buffer();
     }
 
     return null;
@@ -997,8 +1028,8 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
 
   private Buffer getFileEventsDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -1006,16 +1037,16 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
    * 
    */
   private Buffer getCustomProgramOptionValue(Packet packet) {
-    logger.debug("function getCustomProgramOptionValue");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getCustomProgramOptionValue");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 3;
       byte functionId = FUNCTION_GET_CUSTOM_PROGRAM_OPTION_VALUE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.customProgramOptionValue);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.customProgramOptionValue);
+      return writer.buffer();
     }
 
     return null;
@@ -1023,8 +1054,8 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
 
   private Buffer getCustomProgramOptionValueDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -1032,16 +1063,16 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
    * 
    */
   private Buffer getProgramCommand(Packet packet) {
-    logger.debug("function getProgramCommand");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getProgramCommand");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 9;
       byte functionId = FUNCTION_GET_PROGRAM_COMMAND;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.programCommand);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.programCommand);
+      return writer.buffer();
     }
 
     return null;
@@ -1049,11 +1080,11 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
 
   private Buffer getProgramCommandDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -1061,18 +1092,22 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
    * 
    */
   private Buffer setStringChunk(Packet packet) {
-    logger.debug("function setStringChunk");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setStringChunk");
+    }
+    if (packet.getLength() - 8 != 64) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.stringChunk = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_SET_STRING_CHUNK;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.stringChunk = packet.getPayload();
+
     return null;
   }
 
@@ -1080,18 +1115,22 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
    * 
    */
   private Buffer setProgramStdioRedirection(Packet packet) {
-    logger.debug("function setProgramStdioRedirection");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setProgramStdioRedirection");
+    }
+    if (packet.getLength() - 8 != 11) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.programStdioRedirection = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_SET_PROGRAM_STDIO_REDIRECTION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.programStdioRedirection = packet.getPayload();
+
     return null;
   }
 
@@ -1099,18 +1138,22 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
    * 
    */
   private Buffer setProgramCommand(Packet packet) {
-    logger.debug("function setProgramCommand");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setProgramCommand");
+    }
+    if (packet.getLength() - 8 != 10) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.programCommand = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_SET_PROGRAM_COMMAND;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.programCommand = packet.getPayload();
+
     return null;
   }
 
@@ -1118,18 +1161,22 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
    * 
    */
   private Buffer setProgramSchedule(Packet packet) {
-    logger.debug("function setProgramSchedule");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setProgramSchedule");
+    }
+    if (packet.getLength() - 8 != 10) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.programSchedule = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_SET_PROGRAM_SCHEDULE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.programSchedule = packet.getPayload();
+
     return null;
   }
 
@@ -1137,18 +1184,22 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
    * 
    */
   private Buffer setFilePosition(Packet packet) {
-    logger.debug("function setFilePosition");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setFilePosition");
+    }
+    if (packet.getLength() - 8 != 11) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.filePosition = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 9;
       byte functionId = FUNCTION_SET_FILE_POSITION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.filePosition = packet.getPayload();
+
     return null;
   }
 
@@ -1156,18 +1207,22 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
    * 
    */
   private Buffer setFileEvents(Packet packet) {
-    logger.debug("function setFileEvents");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setFileEvents");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.fileEvents = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_SET_FILE_EVENTS;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.fileEvents = packet.getPayload();
+
     return null;
   }
 
@@ -1175,18 +1230,22 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
    * 
    */
   private Buffer setCustomProgramOptionValue(Packet packet) {
-    logger.debug("function setCustomProgramOptionValue");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setCustomProgramOptionValue");
+    }
+    if (packet.getLength() - 8 != 6) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.customProgramOptionValue = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_SET_CUSTOM_PROGRAM_OPTION_VALUE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.customProgramOptionValue = packet.getPayload();
+
     return null;
   }
 
@@ -1194,16 +1253,16 @@ public final static String DEVICE_DISPLAY_NAME = "RED Brick";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
@@ -23,25 +23,26 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * Drives up to 7 RC Servos with up to 3A
  */
-public class BrickServo extends AbstractVerticle {
+public class BrickServo extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 14;
 public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
@@ -101,6 +102,13 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
   private Buffer StatusLED = isStatusLEDEnabledDefault();
   private Buffer position = getPositionDefault();
   private Buffer acceleration = getAccelerationDefault();
+  private ValueSource[] currentPositionValues;
+  private ValueSource[] servoCurrentValues;
+  private ValueSource[] chipTemperatureValues;
+  private ValueSource[] overallCurrentValues;
+  private ValueSource[] currentVelocityValues;
+  private ValueSource[] externalInputVoltageValues;
+  private ValueSource[] stackInputVoltageValues;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -115,166 +123,169 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickServo.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
-
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    Router router = router();
+
+    currentPositionValues = valueSources("currentPosition", 1);
+    servoCurrentValues = valueSources("servoCurrent", 1);
+    chipTemperatureValues = valueSources("chipTemperature", 1);
+    overallCurrentValues = valueSources("overallCurrent", 1);
+    currentVelocityValues = valueSources("currentVelocity", 1);
+    externalInputVoltageValues = valueSources("externalInputVoltage", 1);
+    stackInputVoltageValues = valueSources("stackInputVoltage", 1);
+
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
+
+  }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    router().unregister(uidBytes);
   }
 
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_ENABLE) {
-      buffer = enable(packet);
-    }
-    else if (functionId == FUNCTION_DISABLE) {
-      buffer = disable(packet);
-    }
-    else if (functionId == FUNCTION_IS_ENABLED) {
-      buffer = isEnabled(packet);
-    }
-    else if (functionId == FUNCTION_SET_POSITION) {
-      buffer = setPosition(packet);
-    }
-    else if (functionId == FUNCTION_GET_POSITION) {
-      buffer = getPosition(packet);
-    }
-    else if (functionId == FUNCTION_GET_CURRENT_POSITION) {
-      buffer = getCurrentPosition(packet);
-    }
-    else if (functionId == FUNCTION_SET_VELOCITY) {
-      buffer = setVelocity(packet);
-    }
-    else if (functionId == FUNCTION_GET_VELOCITY) {
-      buffer = getVelocity(packet);
-    }
-    else if (functionId == FUNCTION_GET_CURRENT_VELOCITY) {
-      buffer = getCurrentVelocity(packet);
-    }
-    else if (functionId == FUNCTION_SET_ACCELERATION) {
-      buffer = setAcceleration(packet);
-    }
-    else if (functionId == FUNCTION_GET_ACCELERATION) {
-      buffer = getAcceleration(packet);
-    }
-    else if (functionId == FUNCTION_SET_OUTPUT_VOLTAGE) {
-      buffer = setOutputVoltage(packet);
-    }
-    else if (functionId == FUNCTION_GET_OUTPUT_VOLTAGE) {
-      buffer = getOutputVoltage(packet);
-    }
-    else if (functionId == FUNCTION_SET_PULSE_WIDTH) {
-      buffer = setPulseWidth(packet);
-    }
-    else if (functionId == FUNCTION_GET_PULSE_WIDTH) {
-      buffer = getPulseWidth(packet);
-    }
-    else if (functionId == FUNCTION_SET_DEGREE) {
-      buffer = setDegree(packet);
-    }
-    else if (functionId == FUNCTION_GET_DEGREE) {
-      buffer = getDegree(packet);
-    }
-    else if (functionId == FUNCTION_SET_PERIOD) {
-      buffer = setPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_PERIOD) {
-      buffer = getPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_SERVO_CURRENT) {
-      buffer = getServoCurrent(packet);
-    }
-    else if (functionId == FUNCTION_GET_OVERALL_CURRENT) {
-      buffer = getOverallCurrent(packet);
-    }
-    else if (functionId == FUNCTION_GET_STACK_INPUT_VOLTAGE) {
-      buffer = getStackInputVoltage(packet);
-    }
-    else if (functionId == FUNCTION_GET_EXTERNAL_INPUT_VOLTAGE) {
-      buffer = getExternalInputVoltage(packet);
-    }
-    else if (functionId == FUNCTION_SET_MINIMUM_VOLTAGE) {
-      buffer = setMinimumVoltage(packet);
-    }
-    else if (functionId == FUNCTION_GET_MINIMUM_VOLTAGE) {
-      buffer = getMinimumVoltage(packet);
-    }
-    else if (functionId == FUNCTION_ENABLE_POSITION_REACHED_CALLBACK) {
-      buffer = enablePositionReachedCallback(packet);
-    }
-    else if (functionId == FUNCTION_DISABLE_POSITION_REACHED_CALLBACK) {
-      buffer = disablePositionReachedCallback(packet);
-    }
-    else if (functionId == FUNCTION_IS_POSITION_REACHED_CALLBACK_ENABLED) {
-      buffer = isPositionReachedCallbackEnabled(packet);
-    }
-    else if (functionId == FUNCTION_ENABLE_VELOCITY_REACHED_CALLBACK) {
-      buffer = enableVelocityReachedCallback(packet);
-    }
-    else if (functionId == FUNCTION_DISABLE_VELOCITY_REACHED_CALLBACK) {
-      buffer = disableVelocityReachedCallback(packet);
-    }
-    else if (functionId == FUNCTION_IS_VELOCITY_REACHED_CALLBACK_ENABLED) {
-      buffer = isVelocityReachedCallbackEnabled(packet);
-    }
-    else if (functionId == FUNCTION_ENABLE_STATUS_LED) {
-      buffer = enableStatusLED(packet);
-    }
-    else if (functionId == FUNCTION_DISABLE_STATUS_LED) {
-      buffer = disableStatusLED(packet);
-    }
-    else if (functionId == FUNCTION_IS_STATUS_LED_ENABLED) {
-      buffer = isStatusLEDEnabled(packet);
-    }
-    else if (functionId == FUNCTION_GET_CHIP_TEMPERATURE) {
-      buffer = getChipTemperature(packet);
-    }
-    else if (functionId == FUNCTION_RESET) {
-      buffer = reset(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_ENABLE:
+        buffer = enable(packet);
+        break;
+      case FUNCTION_DISABLE:
+        buffer = disable(packet);
+        break;
+      case FUNCTION_IS_ENABLED:
+        buffer = isEnabled(packet);
+        break;
+      case FUNCTION_SET_POSITION:
+        buffer = setPosition(packet);
+        break;
+      case FUNCTION_GET_POSITION:
+        buffer = getPosition(packet);
+        break;
+      case FUNCTION_GET_CURRENT_POSITION:
+        buffer = getCurrentPosition(packet);
+        break;
+      case FUNCTION_SET_VELOCITY:
+        buffer = setVelocity(packet);
+        break;
+      case FUNCTION_GET_VELOCITY:
+        buffer = getVelocity(packet);
+        break;
+      case FUNCTION_GET_CURRENT_VELOCITY:
+        buffer = getCurrentVelocity(packet);
+        break;
+      case FUNCTION_SET_ACCELERATION:
+        buffer = setAcceleration(packet);
+        break;
+      case FUNCTION_GET_ACCELERATION:
+        buffer = getAcceleration(packet);
+        break;
+      case FUNCTION_SET_OUTPUT_VOLTAGE:
+        buffer = setOutputVoltage(packet);
+        break;
+      case FUNCTION_GET_OUTPUT_VOLTAGE:
+        buffer = getOutputVoltage(packet);
+        break;
+      case FUNCTION_SET_PULSE_WIDTH:
+        buffer = setPulseWidth(packet);
+        break;
+      case FUNCTION_GET_PULSE_WIDTH:
+        buffer = getPulseWidth(packet);
+        break;
+      case FUNCTION_SET_DEGREE:
+        buffer = setDegree(packet);
+        break;
+      case FUNCTION_GET_DEGREE:
+        buffer = getDegree(packet);
+        break;
+      case FUNCTION_SET_PERIOD:
+        buffer = setPeriod(packet);
+        break;
+      case FUNCTION_GET_PERIOD:
+        buffer = getPeriod(packet);
+        break;
+      case FUNCTION_GET_SERVO_CURRENT:
+        buffer = getServoCurrent(packet);
+        break;
+      case FUNCTION_GET_OVERALL_CURRENT:
+        buffer = getOverallCurrent(packet);
+        break;
+      case FUNCTION_GET_STACK_INPUT_VOLTAGE:
+        buffer = getStackInputVoltage(packet);
+        break;
+      case FUNCTION_GET_EXTERNAL_INPUT_VOLTAGE:
+        buffer = getExternalInputVoltage(packet);
+        break;
+      case FUNCTION_SET_MINIMUM_VOLTAGE:
+        buffer = setMinimumVoltage(packet);
+        break;
+      case FUNCTION_GET_MINIMUM_VOLTAGE:
+        buffer = getMinimumVoltage(packet);
+        break;
+      case FUNCTION_ENABLE_POSITION_REACHED_CALLBACK:
+        buffer = enablePositionReachedCallback(packet);
+        break;
+      case FUNCTION_DISABLE_POSITION_REACHED_CALLBACK:
+        buffer = disablePositionReachedCallback(packet);
+        break;
+      case FUNCTION_IS_POSITION_REACHED_CALLBACK_ENABLED:
+        buffer = isPositionReachedCallbackEnabled(packet);
+        break;
+      case FUNCTION_ENABLE_VELOCITY_REACHED_CALLBACK:
+        buffer = enableVelocityReachedCallback(packet);
+        break;
+      case FUNCTION_DISABLE_VELOCITY_REACHED_CALLBACK:
+        buffer = disableVelocityReachedCallback(packet);
+        break;
+      case FUNCTION_IS_VELOCITY_REACHED_CALLBACK_ENABLED:
+        buffer = isVelocityReachedCallbackEnabled(packet);
+        break;
+      case FUNCTION_ENABLE_STATUS_LED:
+        buffer = enableStatusLED(packet);
+        break;
+      case FUNCTION_DISABLE_STATUS_LED:
+        buffer = disableStatusLED(packet);
+        break;
+      case FUNCTION_IS_STATUS_LED_ENABLED:
+        buffer = isStatusLEDEnabled(packet);
+        break;
+      case FUNCTION_GET_CHIP_TEMPERATURE:
+        buffer = getChipTemperature(packet);
+        break;
+      case FUNCTION_RESET:
+        buffer = reset(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -284,17 +295,17 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer getCurrentPosition(Packet packet) {
-    logger.debug("function getCurrentPosition");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getCurrentPosition");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_CURRENT_POSITION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt16((short) currentPositionValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -304,17 +315,17 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer getServoCurrent(Packet packet) {
-    logger.debug("function getServoCurrent");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getServoCurrent");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_SERVO_CURRENT;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) servoCurrentValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -324,17 +335,17 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer getChipTemperature(Packet packet) {
-    logger.debug("function getChipTemperature");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getChipTemperature");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_CHIP_TEMPERATURE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt16((short) chipTemperatureValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -344,17 +355,17 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer getOverallCurrent(Packet packet) {
-    logger.debug("function getOverallCurrent");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getOverallCurrent");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_OVERALL_CURRENT;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) overallCurrentValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -364,17 +375,17 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer getCurrentVelocity(Packet packet) {
-    logger.debug("function getCurrentVelocity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getCurrentVelocity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_CURRENT_VELOCITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) currentVelocityValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -384,17 +395,17 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer getExternalInputVoltage(Packet packet) {
-    logger.debug("function getExternalInputVoltage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getExternalInputVoltage");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_EXTERNAL_INPUT_VOLTAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) externalInputVoltageValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -404,17 +415,17 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer getStackInputVoltage(Packet packet) {
-    logger.debug("function getStackInputVoltage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getStackInputVoltage");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_STACK_INPUT_VOLTAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) stackInputVoltageValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -424,16 +435,16 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer getPulseWidth(Packet packet) {
-    logger.debug("function getPulseWidth");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getPulseWidth");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_PULSE_WIDTH;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.pulseWidth);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.pulseWidth);
+      return writer.buffer();
     }
 
     return null;
@@ -441,8 +452,8 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
 
   private Buffer getPulseWidthDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -450,16 +461,16 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer getDegree(Packet packet) {
-    logger.debug("function getDegree");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDegree");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_DEGREE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.degree);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.degree);
+      return writer.buffer();
     }
 
     return null;
@@ -467,8 +478,8 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
 
   private Buffer getDegreeDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      buffer.appendBytes(Utils.get2ByteDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteDefaultValue(1));        
       return buffer;
   }
 
@@ -476,16 +487,16 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer getVelocity(Packet packet) {
-    logger.debug("function getVelocity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getVelocity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_VELOCITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.velocity);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.velocity);
+      return writer.buffer();
     }
 
     return null;
@@ -493,7 +504,7 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
 
   private Buffer getVelocityDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -501,16 +512,16 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer isVelocityReachedCallbackEnabled(Packet packet) {
-    logger.debug("function isVelocityReachedCallbackEnabled");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function isVelocityReachedCallbackEnabled");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_IS_VELOCITY_REACHED_CALLBACK_ENABLED;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.VelocityReachedCallback);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.VelocityReachedCallback);
+      return writer.buffer();
     }
 
     return null;
@@ -518,7 +529,7 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
 
   private Buffer isVelocityReachedCallbackEnabledDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -526,16 +537,16 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer isEnabled(Packet packet) {
-    logger.debug("function isEnabled");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function isEnabled");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_IS_ENABLED;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.enabled);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.enabled);
+      return writer.buffer();
     }
 
     return null;
@@ -543,7 +554,7 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
 
   private Buffer isEnabledDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getBoolRandomValue(1));        
+      buffer.appendBytes(Utils.getBoolDefaultValue(1));        
       return buffer;
   }
 
@@ -551,16 +562,16 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer getMinimumVoltage(Packet packet) {
-    logger.debug("function getMinimumVoltage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getMinimumVoltage");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_MINIMUM_VOLTAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.minimumVoltage);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.minimumVoltage);
+      return writer.buffer();
     }
 
     return null;
@@ -568,7 +579,7 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
 
   private Buffer getMinimumVoltageDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -576,16 +587,16 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer getOutputVoltage(Packet packet) {
-    logger.debug("function getOutputVoltage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getOutputVoltage");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_OUTPUT_VOLTAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.outputVoltage);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.outputVoltage);
+      return writer.buffer();
     }
 
     return null;
@@ -593,7 +604,7 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
 
   private Buffer getOutputVoltageDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -601,16 +612,16 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer getPeriod(Packet packet) {
-    logger.debug("function getPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.period);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.period);
+      return writer.buffer();
     }
 
     return null;
@@ -618,7 +629,7 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
 
   private Buffer getPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -626,16 +637,16 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer isPositionReachedCallbackEnabled(Packet packet) {
-    logger.debug("function isPositionReachedCallbackEnabled");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function isPositionReachedCallbackEnabled");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_IS_POSITION_REACHED_CALLBACK_ENABLED;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.PositionReachedCallback);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.PositionReachedCallback);
+      return writer.buffer();
     }
 
     return null;
@@ -643,7 +654,7 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
 
   private Buffer isPositionReachedCallbackEnabledDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -651,16 +662,16 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer isStatusLEDEnabled(Packet packet) {
-    logger.debug("function isStatusLEDEnabled");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function isStatusLEDEnabled");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_IS_STATUS_LED_ENABLED;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.StatusLED);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.StatusLED);
+      return writer.buffer();
     }
 
     return null;
@@ -668,7 +679,7 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
 
   private Buffer isStatusLEDEnabledDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getBoolRandomValue(1));        
+      buffer.appendBytes(Utils.getBoolDefaultValue(1));        
       return buffer;
   }
 
@@ -676,16 +687,16 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer getPosition(Packet packet) {
-    logger.debug("function getPosition");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getPosition");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_POSITION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.position);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.position);
+      return writer.buffer();
     }
 
     return null;
@@ -693,7 +704,7 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
 
   private Buffer getPositionDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      buffer.appendBytes(Utils.get2ByteDefaultValue(1));        
       return buffer;
   }
 
@@ -701,16 +712,16 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer getAcceleration(Packet packet) {
-    logger.debug("function getAcceleration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAcceleration");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_ACCELERATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.acceleration);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.acceleration);
+      return writer.buffer();
     }
 
     return null;
@@ -718,7 +729,7 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
 
   private Buffer getAccelerationDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -726,18 +737,22 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer setPeriod(Packet packet) {
-    logger.debug("function setPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setPeriod");
+    }
+    if (packet.getLength() - 8 != 3) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.period = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.period = packet.getPayload();
+
     return null;
   }
 
@@ -745,18 +760,22 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer setAcceleration(Packet packet) {
-    logger.debug("function setAcceleration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setAcceleration");
+    }
+    if (packet.getLength() - 8 != 3) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.acceleration = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_ACCELERATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.acceleration = packet.getPayload();
+
     return null;
   }
 
@@ -764,18 +783,22 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer disable(Packet packet) {
-    logger.debug("function disable");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function disable");
+    }
+    if (packet.getLength() - 8 != 1) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.enabled = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_DISABLE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.enabled = packet.getPayload();
+
     return null;
   }
 
@@ -783,18 +806,22 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer disablePositionReachedCallback(Packet packet) {
-    logger.debug("function disablePositionReachedCallback");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function disablePositionReachedCallback");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.PositionReachedCallback = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_DISABLE_POSITION_REACHED_CALLBACK;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.PositionReachedCallback = packet.getPayload();
+
     return null;
   }
 
@@ -802,18 +829,22 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer setDegree(Packet packet) {
-    logger.debug("function setDegree");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDegree");
+    }
+    if (packet.getLength() - 8 != 5) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.degree = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DEGREE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.degree = packet.getPayload();
+
     return null;
   }
 
@@ -821,18 +852,22 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer enableVelocityReachedCallback(Packet packet) {
-    logger.debug("function enableVelocityReachedCallback");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function enableVelocityReachedCallback");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.VelocityReachedCallback = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_ENABLE_VELOCITY_REACHED_CALLBACK;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.VelocityReachedCallback = packet.getPayload();
+
     return null;
   }
 
@@ -840,18 +875,22 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer enablePositionReachedCallback(Packet packet) {
-    logger.debug("function enablePositionReachedCallback");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function enablePositionReachedCallback");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.PositionReachedCallback = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_ENABLE_POSITION_REACHED_CALLBACK;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.PositionReachedCallback = packet.getPayload();
+
     return null;
   }
 
@@ -859,18 +898,22 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer setOutputVoltage(Packet packet) {
-    logger.debug("function setOutputVoltage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setOutputVoltage");
+    }
+    if (packet.getLength() - 8 != 2) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.outputVoltage = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_OUTPUT_VOLTAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.outputVoltage = packet.getPayload();
+
     return null;
   }
 
@@ -878,18 +921,22 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer enable(Packet packet) {
-    logger.debug("function enable");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function enable");
+    }
+    if (packet.getLength() - 8 != 1) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.enabled = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_ENABLE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.enabled = packet.getPayload();
+
     return null;
   }
 
@@ -897,18 +944,22 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer setPulseWidth(Packet packet) {
-    logger.debug("function setPulseWidth");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setPulseWidth");
+    }
+    if (packet.getLength() - 8 != 5) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.pulseWidth = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_PULSE_WIDTH;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.pulseWidth = packet.getPayload();
+
     return null;
   }
 
@@ -916,18 +967,22 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer enableStatusLED(Packet packet) {
-    logger.debug("function enableStatusLED");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function enableStatusLED");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.StatusLED = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_ENABLE_STATUS_LED;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.StatusLED = packet.getPayload();
+
     return null;
   }
 
@@ -935,18 +990,22 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer setVelocity(Packet packet) {
-    logger.debug("function setVelocity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setVelocity");
+    }
+    if (packet.getLength() - 8 != 3) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.velocity = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_VELOCITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.velocity = packet.getPayload();
+
     return null;
   }
 
@@ -954,18 +1013,22 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer setMinimumVoltage(Packet packet) {
-    logger.debug("function setMinimumVoltage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setMinimumVoltage");
+    }
+    if (packet.getLength() - 8 != 2) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.minimumVoltage = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_MINIMUM_VOLTAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.minimumVoltage = packet.getPayload();
+
     return null;
   }
 
@@ -973,18 +1036,22 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer setPosition(Packet packet) {
-    logger.debug("function setPosition");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setPosition");
+    }
+    if (packet.getLength() - 8 != 3) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.position = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_POSITION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.position = packet.getPayload();
+
     return null;
   }
 
@@ -992,18 +1059,22 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer disableVelocityReachedCallback(Packet packet) {
-    logger.debug("function disableVelocityReachedCallback");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function disableVelocityReachedCallback");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.VelocityReachedCallback = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_DISABLE_VELOCITY_REACHED_CALLBACK;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.VelocityReachedCallback = packet.getPayload();
+
     return null;
   }
 
@@ -1011,18 +1082,22 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer disableStatusLED(Packet packet) {
-    logger.debug("function disableStatusLED");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function disableStatusLED");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.StatusLED = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_DISABLE_STATUS_LED;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.StatusLED = packet.getPayload();
+
     return null;
   }
 
@@ -1030,16 +1105,16 @@ public final static String DEVICE_DISPLAY_NAME = "Servo Brick";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
@@ -23,25 +23,28 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.callbacks.CallbackScheduler;
+import org.m1theo.tfemulator.callbacks.PeriodicCallback;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * Drives one bipolar stepper motor with up to 38V and 2.5A per phase
  */
-public class BrickStepper extends AbstractVerticle {
+public class BrickStepper extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 15;
 public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
@@ -119,6 +122,14 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
   private Buffer stepMode = getStepModeDefault();
   private Buffer StatusLED = isStatusLEDEnabledDefault();
   private Buffer targetPosition = getTargetPositionDefault();
+  private ValueSource[] remainingStepsValues;
+  private ValueSource[] currentConsumptionValues;
+  private ValueSource[] allDataValues;
+  private ValueSource[] chipTemperatureValues;
+  private ValueSource[] currentVelocityValues;
+  private ValueSource[] externalInputVoltageValues;
+  private ValueSource[] stackInputVoltageValues;
+  private PeriodicCallback allDataCallback;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -133,184 +144,198 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickStepper.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
-
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    Router router = router();
+
+    remainingStepsValues = valueSources("remainingSteps", 1);
+    currentConsumptionValues = valueSources("currentConsumption", 1);
+    allDataValues = valueSources("allData", 6);
+    chipTemperatureValues = valueSources("chipTemperature", 1);
+    currentVelocityValues = valueSources("currentVelocity", 1);
+    externalInputVoltageValues = valueSources("externalInputVoltage", 1);
+    stackInputVoltageValues = valueSources("stackInputVoltage", 1);
+
+    CallbackScheduler scheduler = CallbackScheduler.get(vertx);
+    allDataCallback = scheduler.newCallback(router, uidBytes, CALLBACK_ALL_DATA, 8 + 16, out -> {
+      out.writeUInt16((int) allDataValues[0].next(), 1);
+      out.writeInt32((int) allDataValues[1].next(), 1);
+      out.writeInt32((int) allDataValues[2].next(), 1);
+      out.writeUInt16((int) allDataValues[3].next(), 1);
+      out.writeUInt16((int) allDataValues[4].next(), 1);
+      out.writeUInt16((int) allDataValues[5].next(), 1);
+    });
+
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
+
+  }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    allDataCallback.setPeriod(0);
+    router().unregister(uidBytes);
   }
 
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_SET_MAX_VELOCITY) {
-      buffer = setMaxVelocity(packet);
-    }
-    else if (functionId == FUNCTION_GET_MAX_VELOCITY) {
-      buffer = getMaxVelocity(packet);
-    }
-    else if (functionId == FUNCTION_GET_CURRENT_VELOCITY) {
-      buffer = getCurrentVelocity(packet);
-    }
-    else if (functionId == FUNCTION_SET_SPEED_RAMPING) {
-      buffer = setSpeedRamping(packet);
-    }
-    else if (functionId == FUNCTION_GET_SPEED_RAMPING) {
-      buffer = getSpeedRamping(packet);
-    }
-    else if (functionId == FUNCTION_FULL_BRAKE) {
-      buffer = fullBrake(packet);
-    }
-    else if (functionId == FUNCTION_SET_CURRENT_POSITION) {
-      buffer = setCurrentPosition(packet);
-    }
-    else if (functionId == FUNCTION_GET_CURRENT_POSITION) {
-      buffer = getCurrentPosition(packet);
-    }
-    else if (functionId == FUNCTION_SET_TARGET_POSITION) {
-      buffer = setTargetPosition(packet);
-    }
-    else if (functionId == FUNCTION_GET_TARGET_POSITION) {
-      buffer = getTargetPosition(packet);
-    }
-    else if (functionId == FUNCTION_SET_STEPS) {
-      buffer = setSteps(packet);
-    }
-    else if (functionId == FUNCTION_GET_STEPS) {
-      buffer = getSteps(packet);
-    }
-    else if (functionId == FUNCTION_GET_REMAINING_STEPS) {
-      buffer = getRemainingSteps(packet);
-    }
-    else if (functionId == FUNCTION_SET_STEP_MODE) {
-      buffer = setStepMode(packet);
-    }
-    else if (functionId == FUNCTION_GET_STEP_MODE) {
-      buffer = getStepMode(packet);
-    }
-    else if (functionId == FUNCTION_DRIVE_FORWARD) {
-      buffer = driveForward(packet);
-    }
-    else if (functionId == FUNCTION_DRIVE_BACKWARD) {
-      buffer = driveBackward(packet);
-    }
-    else if (functionId == FUNCTION_STOP) {
-      buffer = stop(packet);
-    }
-    else if (functionId == FUNCTION_GET_STACK_INPUT_VOLTAGE) {
-      buffer = getStackInputVoltage(packet);
-    }
-    else if (functionId == FUNCTION_GET_EXTERNAL_INPUT_VOLTAGE) {
-      buffer = getExternalInputVoltage(packet);
-    }
-    else if (functionId == FUNCTION_GET_CURRENT_CONSUMPTION) {
-      buffer = getCurrentConsumption(packet);
-    }
-    else if (functionId == FUNCTION_SET_MOTOR_CURRENT) {
-      buffer = setMotorCurrent(packet);
-    }
-    else if (functionId == FUNCTION_GET_MOTOR_CURRENT) {
-      buffer = getMotorCurrent(packet);
-    }
-    else if (functionId == FUNCTION_ENABLE) {
-      buffer = enable(packet);
-    }
-    else if (functionId == FUNCTION_DISABLE) {
-      buffer = disable(packet);
-    }
-    else if (functionId == FUNCTION_IS_ENABLED) {
-      buffer = isEnabled(packet);
-    }
-    else if (functionId == FUNCTION_SET_DECAY) {
-      buffer = setDecay(packet);
-    }
-    else if (functionId == FUNCTION_GET_DECAY) {
-      buffer = getDecay(packet);
-    }
-    else if (functionId == FUNCTION_SET_MINIMUM_VOLTAGE) {
-      buffer = setMinimumVoltage(packet);
-    }
-    else if (functionId == FUNCTION_GET_MINIMUM_VOLTAGE) {
-      buffer = getMinimumVoltage(packet);
-    }
-    else if (functionId == FUNCTION_SET_SYNC_RECT) {
-      buffer = setSyncRect(packet);
-    }
-    else if (functionId == FUNCTION_IS_SYNC_RECT) {
-      buffer = isSyncRect(packet);
-    }
-    else if (functionId == FUNCTION_SET_TIME_BASE) {
-      buffer = setTimeBase(packet);
-    }
-    else if (functionId == FUNCTION_GET_TIME_BASE) {
-      buffer = getTimeBase(packet);
-    }
-    else if (functionId == FUNCTION_GET_ALL_DATA) {
-      buffer = getAllData(packet);
-    }
-    else if (functionId == FUNCTION_SET_ALL_DATA_PERIOD) {
-      buffer = setAllDataPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_ALL_DATA_PERIOD) {
-      buffer = getAllDataPeriod(packet);
-    }
-    else if (functionId == FUNCTION_ENABLE_STATUS_LED) {
-      buffer = enableStatusLED(packet);
-    }
-    else if (functionId == FUNCTION_DISABLE_STATUS_LED) {
-      buffer = disableStatusLED(packet);
-    }
-    else if (functionId == FUNCTION_IS_STATUS_LED_ENABLED) {
-      buffer = isStatusLEDEnabled(packet);
-    }
-    else if (functionId == FUNCTION_GET_CHIP_TEMPERATURE) {
-      buffer = getChipTemperature(packet);
-    }
-    else if (functionId == FUNCTION_RESET) {
-      buffer = reset(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_SET_MAX_VELOCITY:
+        buffer = setMaxVelocity(packet);
+        break;
+      case FUNCTION_GET_MAX_VELOCITY:
+        buffer = getMaxVelocity(packet);
+        break;
+      case FUNCTION_GET_CURRENT_VELOCITY:
+        buffer = getCurrentVelocity(packet);
+        break;
+      case FUNCTION_SET_SPEED_RAMPING:
+        buffer = setSpeedRamping(packet);
+        break;
+      case FUNCTION_GET_SPEED_RAMPING:
+        buffer = getSpeedRamping(packet);
+        break;
+      case FUNCTION_FULL_BRAKE:
+        buffer = fullBrake(packet);
+        break;
+      case FUNCTION_SET_CURRENT_POSITION:
+        buffer = setCurrentPosition(packet);
+        break;
+      case FUNCTION_GET_CURRENT_POSITION:
+        buffer = getCurrentPosition(packet);
+        break;
+      case FUNCTION_SET_TARGET_POSITION:
+        buffer = setTargetPosition(packet);
+        break;
+      case FUNCTION_GET_TARGET_POSITION:
+        buffer = getTargetPosition(packet);
+        break;
+      case FUNCTION_SET_STEPS:
+        buffer = setSteps(packet);
+        break;
+      case FUNCTION_GET_STEPS:
+        buffer = getSteps(packet);
+        break;
+      case FUNCTION_GET_REMAINING_STEPS:
+        buffer = getRemainingSteps(packet);
+        break;
+      case FUNCTION_SET_STEP_MODE:
+        buffer = setStepMode(packet);
+        break;
+      case FUNCTION_GET_STEP_MODE:
+        buffer = getStepMode(packet);
+        break;
+      case FUNCTION_DRIVE_FORWARD:
+        buffer = driveForward(packet);
+        break;
+      case FUNCTION_DRIVE_BACKWARD:
+        buffer = driveBackward(packet);
+        break;
+      case FUNCTION_STOP:
+        buffer = stop(packet);
+        break;
+      case FUNCTION_GET_STACK_INPUT_VOLTAGE:
+        buffer = getStackInputVoltage(packet);
+        break;
+      case FUNCTION_GET_EXTERNAL_INPUT_VOLTAGE:
+        buffer = getExternalInputVoltage(packet);
+        break;
+      case FUNCTION_GET_CURRENT_CONSUMPTION:
+        buffer = getCurrentConsumption(packet);
+        break;
+      case FUNCTION_SET_MOTOR_CURRENT:
+        buffer = setMotorCurrent(packet);
+        break;
+      case FUNCTION_GET_MOTOR_CURRENT:
+        buffer = getMotorCurrent(packet);
+        break;
+      case FUNCTION_ENABLE:
+        buffer = enable(packet);
+        break;
+      case FUNCTION_DISABLE:
+        buffer = disable(packet);
+        break;
+      case FUNCTION_IS_ENABLED:
+        buffer = isEnabled(packet);
+        break;
+      case FUNCTION_SET_DECAY:
+        buffer = setDecay(packet);
+        break;
+      case FUNCTION_GET_DECAY:
+        buffer = getDecay(packet);
+        break;
+      case FUNCTION_SET_MINIMUM_VOLTAGE:
+        buffer = setMinimumVoltage(packet);
+        break;
+      case FUNCTION_GET_MINIMUM_VOLTAGE:
+        buffer = getMinimumVoltage(packet);
+        break;
+      case FUNCTION_SET_SYNC_RECT:
+        buffer = setSyncRect(packet);
+        break;
+      case FUNCTION_IS_SYNC_RECT:
+        buffer = isSyncRect(packet);
+        break;
+      case FUNCTION_SET_TIME_BASE:
+        buffer = setTimeBase(packet);
+        break;
+      case FUNCTION_GET_TIME_BASE:
+        buffer = getTimeBase(packet);
+        break;
+      case FUNCTION_GET_ALL_DATA:
+        buffer = getAllData(packet);
+        break;
+      case FUNCTION_SET_ALL_DATA_PERIOD:
+        buffer = setAllDataPeriod(packet);
+        break;
+      case FUNCTION_GET_ALL_DATA_PERIOD:
+        buffer = getAllDataPeriod(packet);
+        break;
+      case FUNCTION_ENABLE_STATUS_LED:
+        buffer = enableStatusLED(packet);
+        break;
+      case FUNCTION_DISABLE_STATUS_LED:
+        buffer = disableStatusLED(packet);
+        break;
+      case FUNCTION_IS_STATUS_LED_ENABLED:
+        buffer = isStatusLEDEnabled(packet);
+        break;
+      case FUNCTION_GET_CHIP_TEMPERATURE:
+        buffer = getChipTemperature(packet);
+        break;
+      case FUNCTION_RESET:
+        buffer = reset(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -320,17 +345,17 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer getRemainingSteps(Packet packet) {
-    logger.debug("function getRemainingSteps");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getRemainingSteps");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_REMAINING_STEPS;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get4ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt32((int) remainingStepsValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -340,17 +365,17 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer getCurrentConsumption(Packet packet) {
-    logger.debug("function getCurrentConsumption");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getCurrentConsumption");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_CURRENT_CONSUMPTION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) currentConsumptionValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -360,22 +385,22 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer getAllData(Packet packet) {
-    logger.debug("function getAllData");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAllData");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 16;
       byte functionId = FUNCTION_GET_ALL_DATA;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) allDataValues[0].next(), 1);
+      writer.writeInt32((int) allDataValues[1].next(), 1);
+      writer.writeInt32((int) allDataValues[2].next(), 1);
+      writer.writeUInt16((int) allDataValues[3].next(), 1);
+      writer.writeUInt16((int) allDataValues[4].next(), 1);
+      writer.writeUInt16((int) allDataValues[5].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -385,17 +410,17 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer getChipTemperature(Packet packet) {
-    logger.debug("function getChipTemperature");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getChipTemperature");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_CHIP_TEMPERATURE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt16((short) chipTemperatureValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -405,17 +430,17 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer getCurrentVelocity(Packet packet) {
-    logger.debug("function getCurrentVelocity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getCurrentVelocity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_CURRENT_VELOCITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) currentVelocityValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -425,17 +450,17 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer getExternalInputVoltage(Packet packet) {
-    logger.debug("function getExternalInputVoltage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getExternalInputVoltage");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_EXTERNAL_INPUT_VOLTAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) externalInputVoltageValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -445,17 +470,17 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer getStackInputVoltage(Packet packet) {
-    logger.debug("function getStackInputVoltage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getStackInputVoltage");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_STACK_INPUT_VOLTAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) stackInputVoltageValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -465,16 +490,16 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer getMinimumVoltage(Packet packet) {
-    logger.debug("function getMinimumVoltage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getMinimumVoltage");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_MINIMUM_VOLTAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.minimumVoltage);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.minimumVoltage);
+      return writer.buffer();
     }
 
     return null;
@@ -482,7 +507,7 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
 
   private Buffer getMinimumVoltageDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -490,16 +515,16 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer getMaxVelocity(Packet packet) {
-    logger.debug("function getMaxVelocity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getMaxVelocity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_MAX_VELOCITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.maxVelocity);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.maxVelocity);
+      return writer.buffer();
     }
 
     return null;
@@ -507,7 +532,7 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
 
   private Buffer getMaxVelocityDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -515,16 +540,16 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer getDecay(Packet packet) {
-    logger.debug("function getDecay");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDecay");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_DECAY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.decay);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.decay);
+      return writer.buffer();
     }
 
     return null;
@@ -532,7 +557,7 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
 
   private Buffer getDecayDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -540,16 +565,16 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer getCurrentPosition(Packet packet) {
-    logger.debug("function getCurrentPosition");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getCurrentPosition");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_CURRENT_POSITION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.currentPosition);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.currentPosition);
+      return writer.buffer();
     }
 
     return null;
@@ -557,7 +582,7 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
 
   private Buffer getCurrentPositionDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteRandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteDefaultValue(1));        
       return buffer;
   }
 
@@ -565,16 +590,16 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer getMotorCurrent(Packet packet) {
-    logger.debug("function getMotorCurrent");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getMotorCurrent");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_MOTOR_CURRENT;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.motorCurrent);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.motorCurrent);
+      return writer.buffer();
     }
 
     return null;
@@ -582,7 +607,7 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
 
   private Buffer getMotorCurrentDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -590,16 +615,16 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer isEnabled(Packet packet) {
-    logger.debug("function isEnabled");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function isEnabled");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_IS_ENABLED;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.enabled);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.enabled);
+      return writer.buffer();
     }
 
     return null;
@@ -607,7 +632,7 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
 
   private Buffer isEnabledDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getBoolRandomValue(1));        
+      buffer.appendBytes(Utils.getBoolDefaultValue(1));        
       return buffer;
   }
 
@@ -615,16 +640,16 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer getTimeBase(Packet packet) {
-    logger.debug("function getTimeBase");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getTimeBase");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_TIME_BASE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.timeBase);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.timeBase);
+      return writer.buffer();
     }
 
     return null;
@@ -632,7 +657,7 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
 
   private Buffer getTimeBaseDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -640,16 +665,16 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer getSpeedRamping(Packet packet) {
-    logger.debug("function getSpeedRamping");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getSpeedRamping");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_SPEED_RAMPING;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.speedRamping);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.speedRamping);
+      return writer.buffer();
     }
 
     return null;
@@ -657,8 +682,8 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
 
   private Buffer getSpeedRampingDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -666,16 +691,16 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer getSteps(Packet packet) {
-    logger.debug("function getSteps");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getSteps");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_STEPS;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.steps);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.steps);
+      return writer.buffer();
     }
 
     return null;
@@ -683,7 +708,7 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
 
   private Buffer getStepsDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteRandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteDefaultValue(1));        
       return buffer;
   }
 
@@ -691,16 +716,16 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer getAllDataPeriod(Packet packet) {
-    logger.debug("function getAllDataPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAllDataPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_ALL_DATA_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.allDataPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.allDataPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -708,7 +733,7 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
 
   private Buffer getAllDataPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -716,16 +741,16 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer getStepMode(Packet packet) {
-    logger.debug("function getStepMode");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getStepMode");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_STEP_MODE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.stepMode);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.stepMode);
+      return writer.buffer();
     }
 
     return null;
@@ -733,7 +758,7 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
 
   private Buffer getStepModeDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -741,16 +766,16 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer isStatusLEDEnabled(Packet packet) {
-    logger.debug("function isStatusLEDEnabled");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function isStatusLEDEnabled");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_IS_STATUS_LED_ENABLED;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.StatusLED);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.StatusLED);
+      return writer.buffer();
     }
 
     return null;
@@ -758,7 +783,7 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
 
   private Buffer isStatusLEDEnabledDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getBoolRandomValue(1));        
+      buffer.appendBytes(Utils.getBoolDefaultValue(1));        
       return buffer;
   }
 
@@ -766,16 +791,16 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer getTargetPosition(Packet packet) {
-    logger.debug("function getTargetPosition");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getTargetPosition");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_TARGET_POSITION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.targetPosition);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.targetPosition);
+      return writer.buffer();
     }
 
     return null;
@@ -783,7 +808,7 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
 
   private Buffer getTargetPositionDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteRandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteDefaultValue(1));        
       return buffer;
   }
 
@@ -791,18 +816,22 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer setSpeedRamping(Packet packet) {
-    logger.debug("function setSpeedRamping");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setSpeedRamping");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.speedRamping = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_SPEED_RAMPING;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.speedRamping = packet.getPayload();
+
     return null;
   }
 
@@ -810,18 +839,22 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer setMaxVelocity(Packet packet) {
-    logger.debug("function setMaxVelocity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setMaxVelocity");
+    }
+    if (packet.getLength() - 8 != 2) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.maxVelocity = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_MAX_VELOCITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.maxVelocity = packet.getPayload();
+
     return null;
   }
 
@@ -829,18 +862,22 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer enable(Packet packet) {
-    logger.debug("function enable");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function enable");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.enabled = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_ENABLE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.enabled = packet.getPayload();
+
     return null;
   }
 
@@ -848,18 +885,23 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer setAllDataPeriod(Packet packet) {
-    logger.debug("function setAllDataPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setAllDataPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.allDataPeriod = packet.copyPayload();
+    allDataCallback.setPeriod(Utils.decodeUInt32(this.allDataPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_ALL_DATA_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.allDataPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -867,18 +909,22 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer setTimeBase(Packet packet) {
-    logger.debug("function setTimeBase");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setTimeBase");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.timeBase = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_TIME_BASE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.timeBase = packet.getPayload();
+
     return null;
   }
 
@@ -886,18 +932,22 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer setStepMode(Packet packet) {
-    logger.debug("function setStepMode");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setStepMode");
+    }
+    if (packet.getLength() - 8 != 1) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.stepMode = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_STEP_MODE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.stepMode = packet.getPayload();
+
     return null;
   }
 
@@ -905,18 +955,22 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer setDecay(Packet packet) {
-    logger.debug("function setDecay");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDecay");
+    }
+    if (packet.getLength() - 8 != 2) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.decay = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DECAY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.decay = packet.getPayload();
+
     return null;
   }
 
@@ -924,18 +978,22 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer setTargetPosition(Packet packet) {
-    logger.debug("function setTargetPosition");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setTargetPosition");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.targetPosition = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_TARGET_POSITION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.targetPosition = packet.getPayload();
+
     return null;
   }
 
@@ -943,18 +1001,22 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer setCurrentPosition(Packet packet) {
-    logger.debug("function setCurrentPosition");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setCurrentPosition");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.currentPosition = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_CURRENT_POSITION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.currentPosition = packet.getPayload();
+
     return null;
   }
 
@@ -962,18 +1024,22 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer setMotorCurrent(Packet packet) {
-    logger.debug("function setMotorCurrent");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setMotorCurrent");
+    }
+    if (packet.getLength() - 8 != 2) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.motorCurrent = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_MOTOR_CURRENT;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.motorCurrent = packet.getPayload();
+
     return null;
   }
 
@@ -981,18 +1047,22 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer setMinimumVoltage(Packet packet) {
-    logger.debug("function setMinimumVoltage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setMinimumVoltage");
+    }
+    if (packet.getLength() - 8 != 2) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.minimumVoltage = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_MINIMUM_VOLTAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.minimumVoltage = packet.getPayload();
+
     return null;
   }
 
@@ -1000,18 +1070,22 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer disable(Packet packet) {
-    logger.debug("function disable");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function disable");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.enabled = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_DISABLE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.enabled = packet.getPayload();
+
     return null;
   }
 
@@ -1019,18 +1093,22 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer enableStatusLED(Packet packet) {
-    logger.debug("function enableStatusLED");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function enableStatusLED");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.StatusLED = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_ENABLE_STATUS_LED;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.StatusLED = packet.getPayload();
+
     return null;
   }
 
@@ -1038,18 +1116,22 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer setSteps(Packet packet) {
-    logger.debug("function setSteps");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setSteps");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.steps = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_STEPS;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.steps = packet.getPayload();
+
     return null;
   }
 
@@ -1057,18 +1139,22 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer disableStatusLED(Packet packet) {
-    logger.debug("function disableStatusLED");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function disableStatusLED");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.StatusLED = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_DISABLE_STATUS_LED;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.StatusLED = packet.getPayload();
+
     return null;
   }
 
@@ -1076,16 +1162,16 @@ public final static String DEVICE_DISPLAY_NAME = "Stepper Brick";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
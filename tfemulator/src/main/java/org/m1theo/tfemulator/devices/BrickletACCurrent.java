@@ -23,25 +23,30 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.callbacks.CallbackScheduler;
+import org.m1theo.tfemulator.callbacks.PeriodicCallback;
+import org.m1theo.tfemulator.callbacks.ThresholdCallback;
+import org.m1theo.tfemulator.callbacks.ValueType;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * Measures AC current between 0A and 100A
  */
-public class BrickletACCurrent extends AbstractVerticle {
+public class BrickletACCurrent extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 257;
 public final static String DEVICE_DISPLAY_NAME = "AC Current Bricklet";
@@ -81,6 +86,12 @@ public final static String DEVICE_DISPLAY_NAME = "AC Current Bricklet";
   private Buffer analogValueCallbackThreshold = getAnalogValueCallbackThresholdDefault();
   private Buffer debouncePeriod = getDebouncePeriodDefault();
   private Buffer currentCallbackThreshold = getCurrentCallbackThresholdDefault();
+  private ValueSource[] analogValueValues;
+  private ValueSource[] currentValues;
+  private PeriodicCallback currentCallback;
+  private PeriodicCallback analogValueCallback;
+  private ThresholdCallback currentReachedCallback;
+  private ThresholdCallback analogValueReachedCallback;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -95,106 +106,124 @@ public final static String DEVICE_DISPLAY_NAME = "AC Current Bricklet";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletACCurrent.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
+    Router router = router();
+
+    analogValueValues = valueSources("analogValue", 1);
+    currentValues = valueSources("current", 1);
+
+    CallbackScheduler scheduler = CallbackScheduler.get(vertx);
+    currentCallback = scheduler.newCallback(router, uidBytes, CALLBACK_CURRENT, 8 + 2, out -> {
+      out.writeUInt16((int) currentValues[0].next(), 1);
+    });
+    analogValueCallback = scheduler.newCallback(router, uidBytes, CALLBACK_ANALOG_VALUE, 8 + 2, out -> {
+      out.writeUInt16((int) analogValueValues[0].next(), 1);
+    });
+    currentReachedCallback = scheduler.newThresholdCallback(router, uidBytes, CALLBACK_CURRENT_REACHED,
+        ValueType.UINT16, 1, values -> {
+          values[0] = (long) currentValues[0].next();
+        });
+    analogValueReachedCallback = scheduler.newThresholdCallback(router, uidBytes, CALLBACK_ANALOG_VALUE_REACHED,
+        ValueType.UINT16, 1, values -> {
+          values[0] = (long) analogValueValues[0].next();
+        });
 
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
 
   }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    currentCallback.setPeriod(0);
+    analogValueCallback.setPeriod(0);
+    currentReachedCallback.disable();
+    analogValueReachedCallback.disable();
+    router().unregister(uidBytes);
+  }
+
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_GET_CURRENT) {
-      buffer = getCurrent(packet);
-    }
-    else if (functionId == FUNCTION_GET_ANALOG_VALUE) {
-      buffer = getAnalogValue(packet);
-    }
-    else if (functionId == FUNCTION_SET_CURRENT_CALLBACK_PERIOD) {
-      buffer = setCurrentCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_CURRENT_CALLBACK_PERIOD) {
-      buffer = getCurrentCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_ANALOG_VALUE_CALLBACK_PERIOD) {
-      buffer = setAnalogValueCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_ANALOG_VALUE_CALLBACK_PERIOD) {
-      buffer = getAnalogValueCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_CURRENT_CALLBACK_THRESHOLD) {
-      buffer = setCurrentCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_GET_CURRENT_CALLBACK_THRESHOLD) {
-      buffer = getCurrentCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_SET_ANALOG_VALUE_CALLBACK_THRESHOLD) {
-      buffer = setAnalogValueCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_GET_ANALOG_VALUE_CALLBACK_THRESHOLD) {
-      buffer = getAnalogValueCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_SET_DEBOUNCE_PERIOD) {
-      buffer = setDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_DEBOUNCE_PERIOD) {
-      buffer = getDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_MOVING_AVERAGE) {
-      buffer = setMovingAverage(packet);
-    }
-    else if (functionId == FUNCTION_GET_MOVING_AVERAGE) {
-      buffer = getMovingAverage(packet);
-    }
-    else if (functionId == FUNCTION_SET_CONFIGURATION) {
-      buffer = setConfiguration(packet);
-    }
-    else if (functionId == FUNCTION_GET_CONFIGURATION) {
-      buffer = getConfiguration(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_GET_CURRENT:
+        buffer = getCurrent(packet);
+        break;
+      case FUNCTION_GET_ANALOG_VALUE:
+        buffer = getAnalogValue(packet);
+        break;
+      case FUNCTION_SET_CURRENT_CALLBACK_PERIOD:
+        buffer = setCurrentCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_CURRENT_CALLBACK_PERIOD:
+        buffer = getCurrentCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_ANALOG_VALUE_CALLBACK_PERIOD:
+        buffer = setAnalogValueCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_ANALOG_VALUE_CALLBACK_PERIOD:
+        buffer = getAnalogValueCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_CURRENT_CALLBACK_THRESHOLD:
+        buffer = setCurrentCallbackThreshold(packet);
+        break;
+      case FUNCTION_GET_CURRENT_CALLBACK_THRESHOLD:
+        buffer = getCurrentCallbackThreshold(packet);
+        break;
+      case FUNCTION_SET_ANALOG_VALUE_CALLBACK_THRESHOLD:
+        buffer = setAnalogValueCallbackThreshold(packet);
+        break;
+      case FUNCTION_GET_ANALOG_VALUE_CALLBACK_THRESHOLD:
+        buffer = getAnalogValueCallbackThreshold(packet);
+        break;
+      case FUNCTION_SET_DEBOUNCE_PERIOD:
+        buffer = setDebouncePeriod(packet);
+        break;
+      case FUNCTION_GET_DEBOUNCE_PERIOD:
+        buffer = getDebouncePeriod(packet);
+        break;
+      case FUNCTION_SET_MOVING_AVERAGE:
+        buffer = setMovingAverage(packet);
+        break;
+      case FUNCTION_GET_MOVING_AVERAGE:
+        buffer = getMovingAverage(packet);
+        break;
+      case FUNCTION_SET_CONFIGURATION:
+        buffer = setConfiguration(packet);
+        break;
+      case FUNCTION_GET_CONFIGURATION:
+        buffer = getConfiguration(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -204,17 +233,17 @@ public final static String DEVICE_DISPLAY_NAME = "AC Current Bricklet";
    * 
    */
   private Buffer getAnalogValue(Packet packet) {
-    logger.debug("function getAnalogValue");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAnalogValue");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_ANALOG_VALUE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) analogValueValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -224,17 +253,17 @@ public final static String DEVICE_DISPLAY_NAME = "AC Current Bricklet";
    * 
    */
   private Buffer getCurrent(Packet packet) {
-    logger.debug("function getCurrent");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getCurrent");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_CURRENT;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) currentValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -244,16 +273,16 @@ public final static String DEVICE_DISPLAY_NAME = "AC Current Bricklet";
    * 
    */
   private Buffer getAnalogValueCallbackPeriod(Packet packet) {
-    logger.debug("function getAnalogValueCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAnalogValueCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_ANALOG_VALUE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.analogValueCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.analogValueCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -261,7 +290,7 @@ public final static String DEVICE_DISPLAY_NAME = "AC Current Bricklet";
 
   private Buffer getAnalogValueCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -269,16 +298,16 @@ public final static String DEVICE_DISPLAY_NAME = "AC Current Bricklet";
    * 
    */
   private Buffer getConfiguration(Packet packet) {
-    logger.debug("function getConfiguration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getConfiguration");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_CONFIGURATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.configuration);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.configuration);
+      return writer.buffer();
     }
 
     return null;
@@ -286,7 +315,7 @@ public final static String DEVICE_DISPLAY_NAME = "AC Current Bricklet";
 
   private Buffer getConfigurationDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -294,16 +323,16 @@ public final static String DEVICE_DISPLAY_NAME = "AC Current Bricklet";
    * 
    */
   private Buffer getMovingAverage(Packet packet) {
-    logger.debug("function getMovingAverage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getMovingAverage");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_MOVING_AVERAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.movingAverage);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.movingAverage);
+      return writer.buffer();
     }
 
     return null;
@@ -311,7 +340,7 @@ public final static String DEVICE_DISPLAY_NAME = "AC Current Bricklet";
 
   private Buffer getMovingAverageDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -319,16 +348,16 @@ public final static String DEVICE_DISPLAY_NAME = "AC Current Bricklet";
    * 
    */
   private Buffer getCurrentCallbackPeriod(Packet packet) {
-    logger.debug("function getCurrentCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getCurrentCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_CURRENT_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.currentCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.currentCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -336,7 +365,7 @@ public final static String DEVICE_DISPLAY_NAME = "AC Current Bricklet";
 
   private Buffer getCurrentCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -344,16 +373,16 @@ public final static String DEVICE_DISPLAY_NAME = "AC Current Bricklet";
    * 
    */
   private Buffer getAnalogValueCallbackThreshold(Packet packet) {
-    logger.debug("function getAnalogValueCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAnalogValueCallbackThreshold");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 5;
       byte functionId = FUNCTION_GET_ANALOG_VALUE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.analogValueCallbackThreshold);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.analogValueCallbackThreshold);
+      return writer.buffer();
     }
 
     return null;
@@ -361,9 +390,9 @@ public final static String DEVICE_DISPLAY_NAME = "AC Current Bricklet";
 
   private Buffer getAnalogValueCallbackThresholdDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -371,16 +400,16 @@ public final static String DEVICE_DISPLAY_NAME = "AC Current Bricklet";
    * 
    */
   private Buffer getDebouncePeriod(Packet packet) {
-    logger.debug("function getDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDebouncePeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.debouncePeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.debouncePeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -388,7 +417,7 @@ public final static String DEVICE_DISPLAY_NAME = "AC Current Bricklet";
 
   private Buffer getDebouncePeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -396,16 +425,16 @@ public final static String DEVICE_DISPLAY_NAME = "AC Current Bricklet";
    * 
    */
   private Buffer getCurrentCallbackThreshold(Packet packet) {
-    logger.debug("function getCurrentCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getCurrentCallbackThreshold");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 5;
       byte functionId = FUNCTION_GET_CURRENT_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.currentCallbackThreshold);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.currentCallbackThreshold);
+      return writer.buffer();
     }
 
     return null;
@@ -413,9 +442,9 @@ public final static String DEVICE_DISPLAY_NAME = "AC Current Bricklet";
 
   private Buffer getCurrentCallbackThresholdDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -423,18 +452,23 @@ public final static String DEVICE_DISPLAY_NAME = "AC Current Bricklet";
    * 
    */
   private Buffer setCurrentCallbackThreshold(Packet packet) {
-    logger.debug("function setCurrentCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setCurrentCallbackThreshold");
+    }
+    if (packet.getLength() - 8 != 5) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.currentCallbackThreshold = packet.copyPayload();
+    currentReachedCallback.setThreshold(this.currentCallbackThreshold);
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_CURRENT_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.currentCallbackThreshold = packet.getPayload();
+
     return null;
   }
 
@@ -442,18 +476,23 @@ public final static String DEVICE_DISPLAY_NAME = "AC Current Bricklet";
    * 
    */
   private Buffer setAnalogValueCallbackPeriod(Packet packet) {
-    logger.debug("function setAnalogValueCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setAnalogValueCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.analogValueCallbackPeriod = packet.copyPayload();
+    analogValueCallback.setPeriod(Utils.decodeUInt32(this.analogValueCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_ANALOG_VALUE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.analogValueCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -461,18 +500,22 @@ public final static String DEVICE_DISPLAY_NAME = "AC Current Bricklet";
    * 
    */
   private Buffer setConfiguration(Packet packet) {
-    logger.debug("function setConfiguration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setConfiguration");
+    }
+    if (packet.getLength() - 8 != 1) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.configuration = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_CONFIGURATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.configuration = packet.getPayload();
+
     return null;
   }
 
@@ -480,18 +523,23 @@ public final static String DEVICE_DISPLAY_NAME = "AC Current Bricklet";
    * 
    */
   private Buffer setAnalogValueCallbackThreshold(Packet packet) {
-    logger.debug("function setAnalogValueCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setAnalogValueCallbackThreshold");
+    }
+    if (packet.getLength() - 8 != 5) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.analogValueCallbackThreshold = packet.copyPayload();
+    analogValueReachedCallback.setThreshold(this.analogValueCallbackThreshold);
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_ANALOG_VALUE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.analogValueCallbackThreshold = packet.getPayload();
+
     return null;
   }
 
@@ -499,18 +547,24 @@ public final static String DEVICE_DISPLAY_NAME = "AC Current Bricklet";
    * 
    */
   private Buffer setDebouncePeriod(Packet packet) {
-    logger.debug("function setDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDebouncePeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.debouncePeriod = packet.copyPayload();
+    analogValueReachedCallback.setDebounce(Utils.decodeUInt32(this.debouncePeriod, 0));
+    currentReachedCallback.setDebounce(Utils.decodeUInt32(this.debouncePeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.debouncePeriod = packet.getPayload();
+
     return null;
   }
 
@@ -518,18 +572,23 @@ public final static String DEVICE_DISPLAY_NAME = "AC Current Bricklet";
    * 
    */
   private Buffer setCurrentCallbackPeriod(Packet packet) {
-    logger.debug("function setCurrentCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setCurrentCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.currentCallbackPeriod = packet.copyPayload();
+    currentCallback.setPeriod(Utils.decodeUInt32(this.currentCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_CURRENT_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.currentCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -537,18 +596,22 @@ public final static String DEVICE_DISPLAY_NAME = "AC Current Bricklet";
    * 
    */
   private Buffer setMovingAverage(Packet packet) {
-    logger.debug("function setMovingAverage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setMovingAverage");
+    }
+    if (packet.getLength() - 8 != 1) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.movingAverage = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_MOVING_AVERAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.movingAverage = packet.getPayload();
+
     return null;
   }
 
@@ -556,16 +619,16 @@ public final static String DEVICE_DISPLAY_NAME = "AC Current Bricklet";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
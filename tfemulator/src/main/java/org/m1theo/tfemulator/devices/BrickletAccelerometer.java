@@ -23,25 +23,30 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.callbacks.CallbackScheduler;
+import org.m1theo.tfemulator.callbacks.PeriodicCallback;
+import org.m1theo.tfemulator.callbacks.ThresholdCallback;
+import org.m1theo.tfemulator.callbacks.ValueType;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * Measures acceleration in three axis
  */
-public class BrickletAccelerometer extends AbstractVerticle {
+public class BrickletAccelerometer extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 250;
 public final static String DEVICE_DISPLAY_NAME = "Accelerometer Bricklet";
@@ -93,6 +98,10 @@ public final static String DEVICE_DISPLAY_NAME = "Accelerometer Bricklet";
   private Buffer accelerationCallbackPeriod = getAccelerationCallbackPeriodDefault();
   private Buffer accelerationCallbackThreshold = getAccelerationCallbackThresholdDefault();
   private Buffer led = isLEDOnDefault();
+  private ValueSource[] temperatureValues;
+  private ValueSource[] accelerationValues;
+  private PeriodicCallback accelerationCallback;
+  private ThresholdCallback accelerationReachedCallback;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -107,97 +116,110 @@ public final static String DEVICE_DISPLAY_NAME = "Accelerometer Bricklet";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletAccelerometer.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
+    Router router = router();
+
+    temperatureValues = valueSources("temperature", 1);
+    accelerationValues = valueSources("acceleration", 3);
+
+    CallbackScheduler scheduler = CallbackScheduler.get(vertx);
+    accelerationCallback = scheduler.newCallback(router, uidBytes, CALLBACK_ACCELERATION, 8 + 6, out -> {
+      out.writeInt16((short) accelerationValues[0].next(), 1);
+      out.writeInt16((short) accelerationValues[1].next(), 1);
+      out.writeInt16((short) accelerationValues[2].next(), 1);
+    });
+    accelerationReachedCallback = scheduler.newThresholdCallback(router, uidBytes, CALLBACK_ACCELERATION_REACHED,
+        ValueType.INT16, 3, values -> {
+          values[0] = (long) accelerationValues[0].next();
+          values[1] = (long) accelerationValues[1].next();
+          values[2] = (long) accelerationValues[2].next();
+        });
 
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
 
   }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    accelerationCallback.setPeriod(0);
+    accelerationReachedCallback.disable();
+    router().unregister(uidBytes);
+  }
+
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_GET_ACCELERATION) {
-      buffer = getAcceleration(packet);
-    }
-    else if (functionId == FUNCTION_SET_ACCELERATION_CALLBACK_PERIOD) {
-      buffer = setAccelerationCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_ACCELERATION_CALLBACK_PERIOD) {
-      buffer = getAccelerationCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_ACCELERATION_CALLBACK_THRESHOLD) {
-      buffer = setAccelerationCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_GET_ACCELERATION_CALLBACK_THRESHOLD) {
-      buffer = getAccelerationCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_SET_DEBOUNCE_PERIOD) {
-      buffer = setDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_DEBOUNCE_PERIOD) {
-      buffer = getDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_TEMPERATURE) {
-      buffer = getTemperature(packet);
-    }
-    else if (functionId == FUNCTION_SET_CONFIGURATION) {
-      buffer = setConfiguration(packet);
-    }
-    else if (functionId == FUNCTION_GET_CONFIGURATION) {
-      buffer = getConfiguration(packet);
-    }
-    else if (functionId == FUNCTION_LED_ON) {
-      buffer = ledOn(packet);
-    }
-    else if (functionId == FUNCTION_LED_OFF) {
-      buffer = ledOff(packet);
-    }
-    else if (functionId == FUNCTION_IS_LED_ON) {
-      buffer = isLEDOn(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_GET_ACCELERATION:
+        buffer = getAcceleration(packet);
+        break;
+      case FUNCTION_SET_ACCELERATION_CALLBACK_PERIOD:
+        buffer = setAccelerationCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_ACCELERATION_CALLBACK_PERIOD:
+        buffer = getAccelerationCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_ACCELERATION_CALLBACK_THRESHOLD:
+        buffer = setAccelerationCallbackThreshold(packet);
+        break;
+      case FUNCTION_GET_ACCELERATION_CALLBACK_THRESHOLD:
+        buffer = getAccelerationCallbackThreshold(packet);
+        break;
+      case FUNCTION_SET_DEBOUNCE_PERIOD:
+        buffer = setDebouncePeriod(packet);
+        break;
+      case FUNCTION_GET_DEBOUNCE_PERIOD:
+        buffer = getDebouncePeriod(packet);
+        break;
+      case FUNCTION_GET_TEMPERATURE:
+        buffer = getTemperature(packet);
+        break;
+      case FUNCTION_SET_CONFIGURATION:
+        buffer = setConfiguration(packet);
+        break;
+      case FUNCTION_GET_CONFIGURATION:
+        buffer = getConfiguration(packet);
+        break;
+      case FUNCTION_LED_ON:
+        buffer = ledOn(packet);
+        break;
+      case FUNCTION_LED_OFF:
+        buffer = ledOff(packet);
+        break;
+      case FUNCTION_IS_LED_ON:
+        buffer = isLEDOn(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -207,17 +229,17 @@ public final static String DEVICE_DISPLAY_NAME = "Accelerometer Bricklet";
    * 
    */
   private Buffer getTemperature(Packet packet) {
-    logger.debug("function getTemperature");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getTemperature");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_TEMPERATURE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt16((short) temperatureValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -227,19 +249,19 @@ public final static String DEVICE_DISPLAY_NAME = "Accelerometer Bricklet";
    * 
    */
   private Buffer getAcceleration(Packet packet) {
-    logger.debug("function getAcceleration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAcceleration");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 6;
       byte functionId = FUNCTION_GET_ACCELERATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt16((short) accelerationValues[0].next(), 1);
+      writer.writeInt16((short) accelerationValues[1].next(), 1);
+      writer.writeInt16((short) accelerationValues[2].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -249,16 +271,16 @@ public final static String DEVICE_DISPLAY_NAME = "Accelerometer Bricklet";
    * 
    */
   private Buffer getConfiguration(Packet packet) {
-    logger.debug("function getConfiguration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getConfiguration");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 3;
       byte functionId = FUNCTION_GET_CONFIGURATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.configuration);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.configuration);
+      return writer.buffer();
     }
 
     return null;
@@ -266,9 +288,9 @@ public final static String DEVICE_DISPLAY_NAME = "Accelerometer Bricklet";
 
   private Buffer getConfigurationDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -276,16 +298,16 @@ public final static String DEVICE_DISPLAY_NAME = "Accelerometer Bricklet";
    * 
    */
   private Buffer getDebouncePeriod(Packet packet) {
-    logger.debug("function getDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDebouncePeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.debouncePeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.debouncePeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -293,7 +315,7 @@ public final static String DEVICE_DISPLAY_NAME = "Accelerometer Bricklet";
 
   private Buffer getDebouncePeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -301,16 +323,16 @@ public final static String DEVICE_DISPLAY_NAME = "Accelerometer Bricklet";
    * 
    */
   private Buffer getAccelerationCallbackPeriod(Packet packet) {
-    logger.debug("function getAccelerationCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAccelerationCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_ACCELERATION_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.accelerationCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.accelerationCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -318,7 +340,7 @@ public final static String DEVICE_DISPLAY_NAME = "Accelerometer Bricklet";
 
   private Buffer getAccelerationCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -326,16 +348,16 @@ public final static String DEVICE_DISPLAY_NAME = "Accelerometer Bricklet";
    * 
    */
   private Buffer getAccelerationCallbackThreshold(Packet packet) {
-    logger.debug("function getAccelerationCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAccelerationCallbackThreshold");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 13;
       byte functionId = FUNCTION_GET_ACCELERATION_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.accelerationCallbackThreshold);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.accelerationCallbackThreshold);
+      return writer.buffer();
     }
 
     return null;
@@ -343,13 +365,13 @@ public final static String DEVICE_DISPLAY_NAME = "Accelerometer Bricklet";
 
   private Buffer getAccelerationCallbackThresholdDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteDefaultValue(1));        
       return buffer;
   }
 
@@ -357,16 +379,16 @@ public final static String DEVICE_DISPLAY_NAME = "Accelerometer Bricklet";
    * 
    */
   private Buffer isLEDOn(Packet packet) {
-    logger.debug("function isLEDOn");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function isLEDOn");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_IS_LED_ON;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.led);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.led);
+      return writer.buffer();
     }
 
     return null;
@@ -374,7 +396,7 @@ public final static String DEVICE_DISPLAY_NAME = "Accelerometer Bricklet";
 
   private Buffer isLEDOnDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -382,18 +404,22 @@ public final static String DEVICE_DISPLAY_NAME = "Accelerometer Bricklet";
    * 
    */
   private Buffer ledOn(Packet packet) {
-    logger.debug("function ledOn");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function ledOn");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.led = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_LED_ON;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.led = packet.getPayload();
+
     return null;
   }
 
@@ -401,18 +427,22 @@ public final static String DEVICE_DISPLAY_NAME = "Accelerometer Bricklet";
    * 
    */
   private Buffer setConfiguration(Packet packet) {
-    logger.debug("function setConfiguration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setConfiguration");
+    }
+    if (packet.getLength() - 8 != 3) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.configuration = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_CONFIGURATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.configuration = packet.getPayload();
+
     return null;
   }
 
@@ -420,18 +450,23 @@ public final static String DEVICE_DISPLAY_NAME = "Accelerometer Bricklet";
    * 
    */
   private Buffer setAccelerationCallbackPeriod(Packet packet) {
-    logger.debug("function setAccelerationCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setAccelerationCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.accelerationCallbackPeriod = packet.copyPayload();
+    accelerationCallback.setPeriod(Utils.decodeUInt32(this.accelerationCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_ACCELERATION_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.accelerationCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -439,18 +474,22 @@ public final static String DEVICE_DISPLAY_NAME = "Accelerometer Bricklet";
    * 
    */
   private Buffer ledOff(Packet packet) {
-    logger.debug("function ledOff");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function ledOff");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.led = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_LED_OFF;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.led = packet.getPayload();
+
     return null;
   }
 
@@ -458,18 +497,23 @@ public final static String DEVICE_DISPLAY_NAME = "Accelerometer Bricklet";
    * 
    */
   private Buffer setAccelerationCallbackThreshold(Packet packet) {
-    logger.debug("function setAccelerationCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setAccelerationCallbackThreshold");
+    }
+    if (packet.getLength() - 8 != 13) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.accelerationCallbackThreshold = packet.copyPayload();
+    accelerationReachedCallback.setThreshold(this.accelerationCallbackThreshold);
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_ACCELERATION_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.accelerationCallbackThreshold = packet.getPayload();
+
     return null;
   }
 
@@ -477,18 +521,23 @@ public final static String DEVICE_DISPLAY_NAME = "Accelerometer Bricklet";
    * 
    */
   private Buffer setDebouncePeriod(Packet packet) {
-    logger.debug("function setDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDebouncePeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.debouncePeriod = packet.copyPayload();
+    accelerationReachedCallback.setDebounce(Utils.decodeUInt32(this.debouncePeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.debouncePeriod = packet.getPayload();
+
     return null;
   }
 
@@ -496,16 +545,16 @@ public final static String DEVICE_DISPLAY_NAME = "Accelerometer Bricklet";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
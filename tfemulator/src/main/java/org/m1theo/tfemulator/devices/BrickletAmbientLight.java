@@ -23,25 +23,30 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.callbacks.CallbackScheduler;
+import org.m1theo.tfemulator.callbacks.PeriodicCallback;
+import org.m1theo.tfemulator.callbacks.ThresholdCallback;
+import org.m1theo.tfemulator.callbacks.ValueType;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * Measures ambient light up to 900lux
  */
-public class BrickletAmbientLight extends AbstractVerticle {
+public class BrickletAmbientLight extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 21;
 public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet";
@@ -75,6 +80,12 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet";
   private Buffer analogValueCallbackThreshold = getAnalogValueCallbackThresholdDefault();
   private Buffer illuminanceCallbackThreshold = getIlluminanceCallbackThresholdDefault();
   private Buffer illuminanceCallbackPeriod = getIlluminanceCallbackPeriodDefault();
+  private ValueSource[] analogValueValues;
+  private ValueSource[] illuminanceValues;
+  private PeriodicCallback illuminanceCallback;
+  private PeriodicCallback analogValueCallback;
+  private ThresholdCallback illuminanceReachedCallback;
+  private ThresholdCallback analogValueReachedCallback;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -89,94 +100,112 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletAmbientLight.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
+    Router router = router();
+
+    analogValueValues = valueSources("analogValue", 1);
+    illuminanceValues = valueSources("illuminance", 1);
+
+    CallbackScheduler scheduler = CallbackScheduler.get(vertx);
+    illuminanceCallback = scheduler.newCallback(router, uidBytes, CALLBACK_ILLUMINANCE, 8 + 2, out -> {
+      out.writeUInt16((int) illuminanceValues[0].next(), 1);
+    });
+    analogValueCallback = scheduler.newCallback(router, uidBytes, CALLBACK_ANALOG_VALUE, 8 + 2, out -> {
+      out.writeUInt16((int) analogValueValues[0].next(), 1);
+    });
+    illuminanceReachedCallback = scheduler.newThresholdCallback(router, uidBytes, CALLBACK_ILLUMINANCE_REACHED,
+        ValueType.UINT16, 1, values -> {
+          values[0] = (long) illuminanceValues[0].next();
+        });
+    analogValueReachedCallback = scheduler.newThresholdCallback(router, uidBytes, CALLBACK_ANALOG_VALUE_REACHED,
+        ValueType.UINT16, 1, values -> {
+          values[0] = (long) analogValueValues[0].next();
+        });
 
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
 
   }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    illuminanceCallback.setPeriod(0);
+    analogValueCallback.setPeriod(0);
+    illuminanceReachedCallback.disable();
+    analogValueReachedCallback.disable();
+    router().unregister(uidBytes);
+  }
+
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_GET_ILLUMINANCE) {
-      buffer = getIlluminance(packet);
-    }
-    else if (functionId == FUNCTION_GET_ANALOG_VALUE) {
-      buffer = getAnalogValue(packet);
-    }
-    else if (functionId == FUNCTION_SET_ILLUMINANCE_CALLBACK_PERIOD) {
-      buffer = setIlluminanceCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_ILLUMINANCE_CALLBACK_PERIOD) {
-      buffer = getIlluminanceCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_ANALOG_VALUE_CALLBACK_PERIOD) {
-      buffer = setAnalogValueCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_ANALOG_VALUE_CALLBACK_PERIOD) {
-      buffer = getAnalogValueCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_ILLUMINANCE_CALLBACK_THRESHOLD) {
-      buffer = setIlluminanceCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_GET_ILLUMINANCE_CALLBACK_THRESHOLD) {
-      buffer = getIlluminanceCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_SET_ANALOG_VALUE_CALLBACK_THRESHOLD) {
-      buffer = setAnalogValueCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_GET_ANALOG_VALUE_CALLBACK_THRESHOLD) {
-      buffer = getAnalogValueCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_SET_DEBOUNCE_PERIOD) {
-      buffer = setDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_DEBOUNCE_PERIOD) {
-      buffer = getDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_GET_ILLUMINANCE:
+        buffer = getIlluminance(packet);
+        break;
+      case FUNCTION_GET_ANALOG_VALUE:
+        buffer = getAnalogValue(packet);
+        break;
+      case FUNCTION_SET_ILLUMINANCE_CALLBACK_PERIOD:
+        buffer = setIlluminanceCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_ILLUMINANCE_CALLBACK_PERIOD:
+        buffer = getIlluminanceCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_ANALOG_VALUE_CALLBACK_PERIOD:
+        buffer = setAnalogValueCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_ANALOG_VALUE_CALLBACK_PERIOD:
+        buffer = getAnalogValueCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_ILLUMINANCE_CALLBACK_THRESHOLD:
+        buffer = setIlluminanceCallbackThreshold(packet);
+        break;
+      case FUNCTION_GET_ILLUMINANCE_CALLBACK_THRESHOLD:
+        buffer = getIlluminanceCallbackThreshold(packet);
+        break;
+      case FUNCTION_SET_ANALOG_VALUE_CALLBACK_THRESHOLD:
+        buffer = setAnalogValueCallbackThreshold(packet);
+        break;
+      case FUNCTION_GET_ANALOG_VALUE_CALLBACK_THRESHOLD:
+        buffer = getAnalogValueCallbackThreshold(packet);
+        break;
+      case FUNCTION_SET_DEBOUNCE_PERIOD:
+        buffer = setDebouncePeriod(packet);
+        break;
+      case FUNCTION_GET_DEBOUNCE_PERIOD:
+        buffer = getDebouncePeriod(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -186,17 +215,17 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet";
    * 
    */
   private Buffer getAnalogValue(Packet packet) {
-    logger.debug("function getAnalogValue");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAnalogValue");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_ANALOG_VALUE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) analogValueValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -206,17 +235,17 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet";
    * 
    */
   private Buffer getIlluminance(Packet packet) {
-    logger.debug("function getIlluminance");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIlluminance");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_ILLUMINANCE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) illuminanceValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -226,16 +255,16 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet";
    * 
    */
   private Buffer getAnalogValueCallbackPeriod(Packet packet) {
-    logger.debug("function getAnalogValueCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAnalogValueCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_ANALOG_VALUE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.analogValueCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.analogValueCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -243,7 +272,7 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet";
 
   private Buffer getAnalogValueCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -251,16 +280,16 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet";
    * 
    */
   private Buffer getDebouncePeriod(Packet packet) {
-    logger.debug("function getDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDebouncePeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.debouncePeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.debouncePeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -268,7 +297,7 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet";
 
   private Buffer getDebouncePeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -276,16 +305,16 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet";
    * 
    */
   private Buffer getAnalogValueCallbackThreshold(Packet packet) {
-    logger.debug("function getAnalogValueCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAnalogValueCallbackThreshold");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 5;
       byte functionId = FUNCTION_GET_ANALOG_VALUE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.analogValueCallbackThreshold);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.analogValueCallbackThreshold);
+      return writer.buffer();
     }
 
     return null;
@@ -293,9 +322,9 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet";
 
   private Buffer getAnalogValueCallbackThresholdDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -303,16 +332,16 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet";
    * 
    */
   private Buffer getIlluminanceCallbackThreshold(Packet packet) {
-    logger.debug("function getIlluminanceCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIlluminanceCallbackThreshold");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 5;
       byte functionId = FUNCTION_GET_ILLUMINANCE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.illuminanceCallbackThreshold);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.illuminanceCallbackThreshold);
+      return writer.buffer();
     }
 
     return null;
@@ -320,9 +349,9 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet";
 
   private Buffer getIlluminanceCallbackThresholdDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -330,16 +359,16 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet";
    * 
    */
   private Buffer getIlluminanceCallbackPeriod(Packet packet) {
-    logger.debug("function getIlluminanceCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIlluminanceCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_ILLUMINANCE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.illuminanceCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.illuminanceCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -347,7 +376,7 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet";
 
   private Buffer getIlluminanceCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -355,18 +384,23 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet";
    * 
    */
   private Buffer setAnalogValueCallbackThreshold(Packet packet) {
-    logger.debug("function setAnalogValueCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setAnalogValueCallbackThreshold");
+    }
+    if (packet.getLength() - 8 != 5) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.analogValueCallbackThreshold = packet.copyPayload();
+    analogValueReachedCallback.setThreshold(this.analogValueCallbackThreshold);
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_ANALOG_VALUE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.analogValueCallbackThreshold = packet.getPayload();
+
     return null;
   }
 
@@ -374,18 +408,23 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet";
    * 
    */
   private Buffer setIlluminanceCallbackThreshold(Packet packet) {
-    logger.debug("function setIlluminanceCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setIlluminanceCallbackThreshold");
+    }
+    if (packet.getLength() - 8 != 5) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.illuminanceCallbackThreshold = packet.copyPayload();
+    illuminanceReachedCallback.setThreshold(this.illuminanceCallbackThreshold);
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_ILLUMINANCE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.illuminanceCallbackThreshold = packet.getPayload();
+
     return null;
   }
 
@@ -393,18 +432,24 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet";
    * 
    */
   private Buffer setDebouncePeriod(Packet packet) {
-    logger.debug("function setDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDebouncePeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.debouncePeriod = packet.copyPayload();
+    analogValueReachedCallback.setDebounce(Utils.decodeUInt32(this.debouncePeriod, 0));
+    illuminanceReachedCallback.setDebounce(Utils.decodeUInt32(this.debouncePeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.debouncePeriod = packet.getPayload();
+
     return null;
   }
 
@@ -412,18 +457,23 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet";
    * 
    */
   private Buffer setIlluminanceCallbackPeriod(Packet packet) {
-    logger.debug("function setIlluminanceCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setIlluminanceCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.illuminanceCallbackPeriod = packet.copyPayload();
+    illuminanceCallback.setPeriod(Utils.decodeUInt32(this.illuminanceCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_ILLUMINANCE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.illuminanceCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -431,18 +481,23 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet";
    * 
    */
   private Buffer setAnalogValueCallbackPeriod(Packet packet) {
-    logger.debug("function setAnalogValueCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setAnalogValueCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.analogValueCallbackPeriod = packet.copyPayload();
+    analogValueCallback.setPeriod(Utils.decodeUInt32(this.analogValueCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_ANALOG_VALUE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.analogValueCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -450,16 +505,16 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
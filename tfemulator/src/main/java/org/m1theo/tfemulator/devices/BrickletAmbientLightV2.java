@@ -23,25 +23,30 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.callbacks.CallbackScheduler;
+import org.m1theo.tfemulator.callbacks.PeriodicCallback;
+import org.m1theo.tfemulator.callbacks.ThresholdCallback;
+import org.m1theo.tfemulator.callbacks.ValueType;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * Measures ambient light up to 64000lux
  */
-public class BrickletAmbientLightV2 extends AbstractVerticle {
+public class BrickletAmbientLightV2 extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 259;
 public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet 2.0";
@@ -83,6 +88,9 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet 2.0";
   private Buffer configuration = getConfigurationDefault();
   private Buffer debouncePeriod = getDebouncePeriodDefault();
   private Buffer illuminanceCallbackThreshold = getIlluminanceCallbackThresholdDefault();
+  private ValueSource[] illuminanceValues;
+  private PeriodicCallback illuminanceCallback;
+  private ThresholdCallback illuminanceReachedCallback;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -97,85 +105,93 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet 2.0";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletAmbientLightV2.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
+    Router router = router();
+
+    illuminanceValues = valueSources("illuminance", 1);
+
+    CallbackScheduler scheduler = CallbackScheduler.get(vertx);
+    illuminanceCallback = scheduler.newCallback(router, uidBytes, CALLBACK_ILLUMINANCE, 8 + 4, out -> {
+      out.writeUInt32((long) illuminanceValues[0].next(), 1);
+    });
+    illuminanceReachedCallback = scheduler.newThresholdCallback(router, uidBytes, CALLBACK_ILLUMINANCE_REACHED,
+        ValueType.UINT32, 1, values -> {
+          values[0] = (long) illuminanceValues[0].next();
+        });
 
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
+
+  }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    illuminanceCallback.setPeriod(0);
+    illuminanceReachedCallback.disable();
+    router().unregister(uidBytes);
   }
 
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_GET_ILLUMINANCE) {
-      buffer = getIlluminance(packet);
-    }
-    else if (functionId == FUNCTION_SET_ILLUMINANCE_CALLBACK_PERIOD) {
-      buffer = setIlluminanceCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_ILLUMINANCE_CALLBACK_PERIOD) {
-      buffer = getIlluminanceCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_ILLUMINANCE_CALLBACK_THRESHOLD) {
-      buffer = setIlluminanceCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_GET_ILLUMINANCE_CALLBACK_THRESHOLD) {
-      buffer = getIlluminanceCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_SET_DEBOUNCE_PERIOD) {
-      buffer = setDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_DEBOUNCE_PERIOD) {
-      buffer = getDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_CONFIGURATION) {
-      buffer = setConfiguration(packet);
-    }
-    else if (functionId == FUNCTION_GET_CONFIGURATION) {
-      buffer = getConfiguration(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_GET_ILLUMINANCE:
+        buffer = getIlluminance(packet);
+        break;
+      case FUNCTION_SET_ILLUMINANCE_CALLBACK_PERIOD:
+        buffer = setIlluminanceCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_ILLUMINANCE_CALLBACK_PERIOD:
+        buffer = getIlluminanceCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_ILLUMINANCE_CALLBACK_THRESHOLD:
+        buffer = setIlluminanceCallbackThreshold(packet);
+        break;
+      case FUNCTION_GET_ILLUMINANCE_CALLBACK_THRESHOLD:
+        buffer = getIlluminanceCallbackThreshold(packet);
+        break;
+      case FUNCTION_SET_DEBOUNCE_PERIOD:
+        buffer = setDebouncePeriod(packet);
+        break;
+      case FUNCTION_GET_DEBOUNCE_PERIOD:
+        buffer = getDebouncePeriod(packet);
+        break;
+      case FUNCTION_SET_CONFIGURATION:
+        buffer = setConfiguration(packet);
+        break;
+      case FUNCTION_GET_CONFIGURATION:
+        buffer = getConfiguration(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -185,17 +201,17 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet 2.0";
    * 
    */
   private Buffer getIlluminance(Packet packet) {
-    logger.debug("function getIlluminance");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIlluminance");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_ILLUMINANCE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt32((long) illuminanceValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -205,16 +221,16 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet 2.0";
    * 
    */
   private Buffer getIlluminanceCallbackPeriod(Packet packet) {
-    logger.debug("function getIlluminanceCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIlluminanceCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_ILLUMINANCE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.illuminanceCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.illuminanceCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -222,7 +238,7 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet 2.0";
 
   private Buffer getIlluminanceCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -230,16 +246,16 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet 2.0";
    * 
    */
   private Buffer getConfiguration(Packet packet) {
-    logger.debug("function getConfiguration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getConfiguration");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_CONFIGURATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.configuration);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.configuration);
+      return writer.buffer();
     }
 
     return null;
@@ -247,8 +263,8 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet 2.0";
 
   private Buffer getConfigurationDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -256,16 +272,16 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet 2.0";
    * 
    */
   private Buffer getDebouncePeriod(Packet packet) {
-    logger.debug("function getDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDebouncePeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.debouncePeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.debouncePeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -273,7 +289,7 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet 2.0";
 
   private Buffer getDebouncePeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -281,16 +297,16 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet 2.0";
    * 
    */
   private Buffer getIlluminanceCallbackThreshold(Packet packet) {
-    logger.debug("function getIlluminanceCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIlluminanceCallbackThreshold");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 9;
       byte functionId = FUNCTION_GET_ILLUMINANCE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.illuminanceCallbackThreshold);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.illuminanceCallbackThreshold);
+      return writer.buffer();
     }
 
     return null;
@@ -298,9 +314,9 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet 2.0";
 
   private Buffer getIlluminanceCallbackThresholdDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -308,18 +324,23 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet 2.0";
    * 
    */
   private Buffer setIlluminanceCallbackThreshold(Packet packet) {
-    logger.debug("function setIlluminanceCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setIlluminanceCallbackThreshold");
+    }
+    if (packet.getLength() - 8 != 9) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.illuminanceCallbackThreshold = packet.copyPayload();
+    illuminanceReachedCallback.setThreshold(this.illuminanceCallbackThreshold);
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_ILLUMINANCE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.illuminanceCallbackThreshold = packet.getPayload();
+
     return null;
   }
 
@@ -327,18 +348,23 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet 2.0";
    * 
    */
   private Buffer setIlluminanceCallbackPeriod(Packet packet) {
-    logger.debug("function setIlluminanceCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setIlluminanceCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.illuminanceCallbackPeriod = packet.copyPayload();
+    illuminanceCallback.setPeriod(Utils.decodeUInt32(this.illuminanceCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_ILLUMINANCE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.illuminanceCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -346,18 +372,22 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet 2.0";
    * 
    */
   private Buffer setConfiguration(Packet packet) {
-    logger.debug("function setConfiguration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setConfiguration");
+    }
+    if (packet.getLength() - 8 != 2) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.configuration = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_CONFIGURATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.configuration = packet.getPayload();
+
     return null;
   }
 
@@ -365,18 +395,23 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet 2.0";
    * 
    */
   private Buffer setDebouncePeriod(Packet packet) {
-    logger.debug("function setDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDebouncePeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.debouncePeriod = packet.copyPayload();
+    illuminanceReachedCallback.setDebounce(Utils.decodeUInt32(this.debouncePeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.debouncePeriod = packet.getPayload();
+
     return null;
   }
 
@@ -384,16 +419,16 @@ public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet 2.0";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
@@ -23,25 +23,30 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.callbacks.CallbackScheduler;
+import org.m1theo.tfemulator.callbacks.PeriodicCallback;
+import org.m1theo.tfemulator.callbacks.ThresholdCallback;
+import org.m1theo.tfemulator.callbacks.ValueType;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * Measures DC voltage between 0V and 45V
  */
-public class BrickletAnalogIn extends AbstractVerticle {
+public class BrickletAnalogIn extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 219;
 public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet";
@@ -87,6 +92,12 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet";
   private Buffer analogValueCallbackThreshold = getAnalogValueCallbackThresholdDefault();
   private Buffer debouncePeriod = getDebouncePeriodDefault();
   private Buffer voltageCallbackPeriod = getVoltageCallbackPeriodDefault();
+  private ValueSource[] analogValueValues;
+  private ValueSource[] voltageValues;
+  private PeriodicCallback voltageCallback;
+  private PeriodicCallback analogValueCallback;
+  private ThresholdCallback voltageReachedCallback;
+  private ThresholdCallback analogValueReachedCallback;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -101,106 +112,124 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletAnalogIn.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
+    Router router = router();
+
+    analogValueValues = valueSources("analogValue", 1);
+    voltageValues = valueSources("voltage", 1);
+
+    CallbackScheduler scheduler = CallbackScheduler.get(vertx);
+    voltageCallback = scheduler.newCallback(router, uidBytes, CALLBACK_VOLTAGE, 8 + 2, out -> {
+      out.writeUInt16((int) voltageValues[0].next(), 1);
+    });
+    analogValueCallback = scheduler.newCallback(router, uidBytes, CALLBACK_ANALOG_VALUE, 8 + 2, out -> {
+      out.writeUInt16((int) analogValueValues[0].next(), 1);
+    });
+    voltageReachedCallback = scheduler.newThresholdCallback(router, uidBytes, CALLBACK_VOLTAGE_REACHED,
+        ValueType.UINT16, 1, values -> {
+          values[0] = (long) voltageValues[0].next();
+        });
+    analogValueReachedCallback = scheduler.newThresholdCallback(router, uidBytes, CALLBACK_ANALOG_VALUE_REACHED,
+        ValueType.UINT16, 1, values -> {
+          values[0] = (long) analogValueValues[0].next();
+        });
 
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
 
   }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    voltageCallback.setPeriod(0);
+    analogValueCallback.setPeriod(0);
+    voltageReachedCallback.disable();
+    analogValueReachedCallback.disable();
+    router().unregister(uidBytes);
+  }
+
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_GET_VOLTAGE) {
-      buffer = getVoltage(packet);
-    }
-    else if (functionId == FUNCTION_GET_ANALOG_VALUE) {
-      buffer = getAnalogValue(packet);
-    }
-    else if (functionId == FUNCTION_SET_VOLTAGE_CALLBACK_PERIOD) {
-      buffer = setVoltageCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_VOLTAGE_CALLBACK_PERIOD) {
-      buffer = getVoltageCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_ANALOG_VALUE_CALLBACK_PERIOD) {
-      buffer = setAnalogValueCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_ANALOG_VALUE_CALLBACK_PERIOD) {
-      buffer = getAnalogValueCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_VOLTAGE_CALLBACK_THRESHOLD) {
-      buffer = setVoltageCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_GET_VOLTAGE_CALLBACK_THRESHOLD) {
-      buffer = getVoltageCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_SET_ANALOG_VALUE_CALLBACK_THRESHOLD) {
-      buffer = setAnalogValueCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_GET_ANALOG_VALUE_CALLBACK_THRESHOLD) {
-      buffer = getAnalogValueCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_SET_DEBOUNCE_PERIOD) {
-      buffer = setDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_DEBOUNCE_PERIOD) {
-      buffer = getDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_RANGE) {
-      buffer = setRange(packet);
-    }
-    else if (functionId == FUNCTION_GET_RANGE) {
-      buffer = getRange(packet);
-    }
-    else if (functionId == FUNCTION_SET_AVERAGING) {
-      buffer = setAveraging(packet);
-    }
-    else if (functionId == FUNCTION_GET_AVERAGING) {
-      buffer = getAveraging(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_GET_VOLTAGE:
+        buffer = getVoltage(packet);
+        break;
+      case FUNCTION_GET_ANALOG_VALUE:
+        buffer = getAnalogValue(packet);
+        break;
+      case FUNCTION_SET_VOLTAGE_CALLBACK_PERIOD:
+        buffer = setVoltageCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_VOLTAGE_CALLBACK_PERIOD:
+        buffer = getVoltageCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_ANALOG_VALUE_CALLBACK_PERIOD:
+        buffer = setAnalogValueCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_ANALOG_VALUE_CALLBACK_PERIOD:
+        buffer = getAnalogValueCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_VOLTAGE_CALLBACK_THRESHOLD:
+        buffer = setVoltageCallbackThreshold(packet);
+        break;
+      case FUNCTION_GET_VOLTAGE_CALLBACK_THRESHOLD:
+        buffer = getVoltageCallbackThreshold(packet);
+        break;
+      case FUNCTION_SET_ANALOG_VALUE_CALLBACK_THRESHOLD:
+        buffer = setAnalogValueCallbackThreshold(packet);
+        break;
+      case FUNCTION_GET_ANALOG_VALUE_CALLBACK_THRESHOLD:
+        buffer = getAnalogValueCallbackThreshold(packet);
+        break;
+      case FUNCTION_SET_DEBOUNCE_PERIOD:
+        buffer = setDebouncePeriod(packet);
+        break;
+      case FUNCTION_GET_DEBOUNCE_PERIOD:
+        buffer = getDebouncePeriod(packet);
+        break;
+      case FUNCTION_SET_RANGE:
+        buffer = setRange(packet);
+        break;
+      case FUNCTION_GET_RANGE:
+        buffer = getRange(packet);
+        break;
+      case FUNCTION_SET_AVERAGING:
+        buffer = setAveraging(packet);
+        break;
+      case FUNCTION_GET_AVERAGING:
+        buffer = getAveraging(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -210,17 +239,17 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet";
    * 
    */
   private Buffer getAnalogValue(Packet packet) {
-    logger.debug("function getAnalogValue");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAnalogValue");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_ANALOG_VALUE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) analogValueValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -230,17 +259,17 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet";
    * 
    */
   private Buffer getVoltage(Packet packet) {
-    logger.debug("function getVoltage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getVoltage");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_VOLTAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) voltageValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -250,16 +279,16 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet";
    * 
    */
   private Buffer getAnalogValueCallbackPeriod(Packet packet) {
-    logger.debug("function getAnalogValueCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAnalogValueCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_ANALOG_VALUE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.analogValueCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.analogValueCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -267,7 +296,7 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet";
 
   private Buffer getAnalogValueCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -275,16 +304,16 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet";
    * 
    */
   private Buffer getRange(Packet packet) {
-    logger.debug("function getRange");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getRange");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_RANGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.range);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.range);
+      return writer.buffer();
     }
 
     return null;
@@ -292,7 +321,7 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet";
 
   private Buffer getRangeDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -300,16 +329,16 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet";
    * 
    */
   private Buffer getVoltageCallbackThreshold(Packet packet) {
-    logger.debug("function getVoltageCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getVoltageCallbackThreshold");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 5;
       byte functionId = FUNCTION_GET_VOLTAGE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.voltageCallbackThreshold);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.voltageCallbackThreshold);
+      return writer.buffer();
     }
 
     return null;
@@ -317,9 +346,9 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet";
 
   private Buffer getVoltageCallbackThresholdDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -327,16 +356,16 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet";
    * 
    */
   private Buffer getAveraging(Packet packet) {
-    logger.debug("function getAveraging");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAveraging");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_AVERAGING;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.averaging);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.averaging);
+      return writer.buffer();
     }
 
     return null;
@@ -344,7 +373,7 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet";
 
   private Buffer getAveragingDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -352,16 +381,16 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet";
    * 
    */
   private Buffer getAnalogValueCallbackThreshold(Packet packet) {
-    logger.debug("function getAnalogValueCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAnalogValueCallbackThreshold");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 5;
       byte functionId = FUNCTION_GET_ANALOG_VALUE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.analogValueCallbackThreshold);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.analogValueCallbackThreshold);
+      return writer.buffer();
     }
 
     return null;
@@ -369,9 +398,9 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet";
 
   private Buffer getAnalogValueCallbackThresholdDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -379,16 +408,16 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet";
    * 
    */
   private Buffer getDebouncePeriod(Packet packet) {
-    logger.debug("function getDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDebouncePeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.debouncePeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.debouncePeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -396,7 +425,7 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet";
 
   private Buffer getDebouncePeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -404,16 +433,16 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet";
    * 
    */
   private Buffer getVoltageCallbackPeriod(Packet packet) {
-    logger.debug("function getVoltageCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getVoltageCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_VOLTAGE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.voltageCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.voltageCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -421,7 +450,7 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet";
 
   private Buffer getVoltageCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -429,18 +458,23 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet";
    * 
    */
   private Buffer setAnalogValueCallbackThreshold(Packet packet) {
-    logger.debug("function setAnalogValueCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setAnalogValueCallbackThreshold");
+    }
+    if (packet.getLength() - 8 != 5) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.analogValueCallbackThreshold = packet.copyPayload();
+    analogValueReachedCallback.setThreshold(this.analogValueCallbackThreshold);
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_ANALOG_VALUE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.analogValueCallbackThreshold = packet.getPayload();
+
     return null;
   }
 
@@ -448,18 +482,23 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet";
    * 
    */
   private Buffer setAnalogValueCallbackPeriod(Packet packet) {
-    logger.debug("function setAnalogValueCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setAnalogValueCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.analogValueCallbackPeriod = packet.copyPayload();
+    analogValueCallback.setPeriod(Utils.decodeUInt32(this.analogValueCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_ANALOG_VALUE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.analogValueCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -467,18 +506,23 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet";
    * 
    */
   private Buffer setVoltageCallbackPeriod(Packet packet) {
-    logger.debug("function setVoltageCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setVoltageCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.voltageCallbackPeriod = packet.copyPayload();
+    voltageCallback.setPeriod(Utils.decodeUInt32(this.voltageCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_VOLTAGE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.voltageCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -486,18 +530,23 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet";
    * 
    */
   private Buffer setVoltageCallbackThreshold(Packet packet) {
-    logger.debug("function setVoltageCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setVoltageCallbackThreshold");
+    }
+    if (packet.getLength() - 8 != 5) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.voltageCallbackThreshold = packet.copyPayload();
+    voltageReachedCallback.setThreshold(this.voltageCallbackThreshold);
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_VOLTAGE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.voltageCallbackThreshold = packet.getPayload();
+
     return null;
   }
 
@@ -505,18 +554,22 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet";
    * 
    */
   private Buffer setAveraging(Packet packet) {
-    logger.debug("function setAveraging");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setAveraging");
+    }
+    if (packet.getLength() - 8 != 1) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.averaging = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_AVERAGING;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.averaging = packet.getPayload();
+
     return null;
   }
 
@@ -524,18 +577,24 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet";
    * 
    */
   private Buffer setDebouncePeriod(Packet packet) {
-    logger.debug("function setDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDebouncePeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.debouncePeriod = packet.copyPayload();
+    analogValueReachedCallback.setDebounce(Utils.decodeUInt32(this.debouncePeriod, 0));
+    voltageReachedCallback.setDebounce(Utils.decodeUInt32(this.debouncePeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.debouncePeriod = packet.getPayload();
+
     return null;
   }
 
@@ -543,18 +602,22 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet";
    * 
    */
   private Buffer setRange(Packet packet) {
-    logger.debug("function setRange");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setRange");
+    }
+    if (packet.getLength() - 8 != 1) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.range = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_RANGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.range = packet.getPayload();
+
     return null;
   }
 
@@ -562,16 +625,16 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
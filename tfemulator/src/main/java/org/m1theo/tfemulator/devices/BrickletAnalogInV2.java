@@ -23,25 +23,30 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.callbacks.CallbackScheduler;
+import org.m1theo.tfemulator.callbacks.PeriodicCallback;
+import org.m1theo.tfemulator.callbacks.ThresholdCallback;
+import org.m1theo.tfemulator.callbacks.ValueType;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * Measures DC voltage between 0V and 42V
  */
-public class BrickletAnalogInV2 extends AbstractVerticle {
+public class BrickletAnalogInV2 extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 251;
 public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet 2.0";
@@ -78,6 +83,12 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet 2.0";
   private Buffer analogValueCallbackThreshold = getAnalogValueCallbackThresholdDefault();
   private Buffer debouncePeriod = getDebouncePeriodDefault();
   private Buffer voltageCallbackPeriod = getVoltageCallbackPeriodDefault();
+  private ValueSource[] analogValueValues;
+  private ValueSource[] voltageValues;
+  private PeriodicCallback voltageCallback;
+  private PeriodicCallback analogValueCallback;
+  private ThresholdCallback voltageReachedCallback;
+  private ThresholdCallback analogValueReachedCallback;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -92,100 +103,118 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet 2.0";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletAnalogInV2.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
+    Router router = router();
+
+    analogValueValues = valueSources("analogValue", 1);
+    voltageValues = valueSources("voltage", 1);
+
+    CallbackScheduler scheduler = CallbackScheduler.get(vertx);
+    voltageCallback = scheduler.newCallback(router, uidBytes, CALLBACK_VOLTAGE, 8 + 2, out -> {
+      out.writeUInt16((int) voltageValues[0].next(), 1);
+    });
+    analogValueCallback = scheduler.newCallback(router, uidBytes, CALLBACK_ANALOG_VALUE, 8 + 2, out -> {
+      out.writeUInt16((int) analogValueValues[0].next(), 1);
+    });
+    voltageReachedCallback = scheduler.newThresholdCallback(router, uidBytes, CALLBACK_VOLTAGE_REACHED,
+        ValueType.UINT16, 1, values -> {
+          values[0] = (long) voltageValues[0].next();
+        });
+    analogValueReachedCallback = scheduler.newThresholdCallback(router, uidBytes, CALLBACK_ANALOG_VALUE_REACHED,
+        ValueType.UINT16, 1, values -> {
+          values[0] = (long) analogValueValues[0].next();
+        });
 
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
 
   }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    voltageCallback.setPeriod(0);
+    analogValueCallback.setPeriod(0);
+    voltageReachedCallback.disable();
+    analogValueReachedCallback.disable();
+    router().unregister(uidBytes);
+  }
+
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_GET_VOLTAGE) {
-      buffer = getVoltage(packet);
-    }
-    else if (functionId == FUNCTION_GET_ANALOG_VALUE) {
-      buffer = getAnalogValue(packet);
-    }
-    else if (functionId == FUNCTION_SET_VOLTAGE_CALLBACK_PERIOD) {
-      buffer = setVoltageCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_VOLTAGE_CALLBACK_PERIOD) {
-      buffer = getVoltageCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_ANALOG_VALUE_CALLBACK_PERIOD) {
-      buffer = setAnalogValueCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_ANALOG_VALUE_CALLBACK_PERIOD) {
-      buffer = getAnalogValueCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_VOLTAGE_CALLBACK_THRESHOLD) {
-      buffer = setVoltageCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_GET_VOLTAGE_CALLBACK_THRESHOLD) {
-      buffer = getVoltageCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_SET_ANALOG_VALUE_CALLBACK_THRESHOLD) {
-      buffer = setAnalogValueCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_GET_ANALOG_VALUE_CALLBACK_THRESHOLD) {
-      buffer = getAnalogValueCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_SET_DEBOUNCE_PERIOD) {
-      buffer = setDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_DEBOUNCE_PERIOD) {
-      buffer = getDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_MOVING_AVERAGE) {
-      buffer = setMovingAverage(packet);
-    }
-    else if (functionId == FUNCTION_GET_MOVING_AVERAGE) {
-      buffer = getMovingAverage(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_GET_VOLTAGE:
+        buffer = getVoltage(packet);
+        break;
+      case FUNCTION_GET_ANALOG_VALUE:
+        buffer = getAnalogValue(packet);
+        break;
+      case FUNCTION_SET_VOLTAGE_CALLBACK_PERIOD:
+        buffer = setVoltageCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_VOLTAGE_CALLBACK_PERIOD:
+        buffer = getVoltageCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_ANALOG_VALUE_CALLBACK_PERIOD:
+        buffer = setAnalogValueCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_ANALOG_VALUE_CALLBACK_PERIOD:
+        buffer = getAnalogValueCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_VOLTAGE_CALLBACK_THRESHOLD:
+        buffer = setVoltageCallbackThreshold(packet);
+        break;
+      case FUNCTION_GET_VOLTAGE_CALLBACK_THRESHOLD:
+        buffer = getVoltageCallbackThreshold(packet);
+        break;
+      case FUNCTION_SET_ANALOG_VALUE_CALLBACK_THRESHOLD:
+        buffer = setAnalogValueCallbackThreshold(packet);
+        break;
+      case FUNCTION_GET_ANALOG_VALUE_CALLBACK_THRESHOLD:
+        buffer = getAnalogValueCallbackThreshold(packet);
+        break;
+      case FUNCTION_SET_DEBOUNCE_PERIOD:
+        buffer = setDebouncePeriod(packet);
+        break;
+      case FUNCTION_GET_DEBOUNCE_PERIOD:
+        buffer = getDebouncePeriod(packet);
+        break;
+      case FUNCTION_SET_MOVING_AVERAGE:
+        buffer = setMovingAverage(packet);
+        break;
+      case FUNCTION_GET_MOVING_AVERAGE:
+        buffer = getMovingAverage(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -195,17 +224,17 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet 2.0";
    * 
    */
   private Buffer getAnalogValue(Packet packet) {
-    logger.debug("function getAnalogValue");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAnalogValue");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_ANALOG_VALUE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) analogValueValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -215,17 +244,17 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet 2.0";
    * 
    */
   private Buffer getVoltage(Packet packet) {
-    logger.debug("function getVoltage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getVoltage");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_VOLTAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) voltageValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -235,16 +264,16 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet 2.0";
    * 
    */
   private Buffer getAnalogValueCallbackPeriod(Packet packet) {
-    logger.debug("function getAnalogValueCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAnalogValueCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_ANALOG_VALUE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.analogValueCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.analogValueCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -252,7 +281,7 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet 2.0";
 
   private Buffer getAnalogValueCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -260,16 +289,16 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet 2.0";
    * 
    */
   private Buffer getMovingAverage(Packet packet) {
-    logger.debug("function getMovingAverage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getMovingAverage");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_MOVING_AVERAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.movingAverage);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.movingAverage);
+      return writer.buffer();
     }
 
     return null;
@@ -277,7 +306,7 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet 2.0";
 
   private Buffer getMovingAverageDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -285,16 +314,16 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet 2.0";
    * 
    */
   private Buffer getVoltageCallbackThreshold(Packet packet) {
-    logger.debug("function getVoltageCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getVoltageCallbackThreshold");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 5;
       byte functionId = FUNCTION_GET_VOLTAGE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.voltageCallbackThreshold);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.voltageCallbackThreshold);
+      return writer.buffer();
     }
 
     return null;
@@ -302,9 +331,9 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet 2.0";
 
   private Buffer getVoltageCallbackThresholdDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -312,16 +341,16 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet 2.0";
    * 
    */
   private Buffer getAnalogValueCallbackThreshold(Packet packet) {
-    logger.debug("function getAnalogValueCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAnalogValueCallbackThreshold");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 5;
       byte functionId = FUNCTION_GET_ANALOG_VALUE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.analogValueCallbackThreshold);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.analogValueCallbackThreshold);
+      return writer.buffer();
     }
 
     return null;
@@ -329,9 +358,9 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet 2.0";
 
   private Buffer getAnalogValueCallbackThresholdDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -339,16 +368,16 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet 2.0";
    * 
    */
   private Buffer getDebouncePeriod(Packet packet) {
-    logger.debug("function getDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDebouncePeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.debouncePeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.debouncePeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -356,7 +385,7 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet 2.0";
 
   private Buffer getDebouncePeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -364,16 +393,16 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet 2.0";
    * 
    */
   private Buffer getVoltageCallbackPeriod(Packet packet) {
-    logger.debug("function getVoltageCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getVoltageCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_VOLTAGE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.voltageCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.voltageCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -381,7 +410,7 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet 2.0";
 
   private Buffer getVoltageCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -389,18 +418,23 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet 2.0";
    * 
    */
   private Buffer setAnalogValueCallbackThreshold(Packet packet) {
-    logger.debug("function setAnalogValueCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setAnalogValueCallbackThreshold");
+    }
+    if (packet.getLength() - 8 != 5) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.analogValueCallbackThreshold = packet.copyPayload();
+    analogValueReachedCallback.setThreshold(this.analogValueCallbackThreshold);
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_ANALOG_VALUE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.analogValueCallbackThreshold = packet.getPayload();
+
     return null;
   }
 
@@ -408,18 +442,23 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet 2.0";
    * 
    */
   private Buffer setAnalogValueCallbackPeriod(Packet packet) {
-    logger.debug("function setAnalogValueCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setAnalogValueCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.analogValueCallbackPeriod = packet.copyPayload();
+    analogValueCallback.setPeriod(Utils.decodeUInt32(this.analogValueCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_ANALOG_VALUE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.analogValueCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -427,18 +466,23 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet 2.0";
    * 
    */
   private Buffer setVoltageCallbackPeriod(Packet packet) {
-    logger.debug("function setVoltageCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setVoltageCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.voltageCallbackPeriod = packet.copyPayload();
+    voltageCallback.setPeriod(Utils.decodeUInt32(this.voltageCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_VOLTAGE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.voltageCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -446,18 +490,23 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet 2.0";
    * 
    */
   private Buffer setVoltageCallbackThreshold(Packet packet) {
-    logger.debug("function setVoltageCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setVoltageCallbackThreshold");
+    }
+    if (packet.getLength() - 8 != 5) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.voltageCallbackThreshold = packet.copyPayload();
+    voltageReachedCallback.setThreshold(this.voltageCallbackThreshold);
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_VOLTAGE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.voltageCallbackThreshold = packet.getPayload();
+
     return null;
   }
 
@@ -465,18 +514,24 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet 2.0";
    * 
    */
   private Buffer setDebouncePeriod(Packet packet) {
-    logger.debug("function setDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDebouncePeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.debouncePeriod = packet.copyPayload();
+    analogValueReachedCallback.setDebounce(Utils.decodeUInt32(this.debouncePeriod, 0));
+    voltageReachedCallback.setDebounce(Utils.decodeUInt32(this.debouncePeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.debouncePeriod = packet.getPayload();
+
     return null;
   }
 
@@ -484,18 +539,22 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet 2.0";
    * 
    */
   private Buffer setMovingAverage(Packet packet) {
-    logger.debug("function setMovingAverage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setMovingAverage");
+    }
+    if (packet.getLength() - 8 != 1) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.movingAverage = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_MOVING_AVERAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.movingAverage = packet.getPayload();
+
     return null;
   }
 
@@ -503,16 +562,16 @@ public final static String DEVICE_DISPLAY_NAME = "Analog In Bricklet 2.0";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
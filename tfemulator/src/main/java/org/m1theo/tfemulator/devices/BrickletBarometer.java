@@ -23,25 +23,30 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.callbacks.CallbackScheduler;
+import org.m1theo.tfemulator.callbacks.PeriodicCallback;
+import org.m1theo.tfemulator.callbacks.ThresholdCallback;
+import org.m1theo.tfemulator.callbacks.ValueType;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * Measures air pressure and altitude changes
  */
-public class BrickletBarometer extends AbstractVerticle {
+public class BrickletBarometer extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 221;
 public final static String DEVICE_DISPLAY_NAME = "Barometer Bricklet";
@@ -82,6 +87,13 @@ public final static String DEVICE_DISPLAY_NAME = "Barometer Bricklet";
   private Buffer averaging = getAveragingDefault();
   private Buffer airPressureCallbackThreshold = getAirPressureCallbackThresholdDefault();
   private Buffer debouncePeriod = getDebouncePeriodDefault();
+  private ValueSource[] altitudeValues;
+  private ValueSource[] chipTemperatureValues;
+  private ValueSource[] airPressureValues;
+  private PeriodicCallback airPressureCallback;
+  private PeriodicCallback altitudeCallback;
+  private ThresholdCallback airPressureReachedCallback;
+  private ThresholdCallback altitudeReachedCallback;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -96,109 +108,128 @@ public final static String DEVICE_DISPLAY_NAME = "Barometer Bricklet";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletBarometer.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
+    Router router = router();
+
+    altitudeValues = valueSources("altitude", 1);
+    chipTemperatureValues = valueSources("chipTemperature", 1);
+    airPressureValues = valueSources("airPressure", 1);
+
+    CallbackScheduler scheduler = CallbackScheduler.get(vertx);
+    airPressureCallback = scheduler.newCallback(router, uidBytes, CALLBACK_AIR_PRESSURE, 8 + 4, out -> {
+      out.writeInt32((int) airPressureValues[0].next(), 1);
+    });
+    altitudeCallback = scheduler.newCallback(router, uidBytes, CALLBACK_ALTITUDE, 8 + 4, out -> {
+      out.writeInt32((int) altitudeValues[0].next(), 1);
+    });
+    airPressureReachedCallback = scheduler.newThresholdCallback(router, uidBytes, CALLBACK_AIR_PRESSURE_REACHED,
+        ValueType.INT32, 1, values -> {
+          values[0] = (long) airPressureValues[0].next();
+        });
+    altitudeReachedCallback = scheduler.newThresholdCallback(router, uidBytes, CALLBACK_ALTITUDE_REACHED,
+        ValueType.INT32, 1, values -> {
+          values[0] = (long) altitudeValues[0].next();
+        });
 
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
 
   }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    airPressureCallback.setPeriod(0);
+    altitudeCallback.setPeriod(0);
+    airPressureReachedCallback.disable();
+    altitudeReachedCallback.disable();
+    router().unregister(uidBytes);
+  }
+
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_GET_AIR_PRESSURE) {
-      buffer = getAirPressure(packet);
-    }
-    else if (functionId == FUNCTION_GET_ALTITUDE) {
-      buffer = getAltitude(packet);
-    }
-    else if (functionId == FUNCTION_SET_AIR_PRESSURE_CALLBACK_PERIOD) {
-      buffer = setAirPressureCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_AIR_PRESSURE_CALLBACK_PERIOD) {
-      buffer = getAirPressureCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_ALTITUDE_CALLBACK_PERIOD) {
-      buffer = setAltitudeCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_ALTITUDE_CALLBACK_PERIOD) {
-      buffer = getAltitudeCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_AIR_PRESSURE_CALLBACK_THRESHOLD) {
-      buffer = setAirPressureCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_GET_AIR_PRESSURE_CALLBACK_THRESHOLD) {
-      buffer = getAirPressureCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_SET_ALTITUDE_CALLBACK_THRESHOLD) {
-      buffer = setAltitudeCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_GET_ALTITUDE_CALLBACK_THRESHOLD) {
-      buffer = getAltitudeCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_SET_DEBOUNCE_PERIOD) {
-      buffer = setDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_DEBOUNCE_PERIOD) {
-      buffer = getDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_REFERENCE_AIR_PRESSURE) {
-      buffer = setReferenceAirPressure(packet);
-    }
-    else if (functionId == FUNCTION_GET_CHIP_TEMPERATURE) {
-      buffer = getChipTemperature(packet);
-    }
-    else if (functionId == FUNCTION_GET_REFERENCE_AIR_PRESSURE) {
-      buffer = getReferenceAirPressure(packet);
-    }
-    else if (functionId == FUNCTION_SET_AVERAGING) {
-      buffer = setAveraging(packet);
-    }
-    else if (functionId == FUNCTION_GET_AVERAGING) {
-      buffer = getAveraging(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_GET_AIR_PRESSURE:
+        buffer = getAirPressure(packet);
+        break;
+      case FUNCTION_GET_ALTITUDE:
+        buffer = getAltitude(packet);
+        break;
+      case FUNCTION_SET_AIR_PRESSURE_CALLBACK_PERIOD:
+        buffer = setAirPressureCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_AIR_PRESSURE_CALLBACK_PERIOD:
+        buffer = getAirPressureCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_ALTITUDE_CALLBACK_PERIOD:
+        buffer = setAltitudeCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_ALTITUDE_CALLBACK_PERIOD:
+        buffer = getAltitudeCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_AIR_PRESSURE_CALLBACK_THRESHOLD:
+        buffer = setAirPressureCallbackThreshold(packet);
+        break;
+      case FUNCTION_GET_AIR_PRESSURE_CALLBACK_THRESHOLD:
+        buffer = getAirPressureCallbackThreshold(packet);
+        break;
+      case FUNCTION_SET_ALTITUDE_CALLBACK_THRESHOLD:
+        buffer = setAltitudeCallbackThreshold(packet);
+        break;
+      case FUNCTION_GET_ALTITUDE_CALLBACK_THRESHOLD:
+        buffer = getAltitudeCallbackThreshold(packet);
+        break;
+      case FUNCTION_SET_DEBOUNCE_PERIOD:
+        buffer = setDebouncePeriod(packet);
+        break;
+      case FUNCTION_GET_DEBOUNCE_PERIOD:
+        buffer = getDebouncePeriod(packet);
+        break;
+      case FUNCTION_SET_REFERENCE_AIR_PRESSURE:
+        buffer = setReferenceAirPressure(packet);
+        break;
+      case FUNCTION_GET_CHIP_TEMPERATURE:
+        buffer = getChipTemperature(packet);
+        break;
+      case FUNCTION_GET_REFERENCE_AIR_PRESSURE:
+        buffer = getReferenceAirPressure(packet);
+        break;
+      case FUNCTION_SET_AVERAGING:
+        buffer = setAveraging(packet);
+        break;
+      case FUNCTION_GET_AVERAGING:
+        buffer = getAveraging(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -208,17 +239,17 @@ public final static String DEVICE_DISPLAY_NAME = "Barometer Bricklet";
    * 
    */
   private Buffer getAltitude(Packet packet) {
-    logger.debug("function getAltitude");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAltitude");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_ALTITUDE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get4ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt32((int) altitudeValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -228,17 +259,17 @@ public final static String DEVICE_DISPLAY_NAME = "Barometer Bricklet";
    * 
    */
   private Buffer getChipTemperature(Packet packet) {
-    logger.debug("function getChipTemperature");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getChipTemperature");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_CHIP_TEMPERATURE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt16((short) chipTemperatureValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -248,17 +279,17 @@ public final static String DEVICE_DISPLAY_NAME = "Barometer Bricklet";
    * 
    */
   private Buffer getAirPressure(Packet packet) {
-    logger.debug("function getAirPressure");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAirPressure");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_AIR_PRESSURE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get4ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt32((int) airPressureValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -268,16 +299,16 @@ public final static String DEVICE_DISPLAY_NAME = "Barometer Bricklet";
    * 
    */
   private Buffer getAirPressureCallbackPeriod(Packet packet) {
-    logger.debug("function getAirPressureCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAirPressureCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_AIR_PRESSURE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.airPressureCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.airPressureCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -285,7 +316,7 @@ public final static String DEVICE_DISPLAY_NAME = "Barometer Bricklet";
 
   private Buffer getAirPressureCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -293,16 +324,16 @@ public final static String DEVICE_DISPLAY_NAME = "Barometer Bricklet";
    * 
    */
   private Buffer getAltitudeCallbackThreshold(Packet packet) {
-    logger.debug("function getAltitudeCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAltitudeCallbackThreshold");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 9;
       byte functionId = FUNCTION_GET_ALTITUDE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.altitudeCallbackThreshold);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.altitudeCallbackThreshold);
+      return writer.buffer();
     }
 
     return null;
@@ -310,9 +341,9 @@ public final static String DEVICE_DISPLAY_NAME = "Barometer Bricklet";
 
   private Buffer getAltitudeCallbackThresholdDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteRandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get4ByteDefaultValue(1));        
+      buffer.appendBytes(Utils.get4ByteDefaultValue(1));        
       return buffer;
   }
 
@@ -320,16 +351,16 @@ public final static String DEVICE_DISPLAY_NAME = "Barometer Bricklet";
    * 
    */
   private Buffer getAltitudeCallbackPeriod(Packet packet) {
-    logger.debug("function getAltitudeCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAltitudeCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_ALTITUDE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.altitudeCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.altitudeCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -337,7 +368,7 @@ public final static String DEVICE_DISPLAY_NAME = "Barometer Bricklet";
 
   private Buffer getAltitudeCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -345,16 +376,16 @@ public final static String DEVICE_DISPLAY_NAME = "Barometer Bricklet";
    * 
    */
   private Buffer getReferenceAirPressure(Packet packet) {
-    logger.debug("function getReferenceAirPressure");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getReferenceAirPressure");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_REFERENCE_AIR_PRESSURE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.referenceAirPressure);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.referenceAirPressure);
+      return writer.buffer();
     }
 
     return null;
@@ -362,7 +393,7 @@ public final static String DEVICE_DISPLAY_NAME = "Barometer Bricklet";
 
   private Buffer getReferenceAirPressureDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteRandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteDefaultValue(1));        
       return buffer;
   }
 
@@ -370,16 +401,16 @@ public final static String DEVICE_DISPLAY_NAME = "Barometer Bricklet";
    * 
    */
   private Buffer getAveraging(Packet packet) {
-    logger.debug("function getAveraging");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAveraging");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 3;
       byte functionId = FUNCTION_GET_AVERAGING;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.averaging);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.averaging);
+      return writer.buffer();
     }
 
     return null;
@@ -387,9 +418,9 @@ public final static String DEVICE_DISPLAY_NAME = "Barometer Bricklet";
 
   private Buffer getAveragingDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -397,16 +428,16 @@ public final static String DEVICE_DISPLAY_NAME = "Barometer Bricklet";
    * 
    */
   private Buffer getAirPressureCallbackThreshold(Packet packet) {
-    logger.debug("function getAirPressureCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAirPressureCallbackThreshold");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 9;
       byte functionId = FUNCTION_GET_AIR_PRESSURE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.airPressureCallbackThreshold);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.airPressureCallbackThreshold);
+      return writer.buffer();
     }
 
     return null;
@@ -414,9 +445,9 @@ public final static String DEVICE_DISPLAY_NAME = "Barometer Bricklet";
 
   private Buffer getAirPressureCallbackThresholdDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteRandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get4ByteDefaultValue(1));        
+      buffer.appendBytes(Utils.get4ByteDefaultValue(1));        
       return buffer;
   }
 
@@ -424,16 +455,16 @@ public final static String DEVICE_DISPLAY_NAME = "Barometer Bricklet";
    * 
    */
   private Buffer getDebouncePeriod(Packet packet) {
-    logger.debug("function getDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDebouncePeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.debouncePeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.debouncePeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -441,7 +472,7 @@ public final static String DEVICE_DISPLAY_NAME = "Barometer Bricklet";
 
   private Buffer getDebouncePeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -449,18 +480,22 @@ public final static String DEVICE_DISPLAY_NAME = "Barometer Bricklet";
    * 
    */
   private Buffer setReferenceAirPressure(Packet packet) {
-    logger.debug("function setReferenceAirPressure");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setReferenceAirPressure");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.referenceAirPressure = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_REFERENCE_AIR_PRESSURE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.referenceAirPressure = packet.getPayload();
+
     return null;
   }
 
@@ -468,18 +503,23 @@ public final static String DEVICE_DISPLAY_NAME = "Barometer Bricklet";
    * 
    */
   private Buffer setAirPressureCallbackPeriod(Packet packet) {
-    logger.debug("function setAirPressureCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setAirPressureCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.airPressureCallbackPeriod = packet.copyPayload();
+    airPressureCallback.setPeriod(Utils.decodeUInt32(this.airPressureCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_AIR_PRESSURE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.airPressureCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -487,18 +527,23 @@ public final static String DEVICE_DISPLAY_NAME = "Barometer Bricklet";
    * 
    */
   private Buffer setAltitudeCallbackThreshold(Packet packet) {
-    logger.debug("function setAltitudeCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setAltitudeCallbackThreshold");
+    }
+    if (packet.getLength() - 8 != 9) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.altitudeCallbackThreshold = packet.copyPayload();
+    altitudeReachedCallback.setThreshold(this.altitudeCallbackThreshold);
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_ALTITUDE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.altitudeCallbackThreshold = packet.getPayload();
+
     return null;
   }
 
@@ -506,18 +551,23 @@ public final static String DEVICE_DISPLAY_NAME = "Barometer Bricklet";
    * 
    */
   private Buffer setAltitudeCallbackPeriod(Packet packet) {
-    logger.debug("function setAltitudeCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setAltitudeCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.altitudeCallbackPeriod = packet.copyPayload();
+    altitudeCallback.setPeriod(Utils.decodeUInt32(this.altitudeCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_ALTITUDE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.altitudeCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -525,18 +575,22 @@ public final static String DEVICE_DISPLAY_NAME = "Barometer Bricklet";
    * 
    */
   private Buffer setAveraging(Packet packet) {
-    logger.debug("function setAveraging");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setAveraging");
+    }
+    if (packet.getLength() - 8 != 3) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.averaging = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_AVERAGING;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.averaging = packet.getPayload();
+
     return null;
   }
 
@@ -544,18 +598,23 @@ public final static String DEVICE_DISPLAY_NAME = "Barometer Bricklet";
    * 
    */
   private Buffer setAirPressureCallbackThreshold(Packet packet) {
-    logger.debug("function setAirPressureCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setAirPressureCallbackThreshold");
+    }
+    if (packet.getLength() - 8 != 9) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.airPressureCallbackThreshold = packet.copyPayload();
+    airPressureReachedCallback.setThreshold(this.airPressureCallbackThreshold);
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_AIR_PRESSURE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.airPressureCallbackThreshold = packet.getPayload();
+
     return null;
   }
 
@@ -563,18 +622,24 @@ public final static String DEVICE_DISPLAY_NAME = "Barometer Bricklet";
    * 
    */
   private Buffer setDebouncePeriod(Packet packet) {
-    logger.debug("function setDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDebouncePeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.debouncePeriod = packet.copyPayload();
+    airPressureReachedCallback.setDebounce(Utils.decodeUInt32(this.debouncePeriod, 0));
+    altitudeReachedCallback.setDebounce(Utils.decodeUInt32(this.debouncePeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.debouncePeriod = packet.getPayload();
+
     return null;
   }
 
@@ -582,16 +647,16 @@ public final static String DEVICE_DISPLAY_NAME = "Barometer Bricklet";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
@@ -23,25 +23,30 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.callbacks.CallbackScheduler;
+import org.m1theo.tfemulator.callbacks.PeriodicCallback;
+import org.m1theo.tfemulator.callbacks.ThresholdCallback;
+import org.m1theo.tfemulator.callbacks.ValueType;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * Measures CO2 concentration in ppm
  */
-public class BrickletCO2 extends AbstractVerticle {
+public class BrickletCO2 extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 262;
 public final static String DEVICE_DISPLAY_NAME = "CO2 Bricklet";
@@ -66,6 +71,9 @@ public final static String DEVICE_DISPLAY_NAME = "CO2 Bricklet";
   private Buffer cO2ConcentrationCallbackPeriod = getCO2ConcentrationCallbackPeriodDefault();
   private Buffer debouncePeriod = getDebouncePeriodDefault();
   private Buffer cO2ConcentrationCallbackThreshold = getCO2ConcentrationCallbackThresholdDefault();
+  private ValueSource[] cO2ConcentrationValues;
+  private PeriodicCallback cO2ConcentrationCallback;
+  private ThresholdCallback cO2ConcentrationReachedCallback;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -80,79 +88,87 @@ public final static String DEVICE_DISPLAY_NAME = "CO2 Bricklet";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletCO2.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
+    Router router = router();
+
+    cO2ConcentrationValues = valueSources("cO2Concentration", 1);
+
+    CallbackScheduler scheduler = CallbackScheduler.get(vertx);
+    cO2ConcentrationCallback = scheduler.newCallback(router, uidBytes, CALLBACK_CO2_CONCENTRATION, 8 + 2, out -> {
+      out.writeUInt16((int) cO2ConcentrationValues[0].next(), 1);
+    });
+    cO2ConcentrationReachedCallback = scheduler.newThresholdCallback(router, uidBytes, CALLBACK_CO2_CONCENTRATION_REACHED,
+        ValueType.UINT16, 1, values -> {
+          values[0] = (long) cO2ConcentrationValues[0].next();
+        });
 
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
 
   }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    cO2ConcentrationCallback.setPeriod(0);
+    cO2ConcentrationReachedCallback.disable();
+    router().unregister(uidBytes);
+  }
+
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_GET_CO2_CONCENTRATION) {
-      buffer = getCO2Concentration(packet);
-    }
-    else if (functionId == FUNCTION_SET_CO2_CONCENTRATION_CALLBACK_PERIOD) {
-      buffer = setCO2ConcentrationCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_CO2_CONCENTRATION_CALLBACK_PERIOD) {
-      buffer = getCO2ConcentrationCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_CO2_CONCENTRATION_CALLBACK_THRESHOLD) {
-      buffer = setCO2ConcentrationCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_GET_CO2_CONCENTRATION_CALLBACK_THRESHOLD) {
-      buffer = getCO2ConcentrationCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_SET_DEBOUNCE_PERIOD) {
-      buffer = setDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_DEBOUNCE_PERIOD) {
-      buffer = getDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_GET_CO2_CONCENTRATION:
+        buffer = getCO2Concentration(packet);
+        break;
+      case FUNCTION_SET_CO2_CONCENTRATION_CALLBACK_PERIOD:
+        buffer = setCO2ConcentrationCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_CO2_CONCENTRATION_CALLBACK_PERIOD:
+        buffer = getCO2ConcentrationCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_CO2_CONCENTRATION_CALLBACK_THRESHOLD:
+        buffer = setCO2ConcentrationCallbackThreshold(packet);
+        break;
+      case FUNCTION_GET_CO2_CONCENTRATION_CALLBACK_THRESHOLD:
+        buffer = getCO2ConcentrationCallbackThreshold(packet);
+        break;
+      case FUNCTION_SET_DEBOUNCE_PERIOD:
+        buffer = setDebouncePeriod(packet);
+        break;
+      case FUNCTION_GET_DEBOUNCE_PERIOD:
+        buffer = getDebouncePeriod(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -162,17 +178,17 @@ public final static String DEVICE_DISPLAY_NAME = "CO2 Bricklet";
    * 
    */
   private Buffer getCO2Concentration(Packet packet) {
-    logger.debug("function getCO2Concentration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getCO2Concentration");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_CO2_CONCENTRATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) cO2ConcentrationValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -182,16 +198,16 @@ public final static String DEVICE_DISPLAY_NAME = "CO2 Bricklet";
    * 
    */
   private Buffer getCO2ConcentrationCallbackPeriod(Packet packet) {
-    logger.debug("function getCO2ConcentrationCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getCO2ConcentrationCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_CO2_CONCENTRATION_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.cO2ConcentrationCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.cO2ConcentrationCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -199,7 +215,7 @@ public final static String DEVICE_DISPLAY_NAME = "CO2 Bricklet";
 
   private Buffer getCO2ConcentrationCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -207,16 +223,16 @@ public final static String DEVICE_DISPLAY_NAME = "CO2 Bricklet";
    * 
    */
   private Buffer getDebouncePeriod(Packet packet) {
-    logger.debug("function getDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDebouncePeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.debouncePeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.debouncePeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -224,7 +240,7 @@ public final static String DEVICE_DISPLAY_NAME = "CO2 Bricklet";
 
   private Buffer getDebouncePeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -232,16 +248,16 @@ public final static String DEVICE_DISPLAY_NAME = "CO2 Bricklet";
    * 
    */
   private Buffer getCO2ConcentrationCallbackThreshold(Packet packet) {
-    logger.debug("function getCO2ConcentrationCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getCO2ConcentrationCallbackThreshold");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 5;
       byte functionId = FUNCTION_GET_CO2_CONCENTRATION_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.cO2ConcentrationCallbackThreshold);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.cO2ConcentrationCallbackThreshold);
+      return writer.buffer();
     }
 
     return null;
@@ -249,9 +265,9 @@ public final static String DEVICE_DISPLAY_NAME = "CO2 Bricklet";
 
   private Buffer getCO2ConcentrationCallbackThresholdDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -259,18 +275,23 @@ public final static String DEVICE_DISPLAY_NAME = "CO2 Bricklet";
    * 
    */
   private Buffer setDebouncePeriod(Packet packet) {
-    logger.debug("function setDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDebouncePeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.debouncePeriod = packet.copyPayload();
+    cO2ConcentrationReachedCallback.setDebounce(Utils.decodeUInt32(this.debouncePeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.debouncePeriod = packet.getPayload();
+
     return null;
   }
 
@@ -278,18 +299,23 @@ public final static String DEVICE_DISPLAY_NAME = "CO2 Bricklet";
    * 
    */
   private Buffer setCO2ConcentrationCallbackPeriod(Packet packet) {
-    logger.debug("function setCO2ConcentrationCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setCO2ConcentrationCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.cO2ConcentrationCallbackPeriod = packet.copyPayload();
+    cO2ConcentrationCallback.setPeriod(Utils.decodeUInt32(this.cO2ConcentrationCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_CO2_CONCENTRATION_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.cO2ConcentrationCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -297,18 +323,23 @@ public final static String DEVICE_DISPLAY_NAME = "CO2 Bricklet";
    * 
    */
   private Buffer setCO2ConcentrationCallbackThreshold(Packet packet) {
-    logger.debug("function setCO2ConcentrationCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setCO2ConcentrationCallbackThreshold");
+    }
+    if (packet.getLength() - 8 != 5) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.cO2ConcentrationCallbackThreshold = packet.copyPayload();
+    cO2ConcentrationReachedCallback.setThreshold(this.cO2ConcentrationCallbackThreshold);
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_CO2_CONCENTRATION_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.cO2ConcentrationCallbackThreshold = packet.getPayload();
+
     return null;
   }
 
@@ -316,16 +347,16 @@ public final static String DEVICE_DISPLAY_NAME = "CO2 Bricklet";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
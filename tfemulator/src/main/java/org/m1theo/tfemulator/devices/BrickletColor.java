@@ -23,25 +23,30 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.callbacks.CallbackScheduler;
+import org.m1theo.tfemulator.callbacks.PeriodicCallback;
+import org.m1theo.tfemulator.callbacks.ThresholdCallback;
+import org.m1theo.tfemulator.callbacks.ValueType;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * Measures color (RGB value), illuminance and color temperature
  */
-public class BrickletColor extends AbstractVerticle {
+public class BrickletColor extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 243;
 public final static String DEVICE_DISPLAY_NAME = "Color Bricklet";
@@ -94,6 +99,13 @@ public final static String DEVICE_DISPLAY_NAME = "Color Bricklet";
   private Buffer debouncePeriod = getDebouncePeriodDefault();
   private Buffer colorCallbackThreshold = getColorCallbackThresholdDefault();
   private Buffer light = isLightOnDefault();
+  private ValueSource[] illuminanceValues;
+  private ValueSource[] colorTemperatureValues;
+  private ValueSource[] colorValues;
+  private PeriodicCallback colorCallback;
+  private PeriodicCallback illuminanceCallback;
+  private PeriodicCallback colorTemperatureCallback;
+  private ThresholdCallback colorReachedCallback;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -108,112 +120,136 @@ public final static String DEVICE_DISPLAY_NAME = "Color Bricklet";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletColor.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
+    Router router = router();
+
+    illuminanceValues = valueSources("illuminance", 1);
+    colorTemperatureValues = valueSources("colorTemperature", 1);
+    colorValues = valueSources("color", 4);
+
+    CallbackScheduler scheduler = CallbackScheduler.get(vertx);
+    colorCallback = scheduler.newCallback(router, uidBytes, CALLBACK_COLOR, 8 + 8, out -> {
+      out.writeUInt16((int) colorValues[0].next(), 1);
+      out.writeUInt16((int) colorValues[1].next(), 1);
+      out.writeUInt16((int) colorValues[2].next(), 1);
+      out.writeUInt16((int) colorValues[3].next(), 1);
+    });
+    illuminanceCallback = scheduler.newCallback(router, uidBytes, CALLBACK_ILLUMINANCE, 8 + 4, out -> {
+      out.writeUInt32((long) illuminanceValues[0].next(), 1);
+    });
+    colorTemperatureCallback = scheduler.newCallback(router, uidBytes, CALLBACK_COLOR_TEMPERATURE, 8 + 2, out -> {
+      out.writeUInt16((int) colorTemperatureValues[0].next(), 1);
+    });
+    colorReachedCallback = scheduler.newThresholdCallback(router, uidBytes, CALLBACK_COLOR_REACHED,
+        ValueType.UINT16, 4, values -> {
+          values[0] = (long) colorValues[0].next();
+          values[1] = (long) colorValues[1].next();
+          values[2] = (long) colorValues[2].next();
+          values[3] = (long) colorValues[3].next();
+        });
 
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
 
   }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    colorCallback.setPeriod(0);
+    illuminanceCallback.setPeriod(0);
+    colorTemperatureCallback.setPeriod(0);
+    colorReachedCallback.disable();
+    router().unregister(uidBytes);
+  }
+
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_GET_COLOR) {
-      buffer = getColor(packet);
-    }
-    else if (functionId == FUNCTION_SET_COLOR_CALLBACK_PERIOD) {
-      buffer = setColorCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_COLOR_CALLBACK_PERIOD) {
-      buffer = getColorCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_COLOR_CALLBACK_THRESHOLD) {
-      buffer = setColorCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_GET_COLOR_CALLBACK_THRESHOLD) {
-      buffer = getColorCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_SET_DEBOUNCE_PERIOD) {
-      buffer = setDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_DEBOUNCE_PERIOD) {
-      buffer = getDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_LIGHT_ON) {
-      buffer = lightOn(packet);
-    }
-    else if (functionId == FUNCTION_LIGHT_OFF) {
-      buffer = lightOff(packet);
-    }
-    else if (functionId == FUNCTION_IS_LIGHT_ON) {
-      buffer = isLightOn(packet);
-    }
-    else if (functionId == FUNCTION_SET_CONFIG) {
-      buffer = setConfig(packet);
-    }
-    else if (functionId == FUNCTION_GET_CONFIG) {
-      buffer = getConfig(packet);
-    }
-    else if (functionId == FUNCTION_GET_ILLUMINANCE) {
-      buffer = getIlluminance(packet);
-    }
-    else if (functionId == FUNCTION_GET_COLOR_TEMPERATURE) {
-      buffer = getColorTemperature(packet);
-    }
-    else if (functionId == FUNCTION_SET_ILLUMINANCE_CALLBACK_PERIOD) {
-      buffer = setIlluminanceCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_ILLUMINANCE_CALLBACK_PERIOD) {
-      buffer = getIlluminanceCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_COLOR_TEMPERATURE_CALLBACK_PERIOD) {
-      buffer = setColorTemperatureCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_COLOR_TEMPERATURE_CALLBACK_PERIOD) {
-      buffer = getColorTemperatureCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_GET_COLOR:
+        buffer = getColor(packet);
+        break;
+      case FUNCTION_SET_COLOR_CALLBACK_PERIOD:
+        buffer = setColorCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_COLOR_CALLBACK_PERIOD:
+        buffer = getColorCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_COLOR_CALLBACK_THRESHOLD:
+        buffer = setColorCallbackThreshold(packet);
+        break;
+      case FUNCTION_GET_COLOR_CALLBACK_THRESHOLD:
+        buffer = getColorCallbackThreshold(packet);
+        break;
+      case FUNCTION_SET_DEBOUNCE_PERIOD:
+        buffer = setDebouncePeriod(packet);
+        break;
+      case FUNCTION_GET_DEBOUNCE_PERIOD:
+        buffer = getDebouncePeriod(packet);
+        break;
+      case FUNCTION_LIGHT_ON:
+        buffer = lightOn(packet);
+        break;
+      case FUNCTION_LIGHT_OFF:
+        buffer = lightOff(packet);
+        break;
+      case FUNCTION_IS_LIGHT_ON:
+        buffer = isLightOn(packet);
+        break;
+      case FUNCTION_SET_CONFIG:
+        buffer = setConfig(packet);
+        break;
+      case FUNCTION_GET_CONFIG:
+        buffer = getConfig(packet);
+        break;
+      case FUNCTION_GET_ILLUMINANCE:
+        buffer = getIlluminance(packet);
+        break;
+      case FUNCTION_GET_COLOR_TEMPERATURE:
+        buffer = getColorTemperature(packet);
+        break;
+      case FUNCTION_SET_ILLUMINANCE_CALLBACK_PERIOD:
+        buffer = setIlluminanceCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_ILLUMINANCE_CALLBACK_PERIOD:
+        buffer = getIlluminanceCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_COLOR_TEMPERATURE_CALLBACK_PERIOD:
+        buffer = setColorTemperatureCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_COLOR_TEMPERATURE_CALLBACK_PERIOD:
+        buffer = getColorTemperatureCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -223,17 +259,17 @@ public final static String DEVICE_DISPLAY_NAME = "Color Bricklet";
    * 
    */
   private Buffer getIlluminance(Packet packet) {
-    logger.debug("function getIlluminance");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIlluminance");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_ILLUMINANCE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt32((long) illuminanceValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -243,17 +279,17 @@ public final static String DEVICE_DISPLAY_NAME = "Color Bricklet";
    * 
    */
   private Buffer getColorTemperature(Packet packet) {
-    logger.debug("function getColorTemperature");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getColorTemperature");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_COLOR_TEMPERATURE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) colorTemperatureValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -263,20 +299,20 @@ public final static String DEVICE_DISPLAY_NAME = "Color Bricklet";
    * 
    */
   private Buffer getColor(Packet packet) {
-    logger.debug("function getColor");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getColor");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 8;
       byte functionId = FUNCTION_GET_COLOR;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) colorValues[0].next(), 1);
+      writer.writeUInt16((int) colorValues[1].next(), 1);
+      writer.writeUInt16((int) colorValues[2].next(), 1);
+      writer.writeUInt16((int) colorValues[3].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -286,16 +322,16 @@ public final static String DEVICE_DISPLAY_NAME = "Color Bricklet";
    * 
    */
   private Buffer getColorCallbackPeriod(Packet packet) {
-    logger.debug("function getColorCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getColorCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_COLOR_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.colorCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.colorCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -303,7 +339,7 @@ public final static String DEVICE_DISPLAY_NAME = "Color Bricklet";
 
   private Buffer getColorCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -311,16 +347,16 @@ public final static String DEVICE_DISPLAY_NAME = "Color Bricklet";
    * 
    */
   private Buffer getColorTemperatureCallbackPeriod(Packet packet) {
-    logger.debug("function getColorTemperatureCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getColorTemperatureCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_COLOR_TEMPERATURE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.colorTemperatureCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.colorTemperatureCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -328,7 +364,7 @@ public final static String DEVICE_DISPLAY_NAME = "Color Bricklet";
 
   private Buffer getColorTemperatureCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -336,16 +372,16 @@ public final static String DEVICE_DISPLAY_NAME = "Color Bricklet";
    * 
    */
   private Buffer getConfig(Packet packet) {
-    logger.debug("function getConfig");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getConfig");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_CONFIG;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.config);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.config);
+      return writer.buffer();
     }
 
     return null;
@@ -353,8 +389,8 @@ public final static String DEVICE_DISPLAY_NAME = "Color Bricklet";
 
   private Buffer getConfigDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -362,16 +398,16 @@ public final static String DEVICE_DISPLAY_NAME = "Color Bricklet";
    * 
    */
   private Buffer getIlluminanceCallbackPeriod(Packet packet) {
-    logger.debug("function getIlluminanceCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIlluminanceCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_ILLUMINANCE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.illuminanceCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.illuminanceCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -379,7 +415,7 @@ public final static String DEVICE_DISPLAY_NAME = "Color Bricklet";
 
   private Buffer getIlluminanceCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -387,16 +423,16 @@ public final static String DEVICE_DISPLAY_NAME = "Color Bricklet";
    * 
    */
   private Buffer getDebouncePeriod(Packet packet) {
-    logger.debug("function getDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDebouncePeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.debouncePeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.debouncePeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -404,7 +440,7 @@ public final static String DEVICE_DISPLAY_NAME = "Color Bricklet";
 
   private Buffer getDebouncePeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -412,16 +448,16 @@ public final static String DEVICE_DISPLAY_NAME = "Color Bricklet";
    * 
    */
   private Buffer getColorCallbackThreshold(Packet packet) {
-    logger.debug("function getColorCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getColorCallbackThreshold");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 17;
       byte functionId = FUNCTION_GET_COLOR_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.colorCallbackThreshold);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.colorCallbackThreshold);
+      return writer.buffer();
     }
 
     return null;
@@ -429,15 +465,15 @@ public final static String DEVICE_DISPLAY_NAME = "Color Bricklet";
 
   private Buffer getColorCallbackThresholdDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -445,16 +481,16 @@ public final static String DEVICE_DISPLAY_NAME = "Color Bricklet";
    * 
    */
   private Buffer isLightOn(Packet packet) {
-    logger.debug("function isLightOn");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function isLightOn");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_IS_LIGHT_ON;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.light);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.light);
+      return writer.buffer();
     }
 
     return null;
@@ -462,7 +498,7 @@ public final static String DEVICE_DISPLAY_NAME = "Color Bricklet";
 
   private Buffer isLightOnDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -470,18 +506,22 @@ public final static String DEVICE_DISPLAY_NAME = "Color Bricklet";
    * 
    */
   private Buffer lightOn(Packet packet) {
-    logger.debug("function lightOn");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function lightOn");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.light = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_LIGHT_ON;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.light = packet.getPayload();
+
     return null;
   }
 
@@ -489,18 +529,22 @@ public final static String DEVICE_DISPLAY_NAME = "Color Bricklet";
    * 
    */
   private Buffer setConfig(Packet packet) {
-    logger.debug("function setConfig");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setConfig");
+    }
+    if (packet.getLength() - 8 != 2) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.config = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_CONFIG;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.config = packet.getPayload();
+
     return null;
   }
 
@@ -508,18 +552,23 @@ public final static String DEVICE_DISPLAY_NAME = "Color Bricklet";
    * 
    */
   private Buffer setColorTemperatureCallbackPeriod(Packet packet) {
-    logger.debug("function setColorTemperatureCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setColorTemperatureCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.colorTemperatureCallbackPeriod = packet.copyPayload();
+    colorTemperatureCallback.setPeriod(Utils.decodeUInt32(this.colorTemperatureCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_COLOR_TEMPERATURE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.colorTemperatureCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -527,18 +576,23 @@ public final static String DEVICE_DISPLAY_NAME = "Color Bricklet";
    * 
    */
   private Buffer setColorCallbackThreshold(Packet packet) {
-    logger.debug("function setColorCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setColorCallbackThreshold");
+    }
+    if (packet.getLength() - 8 != 17) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.colorCallbackThreshold = packet.copyPayload();
+    colorReachedCallback.setThreshold(this.colorCallbackThreshold);
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_COLOR_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.colorCallbackThreshold = packet.getPayload();
+
     return null;
   }
 
@@ -546,18 +600,22 @@ public final static String DEVICE_DISPLAY_NAME = "Color Bricklet";
    * 
    */
   private Buffer lightOff(Packet packet) {
-    logger.debug("function lightOff");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function lightOff");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.light = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_LIGHT_OFF;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.light = packet.getPayload();
+
     return null;
   }
 
@@ -565,18 +623,23 @@ public final static String DEVICE_DISPLAY_NAME = "Color Bricklet";
    * 
    */
   private Buffer setDebouncePeriod(Packet packet) {
-    logger.debug("function setDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDebouncePeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.debouncePeriod = packet.copyPayload();
+    colorReachedCallback.setDebounce(Utils.decodeUInt32(this.debouncePeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.debouncePeriod = packet.getPayload();
+
     return null;
   }
 
@@ -584,18 +647,23 @@ public final static String DEVICE_DISPLAY_NAME = "Color Bricklet";
    * 
    */
   private Buffer setIlluminanceCallbackPeriod(Packet packet) {
-    logger.debug("function setIlluminanceCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setIlluminanceCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.illuminanceCallbackPeriod = packet.copyPayload();
+    illuminanceCallback.setPeriod(Utils.decodeUInt32(this.illuminanceCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_ILLUMINANCE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.illuminanceCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -603,18 +671,23 @@ public final static String DEVICE_DISPLAY_NAME = "Color Bricklet";
    * 
    */
   private Buffer setColorCallbackPeriod(Packet packet) {
-    logger.debug("function setColorCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setColorCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.colorCallbackPeriod = packet.copyPayload();
+    colorCallback.setPeriod(Utils.decodeUInt32(this.colorCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_COLOR_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.colorCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -622,16 +695,16 @@ public final static String DEVICE_DISPLAY_NAME = "Color Bricklet";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
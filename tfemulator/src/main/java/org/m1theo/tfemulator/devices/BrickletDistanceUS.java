@@ -23,25 +23,30 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.callbacks.CallbackScheduler;
+import org.m1theo.tfemulator.callbacks.PeriodicCallback;
+import org.m1theo.tfemulator.callbacks.ThresholdCallback;
+import org.m1theo.tfemulator.callbacks.ValueType;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * Measures distance between 2cm and 400cm with ultrasound
  */
-public class BrickletDistanceUS extends AbstractVerticle {
+public class BrickletDistanceUS extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 229;
 public final static String DEVICE_DISPLAY_NAME = "Distance US Bricklet";
@@ -69,6 +74,9 @@ public final static String DEVICE_DISPLAY_NAME = "Distance US Bricklet";
   private Buffer distanceCallbackPeriod = getDistanceCallbackPeriodDefault();
   private Buffer movingAverage = getMovingAverageDefault();
   private Buffer distanceCallbackThreshold = getDistanceCallbackThresholdDefault();
+  private ValueSource[] distanceValueValues;
+  private PeriodicCallback distanceCallback;
+  private ThresholdCallback distanceReachedCallback;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -83,85 +91,93 @@ public final static String DEVICE_DISPLAY_NAME = "Distance US Bricklet";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletDistanceUS.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
+    Router router = router();
+
+    distanceValueValues = valueSources("distanceValue", 1);
+
+    CallbackScheduler scheduler = CallbackScheduler.get(vertx);
+    distanceCallback = scheduler.newCallback(router, uidBytes, CALLBACK_DISTANCE, 8 + 2, out -> {
+      out.writeUInt16((int) distanceValueValues[0].next(), 1);
+    });
+    distanceReachedCallback = scheduler.newThresholdCallback(router, uidBytes, CALLBACK_DISTANCE_REACHED,
+        ValueType.UINT16, 1, values -> {
+          values[0] = (long) distanceValueValues[0].next();
+        });
 
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
+
+  }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    distanceCallback.setPeriod(0);
+    distanceReachedCallback.disable();
+    router().unregister(uidBytes);
   }
 
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_GET_DISTANCE_VALUE) {
-      buffer = getDistanceValue(packet);
-    }
-    else if (functionId == FUNCTION_SET_DISTANCE_CALLBACK_PERIOD) {
-      buffer = setDistanceCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_DISTANCE_CALLBACK_PERIOD) {
-      buffer = getDistanceCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_DISTANCE_CALLBACK_THRESHOLD) {
-      buffer = setDistanceCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_GET_DISTANCE_CALLBACK_THRESHOLD) {
-      buffer = getDistanceCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_SET_DEBOUNCE_PERIOD) {
-      buffer = setDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_DEBOUNCE_PERIOD) {
-      buffer = getDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_MOVING_AVERAGE) {
-      buffer = setMovingAverage(packet);
-    }
-    else if (functionId == FUNCTION_GET_MOVING_AVERAGE) {
-      buffer = getMovingAverage(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_GET_DISTANCE_VALUE:
+        buffer = getDistanceValue(packet);
+        break;
+      case FUNCTION_SET_DISTANCE_CALLBACK_PERIOD:
+        buffer = setDistanceCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_DISTANCE_CALLBACK_PERIOD:
+        buffer = getDistanceCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_DISTANCE_CALLBACK_THRESHOLD:
+        buffer = setDistanceCallbackThreshold(packet);
+        break;
+      case FUNCTION_GET_DISTANCE_CALLBACK_THRESHOLD:
+        buffer = getDistanceCallbackThreshold(packet);
+        break;
+      case FUNCTION_SET_DEBOUNCE_PERIOD:
+        buffer = setDebouncePeriod(packet);
+        break;
+      case FUNCTION_GET_DEBOUNCE_PERIOD:
+        buffer = getDebouncePeriod(packet);
+        break;
+      case FUNCTION_SET_MOVING_AVERAGE:
+        buffer = setMovingAverage(packet);
+        break;
+      case FUNCTION_GET_MOVING_AVERAGE:
+        buffer = getMovingAverage(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -171,17 +187,17 @@ public final static String DEVICE_DISPLAY_NAME = "Distance US Bricklet";
    * 
    */
   private Buffer getDistanceValue(Packet packet) {
-    logger.debug("function getDistanceValue");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDistanceValue");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_DISTANCE_VALUE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) distanceValueValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -191,16 +207,16 @@ public final static String DEVICE_DISPLAY_NAME = "Distance US Bricklet";
    * 
    */
   private Buffer getDebouncePeriod(Packet packet) {
-    logger.debug("function getDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDebouncePeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.debouncePeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.debouncePeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -208,7 +224,7 @@ public final static String DEVICE_DISPLAY_NAME = "Distance US Bricklet";
 
   private Buffer getDebouncePeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -216,16 +232,16 @@ public final static String DEVICE_DISPLAY_NAME = "Distance US Bricklet";
    * 
    */
   private Buffer getDistanceCallbackPeriod(Packet packet) {
-    logger.debug("function getDistanceCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDistanceCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_DISTANCE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.distanceCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.distanceCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -233,7 +249,7 @@ public final static String DEVICE_DISPLAY_NAME = "Distance US Bricklet";
 
   private Buffer getDistanceCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -241,16 +257,16 @@ public final static String DEVICE_DISPLAY_NAME = "Distance US Bricklet";
    * 
    */
   private Buffer getMovingAverage(Packet packet) {
-    logger.debug("function getMovingAverage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getMovingAverage");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_MOVING_AVERAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.movingAverage);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.movingAverage);
+      return writer.buffer();
     }
 
     return null;
@@ -258,7 +274,7 @@ public final static String DEVICE_DISPLAY_NAME = "Distance US Bricklet";
 
   private Buffer getMovingAverageDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -266,16 +282,16 @@ public final static String DEVICE_DISPLAY_NAME = "Distance US Bricklet";
    * 
    */
   private Buffer getDistanceCallbackThreshold(Packet packet) {
-    logger.debug("function getDistanceCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDistanceCallbackThreshold");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 5;
       byte functionId = FUNCTION_GET_DISTANCE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.distanceCallbackThreshold);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.distanceCallbackThreshold);
+      return writer.buffer();
     }
 
     return null;
@@ -283,9 +299,9 @@ public final static String DEVICE_DISPLAY_NAME = "Distance US Bricklet";
 
   private Buffer getDistanceCallbackThresholdDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -293,18 +309,23 @@ public final static String DEVICE_DISPLAY_NAME = "Distance US Bricklet";
    * 
    */
   private Buffer setDistanceCallbackThreshold(Packet packet) {
-    logger.debug("function setDistanceCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDistanceCallbackThreshold");
+    }
+    if (packet.getLength() - 8 != 5) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.distanceCallbackThreshold = packet.copyPayload();
+    distanceReachedCallback.setThreshold(this.distanceCallbackThreshold);
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DISTANCE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.distanceCallbackThreshold = packet.getPayload();
+
     return null;
   }
 
@@ -312,18 +333,23 @@ public final static String DEVICE_DISPLAY_NAME = "Distance US Bricklet";
    * 
    */
   private Buffer setDebouncePeriod(Packet packet) {
-    logger.debug("function setDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDebouncePeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.debouncePeriod = packet.copyPayload();
+    distanceReachedCallback.setDebounce(Utils.decodeUInt32(this.debouncePeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.debouncePeriod = packet.getPayload();
+
     return null;
   }
 
@@ -331,18 +357,23 @@ public final static String DEVICE_DISPLAY_NAME = "Distance US Bricklet";
    * 
    */
   private Buffer setDistanceCallbackPeriod(Packet packet) {
-    logger.debug("function setDistanceCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDistanceCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.distanceCallbackPeriod = packet.copyPayload();
+    distanceCallback.setPeriod(Utils.decodeUInt32(this.distanceCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DISTANCE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.distanceCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -350,18 +381,22 @@ public final static String DEVICE_DISPLAY_NAME = "Distance US Bricklet";
    * 
    */
   private Buffer setMovingAverage(Packet packet) {
-    logger.debug("function setMovingAverage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setMovingAverage");
+    }
+    if (packet.getLength() - 8 != 1) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.movingAverage = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_MOVING_AVERAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.movingAverage = packet.getPayload();
+
     return null;
   }
 
@@ -369,16 +404,16 @@ public final static String DEVICE_DISPLAY_NAME = "Distance US Bricklet";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
@@ -23,25 +23,25 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
 
 /**
  * Two relays to switch AC/DC devices
  */
-public class BrickletDualRelay extends AbstractVerticle {
+public class BrickletDualRelay extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 26;
 public final static String DEVICE_DISPLAY_NAME = "Dual Relay Bricklet";
@@ -71,73 +71,68 @@ public final static String DEVICE_DISPLAY_NAME = "Dual Relay Bricklet";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletDualRelay.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
+    Router router = router();
 
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
 
   }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    router().unregister(uidBytes);
+  }
+
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_SET_STATE) {
-      buffer = setState(packet);
-    }
-    else if (functionId == FUNCTION_GET_STATE) {
-      buffer = getState(packet);
-    }
-    else if (functionId == FUNCTION_SET_MONOFLOP) {
-      buffer = setMonoflop(packet);
-    }
-    else if (functionId == FUNCTION_GET_MONOFLOP) {
-      buffer = getMonoflop(packet);
-    }
-    else if (functionId == FUNCTION_SET_SELECTED_STATE) {
-      buffer = setSelectedState(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_SET_STATE:
+        buffer = setState(packet);
+        break;
+      case FUNCTION_GET_STATE:
+        buffer = getState(packet);
+        break;
+      case FUNCTION_SET_MONOFLOP:
+        buffer = setMonoflop(packet);
+        break;
+      case FUNCTION_GET_MONOFLOP:
+        buffer = getMonoflop(packet);
+        break;
+      case FUNCTION_SET_SELECTED_STATE:
+        buffer = setSelectedState(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -147,16 +142,16 @@ public final static String DEVICE_DISPLAY_NAME = "Dual Relay Bricklet";
    * 
    */
   private Buffer getMonoflop(Packet packet) {
-    logger.debug("function getMonoflop");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getMonoflop");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 9;
       byte functionId = FUNCTION_GET_MONOFLOP;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.monoflop);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.monoflop);
+      return writer.buffer();
     }
 
     return null;
@@ -164,9 +159,9 @@ public final static String DEVICE_DISPLAY_NAME = "Dual Relay Bricklet";
 
   private Buffer getMonoflopDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getBoolRandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.getBoolDefaultValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -174,16 +169,16 @@ public final static String DEVICE_DISPLAY_NAME = "Dual Relay Bricklet";
    * 
    */
   private Buffer getState(Packet packet) {
-    logger.debug("function getState");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getState");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_STATE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.state);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.state);
+      return writer.buffer();
     }
 
     return null;
@@ -191,8 +186,8 @@ public final static String DEVICE_DISPLAY_NAME = "Dual Relay Bricklet";
 
   private Buffer getStateDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getBoolRandomValue(1));        
-      buffer.appendBytes(Utils.getBoolRandomValue(1));        
+      buffer.appendBytes(Utils.getBoolDefaultValue(1));        
+      buffer.appendBytes(Utils.getBoolDefaultValue(1));        
       return buffer;
   }
 
@@ -200,18 +195,22 @@ public final static String DEVICE_DISPLAY_NAME = "Dual Relay Bricklet";
    * 
    */
   private Buffer setMonoflop(Packet packet) {
-    logger.debug("function setMonoflop");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setMonoflop");
+    }
+    if (packet.getLength() - 8 != 6) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.monoflop = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_MONOFLOP;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.monoflop = packet.getPayload();
+
     return null;
   }
 
@@ -219,18 +218,22 @@ public final static String DEVICE_DISPLAY_NAME = "Dual Relay Bricklet";
    * 
    */
   private Buffer setState(Packet packet) {
-    logger.debug("function setState");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setState");
+    }
+    if (packet.getLength() - 8 != 2) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.state = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_STATE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.state = packet.getPayload();
+
     return null;
   }
 
@@ -238,16 +241,16 @@ public final static String DEVICE_DISPLAY_NAME = "Dual Relay Bricklet";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
@@ -23,25 +23,30 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.callbacks.CallbackScheduler;
+import org.m1theo.tfemulator.callbacks.PeriodicCallback;
+import org.m1theo.tfemulator.callbacks.ThresholdCallback;
+import org.m1theo.tfemulator.callbacks.ValueType;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * Measures dust density
  */
-public class BrickletDustDetector extends AbstractVerticle {
+public class BrickletDustDetector extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 260;
 public final static String DEVICE_DISPLAY_NAME = "Dust Detector Bricklet";
@@ -69,6 +74,9 @@ public final static String DEVICE_DISPLAY_NAME = "Dust Detector Bricklet";
   private Buffer dustDensityCallbackPeriod = getDustDensityCallbackPeriodDefault();
   private Buffer movingAverage = getMovingAverageDefault();
   private Buffer dustDensityCallbackThreshold = getDustDensityCallbackThresholdDefault();
+  private ValueSource[] dustDensityValues;
+  private PeriodicCallback dustDensityCallback;
+  private ThresholdCallback dustDensityReachedCallback;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -83,85 +91,93 @@ public final static String DEVICE_DISPLAY_NAME = "Dust Detector Bricklet";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletDustDetector.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
+    Router router = router();
+
+    dustDensityValues = valueSources("dustDensity", 1);
+
+    CallbackScheduler scheduler = CallbackScheduler.get(vertx);
+    dustDensityCallback = scheduler.newCallback(router, uidBytes, CALLBACK_DUST_DENSITY, 8 + 2, out -> {
+      out.writeUInt16((int) dustDensityValues[0].next(), 1);
+    });
+    dustDensityReachedCallback = scheduler.newThresholdCallback(router, uidBytes, CALLBACK_DUST_DENSITY_REACHED,
+        ValueType.UINT16, 1, values -> {
+          values[0] = (long) dustDensityValues[0].next();
+        });
 
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
+
+  }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    dustDensityCallback.setPeriod(0);
+    dustDensityReachedCallback.disable();
+    router().unregister(uidBytes);
   }
 
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_GET_DUST_DENSITY) {
-      buffer = getDustDensity(packet);
-    }
-    else if (functionId == FUNCTION_SET_DUST_DENSITY_CALLBACK_PERIOD) {
-      buffer = setDustDensityCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_DUST_DENSITY_CALLBACK_PERIOD) {
-      buffer = getDustDensityCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_DUST_DENSITY_CALLBACK_THRESHOLD) {
-      buffer = setDustDensityCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_GET_DUST_DENSITY_CALLBACK_THRESHOLD) {
-      buffer = getDustDensityCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_SET_DEBOUNCE_PERIOD) {
-      buffer = setDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_DEBOUNCE_PERIOD) {
-      buffer = getDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_MOVING_AVERAGE) {
-      buffer = setMovingAverage(packet);
-    }
-    else if (functionId == FUNCTION_GET_MOVING_AVERAGE) {
-      buffer = getMovingAverage(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_GET_DUST_DENSITY:
+        buffer = getDustDensity(packet);
+        break;
+      case FUNCTION_SET_DUST_DENSITY_CALLBACK_PERIOD:
+        buffer = setDustDensityCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_DUST_DENSITY_CALLBACK_PERIOD:
+        buffer = getDustDensityCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_DUST_DENSITY_CALLBACK_THRESHOLD:
+        buffer = setDustDensityCallbackThreshold(packet);
+        break;
+      case FUNCTION_GET_DUST_DENSITY_CALLBACK_THRESHOLD:
+        buffer = getDustDensityCallbackThreshold(packet);
+        break;
+      case FUNCTION_SET_DEBOUNCE_PERIOD:
+        buffer = setDebouncePeriod(packet);
+        break;
+      case FUNCTION_GET_DEBOUNCE_PERIOD:
+        buffer = getDebouncePeriod(packet);
+        break;
+      case FUNCTION_SET_MOVING_AVERAGE:
+        buffer = setMovingAverage(packet);
+        break;
+      case FUNCTION_GET_MOVING_AVERAGE:
+        buffer = getMovingAverage(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -171,17 +187,17 @@ public final static String DEVICE_DISPLAY_NAME = "Dust Detector Bricklet";
    * 
    */
   private Buffer getDustDensity(Packet packet) {
-    logger.debug("function getDustDensity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDustDensity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_DUST_DENSITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) dustDensityValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -191,16 +207,16 @@ public final static String DEVICE_DISPLAY_NAME = "Dust Detector Bricklet";
    * 
    */
   private Buffer getDebouncePeriod(Packet packet) {
-    logger.debug("function getDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDebouncePeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.debouncePeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.debouncePeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -208,7 +224,7 @@ public final static String DEVICE_DISPLAY_NAME = "Dust Detector Bricklet";
 
   private Buffer getDebouncePeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -216,16 +232,16 @@ public final static String DEVICE_DISPLAY_NAME = "Dust Detector Bricklet";
    * 
    */
   private Buffer getDustDensityCallbackPeriod(Packet packet) {
-    logger.debug("function getDustDensityCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDustDensityCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_DUST_DENSITY_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.dustDensityCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.dustDensityCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -233,7 +249,7 @@ public final static String DEVICE_DISPLAY_NAME = "Dust Detector Bricklet";
 
   private Buffer getDustDensityCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -241,16 +257,16 @@ public final static String DEVICE_DISPLAY_NAME = "Dust Detector Bricklet";
    * 
    */
   private Buffer getMovingAverage(Packet packet) {
-    logger.debug("function getMovingAverage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getMovingAverage");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_MOVING_AVERAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.movingAverage);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.movingAverage);
+      return writer.buffer();
     }
 
     return null;
@@ -258,7 +274,7 @@ public final static String DEVICE_DISPLAY_NAME = "Dust Detector Bricklet";
 
   private Buffer getMovingAverageDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -266,16 +282,16 @@ public final static String DEVICE_DISPLAY_NAME = "Dust Detector Bricklet";
    * 
    */
   private Buffer getDustDensityCallbackThreshold(Packet packet) {
-    logger.debug("function getDustDensityCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDustDensityCallbackThreshold");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 5;
       byte functionId = FUNCTION_GET_DUST_DENSITY_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.dustDensityCallbackThreshold);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.dustDensityCallbackThreshold);
+      return writer.buffer();
     }
 
     return null;
@@ -283,9 +299,9 @@ public final static String DEVICE_DISPLAY_NAME = "Dust Detector Bricklet";
 
   private Buffer getDustDensityCallbackThresholdDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -293,18 +309,23 @@ public final static String DEVICE_DISPLAY_NAME = "Dust Detector Bricklet";
    * 
    */
   private Buffer setDustDensityCallbackThreshold(Packet packet) {
-    logger.debug("function setDustDensityCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDustDensityCallbackThreshold");
+    }
+    if (packet.getLength() - 8 != 5) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.dustDensityCallbackThreshold = packet.copyPayload();
+    dustDensityReachedCallback.setThreshold(this.dustDensityCallbackThreshold);
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DUST_DENSITY_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.dustDensityCallbackThreshold = packet.getPayload();
+
     return null;
   }
 
@@ -312,18 +333,23 @@ public final static String DEVICE_DISPLAY_NAME = "Dust Detector Bricklet";
    * 
    */
   private Buffer setDebouncePeriod(Packet packet) {
-    logger.debug("function setDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDebouncePeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.debouncePeriod = packet.copyPayload();
+    dustDensityReachedCallback.setDebounce(Utils.decodeUInt32(this.debouncePeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.debouncePeriod = packet.getPayload();
+
     return null;
   }
 
@@ -331,18 +357,23 @@ public final static String DEVICE_DISPLAY_NAME = "Dust Detector Bricklet";
    * 
    */
   private Buffer setDustDensityCallbackPeriod(Packet packet) {
-    logger.debug("function setDustDensityCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDustDensityCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.dustDensityCallbackPeriod = packet.copyPayload();
+    dustDensityCallback.setPeriod(Utils.decodeUInt32(this.dustDensityCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DUST_DENSITY_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.dustDensityCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -350,18 +381,22 @@ public final static String DEVICE_DISPLAY_NAME = "Dust Detector Bricklet";
    * 
    */
   private Buffer setMovingAverage(Packet packet) {
-    logger.debug("function setMovingAverage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setMovingAverage");
+    }
+    if (packet.getLength() - 8 != 1) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.movingAverage = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_MOVING_AVERAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.movingAverage = packet.getPayload();
+
     return null;
   }
 
@@ -369,16 +404,16 @@ public final static String DEVICE_DISPLAY_NAME = "Dust Detector Bricklet";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
@@ -23,25 +23,28 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.callbacks.CallbackScheduler;
+import org.m1theo.tfemulator.callbacks.PeriodicCallback;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * Determine position, velocity and altitude using GPS
  */
-public class BrickletGPS extends AbstractVerticle {
+public class BrickletGPS extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 222;
 public final static String DEVICE_DISPLAY_NAME = "GPS Bricklet";
@@ -82,6 +85,16 @@ public final static String DEVICE_DISPLAY_NAME = "GPS Bricklet";
   private Buffer altitudeCallbackPeriod = getAltitudeCallbackPeriodDefault();
   private Buffer statusCallbackPeriod = getStatusCallbackPeriodDefault();
   private Buffer motionCallbackPeriod = getMotionCallbackPeriodDefault();
+  private ValueSource[] dateTimeValues;
+  private ValueSource[] statusValues;
+  private ValueSource[] motionValues;
+  private ValueSource[] altitudeValues;
+  private ValueSource[] coordinatesValues;
+  private PeriodicCallback coordinatesCallback;
+  private PeriodicCallback statusCallback;
+  private PeriodicCallback altitudeCallback;
+  private PeriodicCallback motionCallback;
+  private PeriodicCallback dateTimeCallback;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -96,106 +109,141 @@ public final static String DEVICE_DISPLAY_NAME = "GPS Bricklet";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletGPS.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
-
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    Router router = router();
+
+    dateTimeValues = valueSources("dateTime", 2);
+    statusValues = valueSources("status", 3);
+    motionValues = valueSources("motion", 2);
+    altitudeValues = valueSources("altitude", 2);
+    coordinatesValues = valueSources("coordinates", 8);
+
+    CallbackScheduler scheduler = CallbackScheduler.get(vertx);
+    coordinatesCallback = scheduler.newCallback(router, uidBytes, CALLBACK_COORDINATES, 8 + 18, out -> {
+      out.writeUInt32((long) coordinatesValues[0].next(), 1);
+      out.writeChar(Utils.getDefaultChar(), 1);
+      out.writeUInt32((long) coordinatesValues[2].next(), 1);
+      out.writeChar(Utils.getDefaultChar(), 1);
+      out.writeUInt16((int) coordinatesValues[4].next(), 1);
+      out.writeUInt16((int) coordinatesValues[5].next(), 1);
+      out.writeUInt16((int) coordinatesValues[6].next(), 1);
+      out.writeUInt16((int) coordinatesValues[7].next(), 1);
+    });
+    statusCallback = scheduler.newCallback(router, uidBytes, CALLBACK_STATUS, 8 + 3, out -> {
+      out.writeUInt8((short) statusValues[0].next(), 1);
+      out.writeUInt8((short) statusValues[1].next(), 1);
+      out.writeUInt8((short) statusValues[2].next(), 1);
+    });
+    altitudeCallback = scheduler.newCallback(router, uidBytes, CALLBACK_ALTITUDE, 8 + 8, out -> {
+      out.writeUInt32((long) altitudeValues[0].next(), 1);
+      out.writeUInt32((long) altitudeValues[1].next(), 1);
+    });
+    motionCallback = scheduler.newCallback(router, uidBytes, CALLBACK_MOTION, 8 + 8, out -> {
+      out.writeUInt32((long) motionValues[0].next(), 1);
+      out.writeUInt32((long) motionValues[1].next(), 1);
+    });
+    dateTimeCallback = scheduler.newCallback(router, uidBytes, CALLBACK_DATE_TIME, 8 + 8, out -> {
+      out.writeUInt32((long) dateTimeValues[0].next(), 1);
+      out.writeUInt32((long) dateTimeValues[1].next(), 1);
+    });
+
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
 
   }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    coordinatesCallback.setPeriod(0);
+    statusCallback.setPeriod(0);
+    altitudeCallback.setPeriod(0);
+    motionCallback.setPeriod(0);
+    dateTimeCallback.setPeriod(0);
+    router().unregister(uidBytes);
+  }
+
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_GET_COORDINATES) {
-      buffer = getCoordinates(packet);
-    }
-    else if (functionId == FUNCTION_GET_STATUS) {
-      buffer = getStatus(packet);
-    }
-    else if (functionId == FUNCTION_GET_ALTITUDE) {
-      buffer = getAltitude(packet);
-    }
-    else if (functionId == FUNCTION_GET_MOTION) {
-      buffer = getMotion(packet);
-    }
-    else if (functionId == FUNCTION_GET_DATE_TIME) {
-      buffer = getDateTime(packet);
-    }
-    else if (functionId == FUNCTION_RESTART) {
-      buffer = restart(packet);
-    }
-    else if (functionId == FUNCTION_SET_COORDINATES_CALLBACK_PERIOD) {
-      buffer = setCoordinatesCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_COORDINATES_CALLBACK_PERIOD) {
-      buffer = getCoordinatesCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_STATUS_CALLBACK_PERIOD) {
-      buffer = setStatusCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_STATUS_CALLBACK_PERIOD) {
-      buffer = getStatusCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_ALTITUDE_CALLBACK_PERIOD) {
-      buffer = setAltitudeCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_ALTITUDE_CALLBACK_PERIOD) {
-      buffer = getAltitudeCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_MOTION_CALLBACK_PERIOD) {
-      buffer = setMotionCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_MOTION_CALLBACK_PERIOD) {
-      buffer = getMotionCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_DATE_TIME_CALLBACK_PERIOD) {
-      buffer = setDateTimeCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_DATE_TIME_CALLBACK_PERIOD) {
-      buffer = getDateTimeCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_GET_COORDINATES:
+        buffer = getCoordinates(packet);
+        break;
+      case FUNCTION_GET_STATUS:
+        buffer = getStatus(packet);
+        break;
+      case FUNCTION_GET_ALTITUDE:
+        buffer = getAltitude(packet);
+        break;
+      case FUNCTION_GET_MOTION:
+        buffer = getMotion(packet);
+        break;
+      case FUNCTION_GET_DATE_TIME:
+        buffer = getDateTime(packet);
+        break;
+      case FUNCTION_RESTART:
+        buffer = restart(packet);
+        break;
+      case FUNCTION_SET_COORDINATES_CALLBACK_PERIOD:
+        buffer = setCoordinatesCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_COORDINATES_CALLBACK_PERIOD:
+        buffer = getCoordinatesCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_STATUS_CALLBACK_PERIOD:
+        buffer = setStatusCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_STATUS_CALLBACK_PERIOD:
+        buffer = getStatusCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_ALTITUDE_CALLBACK_PERIOD:
+        buffer = setAltitudeCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_ALTITUDE_CALLBACK_PERIOD:
+        buffer = getAltitudeCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_MOTION_CALLBACK_PERIOD:
+        buffer = setMotionCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_MOTION_CALLBACK_PERIOD:
+        buffer = getMotionCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_DATE_TIME_CALLBACK_PERIOD:
+        buffer = setDateTimeCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_DATE_TIME_CALLBACK_PERIOD:
+        buffer = getDateTimeCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -205,18 +253,18 @@ public final static String DEVICE_DISPLAY_NAME = "GPS Bricklet";
    * 
    */
   private Buffer getDateTime(Packet packet) {
-    logger.debug("function getDateTime");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDateTime");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 8;
       byte functionId = FUNCTION_GET_DATE_TIME;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt32((long) dateTimeValues[0].next(), 1);
+      writer.writeUInt32((long) dateTimeValues[1].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -226,19 +274,19 @@ public final static String DEVICE_DISPLAY_NAME = "GPS Bricklet";
    * 
    */
   private Buffer getStatus(Packet packet) {
-    logger.debug("function getStatus");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getStatus");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 3;
       byte functionId = FUNCTION_GET_STATUS;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt8((short) statusValues[0].next(), 1);
+      writer.writeUInt8((short) statusValues[1].next(), 1);
+      writer.writeUInt8((short) statusValues[2].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -248,18 +296,18 @@ public final static String DEVICE_DISPLAY_NAME = "GPS Bricklet";
    * 
    */
   private Buffer getMotion(Packet packet) {
-    logger.debug("function getMotion");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getMotion");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 8;
       byte functionId = FUNCTION_GET_MOTION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt32((long) motionValues[0].next(), 1);
+      writer.writeUInt32((long) motionValues[1].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -269,18 +317,18 @@ public final static String DEVICE_DISPLAY_NAME = "GPS Bricklet";
    * 
    */
   private Buffer getAltitude(Packet packet) {
-    logger.debug("function getAltitude");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAltitude");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 8;
       byte functionId = FUNCTION_GET_ALTITUDE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt32((long) altitudeValues[0].next(), 1);
+      writer.writeUInt32((long) altitudeValues[1].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -290,24 +338,24 @@ public final static String DEVICE_DISPLAY_NAME = "GPS Bricklet";
    * 
    */
   private Buffer getCoordinates(Packet packet) {
-    logger.debug("function getCoordinates");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getCoordinates");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 18;
       byte functionId = FUNCTION_GET_COORDINATES;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt32((long) coordinatesValues[0].next(), 1);
+      writer.writeChar(Utils.getDefaultChar(), 1);
+      writer.writeUInt32((long) coordinatesValues[2].next(), 1);
+      writer.writeChar(Utils.getDefaultChar(), 1);
+      writer.writeUInt16((int) coordinatesValues[4].next(), 1);
+      writer.writeUInt16((int) coordinatesValues[5].next(), 1);
+      writer.writeUInt16((int) coordinatesValues[6].next(), 1);
+      writer.writeUInt16((int) coordinatesValues[7].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -317,16 +365,16 @@ public final static String DEVICE_DISPLAY_NAME = "GPS Bricklet";
    * 
    */
   private Buffer getDateTimeCallbackPeriod(Packet packet) {
-    logger.debug("function getDateTimeCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDateTimeCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_DATE_TIME_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.dateTimeCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.dateTimeCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -334,7 +382,7 @@ public final static String DEVICE_DISPLAY_NAME = "GPS Bricklet";
 
   private Buffer getDateTimeCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -342,16 +390,16 @@ public final static String DEVICE_DISPLAY_NAME = "GPS Bricklet";
    * 
    */
   private Buffer getCoordinatesCallbackPeriod(Packet packet) {
-    logger.debug("function getCoordinatesCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getCoordinatesCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_COORDINATES_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.coordinatesCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.coordinatesCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -359,7 +407,7 @@ public final static String DEVICE_DISPLAY_NAME = "GPS Bricklet";
 
   private Buffer getCoordinatesCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -367,16 +415,16 @@ public final static String DEVICE_DISPLAY_NAME = "GPS Bricklet";
    * 
    */
   private Buffer getAltitudeCallbackPeriod(Packet packet) {
-    logger.debug("function getAltitudeCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAltitudeCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_ALTITUDE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.altitudeCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.altitudeCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -384,7 +432,7 @@ public final static String DEVICE_DISPLAY_NAME = "GPS Bricklet";
 
   private Buffer getAltitudeCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -392,16 +440,16 @@ public final static String DEVICE_DISPLAY_NAME = "GPS Bricklet";
    * 
    */
   private Buffer getStatusCallbackPeriod(Packet packet) {
-    logger.debug("function getStatusCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getStatusCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_STATUS_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.statusCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.statusCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -409,7 +457,7 @@ public final static String DEVICE_DISPLAY_NAME = "GPS Bricklet";
 
   private Buffer getStatusCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -417,16 +465,16 @@ public final static String DEVICE_DISPLAY_NAME = "GPS Bricklet";
    * 
    */
   private Buffer getMotionCallbackPeriod(Packet packet) {
-    logger.debug("function getMotionCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getMotionCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_MOTION_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.motionCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.motionCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -434,7 +482,7 @@ public final static String DEVICE_DISPLAY_NAME = "GPS Bricklet";
 
   private Buffer getMotionCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -442,18 +490,23 @@ public final static String DEVICE_DISPLAY_NAME = "GPS Bricklet";
    * 
    */
   private Buffer setAltitudeCallbackPeriod(Packet packet) {
-    logger.debug("function setAltitudeCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setAltitudeCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.altitudeCallbackPeriod = packet.copyPayload();
+    altitudeCallback.setPeriod(Utils.decodeUInt32(this.altitudeCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_ALTITUDE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.altitudeCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -461,18 +514,23 @@ public final static String DEVICE_DISPLAY_NAME = "GPS Bricklet";
    * 
    */
   private Buffer setStatusCallbackPeriod(Packet packet) {
-    logger.debug("function setStatusCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setStatusCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.statusCallbackPeriod = packet.copyPayload();
+    statusCallback.setPeriod(Utils.decodeUInt32(this.statusCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_STATUS_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.statusCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -480,18 +538,23 @@ public final static String DEVICE_DISPLAY_NAME = "GPS Bricklet";
    * 
    */
   private Buffer setDateTimeCallbackPeriod(Packet packet) {
-    logger.debug("function setDateTimeCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDateTimeCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.dateTimeCallbackPeriod = packet.copyPayload();
+    dateTimeCallback.setPeriod(Utils.decodeUInt32(this.dateTimeCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DATE_TIME_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.dateTimeCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -499,18 +562,23 @@ public final static String DEVICE_DISPLAY_NAME = "GPS Bricklet";
    * 
    */
   private Buffer setMotionCallbackPeriod(Packet packet) {
-    logger.debug("function setMotionCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setMotionCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.motionCallbackPeriod = packet.copyPayload();
+    motionCallback.setPeriod(Utils.decodeUInt32(this.motionCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_MOTION_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.motionCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -518,18 +586,23 @@ public final static String DEVICE_DISPLAY_NAME = "GPS Bricklet";
    * 
    */
   private Buffer setCoordinatesCallbackPeriod(Packet packet) {
-    logger.debug("function setCoordinatesCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setCoordinatesCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.coordinatesCallbackPeriod = packet.copyPayload();
+    coordinatesCallback.setPeriod(Utils.decodeUInt32(this.coordinatesCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_COORDINATES_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.coordinatesCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -537,16 +610,16 @@ public final static String DEVICE_DISPLAY_NAME = "GPS Bricklet";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
@@ -23,25 +23,30 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.callbacks.CallbackScheduler;
+import org.m1theo.tfemulator.callbacks.PeriodicCallback;
+import org.m1theo.tfemulator.callbacks.ThresholdCallback;
+import org.m1theo.tfemulator.callbacks.ValueType;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * Measures concentration of different gases
  */
-public class BrickletGasDetector extends AbstractVerticle {
+public class BrickletGasDetector extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 252;
 public final static String DEVICE_DISPLAY_NAME = "Gas Detector Bricklet";
@@ -77,6 +82,9 @@ public final static String DEVICE_DISPLAY_NAME = "Gas Detector Bricklet";
   private Buffer movingAverage = getMovingAverageDefault();
   private Buffer valueCallbackPeriod = getValueCallbackPeriodDefault();
   private Buffer valueCallbackThreshold = getValueCallbackThresholdDefault();
+  private ValueSource[] valueValues;
+  private PeriodicCallback valueCallback;
+  private ThresholdCallback valueReachedCallback;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -91,100 +99,108 @@ public final static String DEVICE_DISPLAY_NAME = "Gas Detector Bricklet";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletGasDetector.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
+    Router router = router();
+
+    valueValues = valueSources("value", 1);
 
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    CallbackScheduler scheduler = CallbackScheduler.get(vertx);
+    valueCallback = scheduler.newCallback(router, uidBytes, CALLBACK_VALUE, 8 + 2, out -> {
+      out.writeUInt16((int) valueValues[0].next(), 1);
+    });
+    valueReachedCallback = scheduler.newThresholdCallback(router, uidBytes, CALLBACK_VALUE_REACHED,
+        ValueType.UINT16, 1, values -> {
+          values[0] = (long) valueValues[0].next();
+        });
+
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
 
   }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    valueCallback.setPeriod(0);
+    valueReachedCallback.disable();
+    router().unregister(uidBytes);
+  }
+
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_GET_VALUE) {
-      buffer = getValue(packet);
-    }
-    else if (functionId == FUNCTION_SET_VALUE_CALLBACK_PERIOD) {
-      buffer = setValueCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_VALUE_CALLBACK_PERIOD) {
-      buffer = getValueCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_VALUE_CALLBACK_THRESHOLD) {
-      buffer = setValueCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_GET_VALUE_CALLBACK_THRESHOLD) {
-      buffer = getValueCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_SET_DEBOUNCE_PERIOD) {
-      buffer = setDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_DEBOUNCE_PERIOD) {
-      buffer = getDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_MOVING_AVERAGE) {
-      buffer = setMovingAverage(packet);
-    }
-    else if (functionId == FUNCTION_GET_MOVING_AVERAGE) {
-      buffer = getMovingAverage(packet);
-    }
-    else if (functionId == FUNCTION_SET_DETECTOR_TYPE) {
-      buffer = setDetectorType(packet);
-    }
-    else if (functionId == FUNCTION_GET_DETECTOR_TYPE) {
-      buffer = getDetectorType(packet);
-    }
-    else if (functionId == FUNCTION_HEATER_ON) {
-      buffer = heaterOn(packet);
-    }
-    else if (functionId == FUNCTION_HEATER_OFF) {
-      buffer = heaterOff(packet);
-    }
-    else if (functionId == FUNCTION_IS_HEATER_ON) {
-      buffer = isHeaterOn(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_GET_VALUE:
+        buffer = getValue(packet);
+        break;
+      case FUNCTION_SET_VALUE_CALLBACK_PERIOD:
+        buffer = setValueCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_VALUE_CALLBACK_PERIOD:
+        buffer = getValueCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_VALUE_CALLBACK_THRESHOLD:
+        buffer = setValueCallbackThreshold(packet);
+        break;
+      case FUNCTION_GET_VALUE_CALLBACK_THRESHOLD:
+        buffer = getValueCallbackThreshold(packet);
+        break;
+      case FUNCTION_SET_DEBOUNCE_PERIOD:
+        buffer = setDebouncePeriod(packet);
+        break;
+      case FUNCTION_GET_DEBOUNCE_PERIOD:
+        buffer = getDebouncePeriod(packet);
+        break;
+      case FUNCTION_SET_MOVING_AVERAGE:
+        buffer = setMovingAverage(packet);
+        break;
+      case FUNCTION_GET_MOVING_AVERAGE:
+        buffer = getMovingAverage(packet);
+        break;
+      case FUNCTION_SET_DETECTOR_TYPE:
+        buffer = setDetectorType(packet);
+        break;
+      case FUNCTION_GET_DETECTOR_TYPE:
+        buffer = getDetectorType(packet);
+        break;
+      case FUNCTION_HEATER_ON:
+        buffer = heaterOn(packet);
+        break;
+      case FUNCTION_HEATER_OFF:
+        buffer = heaterOff(packet);
+        break;
+      case FUNCTION_IS_HEATER_ON:
+        buffer = isHeaterOn(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -194,17 +210,17 @@ public final static String DEVICE_DISPLAY_NAME = "Gas Detector Bricklet";
    * 
    */
   private Buffer getValue(Packet packet) {
-    logger.debug("function getValue");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getValue");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_VALUE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) valueValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -214,16 +230,16 @@ public final static String DEVICE_DISPLAY_NAME = "Gas Detector Bricklet";
    * 
    */
   private Buffer getDetectorType(Packet packet) {
-    logger.debug("function getDetectorType");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDetectorType");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_DETECTOR_TYPE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.detectorType);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.detectorType);
+      return writer.buffer();
     }
 
     return null;
@@ -231,7 +247,7 @@ public final static String DEVICE_DISPLAY_NAME = "Gas Detector Bricklet";
 
   private Buffer getDetectorTypeDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -239,16 +255,16 @@ public final static String DEVICE_DISPLAY_NAME = "Gas Detector Bricklet";
    * 
    */
   private Buffer getDebouncePeriod(Packet packet) {
-    logger.debug("function getDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDebouncePeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.debouncePeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.debouncePeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -256,7 +272,7 @@ public final static String DEVICE_DISPLAY_NAME = "Gas Detector Bricklet";
 
   private Buffer getDebouncePeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -264,16 +280,16 @@ public final static String DEVICE_DISPLAY_NAME = "Gas Detector Bricklet";
    * 
    */
   private Buffer getMovingAverage(Packet packet) {
-    logger.debug("function getMovingAverage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getMovingAverage");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_MOVING_AVERAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.movingAverage);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.movingAverage);
+      return writer.buffer();
     }
 
     return null;
@@ -281,7 +297,7 @@ public final static String DEVICE_DISPLAY_NAME = "Gas Detector Bricklet";
 
   private Buffer getMovingAverageDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -289,16 +305,16 @@ public final static String DEVICE_DISPLAY_NAME = "Gas Detector Bricklet";
    * 
    */
   private Buffer getValueCallbackPeriod(Packet packet) {
-    logger.debug("function getValueCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getValueCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_VALUE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.valueCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.valueCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -306,7 +322,7 @@ public final static String DEVICE_DISPLAY_NAME = "Gas Detector Bricklet";
 
   private Buffer getValueCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -314,16 +330,16 @@ public final static String DEVICE_DISPLAY_NAME = "Gas Detector Bricklet";
    * 
    */
   private Buffer getValueCallbackThreshold(Packet packet) {
-    logger.debug("function getValueCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getValueCallbackThreshold");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 5;
       byte functionId = FUNCTION_GET_VALUE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.valueCallbackThreshold);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.valueCallbackThreshold);
+      return writer.buffer();
     }
 
     return null;
@@ -331,9 +347,9 @@ public final static String DEVICE_DISPLAY_NAME = "Gas Detector Bricklet";
 
   private Buffer getValueCallbackThresholdDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -341,18 +357,23 @@ public final static String DEVICE_DISPLAY_NAME = "Gas Detector Bricklet";
    * 
    */
   private Buffer setValueCallbackPeriod(Packet packet) {
-    logger.debug("function setValueCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setValueCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.valueCallbackPeriod = packet.copyPayload();
+    valueCallback.setPeriod(Utils.decodeUInt32(this.valueCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_VALUE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.valueCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -360,18 +381,23 @@ public final static String DEVICE_DISPLAY_NAME = "Gas Detector Bricklet";
    * 
    */
   private Buffer setDebouncePeriod(Packet packet) {
-    logger.debug("function setDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDebouncePeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.debouncePeriod = packet.copyPayload();
+    valueReachedCallback.setDebounce(Utils.decodeUInt32(this.debouncePeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.debouncePeriod = packet.getPayload();
+
     return null;
   }
 
@@ -379,18 +405,22 @@ public final static String DEVICE_DISPLAY_NAME = "Gas Detector Bricklet";
    * 
    */
   private Buffer setDetectorType(Packet packet) {
-    logger.debug("function setDetectorType");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDetectorType");
+    }
+    if (packet.getLength() - 8 != 1) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.detectorType = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DETECTOR_TYPE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.detectorType = packet.getPayload();
+
     return null;
   }
 
@@ -398,18 +428,23 @@ public final static String DEVICE_DISPLAY_NAME = "Gas Detector Bricklet";
    * 
    */
   private Buffer setValueCallbackThreshold(Packet packet) {
-    logger.debug("function setValueCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setValueCallbackThreshold");
+    }
+    if (packet.getLength() - 8 != 5) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.valueCallbackThreshold = packet.copyPayload();
+    valueReachedCallback.setThreshold(this.valueCallbackThreshold);
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_VALUE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.valueCallbackThreshold = packet.getPayload();
+
     return null;
   }
 
@@ -417,18 +452,22 @@ public final static String DEVICE_DISPLAY_NAME = "Gas Detector Bricklet";
    * 
    */
   private Buffer setMovingAverage(Packet packet) {
-    logger.debug("function setMovingAverage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setMovingAverage");
+    }
+    if (packet.getLength() - 8 != 1) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.movingAverage = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_MOVING_AVERAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.movingAverage = packet.getPayload();
+
     return null;
   }
 
@@ -436,16 +475,16 @@ public final static String DEVICE_DISPLAY_NAME = "Gas Detector Bricklet";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
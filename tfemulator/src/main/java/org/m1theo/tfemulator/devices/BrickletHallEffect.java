@@ -23,25 +23,28 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.callbacks.CallbackScheduler;
+import org.m1theo.tfemulator.callbacks.PeriodicCallback;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * Detects presence of magnetic field
  */
-public class BrickletHallEffect extends AbstractVerticle {
+public class BrickletHallEffect extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 240;
 public final static String DEVICE_DISPLAY_NAME = "Hall Effect Bricklet";
@@ -65,6 +68,8 @@ public final static String DEVICE_DISPLAY_NAME = "Hall Effect Bricklet";
   private Buffer edgeCountConfig = getEdgeCountConfigDefault();
   private Buffer edgeCountCallbackPeriod = getEdgeCountCallbackPeriodDefault();
   private Buffer edgeInterrupt = getEdgeInterruptDefault();
+  private ValueSource[] edgeCountValues;
+  private PeriodicCallback edgeCountCallback;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -79,85 +84,88 @@ public final static String DEVICE_DISPLAY_NAME = "Hall Effect Bricklet";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletHallEffect.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
-
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    Router router = router();
+
+    edgeCountValues = valueSources("edgeCount", 1);
+
+    CallbackScheduler scheduler = CallbackScheduler.get(vertx);
+    edgeCountCallback = scheduler.newCallback(router, uidBytes, CALLBACK_EDGE_COUNT, 8 + 4, out -> {
+      out.writeUInt32((long) edgeCountValues[0].next(), 1);
+    });
+
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
 
   }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    edgeCountCallback.setPeriod(0);
+    router().unregister(uidBytes);
+  }
+
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_GET_VALUE) {
-      buffer = getValue(packet);
-    }
-    else if (functionId == FUNCTION_GET_EDGE_COUNT) {
-      buffer = getEdgeCount(packet);
-    }
-    else if (functionId == FUNCTION_SET_EDGE_COUNT_CONFIG) {
-      buffer = setEdgeCountConfig(packet);
-    }
-    else if (functionId == FUNCTION_GET_EDGE_COUNT_CONFIG) {
-      buffer = getEdgeCountConfig(packet);
-    }
-    else if (functionId == FUNCTION_SET_EDGE_INTERRUPT) {
-      buffer = setEdgeInterrupt(packet);
-    }
-    else if (functionId == FUNCTION_GET_EDGE_INTERRUPT) {
-      buffer = getEdgeInterrupt(packet);
-    }
-    else if (functionId == FUNCTION_SET_EDGE_COUNT_CALLBACK_PERIOD) {
-      buffer = setEdgeCountCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_EDGE_COUNT_CALLBACK_PERIOD) {
-      buffer = getEdgeCountCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_EDGE_INTERRUPT) {
-      buffer = edgeInterrupt(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_GET_VALUE:
+        buffer = getValue(packet);
+        break;
+      case FUNCTION_GET_EDGE_COUNT:
+        buffer = getEdgeCount(packet);
+        break;
+      case FUNCTION_SET_EDGE_COUNT_CONFIG:
+        buffer = setEdgeCountConfig(packet);
+        break;
+      case FUNCTION_GET_EDGE_COUNT_CONFIG:
+        buffer = getEdgeCountConfig(packet);
+        break;
+      case FUNCTION_SET_EDGE_INTERRUPT:
+        buffer = setEdgeInterrupt(packet);
+        break;
+      case FUNCTION_GET_EDGE_INTERRUPT:
+        buffer = getEdgeInterrupt(packet);
+        break;
+      case FUNCTION_SET_EDGE_COUNT_CALLBACK_PERIOD:
+        buffer = setEdgeCountCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_EDGE_COUNT_CALLBACK_PERIOD:
+        buffer = getEdgeCountCallbackPeriod(packet);
+        break;
+      case FUNCTION_EDGE_INTERRUPT:
+        buffer = edgeInterrupt(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -167,17 +175,17 @@ public final static String DEVICE_DISPLAY_NAME = "Hall Effect Bricklet";
    * 
    */
   private Buffer getEdgeCount(Packet packet) {
-    logger.debug("function getEdgeCount");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getEdgeCount");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_EDGE_COUNT;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt32((long) edgeCountValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -187,17 +195,17 @@ public final static String DEVICE_DISPLAY_NAME = "Hall Effect Bricklet";
    * 
    */
   private Buffer getValue(Packet packet) {
-    logger.debug("function getValue");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getValue");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_VALUE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.getBoolRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBool(Utils.getDefaultBoolean(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -207,16 +215,16 @@ public final static String DEVICE_DISPLAY_NAME = "Hall Effect Bricklet";
    * 
    */
   private Buffer getEdgeCountConfig(Packet packet) {
-    logger.debug("function getEdgeCountConfig");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getEdgeCountConfig");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_EDGE_COUNT_CONFIG;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.edgeCountConfig);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.edgeCountConfig);
+      return writer.buffer();
     }
 
     return null;
@@ -224,8 +232,8 @@ public final static String DEVICE_DISPLAY_NAME = "Hall Effect Bricklet";
 
   private Buffer getEdgeCountConfigDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -233,16 +241,16 @@ public final static String DEVICE_DISPLAY_NAME = "Hall Effect Bricklet";
    * 
    */
   private Buffer getEdgeCountCallbackPeriod(Packet packet) {
-    logger.debug("function getEdgeCountCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getEdgeCountCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_EDGE_COUNT_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.edgeCountCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.edgeCountCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -250,7 +258,7 @@ public final static String DEVICE_DISPLAY_NAME = "Hall Effect Bricklet";
 
   private Buffer getEdgeCountCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -258,16 +266,16 @@ public final static String DEVICE_DISPLAY_NAME = "Hall Effect Bricklet";
    * 
    */
   private Buffer getEdgeInterrupt(Packet packet) {
-    logger.debug("function getEdgeInterrupt");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getEdgeInterrupt");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_EDGE_INTERRUPT;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.edgeInterrupt);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.edgeInterrupt);
+      return writer.buffer();
     }
 
     return null;
@@ -275,7 +283,7 @@ public final static String DEVICE_DISPLAY_NAME = "Hall Effect Bricklet";
 
   private Buffer getEdgeInterruptDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -283,18 +291,22 @@ public final static String DEVICE_DISPLAY_NAME = "Hall Effect Bricklet";
    * 
    */
   private Buffer setEdgeInterrupt(Packet packet) {
-    logger.debug("function setEdgeInterrupt");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setEdgeInterrupt");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.edgeInterrupt = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_EDGE_INTERRUPT;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.edgeInterrupt = packet.getPayload();
+
     return null;
   }
 
@@ -302,18 +314,23 @@ public final static String DEVICE_DISPLAY_NAME = "Hall Effect Bricklet";
    * 
    */
   private Buffer setEdgeCountCallbackPeriod(Packet packet) {
-    logger.debug("function setEdgeCountCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setEdgeCountCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.edgeCountCallbackPeriod = packet.copyPayload();
+    edgeCountCallback.setPeriod(Utils.decodeUInt32(this.edgeCountCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_EDGE_COUNT_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.edgeCountCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -321,18 +338,22 @@ public final static String DEVICE_DISPLAY_NAME = "Hall Effect Bricklet";
    * 
    */
   private Buffer setEdgeCountConfig(Packet packet) {
-    logger.debug("function setEdgeCountConfig");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setEdgeCountConfig");
+    }
+    if (packet.getLength() - 8 != 2) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.edgeCountConfig = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_EDGE_COUNT_CONFIG;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.edgeCountConfig = packet.getPayload();
+
     return null;
   }
 
@@ -340,16 +361,16 @@ public final static String DEVICE_DISPLAY_NAME = "Hall Effect Bricklet";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
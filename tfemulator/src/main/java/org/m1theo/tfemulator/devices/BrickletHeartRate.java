@@ -23,25 +23,30 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.callbacks.CallbackScheduler;
+import org.m1theo.tfemulator.callbacks.PeriodicCallback;
+import org.m1theo.tfemulator.callbacks.ThresholdCallback;
+import org.m1theo.tfemulator.callbacks.ValueType;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * Measures heart rate
  */
-public class BrickletHeartRate extends AbstractVerticle {
+public class BrickletHeartRate extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 245;
 public final static String DEVICE_DISPLAY_NAME = "Heart Rate Bricklet";
@@ -73,6 +78,9 @@ public final static String DEVICE_DISPLAY_NAME = "Heart Rate Bricklet";
   private Buffer debouncePeriod = getDebouncePeriodDefault();
   private Buffer heartRateCallbackThreshold = getHeartRateCallbackThresholdDefault();
   private Buffer heartRateCallbackPeriod = getHeartRateCallbackPeriodDefault();
+  private ValueSource[] heartRateValues;
+  private PeriodicCallback heartRateCallback;
+  private ThresholdCallback heartRateReachedCallback;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -87,88 +95,96 @@ public final static String DEVICE_DISPLAY_NAME = "Heart Rate Bricklet";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletHeartRate.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
+    Router router = router();
+
+    heartRateValues = valueSources("heartRate", 1);
 
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    CallbackScheduler scheduler = CallbackScheduler.get(vertx);
+    heartRateCallback = scheduler.newCallback(router, uidBytes, CALLBACK_HEART_RATE, 8 + 2, out -> {
+      out.writeUInt16((int) heartRateValues[0].next(), 1);
+    });
+    heartRateReachedCallback = scheduler.newThresholdCallback(router, uidBytes, CALLBACK_HEART_RATE_REACHED,
+        ValueType.UINT16, 1, values -> {
+          values[0] = (long) heartRateValues[0].next();
+        });
+
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
 
   }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    heartRateCallback.setPeriod(0);
+    heartRateReachedCallback.disable();
+    router().unregister(uidBytes);
+  }
+
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_GET_HEART_RATE) {
-      buffer = getHeartRate(packet);
-    }
-    else if (functionId == FUNCTION_SET_HEART_RATE_CALLBACK_PERIOD) {
-      buffer = setHeartRateCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_HEART_RATE_CALLBACK_PERIOD) {
-      buffer = getHeartRateCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_HEART_RATE_CALLBACK_THRESHOLD) {
-      buffer = setHeartRateCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_GET_HEART_RATE_CALLBACK_THRESHOLD) {
-      buffer = getHeartRateCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_SET_DEBOUNCE_PERIOD) {
-      buffer = setDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_DEBOUNCE_PERIOD) {
-      buffer = getDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_ENABLE_BEAT_STATE_CHANGED_CALLBACK) {
-      buffer = enableBeatStateChangedCallback(packet);
-    }
-    else if (functionId == FUNCTION_DISABLE_BEAT_STATE_CHANGED_CALLBACK) {
-      buffer = disableBeatStateChangedCallback(packet);
-    }
-    else if (functionId == FUNCTION_IS_BEAT_STATE_CHANGED_CALLBACK_ENABLED) {
-      buffer = isBeatStateChangedCallbackEnabled(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_GET_HEART_RATE:
+        buffer = getHeartRate(packet);
+        break;
+      case FUNCTION_SET_HEART_RATE_CALLBACK_PERIOD:
+        buffer = setHeartRateCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_HEART_RATE_CALLBACK_PERIOD:
+        buffer = getHeartRateCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_HEART_RATE_CALLBACK_THRESHOLD:
+        buffer = setHeartRateCallbackThreshold(packet);
+        break;
+      case FUNCTION_GET_HEART_RATE_CALLBACK_THRESHOLD:
+        buffer = getHeartRateCallbackThreshold(packet);
+        break;
+      case FUNCTION_SET_DEBOUNCE_PERIOD:
+        buffer = setDebouncePeriod(packet);
+        break;
+      case FUNCTION_GET_DEBOUNCE_PERIOD:
+        buffer = getDebouncePeriod(packet);
+        break;
+      case FUNCTION_ENABLE_BEAT_STATE_CHANGED_CALLBACK:
+        buffer = enableBeatStateChangedCallback(packet);
+        break;
+      case FUNCTION_DISABLE_BEAT_STATE_CHANGED_CALLBACK:
+        buffer = disableBeatStateChangedCallback(packet);
+        break;
+      case FUNCTION_IS_BEAT_STATE_CHANGED_CALLBACK_ENABLED:
+        buffer = isBeatStateChangedCallbackEnabled(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -178,17 +194,17 @@ public final static String DEVICE_DISPLAY_NAME = "Heart Rate Bricklet";
    * 
    */
   private Buffer getHeartRate(Packet packet) {
-    logger.debug("function getHeartRate");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getHeartRate");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_HEART_RATE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) heartRateValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -198,16 +214,16 @@ public final static String DEVICE_DISPLAY_NAME = "Heart Rate Bricklet";
    * 
    */
   private Buffer isBeatStateChangedCallbackEnabled(Packet packet) {
-    logger.debug("function isBeatStateChangedCallbackEnabled");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function isBeatStateChangedCallbackEnabled");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_IS_BEAT_STATE_CHANGED_CALLBACK_ENABLED;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.BeatStateChangedCallback);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.BeatStateChangedCallback);
+      return writer.buffer();
     }
 
     return null;
@@ -215,7 +231,7 @@ public final static String DEVICE_DISPLAY_NAME = "Heart Rate Bricklet";
 
   private Buffer isBeatStateChangedCallbackEnabledDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getBoolRandomValue(1));        
+      buffer.appendBytes(Utils.getBoolDefaultValue(1));        
       return buffer;
   }
 
@@ -223,16 +239,16 @@ public final static String DEVICE_DISPLAY_NAME = "Heart Rate Bricklet";
    * 
    */
   private Buffer getDebouncePeriod(Packet packet) {
-    logger.debug("function getDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDebouncePeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.debouncePeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.debouncePeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -240,7 +256,7 @@ public final static String DEVICE_DISPLAY_NAME = "Heart Rate Bricklet";
 
   private Buffer getDebouncePeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -248,16 +264,16 @@ public final static String DEVICE_DISPLAY_NAME = "Heart Rate Bricklet";
    * 
    */
   private Buffer getHeartRateCallbackThreshold(Packet packet) {
-    logger.debug("function getHeartRateCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getHeartRateCallbackThreshold");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 5;
       byte functionId = FUNCTION_GET_HEART_RATE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.heartRateCallbackThreshold);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.heartRateCallbackThreshold);
+      return writer.buffer();
     }
 
     return null;
@@ -265,9 +281,9 @@ public final static String DEVICE_DISPLAY_NAME = "Heart Rate Bricklet";
 
   private Buffer getHeartRateCallbackThresholdDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -275,16 +291,16 @@ public final static String DEVICE_DISPLAY_NAME = "Heart Rate Bricklet";
    * 
    */
   private Buffer getHeartRateCallbackPeriod(Packet packet) {
-    logger.debug("function getHeartRateCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getHeartRateCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_HEART_RATE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.heartRateCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.heartRateCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -292,7 +308,7 @@ public final static String DEVICE_DISPLAY_NAME = "Heart Rate Bricklet";
 
   private Buffer getHeartRateCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -300,18 +316,22 @@ public final static String DEVICE_DISPLAY_NAME = "Heart Rate Bricklet";
    * 
    */
   private Buffer disableBeatStateChangedCallback(Packet packet) {
-    logger.debug("function disableBeatStateChangedCallback");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function disableBeatStateChangedCallback");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.BeatStateChangedCallback = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_DISABLE_BEAT_STATE_CHANGED_CALLBACK;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.BeatStateChangedCallback = packet.getPayload();
+
     return null;
   }
 
@@ -319,18 +339,23 @@ public final static String DEVICE_DISPLAY_NAME = "Heart Rate Bricklet";
    * 
    */
   private Buffer setHeartRateCallbackThreshold(Packet packet) {
-    logger.debug("function setHeartRateCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setHeartRateCallbackThreshold");
+    }
+    if (packet.getLength() - 8 != 5) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.heartRateCallbackThreshold = packet.copyPayload();
+    heartRateReachedCallback.setThreshold(this.heartRateCallbackThreshold);
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_HEART_RATE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.heartRateCallbackThreshold = packet.getPayload();
+
     return null;
   }
 
@@ -338,18 +363,23 @@ public final static String DEVICE_DISPLAY_NAME = "Heart Rate Bricklet";
    * 
    */
   private Buffer setHeartRateCallbackPeriod(Packet packet) {
-    logger.debug("function setHeartRateCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setHeartRateCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.heartRateCallbackPeriod = packet.copyPayload();
+    heartRateCallback.setPeriod(Utils.decodeUInt32(this.heartRateCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_HEART_RATE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.heartRateCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -357,18 +387,22 @@ public final static String DEVICE_DISPLAY_NAME = "Heart Rate Bricklet";
    * 
    */
   private Buffer enableBeatStateChangedCallback(Packet packet) {
-    logger.debug("function enableBeatStateChangedCallback");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function enableBeatStateChangedCallback");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.BeatStateChangedCallback = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_ENABLE_BEAT_STATE_CHANGED_CALLBACK;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.BeatStateChangedCallback = packet.getPayload();
+
     return null;
   }
 
@@ -376,18 +410,23 @@ public final static String DEVICE_DISPLAY_NAME = "Heart Rate Bricklet";
    * 
    */
   private Buffer setDebouncePeriod(Packet packet) {
-    logger.debug("function setDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDebouncePeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.debouncePeriod = packet.copyPayload();
+    heartRateReachedCallback.setDebounce(Utils.decodeUInt32(this.debouncePeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.debouncePeriod = packet.getPayload();
+
     return null;
   }
 
@@ -395,16 +434,16 @@ public final static String DEVICE_DISPLAY_NAME = "Heart Rate Bricklet";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
@@ -23,25 +23,26 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * 16-channel digital input/output
  */
-public class BrickletIO16 extends AbstractVerticle {
+public class BrickletIO16 extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 28;
 public final static String DEVICE_DISPLAY_NAME = "IO-16 Bricklet";
@@ -76,6 +77,7 @@ public final static String DEVICE_DISPLAY_NAME = "IO-16 Bricklet";
   private Buffer portConfiguration = getPortConfigurationDefault();
   private Buffer port = getPortDefault();
   private Buffer debouncePeriod = getDebouncePeriodDefault();
+  private ValueSource[] edgeCountValues;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -90,100 +92,97 @@ public final static String DEVICE_DISPLAY_NAME = "IO-16 Bricklet";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletIO16.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
-
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    Router router = router();
+
+    edgeCountValues = valueSources("edgeCount", 1);
+
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
+
+  }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    router().unregister(uidBytes);
   }
 
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_SET_PORT) {
-      buffer = setPort(packet);
-    }
-    else if (functionId == FUNCTION_GET_PORT) {
-      buffer = getPort(packet);
-    }
-    else if (functionId == FUNCTION_SET_PORT_CONFIGURATION) {
-      buffer = setPortConfiguration(packet);
-    }
-    else if (functionId == FUNCTION_GET_PORT_CONFIGURATION) {
-      buffer = getPortConfiguration(packet);
-    }
-    else if (functionId == FUNCTION_SET_DEBOUNCE_PERIOD) {
-      buffer = setDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_DEBOUNCE_PERIOD) {
-      buffer = getDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_PORT_INTERRUPT) {
-      buffer = setPortInterrupt(packet);
-    }
-    else if (functionId == FUNCTION_GET_PORT_INTERRUPT) {
-      buffer = getPortInterrupt(packet);
-    }
-    else if (functionId == FUNCTION_SET_PORT_MONOFLOP) {
-      buffer = setPortMonoflop(packet);
-    }
-    else if (functionId == FUNCTION_GET_PORT_MONOFLOP) {
-      buffer = getPortMonoflop(packet);
-    }
-    else if (functionId == FUNCTION_SET_SELECTED_VALUES) {
-      buffer = setSelectedValues(packet);
-    }
-    else if (functionId == FUNCTION_GET_EDGE_COUNT) {
-      buffer = getEdgeCount(packet);
-    }
-    else if (functionId == FUNCTION_SET_EDGE_COUNT_CONFIG) {
-      buffer = setEdgeCountConfig(packet);
-    }
-    else if (functionId == FUNCTION_GET_EDGE_COUNT_CONFIG) {
-      buffer = getEdgeCountConfig(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_SET_PORT:
+        buffer = setPort(packet);
+        break;
+      case FUNCTION_GET_PORT:
+        buffer = getPort(packet);
+        break;
+      case FUNCTION_SET_PORT_CONFIGURATION:
+        buffer = setPortConfiguration(packet);
+        break;
+      case FUNCTION_GET_PORT_CONFIGURATION:
+        buffer = getPortConfiguration(packet);
+        break;
+      case FUNCTION_SET_DEBOUNCE_PERIOD:
+        buffer = setDebouncePeriod(packet);
+        break;
+      case FUNCTION_GET_DEBOUNCE_PERIOD:
+        buffer = getDebouncePeriod(packet);
+        break;
+      case FUNCTION_SET_PORT_INTERRUPT:
+        buffer = setPortInterrupt(packet);
+        break;
+      case FUNCTION_GET_PORT_INTERRUPT:
+        buffer = getPortInterrupt(packet);
+        break;
+      case FUNCTION_SET_PORT_MONOFLOP:
+        buffer = setPortMonoflop(packet);
+        break;
+      case FUNCTION_GET_PORT_MONOFLOP:
+        buffer = getPortMonoflop(packet);
+        break;
+      case FUNCTION_SET_SELECTED_VALUES:
+        buffer = setSelectedValues(packet);
+        break;
+      case FUNCTION_GET_EDGE_COUNT:
+        buffer = getEdgeCount(packet);
+        break;
+      case FUNCTION_SET_EDGE_COUNT_CONFIG:
+        buffer = setEdgeCountConfig(packet);
+        break;
+      case FUNCTION_GET_EDGE_COUNT_CONFIG:
+        buffer = getEdgeCountConfig(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -193,17 +192,17 @@ public final static String DEVICE_DISPLAY_NAME = "IO-16 Bricklet";
    * 
    */
   private Buffer getEdgeCount(Packet packet) {
-    logger.debug("function getEdgeCount");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getEdgeCount");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_EDGE_COUNT;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt32((long) edgeCountValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -213,16 +212,16 @@ public final static String DEVICE_DISPLAY_NAME = "IO-16 Bricklet";
    * 
    */
   private Buffer getEdgeCountConfig(Packet packet) {
-    logger.debug("function getEdgeCountConfig");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getEdgeCountConfig");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_EDGE_COUNT_CONFIG;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.edgeCountConfig);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.edgeCountConfig);
+      return writer.buffer();
     }
 
     return null;
@@ -230,8 +229,8 @@ public final static String DEVICE_DISPLAY_NAME = "IO-16 Bricklet";
 
   private Buffer getEdgeCountConfigDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -239,16 +238,16 @@ public final static String DEVICE_DISPLAY_NAME = "IO-16 Bricklet";
    * 
    */
   private Buffer getPortInterrupt(Packet packet) {
-    logger.debug("function getPortInterrupt");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getPortInterrupt");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_PORT_INTERRUPT;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.portInterrupt);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.portInterrupt);
+      return writer.buffer();
     }
 
     return null;
@@ -256,7 +255,7 @@ public final static String DEVICE_DISPLAY_NAME = "IO-16 Bricklet";
 
   private Buffer getPortInterruptDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -264,16 +263,16 @@ public final static String DEVICE_DISPLAY_NAME = "IO-16 Bricklet";
    * 
    */
   private Buffer getPortMonoflop(Packet packet) {
-    logger.debug("function getPortMonoflop");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getPortMonoflop");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 9;
       byte functionId = FUNCTION_GET_PORT_MONOFLOP;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.portMonoflop);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.portMonoflop);
+      return writer.buffer();
     }
 
     return null;
@@ -281,9 +280,9 @@ public final static String DEVICE_DISPLAY_NAME = "IO-16 Bricklet";
 
   private Buffer getPortMonoflopDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -291,16 +290,16 @@ public final static String DEVICE_DISPLAY_NAME = "IO-16 Bricklet";
    * 
    */
   private Buffer getPortConfiguration(Packet packet) {
-    logger.debug("function getPortConfiguration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getPortConfiguration");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_PORT_CONFIGURATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.portConfiguration);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.portConfiguration);
+      return writer.buffer();
     }
 
     return null;
@@ -308,8 +307,8 @@ public final static String DEVICE_DISPLAY_NAME = "IO-16 Bricklet";
 
   private Buffer getPortConfigurationDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -317,16 +316,16 @@ public final static String DEVICE_DISPLAY_NAME = "IO-16 Bricklet";
    * 
    */
   private Buffer getPort(Packet packet) {
-    logger.debug("function getPort");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getPort");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_PORT;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.port);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.port);
+      return writer.buffer();
     }
 
     return null;
@@ -334,7 +333,7 @@ public final static String DEVICE_DISPLAY_NAME = "IO-16 Bricklet";
 
   private Buffer getPortDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -342,16 +341,16 @@ public final static String DEVICE_DISPLAY_NAME = "IO-16 Bricklet";
    * 
    */
   private Buffer getDebouncePeriod(Packet packet) {
-    logger.debug("function getDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDebouncePeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.debouncePeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.debouncePeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -359,7 +358,7 @@ public final static String DEVICE_DISPLAY_NAME = "IO-16 Bricklet";
 
   private Buffer getDebouncePeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -367,18 +366,22 @@ public final static String DEVICE_DISPLAY_NAME = "IO-16 Bricklet";
    * 
    */
   private Buffer setPortInterrupt(Packet packet) {
-    logger.debug("function setPortInterrupt");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setPortInterrupt");
+    }
+    if (packet.getLength() - 8 != 2) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.portInterrupt = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_PORT_INTERRUPT;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.portInterrupt = packet.getPayload();
+
     return null;
   }
 
@@ -386,18 +389,22 @@ public final static String DEVICE_DISPLAY_NAME = "IO-16 Bricklet";
    * 
    */
   private Buffer setPortMonoflop(Packet packet) {
-    logger.debug("function setPortMonoflop");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setPortMonoflop");
+    }
+    if (packet.getLength() - 8 != 7) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.portMonoflop = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_PORT_MONOFLOP;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.portMonoflop = packet.getPayload();
+
     return null;
   }
 
@@ -405,18 +412,22 @@ public final static String DEVICE_DISPLAY_NAME = "IO-16 Bricklet";
    * 
    */
   private Buffer setPortConfiguration(Packet packet) {
-    logger.debug("function setPortConfiguration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setPortConfiguration");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.portConfiguration = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_PORT_CONFIGURATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.portConfiguration = packet.getPayload();
+
     return null;
   }
 
@@ -424,18 +435,22 @@ public final static String DEVICE_DISPLAY_NAME = "IO-16 Bricklet";
    * 
    */
   private Buffer setEdgeCountConfig(Packet packet) {
-    logger.debug("function setEdgeCountConfig");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setEdgeCountConfig");
+    }
+    if (packet.getLength() - 8 != 3) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.edgeCountConfig = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_EDGE_COUNT_CONFIG;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.edgeCountConfig = packet.getPayload();
+
     return null;
   }
 
@@ -443,18 +458,22 @@ public final static String DEVICE_DISPLAY_NAME = "IO-16 Bricklet";
    * 
    */
   private Buffer setPort(Packet packet) {
-    logger.debug("function setPort");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setPort");
+    }
+    if (packet.getLength() - 8 != 2) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.port = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_PORT;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.port = packet.getPayload();
+
     return null;
   }
 
@@ -462,18 +481,22 @@ public final static String DEVICE_DISPLAY_NAME = "IO-16 Bricklet";
    * 
    */
   private Buffer setDebouncePeriod(Packet packet) {
-    logger.debug("function setDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDebouncePeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.debouncePeriod = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.debouncePeriod = packet.getPayload();
+
     return null;
   }
 
@@ -481,16 +504,16 @@ public final static String DEVICE_DISPLAY_NAME = "IO-16 Bricklet";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
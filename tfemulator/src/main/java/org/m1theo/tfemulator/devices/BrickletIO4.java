@@ -23,25 +23,26 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * 4-channel digital input/output
  */
-public class BrickletIO4 extends AbstractVerticle {
+public class BrickletIO4 extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 29;
 public final static String DEVICE_DISPLAY_NAME = "IO-4 Bricklet";
@@ -76,6 +77,7 @@ public final static String DEVICE_DISPLAY_NAME = "IO-4 Bricklet";
   private Buffer interrupt = getInterruptDefault();
   private Buffer debouncePeriod = getDebouncePeriodDefault();
   private Buffer value = getValueDefault();
+  private ValueSource[] edgeCountValues;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -90,100 +92,97 @@ public final static String DEVICE_DISPLAY_NAME = "IO-4 Bricklet";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletIO4.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
-
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    Router router = router();
+
+    edgeCountValues = valueSources("edgeCount", 1);
+
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
+
+  }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    router().unregister(uidBytes);
   }
 
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_SET_VALUE) {
-      buffer = setValue(packet);
-    }
-    else if (functionId == FUNCTION_GET_VALUE) {
-      buffer = getValue(packet);
-    }
-    else if (functionId == FUNCTION_SET_CONFIGURATION) {
-      buffer = setConfiguration(packet);
-    }
-    else if (functionId == FUNCTION_GET_CONFIGURATION) {
-      buffer = getConfiguration(packet);
-    }
-    else if (functionId == FUNCTION_SET_DEBOUNCE_PERIOD) {
-      buffer = setDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_DEBOUNCE_PERIOD) {
-      buffer = getDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_INTERRUPT) {
-      buffer = setInterrupt(packet);
-    }
-    else if (functionId == FUNCTION_GET_INTERRUPT) {
-      buffer = getInterrupt(packet);
-    }
-    else if (functionId == FUNCTION_SET_MONOFLOP) {
-      buffer = setMonoflop(packet);
-    }
-    else if (functionId == FUNCTION_GET_MONOFLOP) {
-      buffer = getMonoflop(packet);
-    }
-    else if (functionId == FUNCTION_SET_SELECTED_VALUES) {
-      buffer = setSelectedValues(packet);
-    }
-    else if (functionId == FUNCTION_GET_EDGE_COUNT) {
-      buffer = getEdgeCount(packet);
-    }
-    else if (functionId == FUNCTION_SET_EDGE_COUNT_CONFIG) {
-      buffer = setEdgeCountConfig(packet);
-    }
-    else if (functionId == FUNCTION_GET_EDGE_COUNT_CONFIG) {
-      buffer = getEdgeCountConfig(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_SET_VALUE:
+        buffer = setValue(packet);
+        break;
+      case FUNCTION_GET_VALUE:
+        buffer = getValue(packet);
+        break;
+      case FUNCTION_SET_CONFIGURATION:
+        buffer = setConfiguration(packet);
+        break;
+      case FUNCTION_GET_CONFIGURATION:
+        buffer = getConfiguration(packet);
+        break;
+      case FUNCTION_SET_DEBOUNCE_PERIOD:
+        buffer = setDebouncePeriod(packet);
+        break;
+      case FUNCTION_GET_DEBOUNCE_PERIOD:
+        buffer = getDebouncePeriod(packet);
+        break;
+      case FUNCTION_SET_INTERRUPT:
+        buffer = setInterrupt(packet);
+        break;
+      case FUNCTION_GET_INTERRUPT:
+        buffer = getInterrupt(packet);
+        break;
+      case FUNCTION_SET_MONOFLOP:
+        buffer = setMonoflop(packet);
+        break;
+      case FUNCTION_GET_MONOFLOP:
+        buffer = getMonoflop(packet);
+        break;
+      case FUNCTION_SET_SELECTED_VALUES:
+        buffer = setSelectedValues(packet);
+        break;
+      case FUNCTION_GET_EDGE_COUNT:
+        buffer = getEdgeCount(packet);
+        break;
+      case FUNCTION_SET_EDGE_COUNT_CONFIG:
+        buffer = setEdgeCountConfig(packet);
+        break;
+      case FUNCTION_GET_EDGE_COUNT_CONFIG:
+        buffer = getEdgeCountConfig(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -193,17 +192,17 @@ public final static String DEVICE_DISPLAY_NAME = "IO-4 Bricklet";
    * 
    */
   private Buffer getEdgeCount(Packet packet) {
-    logger.debug("function getEdgeCount");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getEdgeCount");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_EDGE_COUNT;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt32((long) edgeCountValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -213,16 +212,16 @@ public final static String DEVICE_DISPLAY_NAME = "IO-4 Bricklet";
    * 
    */
   private Buffer getEdgeCountConfig(Packet packet) {
-    logger.debug("function getEdgeCountConfig");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getEdgeCountConfig");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_EDGE_COUNT_CONFIG;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.edgeCountConfig);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.edgeCountConfig);
+      return writer.buffer();
     }
 
     return null;
@@ -230,8 +229,8 @@ public final static String DEVICE_DISPLAY_NAME = "IO-4 Bricklet";
 
   private Buffer getEdgeCountConfigDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -239,16 +238,16 @@ public final static String DEVICE_DISPLAY_NAME = "IO-4 Bricklet";
    * 
    */
   private Buffer getConfiguration(Packet packet) {
-    logger.debug("function getConfiguration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getConfiguration");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_CONFIGURATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.configuration);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.configuration);
+      return writer.buffer();
     }
 
     return null;
@@ -256,8 +255,8 @@ public final static String DEVICE_DISPLAY_NAME = "IO-4 Bricklet";
 
   private Buffer getConfigurationDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -265,16 +264,16 @@ public final static String DEVICE_DISPLAY_NAME = "IO-4 Bricklet";
    * 
    */
   private Buffer getMonoflop(Packet packet) {
-    logger.debug("function getMonoflop");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getMonoflop");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 9;
       byte functionId = FUNCTION_GET_MONOFLOP;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.monoflop);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.monoflop);
+      return writer.buffer();
     }
 
     return null;
@@ -282,9 +281,9 @@ public final static String DEVICE_DISPLAY_NAME = "IO-4 Bricklet";
 
   private Buffer getMonoflopDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -292,16 +291,16 @@ public final static String DEVICE_DISPLAY_NAME = "IO-4 Bricklet";
    * 
    */
   private Buffer getInterrupt(Packet packet) {
-    logger.debug("function getInterrupt");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getInterrupt");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_INTERRUPT;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.interrupt);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.interrupt);
+      return writer.buffer();
     }
 
     return null;
@@ -309,7 +308,7 @@ public final static String DEVICE_DISPLAY_NAME = "IO-4 Bricklet";
 
   private Buffer getInterruptDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -317,16 +316,16 @@ public final static String DEVICE_DISPLAY_NAME = "IO-4 Bricklet";
    * 
    */
   private Buffer getDebouncePeriod(Packet packet) {
-    logger.debug("function getDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDebouncePeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.debouncePeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.debouncePeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -334,7 +333,7 @@ public final static String DEVICE_DISPLAY_NAME = "IO-4 Bricklet";
 
   private Buffer getDebouncePeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -342,16 +341,16 @@ public final static String DEVICE_DISPLAY_NAME = "IO-4 Bricklet";
    * 
    */
   private Buffer getValue(Packet packet) {
-    logger.debug("function getValue");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getValue");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_VALUE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.value);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.value);
+      return writer.buffer();
     }
 
     return null;
@@ -359,7 +358,7 @@ public final static String DEVICE_DISPLAY_NAME = "IO-4 Bricklet";
 
   private Buffer getValueDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -367,18 +366,22 @@ public final static String DEVICE_DISPLAY_NAME = "IO-4 Bricklet";
    * 
    */
   private Buffer setValue(Packet packet) {
-    logger.debug("function setValue");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setValue");
+    }
+    if (packet.getLength() - 8 != 1) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.value = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_VALUE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.value = packet.getPayload();
+
     return null;
   }
 
@@ -386,18 +389,22 @@ public final static String DEVICE_DISPLAY_NAME = "IO-4 Bricklet";
    * 
    */
   private Buffer setEdgeCountConfig(Packet packet) {
-    logger.debug("function setEdgeCountConfig");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setEdgeCountConfig");
+    }
+    if (packet.getLength() - 8 != 3) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.edgeCountConfig = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_EDGE_COUNT_CONFIG;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.edgeCountConfig = packet.getPayload();
+
     return null;
   }
 
@@ -405,18 +412,22 @@ public final static String DEVICE_DISPLAY_NAME = "IO-4 Bricklet";
    * 
    */
   private Buffer setConfiguration(Packet packet) {
-    logger.debug("function setConfiguration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setConfiguration");
+    }
+    if (packet.getLength() - 8 != 3) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.configuration = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_CONFIGURATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.configuration = packet.getPayload();
+
     return null;
   }
 
@@ -424,18 +435,22 @@ public final static String DEVICE_DISPLAY_NAME = "IO-4 Bricklet";
    * 
    */
   private Buffer setDebouncePeriod(Packet packet) {
-    logger.debug("function setDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDebouncePeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.debouncePeriod = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.debouncePeriod = packet.getPayload();
+
     return null;
   }
 
@@ -443,18 +458,22 @@ public final static String DEVICE_DISPLAY_NAME = "IO-4 Bricklet";
    * 
    */
   private Buffer setInterrupt(Packet packet) {
-    logger.debug("function setInterrupt");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setInterrupt");
+    }
+    if (packet.getLength() - 8 != 1) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.interrupt = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_INTERRUPT;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.interrupt = packet.getPayload();
+
     return null;
   }
 
@@ -462,18 +481,22 @@ public final static String DEVICE_DISPLAY_NAME = "IO-4 Bricklet";
    * 
    */
   private Buffer setMonoflop(Packet packet) {
-    logger.debug("function setMonoflop");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setMonoflop");
+    }
+    if (packet.getLength() - 8 != 6) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.monoflop = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_MONOFLOP;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.monoflop = packet.getPayload();
+
     return null;
   }
 
@@ -481,16 +504,16 @@ public final static String DEVICE_DISPLAY_NAME = "IO-4 Bricklet";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
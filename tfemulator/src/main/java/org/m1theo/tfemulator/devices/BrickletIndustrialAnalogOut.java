@@ -23,25 +23,25 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
 
 /**
  * Generates configurable DC voltage and current, 0V to 10V and 4mA to 20mA
  */
-public class BrickletIndustrialAnalogOut extends AbstractVerticle {
+public class BrickletIndustrialAnalogOut extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 258;
 public final static String DEVICE_DISPLAY_NAME = "Industrial Analog Out Bricklet";
@@ -81,85 +81,80 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Analog Out Bricklet
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletIndustrialAnalogOut.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
-
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    Router router = router();
+
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
 
   }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    router().unregister(uidBytes);
+  }
+
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_ENABLE) {
-      buffer = enable(packet);
-    }
-    else if (functionId == FUNCTION_DISABLE) {
-      buffer = disable(packet);
-    }
-    else if (functionId == FUNCTION_IS_ENABLED) {
-      buffer = isEnabled(packet);
-    }
-    else if (functionId == FUNCTION_SET_VOLTAGE) {
-      buffer = setVoltage(packet);
-    }
-    else if (functionId == FUNCTION_GET_VOLTAGE) {
-      buffer = getVoltage(packet);
-    }
-    else if (functionId == FUNCTION_SET_CURRENT) {
-      buffer = setCurrent(packet);
-    }
-    else if (functionId == FUNCTION_GET_CURRENT) {
-      buffer = getCurrent(packet);
-    }
-    else if (functionId == FUNCTION_SET_CONFIGURATION) {
-      buffer = setConfiguration(packet);
-    }
-    else if (functionId == FUNCTION_GET_CONFIGURATION) {
-      buffer = getConfiguration(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_ENABLE:
+        buffer = enable(packet);
+        break;
+      case FUNCTION_DISABLE:
+        buffer = disable(packet);
+        break;
+      case FUNCTION_IS_ENABLED:
+        buffer = isEnabled(packet);
+        break;
+      case FUNCTION_SET_VOLTAGE:
+        buffer = setVoltage(packet);
+        break;
+      case FUNCTION_GET_VOLTAGE:
+        buffer = getVoltage(packet);
+        break;
+      case FUNCTION_SET_CURRENT:
+        buffer = setCurrent(packet);
+        break;
+      case FUNCTION_GET_CURRENT:
+        buffer = getCurrent(packet);
+        break;
+      case FUNCTION_SET_CONFIGURATION:
+        buffer = setConfiguration(packet);
+        break;
+      case FUNCTION_GET_CONFIGURATION:
+        buffer = getConfiguration(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -169,16 +164,16 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Analog Out Bricklet
    * 
    */
   private Buffer getCurrent(Packet packet) {
-    logger.debug("function getCurrent");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getCurrent");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_CURRENT;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.current);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.current);
+      return writer.buffer();
     }
 
     return null;
@@ -186,7 +181,7 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Analog Out Bricklet
 
   private Buffer getCurrentDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -194,16 +189,16 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Analog Out Bricklet
    * 
    */
   private Buffer getConfiguration(Packet packet) {
-    logger.debug("function getConfiguration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getConfiguration");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_CONFIGURATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.configuration);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.configuration);
+      return writer.buffer();
     }
 
     return null;
@@ -211,8 +206,8 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Analog Out Bricklet
 
   private Buffer getConfigurationDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -220,16 +215,16 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Analog Out Bricklet
    * 
    */
   private Buffer getVoltage(Packet packet) {
-    logger.debug("function getVoltage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getVoltage");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_VOLTAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.voltage);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.voltage);
+      return writer.buffer();
     }
 
     return null;
@@ -237,7 +232,7 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Analog Out Bricklet
 
   private Buffer getVoltageDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -245,16 +240,16 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Analog Out Bricklet
    * 
    */
   private Buffer isEnabled(Packet packet) {
-    logger.debug("function isEnabled");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function isEnabled");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_IS_ENABLED;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.enabled);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.enabled);
+      return writer.buffer();
     }
 
     return null;
@@ -262,7 +257,7 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Analog Out Bricklet
 
   private Buffer isEnabledDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getBoolRandomValue(1));        
+      buffer.appendBytes(Utils.getBoolDefaultValue(1));        
       return buffer;
   }
 
@@ -270,18 +265,22 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Analog Out Bricklet
    * 
    */
   private Buffer setVoltage(Packet packet) {
-    logger.debug("function setVoltage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setVoltage");
+    }
+    if (packet.getLength() - 8 != 2) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.voltage = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_VOLTAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.voltage = packet.getPayload();
+
     return null;
   }
 
@@ -289,18 +288,22 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Analog Out Bricklet
    * 
    */
   private Buffer enable(Packet packet) {
-    logger.debug("function enable");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function enable");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.enabled = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_ENABLE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.enabled = packet.getPayload();
+
     return null;
   }
 
@@ -308,18 +311,22 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Analog Out Bricklet
    * 
    */
   private Buffer disable(Packet packet) {
-    logger.debug("function disable");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function disable");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.enabled = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_DISABLE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.enabled = packet.getPayload();
+
     return null;
   }
 
@@ -327,18 +334,22 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Analog Out Bricklet
    * 
    */
   private Buffer setCurrent(Packet packet) {
-    logger.debug("function setCurrent");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setCurrent");
+    }
+    if (packet.getLength() - 8 != 2) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.current = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_CURRENT;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.current = packet.getPayload();
+
     return null;
   }
 
@@ -346,18 +357,22 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Analog Out Bricklet
    * 
    */
   private Buffer setConfiguration(Packet packet) {
-    logger.debug("function setConfiguration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setConfiguration");
+    }
+    if (packet.getLength() - 8 != 2) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.configuration = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_CONFIGURATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.configuration = packet.getPayload();
+
     return null;
   }
 
@@ -365,16 +380,16 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Analog Out Bricklet
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
@@ -23,25 +23,26 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * 4 galvanically isolated digital inputs
  */
-public class BrickletIndustrialDigitalIn4 extends AbstractVerticle {
+public class BrickletIndustrialDigitalIn4 extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 223;
 public final static String DEVICE_DISPLAY_NAME = "Industrial Digital In 4 Bricklet";
@@ -68,6 +69,9 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Digital In 4 Brickl
   private Buffer interrupt = getInterruptDefault();
   private Buffer debouncePeriod = getDebouncePeriodDefault();
   private Buffer group = getGroupDefault();
+  private ValueSource[] availableForGroupValues;
+  private ValueSource[] edgeCountValues;
+  private ValueSource[] valueValues;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -82,91 +86,90 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Digital In 4 Brickl
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletIndustrialDigitalIn4.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
-
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    Router router = router();
+
+    availableForGroupValues = valueSources("availableForGroup", 1);
+    edgeCountValues = valueSources("edgeCount", 1);
+    valueValues = valueSources("value", 1);
+
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
 
   }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    router().unregister(uidBytes);
+  }
+
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_GET_VALUE) {
-      buffer = getValue(packet);
-    }
-    else if (functionId == FUNCTION_SET_GROUP) {
-      buffer = setGroup(packet);
-    }
-    else if (functionId == FUNCTION_GET_GROUP) {
-      buffer = getGroup(packet);
-    }
-    else if (functionId == FUNCTION_GET_AVAILABLE_FOR_GROUP) {
-      buffer = getAvailableForGroup(packet);
-    }
-    else if (functionId == FUNCTION_SET_DEBOUNCE_PERIOD) {
-      buffer = setDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_DEBOUNCE_PERIOD) {
-      buffer = getDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_INTERRUPT) {
-      buffer = setInterrupt(packet);
-    }
-    else if (functionId == FUNCTION_GET_INTERRUPT) {
-      buffer = getInterrupt(packet);
-    }
-    else if (functionId == FUNCTION_GET_EDGE_COUNT) {
-      buffer = getEdgeCount(packet);
-    }
-    else if (functionId == FUNCTION_SET_EDGE_COUNT_CONFIG) {
-      buffer = setEdgeCountConfig(packet);
-    }
-    else if (functionId == FUNCTION_GET_EDGE_COUNT_CONFIG) {
-      buffer = getEdgeCountConfig(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_GET_VALUE:
+        buffer = getValue(packet);
+        break;
+      case FUNCTION_SET_GROUP:
+        buffer = setGroup(packet);
+        break;
+      case FUNCTION_GET_GROUP:
+        buffer = getGroup(packet);
+        break;
+      case FUNCTION_GET_AVAILABLE_FOR_GROUP:
+        buffer = getAvailableForGroup(packet);
+        break;
+      case FUNCTION_SET_DEBOUNCE_PERIOD:
+        buffer = setDebouncePeriod(packet);
+        break;
+      case FUNCTION_GET_DEBOUNCE_PERIOD:
+        buffer = getDebouncePeriod(packet);
+        break;
+      case FUNCTION_SET_INTERRUPT:
+        buffer = setInterrupt(packet);
+        break;
+      case FUNCTION_GET_INTERRUPT:
+        buffer = getInterrupt(packet);
+        break;
+      case FUNCTION_GET_EDGE_COUNT:
+        buffer = getEdgeCount(packet);
+        break;
+      case FUNCTION_SET_EDGE_COUNT_CONFIG:
+        buffer = setEdgeCountConfig(packet);
+        break;
+      case FUNCTION_GET_EDGE_COUNT_CONFIG:
+        buffer = getEdgeCountConfig(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -176,17 +179,17 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Digital In 4 Brickl
    * 
    */
   private Buffer getAvailableForGroup(Packet packet) {
-    logger.debug("function getAvailableForGroup");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAvailableForGroup");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_AVAILABLE_FOR_GROUP;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt8((short) availableForGroupValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -196,17 +199,17 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Digital In 4 Brickl
    * 
    */
   private Buffer getEdgeCount(Packet packet) {
-    logger.debug("function getEdgeCount");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getEdgeCount");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_EDGE_COUNT;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt32((long) edgeCountValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -216,17 +219,17 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Digital In 4 Brickl
    * 
    */
   private Buffer getValue(Packet packet) {
-    logger.debug("function getValue");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getValue");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_VALUE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) valueValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -236,16 +239,16 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Digital In 4 Brickl
    * 
    */
   private Buffer getEdgeCountConfig(Packet packet) {
-    logger.debug("function getEdgeCountConfig");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getEdgeCountConfig");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_EDGE_COUNT_CONFIG;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.edgeCountConfig);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.edgeCountConfig);
+      return writer.buffer();
     }
 
     return null;
@@ -253,8 +256,8 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Digital In 4 Brickl
 
   private Buffer getEdgeCountConfigDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -262,16 +265,16 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Digital In 4 Brickl
    * 
    */
   private Buffer getInterrupt(Packet packet) {
-    logger.debug("function getInterrupt");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getInterrupt");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_INTERRUPT;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.interrupt);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.interrupt);
+      return writer.buffer();
     }
 
     return null;
@@ -279,7 +282,7 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Digital In 4 Brickl
 
   private Buffer getInterruptDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -287,16 +290,16 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Digital In 4 Brickl
    * 
    */
   private Buffer getDebouncePeriod(Packet packet) {
-    logger.debug("function getDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDebouncePeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.debouncePeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.debouncePeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -304,7 +307,7 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Digital In 4 Brickl
 
   private Buffer getDebouncePeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -312,16 +315,16 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Digital In 4 Brickl
    * 
    */
   private Buffer getGroup(Packet packet) {
-    logger.debug("function getGroup");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getGroup");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_GROUP;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.group);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.group);
+      return writer.buffer();
     }
 
     return null;
@@ -329,7 +332,7 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Digital In 4 Brickl
 
   private Buffer getGroupDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
       return buffer;
   }
 
@@ -337,18 +340,22 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Digital In 4 Brickl
    * 
    */
   private Buffer setGroup(Packet packet) {
-    logger.debug("function setGroup");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setGroup");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.group = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_GROUP;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.group = packet.getPayload();
+
     return null;
   }
 
@@ -356,18 +363,22 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Digital In 4 Brickl
    * 
    */
   private Buffer setEdgeCountConfig(Packet packet) {
-    logger.debug("function setEdgeCountConfig");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setEdgeCountConfig");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.edgeCountConfig = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_EDGE_COUNT_CONFIG;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.edgeCountConfig = packet.getPayload();
+
     return null;
   }
 
@@ -375,18 +386,22 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Digital In 4 Brickl
    * 
    */
   private Buffer setInterrupt(Packet packet) {
-    logger.debug("function setInterrupt");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setInterrupt");
+    }
+    if (packet.getLength() - 8 != 2) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.interrupt = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_INTERRUPT;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.interrupt = packet.getPayload();
+
     return null;
   }
 
@@ -394,18 +409,22 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Digital In 4 Brickl
    * 
    */
   private Buffer setDebouncePeriod(Packet packet) {
-    logger.debug("function setDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDebouncePeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.debouncePeriod = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.debouncePeriod = packet.getPayload();
+
     return null;
   }
 
@@ -413,16 +432,16 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Digital In 4 Brickl
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
@@ -23,25 +23,26 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * 4 galvanically isolated digital outputs
  */
-public class BrickletIndustrialDigitalOut4 extends AbstractVerticle {
+public class BrickletIndustrialDigitalOut4 extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 224;
 public final static String DEVICE_DISPLAY_NAME = "Industrial Digital Out 4 Bricklet";
@@ -61,6 +62,7 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Digital Out 4 Brick
   private Buffer monoflop = getMonoflopDefault();
   private Buffer group = getGroupDefault();
   private Buffer value = getValueDefault();
+  private ValueSource[] availableForGroupValues;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -75,82 +77,79 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Digital Out 4 Brick
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletIndustrialDigitalOut4.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
-
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    Router router = router();
+
+    availableForGroupValues = valueSources("availableForGroup", 1);
+
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
 
   }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    router().unregister(uidBytes);
+  }
+
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_SET_VALUE) {
-      buffer = setValue(packet);
-    }
-    else if (functionId == FUNCTION_GET_VALUE) {
-      buffer = getValue(packet);
-    }
-    else if (functionId == FUNCTION_SET_MONOFLOP) {
-      buffer = setMonoflop(packet);
-    }
-    else if (functionId == FUNCTION_GET_MONOFLOP) {
-      buffer = getMonoflop(packet);
-    }
-    else if (functionId == FUNCTION_SET_GROUP) {
-      buffer = setGroup(packet);
-    }
-    else if (functionId == FUNCTION_GET_GROUP) {
-      buffer = getGroup(packet);
-    }
-    else if (functionId == FUNCTION_GET_AVAILABLE_FOR_GROUP) {
-      buffer = getAvailableForGroup(packet);
-    }
-    else if (functionId == FUNCTION_SET_SELECTED_VALUES) {
-      buffer = setSelectedValues(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_SET_VALUE:
+        buffer = setValue(packet);
+        break;
+      case FUNCTION_GET_VALUE:
+        buffer = getValue(packet);
+        break;
+      case FUNCTION_SET_MONOFLOP:
+        buffer = setMonoflop(packet);
+        break;
+      case FUNCTION_GET_MONOFLOP:
+        buffer = getMonoflop(packet);
+        break;
+      case FUNCTION_SET_GROUP:
+        buffer = setGroup(packet);
+        break;
+      case FUNCTION_GET_GROUP:
+        buffer = getGroup(packet);
+        break;
+      case FUNCTION_GET_AVAILABLE_FOR_GROUP:
+        buffer = getAvailableForGroup(packet);
+        break;
+      case FUNCTION_SET_SELECTED_VALUES:
+        buffer = setSelectedValues(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -160,17 +159,17 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Digital Out 4 Brick
    * 
    */
   private Buffer getAvailableForGroup(Packet packet) {
-    logger.debug("function getAvailableForGroup");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAvailableForGroup");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_AVAILABLE_FOR_GROUP;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt8((short) availableForGroupValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -180,16 +179,16 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Digital Out 4 Brick
    * 
    */
   private Buffer getMonoflop(Packet packet) {
-    logger.debug("function getMonoflop");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getMonoflop");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 10;
       byte functionId = FUNCTION_GET_MONOFLOP;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.monoflop);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.monoflop);
+      return writer.buffer();
     }
 
     return null;
@@ -197,9 +196,9 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Digital Out 4 Brick
 
   private Buffer getMonoflopDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -207,16 +206,16 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Digital Out 4 Brick
    * 
    */
   private Buffer getGroup(Packet packet) {
-    logger.debug("function getGroup");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getGroup");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_GROUP;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.group);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.group);
+      return writer.buffer();
     }
 
     return null;
@@ -224,7 +223,7 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Digital Out 4 Brick
 
   private Buffer getGroupDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
       return buffer;
   }
 
@@ -232,16 +231,16 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Digital Out 4 Brick
    * 
    */
   private Buffer getValue(Packet packet) {
-    logger.debug("function getValue");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getValue");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_VALUE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.value);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.value);
+      return writer.buffer();
     }
 
     return null;
@@ -249,7 +248,7 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Digital Out 4 Brick
 
   private Buffer getValueDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -257,18 +256,22 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Digital Out 4 Brick
    * 
    */
   private Buffer setGroup(Packet packet) {
-    logger.debug("function setGroup");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setGroup");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.group = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_GROUP;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.group = packet.getPayload();
+
     return null;
   }
 
@@ -276,18 +279,22 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Digital Out 4 Brick
    * 
    */
   private Buffer setValue(Packet packet) {
-    logger.debug("function setValue");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setValue");
+    }
+    if (packet.getLength() - 8 != 2) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.value = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_VALUE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.value = packet.getPayload();
+
     return null;
   }
 
@@ -295,18 +302,22 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Digital Out 4 Brick
    * 
    */
   private Buffer setMonoflop(Packet packet) {
-    logger.debug("function setMonoflop");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setMonoflop");
+    }
+    if (packet.getLength() - 8 != 8) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.monoflop = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_MONOFLOP;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.monoflop = packet.getPayload();
+
     return null;
   }
 
@@ -314,16 +325,16 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Digital Out 4 Brick
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
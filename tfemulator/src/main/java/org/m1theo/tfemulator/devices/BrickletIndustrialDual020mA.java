@@ -23,25 +23,28 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.callbacks.CallbackScheduler;
+import org.m1theo.tfemulator.callbacks.PeriodicCallback;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * Measures two DC currents between 0mA and 20mA (IEC 60381-1)
  */
-public class BrickletIndustrialDual020mA extends AbstractVerticle {
+public class BrickletIndustrialDual020mA extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 228;
 public final static String DEVICE_DISPLAY_NAME = "Industrial Dual 0-20mA Bricklet";
@@ -73,6 +76,8 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual 0-20mA Brickle
   private Buffer debouncePeriod = getDebouncePeriodDefault();
   private Buffer currentCallbackThreshold = getCurrentCallbackThresholdDefault();
   private Buffer currentCallbackPeriod = getCurrentCallbackPeriodDefault();
+  private ValueSource[] currentValues;
+  private PeriodicCallback currentCallback;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -87,85 +92,88 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual 0-20mA Brickle
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletIndustrialDual020mA.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
-
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    Router router = router();
+
+    currentValues = valueSources("current", 1);
+
+    CallbackScheduler scheduler = CallbackScheduler.get(vertx);
+    currentCallback = scheduler.newCallback(router, uidBytes, CALLBACK_CURRENT, 8 + 4, out -> {
+      out.writeInt32((int) currentValues[0].next(), 1);
+    });
+
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
 
   }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    currentCallback.setPeriod(0);
+    router().unregister(uidBytes);
+  }
+
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_GET_CURRENT) {
-      buffer = getCurrent(packet);
-    }
-    else if (functionId == FUNCTION_SET_CURRENT_CALLBACK_PERIOD) {
-      buffer = setCurrentCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_CURRENT_CALLBACK_PERIOD) {
-      buffer = getCurrentCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_CURRENT_CALLBACK_THRESHOLD) {
-      buffer = setCurrentCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_GET_CURRENT_CALLBACK_THRESHOLD) {
-      buffer = getCurrentCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_SET_DEBOUNCE_PERIOD) {
-      buffer = setDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_DEBOUNCE_PERIOD) {
-      buffer = getDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_SAMPLE_RATE) {
-      buffer = setSampleRate(packet);
-    }
-    else if (functionId == FUNCTION_GET_SAMPLE_RATE) {
-      buffer = getSampleRate(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_GET_CURRENT:
+        buffer = getCurrent(packet);
+        break;
+      case FUNCTION_SET_CURRENT_CALLBACK_PERIOD:
+        buffer = setCurrentCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_CURRENT_CALLBACK_PERIOD:
+        buffer = getCurrentCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_CURRENT_CALLBACK_THRESHOLD:
+        buffer = setCurrentCallbackThreshold(packet);
+        break;
+      case FUNCTION_GET_CURRENT_CALLBACK_THRESHOLD:
+        buffer = getCurrentCallbackThreshold(packet);
+        break;
+      case FUNCTION_SET_DEBOUNCE_PERIOD:
+        buffer = setDebouncePeriod(packet);
+        break;
+      case FUNCTION_GET_DEBOUNCE_PERIOD:
+        buffer = getDebouncePeriod(packet);
+        break;
+      case FUNCTION_SET_SAMPLE_RATE:
+        buffer = setSampleRate(packet);
+        break;
+      case FUNCTION_GET_SAMPLE_RATE:
+        buffer = getSampleRate(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -175,17 +183,17 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual 0-20mA Brickle
    * 
    */
   private Buffer getCurrent(Packet packet) {
-    logger.debug("function getCurrent");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getCurrent");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_CURRENT;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get4ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt32((int) currentValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -195,16 +203,16 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual 0-20mA Brickle
    * 
    */
   private Buffer getSampleRate(Packet packet) {
-    logger.debug("function getSampleRate");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getSampleRate");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_SAMPLE_RATE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.sampleRate);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.sampleRate);
+      return writer.buffer();
     }
 
     return null;
@@ -212,7 +220,7 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual 0-20mA Brickle
 
   private Buffer getSampleRateDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -220,16 +228,16 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual 0-20mA Brickle
    * 
    */
   private Buffer getDebouncePeriod(Packet packet) {
-    logger.debug("function getDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDebouncePeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.debouncePeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.debouncePeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -237,7 +245,7 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual 0-20mA Brickle
 
   private Buffer getDebouncePeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -245,16 +253,16 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual 0-20mA Brickle
    * 
    */
   private Buffer getCurrentCallbackThreshold(Packet packet) {
-    logger.debug("function getCurrentCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getCurrentCallbackThreshold");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 9;
       byte functionId = FUNCTION_GET_CURRENT_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.currentCallbackThreshold);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.currentCallbackThreshold);
+      return writer.buffer();
     }
 
     return null;
@@ -262,9 +270,9 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual 0-20mA Brickle
 
   private Buffer getCurrentCallbackThresholdDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteRandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get4ByteDefaultValue(1));        
+      buffer.appendBytes(Utils.get4ByteDefaultValue(1));        
       return buffer;
   }
 
@@ -272,16 +280,16 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual 0-20mA Brickle
    * 
    */
   private Buffer getCurrentCallbackPeriod(Packet packet) {
-    logger.debug("function getCurrentCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getCurrentCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_CURRENT_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.currentCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.currentCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -289,7 +297,7 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual 0-20mA Brickle
 
   private Buffer getCurrentCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -297,18 +305,22 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual 0-20mA Brickle
    * 
    */
   private Buffer setCurrentCallbackThreshold(Packet packet) {
-    logger.debug("function setCurrentCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setCurrentCallbackThreshold");
+    }
+    if (packet.getLength() - 8 != 10) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.currentCallbackThreshold = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_CURRENT_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.currentCallbackThreshold = packet.getPayload();
+
     return null;
   }
 
@@ -316,18 +328,22 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual 0-20mA Brickle
    * 
    */
   private Buffer setDebouncePeriod(Packet packet) {
-    logger.debug("function setDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDebouncePeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.debouncePeriod = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.debouncePeriod = packet.getPayload();
+
     return null;
   }
 
@@ -335,18 +351,22 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual 0-20mA Brickle
    * 
    */
   private Buffer setSampleRate(Packet packet) {
-    logger.debug("function setSampleRate");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setSampleRate");
+    }
+    if (packet.getLength() - 8 != 1) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.sampleRate = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_SAMPLE_RATE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.sampleRate = packet.getPayload();
+
     return null;
   }
 
@@ -354,18 +374,23 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual 0-20mA Brickle
    * 
    */
   private Buffer setCurrentCallbackPeriod(Packet packet) {
-    logger.debug("function setCurrentCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setCurrentCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 5) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.currentCallbackPeriod = packet.copyPayload();
+    currentCallback.setPeriod(Utils.decodeUInt32(this.currentCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_CURRENT_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.currentCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -373,16 +398,16 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual 0-20mA Brickle
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
@@ -23,25 +23,28 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.callbacks.CallbackScheduler;
+import org.m1theo.tfemulator.callbacks.PeriodicCallback;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * Measures two DC voltages between -35V and +35V with 24bit resolution each
  */
-public class BrickletIndustrialDualAnalogIn extends AbstractVerticle {
+public class BrickletIndustrialDualAnalogIn extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 249;
 public final static String DEVICE_DISPLAY_NAME = "Industrial Dual Analog In Bricklet";
@@ -81,6 +84,9 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual Analog In Bric
   private Buffer debouncePeriod = getDebouncePeriodDefault();
   private Buffer voltageCallbackPeriod = getVoltageCallbackPeriodDefault();
   private Buffer calibration = getCalibrationDefault();
+  private ValueSource[] aDCValuesValues;
+  private ValueSource[] voltageValues;
+  private PeriodicCallback voltageCallback;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -95,94 +101,98 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual Analog In Bric
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletIndustrialDualAnalogIn.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
-
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    Router router = router();
+
+    aDCValuesValues = valueSources("aDCValues", 1);
+    voltageValues = valueSources("voltage", 1);
+
+    CallbackScheduler scheduler = CallbackScheduler.get(vertx);
+    voltageCallback = scheduler.newCallback(router, uidBytes, CALLBACK_VOLTAGE, 8 + 4, out -> {
+      out.writeInt32((int) voltageValues[0].next(), 1);
+    });
+
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
+
+  }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    voltageCallback.setPeriod(0);
+    router().unregister(uidBytes);
   }
 
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_GET_VOLTAGE) {
-      buffer = getVoltage(packet);
-    }
-    else if (functionId == FUNCTION_SET_VOLTAGE_CALLBACK_PERIOD) {
-      buffer = setVoltageCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_VOLTAGE_CALLBACK_PERIOD) {
-      buffer = getVoltageCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_VOLTAGE_CALLBACK_THRESHOLD) {
-      buffer = setVoltageCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_GET_VOLTAGE_CALLBACK_THRESHOLD) {
-      buffer = getVoltageCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_SET_DEBOUNCE_PERIOD) {
-      buffer = setDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_DEBOUNCE_PERIOD) {
-      buffer = getDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_SAMPLE_RATE) {
-      buffer = setSampleRate(packet);
-    }
-    else if (functionId == FUNCTION_GET_SAMPLE_RATE) {
-      buffer = getSampleRate(packet);
-    }
-    else if (functionId == FUNCTION_SET_CALIBRATION) {
-      buffer = setCalibration(packet);
-    }
-    else if (functionId == FUNCTION_GET_CALIBRATION) {
-      buffer = getCalibration(packet);
-    }
-    else if (functionId == FUNCTION_GET_ADC_VALUES) {
-      buffer = getADCValues(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_GET_VOLTAGE:
+        buffer = getVoltage(packet);
+        break;
+      case FUNCTION_SET_VOLTAGE_CALLBACK_PERIOD:
+        buffer = setVoltageCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_VOLTAGE_CALLBACK_PERIOD:
+        buffer = getVoltageCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_VOLTAGE_CALLBACK_THRESHOLD:
+        buffer = setVoltageCallbackThreshold(packet);
+        break;
+      case FUNCTION_GET_VOLTAGE_CALLBACK_THRESHOLD:
+        buffer = getVoltageCallbackThreshold(packet);
+        break;
+      case FUNCTION_SET_DEBOUNCE_PERIOD:
+        buffer = setDebouncePeriod(packet);
+        break;
+      case FUNCTION_GET_DEBOUNCE_PERIOD:
+        buffer = getDebouncePeriod(packet);
+        break;
+      case FUNCTION_SET_SAMPLE_RATE:
+        buffer = setSampleRate(packet);
+        break;
+      case FUNCTION_GET_SAMPLE_RATE:
+        buffer = getSampleRate(packet);
+        break;
+      case FUNCTION_SET_CALIBRATION:
+        buffer = setCalibration(packet);
+        break;
+      case FUNCTION_GET_CALIBRATION:
+        buffer = getCalibration(packet);
+        break;
+      case FUNCTION_GET_ADC_VALUES:
+        buffer = getADCValues(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -192,17 +202,17 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual Analog In Bric
    * 
    */
   private Buffer getADCValues(Packet packet) {
-    logger.debug("function getADCValues");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getADCValues");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 8;
       byte functionId = FUNCTION_GET_ADC_VALUES;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get4ByteRandomValue(2));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt32((int) aDCValuesValues[0].next(), 2);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -212,17 +222,17 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual Analog In Bric
    * 
    */
   private Buffer getVoltage(Packet packet) {
-    logger.debug("function getVoltage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getVoltage");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_VOLTAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get4ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt32((int) voltageValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -232,16 +242,16 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual Analog In Bric
    * 
    */
   private Buffer getSampleRate(Packet packet) {
-    logger.debug("function getSampleRate");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getSampleRate");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_SAMPLE_RATE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.sampleRate);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.sampleRate);
+      return writer.buffer();
     }
 
     return null;
@@ -249,7 +259,7 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual Analog In Bric
 
   private Buffer getSampleRateDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -257,16 +267,16 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual Analog In Bric
    * 
    */
   private Buffer getVoltageCallbackThreshold(Packet packet) {
-    logger.debug("function getVoltageCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getVoltageCallbackThreshold");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 9;
       byte functionId = FUNCTION_GET_VOLTAGE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.voltageCallbackThreshold);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.voltageCallbackThreshold);
+      return writer.buffer();
     }
 
     return null;
@@ -274,9 +284,9 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual Analog In Bric
 
   private Buffer getVoltageCallbackThresholdDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteRandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get4ByteDefaultValue(1));        
+      buffer.appendBytes(Utils.get4ByteDefaultValue(1));        
       return buffer;
   }
 
@@ -284,16 +294,16 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual Analog In Bric
    * 
    */
   private Buffer getDebouncePeriod(Packet packet) {
-    logger.debug("function getDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDebouncePeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.debouncePeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.debouncePeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -301,7 +311,7 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual Analog In Bric
 
   private Buffer getDebouncePeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -309,16 +319,16 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual Analog In Bric
    * 
    */
   private Buffer getVoltageCallbackPeriod(Packet packet) {
-    logger.debug("function getVoltageCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getVoltageCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_VOLTAGE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.voltageCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.voltageCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -326,7 +336,7 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual Analog In Bric
 
   private Buffer getVoltageCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -334,16 +344,16 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual Analog In Bric
    * 
    */
   private Buffer getCalibration(Packet packet) {
-    logger.debug("function getCalibration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getCalibration");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 16;
       byte functionId = FUNCTION_GET_CALIBRATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.calibration);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.calibration);
+      return writer.buffer();
     }
 
     return null;
@@ -351,8 +361,8 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual Analog In Bric
 
   private Buffer getCalibrationDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteRandomValue(2));        
-      buffer.appendBytes(Utils.get4ByteRandomValue(2));        
+      buffer.appendBytes(Utils.get4ByteDefaultValue(2));        
+      buffer.appendBytes(Utils.get4ByteDefaultValue(2));        
       return buffer;
   }
 
@@ -360,18 +370,23 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual Analog In Bric
    * 
    */
   private Buffer setVoltageCallbackPeriod(Packet packet) {
-    logger.debug("function setVoltageCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setVoltageCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 5) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.voltageCallbackPeriod = packet.copyPayload();
+    voltageCallback.setPeriod(Utils.decodeUInt32(this.voltageCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_VOLTAGE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.voltageCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -379,18 +394,22 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual Analog In Bric
    * 
    */
   private Buffer setCalibration(Packet packet) {
-    logger.debug("function setCalibration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setCalibration");
+    }
+    if (packet.getLength() - 8 != 16) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.calibration = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_CALIBRATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.calibration = packet.getPayload();
+
     return null;
   }
 
@@ -398,18 +417,22 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual Analog In Bric
    * 
    */
   private Buffer setDebouncePeriod(Packet packet) {
-    logger.debug("function setDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDebouncePeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.debouncePeriod = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.debouncePeriod = packet.getPayload();
+
     return null;
   }
 
@@ -417,18 +440,22 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual Analog In Bric
    * 
    */
   private Buffer setSampleRate(Packet packet) {
-    logger.debug("function setSampleRate");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setSampleRate");
+    }
+    if (packet.getLength() - 8 != 1) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.sampleRate = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_SAMPLE_RATE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.sampleRate = packet.getPayload();
+
     return null;
   }
 
@@ -436,18 +463,22 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual Analog In Bric
    * 
    */
   private Buffer setVoltageCallbackThreshold(Packet packet) {
-    logger.debug("function setVoltageCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setVoltageCallbackThreshold");
+    }
+    if (packet.getLength() - 8 != 10) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.voltageCallbackThreshold = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_VOLTAGE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.voltageCallbackThreshold = packet.getPayload();
+
     return null;
   }
 
@@ -455,16 +486,16 @@ public final static String DEVICE_DISPLAY_NAME = "Industrial Dual Analog In Bric
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
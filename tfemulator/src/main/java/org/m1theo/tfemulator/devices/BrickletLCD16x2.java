@@ -23,25 +23,25 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
 
 /**
  * 16x2 character alphanumeric display with blue backlight
  */
-public class BrickletLCD16x2 extends AbstractVerticle {
+public class BrickletLCD16x2 extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 211;
 public final static String DEVICE_DISPLAY_NAME = "LCD 16x2 Bricklet";
@@ -78,88 +78,83 @@ public final static String DEVICE_DISPLAY_NAME = "LCD 16x2 Bricklet";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletLCD16x2.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
-
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    Router router = router();
+
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
 
   }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    router().unregister(uidBytes);
+  }
+
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_WRITE_LINE) {
-      buffer = writeLine(packet);
-    }
-    else if (functionId == FUNCTION_CLEAR_DISPLAY) {
-      buffer = clearDisplay(packet);
-    }
-    else if (functionId == FUNCTION_BACKLIGHT_ON) {
-      buffer = backlightOn(packet);
-    }
-    else if (functionId == FUNCTION_BACKLIGHT_OFF) {
-      buffer = backlightOff(packet);
-    }
-    else if (functionId == FUNCTION_IS_BACKLIGHT_ON) {
-      buffer = isBacklightOn(packet);
-    }
-    else if (functionId == FUNCTION_SET_CONFIG) {
-      buffer = setConfig(packet);
-    }
-    else if (functionId == FUNCTION_GET_CONFIG) {
-      buffer = getConfig(packet);
-    }
-    else if (functionId == FUNCTION_IS_BUTTON_PRESSED) {
-      buffer = isButtonPressed(packet);
-    }
-    else if (functionId == FUNCTION_SET_CUSTOM_CHARACTER) {
-      buffer = setCustomCharacter(packet);
-    }
-    else if (functionId == FUNCTION_GET_CUSTOM_CHARACTER) {
-      buffer = getCustomCharacter(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_WRITE_LINE:
+        buffer = writeLine(packet);
+        break;
+      case FUNCTION_CLEAR_DISPLAY:
+        buffer = clearDisplay(packet);
+        break;
+      case FUNCTION_BACKLIGHT_ON:
+        buffer = backlightOn(packet);
+        break;
+      case FUNCTION_BACKLIGHT_OFF:
+        buffer = backlightOff(packet);
+        break;
+      case FUNCTION_IS_BACKLIGHT_ON:
+        buffer = isBacklightOn(packet);
+        break;
+      case FUNCTION_SET_CONFIG:
+        buffer = setConfig(packet);
+        break;
+      case FUNCTION_GET_CONFIG:
+        buffer = getConfig(packet);
+        break;
+      case FUNCTION_IS_BUTTON_PRESSED:
+        buffer = isButtonPressed(packet);
+        break;
+      case FUNCTION_SET_CUSTOM_CHARACTER:
+        buffer = setCustomCharacter(packet);
+        break;
+      case FUNCTION_GET_CUSTOM_CHARACTER:
+        buffer = getCustomCharacter(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -169,16 +164,16 @@ public final static String DEVICE_DISPLAY_NAME = "LCD 16x2 Bricklet";
    * 
    */
   private Buffer getCustomCharacter(Packet packet) {
-    logger.debug("function getCustomCharacter");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getCustomCharacter");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 8;
       byte functionId = FUNCTION_GET_CUSTOM_CHARACTER;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.customCharacter);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.customCharacter);
+      return writer.buffer();
     }
 
     return null;
@@ -186,7 +181,7 @@ public final static String DEVICE_DISPLAY_NAME = "LCD 16x2 Bricklet";
 
   private Buffer getCustomCharacterDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(8));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(8));        
       return buffer;
   }
 
@@ -194,16 +189,16 @@ public final static String DEVICE_DISPLAY_NAME = "LCD 16x2 Bricklet";
    * 
    */
   private Buffer isBacklightOn(Packet packet) {
-    logger.debug("function isBacklightOn");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function isBacklightOn");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_IS_BACKLIGHT_ON;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.backlight);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.backlight);
+      return writer.buffer();
     }
 
     return null;
@@ -211,7 +206,7 @@ public final static String DEVICE_DISPLAY_NAME = "LCD 16x2 Bricklet";
 
   private Buffer isBacklightOnDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getBoolRandomValue(1));        
+      buffer.appendBytes(Utils.getBoolDefaultValue(1));        
       return buffer;
   }
 
@@ -219,16 +214,16 @@ public final static String DEVICE_DISPLAY_NAME = "LCD 16x2 Bricklet";
    * 
    */
   private Buffer getConfig(Packet packet) {
-    logger.debug("function getConfig");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getConfig");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_CONFIG;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.config);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.config);
+      return writer.buffer();
     }
 
     return null;
@@ -236,8 +231,8 @@ public final static String DEVICE_DISPLAY_NAME = "LCD 16x2 Bricklet";
 
   private Buffer getConfigDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getBoolRandomValue(1));        
-      buffer.appendBytes(Utils.getBoolRandomValue(1));        
+      buffer.appendBytes(Utils.getBoolDefaultValue(1));        
+      buffer.appendBytes(Utils.getBoolDefaultValue(1));        
       return buffer;
   }
 
@@ -245,18 +240,22 @@ public final static String DEVICE_DISPLAY_NAME = "LCD 16x2 Bricklet";
    * 
    */
   private Buffer backlightOn(Packet packet) {
-    logger.debug("function backlightOn");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function backlightOn");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.backlight = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_BACKLIGHT_ON;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.backlight = packet.getPayload();
+
     return null;
   }
 
@@ -264,18 +263,22 @@ public final static String DEVICE_DISPLAY_NAME = "LCD 16x2 Bricklet";
    * 
    */
   private Buffer backlightOff(Packet packet) {
-    logger.debug("function backlightOff");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function backlightOff");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.backlight = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_BACKLIGHT_OFF;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.backlight = packet.getPayload();
+
     return null;
   }
 
@@ -283,18 +286,22 @@ public final static String DEVICE_DISPLAY_NAME = "LCD 16x2 Bricklet";
    * 
    */
   private Buffer setConfig(Packet packet) {
-    logger.debug("function setConfig");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setConfig");
+    }
+    if (packet.getLength() - 8 != 2) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.config = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_CONFIG;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.config = packet.getPayload();
+
     return null;
   }
 
@@ -302,18 +309,22 @@ public final static String DEVICE_DISPLAY_NAME = "LCD 16x2 Bricklet";
    * 
    */
   private Buffer setCustomCharacter(Packet packet) {
-    logger.debug("function setCustomCharacter");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setCustomCharacter");
+    }
+    if (packet.getLength() - 8 != 9) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.customCharacter = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_CUSTOM_CHARACTER;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.customCharacter = packet.getPayload();
+
     return null;
   }
 
@@ -321,16 +332,16 @@ public final static String DEVICE_DISPLAY_NAME = "LCD 16x2 Bricklet";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
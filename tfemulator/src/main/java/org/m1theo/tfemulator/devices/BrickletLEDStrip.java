@@ -23,25 +23,26 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * Controls up to 320 RGB LEDs
  */
-public class BrickletLEDStrip extends AbstractVerticle {
+public class BrickletLEDStrip extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 231;
 public final static String DEVICE_DISPLAY_NAME = "LED Strip Bricklet";
@@ -66,6 +67,7 @@ public final static String DEVICE_DISPLAY_NAME = "LED Strip Bricklet";
   private Buffer rGBValues = getRGBValuesDefault();
   private Buffer frameDuration = getFrameDurationDefault();
   private Buffer clockFrequency = getClockFrequencyDefault();
+  private ValueSource[] supplyVoltageValues;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -80,85 +82,82 @@ public final static String DEVICE_DISPLAY_NAME = "LED Strip Bricklet";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletLEDStrip.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
-
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    Router router = router();
+
+    supplyVoltageValues = valueSources("supplyVoltage", 1);
+
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
 
   }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    router().unregister(uidBytes);
+  }
+
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_SET_RGB_VALUES) {
-      buffer = setRGBValues(packet);
-    }
-    else if (functionId == FUNCTION_GET_RGB_VALUES) {
-      buffer = getRGBValues(packet);
-    }
-    else if (functionId == FUNCTION_SET_FRAME_DURATION) {
-      buffer = setFrameDuration(packet);
-    }
-    else if (functionId == FUNCTION_GET_FRAME_DURATION) {
-      buffer = getFrameDuration(packet);
-    }
-    else if (functionId == FUNCTION_GET_SUPPLY_VOLTAGE) {
-      buffer = getSupplyVoltage(packet);
-    }
-    else if (functionId == FUNCTION_SET_CLOCK_FREQUENCY) {
-      buffer = setClockFrequency(packet);
-    }
-    else if (functionId == FUNCTION_GET_CLOCK_FREQUENCY) {
-      buffer = getClockFrequency(packet);
-    }
-    else if (functionId == FUNCTION_SET_CHIP_TYPE) {
-      buffer = setChipType(packet);
-    }
-    else if (functionId == FUNCTION_GET_CHIP_TYPE) {
-      buffer = getChipType(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_SET_RGB_VALUES:
+        buffer = setRGBValues(packet);
+        break;
+      case FUNCTION_GET_RGB_VALUES:
+        buffer = getRGBValues(packet);
+        break;
+      case FUNCTION_SET_FRAME_DURATION:
+        buffer = setFrameDuration(packet);
+        break;
+      case FUNCTION_GET_FRAME_DURATION:
+        buffer = getFrameDuration(packet);
+        break;
+      case FUNCTION_GET_SUPPLY_VOLTAGE:
+        buffer = getSupplyVoltage(packet);
+        break;
+      case FUNCTION_SET_CLOCK_FREQUENCY:
+        buffer = setClockFrequency(packet);
+        break;
+      case FUNCTION_GET_CLOCK_FREQUENCY:
+        buffer = getClockFrequency(packet);
+        break;
+      case FUNCTION_SET_CHIP_TYPE:
+        buffer = setChipType(packet);
+        break;
+      case FUNCTION_GET_CHIP_TYPE:
+        buffer = getChipType(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -168,17 +167,17 @@ public final static String DEVICE_DISPLAY_NAME = "LED Strip Bricklet";
    * 
    */
   private Buffer getSupplyVoltage(Packet packet) {
-    logger.debug("function getSupplyVoltage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getSupplyVoltage");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_SUPPLY_VOLTAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) supplyVoltageValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -188,16 +187,16 @@ public final static String DEVICE_DISPLAY_NAME = "LED Strip Bricklet";
    * 
    */
   private Buffer getChipType(Packet packet) {
-    logger.debug("function getChipType");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getChipType");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_CHIP_TYPE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.chipType);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.chipType);
+      return writer.buffer();
     }
 
     return null;
@@ -205,7 +204,7 @@ public final static String DEVICE_DISPLAY_NAME = "LED Strip Bricklet";
 
   private Buffer getChipTypeDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -213,16 +212,16 @@ public final static String DEVICE_DISPLAY_NAME = "LED Strip Bricklet";
    * 
    */
   private Buffer getRGBValues(Packet packet) {
-    logger.debug("function getRGBValues");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getRGBValues");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 48;
       byte functionId = FUNCTION_GET_RGB_VALUES;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.rGBValues);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.rGBValues);
+      return writer.buffer();
     }
 
     return null;
@@ -230,9 +229,9 @@ public final static String DEVICE_DISPLAY_NAME = "LED Strip Bricklet";
 
   private Buffer getRGBValuesDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(16));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(16));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(16));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(16));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(16));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(16));        
       return buffer;
   }
 
@@ -240,16 +239,16 @@ public final static String DEVICE_DISPLAY_NAME = "LED Strip Bricklet";
    * 
    */
   private Buffer getFrameDuration(Packet packet) {
-    logger.debug("function getFrameDuration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getFrameDuration");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_FRAME_DURATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.frameDuration);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.frameDuration);
+      return writer.buffer();
     }
 
     return null;
@@ -257,7 +256,7 @@ public final static String DEVICE_DISPLAY_NAME = "LED Strip Bricklet";
 
   private Buffer getFrameDurationDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -265,16 +264,16 @@ public final static String DEVICE_DISPLAY_NAME = "LED Strip Bricklet";
    * 
    */
   private Buffer getClockFrequency(Packet packet) {
-    logger.debug("function getClockFrequency");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getClockFrequency");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_CLOCK_FREQUENCY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.clockFrequency);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.clockFrequency);
+      return writer.buffer();
     }
 
     return null;
@@ -282,7 +281,7 @@ public final static String DEVICE_DISPLAY_NAME = "LED Strip Bricklet";
 
   private Buffer getClockFrequencyDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -290,18 +289,22 @@ public final static String DEVICE_DISPLAY_NAME = "LED Strip Bricklet";
    * 
    */
   private Buffer setClockFrequency(Packet packet) {
-    logger.debug("function setClockFrequency");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setClockFrequency");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.clockFrequency = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_CLOCK_FREQUENCY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.clockFrequency = packet.getPayload();
+
     return null;
   }
 
@@ -309,18 +312,22 @@ public final static String DEVICE_DISPLAY_NAME = "LED Strip Bricklet";
    * 
    */
   private Buffer setRGBValues(Packet packet) {
-    logger.debug("function setRGBValues");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setRGBValues");
+    }
+    if (packet.getLength() - 8 != 51) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.rGBValues = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_RGB_VALUES;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.rGBValues = packet.getPayload();
+
     return null;
   }
 
@@ -328,18 +335,22 @@ public final static String DEVICE_DISPLAY_NAME = "LED Strip Bricklet";
    * 
    */
   private Buffer setChipType(Packet packet) {
-    logger.debug("function setChipType");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setChipType");
+    }
+    if (packet.getLength() - 8 != 2) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.chipType = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_CHIP_TYPE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.chipType = packet.getPayload();
+
     return null;
   }
 
@@ -347,18 +358,22 @@ public final static String DEVICE_DISPLAY_NAME = "LED Strip Bricklet";
    * 
    */
   private Buffer setFrameDuration(Packet packet) {
-    logger.debug("function setFrameDuration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setFrameDuration");
+    }
+    if (packet.getLength() - 8 != 2) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.frameDuration = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_FRAME_DURATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.frameDuration = packet.getPayload();
+
     return null;
   }
 
@@ -366,16 +381,16 @@ public final static String DEVICE_DISPLAY_NAME = "LED Strip Bricklet";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
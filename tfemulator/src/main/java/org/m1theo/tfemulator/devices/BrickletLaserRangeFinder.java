@@ -23,25 +23,30 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.callbacks.CallbackScheduler;
+import org.m1theo.tfemulator.callbacks.PeriodicCallback;
+import org.m1theo.tfemulator.callbacks.ThresholdCallback;
+import org.m1theo.tfemulator.callbacks.ValueType;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * Measures distance up to 40m with laser light
  */
-public class BrickletLaserRangeFinder extends AbstractVerticle {
+public class BrickletLaserRangeFinder extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 255;
 public final static String DEVICE_DISPLAY_NAME = "Laser Range Finder Bricklet";
@@ -90,6 +95,12 @@ public final static String DEVICE_DISPLAY_NAME = "Laser Range Finder Bricklet";
   private Buffer distanceCallbackPeriod = getDistanceCallbackPeriodDefault();
   private Buffer velocityCallbackPeriod = getVelocityCallbackPeriodDefault();
   private Buffer velocityCallbackThreshold = getVelocityCallbackThresholdDefault();
+  private ValueSource[] velocityValues;
+  private ValueSource[] distanceValues;
+  private PeriodicCallback distanceCallback;
+  private PeriodicCallback velocityCallback;
+  private ThresholdCallback distanceReachedCallback;
+  private ThresholdCallback velocityReachedCallback;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -104,115 +115,133 @@ public final static String DEVICE_DISPLAY_NAME = "Laser Range Finder Bricklet";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletLaserRangeFinder.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
+    Router router = router();
+
+    velocityValues = valueSources("velocity", 1);
+    distanceValues = valueSources("distance", 1);
+
+    CallbackScheduler scheduler = CallbackScheduler.get(vertx);
+    distanceCallback = scheduler.newCallback(router, uidBytes, CALLBACK_DISTANCE, 8 + 2, out -> {
+      out.writeUInt16((int) distanceValues[0].next(), 1);
+    });
+    velocityCallback = scheduler.newCallback(router, uidBytes, CALLBACK_VELOCITY, 8 + 2, out -> {
+      out.writeInt16((short) velocityValues[0].next(), 1);
+    });
+    distanceReachedCallback = scheduler.newThresholdCallback(router, uidBytes, CALLBACK_DISTANCE_REACHED,
+        ValueType.UINT16, 1, values -> {
+          values[0] = (long) distanceValues[0].next();
+        });
+    velocityReachedCallback = scheduler.newThresholdCallback(router, uidBytes, CALLBACK_VELOCITY_REACHED,
+        ValueType.INT16, 1, values -> {
+          values[0] = (long) velocityValues[0].next();
+        });
 
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
+
+  }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    distanceCallback.setPeriod(0);
+    velocityCallback.setPeriod(0);
+    distanceReachedCallback.disable();
+    velocityReachedCallback.disable();
+    router().unregister(uidBytes);
   }
 
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_GET_DISTANCE) {
-      buffer = getDistance(packet);
-    }
-    else if (functionId == FUNCTION_GET_VELOCITY) {
-      buffer = getVelocity(packet);
-    }
-    else if (functionId == FUNCTION_SET_DISTANCE_CALLBACK_PERIOD) {
-      buffer = setDistanceCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_DISTANCE_CALLBACK_PERIOD) {
-      buffer = getDistanceCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_VELOCITY_CALLBACK_PERIOD) {
-      buffer = setVelocityCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_VELOCITY_CALLBACK_PERIOD) {
-      buffer = getVelocityCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_DISTANCE_CALLBACK_THRESHOLD) {
-      buffer = setDistanceCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_GET_DISTANCE_CALLBACK_THRESHOLD) {
-      buffer = getDistanceCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_SET_VELOCITY_CALLBACK_THRESHOLD) {
-      buffer = setVelocityCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_GET_VELOCITY_CALLBACK_THRESHOLD) {
-      buffer = getVelocityCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_SET_DEBOUNCE_PERIOD) {
-      buffer = setDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_DEBOUNCE_PERIOD) {
-      buffer = getDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_MOVING_AVERAGE) {
-      buffer = setMovingAverage(packet);
-    }
-    else if (functionId == FUNCTION_GET_MOVING_AVERAGE) {
-      buffer = getMovingAverage(packet);
-    }
-    else if (functionId == FUNCTION_SET_MODE) {
-      buffer = setMode(packet);
-    }
-    else if (functionId == FUNCTION_GET_MODE) {
-      buffer = getMode(packet);
-    }
-    else if (functionId == FUNCTION_ENABLE_LASER) {
-      buffer = enableLaser(packet);
-    }
-    else if (functionId == FUNCTION_DISABLE_LASER) {
-      buffer = disableLaser(packet);
-    }
-    else if (functionId == FUNCTION_IS_LASER_ENABLED) {
-      buffer = isLaserEnabled(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_GET_DISTANCE:
+        buffer = getDistance(packet);
+        break;
+      case FUNCTION_GET_VELOCITY:
+        buffer = getVelocity(packet);
+        break;
+      case FUNCTION_SET_DISTANCE_CALLBACK_PERIOD:
+        buffer = setDistanceCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_DISTANCE_CALLBACK_PERIOD:
+        buffer = getDistanceCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_VELOCITY_CALLBACK_PERIOD:
+        buffer = setVelocityCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_VELOCITY_CALLBACK_PERIOD:
+        buffer = getVelocityCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_DISTANCE_CALLBACK_THRESHOLD:
+        buffer = setDistanceCallbackThreshold(packet);
+        break;
+      case FUNCTION_GET_DISTANCE_CALLBACK_THRESHOLD:
+        buffer = getDistanceCallbackThreshold(packet);
+        break;
+      case FUNCTION_SET_VELOCITY_CALLBACK_THRESHOLD:
+        buffer = setVelocityCallbackThreshold(packet);
+        break;
+      case FUNCTION_GET_VELOCITY_CALLBACK_THRESHOLD:
+        buffer = getVelocityCallbackThreshold(packet);
+        break;
+      case FUNCTION_SET_DEBOUNCE_PERIOD:
+        buffer = setDebouncePeriod(packet);
+        break;
+      case FUNCTION_GET_DEBOUNCE_PERIOD:
+        buffer = getDebouncePeriod(packet);
+        break;
+      case FUNCTION_SET_MOVING_AVERAGE:
+        buffer = setMovingAverage(packet);
+        break;
+      case FUNCTION_GET_MOVING_AVERAGE:
+        buffer = getMovingAverage(packet);
+        break;
+      case FUNCTION_SET_MODE:
+        buffer = setMode(packet);
+        break;
+      case FUNCTION_GET_MODE:
+        buffer = getMode(packet);
+        break;
+      case FUNCTION_ENABLE_LASER:
+        buffer = enableLaser(packet);
+        break;
+      case FUNCTION_DISABLE_LASER:
+        buffer = disableLaser(packet);
+        break;
+      case FUNCTION_IS_LASER_ENABLED:
+        buffer = isLaserEnabled(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -222,17 +251,17 @@ public final static String DEVICE_DISPLAY_NAME = "Laser Range Finder Bricklet";
    * 
    */
   private Buffer getVelocity(Packet packet) {
-    logger.debug("function getVelocity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getVelocity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_VELOCITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt16((short) velocityValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -242,17 +271,17 @@ public final static String DEVICE_DISPLAY_NAME = "Laser Range Finder Bricklet";
    * 
    */
   private Buffer getDistance(Packet packet) {
-    logger.debug("function getDistance");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDistance");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_DISTANCE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) distanceValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -262,16 +291,16 @@ public final static String DEVICE_DISPLAY_NAME = "Laser Range Finder Bricklet";
    * 
    */
   private Buffer getMode(Packet packet) {
-    logger.debug("function getMode");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getMode");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_MODE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.mode);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.mode);
+      return writer.buffer();
     }
 
     return null;
@@ -279,7 +308,7 @@ public final static String DEVICE_DISPLAY_NAME = "Laser Range Finder Bricklet";
 
   private Buffer getModeDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -287,16 +316,16 @@ public final static String DEVICE_DISPLAY_NAME = "Laser Range Finder Bricklet";
    * 
    */
   private Buffer getMovingAverage(Packet packet) {
-    logger.debug("function getMovingAverage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getMovingAverage");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_MOVING_AVERAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.movingAverage);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.movingAverage);
+      return writer.buffer();
     }
 
     return null;
@@ -304,8 +333,8 @@ public final static String DEVICE_DISPLAY_NAME = "Laser Range Finder Bricklet";
 
   private Buffer getMovingAverageDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -313,16 +342,16 @@ public final static String DEVICE_DISPLAY_NAME = "Laser Range Finder Bricklet";
    * 
    */
   private Buffer isLaserEnabled(Packet packet) {
-    logger.debug("function isLaserEnabled");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function isLaserEnabled");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_IS_LASER_ENABLED;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.Laser);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.Laser);
+      return writer.buffer();
     }
 
     return null;
@@ -330,7 +359,7 @@ public final static String DEVICE_DISPLAY_NAME = "Laser Range Finder Bricklet";
 
   private Buffer isLaserEnabledDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getBoolRandomValue(1));        
+      buffer.appendBytes(Utils.getBoolDefaultValue(1));        
       return buffer;
   }
 
@@ -338,16 +367,16 @@ public final static String DEVICE_DISPLAY_NAME = "Laser Range Finder Bricklet";
    * 
    */
   private Buffer getDistanceCallbackThreshold(Packet packet) {
-    logger.debug("function getDistanceCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDistanceCallbackThreshold");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 5;
       byte functionId = FUNCTION_GET_DISTANCE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.distanceCallbackThreshold);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.distanceCallbackThreshold);
+      return writer.buffer();
     }
 
     return null;
@@ -355,9 +384,9 @@ public final static String DEVICE_DISPLAY_NAME = "Laser Range Finder Bricklet";
 
   private Buffer getDistanceCallbackThresholdDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -365,16 +394,16 @@ public final static String DEVICE_DISPLAY_NAME = "Laser Range Finder Bricklet";
    * 
    */
   private Buffer getDebouncePeriod(Packet packet) {
-    logger.debug("function getDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDebouncePeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.debouncePeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.debouncePeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -382,7 +411,7 @@ public final static String DEVICE_DISPLAY_NAME = "Laser Range Finder Bricklet";
 
   private Buffer getDebouncePeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -390,16 +419,16 @@ public final static String DEVICE_DISPLAY_NAME = "Laser Range Finder Bricklet";
    * 
    */
   private Buffer getDistanceCallbackPeriod(Packet packet) {
-    logger.debug("function getDistanceCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDistanceCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_DISTANCE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.distanceCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.distanceCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -407,7 +436,7 @@ public final static String DEVICE_DISPLAY_NAME = "Laser Range Finder Bricklet";
 
   private Buffer getDistanceCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -415,16 +444,16 @@ public final static String DEVICE_DISPLAY_NAME = "Laser Range Finder Bricklet";
    * 
    */
   private Buffer getVelocityCallbackPeriod(Packet packet) {
-    logger.debug("function getVelocityCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getVelocityCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_VELOCITY_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.velocityCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.velocityCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -432,7 +461,7 @@ public final static String DEVICE_DISPLAY_NAME = "Laser Range Finder Bricklet";
 
   private Buffer getVelocityCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -440,16 +469,16 @@ public final static String DEVICE_DISPLAY_NAME = "Laser Range Finder Bricklet";
    * 
    */
   private Buffer getVelocityCallbackThreshold(Packet packet) {
-    logger.debug("function getVelocityCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getVelocityCallbackThreshold");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 5;
       byte functionId = FUNCTION_GET_VELOCITY_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.velocityCallbackThreshold);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.velocityCallbackThreshold);
+      return writer.buffer();
     }
 
     return null;
@@ -457,9 +486,9 @@ public final static String DEVICE_DISPLAY_NAME = "Laser Range Finder Bricklet";
 
   private Buffer getVelocityCallbackThresholdDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteDefaultValue(1));        
       return buffer;
   }
 
@@ -467,18 +496,23 @@ public final static String DEVICE_DISPLAY_NAME = "Laser Range Finder Bricklet";
    * 
    */
   private Buffer setDistanceCallbackThreshold(Packet packet) {
-    logger.debug("function setDistanceCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDistanceCallbackThreshold");
+    }
+    if (packet.getLength() - 8 != 5) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.distanceCallbackThreshold = packet.copyPayload();
+    distanceReachedCallback.setThreshold(this.distanceCallbackThreshold);
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DISTANCE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.distanceCallbackThreshold = packet.getPayload();
+
     return null;
   }
 
@@ -486,18 +520,23 @@ public final static String DEVICE_DISPLAY_NAME = "Laser Range Finder Bricklet";
    * 
    */
   private Buffer setDistanceCallbackPeriod(Packet packet) {
-    logger.debug("function setDistanceCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDistanceCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.distanceCallbackPeriod = packet.copyPayload();
+    distanceCallback.setPeriod(Utils.decodeUInt32(this.distanceCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DISTANCE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.distanceCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -505,18 +544,22 @@ public final static String DEVICE_DISPLAY_NAME = "Laser Range Finder Bricklet";
    * 
    */
   private Buffer setMode(Packet packet) {
-    logger.debug("function setMode");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setMode");
+    }
+    if (packet.getLength() - 8 != 1) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.mode = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_MODE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.mode = packet.getPayload();
+
     return null;
   }
 
@@ -524,18 +567,22 @@ public final static String DEVICE_DISPLAY_NAME = "Laser Range Finder Bricklet";
    * 
    */
   private Buffer enableLaser(Packet packet) {
-    logger.debug("function enableLaser");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function enableLaser");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.Laser = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_ENABLE_LASER;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.Laser = packet.getPayload();
+
     return null;
   }
 
@@ -543,18 +590,23 @@ public final static String DEVICE_DISPLAY_NAME = "Laser Range Finder Bricklet";
    * 
    */
   private Buffer setVelocityCallbackThreshold(Packet packet) {
-    logger.debug("function setVelocityCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setVelocityCallbackThreshold");
+    }
+    if (packet.getLength() - 8 != 5) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.velocityCallbackThreshold = packet.copyPayload();
+    velocityReachedCallback.setThreshold(this.velocityCallbackThreshold);
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_VELOCITY_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.velocityCallbackThreshold = packet.getPayload();
+
     return null;
   }
 
@@ -562,18 +614,24 @@ public final static String DEVICE_DISPLAY_NAME = "Laser Range Finder Bricklet";
    * 
    */
   private Buffer setDebouncePeriod(Packet packet) {
-    logger.debug("function setDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDebouncePeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.debouncePeriod = packet.copyPayload();
+    distanceReachedCallback.setDebounce(Utils.decodeUInt32(this.debouncePeriod, 0));
+    velocityReachedCallback.setDebounce(Utils.decodeUInt32(this.debouncePeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.debouncePeriod = packet.getPayload();
+
     return null;
   }
 
@@ -581,18 +639,22 @@ public final static String DEVICE_DISPLAY_NAME = "Laser Range Finder Bricklet";
    * 
    */
   private Buffer disableLaser(Packet packet) {
-    logger.debug("function disableLaser");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function disableLaser");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.Laser = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_DISABLE_LASER;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.Laser = packet.getPayload();
+
     return null;
   }
 
@@ -600,18 +662,23 @@ public final static String DEVICE_DISPLAY_NAME = "Laser Range Finder Bricklet";
    * 
    */
   private Buffer setVelocityCallbackPeriod(Packet packet) {
-    logger.debug("function setVelocityCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setVelocityCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.velocityCallbackPeriod = packet.copyPayload();
+    velocityCallback.setPeriod(Utils.decodeUInt32(this.velocityCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_VELOCITY_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.velocityCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -619,18 +686,22 @@ public final static String DEVICE_DISPLAY_NAME = "Laser Range Finder Bricklet";
    * 
    */
   private Buffer setMovingAverage(Packet packet) {
-    logger.debug("function setMovingAverage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setMovingAverage");
+    }
+    if (packet.getLength() - 8 != 2) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.movingAverage = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_MOVING_AVERAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.movingAverage = packet.getPayload();
+
     return null;
   }
 
@@ -638,16 +709,16 @@ public final static String DEVICE_DISPLAY_NAME = "Laser Range Finder Bricklet";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
@@ -23,25 +23,26 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * Capacitive touch sensor for 12 electrodes
  */
-public class BrickletMultiTouch extends AbstractVerticle {
+public class BrickletMultiTouch extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 234;
 public final static String DEVICE_DISPLAY_NAME = "Multi Touch Bricklet";
@@ -58,6 +59,7 @@ public final static String DEVICE_DISPLAY_NAME = "Multi Touch Bricklet";
   String uidString;
   private Buffer electrodeConfig = getElectrodeConfigDefault();
   private Buffer electrodeSensitivity = getElectrodeSensitivityDefault();
+  private ValueSource[] touchStateValues;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -72,76 +74,73 @@ public final static String DEVICE_DISPLAY_NAME = "Multi Touch Bricklet";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletMultiTouch.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
+    Router router = router();
+
+    touchStateValues = valueSources("touchState", 1);
 
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
+
+  }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    router().unregister(uidBytes);
   }
 
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_GET_TOUCH_STATE) {
-      buffer = getTouchState(packet);
-    }
-    else if (functionId == FUNCTION_RECALIBRATE) {
-      buffer = recalibrate(packet);
-    }
-    else if (functionId == FUNCTION_SET_ELECTRODE_CONFIG) {
-      buffer = setElectrodeConfig(packet);
-    }
-    else if (functionId == FUNCTION_GET_ELECTRODE_CONFIG) {
-      buffer = getElectrodeConfig(packet);
-    }
-    else if (functionId == FUNCTION_SET_ELECTRODE_SENSITIVITY) {
-      buffer = setElectrodeSensitivity(packet);
-    }
-    else if (functionId == FUNCTION_GET_ELECTRODE_SENSITIVITY) {
-      buffer = getElectrodeSensitivity(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_GET_TOUCH_STATE:
+        buffer = getTouchState(packet);
+        break;
+      case FUNCTION_RECALIBRATE:
+        buffer = recalibrate(packet);
+        break;
+      case FUNCTION_SET_ELECTRODE_CONFIG:
+        buffer = setElectrodeConfig(packet);
+        break;
+      case FUNCTION_GET_ELECTRODE_CONFIG:
+        buffer = getElectrodeConfig(packet);
+        break;
+      case FUNCTION_SET_ELECTRODE_SENSITIVITY:
+        buffer = setElectrodeSensitivity(packet);
+        break;
+      case FUNCTION_GET_ELECTRODE_SENSITIVITY:
+        buffer = getElectrodeSensitivity(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -151,17 +150,17 @@ public final static String DEVICE_DISPLAY_NAME = "Multi Touch Bricklet";
    * 
    */
   private Buffer getTouchState(Packet packet) {
-    logger.debug("function getTouchState");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getTouchState");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_TOUCH_STATE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) touchStateValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -171,16 +170,16 @@ public final static String DEVICE_DISPLAY_NAME = "Multi Touch Bricklet";
    * 
    */
   private Buffer getElectrodeConfig(Packet packet) {
-    logger.debug("function getElectrodeConfig");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getElectrodeConfig");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_ELECTRODE_CONFIG;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.electrodeConfig);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.electrodeConfig);
+      return writer.buffer();
     }
 
     return null;
@@ -188,7 +187,7 @@ public final static String DEVICE_DISPLAY_NAME = "Multi Touch Bricklet";
 
   private Buffer getElectrodeConfigDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -196,16 +195,16 @@ public final static String DEVICE_DISPLAY_NAME = "Multi Touch Bricklet";
    * 
    */
   private Buffer getElectrodeSensitivity(Packet packet) {
-    logger.debug("function getElectrodeSensitivity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getElectrodeSensitivity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_ELECTRODE_SENSITIVITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.electrodeSensitivity);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.electrodeSensitivity);
+      return writer.buffer();
     }
 
     return null;
@@ -213,7 +212,7 @@ public final static String DEVICE_DISPLAY_NAME = "Multi Touch Bricklet";
 
   private Buffer getElectrodeSensitivityDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -221,18 +220,22 @@ public final static String DEVICE_DISPLAY_NAME = "Multi Touch Bricklet";
    * 
    */
   private Buffer setElectrodeSensitivity(Packet packet) {
-    logger.debug("function setElectrodeSensitivity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setElectrodeSensitivity");
+    }
+    if (packet.getLength() - 8 != 1) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.electrodeSensitivity = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_ELECTRODE_SENSITIVITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.electrodeSensitivity = packet.getPayload();
+
     return null;
   }
 
@@ -240,18 +243,22 @@ public final static String DEVICE_DISPLAY_NAME = "Multi Touch Bricklet";
    * 
    */
   private Buffer setElectrodeConfig(Packet packet) {
-    logger.debug("function setElectrodeConfig");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setElectrodeConfig");
+    }
+    if (packet.getLength() - 8 != 2) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.electrodeConfig = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_ELECTRODE_CONFIG;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.electrodeConfig = packet.getPayload();
+
     return null;
   }
 
@@ -259,16 +266,16 @@ public final static String DEVICE_DISPLAY_NAME = "Multi Touch Bricklet";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
@@ -23,25 +23,26 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * Reads and writes NFC and RFID tags
  */
-public class BrickletNFCRFID extends AbstractVerticle {
+public class BrickletNFCRFID extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 246;
 public final static String DEVICE_DISPLAY_NAME = "NFC/RFID Bricklet";
@@ -77,6 +78,9 @@ public final static String DEVICE_DISPLAY_NAME = "NFC/RFID Bricklet";
   public final static short KEY_A = (short)0;
   public final static short KEY_B = (short)1;
   String uidString;
+  private ValueSource[] stateValues;
+  private ValueSource[] tagIDValues;
+  private ValueSource[] pageValues;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -91,79 +95,78 @@ public final static String DEVICE_DISPLAY_NAME = "NFC/RFID Bricklet";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletNFCRFID.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
-
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    Router router = router();
+
+    stateValues = valueSources("state", 2);
+    tagIDValues = valueSources("tagID", 3);
+    pageValues = valueSources("page", 1);
+
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
+
+  }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    router().unregister(uidBytes);
   }
 
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_REQUEST_TAG_ID) {
-      buffer = requestTagID(packet);
-    }
-    else if (functionId == FUNCTION_GET_TAG_ID) {
-      buffer = getTagID(packet);
-    }
-    else if (functionId == FUNCTION_GET_STATE) {
-      buffer = getState(packet);
-    }
-    else if (functionId == FUNCTION_AUTHENTICATE_MIFARE_CLASSIC_PAGE) {
-      buffer = authenticateMifareClassicPage(packet);
-    }
-    else if (functionId == FUNCTION_WRITE_PAGE) {
-      buffer = writePage(packet);
-    }
-    else if (functionId == FUNCTION_REQUEST_PAGE) {
-      buffer = requestPage(packet);
-    }
-    else if (functionId == FUNCTION_GET_PAGE) {
-      buffer = getPage(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_REQUEST_TAG_ID:
+        buffer = requestTagID(packet);
+        break;
+      case FUNCTION_GET_TAG_ID:
+        buffer = getTagID(packet);
+        break;
+      case FUNCTION_GET_STATE:
+        buffer = getState(packet);
+        break;
+      case FUNCTION_AUTHENTICATE_MIFARE_CLASSIC_PAGE:
+        buffer = authenticateMifareClassicPage(packet);
+        break;
+      case FUNCTION_WRITE_PAGE:
+        buffer = writePage(packet);
+        break;
+      case FUNCTION_REQUEST_PAGE:
+        buffer = requestPage(packet);
+        break;
+      case FUNCTION_GET_PAGE:
+        buffer = getPage(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -173,18 +176,18 @@ public final static String DEVICE_DISPLAY_NAME = "NFC/RFID Bricklet";
    * 
    */
   private Buffer getState(Packet packet) {
-    logger.debug("function getState");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getState");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_STATE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.getBoolRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt8((short) stateValues[0].next(), 1);
+      writer.writeBool(Utils.getDefaultBoolean(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -194,19 +197,19 @@ public final static String DEVICE_DISPLAY_NAME = "NFC/RFID Bricklet";
    * 
    */
   private Buffer getTagID(Packet packet) {
-    logger.debug("function getTagID");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getTagID");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 9;
       byte functionId = FUNCTION_GET_TAG_ID;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(7));        
-
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt8((short) tagIDValues[0].next(), 1);
+      writer.writeUInt8((short) tagIDValues[1].next(), 1);
+      writer.writeUInt8((short) tagIDValues[2].next(), 7);
+
+      return writer.buffer();
     }
 
     return null;
@@ -216,17 +219,17 @@ public final static String DEVICE_DISPLAY_NAME = "NFC/RFID Bricklet";
    * 
    */
   private Buffer getPage(Packet packet) {
-    logger.debug("function getPage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getPage");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 16;
       byte functionId = FUNCTION_GET_PAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get1ByteURandomValue(16));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt8((short) pageValues[0].next(), 16);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -236,16 +239,16 @@ public final static String DEVICE_DISPLAY_NAME = "NFC/RFID Bricklet";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
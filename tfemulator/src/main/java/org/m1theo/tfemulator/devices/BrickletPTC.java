@@ -23,25 +23,30 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.callbacks.CallbackScheduler;
+import org.m1theo.tfemulator.callbacks.PeriodicCallback;
+import org.m1theo.tfemulator.callbacks.ThresholdCallback;
+import org.m1theo.tfemulator.callbacks.ValueType;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * Reads temperatures from Pt100 und Pt1000 sensors
  */
-public class BrickletPTC extends AbstractVerticle {
+public class BrickletPTC extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 226;
 public final static String DEVICE_DISPLAY_NAME = "PTC Bricklet";
@@ -87,6 +92,12 @@ public final static String DEVICE_DISPLAY_NAME = "PTC Bricklet";
   private Buffer debouncePeriod = getDebouncePeriodDefault();
   private Buffer temperatureCallbackPeriod = getTemperatureCallbackPeriodDefault();
   private Buffer resistanceCallbackPeriod = getResistanceCallbackPeriodDefault();
+  private ValueSource[] temperatureValues;
+  private ValueSource[] resistanceValues;
+  private PeriodicCallback temperatureCallback;
+  private PeriodicCallback resistanceCallback;
+  private ThresholdCallback temperatureReachedCallback;
+  private ThresholdCallback resistanceReachedCallback;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -101,109 +112,127 @@ public final static String DEVICE_DISPLAY_NAME = "PTC Bricklet";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletPTC.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
+    Router router = router();
+
+    temperatureValues = valueSources("temperature", 1);
+    resistanceValues = valueSources("resistance", 1);
+
+    CallbackScheduler scheduler = CallbackScheduler.get(vertx);
+    temperatureCallback = scheduler.newCallback(router, uidBytes, CALLBACK_TEMPERATURE, 8 + 4, out -> {
+      out.writeInt32((int) temperatureValues[0].next(), 1);
+    });
+    resistanceCallback = scheduler.newCallback(router, uidBytes, CALLBACK_RESISTANCE, 8 + 2, out -> {
+      out.writeUInt16((int) resistanceValues[0].next(), 1);
+    });
+    temperatureReachedCallback = scheduler.newThresholdCallback(router, uidBytes, CALLBACK_TEMPERATURE_REACHED,
+        ValueType.INT32, 1, values -> {
+          values[0] = (long) temperatureValues[0].next();
+        });
+    resistanceReachedCallback = scheduler.newThresholdCallback(router, uidBytes, CALLBACK_RESISTANCE_REACHED,
+        ValueType.UINT16, 1, values -> {
+          values[0] = (long) resistanceValues[0].next();
+        });
 
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
 
   }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    temperatureCallback.setPeriod(0);
+    resistanceCallback.setPeriod(0);
+    temperatureReachedCallback.disable();
+    resistanceReachedCallback.disable();
+    router().unregister(uidBytes);
+  }
+
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_GET_TEMPERATURE) {
-      buffer = getTemperature(packet);
-    }
-    else if (functionId == FUNCTION_GET_RESISTANCE) {
-      buffer = getResistance(packet);
-    }
-    else if (functionId == FUNCTION_SET_TEMPERATURE_CALLBACK_PERIOD) {
-      buffer = setTemperatureCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_TEMPERATURE_CALLBACK_PERIOD) {
-      buffer = getTemperatureCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_RESISTANCE_CALLBACK_PERIOD) {
-      buffer = setResistanceCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_RESISTANCE_CALLBACK_PERIOD) {
-      buffer = getResistanceCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_TEMPERATURE_CALLBACK_THRESHOLD) {
-      buffer = setTemperatureCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_GET_TEMPERATURE_CALLBACK_THRESHOLD) {
-      buffer = getTemperatureCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_SET_RESISTANCE_CALLBACK_THRESHOLD) {
-      buffer = setResistanceCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_GET_RESISTANCE_CALLBACK_THRESHOLD) {
-      buffer = getResistanceCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_SET_DEBOUNCE_PERIOD) {
-      buffer = setDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_DEBOUNCE_PERIOD) {
-      buffer = getDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_NOISE_REJECTION_FILTER) {
-      buffer = setNoiseRejectionFilter(packet);
-    }
-    else if (functionId == FUNCTION_GET_NOISE_REJECTION_FILTER) {
-      buffer = getNoiseRejectionFilter(packet);
-    }
-    else if (functionId == FUNCTION_IS_SENSOR_CONNECTED) {
-      buffer = isSensorConnected(packet);
-    }
-    else if (functionId == FUNCTION_SET_WIRE_MODE) {
-      buffer = setWireMode(packet);
-    }
-    else if (functionId == FUNCTION_GET_WIRE_MODE) {
-      buffer = getWireMode(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_GET_TEMPERATURE:
+        buffer = getTemperature(packet);
+        break;
+      case FUNCTION_GET_RESISTANCE:
+        buffer = getResistance(packet);
+        break;
+      case FUNCTION_SET_TEMPERATURE_CALLBACK_PERIOD:
+        buffer = setTemperatureCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_TEMPERATURE_CALLBACK_PERIOD:
+        buffer = getTemperatureCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_RESISTANCE_CALLBACK_PERIOD:
+        buffer = setResistanceCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_RESISTANCE_CALLBACK_PERIOD:
+        buffer = getResistanceCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_TEMPERATURE_CALLBACK_THRESHOLD:
+        buffer = setTemperatureCallbackThreshold(packet);
+        break;
+      case FUNCTION_GET_TEMPERATURE_CALLBACK_THRESHOLD:
+        buffer = getTemperatureCallbackThreshold(packet);
+        break;
+      case FUNCTION_SET_RESISTANCE_CALLBACK_THRESHOLD:
+        buffer = setResistanceCallbackThreshold(packet);
+        break;
+      case FUNCTION_GET_RESISTANCE_CALLBACK_THRESHOLD:
+        buffer = getResistanceCallbackThreshold(packet);
+        break;
+      case FUNCTION_SET_DEBOUNCE_PERIOD:
+        buffer = setDebouncePeriod(packet);
+        break;
+      case FUNCTION_GET_DEBOUNCE_PERIOD:
+        buffer = getDebouncePeriod(packet);
+        break;
+      case FUNCTION_SET_NOISE_REJECTION_FILTER:
+        buffer = setNoiseRejectionFilter(packet);
+        break;
+      case FUNCTION_GET_NOISE_REJECTION_FILTER:
+        buffer = getNoiseRejectionFilter(packet);
+        break;
+      case FUNCTION_IS_SENSOR_CONNECTED:
+        buffer = isSensorConnected(packet);
+        break;
+      case FUNCTION_SET_WIRE_MODE:
+        buffer = setWireMode(packet);
+        break;
+      case FUNCTION_GET_WIRE_MODE:
+        buffer = getWireMode(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -213,17 +242,17 @@ public final static String DEVICE_DISPLAY_NAME = "PTC Bricklet";
    * 
    */
   private Buffer getTemperature(Packet packet) {
-    logger.debug("function getTemperature");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getTemperature");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_TEMPERATURE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get4ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt32((int) temperatureValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -233,17 +262,17 @@ public final static String DEVICE_DISPLAY_NAME = "PTC Bricklet";
    * 
    */
   private Buffer getResistance(Packet packet) {
-    logger.debug("function getResistance");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getResistance");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_RESISTANCE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) resistanceValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -253,16 +282,16 @@ public final static String DEVICE_DISPLAY_NAME = "PTC Bricklet";
    * 
    */
   private Buffer getWireMode(Packet packet) {
-    logger.debug("function getWireMode");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getWireMode");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_WIRE_MODE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.wireMode);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.wireMode);
+      return writer.buffer();
     }
 
     return null;
@@ -270,7 +299,7 @@ public final static String DEVICE_DISPLAY_NAME = "PTC Bricklet";
 
   private Buffer getWireModeDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -278,16 +307,16 @@ public final static String DEVICE_DISPLAY_NAME = "PTC Bricklet";
    * 
    */
   private Buffer getTemperatureCallbackThreshold(Packet packet) {
-    logger.debug("function getTemperatureCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getTemperatureCallbackThreshold");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 9;
       byte functionId = FUNCTION_GET_TEMPERATURE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.temperatureCallbackThreshold);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.temperatureCallbackThreshold);
+      return writer.buffer();
     }
 
     return null;
@@ -295,9 +324,9 @@ public final static String DEVICE_DISPLAY_NAME = "PTC Bricklet";
 
   private Buffer getTemperatureCallbackThresholdDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteRandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get4ByteDefaultValue(1));        
+      buffer.appendBytes(Utils.get4ByteDefaultValue(1));        
       return buffer;
   }
 
@@ -305,16 +334,16 @@ public final static String DEVICE_DISPLAY_NAME = "PTC Bricklet";
    * 
    */
   private Buffer getResistanceCallbackThreshold(Packet packet) {
-    logger.debug("function getResistanceCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getResistanceCallbackThreshold");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 5;
       byte functionId = FUNCTION_GET_RESISTANCE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.resistanceCallbackThreshold);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.resistanceCallbackThreshold);
+      return writer.buffer();
     }
 
     return null;
@@ -322,9 +351,9 @@ public final static String DEVICE_DISPLAY_NAME = "PTC Bricklet";
 
   private Buffer getResistanceCallbackThresholdDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -332,16 +361,16 @@ public final static String DEVICE_DISPLAY_NAME = "PTC Bricklet";
    * 
    */
   private Buffer getNoiseRejectionFilter(Packet packet) {
-    logger.debug("function getNoiseRejectionFilter");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getNoiseRejectionFilter");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_NOISE_REJECTION_FILTER;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.noiseRejectionFilter);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.noiseRejectionFilter);
+      return writer.buffer();
     }
 
     return null;
@@ -349,7 +378,7 @@ public final static String DEVICE_DISPLAY_NAME = "PTC Bricklet";
 
   private Buffer getNoiseRejectionFilterDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -357,16 +386,16 @@ public final static String DEVICE_DISPLAY_NAME = "PTC Bricklet";
    * 
    */
   private Buffer getDebouncePeriod(Packet packet) {
-    logger.debug("function getDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDebouncePeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.debouncePeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.debouncePeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -374,7 +403,7 @@ public final static String DEVICE_DISPLAY_NAME = "PTC Bricklet";
 
   private Buffer getDebouncePeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -382,16 +411,16 @@ public final static String DEVICE_DISPLAY_NAME = "PTC Bricklet";
    * 
    */
   private Buffer getTemperatureCallbackPeriod(Packet packet) {
-    logger.debug("function getTemperatureCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getTemperatureCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_TEMPERATURE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.temperatureCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.temperatureCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -399,7 +428,7 @@ public final static String DEVICE_DISPLAY_NAME = "PTC Bricklet";
 
   private Buffer getTemperatureCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -407,16 +436,16 @@ public final static String DEVICE_DISPLAY_NAME = "PTC Bricklet";
    * 
    */
   private Buffer getResistanceCallbackPeriod(Packet packet) {
-    logger.debug("function getResistanceCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getResistanceCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_RESISTANCE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.resistanceCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.resistanceCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -424,7 +453,7 @@ public final static String DEVICE_DISPLAY_NAME = "PTC Bricklet";
 
   private Buffer getResistanceCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -432,18 +461,23 @@ public final static String DEVICE_DISPLAY_NAME = "PTC Bricklet";
    * 
    */
   private Buffer setResistanceCallbackThreshold(Packet packet) {
-    logger.debug("function setResistanceCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setResistanceCallbackThreshold");
+    }
+    if (packet.getLength() - 8 != 5) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.resistanceCallbackThreshold = packet.copyPayload();
+    resistanceReachedCallback.setThreshold(this.resistanceCallbackThreshold);
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_RESISTANCE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.resistanceCallbackThreshold = packet.getPayload();
+
     return null;
   }
 
@@ -451,18 +485,23 @@ public final static String DEVICE_DISPLAY_NAME = "PTC Bricklet";
    * 
    */
   private Buffer setTemperatureCallbackPeriod(Packet packet) {
-    logger.debug("function setTemperatureCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setTemperatureCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.temperatureCallbackPeriod = packet.copyPayload();
+    temperatureCallback.setPeriod(Utils.decodeUInt32(this.temperatureCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_TEMPERATURE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.temperatureCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -470,18 +509,23 @@ public final static String DEVICE_DISPLAY_NAME = "PTC Bricklet";
    * 
    */
   private Buffer setResistanceCallbackPeriod(Packet packet) {
-    logger.debug("function setResistanceCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setResistanceCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.resistanceCallbackPeriod = packet.copyPayload();
+    resistanceCallback.setPeriod(Utils.decodeUInt32(this.resistanceCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_RESISTANCE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.resistanceCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -489,18 +533,24 @@ public final static String DEVICE_DISPLAY_NAME = "PTC Bricklet";
    * 
    */
   private Buffer setDebouncePeriod(Packet packet) {
-    logger.debug("function setDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDebouncePeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.debouncePeriod = packet.copyPayload();
+    resistanceReachedCallback.setDebounce(Utils.decodeUInt32(this.debouncePeriod, 0));
+    temperatureReachedCallback.setDebounce(Utils.decodeUInt32(this.debouncePeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.debouncePeriod = packet.getPayload();
+
     return null;
   }
 
@@ -508,18 +558,22 @@ public final static String DEVICE_DISPLAY_NAME = "PTC Bricklet";
    * 
    */
   private Buffer setWireMode(Packet packet) {
-    logger.debug("function setWireMode");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setWireMode");
+    }
+    if (packet.getLength() - 8 != 1) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.wireMode = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_WIRE_MODE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.wireMode = packet.getPayload();
+
     return null;
   }
 
@@ -527,18 +581,22 @@ public final static String DEVICE_DISPLAY_NAME = "PTC Bricklet";
    * 
    */
   private Buffer setNoiseRejectionFilter(Packet packet) {
-    logger.debug("function setNoiseRejectionFilter");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setNoiseRejectionFilter");
+    }
+    if (packet.getLength() - 8 != 1) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.noiseRejectionFilter = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_NOISE_REJECTION_FILTER;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.noiseRejectionFilter = packet.getPayload();
+
     return null;
   }
 
@@ -546,18 +604,23 @@ public final static String DEVICE_DISPLAY_NAME = "PTC Bricklet";
    * 
    */
   private Buffer setTemperatureCallbackThreshold(Packet packet) {
-    logger.debug("function setTemperatureCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setTemperatureCallbackThreshold");
+    }
+    if (packet.getLength() - 8 != 9) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.temperatureCallbackThreshold = packet.copyPayload();
+    temperatureReachedCallback.setThreshold(this.temperatureCallbackThreshold);
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_TEMPERATURE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.temperatureCallbackThreshold = packet.getPayload();
+
     return null;
   }
 
@@ -565,16 +628,16 @@ public final static String DEVICE_DISPLAY_NAME = "PTC Bricklet";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
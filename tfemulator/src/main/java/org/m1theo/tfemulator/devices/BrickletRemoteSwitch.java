@@ -23,25 +23,26 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * Controls remote mains switches
  */
-public class BrickletRemoteSwitch extends AbstractVerticle {
+public class BrickletRemoteSwitch extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 235;
 public final static String DEVICE_DISPLAY_NAME = "Remote Switch Bricklet";
@@ -63,6 +64,7 @@ public final static String DEVICE_DISPLAY_NAME = "Remote Switch Bricklet";
   public final static short SWITCHING_STATE_BUSY = (short)1;
   String uidString;
   private Buffer repeats = getRepeatsDefault();
+  private ValueSource[] switchingStateValues;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -77,82 +79,79 @@ public final static String DEVICE_DISPLAY_NAME = "Remote Switch Bricklet";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletRemoteSwitch.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
+    Router router = router();
+
+    switchingStateValues = valueSources("switchingState", 1);
 
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
 
   }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    router().unregister(uidBytes);
+  }
+
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_SWITCH_SOCKET) {
-      buffer = switchSocket(packet);
-    }
-    else if (functionId == FUNCTION_GET_SWITCHING_STATE) {
-      buffer = getSwitchingState(packet);
-    }
-    else if (functionId == FUNCTION_SET_REPEATS) {
-      buffer = setRepeats(packet);
-    }
-    else if (functionId == FUNCTION_GET_REPEATS) {
-      buffer = getRepeats(packet);
-    }
-    else if (functionId == FUNCTION_SWITCH_SOCKET_A) {
-      buffer = switchSocketA(packet);
-    }
-    else if (functionId == FUNCTION_SWITCH_SOCKET_B) {
-      buffer = switchSocketB(packet);
-    }
-    else if (functionId == FUNCTION_DIM_SOCKET_B) {
-      buffer = dimSocketB(packet);
-    }
-    else if (functionId == FUNCTION_SWITCH_SOCKET_C) {
-      buffer = switchSocketC(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_SWITCH_SOCKET:
+        buffer = switchSocket(packet);
+        break;
+      case FUNCTION_GET_SWITCHING_STATE:
+        buffer = getSwitchingState(packet);
+        break;
+      case FUNCTION_SET_REPEATS:
+        buffer = setRepeats(packet);
+        break;
+      case FUNCTION_GET_REPEATS:
+        buffer = getRepeats(packet);
+        break;
+      case FUNCTION_SWITCH_SOCKET_A:
+        buffer = switchSocketA(packet);
+        break;
+      case FUNCTION_SWITCH_SOCKET_B:
+        buffer = switchSocketB(packet);
+        break;
+      case FUNCTION_DIM_SOCKET_B:
+        buffer = dimSocketB(packet);
+        break;
+      case FUNCTION_SWITCH_SOCKET_C:
+        buffer = switchSocketC(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -162,17 +161,17 @@ public final static String DEVICE_DISPLAY_NAME = "Remote Switch Bricklet";
    * 
    */
   private Buffer getSwitchingState(Packet packet) {
-    logger.debug("function getSwitchingState");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getSwitchingState");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_SWITCHING_STATE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt8((short) switchingStateValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -182,16 +181,16 @@ public final static String DEVICE_DISPLAY_NAME = "Remote Switch Bricklet";
    * 
    */
   private Buffer getRepeats(Packet packet) {
-    logger.debug("function getRepeats");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getRepeats");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_REPEATS;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.repeats);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.repeats);
+      return writer.buffer();
     }
 
     return null;
@@ -199,7 +198,7 @@ public final static String DEVICE_DISPLAY_NAME = "Remote Switch Bricklet";
 
   private Buffer getRepeatsDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -207,18 +206,22 @@ public final static String DEVICE_DISPLAY_NAME = "Remote Switch Bricklet";
    * 
    */
   private Buffer setRepeats(Packet packet) {
-    logger.debug("function setRepeats");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setRepeats");
+    }
+    if (packet.getLength() - 8 != 1) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.repeats = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_REPEATS;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.repeats = packet.getPayload();
+
     return null;
   }
 
@@ -226,16 +229,16 @@ public final static String DEVICE_DISPLAY_NAME = "Remote Switch Bricklet";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
@@ -23,25 +23,30 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.callbacks.CallbackScheduler;
+import org.m1theo.tfemulator.callbacks.PeriodicCallback;
+import org.m1theo.tfemulator.callbacks.ThresholdCallback;
+import org.m1theo.tfemulator.callbacks.ValueType;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * 360° rotary encoder with push-button
  */
-public class BrickletRotaryEncoder extends AbstractVerticle {
+public class BrickletRotaryEncoder extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 236;
 public final static String DEVICE_DISPLAY_NAME = "Rotary Encoder Bricklet";
@@ -69,6 +74,9 @@ public final static String DEVICE_DISPLAY_NAME = "Rotary Encoder Bricklet";
   private Buffer countCallbackPeriod = getCountCallbackPeriodDefault();
   private Buffer debouncePeriod = getDebouncePeriodDefault();
   private Buffer countCallbackThreshold = getCountCallbackThresholdDefault();
+  private ValueSource[] countValues;
+  private PeriodicCallback countCallback;
+  private ThresholdCallback countReachedCallback;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -83,82 +91,90 @@ public final static String DEVICE_DISPLAY_NAME = "Rotary Encoder Bricklet";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletRotaryEncoder.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
+    Router router = router();
+
+    countValues = valueSources("count", 1);
+
+    CallbackScheduler scheduler = CallbackScheduler.get(vertx);
+    countCallback = scheduler.newCallback(router, uidBytes, CALLBACK_COUNT, 8 + 4, out -> {
+      out.writeInt32((int) countValues[0].next(), 1);
+    });
+    countReachedCallback = scheduler.newThresholdCallback(router, uidBytes, CALLBACK_COUNT_REACHED,
+        ValueType.INT32, 1, values -> {
+          values[0] = (long) countValues[0].next();
+        });
 
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
 
   }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    countCallback.setPeriod(0);
+    countReachedCallback.disable();
+    router().unregister(uidBytes);
+  }
+
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_GET_COUNT) {
-      buffer = getCount(packet);
-    }
-    else if (functionId == FUNCTION_SET_COUNT_CALLBACK_PERIOD) {
-      buffer = setCountCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_COUNT_CALLBACK_PERIOD) {
-      buffer = getCountCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_COUNT_CALLBACK_THRESHOLD) {
-      buffer = setCountCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_GET_COUNT_CALLBACK_THRESHOLD) {
-      buffer = getCountCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_SET_DEBOUNCE_PERIOD) {
-      buffer = setDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_DEBOUNCE_PERIOD) {
-      buffer = getDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_IS_PRESSED) {
-      buffer = isPressed(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_GET_COUNT:
+        buffer = getCount(packet);
+        break;
+      case FUNCTION_SET_COUNT_CALLBACK_PERIOD:
+        buffer = setCountCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_COUNT_CALLBACK_PERIOD:
+        buffer = getCountCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_COUNT_CALLBACK_THRESHOLD:
+        buffer = setCountCallbackThreshold(packet);
+        break;
+      case FUNCTION_GET_COUNT_CALLBACK_THRESHOLD:
+        buffer = getCountCallbackThreshold(packet);
+        break;
+      case FUNCTION_SET_DEBOUNCE_PERIOD:
+        buffer = setDebouncePeriod(packet);
+        break;
+      case FUNCTION_GET_DEBOUNCE_PERIOD:
+        buffer = getDebouncePeriod(packet);
+        break;
+      case FUNCTION_IS_PRESSED:
+        buffer = isPressed(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -168,17 +184,17 @@ public final static String DEVICE_DISPLAY_NAME = "Rotary Encoder Bricklet";
    * 
    */
   private Buffer getCount(Packet packet) {
-    logger.debug("function getCount");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getCount");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_COUNT;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get4ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt32((int) countValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -188,16 +204,16 @@ public final static String DEVICE_DISPLAY_NAME = "Rotary Encoder Bricklet";
    * 
    */
   private Buffer getCountCallbackPeriod(Packet packet) {
-    logger.debug("function getCountCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getCountCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_COUNT_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.countCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.countCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -205,7 +221,7 @@ public final static String DEVICE_DISPLAY_NAME = "Rotary Encoder Bricklet";
 
   private Buffer getCountCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -213,16 +229,16 @@ public final static String DEVICE_DISPLAY_NAME = "Rotary Encoder Bricklet";
    * 
    */
   private Buffer getDebouncePeriod(Packet packet) {
-    logger.debug("function getDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDebouncePeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.debouncePeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.debouncePeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -230,7 +246,7 @@ public final static String DEVICE_DISPLAY_NAME = "Rotary Encoder Bricklet";
 
   private Buffer getDebouncePeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -238,16 +254,16 @@ public final static String DEVICE_DISPLAY_NAME = "Rotary Encoder Bricklet";
    * 
    */
   private Buffer getCountCallbackThreshold(Packet packet) {
-    logger.debug("function getCountCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getCountCallbackThreshold");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 9;
       byte functionId = FUNCTION_GET_COUNT_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.countCallbackThreshold);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.countCallbackThreshold);
+      return writer.buffer();
     }
 
     return null;
@@ -255,9 +271,9 @@ public final static String DEVICE_DISPLAY_NAME = "Rotary Encoder Bricklet";
 
   private Buffer getCountCallbackThresholdDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteRandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get4ByteDefaultValue(1));        
+      buffer.appendBytes(Utils.get4ByteDefaultValue(1));        
       return buffer;
   }
 
@@ -265,18 +281,23 @@ public final static String DEVICE_DISPLAY_NAME = "Rotary Encoder Bricklet";
    * 
    */
   private Buffer setCountCallbackThreshold(Packet packet) {
-    logger.debug("function setCountCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setCountCallbackThreshold");
+    }
+    if (packet.getLength() - 8 != 9) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.countCallbackThreshold = packet.copyPayload();
+    countReachedCallback.setThreshold(this.countCallbackThreshold);
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_COUNT_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.countCallbackThreshold = packet.getPayload();
+
     return null;
   }
 
@@ -284,18 +305,23 @@ public final static String DEVICE_DISPLAY_NAME = "Rotary Encoder Bricklet";
    * 
    */
   private Buffer setCountCallbackPeriod(Packet packet) {
-    logger.debug("function setCountCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setCountCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.countCallbackPeriod = packet.copyPayload();
+    countCallback.setPeriod(Utils.decodeUInt32(this.countCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_COUNT_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.countCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -303,18 +329,23 @@ public final static String DEVICE_DISPLAY_NAME = "Rotary Encoder Bricklet";
    * 
    */
   private Buffer setDebouncePeriod(Packet packet) {
-    logger.debug("function setDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDebouncePeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.debouncePeriod = packet.copyPayload();
+    countReachedCallback.setDebounce(Utils.decodeUInt32(this.debouncePeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.debouncePeriod = packet.getPayload();
+
     return null;
   }
 
@@ -322,16 +353,16 @@ public final static String DEVICE_DISPLAY_NAME = "Rotary Encoder Bricklet";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
@@ -23,25 +23,30 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.callbacks.CallbackScheduler;
+import org.m1theo.tfemulator.callbacks.PeriodicCallback;
+import org.m1theo.tfemulator.callbacks.ThresholdCallback;
+import org.m1theo.tfemulator.callbacks.ValueType;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * Measures sound intensity
  */
-public class BrickletSoundIntensity extends AbstractVerticle {
+public class BrickletSoundIntensity extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 238;
 public final static String DEVICE_DISPLAY_NAME = "Sound Intensity Bricklet";
@@ -66,6 +71,9 @@ public final static String DEVICE_DISPLAY_NAME = "Sound Intensity Bricklet";
   private Buffer debouncePeriod = getDebouncePeriodDefault();
   private Buffer intensityCallbackThreshold = getIntensityCallbackThresholdDefault();
   private Buffer intensityCallbackPeriod = getIntensityCallbackPeriodDefault();
+  private ValueSource[] intensityValues;
+  private PeriodicCallback intensityCallback;
+  private ThresholdCallback intensityReachedCallback;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -80,79 +88,87 @@ public final static String DEVICE_DISPLAY_NAME = "Sound Intensity Bricklet";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletSoundIntensity.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
+    Router router = router();
+
+    intensityValues = valueSources("intensity", 1);
+
+    CallbackScheduler scheduler = CallbackScheduler.get(vertx);
+    intensityCallback = scheduler.newCallback(router, uidBytes, CALLBACK_INTENSITY, 8 + 2, out -> {
+      out.writeUInt16((int) intensityValues[0].next(), 1);
+    });
+    intensityReachedCallback = scheduler.newThresholdCallback(router, uidBytes, CALLBACK_INTENSITY_REACHED,
+        ValueType.UINT16, 1, values -> {
+          values[0] = (long) intensityValues[0].next();
+        });
 
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
 
   }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    intensityCallback.setPeriod(0);
+    intensityReachedCallback.disable();
+    router().unregister(uidBytes);
+  }
+
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_GET_INTENSITY) {
-      buffer = getIntensity(packet);
-    }
-    else if (functionId == FUNCTION_SET_INTENSITY_CALLBACK_PERIOD) {
-      buffer = setIntensityCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_INTENSITY_CALLBACK_PERIOD) {
-      buffer = getIntensityCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_INTENSITY_CALLBACK_THRESHOLD) {
-      buffer = setIntensityCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_GET_INTENSITY_CALLBACK_THRESHOLD) {
-      buffer = getIntensityCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_SET_DEBOUNCE_PERIOD) {
-      buffer = setDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_DEBOUNCE_PERIOD) {
-      buffer = getDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_GET_INTENSITY:
+        buffer = getIntensity(packet);
+        break;
+      case FUNCTION_SET_INTENSITY_CALLBACK_PERIOD:
+        buffer = setIntensityCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_INTENSITY_CALLBACK_PERIOD:
+        buffer = getIntensityCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_INTENSITY_CALLBACK_THRESHOLD:
+        buffer = setIntensityCallbackThreshold(packet);
+        break;
+      case FUNCTION_GET_INTENSITY_CALLBACK_THRESHOLD:
+        buffer = getIntensityCallbackThreshold(packet);
+        break;
+      case FUNCTION_SET_DEBOUNCE_PERIOD:
+        buffer = setDebouncePeriod(packet);
+        break;
+      case FUNCTION_GET_DEBOUNCE_PERIOD:
+        buffer = getDebouncePeriod(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -162,17 +178,17 @@ public final static String DEVICE_DISPLAY_NAME = "Sound Intensity Bricklet";
    * 
    */
   private Buffer getIntensity(Packet packet) {
-    logger.debug("function getIntensity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIntensity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_INTENSITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt16((int) intensityValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -182,16 +198,16 @@ public final static String DEVICE_DISPLAY_NAME = "Sound Intensity Bricklet";
    * 
    */
   private Buffer getDebouncePeriod(Packet packet) {
-    logger.debug("function getDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDebouncePeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.debouncePeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.debouncePeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -199,7 +215,7 @@ public final static String DEVICE_DISPLAY_NAME = "Sound Intensity Bricklet";
 
   private Buffer getDebouncePeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -207,16 +223,16 @@ public final static String DEVICE_DISPLAY_NAME = "Sound Intensity Bricklet";
    * 
    */
   private Buffer getIntensityCallbackThreshold(Packet packet) {
-    logger.debug("function getIntensityCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIntensityCallbackThreshold");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 5;
       byte functionId = FUNCTION_GET_INTENSITY_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.intensityCallbackThreshold);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.intensityCallbackThreshold);
+      return writer.buffer();
     }
 
     return null;
@@ -224,9 +240,9 @@ public final static String DEVICE_DISPLAY_NAME = "Sound Intensity Bricklet";
 
   private Buffer getIntensityCallbackThresholdDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -234,16 +250,16 @@ public final static String DEVICE_DISPLAY_NAME = "Sound Intensity Bricklet";
    * 
    */
   private Buffer getIntensityCallbackPeriod(Packet packet) {
-    logger.debug("function getIntensityCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIntensityCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_INTENSITY_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.intensityCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.intensityCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -251,7 +267,7 @@ public final static String DEVICE_DISPLAY_NAME = "Sound Intensity Bricklet";
 
   private Buffer getIntensityCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -259,18 +275,23 @@ public final static String DEVICE_DISPLAY_NAME = "Sound Intensity Bricklet";
    * 
    */
   private Buffer setIntensityCallbackThreshold(Packet packet) {
-    logger.debug("function setIntensityCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setIntensityCallbackThreshold");
+    }
+    if (packet.getLength() - 8 != 5) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.intensityCallbackThreshold = packet.copyPayload();
+    intensityReachedCallback.setThreshold(this.intensityCallbackThreshold);
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_INTENSITY_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.intensityCallbackThreshold = packet.getPayload();
+
     return null;
   }
 
@@ -278,18 +299,23 @@ public final static String DEVICE_DISPLAY_NAME = "Sound Intensity Bricklet";
    * 
    */
   private Buffer setIntensityCallbackPeriod(Packet packet) {
-    logger.debug("function setIntensityCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setIntensityCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.intensityCallbackPeriod = packet.copyPayload();
+    intensityCallback.setPeriod(Utils.decodeUInt32(this.intensityCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_INTENSITY_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.intensityCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -297,18 +323,23 @@ public final static String DEVICE_DISPLAY_NAME = "Sound Intensity Bricklet";
    * 
    */
   private Buffer setDebouncePeriod(Packet packet) {
-    logger.debug("function setDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDebouncePeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.debouncePeriod = packet.copyPayload();
+    intensityReachedCallback.setDebounce(Utils.decodeUInt32(this.debouncePeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.debouncePeriod = packet.getPayload();
+
     return null;
   }
 
@@ -316,16 +347,16 @@ public final static String DEVICE_DISPLAY_NAME = "Sound Intensity Bricklet";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
@@ -23,25 +23,30 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.callbacks.CallbackScheduler;
+import org.m1theo.tfemulator.callbacks.PeriodicCallback;
+import org.m1theo.tfemulator.callbacks.ThresholdCallback;
+import org.m1theo.tfemulator.callbacks.ValueType;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * Measures ambient temperature with 0.5°C accuracy
  */
-public class BrickletTemperature extends AbstractVerticle {
+public class BrickletTemperature extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 216;
 public final static String DEVICE_DISPLAY_NAME = "Temperature Bricklet";
@@ -71,6 +76,9 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature Bricklet";
   private Buffer temperatureCallbackPeriod = getTemperatureCallbackPeriodDefault();
   private Buffer temperatureCallbackThreshold = getTemperatureCallbackThresholdDefault();
   private Buffer i2CMode = getI2CModeDefault();
+  private ValueSource[] temperatureValues;
+  private PeriodicCallback temperatureCallback;
+  private ThresholdCallback temperatureReachedCallback;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -85,85 +93,93 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature Bricklet";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletTemperature.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
+    Router router = router();
+
+    temperatureValues = valueSources("temperature", 1);
+
+    CallbackScheduler scheduler = CallbackScheduler.get(vertx);
+    temperatureCallback = scheduler.newCallback(router, uidBytes, CALLBACK_TEMPERATURE, 8 + 2, out -> {
+      out.writeInt16((short) temperatureValues[0].next(), 1);
+    });
+    temperatureReachedCallback = scheduler.newThresholdCallback(router, uidBytes, CALLBACK_TEMPERATURE_REACHED,
+        ValueType.INT16, 1, values -> {
+          values[0] = (long) temperatureValues[0].next();
+        });
 
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
+
+  }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    temperatureCallback.setPeriod(0);
+    temperatureReachedCallback.disable();
+    router().unregister(uidBytes);
   }
 
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_GET_TEMPERATURE) {
-      buffer = getTemperature(packet);
-    }
-    else if (functionId == FUNCTION_SET_TEMPERATURE_CALLBACK_PERIOD) {
-      buffer = setTemperatureCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_TEMPERATURE_CALLBACK_PERIOD) {
-      buffer = getTemperatureCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_TEMPERATURE_CALLBACK_THRESHOLD) {
-      buffer = setTemperatureCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_GET_TEMPERATURE_CALLBACK_THRESHOLD) {
-      buffer = getTemperatureCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_SET_DEBOUNCE_PERIOD) {
-      buffer = setDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_DEBOUNCE_PERIOD) {
-      buffer = getDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_I2C_MODE) {
-      buffer = setI2CMode(packet);
-    }
-    else if (functionId == FUNCTION_GET_I2C_MODE) {
-      buffer = getI2CMode(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_GET_TEMPERATURE:
+        buffer = getTemperature(packet);
+        break;
+      case FUNCTION_SET_TEMPERATURE_CALLBACK_PERIOD:
+        buffer = setTemperatureCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_TEMPERATURE_CALLBACK_PERIOD:
+        buffer = getTemperatureCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_TEMPERATURE_CALLBACK_THRESHOLD:
+        buffer = setTemperatureCallbackThreshold(packet);
+        break;
+      case FUNCTION_GET_TEMPERATURE_CALLBACK_THRESHOLD:
+        buffer = getTemperatureCallbackThreshold(packet);
+        break;
+      case FUNCTION_SET_DEBOUNCE_PERIOD:
+        buffer = setDebouncePeriod(packet);
+        break;
+      case FUNCTION_GET_DEBOUNCE_PERIOD:
+        buffer = getDebouncePeriod(packet);
+        break;
+      case FUNCTION_SET_I2C_MODE:
+        buffer = setI2CMode(packet);
+        break;
+      case FUNCTION_GET_I2C_MODE:
+        buffer = getI2CMode(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -173,17 +189,17 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature Bricklet";
    * 
    */
   private Buffer getTemperature(Packet packet) {
-    logger.debug("function getTemperature");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getTemperature");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_TEMPERATURE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt16((short) temperatureValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -193,16 +209,16 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature Bricklet";
    * 
    */
   private Buffer getDebouncePeriod(Packet packet) {
-    logger.debug("function getDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDebouncePeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.debouncePeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.debouncePeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -210,7 +226,7 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature Bricklet";
 
   private Buffer getDebouncePeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -218,16 +234,16 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature Bricklet";
    * 
    */
   private Buffer getTemperatureCallbackPeriod(Packet packet) {
-    logger.debug("function getTemperatureCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getTemperatureCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_TEMPERATURE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.temperatureCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.temperatureCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -235,7 +251,7 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature Bricklet";
 
   private Buffer getTemperatureCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -243,16 +259,16 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature Bricklet";
    * 
    */
   private Buffer getTemperatureCallbackThreshold(Packet packet) {
-    logger.debug("function getTemperatureCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getTemperatureCallbackThreshold");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 5;
       byte functionId = FUNCTION_GET_TEMPERATURE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.temperatureCallbackThreshold);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.temperatureCallbackThreshold);
+      return writer.buffer();
     }
 
     return null;
@@ -260,9 +276,9 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature Bricklet";
 
   private Buffer getTemperatureCallbackThresholdDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteDefaultValue(1));        
       return buffer;
   }
 
@@ -270,16 +286,16 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature Bricklet";
    * 
    */
   private Buffer getI2CMode(Packet packet) {
-    logger.debug("function getI2CMode");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getI2CMode");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_I2C_MODE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.i2CMode);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.i2CMode);
+      return writer.buffer();
     }
 
     return null;
@@ -287,7 +303,7 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature Bricklet";
 
   private Buffer getI2CModeDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -295,18 +311,23 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature Bricklet";
    * 
    */
   private Buffer setTemperatureCallbackPeriod(Packet packet) {
-    logger.debug("function setTemperatureCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setTemperatureCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.temperatureCallbackPeriod = packet.copyPayload();
+    temperatureCallback.setPeriod(Utils.decodeUInt32(this.temperatureCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_TEMPERATURE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.temperatureCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -314,18 +335,22 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature Bricklet";
    * 
    */
   private Buffer setI2CMode(Packet packet) {
-    logger.debug("function setI2CMode");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setI2CMode");
+    }
+    if (packet.getLength() - 8 != 1) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.i2CMode = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_I2C_MODE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.i2CMode = packet.getPayload();
+
     return null;
   }
 
@@ -333,18 +358,23 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature Bricklet";
    * 
    */
   private Buffer setTemperatureCallbackThreshold(Packet packet) {
-    logger.debug("function setTemperatureCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setTemperatureCallbackThreshold");
+    }
+    if (packet.getLength() - 8 != 5) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.temperatureCallbackThreshold = packet.copyPayload();
+    temperatureReachedCallback.setThreshold(this.temperatureCallbackThreshold);
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_TEMPERATURE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.temperatureCallbackThreshold = packet.getPayload();
+
     return null;
   }
 
@@ -352,18 +382,23 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature Bricklet";
    * 
    */
   private Buffer setDebouncePeriod(Packet packet) {
-    logger.debug("function setDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDebouncePeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.debouncePeriod = packet.copyPayload();
+    temperatureReachedCallback.setDebounce(Utils.decodeUInt32(this.debouncePeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.debouncePeriod = packet.getPayload();
+
     return null;
   }
 
@@ -371,16 +406,16 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature Bricklet";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
@@ -23,25 +23,30 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.callbacks.CallbackScheduler;
+import org.m1theo.tfemulator.callbacks.PeriodicCallback;
+import org.m1theo.tfemulator.callbacks.ThresholdCallback;
+import org.m1theo.tfemulator.callbacks.ValueType;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * Measures contactless object temperature between -70°C and +380°C
  */
-public class BrickletTemperatureIR extends AbstractVerticle {
+public class BrickletTemperatureIR extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 217;
 public final static String DEVICE_DISPLAY_NAME = "Temperature IR Bricklet";
@@ -78,6 +83,12 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature IR Bricklet";
   private Buffer objectTemperatureCallbackPeriod = getObjectTemperatureCallbackPeriodDefault();
   private Buffer ambientTemperatureCallbackThreshold = getAmbientTemperatureCallbackThresholdDefault();
   private Buffer debouncePeriod = getDebouncePeriodDefault();
+  private ValueSource[] objectTemperatureValues;
+  private ValueSource[] ambientTemperatureValues;
+  private PeriodicCallback ambientTemperatureCallback;
+  private PeriodicCallback objectTemperatureCallback;
+  private ThresholdCallback ambientTemperatureReachedCallback;
+  private ThresholdCallback objectTemperatureReachedCallback;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -92,100 +103,118 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature IR Bricklet";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletTemperatureIR.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
+    Router router = router();
+
+    objectTemperatureValues = valueSources("objectTemperature", 1);
+    ambientTemperatureValues = valueSources("ambientTemperature", 1);
+
+    CallbackScheduler scheduler = CallbackScheduler.get(vertx);
+    ambientTemperatureCallback = scheduler.newCallback(router, uidBytes, CALLBACK_AMBIENT_TEMPERATURE, 8 + 2, out -> {
+      out.writeInt16((short) ambientTemperatureValues[0].next(), 1);
+    });
+    objectTemperatureCallback = scheduler.newCallback(router, uidBytes, CALLBACK_OBJECT_TEMPERATURE, 8 + 2, out -> {
+      out.writeInt16((short) objectTemperatureValues[0].next(), 1);
+    });
+    ambientTemperatureReachedCallback = scheduler.newThresholdCallback(router, uidBytes, CALLBACK_AMBIENT_TEMPERATURE_REACHED,
+        ValueType.INT16, 1, values -> {
+          values[0] = (long) ambientTemperatureValues[0].next();
+        });
+    objectTemperatureReachedCallback = scheduler.newThresholdCallback(router, uidBytes, CALLBACK_OBJECT_TEMPERATURE_REACHED,
+        ValueType.INT16, 1, values -> {
+          values[0] = (long) objectTemperatureValues[0].next();
+        });
 
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
 
   }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    ambientTemperatureCallback.setPeriod(0);
+    objectTemperatureCallback.setPeriod(0);
+    ambientTemperatureReachedCallback.disable();
+    objectTemperatureReachedCallback.disable();
+    router().unregister(uidBytes);
+  }
+
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_GET_AMBIENT_TEMPERATURE) {
-      buffer = getAmbientTemperature(packet);
-    }
-    else if (functionId == FUNCTION_GET_OBJECT_TEMPERATURE) {
-      buffer = getObjectTemperature(packet);
-    }
-    else if (functionId == FUNCTION_SET_EMISSIVITY) {
-      buffer = setEmissivity(packet);
-    }
-    else if (functionId == FUNCTION_GET_EMISSIVITY) {
-      buffer = getEmissivity(packet);
-    }
-    else if (functionId == FUNCTION_SET_AMBIENT_TEMPERATURE_CALLBACK_PERIOD) {
-      buffer = setAmbientTemperatureCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_AMBIENT_TEMPERATURE_CALLBACK_PERIOD) {
-      buffer = getAmbientTemperatureCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_OBJECT_TEMPERATURE_CALLBACK_PERIOD) {
-      buffer = setObjectTemperatureCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_OBJECT_TEMPERATURE_CALLBACK_PERIOD) {
-      buffer = getObjectTemperatureCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_AMBIENT_TEMPERATURE_CALLBACK_THRESHOLD) {
-      buffer = setAmbientTemperatureCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_GET_AMBIENT_TEMPERATURE_CALLBACK_THRESHOLD) {
-      buffer = getAmbientTemperatureCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_SET_OBJECT_TEMPERATURE_CALLBACK_THRESHOLD) {
-      buffer = setObjectTemperatureCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_GET_OBJECT_TEMPERATURE_CALLBACK_THRESHOLD) {
-      buffer = getObjectTemperatureCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_SET_DEBOUNCE_PERIOD) {
-      buffer = setDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_DEBOUNCE_PERIOD) {
-      buffer = getDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_GET_AMBIENT_TEMPERATURE:
+        buffer = getAmbientTemperature(packet);
+        break;
+      case FUNCTION_GET_OBJECT_TEMPERATURE:
+        buffer = getObjectTemperature(packet);
+        break;
+      case FUNCTION_SET_EMISSIVITY:
+        buffer = setEmissivity(packet);
+        break;
+      case FUNCTION_GET_EMISSIVITY:
+        buffer = getEmissivity(packet);
+        break;
+      case FUNCTION_SET_AMBIENT_TEMPERATURE_CALLBACK_PERIOD:
+        buffer = setAmbientTemperatureCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_AMBIENT_TEMPERATURE_CALLBACK_PERIOD:
+        buffer = getAmbientTemperatureCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_OBJECT_TEMPERATURE_CALLBACK_PERIOD:
+        buffer = setObjectTemperatureCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_OBJECT_TEMPERATURE_CALLBACK_PERIOD:
+        buffer = getObjectTemperatureCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_AMBIENT_TEMPERATURE_CALLBACK_THRESHOLD:
+        buffer = setAmbientTemperatureCallbackThreshold(packet);
+        break;
+      case FUNCTION_GET_AMBIENT_TEMPERATURE_CALLBACK_THRESHOLD:
+        buffer = getAmbientTemperatureCallbackThreshold(packet);
+        break;
+      case FUNCTION_SET_OBJECT_TEMPERATURE_CALLBACK_THRESHOLD:
+        buffer = setObjectTemperatureCallbackThreshold(packet);
+        break;
+      case FUNCTION_GET_OBJECT_TEMPERATURE_CALLBACK_THRESHOLD:
+        buffer = getObjectTemperatureCallbackThreshold(packet);
+        break;
+      case FUNCTION_SET_DEBOUNCE_PERIOD:
+        buffer = setDebouncePeriod(packet);
+        break;
+      case FUNCTION_GET_DEBOUNCE_PERIOD:
+        buffer = getDebouncePeriod(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -195,17 +224,17 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature IR Bricklet";
    * 
    */
   private Buffer getObjectTemperature(Packet packet) {
-    logger.debug("function getObjectTemperature");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getObjectTemperature");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_OBJECT_TEMPERATURE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt16((short) objectTemperatureValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -215,17 +244,17 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature IR Bricklet";
    * 
    */
   private Buffer getAmbientTemperature(Packet packet) {
-    logger.debug("function getAmbientTemperature");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAmbientTemperature");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_AMBIENT_TEMPERATURE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt16((short) ambientTemperatureValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -235,16 +264,16 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature IR Bricklet";
    * 
    */
   private Buffer getAmbientTemperatureCallbackPeriod(Packet packet) {
-    logger.debug("function getAmbientTemperatureCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAmbientTemperatureCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_AMBIENT_TEMPERATURE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.ambientTemperatureCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.ambientTemperatureCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -252,7 +281,7 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature IR Bricklet";
 
   private Buffer getAmbientTemperatureCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -260,16 +289,16 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature IR Bricklet";
    * 
    */
   private Buffer getObjectTemperatureCallbackThreshold(Packet packet) {
-    logger.debug("function getObjectTemperatureCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getObjectTemperatureCallbackThreshold");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 5;
       byte functionId = FUNCTION_GET_OBJECT_TEMPERATURE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.objectTemperatureCallbackThreshold);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.objectTemperatureCallbackThreshold);
+      return writer.buffer();
     }
 
     return null;
@@ -277,9 +306,9 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature IR Bricklet";
 
   private Buffer getObjectTemperatureCallbackThresholdDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteDefaultValue(1));        
       return buffer;
   }
 
@@ -287,16 +316,16 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature IR Bricklet";
    * 
    */
   private Buffer getEmissivity(Packet packet) {
-    logger.debug("function getEmissivity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getEmissivity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 2;
       byte functionId = FUNCTION_GET_EMISSIVITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.emissivity);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.emissivity);
+      return writer.buffer();
     }
 
     return null;
@@ -304,7 +333,7 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature IR Bricklet";
 
   private Buffer getEmissivityDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -312,16 +341,16 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature IR Bricklet";
    * 
    */
   private Buffer getObjectTemperatureCallbackPeriod(Packet packet) {
-    logger.debug("function getObjectTemperatureCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getObjectTemperatureCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_OBJECT_TEMPERATURE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.objectTemperatureCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.objectTemperatureCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -329,7 +358,7 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature IR Bricklet";
 
   private Buffer getObjectTemperatureCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -337,16 +366,16 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature IR Bricklet";
    * 
    */
   private Buffer getAmbientTemperatureCallbackThreshold(Packet packet) {
-    logger.debug("function getAmbientTemperatureCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getAmbientTemperatureCallbackThreshold");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 5;
       byte functionId = FUNCTION_GET_AMBIENT_TEMPERATURE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.ambientTemperatureCallbackThreshold);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.ambientTemperatureCallbackThreshold);
+      return writer.buffer();
     }
 
     return null;
@@ -354,9 +383,9 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature IR Bricklet";
 
   private Buffer getAmbientTemperatureCallbackThresholdDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteRandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteDefaultValue(1));        
       return buffer;
   }
 
@@ -364,16 +393,16 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature IR Bricklet";
    * 
    */
   private Buffer getDebouncePeriod(Packet packet) {
-    logger.debug("function getDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDebouncePeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.debouncePeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.debouncePeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -381,7 +410,7 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature IR Bricklet";
 
   private Buffer getDebouncePeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -389,18 +418,23 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature IR Bricklet";
    * 
    */
   private Buffer setObjectTemperatureCallbackThreshold(Packet packet) {
-    logger.debug("function setObjectTemperatureCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setObjectTemperatureCallbackThreshold");
+    }
+    if (packet.getLength() - 8 != 5) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.objectTemperatureCallbackThreshold = packet.copyPayload();
+    objectTemperatureReachedCallback.setThreshold(this.objectTemperatureCallbackThreshold);
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_OBJECT_TEMPERATURE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.objectTemperatureCallbackThreshold = packet.getPayload();
+
     return null;
   }
 
@@ -408,18 +442,23 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature IR Bricklet";
    * 
    */
   private Buffer setObjectTemperatureCallbackPeriod(Packet packet) {
-    logger.debug("function setObjectTemperatureCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setObjectTemperatureCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.objectTemperatureCallbackPeriod = packet.copyPayload();
+    objectTemperatureCallback.setPeriod(Utils.decodeUInt32(this.objectTemperatureCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_OBJECT_TEMPERATURE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.objectTemperatureCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -427,18 +466,23 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature IR Bricklet";
    * 
    */
   private Buffer setAmbientTemperatureCallbackThreshold(Packet packet) {
-    logger.debug("function setAmbientTemperatureCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setAmbientTemperatureCallbackThreshold");
+    }
+    if (packet.getLength() - 8 != 5) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.ambientTemperatureCallbackThreshold = packet.copyPayload();
+    ambientTemperatureReachedCallback.setThreshold(this.ambientTemperatureCallbackThreshold);
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_AMBIENT_TEMPERATURE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.ambientTemperatureCallbackThreshold = packet.getPayload();
+
     return null;
   }
 
@@ -446,18 +490,23 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature IR Bricklet";
    * 
    */
   private Buffer setAmbientTemperatureCallbackPeriod(Packet packet) {
-    logger.debug("function setAmbientTemperatureCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setAmbientTemperatureCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.ambientTemperatureCallbackPeriod = packet.copyPayload();
+    ambientTemperatureCallback.setPeriod(Utils.decodeUInt32(this.ambientTemperatureCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_AMBIENT_TEMPERATURE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.ambientTemperatureCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -465,18 +514,22 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature IR Bricklet";
    * 
    */
   private Buffer setEmissivity(Packet packet) {
-    logger.debug("function setEmissivity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setEmissivity");
+    }
+    if (packet.getLength() - 8 != 2) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.emissivity = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_EMISSIVITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.emissivity = packet.getPayload();
+
     return null;
   }
 
@@ -484,18 +537,24 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature IR Bricklet";
    * 
    */
   private Buffer setDebouncePeriod(Packet packet) {
-    logger.debug("function setDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDebouncePeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.debouncePeriod = packet.copyPayload();
+    ambientTemperatureReachedCallback.setDebounce(Utils.decodeUInt32(this.debouncePeriod, 0));
+    objectTemperatureReachedCallback.setDebounce(Utils.decodeUInt32(this.debouncePeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.debouncePeriod = packet.getPayload();
+
     return null;
   }
 
@@ -503,16 +562,16 @@ public final static String DEVICE_DISPLAY_NAME = "Temperature IR Bricklet";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
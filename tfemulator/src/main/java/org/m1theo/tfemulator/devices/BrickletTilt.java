@@ -23,25 +23,26 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * Detects inclination of Bricklet (tilt switch open/closed)
  */
-public class BrickletTilt extends AbstractVerticle {
+public class BrickletTilt extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 239;
 public final static String DEVICE_DISPLAY_NAME = "Tilt Bricklet";
@@ -58,6 +59,7 @@ public final static String DEVICE_DISPLAY_NAME = "Tilt Bricklet";
   public final static short TILT_STATE_CLOSED_VIBRATING = (short)2;
   String uidString;
   private Buffer TiltStateCallback = isTiltStateCallbackEnabledDefault();
+  private ValueSource[] tiltStateValues;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -72,70 +74,67 @@ public final static String DEVICE_DISPLAY_NAME = "Tilt Bricklet";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletTilt.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
-
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    Router router = router();
+
+    tiltStateValues = valueSources("tiltState", 1);
+
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
 
   }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    router().unregister(uidBytes);
+  }
+
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_GET_TILT_STATE) {
-      buffer = getTiltState(packet);
-    }
-    else if (functionId == FUNCTION_ENABLE_TILT_STATE_CALLBACK) {
-      buffer = enableTiltStateCallback(packet);
-    }
-    else if (functionId == FUNCTION_DISABLE_TILT_STATE_CALLBACK) {
-      buffer = disableTiltStateCallback(packet);
-    }
-    else if (functionId == FUNCTION_IS_TILT_STATE_CALLBACK_ENABLED) {
-      buffer = isTiltStateCallbackEnabled(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_GET_TILT_STATE:
+        buffer = getTiltState(packet);
+        break;
+      case FUNCTION_ENABLE_TILT_STATE_CALLBACK:
+        buffer = enableTiltStateCallback(packet);
+        break;
+      case FUNCTION_DISABLE_TILT_STATE_CALLBACK:
+        buffer = disableTiltStateCallback(packet);
+        break;
+      case FUNCTION_IS_TILT_STATE_CALLBACK_ENABLED:
+        buffer = isTiltStateCallbackEnabled(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -145,17 +144,17 @@ public final static String DEVICE_DISPLAY_NAME = "Tilt Bricklet";
    * 
    */
   private Buffer getTiltState(Packet packet) {
-    logger.debug("function getTiltState");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getTiltState");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_GET_TILT_STATE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeUInt8((short) tiltStateValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -165,16 +164,16 @@ public final static String DEVICE_DISPLAY_NAME = "Tilt Bricklet";
    * 
    */
   private Buffer isTiltStateCallbackEnabled(Packet packet) {
-    logger.debug("function isTiltStateCallbackEnabled");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function isTiltStateCallbackEnabled");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 1;
       byte functionId = FUNCTION_IS_TILT_STATE_CALLBACK_ENABLED;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.TiltStateCallback);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.TiltStateCallback);
+      return writer.buffer();
     }
 
     return null;
@@ -182,7 +181,7 @@ public final static String DEVICE_DISPLAY_NAME = "Tilt Bricklet";
 
   private Buffer isTiltStateCallbackEnabledDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getBoolRandomValue(1));        
+      buffer.appendBytes(Utils.getBoolDefaultValue(1));        
       return buffer;
   }
 
@@ -190,18 +189,22 @@ public final static String DEVICE_DISPLAY_NAME = "Tilt Bricklet";
    * 
    */
   private Buffer enableTiltStateCallback(Packet packet) {
-    logger.debug("function enableTiltStateCallback");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function enableTiltStateCallback");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.TiltStateCallback = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_ENABLE_TILT_STATE_CALLBACK;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.TiltStateCallback = packet.getPayload();
+
     return null;
   }
 
@@ -209,18 +212,22 @@ public final static String DEVICE_DISPLAY_NAME = "Tilt Bricklet";
    * 
    */
   private Buffer disableTiltStateCallback(Packet packet) {
-    logger.debug("function disableTiltStateCallback");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function disableTiltStateCallback");
+    }
+    if (packet.getLength() - 8 != 0) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.TiltStateCallback = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_DISABLE_TILT_STATE_CALLBACK;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.TiltStateCallback = packet.getPayload();
+
     return null;
   }
 
@@ -228,16 +235,16 @@ public final static String DEVICE_DISPLAY_NAME = "Tilt Bricklet";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
@@ -23,25 +23,30 @@
 
 package org.m1theo.tfemulator.devices;
 
-import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Set;
-
-import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.callbacks.CallbackScheduler;
+import org.m1theo.tfemulator.callbacks.PeriodicCallback;
+import org.m1theo.tfemulator.callbacks.ThresholdCallback;
+import org.m1theo.tfemulator.callbacks.ValueType;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.m1theo.tfemulator.protocol.ResponseWriter;
+import org.m1theo.tfemulator.values.ValueSource;
 
 /**
  * Measures power, DC voltage and DC current up to 720W/36V/20A
  */
-public class BrickletVoltageCurrent extends AbstractVerticle {
+public class BrickletVoltageCurrent extends Device {
 long uidBytes;
 int[] apiVersion = new int[3];
 private Logger logger;
+private final ResponseWriter writer = new ResponseWriter();
 
 public final static int DEVICE_IDENTIFIER = 227;
 public final static String DEVICE_DISPLAY_NAME = "Voltage/Current Bricklet";
@@ -98,6 +103,15 @@ public final static String DEVICE_DISPLAY_NAME = "Voltage/Current Bricklet";
   private Buffer powerCallbackPeriod = getPowerCallbackPeriodDefault();
   private Buffer calibration = getCalibrationDefault();
   private Buffer debouncePeriod = getDebouncePeriodDefault();
+  private ValueSource[] currentValues;
+  private ValueSource[] voltageValues;
+  private ValueSource[] powerValues;
+  private PeriodicCallback currentCallback;
+  private PeriodicCallback voltageCallback;
+  private PeriodicCallback powerCallback;
+  private ThresholdCallback currentReachedCallback;
+  private ThresholdCallback voltageReachedCallback;
+  private ThresholdCallback powerReachedCallback;
 
   /**
    * Starts a verticle for the device with the unique device ID \c uid.
@@ -112,121 +126,149 @@ public final static String DEVICE_DISPLAY_NAME = "Voltage/Current Bricklet";
     logger = LoggerFactory.getLogger(getClass());
 
     logger.info("Verticle started: " + BrickletVoltageCurrent.class);
-    uidString = config().getString("uid");
+    uidString = deviceConfig().uid();
     uidBytes = Utils.uid2long(uidString);
+    Router router = router();
+
+    currentValues = valueSources("current", 1);
+    voltageValues = valueSources("voltage", 1);
+    powerValues = valueSources("power", 1);
+
+    CallbackScheduler scheduler = CallbackScheduler.get(vertx);
+    currentCallback = scheduler.newCallback(router, uidBytes, CALLBACK_CURRENT, 8 + 4, out -> {
+      out.writeInt32((int) currentValues[0].next(), 1);
+    });
+    voltageCallback = scheduler.newCallback(router, uidBytes, CALLBACK_VOLTAGE, 8 + 4, out -> {
+      out.writeInt32((int) voltageValues[0].next(), 1);
+    });
+    powerCallback = scheduler.newCallback(router, uidBytes, CALLBACK_POWER, 8 + 4, out -> {
+      out.writeInt32((int) powerValues[0].next(), 1);
+    });
+    currentReachedCallback = scheduler.newThresholdCallback(router, uidBytes, CALLBACK_CURRENT_REACHED,
+        ValueType.INT32, 1, values -> {
+          values[0] = (long) currentValues[0].next();
+        });
+    voltageReachedCallback = scheduler.newThresholdCallback(router, uidBytes, CALLBACK_VOLTAGE_REACHED,
+        ValueType.INT32, 1, values -> {
+          values[0] = (long) voltageValues[0].next();
+        });
+    powerReachedCallback = scheduler.newThresholdCallback(router, uidBytes, CALLBACK_POWER_REACHED,
+        ValueType.INT32, 1, values -> {
+          values[0] = (long) powerValues[0].next();
+        });
 
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      logger.trace("got request: {}", packet.toString());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-            if (buffer != null) {
-              logger.trace(
-                  "sending answer: {}", new Packet(buffer).toString());
-              vertx.eventBus().publish((String) handlerid, buffer);
-            } else {
-              logger.trace("buffer is null");
-            }
+    // Brickd traces the requests
+    PacketTrace trace = PacketTrace.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      // answer only the connection the request came from
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (buffer != null) {
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
+          }
+          vertx.eventBus().send(handlerid, buffer);
+        } else if (logger.isTraceEnabled()) {
+          logger.trace("buffer is null");
         }
       }
       });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          if (handlerids != null) {
-            logger.debug("sending enumerate answer");
-            for (Object handlerid : handlerids) {
-              vertx.eventBus().publish((String) handlerid,
-                  Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
-            }
-          } else {
-            logger.error("no handlerids found");
-          }
-        });
+    // answer enumeration requests
+    registerEnumerate(uidString, uidBytes, DEVICE_IDENTIFIER);
 
   }
 
+  /**
+   * Removes the device from the router.
+   */
+  @Override
+  public void stop() throws Exception {
+    currentCallback.setPeriod(0);
+    voltageCallback.setPeriod(0);
+    powerCallback.setPeriod(0);
+    currentReachedCallback.disable();
+    voltageReachedCallback.disable();
+    powerReachedCallback.disable();
+    router().unregister(uidBytes);
+  }
+
   private Buffer callFunction(Packet packet) {
     Buffer buffer = null;
     byte functionId = packet.getFunctionId();
-    if (functionId == 0 ){
-      //TODO raise Exception or log error
-    }
-    else if (functionId == FUNCTION_GET_CURRENT) {
-      buffer = getCurrent(packet);
-    }
-    else if (functionId == FUNCTION_GET_VOLTAGE) {
-      buffer = getVoltage(packet);
-    }
-    else if (functionId == FUNCTION_GET_POWER) {
-      buffer = getPower(packet);
-    }
-    else if (functionId == FUNCTION_SET_CONFIGURATION) {
-      buffer = setConfiguration(packet);
-    }
-    else if (functionId == FUNCTION_GET_CONFIGURATION) {
-      buffer = getConfiguration(packet);
-    }
-    else if (functionId == FUNCTION_SET_CALIBRATION) {
-      buffer = setCalibration(packet);
-    }
-    else if (functionId == FUNCTION_GET_CALIBRATION) {
-      buffer = getCalibration(packet);
-    }
-    else if (functionId == FUNCTION_SET_CURRENT_CALLBACK_PERIOD) {
-      buffer = setCurrentCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_CURRENT_CALLBACK_PERIOD) {
-      buffer = getCurrentCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_VOLTAGE_CALLBACK_PERIOD) {
-      buffer = setVoltageCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_VOLTAGE_CALLBACK_PERIOD) {
-      buffer = getVoltageCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_POWER_CALLBACK_PERIOD) {
-      buffer = setPowerCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_POWER_CALLBACK_PERIOD) {
-      buffer = getPowerCallbackPeriod(packet);
-    }
-    else if (functionId == FUNCTION_SET_CURRENT_CALLBACK_THRESHOLD) {
-      buffer = setCurrentCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_GET_CURRENT_CALLBACK_THRESHOLD) {
-      buffer = getCurrentCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_SET_VOLTAGE_CALLBACK_THRESHOLD) {
-      buffer = setVoltageCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_GET_VOLTAGE_CALLBACK_THRESHOLD) {
-      buffer = getVoltageCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_SET_POWER_CALLBACK_THRESHOLD) {
-      buffer = setPowerCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_GET_POWER_CALLBACK_THRESHOLD) {
-      buffer = getPowerCallbackThreshold(packet);
-    }
-    else if (functionId == FUNCTION_SET_DEBOUNCE_PERIOD) {
-      buffer = setDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_DEBOUNCE_PERIOD) {
-      buffer = getDebouncePeriod(packet);
-    }
-    else if (functionId == FUNCTION_GET_IDENTITY) {
-      buffer = getIdentity(packet);
-    }
-    else {
-      // TODO: raise Exception or log error
+    switch (functionId) {
+      case FUNCTION_GET_CURRENT:
+        buffer = getCurrent(packet);
+        break;
+      case FUNCTION_GET_VOLTAGE:
+        buffer = getVoltage(packet);
+        break;
+      case FUNCTION_GET_POWER:
+        buffer = getPower(packet);
+        break;
+      case FUNCTION_SET_CONFIGURATION:
+        buffer = setConfiguration(packet);
+        break;
+      case FUNCTION_GET_CONFIGURATION:
+        buffer = getConfiguration(packet);
+        break;
+      case FUNCTION_SET_CALIBRATION:
+        buffer = setCalibration(packet);
+        break;
+      case FUNCTION_GET_CALIBRATION:
+        buffer = getCalibration(packet);
+        break;
+      case FUNCTION_SET_CURRENT_CALLBACK_PERIOD:
+        buffer = setCurrentCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_CURRENT_CALLBACK_PERIOD:
+        buffer = getCurrentCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_VOLTAGE_CALLBACK_PERIOD:
+        buffer = setVoltageCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_VOLTAGE_CALLBACK_PERIOD:
+        buffer = getVoltageCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_POWER_CALLBACK_PERIOD:
+        buffer = setPowerCallbackPeriod(packet);
+        break;
+      case FUNCTION_GET_POWER_CALLBACK_PERIOD:
+        buffer = getPowerCallbackPeriod(packet);
+        break;
+      case FUNCTION_SET_CURRENT_CALLBACK_THRESHOLD:
+        buffer = setCurrentCallbackThreshold(packet);
+        break;
+      case FUNCTION_GET_CURRENT_CALLBACK_THRESHOLD:
+        buffer = getCurrentCallbackThreshold(packet);
+        break;
+      case FUNCTION_SET_VOLTAGE_CALLBACK_THRESHOLD:
+        buffer = setVoltageCallbackThreshold(packet);
+        break;
+      case FUNCTION_GET_VOLTAGE_CALLBACK_THRESHOLD:
+        buffer = getVoltageCallbackThreshold(packet);
+        break;
+      case FUNCTION_SET_POWER_CALLBACK_THRESHOLD:
+        buffer = setPowerCallbackThreshold(packet);
+        break;
+      case FUNCTION_GET_POWER_CALLBACK_THRESHOLD:
+        buffer = getPowerCallbackThreshold(packet);
+        break;
+      case FUNCTION_SET_DEBOUNCE_PERIOD:
+        buffer = setDebouncePeriod(packet);
+        break;
+      case FUNCTION_GET_DEBOUNCE_PERIOD:
+        buffer = getDebouncePeriod(packet);
+        break;
+      case FUNCTION_GET_IDENTITY:
+        buffer = getIdentity(packet);
+        break;
+      default:
+        if (logger.isDebugEnabled()) {
+          logger.debug("function id {} not supported", functionId & 0xFF);
+        }
+        buffer = writer.error(uidBytes, packet, Packet.ERROR_FUNCTION_NOT_SUPPORTED);
+        break;
     }
     return buffer;
   }
@@ -236,17 +278,17 @@ public final static String DEVICE_DISPLAY_NAME = "Voltage/Current Bricklet";
    * 
    */
   private Buffer getCurrent(Packet packet) {
-    logger.debug("function getCurrent");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getCurrent");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_CURRENT;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get4ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt32((int) currentValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -256,17 +298,17 @@ public final static String DEVICE_DISPLAY_NAME = "Voltage/Current Bricklet";
    * 
    */
   private Buffer getVoltage(Packet packet) {
-    logger.debug("function getVoltage");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getVoltage");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_VOLTAGE;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get4ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt32((int) voltageValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -276,17 +318,17 @@ public final static String DEVICE_DISPLAY_NAME = "Voltage/Current Bricklet";
    * 
    */
   private Buffer getPower(Packet packet) {
-    logger.debug("function getPower");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getPower");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_POWER;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBytes(Utils.get4ByteRandomValue(1));        
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeInt32((int) powerValues[0].next(), 1);
 
-      return buffer;
+      return writer.buffer();
     }
 
     return null;
@@ -296,16 +338,16 @@ public final static String DEVICE_DISPLAY_NAME = "Voltage/Current Bricklet";
    * 
    */
   private Buffer getCurrentCallbackPeriod(Packet packet) {
-    logger.debug("function getCurrentCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getCurrentCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_CURRENT_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.currentCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.currentCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -313,7 +355,7 @@ public final static String DEVICE_DISPLAY_NAME = "Voltage/Current Bricklet";
 
   private Buffer getCurrentCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -321,16 +363,16 @@ public final static String DEVICE_DISPLAY_NAME = "Voltage/Current Bricklet";
    * 
    */
   private Buffer getConfiguration(Packet packet) {
-    logger.debug("function getConfiguration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getConfiguration");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 3;
       byte functionId = FUNCTION_GET_CONFIGURATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.configuration);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.configuration);
+      return writer.buffer();
     }
 
     return null;
@@ -338,9 +380,9 @@ public final static String DEVICE_DISPLAY_NAME = "Voltage/Current Bricklet";
 
   private Buffer getConfigurationDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get1ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get1ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -348,16 +390,16 @@ public final static String DEVICE_DISPLAY_NAME = "Voltage/Current Bricklet";
    * 
    */
   private Buffer getVoltageCallbackPeriod(Packet packet) {
-    logger.debug("function getVoltageCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getVoltageCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_VOLTAGE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.voltageCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.voltageCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -365,7 +407,7 @@ public final static String DEVICE_DISPLAY_NAME = "Voltage/Current Bricklet";
 
   private Buffer getVoltageCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -373,16 +415,16 @@ public final static String DEVICE_DISPLAY_NAME = "Voltage/Current Bricklet";
    * 
    */
   private Buffer getVoltageCallbackThreshold(Packet packet) {
-    logger.debug("function getVoltageCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getVoltageCallbackThreshold");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 9;
       byte functionId = FUNCTION_GET_VOLTAGE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.voltageCallbackThreshold);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.voltageCallbackThreshold);
+      return writer.buffer();
     }
 
     return null;
@@ -390,9 +432,9 @@ public final static String DEVICE_DISPLAY_NAME = "Voltage/Current Bricklet";
 
   private Buffer getVoltageCallbackThresholdDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteRandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get4ByteDefaultValue(1));        
+      buffer.appendBytes(Utils.get4ByteDefaultValue(1));        
       return buffer;
   }
 
@@ -400,16 +442,16 @@ public final static String DEVICE_DISPLAY_NAME = "Voltage/Current Bricklet";
    * 
    */
   private Buffer getCurrentCallbackThreshold(Packet packet) {
-    logger.debug("function getCurrentCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getCurrentCallbackThreshold");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 9;
       byte functionId = FUNCTION_GET_CURRENT_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.currentCallbackThreshold);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.currentCallbackThreshold);
+      return writer.buffer();
     }
 
     return null;
@@ -417,9 +459,9 @@ public final static String DEVICE_DISPLAY_NAME = "Voltage/Current Bricklet";
 
   private Buffer getCurrentCallbackThresholdDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteRandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get4ByteDefaultValue(1));        
+      buffer.appendBytes(Utils.get4ByteDefaultValue(1));        
       return buffer;
   }
 
@@ -427,16 +469,16 @@ public final static String DEVICE_DISPLAY_NAME = "Voltage/Current Bricklet";
    * 
    */
   private Buffer getPowerCallbackThreshold(Packet packet) {
-    logger.debug("function getPowerCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getPowerCallbackThreshold");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 9;
       byte functionId = FUNCTION_GET_POWER_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.powerCallbackThreshold);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.powerCallbackThreshold);
+      return writer.buffer();
     }
 
     return null;
@@ -444,9 +486,9 @@ public final static String DEVICE_DISPLAY_NAME = "Voltage/Current Bricklet";
 
   private Buffer getPowerCallbackThresholdDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.getCharRandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteRandomValue(1));        
-      buffer.appendBytes(Utils.get4ByteRandomValue(1));        
+      buffer.appendBytes(Utils.getCharDefaultValue(1));        
+      buffer.appendBytes(Utils.get4ByteDefaultValue(1));        
+      buffer.appendBytes(Utils.get4ByteDefaultValue(1));        
       return buffer;
   }
 
@@ -454,16 +496,16 @@ public final static String DEVICE_DISPLAY_NAME = "Voltage/Current Bricklet";
    * 
    */
   private Buffer getPowerCallbackPeriod(Packet packet) {
-    logger.debug("function getPowerCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getPowerCallbackPeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_POWER_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.powerCallbackPeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.powerCallbackPeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -471,7 +513,7 @@ public final static String DEVICE_DISPLAY_NAME = "Voltage/Current Bricklet";
 
   private Buffer getPowerCallbackPeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -479,16 +521,16 @@ public final static String DEVICE_DISPLAY_NAME = "Voltage/Current Bricklet";
    * 
    */
   private Buffer getCalibration(Packet packet) {
-    logger.debug("function getCalibration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getCalibration");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_CALIBRATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.calibration);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.calibration);
+      return writer.buffer();
     }
 
     return null;
@@ -496,8 +538,8 @@ public final static String DEVICE_DISPLAY_NAME = "Voltage/Current Bricklet";
 
   private Buffer getCalibrationDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
-      buffer.appendBytes(Utils.get2ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
+      buffer.appendBytes(Utils.get2ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -505,16 +547,16 @@ public final static String DEVICE_DISPLAY_NAME = "Voltage/Current Bricklet";
    * 
    */
   private Buffer getDebouncePeriod(Packet packet) {
-    logger.debug("function getDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getDebouncePeriod");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 4;
       byte functionId = FUNCTION_GET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-      buffer.appendBuffer(this.debouncePeriod);
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(this.debouncePeriod);
+      return writer.buffer();
     }
 
     return null;
@@ -522,7 +564,7 @@ public final static String DEVICE_DISPLAY_NAME = "Voltage/Current Bricklet";
 
   private Buffer getDebouncePeriodDefault() {
       Buffer buffer = Buffer.buffer();
-      buffer.appendBytes(Utils.get4ByteURandomValue(1));        
+      buffer.appendBytes(Utils.get4ByteUDefaultValue(1));        
       return buffer;
   }
 
@@ -530,18 +572,23 @@ public final static String DEVICE_DISPLAY_NAME = "Voltage/Current Bricklet";
    * 
    */
   private Buffer setCurrentCallbackThreshold(Packet packet) {
-    logger.debug("function setCurrentCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setCurrentCallbackThreshold");
+    }
+    if (packet.getLength() - 8 != 9) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.currentCallbackThreshold = packet.copyPayload();
+    currentReachedCallback.setThreshold(this.currentCallbackThreshold);
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_CURRENT_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.currentCallbackThreshold = packet.getPayload();
+
     return null;
   }
 
@@ -549,18 +596,22 @@ public final static String DEVICE_DISPLAY_NAME = "Voltage/Current Bricklet";
    * 
    */
   private Buffer setCalibration(Packet packet) {
-    logger.debug("function setCalibration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setCalibration");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.calibration = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_CALIBRATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.calibration = packet.getPayload();
+
     return null;
   }
 
@@ -568,18 +619,22 @@ public final static String DEVICE_DISPLAY_NAME = "Voltage/Current Bricklet";
    * 
    */
   private Buffer setConfiguration(Packet packet) {
-    logger.debug("function setConfiguration");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setConfiguration");
+    }
+    if (packet.getLength() - 8 != 3) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.configuration = packet.copyPayload();
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_CONFIGURATION;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.configuration = packet.getPayload();
+
     return null;
   }
 
@@ -587,18 +642,23 @@ public final static String DEVICE_DISPLAY_NAME = "Voltage/Current Bricklet";
    * 
    */
   private Buffer setVoltageCallbackPeriod(Packet packet) {
-    logger.debug("function setVoltageCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setVoltageCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.voltageCallbackPeriod = packet.copyPayload();
+    voltageCallback.setPeriod(Utils.decodeUInt32(this.voltageCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_VOLTAGE_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.voltageCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -606,18 +666,23 @@ public final static String DEVICE_DISPLAY_NAME = "Voltage/Current Bricklet";
    * 
    */
   private Buffer setPowerCallbackThreshold(Packet packet) {
-    logger.debug("function setPowerCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setPowerCallbackThreshold");
+    }
+    if (packet.getLength() - 8 != 9) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.powerCallbackThreshold = packet.copyPayload();
+    powerReachedCallback.setThreshold(this.powerCallbackThreshold);
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_POWER_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.powerCallbackThreshold = packet.getPayload();
+
     return null;
   }
 
@@ -625,18 +690,23 @@ public final static String DEVICE_DISPLAY_NAME = "Voltage/Current Bricklet";
    * 
    */
   private Buffer setPowerCallbackPeriod(Packet packet) {
-    logger.debug("function setPowerCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setPowerCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.powerCallbackPeriod = packet.copyPayload();
+    powerCallback.setPeriod(Utils.decodeUInt32(this.powerCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_POWER_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.powerCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -644,18 +714,25 @@ public final static String DEVICE_DISPLAY_NAME = "Voltage/Current Bricklet";
    * 
    */
   private Buffer setDebouncePeriod(Packet packet) {
-    logger.debug("function setDebouncePeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setDebouncePeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.debouncePeriod = packet.copyPayload();
+    currentReachedCallback.setDebounce(Utils.decodeUInt32(this.debouncePeriod, 0));
+    powerReachedCallback.setDebounce(Utils.decodeUInt32(this.debouncePeriod, 0));
+    voltageReachedCallback.setDebounce(Utils.decodeUInt32(this.debouncePeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_DEBOUNCE_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.debouncePeriod = packet.getPayload();
+
     return null;
   }
 
@@ -663,18 +740,23 @@ public final static String DEVICE_DISPLAY_NAME = "Voltage/Current Bricklet";
    * 
    */
   private Buffer setCurrentCallbackPeriod(Packet packet) {
-    logger.debug("function setCurrentCallbackPeriod");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setCurrentCallbackPeriod");
+    }
+    if (packet.getLength() - 8 != 4) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.currentCallbackPeriod = packet.copyPayload();
+    currentCallback.setPeriod(Utils.decodeUInt32(this.currentCallbackPeriod, 0));
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_CURRENT_CALLBACK_PERIOD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.currentCallbackPeriod = packet.getPayload();
+
     return null;
   }
 
@@ -682,18 +764,23 @@ public final static String DEVICE_DISPLAY_NAME = "Voltage/Current Bricklet";
    * 
    */
   private Buffer setVoltageCallbackThreshold(Packet packet) {
-    logger.debug("function setVoltageCallbackThreshold");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function setVoltageCallbackThreshold");
+    }
+    if (packet.getLength() - 8 != 9) {
+      return writer.error(uidBytes, packet, Packet.ERROR_INVALID_PARAMETER);
+    }
+    this.voltageCallbackThreshold = packet.copyPayload();
+    voltageReachedCallback.setThreshold(this.voltageCallbackThreshold);
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 0;
       byte functionId = FUNCTION_SET_VOLTAGE_CALLBACK_THRESHOLD;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
 //TODO response expected bei settern
-      return buffer;
+      return writer.buffer();
     }
-    this.voltageCallbackThreshold = packet.getPayload();
+
     return null;
   }
 
@@ -701,16 +788,16 @@ public final static String DEVICE_DISPLAY_NAME = "Voltage/Current Bricklet";
    * 
    */
   private Buffer getIdentity(Packet packet) {
-    logger.debug("function getIdentity");
+    if (logger.isDebugEnabled()) {
+      logger.debug("function getIdentity");
+    }
     if (packet.getResponseExpected()) {
       byte length = (byte) 8 + 25;
       byte functionId = FUNCTION_GET_IDENTITY;
       byte flags = (byte) 0;
-      Buffer header = Utils.createHeader(uidBytes, length, functionId, packet.getOptions(), flags);
-      Buffer buffer = Buffer.buffer();
-      buffer.appendBuffer(header);
-       buffer.appendBuffer(Utils.getIdentityPayload(uidString, uidBytes, DEVICE_IDENTIFIER));
-      return buffer;
+      writer.header(uidBytes, length, functionId, packet.getOptions(), flags);
+      writer.writeBuffer(identityPayload());
+      return writer.buffer();
     }
 
     return null;
@@ -6,10 +6,14 @@ import io.vertx.core.buffer.Buffer;
 import java.util.Set;
 
 import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class BrickletAmbientLight extends AbstractVerticle {
+  private final static Logger logger = LoggerFactory.getLogger(BrickletAmbientLight.class);
   public final static int DEVICE_IDENTIFIER = 21;
   public final static String DEVICE_DISPLAY_NAME = "Ambient Light Bricklet";
 
@@ -41,49 +45,44 @@ public class BrickletAmbientLight extends AbstractVerticle {
 
   @Override
   public void start() throws Exception {
-    System.out.println("Verticle started: " + BrickletAmbientLight.class);
+    logger.info("Verticle started: {}", BrickletAmbientLight.class);
     String uidString = config().getString("uid");
     uidBytes = Utils.uid2long(uidString);
-    System.out.println("uid in start " + uidBytes);
+    logger.debug("uid in start {}", uidBytes);
 
-    vertx.eventBus().consumer(
-        uidString,
-        message -> {
-          Buffer msgBuffer = (Buffer) message.body();
-          System.out.println(BrickletAmbientLight.class + " " + uidString + " got message: "
-              + Utils.packetHeader2String(msgBuffer));
+    PacketTrace trace = PacketTrace.get(vertx);
+    Router router = Router.get(vertx);
+    router.register(uidBytes, context,
+        (packet, handlerid) -> {
+          if (logger.isDebugEnabled()) {
+            logger.debug("{} got message: {}", uidString, packet);
+          }
           // extract functionID, search and execute function, send a reply buffer
-          // to all vertx.getLocalMap(HANDLERIDMAP) keys
+          // to the socket the request came from
           // implement a function map with function number to code
           // message.reply(Utils.packetHeader2String((Buffer) message.body()));
           // message.reply(getIlluminance(Utils.getSequenceNumberFromData((Buffer)
           // message.body())));
-          Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-          for (Object handlerid : handlerids) {
-            Utils.getFunctionIDFromData(msgBuffer);
-            Buffer buffer =
-                callFunction(Utils.getFunctionIDFromData(msgBuffer),
-                    Utils.getOptionsFromData(msgBuffer));
-            // TODO add logging
-            System.out.println(BrickletAmbientLight.class + " sending answer "
-                + Utils.packetHeader2String(buffer));
-            vertx.eventBus().publish((String) handlerid, buffer);
+          Buffer buffer =
+              callFunction(packet.getFunctionId(), packet.getOptions());
+          if (trace.sampled()) {
+            trace.sent(buffer, handlerid);
           }
+          vertx.eventBus().send(handlerid, buffer);
         });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(
-        CommonServices.BROADCAST_UID,
-        message -> {
+    // broadcast for enumeration requests
+    router.registerBroadcast(uidBytes, context,
+        (request, requesterId) -> {
           Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
           if (handlerids != null) {
-            System.out.println("sending enumerate answer");
+            logger.debug("sending enumerate answer");
             for (Object handlerid : handlerids) {
               vertx.eventBus().publish((String) handlerid,
                   Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
             }
           } else {
-            System.out.println("Error: no handlerids found");
+            logger.error("no handlerids found");
           }
         });
   }
@@ -107,7 +106,7 @@ public class BrickletAmbientLight extends AbstractVerticle {
     Buffer header = Utils.createHeader(uidBytes, length, functionId, options, flags);
     Buffer buffer = Buffer.buffer();
     buffer.appendBuffer(header);
-    buffer.appendBytes(Utils.get2ByteRandomValue(1));
+    buffer.appendBytes(Utils.get2ByteDefaultValue(1));
 
     return buffer;
   }
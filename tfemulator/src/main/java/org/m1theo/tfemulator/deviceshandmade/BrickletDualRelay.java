@@ -10,9 +10,12 @@ package org.m1theo.tfemulator.deviceshandmade;
 import java.util.Set;
 
 import org.m1theo.tfemulator.Brickd;
-import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Router;
 import org.m1theo.tfemulator.Utils;
 import org.m1theo.tfemulator.protocol.Packet;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.buffer.Buffer;
@@ -21,6 +24,7 @@ import io.vertx.core.buffer.Buffer;
  * Two relays to switch AC/DC devices
  */
 public class BrickletDualRelay extends AbstractVerticle {
+  private final static Logger logger = LoggerFactory.getLogger(BrickletDualRelay.class);
   long uidBytes;
   int[] apiVersion = new int[3];
   private Buffer state;
@@ -47,38 +51,33 @@ public class BrickletDualRelay extends AbstractVerticle {
     apiVersion[1] = 0;
     apiVersion[2] = 0;
 
-    System.out.println("Verticle started: " + BrickletDualRelay.class);
+    logger.info("Verticle started: {}", BrickletDualRelay.class);
     String uidString = config().getString("uid");
     uidBytes = Utils.uid2long(uidString);
 
-    vertx.eventBus().consumer(uidString, message -> {
-      Buffer msgBuffer = (Buffer) message.body();
-      Packet packet = new Packet(msgBuffer);
-      // System.out.println(BrickletDualRelay.class + " " + uidString + " got message: " +
-      // message.body());
-      Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
-      for (Object handlerid : handlerids) {
-        Buffer buffer = callFunction(packet);
-        // TODO add logging
-        if (packet.getResponseExpected()) {
-          System.out.println(
-              BrickletDualRelay.class + " sending answer " + Utils.packetHeader2String(buffer));
-          vertx.eventBus().publish((String) handlerid, buffer);
+    PacketTrace trace = PacketTrace.get(vertx);
+    Router router = Router.get(vertx);
+    router.register(uidBytes, context, (packet, handlerid) -> {
+      Buffer buffer = callFunction(packet);
+      if (packet.getResponseExpected()) {
+        if (trace.sampled()) {
+          trace.sent(buffer, handlerid);
         }
+        vertx.eventBus().send(handlerid, buffer);
       }
     });
 
-    // broadcast queue for enumeration requests
-    vertx.eventBus().consumer(CommonServices.BROADCAST_UID, message -> {
+    // broadcast for enumeration requests
+    router.registerBroadcast(uidBytes, context, (request, requesterId) -> {
       Set<Object> handlerids = vertx.sharedData().getLocalMap(Brickd.HANDLERIDMAP).keySet();
       if (handlerids != null) {
-        System.out.println("sending enumerate answer");
+        logger.debug("sending enumerate answer");
         for (Object handlerid : handlerids) {
           vertx.eventBus().publish((String) handlerid,
               Utils.getEnumerateResponse(uidString, uidBytes, DEVICE_IDENTIFIER));
         }
       } else {
-        System.out.println("Error: no handlerids found");
+        logger.error("no handlerids found");
       }
     });
 
@@ -135,7 +134,7 @@ public class BrickletDualRelay extends AbstractVerticle {
       buffer.appendBuffer(header);
       return buffer;
     }
-    state = packet.getPayload();
+    state = packet.copyPayload();
     // TODO handle buffer == null in socket/eventbus write
     return null;
   }
@@ -194,9 +193,9 @@ public class BrickletDualRelay extends AbstractVerticle {
     Buffer header = Utils.createHeader(uidBytes, length, functionId, options, flags);
     Buffer buffer = Buffer.buffer();
     buffer.appendBuffer(header);
-    buffer.appendBytes(Utils.getBoolRandomValue(1));
-    buffer.appendBytes(Utils.get4ByteURandomValue(1));
-    buffer.appendBytes(Utils.get4ByteURandomValue(1));
+    buffer.appendBytes(Utils.getBoolDefaultValue(1));
+    buffer.appendBytes(Utils.get4ByteUDefaultValue(1));
+    buffer.appendBytes(Utils.get4ByteUDefaultValue(1));
 
     return buffer;
   }
@@ -233,12 +232,12 @@ public class BrickletDualRelay extends AbstractVerticle {
     Buffer header = Utils.createHeader(uidBytes, length, functionId, options, flags);
     Buffer buffer = Buffer.buffer();
     buffer.appendBuffer(header);
-    buffer.appendBytes(Utils.getCharRandomValue(8));
-    buffer.appendBytes(Utils.getCharRandomValue(8));
-    buffer.appendBytes(Utils.getCharRandomValue(1));
-    buffer.appendBytes(Utils.get1ByteURandomValue(3));
-    buffer.appendBytes(Utils.get1ByteURandomValue(3));
-    buffer.appendBytes(Utils.get2ByteURandomValue(1));
+    buffer.appendBytes(Utils.getCharDefaultValue(8));
+    buffer.appendBytes(Utils.getCharDefaultValue(8));
+    buffer.appendBytes(Utils.getCharDefaultValue(1));
+    buffer.appendBytes(Utils.get1ByteUDefaultValue(3));
+    buffer.appendBytes(Utils.get1ByteUDefaultValue(3));
+    buffer.appendBytes(Utils.get2ByteUDefaultValue(1));
 
     return buffer;
   }
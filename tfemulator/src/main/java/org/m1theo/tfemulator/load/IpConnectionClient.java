@@ -0,0 +1,367 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator.load;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.m1theo.tfemulator.BrickdException;
+
+import com.tinkerforge.Device;
+import com.tinkerforge.IPConnection;
+import com.tinkerforge.TimeoutException;
+
+import io.vertx.core.json.JsonArray;
+
+/*
+ * Drives a scenario with the Tinkerforge Java bindings, a thread with an IPConnection per
+ * connection, each with device objects for all devices of the scenario. The calls are the methods
+ * of the device classes, e.g. com.tinkerforge.BrickletTemperature.getTemperature(), made with
+ * response expected so setters are timed as well.
+ */
+class IpConnectionClient {
+  private final static String BINDINGS_PACKAGE = "com.tinkerforge.";
+  // the alphabet of the bindings has no 'l', unlike the one of Utils
+  private final static String BASE58 =
+      "123456789abcdefghijkmnopqrstuvwxyzABCDEFGHJKLMNPQRSTUVWXYZ";
+
+  /*
+   * A call resolved for the devices which have it.
+   */
+  private static class Calls {
+    final List<Scenario.Target> targets = new ArrayList<>();
+    final List<Method> methods = new ArrayList<>();
+    final List<Object[]> args = new ArrayList<>();
+  }
+
+  private final Scenario scenario;
+  private final Calls[] mix;
+  private final Calls[] subscriptions;
+  // read by the callback threads of the IPConnections as well
+  private volatile long start;
+  private volatile long measureFrom;
+  private volatile long measureUntil;
+
+  IpConnectionClient(Scenario scenario) throws BrickdException {
+    this.scenario = scenario;
+    mix = new Calls[scenario.mix().size()];
+    for (int i = 0; i < mix.length; i++) {
+      mix[i] = resolve(scenario.mix().get(i));
+      if (mix[i].targets.isEmpty()) {
+        throw new BrickdException("no device of the scenario has " + scenario.mix().get(i).name);
+      }
+    }
+    subscriptions = new Calls[scenario.callbacks().size()];
+    for (int i = 0; i < subscriptions.length; i++) {
+      subscriptions[i] = resolve(scenario.callbacks().get(i));
+    }
+  }
+
+  /*
+   * The uid as the bindings encode it.
+   */
+  static String bindingsUid(long uid) {
+    StringBuilder encoded = new StringBuilder();
+    long value = uid;
+    while (value >= 58) {
+      encoded.append(BASE58.charAt((int) (value % 58)));
+      value /= 58;
+    }
+    return encoded.append(BASE58.charAt((int) value)).reverse().toString();
+  }
+
+  private static Class<?> bindingsClass(String type) throws BrickdException {
+    try {
+      return Class.forName(BINDINGS_PACKAGE + type);
+    } catch (ClassNotFoundException e) {
+      throw new BrickdException("the Tinkerforge bindings have no device " + type);
+    }
+  }
+
+  private Calls resolve(Scenario.Call call) throws BrickdException {
+    Calls calls = new Calls();
+    Map<String, Method> methods = new HashMap<>();
+    Map<String, Object[]> args = new HashMap<>();
+    for (Scenario.Target target : scenario.devices()) {
+      if (!methods.containsKey(target.type)) {
+        Method method = null;
+        for (Method candidate : bindingsClass(target.type).getMethods()) {
+          if (candidate.getName().equals(call.name)
+              && candidate.getParameterTypes().length == call.args.size()) {
+            method = candidate;
+            break;
+          }
+        }
+        methods.put(target.type, method);
+        if (method != null) {
+          args.put(target.type, convert(call, method.getParameterTypes()));
+        }
+      }
+      Method method = methods.get(target.type);
+      if (method != null) {
+        calls.targets.add(target);
+        calls.methods.add(method);
+        calls.args.add(args.get(target.type));
+      }
+    }
+    return calls;
+  }
+
+  private static Object[] convert(Scenario.Call call, Class<?>[] types) throws BrickdException {
+    Object[] values = new Object[types.length];
+    for (int i = 0; i < types.length; i++) {
+      values[i] = convert(call, call.args.getValue(i), types[i]);
+    }
+    return values;
+  }
+
+  private static Object convert(Scenario.Call call, Object value, Class<?> type)
+      throws BrickdException {
+    if (value instanceof Number) {
+      Number number = (Number) value;
+      if (type == byte.class) {
+        return number.byteValue();
+      } else if (type == short.class) {
+        return number.shortValue();
+      } else if (type == int.class) {
+        return number.intValue();
+      } else if (type == long.class) {
+        return number.longValue();
+      } else if (type == float.class) {
+        return number.floatValue();
+      } else if (type == double.class) {
+        return number.doubleValue();
+      }
+    } else if (value instanceof Boolean && type == boolean.class) {
+      return value;
+    } else if (value instanceof String) {
+      String string = (String) value;
+      if (type == String.class) {
+        return string;
+      } else if (type == char.class && string.length() == 1) {
+        return string.charAt(0);
+      }
+    } else if (value instanceof JsonArray && type.isArray()) {
+      JsonArray values = (JsonArray) value;
+      Object array = Array.newInstance(type.getComponentType(), values.size());
+      for (int i = 0; i < values.size(); i++) {
+        Array.set(array, i, convert(call, values.getValue(i), type.getComponentType()));
+      }
+      return array;
+    }
+    throw new BrickdException("argument " + value + " of " + call.name + " is no "
+        + type.getSimpleName());
+  }
+
+  private class Connection extends Thread {
+    final int index;
+    final CountDownLatch connected;
+    final CountDownLatch started;
+    final LoadReport report = new LoadReport(scenario.mix());
+    final AtomicLong callbacks = new AtomicLong();
+    final Random random = new Random();
+    final Map<String, Device> devices = new HashMap<>();
+    final IPConnection ipcon = new IPConnection();
+
+    Connection(int index, CountDownLatch connected, CountDownLatch started) {
+      super("loadgenerator-" + index);
+      this.index = index;
+      this.connected = connected;
+      this.started = started;
+    }
+
+    @Override
+    public void run() {
+      try {
+        ipcon.setTimeout((int) scenario.timeout());
+        ipcon.connect(scenario.host(), scenario.port());
+        for (Scenario.Target target : scenario.devices()) {
+          device(target);
+        }
+        listen();
+      } catch (Exception e) {
+        report.countConnectFailure();
+        connected.countDown();
+        disconnect();
+        return;
+      }
+      connected.countDown();
+      try {
+        started.await();
+        if (index == 0) {
+          subscribe();
+        }
+        load();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        disconnect();
+      }
+      report.countCallbacks(callbacks.get());
+    }
+
+    private void disconnect() {
+      try {
+        ipcon.disconnect();
+      } catch (Exception e) {
+        // not connected
+      }
+    }
+
+    private Device device(Scenario.Target target) throws Exception {
+      Device device = devices.get(target.uid);
+      if (device == null) {
+        Constructor<?> constructor =
+            bindingsClass(target.type).getConstructor(String.class, IPConnection.class);
+        device = (Device) constructor.newInstance(bindingsUid(target.uidValue), ipcon);
+        device.setResponseExpectedAll(true);
+        devices.put(target.uid, device);
+      }
+      return device;
+    }
+
+    /*
+     * Adds a counting listener for the callbacks with a listener to the devices.
+     */
+    private void listen() throws Exception {
+      for (int i = 0; i < subscriptions.length; i++) {
+        String listener = scenario.callbacks().get(i).listener;
+        if (listener == null) {
+          continue;
+        }
+        for (Scenario.Target target : subscriptions[i].targets) {
+          Class<?> listenerClass =
+              Class.forName(BINDINGS_PACKAGE + target.type + "$" + listener);
+          Object proxy = Proxy.newProxyInstance(listenerClass.getClassLoader(),
+              new Class<?>[] {listenerClass}, (object, method, args) -> {
+                if (method.getDeclaringClass() == Object.class) {
+                  switch (method.getName()) {
+                    case "equals":
+                      return object == args[0];
+                    case "hashCode":
+                      return System.identityHashCode(object);
+                    default:
+                      return listener;
+                  }
+                }
+                long now = System.nanoTime();
+                if (now >= measureFrom && now < measureUntil) {
+                  callbacks.incrementAndGet();
+                }
+                return null;
+              });
+          Device device = device(target);
+          device.getClass().getMethod("add" + listener, listenerClass).invoke(device, proxy);
+        }
+      }
+    }
+
+    private void subscribe() {
+      for (Calls calls : subscriptions) {
+        for (int i = 0; i < calls.targets.size(); i++) {
+          try {
+            calls.methods.get(i).invoke(devices.get(calls.targets.get(i).uid), calls.args.get(i));
+          } catch (ReflectiveOperationException e) {
+            // the callbacks of the device are missing in the report
+          }
+        }
+      }
+    }
+
+    private void load() {
+      double rate = scenario.rate();
+      long sent = 0;
+      while (true) {
+        long now = System.nanoTime();
+        long due = now;
+        if (rate > 0) {
+          due = start + (long) (sent * 1e9 / rate);
+          if (due > now && due < measureUntil) {
+            LockSupport.parkNanos(due - now);
+            continue;
+          }
+        }
+        if (due >= measureUntil) {
+          return;
+        }
+        sent++;
+        int call = scenario.pickCall(random);
+        Calls calls = mix[call];
+        int target = random.nextInt(calls.targets.size());
+        boolean counted = due >= measureFrom;
+        if (counted) {
+          report.countRequest();
+        }
+        try {
+          calls.methods.get(target).invoke(devices.get(calls.targets.get(target).uid),
+              calls.args.get(target));
+          if (counted) {
+            report.countResponse(call, (System.nanoTime() - due) / 1000, false);
+          }
+        } catch (InvocationTargetException e) {
+          if (counted) {
+            if (e.getCause() instanceof TimeoutException) {
+              report.countLost();
+            } else {
+              report.countError();
+            }
+          }
+        } catch (IllegalAccessException e) {
+          if (counted) {
+            report.countError();
+          }
+        }
+      }
+    }
+  }
+
+  LoadReport run() throws InterruptedException {
+    CountDownLatch connected = new CountDownLatch(scenario.connections());
+    CountDownLatch started = new CountDownLatch(1);
+    List<Connection> connections = new ArrayList<>();
+    for (int i = 0; i < scenario.connections(); i++) {
+      Connection connection = new Connection(i, connected, started);
+      connection.setDaemon(true);
+      connections.add(connection);
+      connection.start();
+    }
+    connected.await();
+    start = System.nanoTime();
+    measureFrom = start + TimeUnit.SECONDS.toNanos(scenario.warmup());
+    measureUntil = measureFrom + TimeUnit.SECONDS.toNanos(scenario.duration());
+    started.countDown();
+    LoadReport total = new LoadReport(scenario.mix());
+    for (Connection connection : connections) {
+      connection.join();
+      total.add(connection.report);
+    }
+    total.seconds(scenario.duration());
+    return total;
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator.load;
+
+/*
+ * Latencies in microseconds, recorded with about 1% precision like HdrHistogram does with 2
+ * significant digits: values below 128 have a bucket each, above that every power of 2 is split
+ * into 64 buckets. Values beyond an hour are recorded as an hour.
+ *
+ * Not thread safe, every worker of the load generator records into its own histograms, which are
+ * added up at the end.
+ */
+public class LatencyHistogram {
+  private final static int SUB_BUCKET_BITS = 7;
+  private final static int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private final static int HALF = SUB_BUCKETS / 2;
+  private final static long MAX_VALUE = 3600L * 1000 * 1000;
+
+  private final long[] counts = new long[index(MAX_VALUE) + 1];
+  private long count;
+  private long sum;
+  private long min = Long.MAX_VALUE;
+  private long max;
+
+  private static int index(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int bucket = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+    return bucket * HALF + (int) (value >>> bucket);
+  }
+
+  /*
+   * The highest value of the bucket at index.
+   */
+  private static long highestValue(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int bucket = index / HALF - 1;
+    long sub = index % HALF + HALF;
+    return ((sub + 1) << bucket) - 1;
+  }
+
+  public void record(long micros) {
+    long value = Math.min(Math.max(micros, 0), MAX_VALUE);
+    counts[index(value)]++;
+    count++;
+    sum += value;
+    min = Math.min(min, value);
+    max = Math.max(max, value);
+  }
+
+  public void add(LatencyHistogram other) {
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] += other.counts[i];
+    }
+    count += other.count;
+    sum += other.sum;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+  }
+
+  public long count() {
+    return count;
+  }
+
+  public double mean() {
+    return count == 0 ? 0 : (double) sum / count;
+  }
+
+  public long min() {
+    return count == 0 ? 0 : min;
+  }
+
+  public long max() {
+    return max;
+  }
+
+  /*
+   * The value percentile percent of the latencies are at or below, e.g. percentile(99.9).
+   */
+  public long percentile(double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(highestValue(i), max);
+      }
+    }
+    return max;
+  }
+}
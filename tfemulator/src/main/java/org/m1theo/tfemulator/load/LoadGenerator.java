@@ -0,0 +1,68 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator.load;
+
+import org.m1theo.tfemulator.BrickdException;
+import org.m1theo.tfemulator.Utils;
+
+import io.vertx.core.json.JsonObject;
+
+/*
+ * Drives a running Brickd with the load of a Scenario and reports throughput, latencies, errors,
+ * lost responses and callbacks:
+ *
+ * java -cp target/tfemulator-0.0.1-SNAPSHOT-fat.jar org.m1theo.tfemulator.load.LoadGenerator \
+ *     loadscenario.json
+ *
+ * The scenario is a file name or the JSON itself, see Scenario for its keys.
+ */
+public class LoadGenerator {
+
+  public static void main(String[] args) {
+    if (args.length != 1) {
+      System.err.println("usage: LoadGenerator <scenario.json>");
+      System.exit(1);
+    }
+    JsonObject conf = Utils.getConfigFromFile(args[0]);
+    if (conf == null) {
+      System.exit(1);
+    }
+    try {
+      Scenario scenario = new Scenario(conf);
+      System.out.println(scenario.client().name().toLowerCase() + " client, "
+          + scenario.connections() + " connections to " + scenario.host() + ":" + scenario.port()
+          + ", " + scenario.warmup() + " s warmup");
+      System.out.print(run(scenario));
+    } catch (BrickdException e) {
+      System.err.println("invalid scenario: " + e.getMessage());
+      System.exit(1);
+    } catch (InterruptedException e) {
+      System.exit(1);
+    }
+  }
+
+  /*
+   * Runs scenario against the emulator, returns after warmup, duration and the timeout for the
+   * last responses.
+   */
+  public static LoadReport run(Scenario scenario) throws BrickdException, InterruptedException {
+    if (scenario.client() == Scenario.ClientType.IPCONNECTION) {
+      return new IpConnectionClient(scenario).run();
+    }
+    return new RawClient(scenario).run();
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator.load;
+
+import java.util.List;
+
+/*
+ * The results of a load run, or of one worker of it until they are added up: the requests sent
+ * during the measurement and what became of them, and the latencies of each call of the mix.
+ */
+public class LoadReport {
+  private final static double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+  private final String[] calls;
+  private final LatencyHistogram[] latencies;
+  private final LatencyHistogram total = new LatencyHistogram();
+  private long requests;
+  private long responses;
+  private long errors;
+  private long lost;
+  private long callbacks;
+  private long connectFailures;
+  private double seconds;
+
+  LoadReport(List<Scenario.Call> mix) {
+    calls = new String[mix.size()];
+    latencies = new LatencyHistogram[mix.size()];
+    for (int i = 0; i < calls.length; i++) {
+      calls[i] = mix.get(i).name();
+      latencies[i] = new LatencyHistogram();
+    }
+  }
+
+  void countRequest() {
+    requests++;
+  }
+
+  /*
+   * A response to call of the mix after micros, error if it reports an error.
+   */
+  void countResponse(int call, long micros, boolean error) {
+    responses++;
+    if (error) {
+      errors++;
+    }
+    latencies[call].record(micros);
+    total.record(micros);
+  }
+
+  /*
+   * A request that failed without a response, e.g. because the connection is gone.
+   */
+  void countError() {
+    errors++;
+  }
+
+  void countLost() {
+    lost++;
+  }
+
+  void countCallback() {
+    callbacks++;
+  }
+
+  void countCallbacks(long count) {
+    callbacks += count;
+  }
+
+  void countConnectFailure() {
+    connectFailures++;
+  }
+
+  void seconds(double measured) {
+    seconds = measured;
+  }
+
+  synchronized void add(LoadReport other) {
+    for (int i = 0; i < latencies.length; i++) {
+      latencies[i].add(other.latencies[i]);
+    }
+    total.add(other.total);
+    requests += other.requests;
+    responses += other.responses;
+    errors += other.errors;
+    lost += other.lost;
+    callbacks += other.callbacks;
+    connectFailures += other.connectFailures;
+  }
+
+  public long requests() {
+    return requests;
+  }
+
+  public long responses() {
+    return responses;
+  }
+
+  /*
+   * Responses with an error code and requests that failed.
+   */
+  public long errors() {
+    return errors;
+  }
+
+  /*
+   * Requests without a response within the timeout.
+   */
+  public long lost() {
+    return lost;
+  }
+
+  /*
+   * The callbacks received by all connections.
+   */
+  public long callbacks() {
+    return callbacks;
+  }
+
+  public long connectFailures() {
+    return connectFailures;
+  }
+
+  /*
+   * Responses per second.
+   */
+  public double throughput() {
+    return seconds == 0 ? 0 : responses / seconds;
+  }
+
+  /*
+   * The latencies of all calls in microseconds.
+   */
+  public LatencyHistogram latency() {
+    return total;
+  }
+
+  public LatencyHistogram latency(int call) {
+    return latencies[call];
+  }
+
+  @Override
+  public synchronized String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format("measured %.1f s%n", seconds));
+    sb.append(String.format("requests %d, responses %d (%.1f/s), errors %d, lost %d, "
+        + "callbacks %d (%.1f/s)", requests, responses, throughput(), errors, lost, callbacks,
+        seconds == 0 ? 0 : callbacks / seconds));
+    if (connectFailures > 0) {
+      sb.append(", failed connections ").append(connectFailures);
+    }
+    sb.append(String.format("%n%-32s %10s %9s %9s %9s %9s %9s %9s %9s%n", "latency (us)", "count",
+        "mean", "p50", "p90", "p99", "p99.9", "p99.99", "max"));
+    appendLatency(sb, "all", total);
+    if (calls.length > 1) {
+      for (int i = 0; i < calls.length; i++) {
+        appendLatency(sb, calls[i], latencies[i]);
+      }
+    }
+    return sb.toString();
+  }
+
+  private static void appendLatency(StringBuilder sb, String name, LatencyHistogram histogram) {
+    sb.append(String.format("%-32s %10d %9.0f", name, histogram.count(), histogram.mean()));
+    for (double percentile : PERCENTILES) {
+      sb.append(String.format(" %9d", histogram.percentile(percentile)));
+    }
+    sb.append(String.format(" %9d%n", histogram.max()));
+  }
+}
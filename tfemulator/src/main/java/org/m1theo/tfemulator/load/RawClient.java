@@ -0,0 +1,342 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator.load;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.m1theo.tfemulator.BrickdException;
+import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Device;
+import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.protocol.FrameDecoder;
+import org.m1theo.tfemulator.protocol.Packet;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.NetClient;
+import io.vertx.core.net.NetSocket;
+
+/*
+ * Drives a scenario with its own packets over Vert.x sockets. The function ids come from the
+ * emulated device classes, the payloads from the scenario.
+ *
+ * The connections are spread over one worker per event loop. A worker owns its connections and its
+ * LoadReport, so nothing is shared while the load runs. Requests are told apart by their sequence
+ * number, which limits a connection to 15 requests in flight.
+ */
+class RawClient {
+  private final static int FUNCTION_ID_OFFSET = 5;
+  private final static int OPTIONS_OFFSET = 6;
+  private final static byte RESPONSE_EXPECTED = 0x08;
+
+  private final Scenario scenario;
+  // per call of the mix the requests to the devices with the function, sequence number 0
+  private final Buffer[][] requests;
+  private final List<Buffer> subscriptions = new ArrayList<>();
+  private final long timeoutNanos;
+  private long start;
+  private long measureFrom;
+  private long measureUntil;
+
+  RawClient(Scenario scenario) throws BrickdException {
+    this.scenario = scenario;
+    this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(scenario.timeout());
+    List<Scenario.Call> mix = scenario.mix();
+    requests = new Buffer[mix.size()][];
+    for (int i = 0; i < requests.length; i++) {
+      List<Buffer> targets = requests(mix.get(i), RESPONSE_EXPECTED);
+      if (targets.isEmpty()) {
+        throw new BrickdException("no device of the scenario has " + mix.get(i).name);
+      }
+      requests[i] = targets.toArray(new Buffer[targets.size()]);
+    }
+    for (Scenario.Call call : scenario.callbacks()) {
+      subscriptions.addAll(requests(call, (byte) 0));
+    }
+  }
+
+  /*
+   * The requests of call to all devices which have it.
+   */
+  private List<Buffer> requests(Scenario.Call call, byte options) throws BrickdException {
+    if (call.payload.length() > 64 - FrameDecoder.HEADER_LENGTH) {
+      throw new BrickdException("payload of " + call.name + " is too long");
+    }
+    List<Buffer> targets = new ArrayList<>();
+    for (Scenario.Target target : scenario.devices()) {
+      int functionId = functionId(Device.deviceClass(target.type), call.name);
+      if (functionId >= 0) {
+        targets.add(Utils
+            .createHeader(target.uidValue,
+                (byte) (FrameDecoder.HEADER_LENGTH + call.payload.length()), (byte) functionId,
+                options, (byte) 0)
+            .appendBuffer(call.payload));
+      }
+    }
+    return targets;
+  }
+
+  /*
+   * The id of the function name, e.g. getTemperature, of the device class, -1 if it has none.
+   */
+  static int functionId(Class<?> deviceClass, String name) {
+    for (Field field : deviceClass.getFields()) {
+      String fieldName = field.getName();
+      if (fieldName.startsWith("FUNCTION_") && field.getType() == byte.class
+          && fieldName.substring(9).replace("_", "").equalsIgnoreCase(name)) {
+        try {
+          return field.getByte(null) & 0xFF;
+        } catch (IllegalAccessException e) {
+          return -1;
+        }
+      }
+    }
+    return -1;
+  }
+
+  private class Worker {
+    final Context context;
+    final LoadReport report;
+    final Random random = new Random();
+    final List<Connection> connections = new ArrayList<>();
+    NetClient client;
+    long timerId = -1;
+
+    Worker(Context context) {
+      this.context = context;
+      this.report = new LoadReport(scenario.mix());
+    }
+
+    void tick(long id) {
+      long now = System.nanoTime();
+      for (Connection connection : connections) {
+        connection.expire(now, false);
+        if (scenario.rate() > 0) {
+          connection.sendDue(now);
+        }
+      }
+    }
+
+    void finish() {
+      if (timerId != -1) {
+        context.owner().cancelTimer(timerId);
+      }
+      for (Connection connection : connections) {
+        connection.expire(Long.MAX_VALUE, true);
+        if (connection.socket != null) {
+          connection.socket.close();
+        }
+      }
+      client.close();
+    }
+  }
+
+  private class Connection {
+    final Worker worker;
+    final boolean[] pending = new boolean[Scenario.MAX_IN_FLIGHT + 1];
+    final boolean[] counted = new boolean[Scenario.MAX_IN_FLIGHT + 1];
+    final long[] dueAt = new long[Scenario.MAX_IN_FLIGHT + 1];
+    final int[] calls = new int[Scenario.MAX_IN_FLIGHT + 1];
+    final byte[] functionIds = new byte[Scenario.MAX_IN_FLIGHT + 1];
+    NetSocket socket;
+    int inFlight;
+    int nextSequence = 1;
+    long sent;
+    boolean closed;
+
+    Connection(Worker worker) {
+      this.worker = worker;
+    }
+
+    void connected(NetSocket socket) {
+      this.socket = socket;
+      socket.handler(new FrameDecoder(this::received));
+      socket.closeHandler(v -> {
+        closed = true;
+        for (int sequence = 1; sequence < pending.length; sequence++) {
+          if (pending[sequence]) {
+            pending[sequence] = false;
+            if (counted[sequence]) {
+              worker.report.countError();
+            }
+          }
+        }
+        inFlight = 0;
+      });
+    }
+
+    /*
+     * Sends the requests which are due at the rate, without one the connection is kept full.
+     */
+    void sendDue(long now) {
+      double rate = scenario.rate();
+      while (!closed && inFlight < scenario.inFlight()) {
+        long due = rate > 0 ? start + (long) (sent * 1e9 / rate) : now;
+        if (due > now || due >= measureUntil) {
+          return;
+        }
+        send(due);
+      }
+    }
+
+    private void send(long due) {
+      int sequence = nextSequence;
+      while (pending[sequence]) {
+        sequence = sequence == Scenario.MAX_IN_FLIGHT ? 1 : sequence + 1;
+      }
+      nextSequence = sequence == Scenario.MAX_IN_FLIGHT ? 1 : sequence + 1;
+      int call = scenario.pickCall(worker.random);
+      Buffer[] targets = requests[call];
+      Buffer request = targets[worker.random.nextInt(targets.length)].copy();
+      request.setByte(OPTIONS_OFFSET, (byte) (sequence << 4 | RESPONSE_EXPECTED));
+      pending[sequence] = true;
+      counted[sequence] = due >= measureFrom;
+      dueAt[sequence] = due;
+      calls[sequence] = call;
+      functionIds[sequence] = request.getByte(FUNCTION_ID_OFFSET);
+      if (counted[sequence]) {
+        worker.report.countRequest();
+      }
+      inFlight++;
+      sent++;
+      socket.write(request);
+    }
+
+    private void received(Packet packet) {
+      long now = System.nanoTime();
+      int sequence = packet.getSequenceNumber();
+      if (sequence == 0) {
+        if (packet.getFunctionId() != CommonServices.CALLBACK_ENUMERATE && now >= measureFrom
+            && now < measureUntil) {
+          worker.report.countCallback();
+        }
+        return;
+      }
+      if (!pending[sequence] || packet.getFunctionId() != functionIds[sequence]) {
+        // the late answer of a lost request
+        return;
+      }
+      pending[sequence] = false;
+      inFlight--;
+      if (counted[sequence]) {
+        worker.report.countResponse(calls[sequence], (now - dueAt[sequence]) / 1000,
+            packet.getErrorCode() != 0);
+      }
+      sendDue(now);
+    }
+
+    /*
+     * Gives up the requests without a response after the timeout, all of them if finished.
+     */
+    void expire(long now, boolean finished) {
+      for (int sequence = 1; sequence < pending.length; sequence++) {
+        if (pending[sequence] && (finished || now - dueAt[sequence] > timeoutNanos)) {
+          pending[sequence] = false;
+          inFlight--;
+          if (counted[sequence]) {
+            worker.report.countLost();
+          }
+        }
+      }
+      if (!finished) {
+        sendDue(now);
+      }
+    }
+  }
+
+  LoadReport run() throws InterruptedException {
+    Vertx vertx = Vertx.vertx();
+    try {
+      int workerCount = Math.min(scenario.connections(),
+          2 * Runtime.getRuntime().availableProcessors());
+      List<Worker> workers = new ArrayList<>();
+      for (int i = 0; i < workerCount; i++) {
+        // a new event loop context for every worker
+        workers.add(new Worker(vertx.getOrCreateContext()));
+      }
+      for (int i = 0; i < scenario.connections(); i++) {
+        Worker worker = workers.get(i % workerCount);
+        worker.connections.add(new Connection(worker));
+      }
+
+      CountDownLatch connected = new CountDownLatch(scenario.connections());
+      for (Worker worker : workers) {
+        worker.context.runOnContext(v -> {
+          worker.client = vertx.createNetClient();
+          for (Connection connection : worker.connections) {
+            worker.client.connect(scenario.port(), scenario.host(), result -> {
+              if (result.succeeded()) {
+                connection.connected(result.result());
+              } else {
+                connection.closed = true;
+                worker.report.countConnectFailure();
+              }
+              connected.countDown();
+            });
+          }
+        });
+      }
+      connected.await(scenario.timeout() + 10000, TimeUnit.MILLISECONDS);
+
+      start = System.nanoTime();
+      measureFrom = start + TimeUnit.SECONDS.toNanos(scenario.warmup());
+      measureUntil = measureFrom + TimeUnit.SECONDS.toNanos(scenario.duration());
+      Worker first = workers.get(0);
+      first.context.runOnContext(v -> {
+        for (Connection connection : first.connections) {
+          if (!connection.closed) {
+            subscriptions.forEach(request -> connection.socket.write(request.copy()));
+            break;
+          }
+        }
+      });
+      for (Worker worker : workers) {
+        worker.context.runOnContext(v -> {
+          long now = System.nanoTime();
+          worker.connections.forEach(connection -> connection.sendDue(now));
+          worker.timerId = vertx.setPeriodic(scenario.rate() > 0 ? 1 : 10, worker::tick);
+        });
+      }
+
+      long end = measureUntil + timeoutNanos;
+      long now;
+      while ((now = System.nanoTime()) < end) {
+        TimeUnit.NANOSECONDS.sleep(end - now);
+      }
+      LoadReport total = new LoadReport(scenario.mix());
+      CountDownLatch finished = new CountDownLatch(workers.size());
+      for (Worker worker : workers) {
+        worker.context.runOnContext(v -> {
+          worker.finish();
+          total.add(worker.report);
+          finished.countDown();
+        });
+      }
+      finished.await();
+      total.seconds(scenario.duration());
+      return total;
+    } finally {
+      vertx.close();
+    }
+  }
+}
@@ -0,0 +1,289 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator.load;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.m1theo.tfemulator.BrickdException;
+import org.m1theo.tfemulator.DeviceTemplate;
+import org.m1theo.tfemulator.Utils;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/*
+ * A load scenario for the LoadGenerator, kept as JSON next to the emulator config:
+ *
+ * {"host": "localhost", "port": 4223, "client": "raw", "connections": 50, "inFlight": 4,
+ *  "rate": 0, "warmup": 5, "duration": 30, "timeout": 2500,
+ *  "devices": "config.json",
+ *  "mix": [{"call": "getTemperature", "weight": 90},
+ *          {"call": "setDebouncePeriod", "args": [100], "payload": "64000000", "weight": 10}],
+ *  "callbacks": [{"call": "setTemperatureCallbackPeriod", "args": [100], "payload": "64000000",
+ *                 "listener": "TemperatureListener"}]}
+ *
+ * client       "raw" sends the packets itself over Vert.x sockets, up to inFlight requests per
+ *              connection (at most 15, the sequence numbers). "ipconnection" runs a thread with a
+ *              com.tinkerforge.IPConnection per connection and calls the device objects, one
+ *              request at a time like an application does.
+ * rate         requests per second and connection, 0 sends the next request as soon as a response
+ *              arrives. With a rate the latency is measured from the time the request was due, so
+ *              a slow emulator doesn't hide its delays by slowing the client down.
+ * warmup       seconds before the measurement starts, duration the seconds measured, timeout the
+ *              milliseconds after which a response counts as lost.
+ * devices      the devices to call, entries like the "devices" of the emulator config (including
+ *              templates) or the file name of an emulator config to take its enabled devices from.
+ *              Inline entries are enabled unless "enabled" is false.
+ * mix          the calls, picked by weight, each for a random device with the function. "call" is
+ *              the function name of the Tinkerforge bindings, "args" its arguments for the
+ *              ipconnection client and "payload" the hex encoded request payload for the raw client.
+ * callbacks    calls made once before the warmup to turn callbacks on. The callbacks every
+ *              connection receives are counted, the ipconnection client needs the "listener"
+ *              interface of the device class for it.
+ */
+public class Scenario {
+  public final static int MAX_IN_FLIGHT = 15;
+
+  public enum ClientType {
+    RAW, IPCONNECTION
+  }
+
+  /*
+   * A device the clients call.
+   */
+  public static class Target {
+    final String type;
+    final String uid;
+    final long uidValue;
+
+    Target(String type, String uid) {
+      this.type = type;
+      this.uid = uid;
+      this.uidValue = Utils.uid2long(uid);
+    }
+  }
+
+  /*
+   * A call of the mix or of the callbacks.
+   */
+  public static class Call {
+    final String name;
+    final int weight;
+    final JsonArray args;
+    final Buffer payload;
+    final String listener;
+
+    Call(JsonObject conf, boolean callback) throws BrickdException {
+      name = conf.getString("call");
+      if (name == null || name.isEmpty()) {
+        throw new BrickdException("scenario call without a name: " + conf.encode());
+      }
+      weight = conf.getInteger("weight", 1);
+      if (!callback && weight <= 0) {
+        throw new BrickdException("weight of " + name + " must be positive");
+      }
+      args = conf.getJsonArray("args", new JsonArray());
+      payload = hex(conf.getString("payload", ""));
+      listener = conf.getString("listener");
+    }
+
+    public String name() {
+      return name;
+    }
+
+    private static Buffer hex(String hex) throws BrickdException {
+      if (hex.length() % 2 != 0) {
+        throw new BrickdException("payload must be an even number of hex digits: " + hex);
+      }
+      Buffer buffer = Buffer.buffer(hex.length() / 2);
+      for (int i = 0; i < hex.length(); i += 2) {
+        try {
+          buffer.appendByte((byte) Integer.parseInt(hex.substring(i, i + 2), 16));
+        } catch (NumberFormatException e) {
+          throw new BrickdException("invalid payload: " + hex);
+        }
+      }
+      return buffer;
+    }
+  }
+
+  private final String host;
+  private final int port;
+  private final ClientType client;
+  private final int connections;
+  private final int inFlight;
+  private final double rate;
+  private final long warmup;
+  private final long duration;
+  private final long timeout;
+  private final List<Target> devices = new ArrayList<>();
+  private final List<Call> mix = new ArrayList<>();
+  private final List<Call> callbacks = new ArrayList<>();
+  // the sums of the weights of the mix up to each call
+  private final int[] weights;
+
+  public Scenario(JsonObject conf) throws BrickdException {
+    host = conf.getString("host", "localhost");
+    port = conf.getInteger("port", 4223);
+    String clientName = conf.getString("client", "raw");
+    try {
+      client = ClientType.valueOf(clientName.toUpperCase());
+    } catch (IllegalArgumentException e) {
+      throw new BrickdException("unknown client: " + clientName);
+    }
+    connections = conf.getInteger("connections", 1);
+    inFlight = conf.getInteger("inFlight", 1);
+    rate = conf.getDouble("rate", 0.0);
+    warmup = conf.getLong("warmup", 2L);
+    duration = conf.getLong("duration", 10L);
+    timeout = conf.getLong("timeout", 2500L);
+    if (connections <= 0) {
+      throw new BrickdException("connections must be positive: " + connections);
+    }
+    if (inFlight <= 0 || inFlight > MAX_IN_FLIGHT) {
+      throw new BrickdException("inFlight must be between 1 and " + MAX_IN_FLIGHT + ": "
+          + inFlight);
+    }
+    if (rate < 0 || warmup < 0 || duration <= 0 || timeout <= 0) {
+      throw new BrickdException("rate, warmup, duration and timeout must not be negative, "
+          + "duration and timeout not 0");
+    }
+    Object devicesConf = conf.getValue("devices");
+    if (devicesConf instanceof String) {
+      JsonObject emulatorConfig = Utils.getConfigFromFile((String) devicesConf);
+      if (emulatorConfig == null) {
+        throw new BrickdException("can't read the emulator config " + devicesConf);
+      }
+      addDevices(emulatorConfig.getJsonArray("devices", new JsonArray()), false);
+    } else if (devicesConf instanceof JsonArray) {
+      addDevices((JsonArray) devicesConf, true);
+    }
+    if (devices.isEmpty()) {
+      throw new BrickdException("scenario has no devices");
+    }
+    for (Object call : conf.getJsonArray("mix", new JsonArray())) {
+      mix.add(new Call((JsonObject) call, false));
+    }
+    if (mix.isEmpty()) {
+      throw new BrickdException("scenario has no mix");
+    }
+    weights = new int[mix.size()];
+    int sum = 0;
+    for (int i = 0; i < weights.length; i++) {
+      sum += mix.get(i).weight;
+      weights[i] = sum;
+    }
+    for (Object call : conf.getJsonArray("callbacks", new JsonArray())) {
+      callbacks.add(new Call((JsonObject) call, true));
+    }
+  }
+
+  private void addDevices(JsonArray entries, boolean enabled) throws BrickdException {
+    for (Object entry : entries) {
+      JsonObject device = (JsonObject) entry;
+      String type = device.getString("type");
+      if (!device.getBoolean("enabled", enabled)) {
+        continue;
+      }
+      if (type == null) {
+        throw new BrickdException("scenario device without a type: " + device.encode());
+      }
+      if (DeviceTemplate.isTemplate(device)) {
+        new DeviceTemplate(device).forEach(1, 0,
+            config -> devices.add(new Target(type, config.uid())));
+      } else if (device.getString("uid") == null) {
+        throw new BrickdException("scenario device without a uid: " + device.encode());
+      } else {
+        devices.add(new Target(type, device.getString("uid")));
+      }
+    }
+  }
+
+  public String host() {
+    return host;
+  }
+
+  public int port() {
+    return port;
+  }
+
+  public ClientType client() {
+    return client;
+  }
+
+  public int connections() {
+    return connections;
+  }
+
+  public int inFlight() {
+    return inFlight;
+  }
+
+  public double rate() {
+    return rate;
+  }
+
+  /*
+   * The warmup in seconds.
+   */
+  public long warmup() {
+    return warmup;
+  }
+
+  /*
+   * The measured seconds.
+   */
+  public long duration() {
+    return duration;
+  }
+
+  /*
+   * The milliseconds after which a response is lost.
+   */
+  public long timeout() {
+    return timeout;
+  }
+
+  public List<Target> devices() {
+    return Collections.unmodifiableList(devices);
+  }
+
+  public List<Call> mix() {
+    return Collections.unmodifiableList(mix);
+  }
+
+  /*
+   * A random call of the mix by weight, its index.
+   */
+  int pickCall(Random random) {
+    int value = random.nextInt(weights[weights.length - 1]);
+    for (int i = 0; i < weights.length; i++) {
+      if (value < weights[i]) {
+        return i;
+      }
+    }
+    return weights.length - 1;
+  }
+
+  public List<Call> callbacks() {
+    return Collections.unmodifiableList(callbacks);
+  }
+}
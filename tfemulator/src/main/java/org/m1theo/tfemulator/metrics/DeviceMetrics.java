@@ -0,0 +1,147 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * The requests and callbacks of one device by function id. The Router records the time from
+ * routing a request to the end of its handler on the device context, which includes the wait for
+ * the context and building the response, but not the outbound queue.
+ *
+ * Recording is lock free: the functions are found in a small copy on write array, which only grows
+ * the first time a function is used, and the counters are atomics that are mostly updated from the
+ * one context of the device.
+ */
+public class DeviceMetrics {
+  /*
+   * The upper bounds of the latency buckets in nanoseconds, from 10 microseconds to 1 second.
+   */
+  public final static long[] BUCKETS = {10000, 25000, 50000, 100000, 250000, 500000, 1000000,
+      2500000, 5000000, 10000000, 25000000, 50000000, 100000000, 250000000, 500000000,
+      1000000000};
+
+  public static class FunctionMetrics {
+    private final int functionId;
+    // the last bucket counts the requests above the last bound
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS.length + 1);
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong nanos = new AtomicLong();
+    private final AtomicLong callbacks = new AtomicLong();
+
+    FunctionMetrics(int functionId) {
+      this.functionId = functionId;
+    }
+
+    void request(long duration) {
+      int bucket = 0;
+      while (bucket < BUCKETS.length && duration > BUCKETS[bucket]) {
+        bucket++;
+      }
+      buckets.incrementAndGet(bucket);
+      nanos.addAndGet(duration);
+      requests.incrementAndGet();
+    }
+
+    public int functionId() {
+      return functionId;
+    }
+
+    public long requests() {
+      return requests.get();
+    }
+
+    /*
+     * The total time of the requests in nanoseconds.
+     */
+    public long nanos() {
+      return nanos.get();
+    }
+
+    /*
+     * The requests of bucket, BUCKETS.length is the bucket above the last bound.
+     */
+    public long bucket(int bucket) {
+      return buckets.get(bucket);
+    }
+
+    /*
+     * The callbacks the device emitted, once for all connections.
+     */
+    public long callbacks() {
+      return callbacks.get();
+    }
+  }
+
+  private final String listener;
+  private final int uid;
+  private volatile FunctionMetrics[] functions = new FunctionMetrics[0];
+
+  DeviceMetrics(String listener, int uid) {
+    this.listener = listener;
+    this.uid = uid;
+  }
+
+  public String listener() {
+    return listener;
+  }
+
+  public int uid() {
+    return uid;
+  }
+
+  private FunctionMetrics function(byte functionId) {
+    int id = functionId & 0xFF;
+    for (FunctionMetrics function : functions) {
+      if (function.functionId == id) {
+        return function;
+      }
+    }
+    synchronized (this) {
+      for (FunctionMetrics function : functions) {
+        if (function.functionId == id) {
+          return function;
+        }
+      }
+      FunctionMetrics function = new FunctionMetrics(id);
+      FunctionMetrics[] newFunctions = Arrays.copyOf(functions, functions.length + 1);
+      newFunctions[functions.length] = function;
+      functions = newFunctions;
+      return function;
+    }
+  }
+
+  /*
+   * A request for functionId handled in duration nanoseconds.
+   */
+  public void request(byte functionId, long duration) {
+    function(functionId).request(duration);
+  }
+
+  public void callback(byte functionId) {
+    function(functionId).callbacks.incrementAndGet();
+  }
+
+  /*
+   * The functions used so far. The array must not be modified.
+   */
+  public FunctionMetrics[] functions() {
+    return functions;
+  }
+}
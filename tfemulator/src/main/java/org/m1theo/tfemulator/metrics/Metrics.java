@@ -0,0 +1,72 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator.metrics;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+/*
+ * The metrics registry of a Vertx instance. Brickd enables it with the "metrics" object of its
+ * config before the devices are deployed, the Router then records the requests and callbacks of
+ * every device it registers. Without it nothing is recorded.
+ *
+ * The connections, queues and outbound totals are read from the Router and OutboundQueue.Stats
+ * when the metrics are exported, see MetricsServer.
+ */
+public class Metrics implements Shareable {
+  private final static String METRICSMAP = "metrics";
+
+  private final ConcurrentMap<String, DeviceMetrics> devices = new ConcurrentHashMap<>();
+  private volatile boolean enabled;
+
+  public static Metrics get(Vertx vertx) {
+    LocalMap<String, Metrics> map = vertx.sharedData().getLocalMap(METRICSMAP);
+    Metrics metrics = map.get(METRICSMAP);
+    if (metrics == null) {
+      Metrics newMetrics = new Metrics();
+      metrics = map.putIfAbsent(METRICSMAP, newMetrics);
+      if (metrics == null) {
+        metrics = newMetrics;
+      }
+    }
+    return metrics;
+  }
+
+  public void enable() {
+    enabled = true;
+  }
+
+  public boolean enabled() {
+    return enabled;
+  }
+
+  /*
+   * The metrics of the device uid of listener, a device deployed again keeps its counters.
+   */
+  public DeviceMetrics device(String listener, int uid) {
+    return devices.computeIfAbsent(listener + "/" + uid, key -> new DeviceMetrics(listener, uid));
+  }
+
+  public Collection<DeviceMetrics> devices() {
+    return devices.values();
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator.metrics;
+
+import java.util.Map;
+
+/*
+ * The totals of the Metrics over JMX, the details per device and connection are in the Prometheus
+ * export of the MetricsServer.
+ */
+public interface MetricsMXBean {
+  long getRequests();
+
+  long getCallbacks();
+
+  int getConnections();
+
+  long getBytesReceived();
+
+  long getBytesSent();
+
+  /*
+   * The bytes waiting in the outbound queues of all connections.
+   */
+  long getOutboundPendingBytes();
+
+  /*
+   * The requests routed to device contexts which they haven't handled yet.
+   */
+  long getDeviceQueueDepth();
+
+  /*
+   * The requests of the ten busiest devices, by "listener/uid".
+   */
+  Map<String, Long> getTopDevices();
+}
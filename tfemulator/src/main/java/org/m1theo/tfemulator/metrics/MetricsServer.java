@@ -0,0 +1,382 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.m1theo.tfemulator.BrickdException;
+import org.m1theo.tfemulator.OutboundQueue;
+import org.m1theo.tfemulator.Router;
+import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.metrics.DeviceMetrics.FunctionMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.json.JsonObject;
+
+/*
+ * Exports the Metrics in the Prometheus text format on http://host:port/metrics and the totals
+ * over JMX, configured with the "metrics" object of the Brickd config:
+ *
+ * "metrics": {"port": 9100, "host": "localhost", "jmx": true, "jmxName": "brickd"}
+ *
+ * Without a port there is no HTTP endpoint. The MBean is org.m1theo.tfemulator:type=Metrics with
+ * the jmxName, a number is added when several emulators run in one JVM.
+ *
+ * Per device and function (the function id of the protocol) there is a histogram of the request
+ * times and a counter of the callbacks, per connection the bytes received, sent and pending, per
+ * listener the connections and the requests waiting for a device context, and the totals of the
+ * outbound queues.
+ */
+public class MetricsServer {
+  private final static Logger logger = LoggerFactory.getLogger(MetricsServer.class);
+  private final static String PREFIX = "tfemulator_";
+  private final static String[] BUCKET_LABELS = new String[DeviceMetrics.BUCKETS.length];
+  private final static int TOP_DEVICES = 10;
+
+  static {
+    for (int i = 0; i < BUCKET_LABELS.length; i++) {
+      BUCKET_LABELS[i] =
+          BigDecimal.valueOf(DeviceMetrics.BUCKETS[i], 9).stripTrailingZeros().toPlainString();
+    }
+  }
+
+  private final Vertx vertx;
+  private final JsonObject conf;
+  private HttpServer server;
+  private ObjectName objectName;
+
+  public MetricsServer(Vertx vertx, JsonObject conf) {
+    this.vertx = vertx;
+    this.conf = conf;
+  }
+
+  /*
+   * Registers the MBean and starts the HTTP endpoint, done is called when it listens.
+   */
+  public void start(Handler<AsyncResult<Void>> done) {
+    if (conf.getBoolean("jmx", true)) {
+      try {
+        registerMBean(conf.getString("jmxName", "brickd"));
+      } catch (JMException e) {
+        done.handle(Future.failedFuture(new BrickdException("can't register the metrics MBean: "
+            + e.getMessage())));
+        return;
+      }
+    }
+    Integer port = conf.getInteger("port");
+    if (port == null) {
+      done.handle(Future.succeededFuture());
+      return;
+    }
+    String host = conf.getString("host", "localhost");
+    server = vertx.createHttpServer().requestHandler(request -> {
+      if (!"/metrics".equals(request.path())) {
+        request.response().setStatusCode(404).end();
+        return;
+      }
+      // a large fleet takes a while, not on the event loop
+      vertx.<String>executeBlocking(future -> future.complete(scrape(vertx)), res -> {
+        if (res.succeeded()) {
+          request.response()
+              .putHeader("Content-Type", "text/plain; version=0.0.4; charset=utf-8")
+              .end(res.result());
+        } else {
+          request.response().setStatusCode(500).end();
+        }
+      });
+    }).listen(port, host, res -> {
+      if (res.succeeded()) {
+        logger.info("metrics on http://{}:{}/metrics", host, port);
+        done.handle(Future.succeededFuture());
+      } else {
+        logger.error("metrics can't listen on port {}: {}", port, res.cause().getMessage());
+        done.handle(Future.failedFuture(res.cause()));
+      }
+    });
+  }
+
+  private void registerMBean(String name) throws JMException {
+    MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+    Jmx mbean = new Jmx(vertx);
+    for (int i = 1;; i++) {
+      ObjectName candidate = new ObjectName("org.m1theo.tfemulator:type=Metrics,name="
+          + ObjectName.quote(i == 1 ? name : name + "-" + i));
+      try {
+        mbeanServer.registerMBean(mbean, candidate);
+        objectName = candidate;
+        return;
+      } catch (InstanceAlreadyExistsException e) {
+        // another emulator in this JVM
+      }
+    }
+  }
+
+  /*
+   * The name of the MBean, null without JMX.
+   */
+  public ObjectName objectName() {
+    return objectName;
+  }
+
+  public void stop() {
+    if (objectName != null) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+      } catch (JMException e) {
+        logger.warn("can't unregister {}: {}", objectName, e.getMessage());
+      }
+      objectName = null;
+    }
+    if (server != null) {
+      server.close();
+      server = null;
+    }
+  }
+
+  /*
+   * The metrics of vertx in the Prometheus text format.
+   */
+  public static String scrape(Vertx vertx) {
+    StringBuilder sb = new StringBuilder(4096);
+    Metrics metrics = Metrics.get(vertx);
+
+    header(sb, "request_duration_seconds", "histogram",
+        "Time from routing a request to the end of its handler on the device context.");
+    List<DeviceMetrics> withCallbacks = new ArrayList<>();
+    for (DeviceMetrics device : metrics.devices()) {
+      String labels = deviceLabels(device);
+      boolean callbacks = false;
+      for (FunctionMetrics function : device.functions()) {
+        long requests = function.requests();
+        callbacks |= function.callbacks() > 0;
+        if (requests == 0) {
+          continue;
+        }
+        String functionLabels = labels + ",function=\"" + function.functionId() + "\"";
+        long cumulative = 0;
+        for (int i = 0; i < BUCKET_LABELS.length; i++) {
+          cumulative += function.bucket(i);
+          sample(sb, "request_duration_seconds_bucket",
+              functionLabels + ",le=\"" + BUCKET_LABELS[i] + "\"", cumulative);
+        }
+        sample(sb, "request_duration_seconds_bucket", functionLabels + ",le=\"+Inf\"",
+            requests);
+        sb.append(PREFIX).append("request_duration_seconds_sum{").append(functionLabels)
+            .append("} ").append(function.nanos() / 1e9).append('\n');
+        sample(sb, "request_duration_seconds_count", functionLabels, requests);
+      }
+      if (callbacks) {
+        withCallbacks.add(device);
+      }
+    }
+
+    header(sb, "callbacks_total", "counter", "Callbacks emitted by a device.");
+    for (DeviceMetrics device : withCallbacks) {
+      String labels = deviceLabels(device);
+      for (FunctionMetrics function : device.functions()) {
+        if (function.callbacks() > 0) {
+          sample(sb, "callbacks_total", labels + ",function=\"" + function.functionId() + "\"",
+              function.callbacks());
+        }
+      }
+    }
+
+    header(sb, "connections", "gauge", "Client connections of a listener.");
+    for (Router router : Router.all(vertx)) {
+      sample(sb, "connections", listenerLabel(router.name()), router.connections().length);
+    }
+    header(sb, "device_queue_depth", "gauge",
+        "Requests routed to a device context which it hasn't handled yet.");
+    for (Router router : Router.all(vertx)) {
+      sample(sb, "device_queue_depth", listenerLabel(router.name()), router.queued());
+    }
+
+    OutboundQueue.Stats stats = OutboundQueue.Stats.get(vertx);
+    List<OutboundQueue> connections = new ArrayList<>(stats.connections());
+    header(sb, "connection_received_bytes_total", "counter", "Bytes read from a connection.");
+    for (OutboundQueue connection : connections) {
+      sample(sb, "connection_received_bytes_total", connectionLabels(connection),
+          connection.bytesReceived());
+    }
+    header(sb, "connection_sent_bytes_total", "counter", "Bytes written to a connection.");
+    for (OutboundQueue connection : connections) {
+      sample(sb, "connection_sent_bytes_total", connectionLabels(connection),
+          connection.bytes());
+    }
+    header(sb, "connection_pending_bytes", "gauge",
+        "Bytes waiting in the outbound queue of a connection.");
+    for (OutboundQueue connection : connections) {
+      sample(sb, "connection_pending_bytes", connectionLabels(connection),
+          connection.pendingBytes());
+    }
+
+    header(sb, "outbound_packets_total", "counter", "Packets written to all connections.");
+    sample(sb, "outbound_packets_total", null, stats.packets());
+    header(sb, "outbound_flushes_total", "counter", "Socket writes of the outbound queues.");
+    sample(sb, "outbound_flushes_total", null, stats.flushes());
+    header(sb, "outbound_dropped_total", "counter",
+        "Callbacks dropped for connections that didn't keep up.");
+    sample(sb, "outbound_dropped_total", null, stats.dropped());
+    header(sb, "outbound_pauses_total", "counter", "Callback pauses of slow connections.");
+    sample(sb, "outbound_pauses_total", null, stats.pauses());
+    header(sb, "outbound_disconnects_total", "counter", "Slow connections closed.");
+    sample(sb, "outbound_disconnects_total", null, stats.disconnects());
+    return sb.toString();
+  }
+
+  private static void header(StringBuilder sb, String name, String type, String help) {
+    sb.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+    sb.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+  }
+
+  private static void sample(StringBuilder sb, String name, String labels, long value) {
+    sb.append(PREFIX).append(name);
+    if (labels != null) {
+      sb.append('{').append(labels).append('}');
+    }
+    sb.append(' ').append(value).append('\n');
+  }
+
+  private static String deviceLabels(DeviceMetrics device) {
+    return listenerLabel(device.listener()) + ",uid=\""
+        + Utils.base58Encode(device.uid() & 0xFFFFFFFFL) + "\"";
+  }
+
+  private static String listenerLabel(String listener) {
+    return "listener=\"" + escape(listener) + "\"";
+  }
+
+  private static String connectionLabels(OutboundQueue connection) {
+    return listenerLabel(connection.listener()) + ",connection=\""
+        + escape(connection.remoteAddress()) + "\"";
+  }
+
+  private static String escape(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+  /*
+   * The MBean, computed from the metrics on every read.
+   */
+  private static class Jmx implements MetricsMXBean {
+    private final Vertx vertx;
+
+    Jmx(Vertx vertx) {
+      this.vertx = vertx;
+    }
+
+    private static long requests(DeviceMetrics device) {
+      long requests = 0;
+      for (FunctionMetrics function : device.functions()) {
+        requests += function.requests();
+      }
+      return requests;
+    }
+
+    @Override
+    public long getRequests() {
+      long requests = 0;
+      for (DeviceMetrics device : Metrics.get(vertx).devices()) {
+        requests += requests(device);
+      }
+      return requests;
+    }
+
+    @Override
+    public long getCallbacks() {
+      long callbacks = 0;
+      for (DeviceMetrics device : Metrics.get(vertx).devices()) {
+        for (FunctionMetrics function : device.functions()) {
+          callbacks += function.callbacks();
+        }
+      }
+      return callbacks;
+    }
+
+    @Override
+    public int getConnections() {
+      int connections = 0;
+      for (Router router : Router.all(vertx)) {
+        connections += router.connections().length;
+      }
+      return connections;
+    }
+
+    @Override
+    public long getBytesReceived() {
+      return OutboundQueue.Stats.get(vertx).bytesReceived();
+    }
+
+    @Override
+    public long getBytesSent() {
+      return OutboundQueue.Stats.get(vertx).bytes();
+    }
+
+    @Override
+    public long getOutboundPendingBytes() {
+      long pending = 0;
+      for (OutboundQueue connection : OutboundQueue.Stats.get(vertx).connections()) {
+        pending += connection.pendingBytes();
+      }
+      return pending;
+    }
+
+    @Override
+    public long getDeviceQueueDepth() {
+      long queued = 0;
+      for (Router router : Router.all(vertx)) {
+        queued += router.queued();
+      }
+      return queued;
+    }
+
+    @Override
+    public Map<String, Long> getTopDevices() {
+      // the counts are taken once, they change while sorting
+      List<Map.Entry<String, Long>> devices = new ArrayList<>();
+      for (DeviceMetrics device : Metrics.get(vertx).devices()) {
+        devices.add(new AbstractMap.SimpleImmutableEntry<>(
+            device.listener() + "/" + Utils.base58Encode(device.uid() & 0xFFFFFFFFL),
+            requests(device)));
+      }
+      devices.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+      Map<String, Long> top = new LinkedHashMap<>();
+      for (Map.Entry<String, Long> device : devices.subList(0,
+          Math.min(TOP_DEVICES, devices.size()))) {
+        top.put(device.getKey(), device.getValue());
+      }
+      return top;
+    }
+  }
+}
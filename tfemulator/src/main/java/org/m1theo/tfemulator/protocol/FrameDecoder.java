@@ -0,0 +1,94 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator.protocol;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+
+/*
+ * Splits the byte stream of one connection into Tinkerforge packets.
+ *
+ * A tcp read may contain several packets or only a part of one. The length byte at offset 4 of the
+ * header tells how many bytes belong to the packet. Bytes of an incomplete packet are kept in an
+ * accumulation buffer which is reused for the lifetime of the connection.
+ *
+ * The frame handler gets a Packet view on the read buffer or on the accumulation buffer, the same
+ * Packet instance is reused for every frame, so decoding allocates nothing per packet. The view is
+ * only valid during the call, handlers which keep the packet must copy it.
+ *
+ * One instance per connection, not thread safe.
+ */
+public class FrameDecoder implements Handler<Buffer> {
+  public final static int HEADER_LENGTH = 8;
+  public final static int LENGTH_OFFSET = 4;
+  private final static int INITIAL_CAPACITY = 256;
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+  private final Handler<Packet> frameHandler;
+  private final ByteBuf accumulator = Unpooled.buffer(INITIAL_CAPACITY);
+  // shares the bytes and indexes of the accumulator
+  private final Buffer accumulatorView = Buffer.buffer(accumulator);
+  private final Packet packet = new Packet();
+
+  public FrameDecoder(Handler<Packet> frameHandler) {
+    this.frameHandler = frameHandler;
+  }
+
+  @Override
+  public void handle(Buffer chunk) {
+    Buffer in = chunk;
+    int start = 0;
+    int end = chunk.length();
+    if (accumulator.isReadable()) {
+      accumulator.writeBytes(chunk.getByteBuf());
+      in = accumulatorView;
+      start = accumulator.readerIndex();
+      end = accumulator.writerIndex();
+    }
+    while (end - start >= HEADER_LENGTH) {
+      int length = in.getByte(start + LENGTH_OFFSET) & 0xFF;
+      if (length < HEADER_LENGTH) {
+        // there is no way to find the start of the next packet, drop what we have
+        logger.error("invalid packet length {}, discarding {} bytes", length, end - start);
+        start = end;
+        break;
+      }
+      if (end - start < length) {
+        break;
+      }
+      frameHandler.handle(packet.wrap(in, start, length));
+      start += length;
+    }
+    if (in == accumulatorView) {
+      accumulator.readerIndex(start);
+      accumulator.discardReadBytes();
+    } else if (start < end) {
+      accumulator.writeBytes(chunk.getByteBuf(), start, end - start);
+    }
+  }
+
+  /*
+   * Number of bytes waiting for the rest of their packet.
+   */
+  public int pending() {
+    return accumulator.readableBytes();
+  }
+}
@@ -16,172 +16,171 @@
  */
 package org.m1theo.tfemulator.protocol;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-
 import org.m1theo.tfemulator.Utils;
 
 import io.vertx.core.buffer.Buffer;
 
+/*
+ * Flyweight view on one packet inside a buffer. The header fields are read on demand from fixed
+ * offsets, nothing is copied. A Packet can be pointed to the next packet with wrap(), the
+ * FrameDecoder uses one instance for all packets of a connection.
+ *
+ * A wrapped buffer may be reused as soon as the handler returns, use copy() to keep a packet and
+ * copyPayload() to keep the payload.
+ *
+ * Header layout (little endian):
+ * uid 4 byte | length 1 byte | function id 1 byte | sequence number 4 bit, response expected 1
+ * bit, other options 3 bit | error code 2 bit, other flags 6 bit | payload
+ */
 public class Packet {
+  // the error codes of the flags of a response
+  public final static byte ERROR_INVALID_PARAMETER = 1;
+  public final static byte ERROR_FUNCTION_NOT_SUPPORTED = 2;
+  private final static int LENGTH = 4;
+  private final static int FUNCTION_ID = 5;
+  private final static int OPTIONS = 6;
+  private final static int FLAGS = 7;
 
-  String uid; // 4 byte
-  Buffer length; // 1 byte
-  byte functionId; // 1 byte
-
-  // byte squenceNumberAndOptions; // 1 byte
-  byte sequenceNumber; // 4 bit
-  boolean responseExpected; // 1 bit
-  Buffer otherOptions; // 3 bit reserved for future use
-  // the whole options block
-  byte options;
-
-  // Buffer flags; // 1 byte
-  Buffer errorCode; // 2 bit
-  // Buffer otherFlags; // 6 bit reserved for future use
+  private Buffer buffer;
+  private int offset;
+  private int length;
 
-  Buffer payload;
+  public Packet() {}
 
   public Packet(Buffer buffer) {
-    byte[] data = buffer.getBytes();
-    uid = getUidFromData(data);
-
-    length = Buffer.buffer();
-    length.appendByte(data[4]);
-
-    functionId = data[5];
+    wrap(buffer, 0, buffer.length());
+  }
 
-    options = data[6];
-    sequenceNumber = getSequenceNumberFromData(data);
+  /*
+   * Points this packet to length bytes of buffer starting at offset.
+   */
+  public Packet wrap(Buffer buffer, int offset, int length) {
+    this.buffer = buffer;
+    this.offset = offset;
+    this.length = length;
+    return this;
+  }
 
-    responseExpected = getResponseExpectedFromData(data);
+  /*
+   * Returns a packet with its own copy of the bytes.
+   */
+  public Packet copy() {
+    return new Packet(buffer.getBuffer(offset, offset + length));
+  }
 
-    errorCode = Buffer.buffer();
-    errorCode.appendByte(getErrorCodeFromData(data));
+  /**
+   * @return the buffer holding the packet
+   */
+  public Buffer getBuffer() {
+    return buffer;
+  }
 
-    if (data.length > 8) {
-      payload = Buffer.buffer();
-      payload.appendBytes(data, 8, data.length - 8);
-    }
+  /**
+   * @return the position of the packet in the buffer
+   */
+  public int getOffset() {
+    return offset;
   }
 
+  /**
+   * @return the uid as sent over the wire
+   */
+  public int getUidValue() {
+    // uid is little endian, Buffer reads big endian
+    return Integer.reverseBytes(buffer.getInt(offset));
+  }
 
   /**
-   * @return the uid
+   * @return the base58 encoded uid
    */
   public String getUid() {
-    return uid;
+    return Utils.base58Encode(getUidValue());
   }
 
-
   /**
-   * @return the length
+   * @return the length from the header
    */
-  public Buffer getLength() {
-    return length;
+  public int getLength() {
+    return buffer.getByte(offset + LENGTH) & 0xFF;
   }
 
-
   /**
    * @return the functionId
    */
   public byte getFunctionId() {
-    return functionId;
+    return buffer.getByte(offset + FUNCTION_ID);
   }
 
   /**
    * @return the sequenceNumber
    */
   public byte getSequenceNumber() {
-    return sequenceNumber;
+    return (byte) ((getOptions() >> 4) & 0x0F);
   }
 
-
   /**
    * @return the responseExpected
    */
   public boolean getResponseExpected() {
-    return responseExpected;
+    return ((getOptions() >> 3) & 0x01) == 0x01;
   }
 
-
   /**
    * @return the otherOptions
    */
-  public Buffer getOtherOptions() {
-    return otherOptions;
+  public byte getOtherOptions() {
+    return (byte) (getOptions() & 0x07);
   }
 
+  public byte getOptions() {
+    return buffer.getByte(offset + OPTIONS);
+  }
 
   /**
    * @return the errorCode
    */
-  public Buffer getErrorCode() {
-    return errorCode;
+  public byte getErrorCode() {
+    return (byte) ((buffer.getByte(offset + FLAGS) >> 6) & 0x03);
   }
 
-
   /**
-   * @return the payload
+   * @return a view on the payload or null if the packet has no payload
    */
   public Buffer getPayload() {
-    return payload;
-  }
-
-  private static byte getSequenceNumberFromData(byte[] data) {
-    return (byte) ((((int) data[6]) >> 4) & 0x0F);
-  }
-
-  private static boolean getResponseExpectedFromData(byte[] data) {
-    return ((((int) data[6]) >> 3) & 0x01) == 0x01;
-  }
-
-  private static String getUidFromData(byte[] data) {
-    ByteBuffer bb = ByteBuffer.wrap(data);
-    bb.order(ByteOrder.LITTLE_ENDIAN);
-    int uid = bb.getInt();
-    return Utils.base58Encode(uid);
-  }
-
-  private static byte getErrorCodeFromData(byte[] data) {
-    return (byte) ((((int) data[7]) >> 6) & 0x03);
+    if (length <= FrameDecoder.HEADER_LENGTH) {
+      return null;
+    }
+    return buffer.slice(offset + FrameDecoder.HEADER_LENGTH, offset + length);
   }
 
-
-  // This is the sequenceNumber for responses to incoming requests
-  // Callback to Enumerate have: sequenceNumber == 0
-  private static byte getResponseSequenceNumberFromData(byte[] data) {
-    return (byte) ((((int) data[6]) >> 4) & 0x0F);
+  /**
+   * @return a copy of the payload or null if the packet has no payload
+   */
+  public Buffer copyPayload() {
+    if (length <= FrameDecoder.HEADER_LENGTH) {
+      return null;
+    }
+    return buffer.getBuffer(offset + FrameDecoder.HEADER_LENGTH, offset + length);
   }
 
-
   @Override
   public String toString() {
-    StringBuffer sb = new StringBuffer();
+    StringBuilder sb = new StringBuilder();
     sb.append("uid: ");
-    sb.append(uid);
+    sb.append(getUid());
     sb.append(" length: ");
-    sb.append(length);
+    sb.append(getLength());
     sb.append(" functionid: ");
-    sb.append(functionId);
+    sb.append(getFunctionId());
     sb.append(" sequenceNumber: ");
-    sb.append(sequenceNumber);
+    sb.append(getSequenceNumber());
     sb.append(" responseExpected: ");
-    sb.append(responseExpected);
+    sb.append(getResponseExpected());
     sb.append(" errorCode: ");
-    sb.append(errorCode);
+    sb.append(getErrorCode());
     sb.append(" payload length: ");
-    if (payload != null) {
-      sb.append(payload.length());
-    } else {
-      sb.append(0);
-    }
+    sb.append(Math.max(0, length - FrameDecoder.HEADER_LENGTH));
     return sb.toString();
   }
 
-
-  public byte getOptions() {
-    return options;
-  }
-
 }
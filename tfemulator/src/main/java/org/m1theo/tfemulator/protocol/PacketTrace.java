@@ -0,0 +1,104 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator.protocol;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.m1theo.tfemulator.BrickdException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+/*
+ * The packet trace: the packets Brickd reads and the answers of the devices, one line each with
+ * key=value fields, logged with the logger "org.m1theo.tfemulator.packets" at debug.
+ *
+ * Under load a full trace costs more than the devices themselves, so it can be sampled with the
+ * "trace" object of the Brickd config, {"sample": 100} logs 1 in 100 packets in each direction.
+ * The callers ask sampled() before they build anything to log. Without the logger at debug
+ * sampled() is a level check and nothing else.
+ *
+ * There is one trace per Vertx instance, Brickd configures it before the devices are deployed.
+ */
+public class PacketTrace implements Shareable {
+  private final static String TRACEMAP = "packettrace";
+  private final static Logger logger = LoggerFactory.getLogger("org.m1theo.tfemulator.packets");
+
+  private volatile int sample = 1;
+
+  public static PacketTrace get(Vertx vertx) {
+    LocalMap<String, PacketTrace> map = vertx.sharedData().getLocalMap(TRACEMAP);
+    PacketTrace trace = map.get(TRACEMAP);
+    if (trace == null) {
+      PacketTrace newTrace = new PacketTrace();
+      trace = map.putIfAbsent(TRACEMAP, newTrace);
+      if (trace == null) {
+        trace = newTrace;
+      }
+    }
+    return trace;
+  }
+
+  public void configure(JsonObject conf) throws BrickdException {
+    int newSample = conf.getInteger("sample", 1);
+    if (newSample < 1) {
+      throw new BrickdException("trace sample must be at least 1: " + newSample);
+    }
+    sample = newSample;
+  }
+
+  public int sample() {
+    return sample;
+  }
+
+  /*
+   * True for 1 in sample calls if the trace is on. Random instead of counted, the event loops
+   * don't share a counter.
+   */
+  public boolean sampled() {
+    if (!logger.isDebugEnabled()) {
+      return false;
+    }
+    int n = sample;
+    return n == 1 || ThreadLocalRandom.current().nextInt(n) == 0;
+  }
+
+  /*
+   * A packet read from connection.
+   */
+  public void received(Packet packet, String connection) {
+    log("in", packet, connection);
+  }
+
+  /*
+   * The answer of a device, sent to connection.
+   */
+  public void sent(Buffer packet, String connection) {
+    log("out", new Packet(packet), connection);
+  }
+
+  private static void log(String direction, Packet packet, String connection) {
+    logger.debug("dir={} uid={} fid={} seq={} len={} err={} conn={}", direction,
+        packet.getUid(), packet.getFunctionId() & 0xFF, packet.getSequenceNumber(),
+        packet.getLength(), packet.getErrorCode(), connection);
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+
+/*
+ * Builds response packets in place: the header and the little endian values are written directly
+ * into a buffer of the maximum packet size, which is reused for every response.
+ *
+ * buffer() returns a view on the written bytes. It is valid until the next header() call, which is
+ * long enough for the eventbus: send and publish copy the message before they return and the copy
+ * has exactly the size of the packet. So building a response allocates nothing, the outgoing frame
+ * is the only allocation.
+ *
+ * Pooled Netty buffers don't fit here, Vert.x wraps every ByteBuf it gets into an unreleasable
+ * buffer and the eventbus copy would come from the same pool, the memory would never go back.
+ *
+ * One instance per device, not thread safe.
+ */
+public class ResponseWriter {
+  public final static int MAX_PACKET_LENGTH = 80;
+  private final ByteBuf buffer = Unpooled.buffer(MAX_PACKET_LENGTH, MAX_PACKET_LENGTH);
+  // shares the bytes and indexes of buffer
+  private final Buffer view = Buffer.buffer(buffer);
+
+  /*
+   * Starts a new packet.
+   */
+  public ResponseWriter header(long uid, byte length, byte functionId, byte options, byte flags) {
+    buffer.clear();
+    buffer.writeInt(Integer.reverseBytes((int) uid));
+    buffer.writeByte(length);
+    buffer.writeByte(functionId);
+    buffer.writeByte(options);
+    buffer.writeByte(flags);
+    return this;
+  }
+
+  public ResponseWriter writeInt8(byte value, int cardinality) {
+    for (int i = 0; i < cardinality; i++) {
+      buffer.writeByte(value);
+    }
+    return this;
+  }
+
+  public ResponseWriter writeUInt8(short value, int cardinality) {
+    for (int i = 0; i < cardinality; i++) {
+      buffer.writeByte(value & 0xFF);
+    }
+    return this;
+  }
+
+  public ResponseWriter writeInt16(short value, int cardinality) {
+    for (int i = 0; i < cardinality; i++) {
+      buffer.writeShort(Short.reverseBytes(value));
+    }
+    return this;
+  }
+
+  public ResponseWriter writeUInt16(int value, int cardinality) {
+    for (int i = 0; i < cardinality; i++) {
+      buffer.writeShort(Short.reverseBytes((short) value));
+    }
+    return this;
+  }
+
+  public ResponseWriter writeInt32(int value, int cardinality) {
+    for (int i = 0; i < cardinality; i++) {
+      buffer.writeInt(Integer.reverseBytes(value));
+    }
+    return this;
+  }
+
+  public ResponseWriter writeUInt32(long value, int cardinality) {
+    for (int i = 0; i < cardinality; i++) {
+      buffer.writeInt(Integer.reverseBytes((int) value));
+    }
+    return this;
+  }
+
+  public ResponseWriter writeUInt64(long value, int cardinality) {
+    for (int i = 0; i < cardinality; i++) {
+      buffer.writeLong(Long.reverseBytes(value));
+    }
+    return this;
+  }
+
+  public ResponseWriter writeFloat(float value, int cardinality) {
+    for (int i = 0; i < cardinality; i++) {
+      buffer.writeInt(Integer.reverseBytes(Float.floatToIntBits(value)));
+    }
+    return this;
+  }
+
+  /*
+   * bool values are one byte: 0 means false, 1 is true
+   */
+  public ResponseWriter writeBool(boolean value, int cardinality) {
+    for (int i = 0; i < cardinality; i++) {
+      buffer.writeByte(value ? 1 : 0);
+    }
+    return this;
+  }
+
+  public ResponseWriter writeChar(char value, int cardinality) {
+    for (int i = 0; i < cardinality; i++) {
+      buffer.writeByte((byte) value);
+    }
+    return this;
+  }
+
+  /*
+   * Appends the bytes of a stored value, e.g. the payload of a setter.
+   */
+  public ResponseWriter writeBuffer(Buffer value) {
+    int length = value.length();
+    for (int i = 0; i < length; i++) {
+      buffer.writeByte(value.getByte(i));
+    }
+    return this;
+  }
+
+  /*
+   * Writes the answer to a request that failed: the header of the request with errorCode in the
+   * flags, e.g. Packet.ERROR_FUNCTION_NOT_SUPPORTED. Returns null if the request expects no
+   * response.
+   */
+  public Buffer error(long uid, Packet request, byte errorCode) {
+    if (!request.getResponseExpected()) {
+      return null;
+    }
+    header(uid, (byte) 8, request.getFunctionId(), request.getOptions(), (byte) (errorCode << 6));
+    return view;
+  }
+
+  /*
+   * Returns the packet written since the last header() call.
+   */
+  public Buffer buffer() {
+    return view;
+  }
+}
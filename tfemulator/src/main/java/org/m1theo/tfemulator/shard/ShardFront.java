@@ -0,0 +1,242 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator.shard;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.m1theo.tfemulator.BrickdException;
+import org.m1theo.tfemulator.OutboundQueue.Policy;
+import org.m1theo.tfemulator.Router;
+import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.protocol.Packet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.NetClient;
+import io.vertx.core.net.NetSocket;
+
+/*
+ * The front of a sharded emulator. The devices run in several emulator processes (shards), each
+ * owns a range of uids. The front is the brickd the clients connect to: it forwards the packets to
+ * the shard that owns the uid, enumerate (uid 0) goes to all shards, and the answers and callbacks
+ * of the shards go back to the client. For the clients the shards look like one brickd.
+ *
+ * Configured with the "front" object of a Brickd listener:
+ *
+ * "front": {"shards": [{"host": "localhost", "port": 4300, "from": "1", "to": "2Ah7T"},
+ *                      {"port": 4301, "from": 4000000, "to": 4294967295}]}
+ *
+ * from and to are the first and the last uid of the shard, base58 or the 32 bit value. There is
+ * one ShardLink per shard, a lost link is connected again every RECONNECT_DELAY milliseconds.
+ * Packets for a shard without link are dropped.
+ *
+ * "highWatermark" and "lowWatermark" limit the bytes waiting for a link (see ShardLink). While a
+ * link is above its high watermark the front stops reading from all clients, requests are never
+ * dropped.
+ *
+ * Runs on the context of Brickd, which owns the client sockets.
+ */
+public class ShardFront {
+  private final static long RECONNECT_DELAY = 1000;
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+  private final Vertx vertx;
+  private final NetClient client;
+  private final Shard[] shards;
+  // the ids of the client connections on the links
+  private final Map<String, Integer> ids = new HashMap<>();
+  private final Map<Integer, String> handlerIds = new HashMap<>();
+  private final Map<String, NetSocket> sockets = new HashMap<>();
+  private final JsonObject conf;
+  private int nextId;
+  // the links above their high watermark
+  private int pausedLinks;
+
+  private static class Shard {
+    final String host;
+    final int port;
+    final long from;
+    final long to;
+    ShardLink link;
+
+    Shard(String host, int port, long from, long to) {
+      this.host = host;
+      this.port = port;
+      this.from = from;
+      this.to = to;
+    }
+
+    boolean owns(long uid) {
+      return uid >= from && uid <= to;
+    }
+
+    @Override
+    public String toString() {
+      return host + ":" + port;
+    }
+  }
+
+  public ShardFront(Vertx vertx, JsonObject conf) throws BrickdException {
+    this.vertx = vertx;
+    this.client = vertx.createNetClient();
+    this.conf = conf;
+    JsonArray shardsConf = conf.getJsonArray("shards");
+    if (shardsConf == null || shardsConf.isEmpty()) {
+      throw new BrickdException("front has no shards");
+    }
+    List<Shard> list = new ArrayList<>();
+    for (Object shardObj : shardsConf) {
+      JsonObject shardConf = (JsonObject) shardObj;
+      Integer port = shardConf.getInteger("port");
+      if (port == null) {
+        throw new BrickdException("shard without port: " + shardConf.encode());
+      }
+      Shard shard = new Shard(shardConf.getString("host", "localhost"), port,
+          uid(shardConf.getValue("from", 0L)), uid(shardConf.getValue("to", 0xFFFFFFFFL)));
+      for (Shard other : list) {
+        if (shard.from <= other.to && other.from <= shard.to) {
+          throw new BrickdException("uid ranges of shards " + other + " and " + shard + " overlap");
+        }
+      }
+      list.add(shard);
+    }
+    shards = list.toArray(new Shard[list.size()]);
+  }
+
+  private static long uid(Object value) throws BrickdException {
+    if (value instanceof Number) {
+      return ((Number) value).longValue() & 0xFFFFFFFFL;
+    }
+    try {
+      return Utils.uid2long(value.toString());
+    } catch (RuntimeException e) {
+      throw new BrickdException("invalid shard uid: " + value);
+    }
+  }
+
+  /*
+   * Connects the links to the shards.
+   */
+  public void start() {
+    for (Shard shard : shards) {
+      connect(shard);
+    }
+  }
+
+  private void connect(Shard shard) {
+    client.connect(shard.port, shard.host, res -> {
+      if (res.failed()) {
+        logger.debug("shard {} not reachable: {}", shard, res.cause().getMessage());
+        vertx.setTimer(RECONNECT_DELAY, id -> connect(shard));
+        return;
+      }
+      logger.info("connected to shard {}", shard);
+      ShardLink link = new ShardLink(vertx, res.result(), conf, Policy.PAUSE,
+          (connection, type, frame) -> {
+            String handlerId = handlerIds.get(connection);
+            if (type == ShardLink.DATA && handlerId != null) {
+              vertx.eventBus().send(handlerId,
+                  frame.getBuffer(ShardLink.FRAME_HEADER, frame.length()));
+            }
+          }, this::pauseClients);
+      res.result().closeHandler(v -> {
+        logger.warn("lost shard {}", shard);
+        if (link.isPaused()) {
+          pauseClients(false);
+        }
+        shard.link = null;
+        vertx.setTimer(RECONNECT_DELAY, id -> connect(shard));
+      });
+      // the clients that are already there
+      for (Integer id : handlerIds.keySet()) {
+        link.write(id, ShardLink.OPEN);
+      }
+      shard.link = link;
+    });
+  }
+
+  /*
+   * Stops reading from the clients while any link is behind.
+   */
+  private void pauseClients(boolean pause) {
+    pausedLinks += pause ? 1 : -1;
+    if (pause && pausedLinks == 1) {
+      sockets.values().forEach(NetSocket::pause);
+    } else if (!pause && pausedLinks == 0) {
+      sockets.values().forEach(NetSocket::resume);
+    }
+  }
+
+  /*
+   * A client connected on socket, handlerId is where the packets for it are sent to.
+   */
+  public void open(String handlerId, NetSocket socket) {
+    int id = nextId++;
+    ids.put(handlerId, id);
+    handlerIds.put(id, handlerId);
+    sockets.put(handlerId, socket);
+    if (pausedLinks > 0) {
+      socket.pause();
+    }
+    for (Shard shard : shards) {
+      if (shard.link != null) {
+        shard.link.write(id, ShardLink.OPEN);
+      }
+    }
+  }
+
+  public void close(String handlerId) {
+    Integer id = ids.remove(handlerId);
+    if (id == null) {
+      return;
+    }
+    handlerIds.remove(id);
+    sockets.remove(handlerId);
+    for (Shard shard : shards) {
+      if (shard.link != null) {
+        shard.link.write(id, ShardLink.CLOSE);
+      }
+    }
+  }
+
+  /*
+   * Forwards a packet of the client handlerId to the shard owning its uid, or to all shards.
+   */
+  public void forward(Packet packet, String handlerId) {
+    Integer id = ids.get(handlerId);
+    if (id == null) {
+      return;
+    }
+    long uid = packet.getUidValue() & 0xFFFFFFFFL;
+    for (Shard shard : shards) {
+      if (uid == Router.BROADCAST_UID || shard.owns(uid)) {
+        if (shard.link != null) {
+          shard.link.write(id, ShardLink.DATA, packet.getBuffer(), packet.getOffset(),
+              packet.getLength());
+        } else if (logger.isDebugEnabled()) {
+          logger.debug("shard {} is not connected, dropping {}", shard, packet);
+        }
+      }
+    }
+  }
+}
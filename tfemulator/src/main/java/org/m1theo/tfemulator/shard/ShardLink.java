@@ -0,0 +1,262 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator.shard;
+
+import org.m1theo.tfemulator.BrickdException;
+import org.m1theo.tfemulator.OutboundQueue;
+import org.m1theo.tfemulator.OutboundQueue.Policy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.NetSocket;
+import io.vertx.core.parsetools.RecordParser;
+
+/*
+ * The link between a ShardFront and a ShardServer. One TCP connection carries the client
+ * connections of the front, every frame is tagged with the connection it belongs to:
+ *
+ * int length | int connection | byte type | Tinkerforge packet
+ *
+ * length counts the bytes after itself, the numbers are big endian. The types are OPEN and CLOSE
+ * of a client connection and DATA, which carries one packet in either direction.
+ *
+ * The writer gathers the frames like the OutboundQueue does and writes them at the end of the
+ * current event loop task queue, in chunks of up to CHUNK_SIZE bytes while the socket has room.
+ * Once more than "highWatermark" bytes wait for the socket, the policy of the OutboundQueue decides
+ * (see there): pause tells the pause handler to stop the sources until the link is down to
+ * "lowWatermark", drop drops the callbacks until then, disconnect closes the link. It must be used
+ * on the context of the socket.
+ */
+public class ShardLink {
+  public final static byte DATA = 0;
+  public final static byte OPEN = 1;
+  public final static byte CLOSE = 2;
+  private final static int LENGTH_LENGTH = 4;
+  // connection and type
+  public final static int FRAME_HEADER = 5;
+  private final static int CHUNK_SIZE = 65536;
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+
+  /*
+   * Handles a frame of the link, the packet of a DATA frame starts at FRAME_HEADER of frame.
+   */
+  @FunctionalInterface
+  public interface FrameHandler {
+    void handle(int connection, byte type, Buffer frame);
+  }
+
+  private final NetSocket socket;
+  private final Context context;
+  private final long highWatermark;
+  private final long lowWatermark;
+  private final Policy policy;
+  private final Handler<Boolean> pauseHandler;
+  private Buffer out = Buffer.buffer();
+  // bytes of out already written to the socket
+  private int written;
+  private boolean flushScheduled;
+  private boolean draining;
+  private boolean paused;
+  private boolean dropping;
+  private boolean closed;
+  private long dropped;
+
+  /*
+   * The link over socket, the watermarks come from conf. pauseHandler gets true when the sources
+   * of the frames must stop and false when they may go on.
+   */
+  public ShardLink(Vertx vertx, NetSocket socket, JsonObject conf, Policy policy,
+      FrameHandler handler, Handler<Boolean> pauseHandler) {
+    this.socket = socket;
+    this.context = vertx.getOrCreateContext();
+    this.highWatermark =
+        conf.getLong("highWatermark", (long) OutboundQueue.DEFAULT_HIGH_WATERMARK);
+    this.lowWatermark = conf.getLong("lowWatermark", highWatermark / 4);
+    this.policy = policy;
+    this.pauseHandler = pauseHandler;
+    socket.handler(decoder(handler));
+  }
+
+  /*
+   * The policy of a link config, checked before the link is used.
+   */
+  public static Policy policy(JsonObject conf) throws BrickdException {
+    return OutboundQueue.policy(conf);
+  }
+
+  /*
+   * Splits the byte stream of a link into frames.
+   */
+  private static Handler<Buffer> decoder(FrameHandler handler) {
+    RecordParser parser = RecordParser.newFixed(LENGTH_LENGTH, null);
+    parser.setOutput(new Handler<Buffer>() {
+      private boolean header = true;
+
+      @Override
+      public void handle(Buffer buffer) {
+        if (header) {
+          parser.fixedSizeMode(buffer.getInt(0));
+        } else {
+          handler.handle(buffer.getInt(0), buffer.getByte(4), buffer);
+          parser.fixedSizeMode(LENGTH_LENGTH);
+        }
+        header = !header;
+      }
+    });
+    return parser;
+  }
+
+  public void write(int connection, byte type) {
+    write(connection, type, null, 0, 0);
+  }
+
+  public void write(int connection, byte type, Buffer packet) {
+    write(connection, type, packet, 0, packet.length());
+  }
+
+  /*
+   * Queues a frame with length bytes of packet starting at offset.
+   */
+  public void write(int connection, byte type, Buffer packet, int offset, int length) {
+    if (closed) {
+      return;
+    }
+    if (dropping && type == DATA && OutboundQueue.isCallback(packet, offset)) {
+      dropped++;
+      return;
+    }
+    out.appendInt(FRAME_HEADER + length).appendInt(connection).appendByte(type);
+    if (length > 0) {
+      out.appendBuffer(packet, offset, length);
+    }
+    if (pending() > highWatermark) {
+      overflow();
+      if (closed) {
+        return;
+      }
+    }
+    if (!flushScheduled && !draining) {
+      flushScheduled = true;
+      context.runOnContext(v -> {
+        flushScheduled = false;
+        flush();
+      });
+    }
+  }
+
+  private void overflow() {
+    switch (policy) {
+      case PAUSE:
+        if (!paused) {
+          paused = true;
+          logger.warn("shard link {} is {} bytes behind, sources paused", socket.remoteAddress(),
+              pending());
+          pauseHandler.handle(true);
+        }
+        break;
+      case DROP:
+        if (!dropping) {
+          dropping = true;
+          logger.warn("shard link {} is {} bytes behind, dropping callbacks",
+              socket.remoteAddress(), pending());
+        }
+        break;
+      default:
+        logger.warn("shard link {} is {} bytes behind, disconnecting", socket.remoteAddress(),
+            pending());
+        closed = true;
+        out = Buffer.buffer();
+        written = 0;
+        socket.close();
+    }
+  }
+
+  private void flush() {
+    while (!closed && written < out.length()) {
+      if (socket.writeQueueFull()) {
+        if (written > 0) {
+          // only the rest is kept while the socket drains
+          out = out.getBuffer(written, out.length());
+          written = 0;
+        }
+        // keeps gathering until the socket has room
+        draining = true;
+        socket.drainHandler(v -> {
+          draining = false;
+          flush();
+        });
+        return;
+      }
+      int end = Math.min(out.length(), written + CHUNK_SIZE);
+      Buffer chunk;
+      if (written == 0 && end == out.length()) {
+        // a new buffer for the next frames, the socket may still hold on to this one
+        chunk = out;
+        out = Buffer.buffer();
+      } else {
+        chunk = out.getBuffer(written, end);
+        written = end;
+      }
+      socket.write(chunk);
+      if (pending() <= lowWatermark) {
+        // the sources may write again right away
+        caughtUp();
+      }
+    }
+    if (written > 0 && written == out.length()) {
+      out = Buffer.buffer();
+      written = 0;
+    }
+  }
+
+  private void caughtUp() {
+    if (paused) {
+      paused = false;
+      logger.info("shard link {} caught up, sources resumed", socket.remoteAddress());
+      pauseHandler.handle(false);
+    }
+    if (dropping) {
+      dropping = false;
+      logger.warn("shard link {} caught up, dropped {} callbacks", socket.remoteAddress(),
+          dropped);
+      dropped = 0;
+    }
+  }
+
+  /*
+   * The bytes waiting for the socket.
+   */
+  public long pending() {
+    return out.length() - written;
+  }
+
+  /*
+   * True while the sources are paused.
+   */
+  public boolean isPaused() {
+    return paused;
+  }
+
+  public NetSocket socket() {
+    return socket;
+  }
+}
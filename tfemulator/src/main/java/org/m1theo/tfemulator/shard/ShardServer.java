@@ -0,0 +1,140 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator.shard;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.m1theo.tfemulator.BrickdException;
+import org.m1theo.tfemulator.OutboundQueue.Policy;
+import org.m1theo.tfemulator.Router;
+import org.m1theo.tfemulator.protocol.Packet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.NetServerOptions;
+import io.vertx.core.net.NetSocket;
+
+/*
+ * The shard side of a sharded emulator: accepts the links of ShardFronts and makes every client
+ * connection of a front a connection of the router, so the devices of this process answer and
+ * send their callbacks to it like to a direct client.
+ *
+ * Started by Brickd for a listener with a "shard" object, e.g. {"port": 4300, "host": "localhost"}.
+ * "highWatermark", "lowWatermark" and "policy" of the object limit the bytes waiting for a link
+ * (see ShardLink). With the pause policy a link that doesn't keep up stops the callbacks for its
+ * clients and reading the requests of its front until it caught up.
+ *
+ * Runs on the context of Brickd.
+ */
+public class ShardServer {
+  private final static String ADDRESS_PREFIX = "tfemulator.shard.";
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+  private final Vertx vertx;
+  private final Router router;
+  private JsonObject conf = new JsonObject();
+  private Policy policy = Policy.PAUSE;
+
+  public ShardServer(Vertx vertx, Router router) {
+    this.vertx = vertx;
+    this.router = router;
+  }
+
+  /*
+   * Listens for the links of the fronts, listened is called with the result of the bind.
+   */
+  public void listen(JsonObject conf, Handler<AsyncResult<Void>> listened)
+      throws BrickdException {
+    Integer port = conf.getInteger("port");
+    if (port == null) {
+      throw new BrickdException("shard needs a port for the link");
+    }
+    String host = conf.getString("host", "localhost");
+    this.conf = conf;
+    this.policy = ShardLink.policy(conf);
+    vertx.createNetServer(new NetServerOptions().setPort(port).setHost(host))
+        .connectHandler(this::accept).listen(res -> {
+          if (res.failed()) {
+            logger.error("shard can't listen on {}:{}: {}", host, port, res.cause().getMessage());
+            listened.handle(Future.failedFuture(res.cause()));
+          } else {
+            logger.info("shard is now listening on {}:{}", host, port);
+            listened.handle(Future.succeededFuture());
+          }
+        });
+  }
+
+  private void accept(NetSocket socket) {
+    logger.info("front {} connected", socket.remoteAddress());
+    String prefix = ADDRESS_PREFIX + socket.writeHandlerID() + ".";
+    Map<Integer, MessageConsumer<Buffer>> connections = new HashMap<>();
+    Packet packet = new Packet();
+    ShardLink[] link = new ShardLink[1];
+    link[0] = new ShardLink(vertx, socket, conf, policy, (connection, type, frame) -> {
+      String address = prefix + connection;
+      switch (type) {
+        case ShardLink.DATA:
+          router.route(packet.wrap(frame, ShardLink.FRAME_HEADER,
+              frame.length() - ShardLink.FRAME_HEADER), address);
+          break;
+        case ShardLink.OPEN:
+          // the packets of the devices for the client go back over the link
+          connections.put(connection, vertx.eventBus().<Buffer>localConsumer(address,
+              msg -> link[0].write(connection, ShardLink.DATA, msg.body())));
+          if (link[0].isPaused()) {
+            router.pauseCallbacks(address, true);
+          }
+          router.addConnection(address);
+          break;
+        case ShardLink.CLOSE:
+          close(connections.remove(connection), address);
+          break;
+        default:
+          logger.error("unknown link frame type {}", type);
+      }
+    }, paused -> {
+      // the front waits with the requests, the devices with the callbacks
+      for (Integer connection : connections.keySet()) {
+        router.pauseCallbacks(prefix + connection, paused);
+      }
+      if (paused) {
+        socket.pause();
+      } else {
+        socket.resume();
+      }
+    });
+    socket.closeHandler(v -> {
+      logger.info("front {} disconnected", socket.remoteAddress());
+      connections.forEach((connection, consumer) -> close(consumer, prefix + connection));
+      connections.clear();
+    });
+  }
+
+  private void close(MessageConsumer<Buffer> consumer, String address) {
+    if (consumer != null) {
+      consumer.unregister();
+      router.removeConnection(address);
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package org.m1theo.tfemulator.values;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.LongSupplier;
+
+import org.m1theo.tfemulator.BrickdException;
+import org.m1theo.tfemulator.DeviceConfig;
+import org.m1theo.tfemulator.Utils;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/*
+ * The value sources of one device, configured in the "values" object of its config entry:
+ *
+ * {"type": "BrickletTemperature", "uid": "a1", "enabled": true, "seed": 42,
+ *  "values": {"temperature": {"generator": "walk", "start": 2100, "step": 5},
+ *             "default": {"generator": "uniform", "min": 0, "max": 1000}}}
+ *
+ * The keys are the getter names without "get", e.g. "temperature" for getTemperature. Values with
+ * more than one field (e.g. acceleration x, y, z) take an array with one entry per field, a single
+ * object is used for all fields. "default" applies to the values that are not listed, without it
+ * they are the constant 100.
+ *
+ * There is one source per field of a sensor value: the getter, the periodic callback and the
+ * threshold callback all get the same sources from sources(), sampled once per clock time, so they
+ * report the same value at the same instant.
+ *
+ * Every source gets its own random generator split off the one of the device, which is seeded with
+ * "seed" or else with the uid. The devices ask for their sources in a fixed order when they start,
+ * so the same config gives the same values on every run.
+ */
+public class DeviceValues {
+  private final JsonObject conf;
+  private final SplittableRandom random;
+  private final LongSupplier clock;
+  private final Map<String, ValueSource[]> sensors = new HashMap<>();
+
+  public DeviceValues(DeviceConfig deviceConfig, LongSupplier clock) {
+    this.conf = deviceConfig.getJsonObject("values", new JsonObject());
+    Long seed = deviceConfig.seed();
+    this.random = new SplittableRandom(
+        seed != null ? seed : Utils.uid2long(deviceConfig.uid()));
+    this.clock = clock;
+  }
+
+  /*
+   * The sources of the count fields of value name, created on the first call.
+   */
+  public ValueSource[] sources(String name, int count) throws BrickdException {
+    ValueSource[] sources = sensors.get(name);
+    if (sources == null || sources.length != count) {
+      sources = create(name, count);
+      sensors.put(name, sources);
+    }
+    return sources;
+  }
+
+  private ValueSource[] create(String name, int count) throws BrickdException {
+    Object entry = conf.getValue(name);
+    if (entry == null) {
+      entry = conf.getValue("default");
+    }
+    ValueSource[] sources = new ValueSource[count];
+    for (int i = 0; i < count; i++) {
+      JsonObject sourceConf = null;
+      if (entry instanceof JsonArray) {
+        JsonArray entries = (JsonArray) entry;
+        sourceConf = entries.getJsonObject(Math.min(i, entries.size() - 1));
+      } else if (entry instanceof JsonObject) {
+        sourceConf = (JsonObject) entry;
+      }
+      // split even for the constant, adding a generator must not change the others
+      SplittableRandom sourceRandom = random.split();
+      if (sourceConf == null) {
+        sources[i] = new ValueSource.Constant(ValueSource.DEFAULT_VALUE);
+      } else {
+        sources[i] = new ValueSource.PerTick(
+            ValueSource.create(sourceConf, sourceRandom, clock), clock);
+      }
+    }
+    return sources;
+  }
+}
@@ -0,0 +1,227 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator.values;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.m1theo.tfemulator.BrickdException;
+import org.m1theo.tfemulator.values.TraceFile.ColumnType;
+
+/*
+ * Converts a CSV file of readings into a TraceFile:
+ *
+ * java -cp target/tfemulator-0.0.1-SNAPSHOT-fat.jar org.m1theo.tfemulator.values.TraceConverter \
+ *     readings.csv readings.trace temperature=int16 humidity=int16
+ *
+ * The first line names the columns, the first column is the timestamp, in milliseconds or as an
+ * ISO-8601 instant, ascending. The value columns are doubles unless a type is given. Empty values
+ * repeat the value before.
+ *
+ * The CSV is read twice, once to count the rows and once to write the columns, so the conversion
+ * needs the same small amount of memory for any size.
+ */
+public class TraceConverter {
+  private final static int BUFFER_SIZE = 64 * 1024;
+
+  /*
+   * Writes one column through a small buffer at increasing positions of the file.
+   */
+  private static class ColumnWriter {
+    private final FileChannel channel;
+    private final ByteBuffer buffer =
+        ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private long position;
+
+    ColumnWriter(FileChannel channel, long position) {
+      this.channel = channel;
+      this.position = position;
+    }
+
+    ByteBuffer buffer() throws IOException {
+      if (buffer.remaining() < 8) {
+        flush();
+      }
+      return buffer;
+    }
+
+    void flush() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        position += channel.write(buffer, position);
+      }
+      buffer.clear();
+    }
+  }
+
+  public static void main(String[] args) {
+    if (args.length < 2) {
+      System.err.println("usage: TraceConverter <in.csv> <out.trace> [column=int16|int32|int64|"
+          + "float|double ...]");
+      System.exit(1);
+    }
+    Map<String, ColumnType> types = new HashMap<>();
+    for (int i = 2; i < args.length; i++) {
+      String[] type = args[i].split("=", 2);
+      if (type.length != 2) {
+        System.err.println("invalid column type: " + args[i]);
+        System.exit(1);
+      }
+      types.put(type[0], ColumnType.valueOf(type[1].toUpperCase(Locale.ROOT)));
+    }
+    try {
+      long rows = convert(Paths.get(args[0]), Paths.get(args[1]), types);
+      System.out.println("wrote " + rows + " rows to " + args[1]);
+    } catch (IOException | BrickdException e) {
+      System.err.println("conversion failed: " + e.getMessage());
+      System.exit(1);
+    }
+  }
+
+  /*
+   * Converts csv into a trace file at out, returns the number of rows.
+   */
+  public static long convert(Path csv, Path out, Map<String, ColumnType> columnTypes)
+      throws IOException, BrickdException {
+    String[] header;
+    long rows = 0;
+    try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+      String line = reader.readLine();
+      if (line == null) {
+        throw new BrickdException("empty csv file: " + csv);
+      }
+      header = line.split(",", -1);
+      while ((line = reader.readLine()) != null) {
+        if (!line.isEmpty()) {
+          rows++;
+        }
+      }
+    }
+    if (header.length < 2) {
+      throw new BrickdException("csv needs a timestamp and at least one value column: " + csv);
+    }
+    if (rows == 0) {
+      throw new BrickdException("csv has no rows: " + csv);
+    }
+    int columns = header.length - 1;
+    ColumnType[] types = new ColumnType[columns];
+    byte[][] names = new byte[columns][];
+    long descriptorsLength = 0;
+    for (int i = 0; i < columns; i++) {
+      String name = header[i + 1].trim();
+      types[i] = columnTypes.getOrDefault(name, ColumnType.DOUBLE);
+      names[i] = name.getBytes(StandardCharsets.UTF_8);
+      descriptorsLength += 8 + 1 + 2 + names[i].length;
+    }
+    int indexEntries = (int) ((rows + TraceFile.INDEX_STRIDE - 1) / TraceFile.INDEX_STRIDE);
+    // the columns start 8 byte aligned
+    long timestampsOffset = (TraceFile.HEADER_LENGTH + descriptorsLength + 7) & ~7L;
+    long[] offsets = new long[columns];
+    long offset = timestampsOffset + rows * 8;
+    for (int i = 0; i < columns; i++) {
+      offsets[i] = offset;
+      offset += (rows * types[i].size() + 7) & ~7L;
+    }
+    long indexOffset = offset;
+
+    try (FileChannel channel = FileChannel.open(out, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+      ByteBuffer head = ByteBuffer.allocate((int) timestampsOffset)
+          .order(ByteOrder.LITTLE_ENDIAN);
+      head.putInt(TraceFile.MAGIC).putShort(TraceFile.VERSION).putShort((short) columns)
+          .putLong(rows).putInt(TraceFile.INDEX_STRIDE).putInt(indexEntries)
+          .putLong(timestampsOffset).putLong(indexOffset);
+      for (int i = 0; i < columns; i++) {
+        head.putLong(offsets[i]).put(types[i].code()).putShort((short) names[i].length)
+            .put(names[i]);
+      }
+      head.clear();
+      channel.write(head, 0);
+
+      ColumnWriter timestamps = new ColumnWriter(channel, timestampsOffset);
+      ColumnWriter index = new ColumnWriter(channel, indexOffset);
+      ColumnWriter[] values = new ColumnWriter[columns];
+      for (int i = 0; i < columns; i++) {
+        values[i] = new ColumnWriter(channel, offsets[i]);
+      }
+      double[] last = new double[columns];
+      long previous = Long.MIN_VALUE;
+      long row = 0;
+      // skip the header
+      String line = reader.readLine();
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty()) {
+          continue;
+        }
+        String[] fields = line.split(",", -1);
+        long timestamp = parseTimestamp(fields[0].trim(), row);
+        if (timestamp < previous) {
+          throw new BrickdException("timestamps are not ascending in row " + (row + 1));
+        }
+        previous = timestamp;
+        timestamps.buffer().putLong(timestamp);
+        if (row % TraceFile.INDEX_STRIDE == 0) {
+          index.buffer().putLong(timestamp);
+        }
+        for (int i = 0; i < columns; i++) {
+          String field = i + 1 < fields.length ? fields[i + 1].trim() : "";
+          if (!field.isEmpty()) {
+            try {
+              last[i] = Double.parseDouble(field);
+            } catch (NumberFormatException e) {
+              throw new BrickdException("invalid value " + field + " in row " + (row + 1));
+            }
+          }
+          types[i].write(values[i].buffer(), last[i]);
+        }
+        row++;
+      }
+      timestamps.flush();
+      index.flush();
+      for (ColumnWriter column : values) {
+        column.flush();
+      }
+    }
+    return rows;
+  }
+
+  private static long parseTimestamp(String field, long row) throws BrickdException {
+    try {
+      return Long.parseLong(field);
+    } catch (NumberFormatException e) {
+      try {
+        return Instant.parse(field).toEpochMilli();
+      } catch (DateTimeParseException e2) {
+        throw new BrickdException("invalid timestamp " + field + " in row " + (row + 1));
+      }
+    }
+  }
+}
@@ -0,0 +1,249 @@
+/*
+ *  Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.m1theo.tfemulator.values;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.m1theo.tfemulator.BrickdException;
+
+/*
+ * A recorded trace of sensor readings, memory mapped read only. The file is columnar, all numbers
+ * are little endian:
+ *
+ * header       int magic "TFTR", short version, short columns, long rows, int index stride,
+ *              int index entries, long timestamps offset, long index offset
+ * columns      per column: long offset, byte type, short name length, name (UTF-8)
+ * timestamps   rows longs, milliseconds, ascending
+ * values       per column rows values of its type
+ * index        the timestamp of every index stride-th row
+ *
+ * seek() searches the index first, which is small enough to stay in a few pages, and then at most
+ * one stride of the timestamps, so starting anywhere in the trace touches only a handful of pages.
+ * Reading uses absolute gets only, the sources of all devices share one mapping per file. The
+ * pages are the OS page cache, the heap only holds the column positions.
+ *
+ * TraceConverter writes these files from CSV.
+ */
+public class TraceFile {
+  final static int MAGIC = 0x52544654;
+  final static short VERSION = 1;
+  final static int HEADER_LENGTH = 40;
+  final static int INDEX_STRIDE = 1024;
+
+  /*
+   * The types of the value columns.
+   */
+  public enum ColumnType {
+    INT16(1, 2), INT32(2, 4), INT64(3, 8), FLOAT(4, 4), DOUBLE(5, 8);
+
+    private final byte code;
+    private final int size;
+
+    ColumnType(int code, int size) {
+      this.code = (byte) code;
+      this.size = size;
+    }
+
+    public int size() {
+      return size;
+    }
+
+    byte code() {
+      return code;
+    }
+
+    static ColumnType of(byte code) throws BrickdException {
+      for (ColumnType type : values()) {
+        if (type.code == code) {
+          return type;
+        }
+      }
+      throw new BrickdException("unknown trace column type " + code);
+    }
+
+    double read(ByteBuffer column, long row) {
+      int index = (int) (row * size);
+      switch (this) {
+        case INT16:
+          return column.getShort(index);
+        case INT32:
+          return column.getInt(index);
+        case INT64:
+          return column.getLong(index);
+        case FLOAT:
+          return column.getFloat(index);
+        default:
+          return column.getDouble(index);
+      }
+    }
+
+    void write(ByteBuffer out, double value) {
+      switch (this) {
+        case INT16:
+          out.putShort((short) Math.round(value));
+          break;
+        case INT32:
+          out.putInt((int) Math.round(value));
+          break;
+        case INT64:
+          out.putLong(Math.round(value));
+          break;
+        case FLOAT:
+          out.putFloat((float) value);
+          break;
+        default:
+          out.putDouble(value);
+      }
+    }
+  }
+
+  private final static ConcurrentMap<Path, TraceFile> files = new ConcurrentHashMap<>();
+
+  private final Path path;
+  private final long rows;
+  private final int indexStride;
+  private final int indexEntries;
+  private final ByteBuffer timestamps;
+  private final ByteBuffer index;
+  private final String[] names;
+  private final ColumnType[] types;
+  private final ByteBuffer[] columns;
+
+  /*
+   * Returns the mapping of the trace file at path, the file is mapped once.
+   */
+  public static TraceFile open(String path) throws BrickdException {
+    Path key = Paths.get(path).toAbsolutePath().normalize();
+    TraceFile file = files.get(key);
+    if (file == null) {
+      TraceFile newFile = new TraceFile(key);
+      file = files.putIfAbsent(key, newFile);
+      if (file == null) {
+        file = newFile;
+      }
+    }
+    return file;
+  }
+
+  private TraceFile(Path path) throws BrickdException {
+    this.path = path;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer header = map(channel, 0, HEADER_LENGTH);
+      if (header.getInt(0) != MAGIC || header.getShort(4) != VERSION) {
+        throw new BrickdException("not a trace file: " + path);
+      }
+      int columnCount = header.getShort(6);
+      rows = header.getLong(8);
+      indexStride = header.getInt(16);
+      indexEntries = header.getInt(20);
+      long timestampsOffset = header.getLong(24);
+      long indexOffset = header.getLong(32);
+      if (rows <= 0) {
+        throw new BrickdException("empty trace file: " + path);
+      }
+      timestamps = map(channel, timestampsOffset, rows * 8);
+      index = map(channel, indexOffset, indexEntries * 8L);
+      ByteBuffer descriptors = map(channel, HEADER_LENGTH, timestampsOffset - HEADER_LENGTH);
+      names = new String[columnCount];
+      types = new ColumnType[columnCount];
+      columns = new ByteBuffer[columnCount];
+      for (int i = 0; i < columnCount; i++) {
+        long offset = descriptors.getLong();
+        types[i] = ColumnType.of(descriptors.get());
+        byte[] name = new byte[descriptors.getShort()];
+        descriptors.get(name);
+        names[i] = new String(name, StandardCharsets.UTF_8);
+        columns[i] = map(channel, offset, rows * types[i].size());
+      }
+    } catch (IOException e) {
+      throw new BrickdException("can't map trace file " + path + ": " + e.getMessage());
+    }
+  }
+
+  private ByteBuffer map(FileChannel channel, long offset, long length)
+      throws IOException, BrickdException {
+    if (length > Integer.MAX_VALUE) {
+      throw new BrickdException("trace column too large, split the trace: " + path);
+    }
+    if (offset + length > channel.size()) {
+      throw new BrickdException("truncated trace file: " + path);
+    }
+    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    return buffer;
+  }
+
+  public long rows() {
+    return rows;
+  }
+
+  public int column(String name) throws BrickdException {
+    for (int i = 0; i < names.length; i++) {
+      if (names[i].equals(name)) {
+        return i;
+      }
+    }
+    throw new BrickdException("trace " + path + " has no column " + name);
+  }
+
+  public long timestamp(long row) {
+    return timestamps.getLong((int) (row * 8));
+  }
+
+  public double value(int column, long row) {
+    return types[column].read(columns[column], row);
+  }
+
+  /*
+   * Returns the last row at or before timestamp, the first row if the trace starts later.
+   */
+  public long seek(long timestamp) {
+    // last index entry at or before timestamp
+    int low = 0;
+    int high = indexEntries - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (index.getLong(mid * 8) <= timestamp) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    // then within its stride
+    long first = (long) low * indexStride;
+    long last = Math.min(first + indexStride, rows) - 1;
+    while (first < last) {
+      long mid = (first + last + 1) >>> 1;
+      if (timestamp(mid) <= timestamp) {
+        first = mid;
+      } else {
+        last = mid - 1;
+      }
+    }
+    return first;
+  }
+}
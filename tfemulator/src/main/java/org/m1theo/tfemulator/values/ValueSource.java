@@ -0,0 +1,372 @@
+/*
+ * Copyright (c) 2015 Thomas Weiss <theo@m1theo.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package org.m1theo.tfemulator.values;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.SplittableRandom;
+import java.util.function.LongSupplier;
+
+import org.m1theo.tfemulator.BrickdException;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/*
+ * Produces the values of one sensor value of a device, e.g. the temperature of a temperature
+ * bricklet. The devices cast the value to the type of the packet field and write it directly, e.g.
+ * writer.writeInt16((short) temperatureValues[0].next(), 1).
+ *
+ * A source by itself is used from one context only. The getter and the callbacks of a value share
+ * its sources, DeviceValues wraps them in a PerTick which is safe to use from the contexts of the
+ * device and of the CallbackScheduler. The parameters are read from the JSON config once, next()
+ * only does arithmetic.
+ */
+public abstract class ValueSource {
+  public final static double DEFAULT_VALUE = 100;
+
+  public abstract double next();
+
+  /*
+   * Creates the source described by conf, e.g. {"generator": "sine", "min": 1800, "max": 2600,
+   * "period": 60000}. Times are milliseconds of clock.
+   */
+  public static ValueSource create(JsonObject conf, SplittableRandom random, LongSupplier clock)
+      throws BrickdException {
+    String generator = conf.getString("generator", "constant");
+    switch (generator) {
+      case "constant":
+        return new Constant(conf.getDouble("value", DEFAULT_VALUE));
+      case "uniform":
+        return new Uniform(random, conf.getDouble("min", 0.0), conf.getDouble("max", 1.0));
+      case "gaussian":
+        return new Gaussian(random, conf.getDouble("mean", DEFAULT_VALUE),
+            conf.getDouble("stddev", 1.0));
+      case "walk": {
+        double min = conf.getDouble("min", Double.NEGATIVE_INFINITY);
+        double max = conf.getDouble("max", Double.POSITIVE_INFINITY);
+        return new RandomWalk(random, conf.getDouble("start", DEFAULT_VALUE),
+            conf.getDouble("step", 1.0), min, max);
+      }
+      case "sine":
+        return new Sine(clock, conf.getDouble("min", 0.0), conf.getDouble("max", 1.0),
+            period(conf), conf.getLong("phase", 0L));
+      case "sawtooth":
+        return new Sawtooth(clock, conf.getDouble("min", 0.0), conf.getDouble("max", 1.0),
+            period(conf), conf.getLong("phase", 0L));
+      case "step": {
+        JsonArray values = conf.getJsonArray("values");
+        if (values == null || values.size() == 0) {
+          throw new BrickdException("step generator needs \"values\": " + conf.encode());
+        }
+        double[] steps = new double[values.size()];
+        for (int i = 0; i < steps.length; i++) {
+          steps[i] = ((Number) values.getValue(i)).doubleValue();
+        }
+        return new Step(clock, steps, period(conf));
+      }
+      case "trace": {
+        String file = conf.getString("file");
+        String column = conf.getString("column");
+        if (file == null || column == null) {
+          throw new BrickdException("trace generator needs \"file\" and \"column\": "
+              + conf.encode());
+        }
+        TraceFile trace = TraceFile.open(file);
+        return new Trace(clock, trace, trace.column(column), traceStart(conf, trace),
+            conf.getDouble("speed", 1.0), conf.getBoolean("loop", true));
+      }
+      default:
+        throw new BrickdException("unknown value generator: " + generator);
+    }
+  }
+
+  private static long period(JsonObject conf) throws BrickdException {
+    long period = conf.getLong("period", 60000L);
+    if (period <= 0) {
+      throw new BrickdException("period must be positive: " + conf.encode());
+    }
+    return period;
+  }
+
+  /*
+   * The trace timestamp to start the playback at, milliseconds or an ISO-8601 instant.
+   */
+  private static long traceStart(JsonObject conf, TraceFile trace) throws BrickdException {
+    Object start = conf.getValue("start");
+    long timestamp;
+    if (start == null) {
+      timestamp = trace.timestamp(0);
+    } else if (start instanceof Number) {
+      timestamp = ((Number) start).longValue();
+    } else {
+      try {
+        timestamp = Instant.parse(start.toString()).toEpochMilli();
+      } catch (DateTimeParseException e) {
+        throw new BrickdException("invalid trace start: " + start);
+      }
+    }
+    if (timestamp > trace.timestamp(trace.rows() - 1)) {
+      throw new BrickdException("trace start is after the end of the trace: " + start);
+    }
+    return timestamp;
+  }
+
+  /*
+   * Samples source once per clock time, all calls at the same time get the same value. This keeps
+   * the getter, the periodic callback and the threshold callback of a value in step, e.g. a walk
+   * only moves once per millisecond and a trace starts its playback once.
+   */
+  static class PerTick extends ValueSource {
+    private final ValueSource source;
+    private final LongSupplier clock;
+    private boolean sampled;
+    private long time;
+    private double value;
+
+    PerTick(ValueSource source, LongSupplier clock) {
+      this.source = source;
+      this.clock = clock;
+    }
+
+    @Override
+    public synchronized double next() {
+      long now = clock.getAsLong();
+      if (!sampled || now != time) {
+        value = source.next();
+        time = now;
+        sampled = true;
+      }
+      return value;
+    }
+  }
+
+  static class Constant extends ValueSource {
+    private final double value;
+
+    Constant(double value) {
+      this.value = value;
+    }
+
+    @Override
+    public double next() {
+      return value;
+    }
+  }
+
+  static class Uniform extends ValueSource {
+    private final SplittableRandom random;
+    private final double min;
+    private final double range;
+
+    Uniform(SplittableRandom random, double min, double max) {
+      this.random = random;
+      this.min = min;
+      this.range = max - min;
+    }
+
+    @Override
+    public double next() {
+      return min + random.nextDouble() * range;
+    }
+  }
+
+  static class Gaussian extends ValueSource {
+    private final SplittableRandom random;
+    private final double mean;
+    private final double stddev;
+    // Box-Muller gives two values per round
+    private double spare;
+    private boolean hasSpare;
+
+    Gaussian(SplittableRandom random, double mean, double stddev) {
+      this.random = random;
+      this.mean = mean;
+      this.stddev = stddev;
+    }
+
+    @Override
+    public double next() {
+      if (hasSpare) {
+        hasSpare = false;
+        return mean + stddev * spare;
+      }
+      double u = 1.0 - random.nextDouble();
+      double v = random.nextDouble();
+      double r = Math.sqrt(-2.0 * Math.log(u));
+      spare = r * Math.sin(2 * Math.PI * v);
+      hasSpare = true;
+      return mean + stddev * r * Math.cos(2 * Math.PI * v);
+    }
+  }
+
+  /*
+   * Moves by at most step per value, bounces back at min and max.
+   */
+  static class RandomWalk extends ValueSource {
+    private final SplittableRandom random;
+    private final double step;
+    private final double min;
+    private final double max;
+    private double value;
+
+    RandomWalk(SplittableRandom random, double start, double step, double min, double max) {
+      this.random = random;
+      this.step = step;
+      this.min = min;
+      this.max = max;
+      this.value = start;
+    }
+
+    @Override
+    public double next() {
+      value += (random.nextDouble() * 2 - 1) * step;
+      if (value > max) {
+        value = max - (value - max);
+      } else if (value < min) {
+        value = min + (min - value);
+      }
+      return value;
+    }
+  }
+
+  static class Sine extends ValueSource {
+    private final LongSupplier clock;
+    private final double middle;
+    private final double amplitude;
+    private final double omega;
+    private final long phase;
+
+    Sine(LongSupplier clock, double min, double max, long period, long phase) {
+      this.clock = clock;
+      this.middle = (min + max) / 2;
+      this.amplitude = (max - min) / 2;
+      this.omega = 2 * Math.PI / period;
+      this.phase = phase;
+    }
+
+    @Override
+    public double next() {
+      return middle + amplitude * Math.sin(omega * (clock.getAsLong() + phase));
+    }
+  }
+
+  static class Sawtooth extends ValueSource {
+    private final LongSupplier clock;
+    private final double min;
+    private final double range;
+    private final long period;
+    private final long phase;
+
+    Sawtooth(LongSupplier clock, double min, double max, long period, long phase) {
+      this.clock = clock;
+      this.min = min;
+      this.range = max - min;
+      this.period = period;
+      this.phase = phase;
+    }
+
+    @Override
+    public double next() {
+      long t = Math.floorMod(clock.getAsLong() + phase, period);
+      return min + range * t / period;
+    }
+  }
+
+  /*
+   * Steps through values, one per period.
+   */
+  static class Step extends ValueSource {
+    private final LongSupplier clock;
+    private final double[] values;
+    private final long period;
+
+    Step(LongSupplier clock, double[] values, long period) {
+      this.clock = clock;
+      this.values = values;
+      this.period = period;
+    }
+
+    @Override
+    public double next() {
+      return values[(int) Math.floorMod(clock.getAsLong() / period, (long) values.length)];
+    }
+  }
+
+  /*
+   * Plays back a column of a TraceFile from start on, speed times as fast as the clock. At the end
+   * it starts over, or keeps the last value if loop is off. Only the current row is kept, the
+   * values are read from the mapping.
+   */
+  static class Trace extends ValueSource {
+    // behind by more rows than this (high speed, a long callback period) we seek instead of step
+    private final static int MAX_STEPS = 16;
+    private final LongSupplier clock;
+    private final TraceFile trace;
+    private final int column;
+    private final long start;
+    private final long span;
+    private final double speed;
+    private final boolean loop;
+    private boolean started;
+    private long origin;
+    private long row;
+
+    Trace(LongSupplier clock, TraceFile trace, int column, long start, double speed,
+        boolean loop) {
+      this.clock = clock;
+      this.trace = trace;
+      this.column = column;
+      this.start = start;
+      this.span = trace.timestamp(trace.rows() - 1) - start + 1;
+      this.speed = speed;
+      this.loop = loop;
+      this.row = trace.seek(start);
+    }
+
+    @Override
+    public double next() {
+      long now = clock.getAsLong();
+      if (!started) {
+        // the playback starts with the first value that is asked for
+        origin = now;
+        started = true;
+      }
+      long elapsed = (long) ((now - origin) * speed);
+      if (elapsed >= span) {
+        if (!loop) {
+          return trace.value(column, trace.rows() - 1);
+        }
+        elapsed %= span;
+      }
+      long time = start + elapsed;
+      if (time < trace.timestamp(row)) {
+        // started over
+        row = trace.seek(time);
+      } else {
+        long rows = trace.rows();
+        int steps = 0;
+        while (row + 1 < rows && trace.timestamp(row + 1) <= time) {
+          if (++steps > MAX_STEPS) {
+            row = trace.seek(time);
+            break;
+          }
+          row++;
+        }
+      }
+      return trace.value(column, row);
+    }
+  }
+}
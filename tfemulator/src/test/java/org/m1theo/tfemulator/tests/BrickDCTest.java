@@ -89,7 +89,7 @@ public class BrickDCTest {
   public void testgetCurrentVelocity(TestContext context) {
     try {
       short value = device.getCurrentVelocity();
-      context.assertEquals(Utils.getRandomShort(), value);
+      context.assertEquals(Utils.getDefaultShort(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -100,7 +100,7 @@ public class BrickDCTest {
   public void testgetStackInputVoltage(TestContext context) {
     try {
       int value = device.getStackInputVoltage();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -111,7 +111,7 @@ public class BrickDCTest {
   public void testgetExternalInputVoltage(TestContext context) {
     try {
       int value = device.getExternalInputVoltage();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -122,7 +122,7 @@ public class BrickDCTest {
   public void testgetCurrentConsumption(TestContext context) {
     try {
       int value = device.getCurrentConsumption();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -133,7 +133,7 @@ public class BrickDCTest {
   public void testgetChipTemperature(TestContext context) {
     try {
       short value = device.getChipTemperature();
-      context.assertEquals(Utils.getRandomShort(), value);
+      context.assertEquals(Utils.getDefaultShort(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -89,7 +89,7 @@ public class BrickIMUTest {
   public void testgetIMUTemperature(TestContext context) {
     try {
       short value = device.getIMUTemperature();
-      context.assertEquals(Utils.getRandomShort(), value);
+      context.assertEquals(Utils.getDefaultShort(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -100,10 +100,10 @@ public class BrickIMUTest {
   public void testgetQuaternion(TestContext context) {
     try {
       BrickIMU.Quaternion value = device.getQuaternion();
-      context.assertEquals(Utils.getRandomFloat(), value.x);
-      context.assertEquals(Utils.getRandomFloat(), value.y);
-      context.assertEquals(Utils.getRandomFloat(), value.z);
-      context.assertEquals(Utils.getRandomFloat(), value.w);
+      context.assertEquals(Utils.getDefaultFloat(), value.x);
+      context.assertEquals(Utils.getDefaultFloat(), value.y);
+      context.assertEquals(Utils.getDefaultFloat(), value.z);
+      context.assertEquals(Utils.getDefaultFloat(), value.w);
       
     } catch (Exception e) {
       context.fail(e);
@@ -114,9 +114,9 @@ public class BrickIMUTest {
   public void testgetOrientation(TestContext context) {
     try {
       BrickIMU.Orientation value = device.getOrientation();
-      context.assertEquals(Utils.getRandomShort(), value.roll);
-      context.assertEquals(Utils.getRandomShort(), value.pitch);
-      context.assertEquals(Utils.getRandomShort(), value.yaw);
+      context.assertEquals(Utils.getDefaultShort(), value.roll);
+      context.assertEquals(Utils.getDefaultShort(), value.pitch);
+      context.assertEquals(Utils.getDefaultShort(), value.yaw);
       
     } catch (Exception e) {
       context.fail(e);
@@ -127,16 +127,16 @@ public class BrickIMUTest {
   public void testgetAllData(TestContext context) {
     try {
       BrickIMU.AllData value = device.getAllData();
-      context.assertEquals(Utils.getRandomShort(), value.accX);
-      context.assertEquals(Utils.getRandomShort(), value.accY);
-      context.assertEquals(Utils.getRandomShort(), value.accZ);
-      context.assertEquals(Utils.getRandomShort(), value.magX);
-      context.assertEquals(Utils.getRandomShort(), value.magY);
-      context.assertEquals(Utils.getRandomShort(), value.magZ);
-      context.assertEquals(Utils.getRandomShort(), value.angX);
-      context.assertEquals(Utils.getRandomShort(), value.angY);
-      context.assertEquals(Utils.getRandomShort(), value.angZ);
-      context.assertEquals(Utils.getRandomShort(), value.temperature);
+      context.assertEquals(Utils.getDefaultShort(), value.accX);
+      context.assertEquals(Utils.getDefaultShort(), value.accY);
+      context.assertEquals(Utils.getDefaultShort(), value.accZ);
+      context.assertEquals(Utils.getDefaultShort(), value.magX);
+      context.assertEquals(Utils.getDefaultShort(), value.magY);
+      context.assertEquals(Utils.getDefaultShort(), value.magZ);
+      context.assertEquals(Utils.getDefaultShort(), value.angX);
+      context.assertEquals(Utils.getDefaultShort(), value.angY);
+      context.assertEquals(Utils.getDefaultShort(), value.angZ);
+      context.assertEquals(Utils.getDefaultShort(), value.temperature);
       
     } catch (Exception e) {
       context.fail(e);
@@ -147,9 +147,9 @@ public class BrickIMUTest {
   public void testgetAngularVelocity(TestContext context) {
     try {
       BrickIMU.AngularVelocity value = device.getAngularVelocity();
-      context.assertEquals(Utils.getRandomShort(), value.x);
-      context.assertEquals(Utils.getRandomShort(), value.y);
-      context.assertEquals(Utils.getRandomShort(), value.z);
+      context.assertEquals(Utils.getDefaultShort(), value.x);
+      context.assertEquals(Utils.getDefaultShort(), value.y);
+      context.assertEquals(Utils.getDefaultShort(), value.z);
       
     } catch (Exception e) {
       context.fail(e);
@@ -160,7 +160,7 @@ public class BrickIMUTest {
   public void testgetChipTemperature(TestContext context) {
     try {
       short value = device.getChipTemperature();
-      context.assertEquals(Utils.getRandomShort(), value);
+      context.assertEquals(Utils.getDefaultShort(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -171,9 +171,9 @@ public class BrickIMUTest {
   public void testgetMagneticField(TestContext context) {
     try {
       BrickIMU.MagneticField value = device.getMagneticField();
-      context.assertEquals(Utils.getRandomShort(), value.x);
-      context.assertEquals(Utils.getRandomShort(), value.y);
-      context.assertEquals(Utils.getRandomShort(), value.z);
+      context.assertEquals(Utils.getDefaultShort(), value.x);
+      context.assertEquals(Utils.getDefaultShort(), value.y);
+      context.assertEquals(Utils.getDefaultShort(), value.z);
       
     } catch (Exception e) {
       context.fail(e);
@@ -184,9 +184,9 @@ public class BrickIMUTest {
   public void testgetAcceleration(TestContext context) {
     try {
       BrickIMU.Acceleration value = device.getAcceleration();
-      context.assertEquals(Utils.getRandomShort(), value.x);
-      context.assertEquals(Utils.getRandomShort(), value.y);
-      context.assertEquals(Utils.getRandomShort(), value.z);
+      context.assertEquals(Utils.getDefaultShort(), value.x);
+      context.assertEquals(Utils.getDefaultShort(), value.y);
+      context.assertEquals(Utils.getDefaultShort(), value.z);
       
     } catch (Exception e) {
       context.fail(e);
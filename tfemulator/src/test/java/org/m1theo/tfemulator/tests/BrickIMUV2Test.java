@@ -89,9 +89,9 @@ public class BrickIMUV2Test {
   public void testgetLinearAcceleration(TestContext context) {
     try {
       BrickIMUV2.LinearAcceleration value = device.getLinearAcceleration();
-      context.assertEquals(Utils.getRandomShort(), value.x);
-      context.assertEquals(Utils.getRandomShort(), value.y);
-      context.assertEquals(Utils.getRandomShort(), value.z);
+      context.assertEquals(Utils.getDefaultShort(), value.x);
+      context.assertEquals(Utils.getDefaultShort(), value.y);
+      context.assertEquals(Utils.getDefaultShort(), value.z);
       
     } catch (Exception e) {
       context.fail(e);
@@ -102,9 +102,9 @@ public class BrickIMUV2Test {
   public void testgetAngularVelocity(TestContext context) {
     try {
       BrickIMUV2.AngularVelocity value = device.getAngularVelocity();
-      context.assertEquals(Utils.getRandomShort(), value.x);
-      context.assertEquals(Utils.getRandomShort(), value.y);
-      context.assertEquals(Utils.getRandomShort(), value.z);
+      context.assertEquals(Utils.getDefaultShort(), value.x);
+      context.assertEquals(Utils.getDefaultShort(), value.y);
+      context.assertEquals(Utils.getDefaultShort(), value.z);
       
     } catch (Exception e) {
       context.fail(e);
@@ -115,9 +115,9 @@ public class BrickIMUV2Test {
   public void testgetOrientation(TestContext context) {
     try {
       BrickIMUV2.Orientation value = device.getOrientation();
-      context.assertEquals(Utils.getRandomShort(), value.heading);
-      context.assertEquals(Utils.getRandomShort(), value.roll);
-      context.assertEquals(Utils.getRandomShort(), value.pitch);
+      context.assertEquals(Utils.getDefaultShort(), value.heading);
+      context.assertEquals(Utils.getDefaultShort(), value.roll);
+      context.assertEquals(Utils.getDefaultShort(), value.pitch);
       
     } catch (Exception e) {
       context.fail(e);
@@ -128,7 +128,7 @@ public class BrickIMUV2Test {
   public void testgetTemperature(TestContext context) {
     try {
       byte value = device.getTemperature();
-      context.assertEquals(Utils.getRandomByte(), value);
+      context.assertEquals(Utils.getDefaultByte(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -140,28 +140,28 @@ public class BrickIMUV2Test {
     try {
       BrickIMUV2.AllData value = device.getAllData();
             for (int i = 0; i < value.acceleration.length; i++) {
-        context.assertEquals(Utils.getRandomShort(), value.acceleration[i]);
+        context.assertEquals(Utils.getDefaultShort(), value.acceleration[i]);
       }
       for (int i = 0; i < value.magneticField.length; i++) {
-        context.assertEquals(Utils.getRandomShort(), value.magneticField[i]);
+        context.assertEquals(Utils.getDefaultShort(), value.magneticField[i]);
       }
       for (int i = 0; i < value.angularVelocity.length; i++) {
-        context.assertEquals(Utils.getRandomShort(), value.angularVelocity[i]);
+        context.assertEquals(Utils.getDefaultShort(), value.angularVelocity[i]);
       }
       for (int i = 0; i < value.eulerAngle.length; i++) {
-        context.assertEquals(Utils.getRandomShort(), value.eulerAngle[i]);
+        context.assertEquals(Utils.getDefaultShort(), value.eulerAngle[i]);
       }
       for (int i = 0; i < value.quaternion.length; i++) {
-        context.assertEquals(Utils.getRandomShort(), value.quaternion[i]);
+        context.assertEquals(Utils.getDefaultShort(), value.quaternion[i]);
       }
       for (int i = 0; i < value.linearAcceleration.length; i++) {
-        context.assertEquals(Utils.getRandomShort(), value.linearAcceleration[i]);
+        context.assertEquals(Utils.getDefaultShort(), value.linearAcceleration[i]);
       }
       for (int i = 0; i < value.gravityVector.length; i++) {
-        context.assertEquals(Utils.getRandomShort(), value.gravityVector[i]);
+        context.assertEquals(Utils.getDefaultShort(), value.gravityVector[i]);
       }
-context.assertEquals(Utils.getRandomByte(), value.temperature);
-      context.assertEquals(Utils.getRandomShort(), value.calibrationStatus);
+context.assertEquals(Utils.getDefaultByte(), value.temperature);
+      context.assertEquals(Utils.getDefaultShort(), value.calibrationStatus);
       
     } catch (Exception e) {
       context.fail(e);
@@ -172,10 +172,10 @@ context.assertEquals(Utils.getRandomByte(), value.temperature);
   public void testgetQuaternion(TestContext context) {
     try {
       BrickIMUV2.Quaternion value = device.getQuaternion();
-      context.assertEquals(Utils.getRandomShort(), value.w);
-      context.assertEquals(Utils.getRandomShort(), value.x);
-      context.assertEquals(Utils.getRandomShort(), value.y);
-      context.assertEquals(Utils.getRandomShort(), value.z);
+      context.assertEquals(Utils.getDefaultShort(), value.w);
+      context.assertEquals(Utils.getDefaultShort(), value.x);
+      context.assertEquals(Utils.getDefaultShort(), value.y);
+      context.assertEquals(Utils.getDefaultShort(), value.z);
       
     } catch (Exception e) {
       context.fail(e);
@@ -186,7 +186,7 @@ context.assertEquals(Utils.getRandomByte(), value.temperature);
   public void testgetChipTemperature(TestContext context) {
     try {
       short value = device.getChipTemperature();
-      context.assertEquals(Utils.getRandomShort(), value);
+      context.assertEquals(Utils.getDefaultShort(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -197,9 +197,9 @@ context.assertEquals(Utils.getRandomByte(), value.temperature);
   public void testgetMagneticField(TestContext context) {
     try {
       BrickIMUV2.MagneticField value = device.getMagneticField();
-      context.assertEquals(Utils.getRandomShort(), value.x);
-      context.assertEquals(Utils.getRandomShort(), value.y);
-      context.assertEquals(Utils.getRandomShort(), value.z);
+      context.assertEquals(Utils.getDefaultShort(), value.x);
+      context.assertEquals(Utils.getDefaultShort(), value.y);
+      context.assertEquals(Utils.getDefaultShort(), value.z);
       
     } catch (Exception e) {
       context.fail(e);
@@ -210,9 +210,9 @@ context.assertEquals(Utils.getRandomByte(), value.temperature);
   public void testgetGravityVector(TestContext context) {
     try {
       BrickIMUV2.GravityVector value = device.getGravityVector();
-      context.assertEquals(Utils.getRandomShort(), value.x);
-      context.assertEquals(Utils.getRandomShort(), value.y);
-      context.assertEquals(Utils.getRandomShort(), value.z);
+      context.assertEquals(Utils.getDefaultShort(), value.x);
+      context.assertEquals(Utils.getDefaultShort(), value.y);
+      context.assertEquals(Utils.getDefaultShort(), value.z);
       
     } catch (Exception e) {
       context.fail(e);
@@ -223,9 +223,9 @@ context.assertEquals(Utils.getRandomByte(), value.temperature);
   public void testgetAcceleration(TestContext context) {
     try {
       BrickIMUV2.Acceleration value = device.getAcceleration();
-      context.assertEquals(Utils.getRandomShort(), value.x);
-      context.assertEquals(Utils.getRandomShort(), value.y);
-      context.assertEquals(Utils.getRandomShort(), value.z);
+      context.assertEquals(Utils.getDefaultShort(), value.x);
+      context.assertEquals(Utils.getDefaultShort(), value.y);
+      context.assertEquals(Utils.getDefaultShort(), value.z);
       
     } catch (Exception e) {
       context.fail(e);
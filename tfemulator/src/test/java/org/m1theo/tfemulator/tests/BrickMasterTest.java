@@ -89,7 +89,7 @@ public class BrickMasterTest {
   public void testgetUSBVoltage(TestContext context) {
     try {
       int value = device.getUSBVoltage();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -101,25 +101,25 @@ public class BrickMasterTest {
     try {
       BrickMaster.WifiStatus value = device.getWifiStatus();
             for (int i = 0; i < value.macAddress.length; i++) {
-        context.assertEquals(Utils.getRandomShort(), value.macAddress[i]);
+        context.assertEquals(Utils.getDefaultShort(), value.macAddress[i]);
       }
       for (int i = 0; i < value.bssid.length; i++) {
-        context.assertEquals(Utils.getRandomShort(), value.bssid[i]);
+        context.assertEquals(Utils.getDefaultShort(), value.bssid[i]);
       }
-context.assertEquals(Utils.getRandomShort(), value.channel);
-      context.assertEquals(Utils.getRandomShort(), value.rssi);
+context.assertEquals(Utils.getDefaultShort(), value.channel);
+      context.assertEquals(Utils.getDefaultShort(), value.rssi);
             for (int i = 0; i < value.ip.length; i++) {
-        context.assertEquals(Utils.getRandomShort(), value.ip[i]);
+        context.assertEquals(Utils.getDefaultShort(), value.ip[i]);
       }
       for (int i = 0; i < value.subnetMask.length; i++) {
-        context.assertEquals(Utils.getRandomShort(), value.subnetMask[i]);
+        context.assertEquals(Utils.getDefaultShort(), value.subnetMask[i]);
       }
       for (int i = 0; i < value.gateway.length; i++) {
-        context.assertEquals(Utils.getRandomShort(), value.gateway[i]);
+        context.assertEquals(Utils.getDefaultShort(), value.gateway[i]);
       }
-context.assertEquals(Utils.getRandomLong(), value.rxCount);
-      context.assertEquals(Utils.getRandomLong(), value.txCount);
-      context.assertEquals(Utils.getRandomShort(), value.state);
+context.assertEquals(Utils.getDefaultLong(), value.rxCount);
+      context.assertEquals(Utils.getDefaultLong(), value.txCount);
+      context.assertEquals(Utils.getDefaultShort(), value.state);
       
     } catch (Exception e) {
       context.fail(e);
@@ -130,10 +130,10 @@ context.assertEquals(Utils.getRandomLong(), value.rxCount);
   public void testgetChibiErrorLog(TestContext context) {
     try {
       BrickMaster.ChibiErrorLog value = device.getChibiErrorLog();
-      context.assertEquals(Utils.getRandomInt(), value.underrun);
-      context.assertEquals(Utils.getRandomInt(), value.crcError);
-      context.assertEquals(Utils.getRandomInt(), value.noAck);
-      context.assertEquals(Utils.getRandomInt(), value.overflow);
+      context.assertEquals(Utils.getDefaultInt(), value.underrun);
+      context.assertEquals(Utils.getDefaultInt(), value.crcError);
+      context.assertEquals(Utils.getDefaultInt(), value.noAck);
+      context.assertEquals(Utils.getDefaultInt(), value.overflow);
       
     } catch (Exception e) {
       context.fail(e);
@@ -144,9 +144,9 @@ context.assertEquals(Utils.getRandomLong(), value.rxCount);
   public void testgetWifiBufferInfo(TestContext context) {
     try {
       BrickMaster.WifiBufferInfo value = device.getWifiBufferInfo();
-      context.assertEquals(Utils.getRandomLong(), value.overflow);
-      context.assertEquals(Utils.getRandomInt(), value.lowWatermark);
-      context.assertEquals(Utils.getRandomInt(), value.used);
+      context.assertEquals(Utils.getDefaultLong(), value.overflow);
+      context.assertEquals(Utils.getDefaultInt(), value.lowWatermark);
+      context.assertEquals(Utils.getDefaultInt(), value.used);
       
     } catch (Exception e) {
       context.fail(e);
@@ -157,7 +157,7 @@ context.assertEquals(Utils.getRandomLong(), value.rxCount);
   public void testgetStackVoltage(TestContext context) {
     try {
       int value = device.getStackVoltage();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -168,7 +168,7 @@ context.assertEquals(Utils.getRandomLong(), value.rxCount);
   public void testgetChibiSignalStrength(TestContext context) {
     try {
       short value = device.getChibiSignalStrength();
-      context.assertEquals(Utils.getRandomShort(), value);
+      context.assertEquals(Utils.getDefaultShort(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -179,7 +179,7 @@ context.assertEquals(Utils.getRandomLong(), value.rxCount);
   public void testgetRS485ErrorLog(TestContext context) {
     try {
       int value = device.getRS485ErrorLog();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -191,20 +191,20 @@ context.assertEquals(Utils.getRandomLong(), value.rxCount);
     try {
       BrickMaster.EthernetStatus value = device.getEthernetStatus();
             for (int i = 0; i < value.macAddress.length; i++) {
-        context.assertEquals(Utils.getRandomShort(), value.macAddress[i]);
+        context.assertEquals(Utils.getDefaultShort(), value.macAddress[i]);
       }
       for (int i = 0; i < value.ip.length; i++) {
-        context.assertEquals(Utils.getRandomShort(), value.ip[i]);
+        context.assertEquals(Utils.getDefaultShort(), value.ip[i]);
       }
       for (int i = 0; i < value.subnetMask.length; i++) {
-        context.assertEquals(Utils.getRandomShort(), value.subnetMask[i]);
+        context.assertEquals(Utils.getDefaultShort(), value.subnetMask[i]);
       }
       for (int i = 0; i < value.gateway.length; i++) {
-        context.assertEquals(Utils.getRandomShort(), value.gateway[i]);
+        context.assertEquals(Utils.getDefaultShort(), value.gateway[i]);
       }
-context.assertEquals(Utils.getRandomLong(), value.rxCount);
-      context.assertEquals(Utils.getRandomLong(), value.txCount);
-      context.assertEquals(Utils.getRandomString(), value.hostname);
+context.assertEquals(Utils.getDefaultLong(), value.rxCount);
+      context.assertEquals(Utils.getDefaultLong(), value.txCount);
+      context.assertEquals(Utils.getDefaultString(), value.hostname);
       
     } catch (Exception e) {
       context.fail(e);
@@ -215,7 +215,7 @@ context.assertEquals(Utils.getRandomLong(), value.rxCount);
   public void testgetChipTemperature(TestContext context) {
     try {
       short value = device.getChipTemperature();
-      context.assertEquals(Utils.getRandomShort(), value);
+      context.assertEquals(Utils.getDefaultShort(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -226,7 +226,7 @@ context.assertEquals(Utils.getRandomLong(), value.rxCount);
   public void testgetStackCurrent(TestContext context) {
     try {
       int value = device.getStackCurrent();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -89,7 +89,7 @@ public class BrickServoTest {
   public void testgetCurrentPosition(TestContext context) {
     try {
       short value = device.getCurrentPosition((short) 1);
-      context.assertEquals(Utils.getRandomShort(), value);
+      context.assertEquals(Utils.getDefaultShort(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -100,7 +100,7 @@ public class BrickServoTest {
   public void testgetServoCurrent(TestContext context) {
     try {
       int value = device.getServoCurrent((short) 1);
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -111,7 +111,7 @@ public class BrickServoTest {
   public void testgetChipTemperature(TestContext context) {
     try {
       short value = device.getChipTemperature();
-      context.assertEquals(Utils.getRandomShort(), value);
+      context.assertEquals(Utils.getDefaultShort(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -122,7 +122,7 @@ public class BrickServoTest {
   public void testgetOverallCurrent(TestContext context) {
     try {
       int value = device.getOverallCurrent();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -133,7 +133,7 @@ public class BrickServoTest {
   public void testgetCurrentVelocity(TestContext context) {
     try {
       int value = device.getCurrentVelocity((short) 1);
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -144,7 +144,7 @@ public class BrickServoTest {
   public void testgetExternalInputVoltage(TestContext context) {
     try {
       int value = device.getExternalInputVoltage();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -155,7 +155,7 @@ public class BrickServoTest {
   public void testgetStackInputVoltage(TestContext context) {
     try {
       int value = device.getStackInputVoltage();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -89,7 +89,7 @@ public class BrickStepperTest {
   public void testgetRemainingSteps(TestContext context) {
     try {
       int value = device.getRemainingSteps();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -100,7 +100,7 @@ public class BrickStepperTest {
   public void testgetCurrentConsumption(TestContext context) {
     try {
       int value = device.getCurrentConsumption();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -111,12 +111,12 @@ public class BrickStepperTest {
   public void testgetAllData(TestContext context) {
     try {
       BrickStepper.AllData value = device.getAllData();
-      context.assertEquals(Utils.getRandomInt(), value.currentVelocity);
-      context.assertEquals(Utils.getRandomInt(), value.currentPosition);
-      context.assertEquals(Utils.getRandomInt(), value.remainingSteps);
-      context.assertEquals(Utils.getRandomInt(), value.stackVoltage);
-      context.assertEquals(Utils.getRandomInt(), value.externalVoltage);
-      context.assertEquals(Utils.getRandomInt(), value.currentConsumption);
+      context.assertEquals(Utils.getDefaultInt(), value.currentVelocity);
+      context.assertEquals(Utils.getDefaultInt(), value.currentPosition);
+      context.assertEquals(Utils.getDefaultInt(), value.remainingSteps);
+      context.assertEquals(Utils.getDefaultInt(), value.stackVoltage);
+      context.assertEquals(Utils.getDefaultInt(), value.externalVoltage);
+      context.assertEquals(Utils.getDefaultInt(), value.currentConsumption);
       
     } catch (Exception e) {
       context.fail(e);
@@ -127,7 +127,7 @@ public class BrickStepperTest {
   public void testgetChipTemperature(TestContext context) {
     try {
       short value = device.getChipTemperature();
-      context.assertEquals(Utils.getRandomShort(), value);
+      context.assertEquals(Utils.getDefaultShort(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -138,7 +138,7 @@ public class BrickStepperTest {
   public void testgetCurrentVelocity(TestContext context) {
     try {
       int value = device.getCurrentVelocity();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -149,7 +149,7 @@ public class BrickStepperTest {
   public void testgetExternalInputVoltage(TestContext context) {
     try {
       int value = device.getExternalInputVoltage();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -160,7 +160,7 @@ public class BrickStepperTest {
   public void testgetStackInputVoltage(TestContext context) {
     try {
       int value = device.getStackInputVoltage();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -89,7 +89,7 @@ public class BrickletACCurrentTest {
   public void testgetAnalogValue(TestContext context) {
     try {
       int value = device.getAnalogValue();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -100,7 +100,7 @@ public class BrickletACCurrentTest {
   public void testgetCurrent(TestContext context) {
     try {
       int value = device.getCurrent();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -89,7 +89,7 @@ public class BrickletAccelerometerTest {
   public void testgetTemperature(TestContext context) {
     try {
       short value = device.getTemperature();
-      context.assertEquals(Utils.getRandomShort(), value);
+      context.assertEquals(Utils.getDefaultShort(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -100,9 +100,9 @@ public class BrickletAccelerometerTest {
   public void testgetAcceleration(TestContext context) {
     try {
       BrickletAccelerometer.Acceleration value = device.getAcceleration();
-      context.assertEquals(Utils.getRandomShort(), value.x);
-      context.assertEquals(Utils.getRandomShort(), value.y);
-      context.assertEquals(Utils.getRandomShort(), value.z);
+      context.assertEquals(Utils.getDefaultShort(), value.x);
+      context.assertEquals(Utils.getDefaultShort(), value.y);
+      context.assertEquals(Utils.getDefaultShort(), value.z);
       
     } catch (Exception e) {
       context.fail(e);
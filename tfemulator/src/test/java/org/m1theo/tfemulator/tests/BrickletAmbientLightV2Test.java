@@ -89,7 +89,7 @@ public class BrickletAmbientLightV2Test {
   public void testgetIlluminance(TestContext context) {
     try {
       long value = device.getIlluminance();
-      context.assertEquals(Utils.getRandomLong(), value);
+      context.assertEquals(Utils.getDefaultLong(), value);
       
     } catch (Exception e) {
       context.fail(e);
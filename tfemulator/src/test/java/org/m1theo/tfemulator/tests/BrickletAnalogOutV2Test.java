@@ -89,7 +89,7 @@ public class BrickletAnalogOutV2Test {
   public void testgetInputVoltage(TestContext context) {
     try {
       int value = device.getInputVoltage();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
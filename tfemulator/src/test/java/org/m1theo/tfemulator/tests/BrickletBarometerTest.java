@@ -89,7 +89,7 @@ public class BrickletBarometerTest {
   public void testgetAltitude(TestContext context) {
     try {
       int value = device.getAltitude();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -100,7 +100,7 @@ public class BrickletBarometerTest {
   public void testgetChipTemperature(TestContext context) {
     try {
       short value = device.getChipTemperature();
-      context.assertEquals(Utils.getRandomShort(), value);
+      context.assertEquals(Utils.getDefaultShort(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -111,7 +111,7 @@ public class BrickletBarometerTest {
   public void testgetAirPressure(TestContext context) {
     try {
       int value = device.getAirPressure();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
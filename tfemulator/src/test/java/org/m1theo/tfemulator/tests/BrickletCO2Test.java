@@ -89,7 +89,7 @@ public class BrickletCO2Test {
   public void testgetCO2Concentration(TestContext context) {
     try {
       int value = device.getCO2Concentration();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
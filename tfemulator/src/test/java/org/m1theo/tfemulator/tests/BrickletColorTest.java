@@ -89,7 +89,7 @@ public class BrickletColorTest {
   public void testgetIlluminance(TestContext context) {
     try {
       long value = device.getIlluminance();
-      context.assertEquals(Utils.getRandomLong(), value);
+      context.assertEquals(Utils.getDefaultLong(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -100,7 +100,7 @@ public class BrickletColorTest {
   public void testgetColorTemperature(TestContext context) {
     try {
       int value = device.getColorTemperature();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -111,10 +111,10 @@ public class BrickletColorTest {
   public void testgetColor(TestContext context) {
     try {
       BrickletColor.Color value = device.getColor();
-      context.assertEquals(Utils.getRandomInt(), value.r);
-      context.assertEquals(Utils.getRandomInt(), value.g);
-      context.assertEquals(Utils.getRandomInt(), value.b);
-      context.assertEquals(Utils.getRandomInt(), value.c);
+      context.assertEquals(Utils.getDefaultInt(), value.r);
+      context.assertEquals(Utils.getDefaultInt(), value.g);
+      context.assertEquals(Utils.getDefaultInt(), value.b);
+      context.assertEquals(Utils.getDefaultInt(), value.c);
       
     } catch (Exception e) {
       context.fail(e);
@@ -89,7 +89,7 @@ public class BrickletCurrent12Test {
   public void testgetAnalogValue(TestContext context) {
     try {
       int value = device.getAnalogValue();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -100,7 +100,7 @@ public class BrickletCurrent12Test {
   public void testgetCurrent(TestContext context) {
     try {
       short value = device.getCurrent();
-      context.assertEquals(Utils.getRandomShort(), value);
+      context.assertEquals(Utils.getDefaultShort(), value);
       
     } catch (Exception e) {
       context.fail(e);
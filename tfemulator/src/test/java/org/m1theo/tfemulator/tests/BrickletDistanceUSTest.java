@@ -89,7 +89,7 @@ public class BrickletDistanceUSTest {
   public void testgetDistanceValue(TestContext context) {
     try {
       int value = device.getDistanceValue();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
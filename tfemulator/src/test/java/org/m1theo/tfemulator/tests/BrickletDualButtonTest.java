@@ -89,8 +89,8 @@ public class BrickletDualButtonTest {
   public void testgetButtonState(TestContext context) {
     try {
       BrickletDualButton.ButtonState value = device.getButtonState();
-      context.assertEquals(Utils.getRandomShort(), value.buttonL);
-      context.assertEquals(Utils.getRandomShort(), value.buttonR);
+      context.assertEquals(Utils.getDefaultShort(), value.buttonL);
+      context.assertEquals(Utils.getDefaultShort(), value.buttonR);
       
     } catch (Exception e) {
       context.fail(e);
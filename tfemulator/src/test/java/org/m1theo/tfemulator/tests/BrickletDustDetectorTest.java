@@ -89,7 +89,7 @@ public class BrickletDustDetectorTest {
   public void testgetDustDensity(TestContext context) {
     try {
       int value = device.getDustDensity();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -89,8 +89,8 @@ public class BrickletGPSTest {
   public void testgetDateTime(TestContext context) {
     try {
       BrickletGPS.DateTime value = device.getDateTime();
-      context.assertEquals(Utils.getRandomLong(), value.date);
-      context.assertEquals(Utils.getRandomLong(), value.time);
+      context.assertEquals(Utils.getDefaultLong(), value.date);
+      context.assertEquals(Utils.getDefaultLong(), value.time);
       
     } catch (Exception e) {
       context.fail(e);
@@ -101,9 +101,9 @@ public class BrickletGPSTest {
   public void testgetStatus(TestContext context) {
     try {
       BrickletGPS.Status value = device.getStatus();
-      context.assertEquals(Utils.getRandomShort(), value.fix);
-      context.assertEquals(Utils.getRandomShort(), value.satellitesView);
-      context.assertEquals(Utils.getRandomShort(), value.satellitesUsed);
+      context.assertEquals(Utils.getDefaultShort(), value.fix);
+      context.assertEquals(Utils.getDefaultShort(), value.satellitesView);
+      context.assertEquals(Utils.getDefaultShort(), value.satellitesUsed);
       
     } catch (Exception e) {
       context.fail(e);
@@ -114,8 +114,8 @@ public class BrickletGPSTest {
   public void testgetMotion(TestContext context) {
     try {
       BrickletGPS.Motion value = device.getMotion();
-      context.assertEquals(Utils.getRandomLong(), value.course);
-      context.assertEquals(Utils.getRandomLong(), value.speed);
+      context.assertEquals(Utils.getDefaultLong(), value.course);
+      context.assertEquals(Utils.getDefaultLong(), value.speed);
       
     } catch (Exception e) {
       context.fail(e);
@@ -126,8 +126,8 @@ public class BrickletGPSTest {
   public void testgetAltitude(TestContext context) {
     try {
       BrickletGPS.Altitude value = device.getAltitude();
-      context.assertEquals(Utils.getRandomLong(), value.altitude);
-      context.assertEquals(Utils.getRandomLong(), value.geoidalSeparation);
+      context.assertEquals(Utils.getDefaultLong(), value.altitude);
+      context.assertEquals(Utils.getDefaultLong(), value.geoidalSeparation);
       
     } catch (Exception e) {
       context.fail(e);
@@ -138,14 +138,14 @@ public class BrickletGPSTest {
   public void testgetCoordinates(TestContext context) {
     try {
       BrickletGPS.Coordinates value = device.getCoordinates();
-      context.assertEquals(Utils.getRandomLong(), value.latitude);
-      context.assertEquals(Utils.getRandomChar(), value.ns);
-      context.assertEquals(Utils.getRandomLong(), value.longitude);
-      context.assertEquals(Utils.getRandomChar(), value.ew);
-      context.assertEquals(Utils.getRandomInt(), value.pdop);
-      context.assertEquals(Utils.getRandomInt(), value.hdop);
-      context.assertEquals(Utils.getRandomInt(), value.vdop);
-      context.assertEquals(Utils.getRandomInt(), value.epe);
+      context.assertEquals(Utils.getDefaultLong(), value.latitude);
+      context.assertEquals(Utils.getDefaultChar(), value.ns);
+      context.assertEquals(Utils.getDefaultLong(), value.longitude);
+      context.assertEquals(Utils.getDefaultChar(), value.ew);
+      context.assertEquals(Utils.getDefaultInt(), value.pdop);
+      context.assertEquals(Utils.getDefaultInt(), value.hdop);
+      context.assertEquals(Utils.getDefaultInt(), value.vdop);
+      context.assertEquals(Utils.getDefaultInt(), value.epe);
       
     } catch (Exception e) {
       context.fail(e);
@@ -89,7 +89,7 @@ public class BrickletGasDetectorTest {
   public void testgetValue(TestContext context) {
     try {
       int value = device.getValue();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
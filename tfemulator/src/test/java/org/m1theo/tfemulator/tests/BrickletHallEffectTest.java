@@ -89,7 +89,7 @@ public class BrickletHallEffectTest {
   public void test1getEdgeCount(TestContext context) {
     try {
       long value = device.getEdgeCount(true);
-      context.assertEquals(Utils.getRandomLong(), value);
+      context.assertEquals(Utils.getDefaultLong(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -100,7 +100,7 @@ public class BrickletHallEffectTest {
   public void test2getEdgeCount(TestContext context) {
     try {
       long value = device.getEdgeCount(false);
-      context.assertEquals(Utils.getRandomLong(), value);
+      context.assertEquals(Utils.getDefaultLong(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -111,7 +111,7 @@ public class BrickletHallEffectTest {
   public void testgetValue(TestContext context) {
     try {
       boolean value = device.getValue();
-      context.assertEquals(Utils.getRandomBoolean(), value);
+      context.assertEquals(Utils.getDefaultBoolean(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -89,7 +89,7 @@ public class BrickletHeartRateTest {
   public void testgetHeartRate(TestContext context) {
     try {
       int value = device.getHeartRate();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
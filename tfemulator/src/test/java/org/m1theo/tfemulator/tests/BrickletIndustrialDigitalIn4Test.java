@@ -89,7 +89,7 @@ public class BrickletIndustrialDigitalIn4Test {
   public void testgetAvailableForGroup(TestContext context) {
     try {
       short value = device.getAvailableForGroup();
-      context.assertEquals(Utils.getRandomShort(), value);
+      context.assertEquals(Utils.getDefaultShort(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -100,7 +100,7 @@ public class BrickletIndustrialDigitalIn4Test {
   public void testgetValue(TestContext context) {
     try {
       int value = device.getValue();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -89,7 +89,7 @@ public class BrickletIndustrialDual020mATest {
   public void testgetCurrent(TestContext context) {
     try {
       int value = device.getCurrent((short) 1);
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -90,7 +90,7 @@ public class BrickletIndustrialDualAnalogInTest {
     try {
       int[] value = device.getADCValues();
             for (int i = 0; i < value.length; i++) {
-        context.assertEquals(Utils.getRandomInt(), value[i]);
+        context.assertEquals(Utils.getDefaultInt(), value[i]);
       }
 
     } catch (Exception e) {
@@ -102,7 +102,7 @@ public class BrickletIndustrialDualAnalogInTest {
   public void testgetVoltage(TestContext context) {
     try {
       int value = device.getVoltage((short) 1);
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -89,7 +89,7 @@ public class BrickletIndustrialQuadRelayTest {
   public void testgetAvailableForGroup(TestContext context) {
     try {
       short value = device.getAvailableForGroup();
-      context.assertEquals(Utils.getRandomShort(), value);
+      context.assertEquals(Utils.getDefaultShort(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -89,8 +89,8 @@ public class BrickletJoystickTest {
   public void testgetAnalogValue(TestContext context) {
     try {
       BrickletJoystick.AnalogValue value = device.getAnalogValue();
-      context.assertEquals(Utils.getRandomInt(), value.x);
-      context.assertEquals(Utils.getRandomInt(), value.y);
+      context.assertEquals(Utils.getDefaultInt(), value.x);
+      context.assertEquals(Utils.getDefaultInt(), value.y);
       
     } catch (Exception e) {
       context.fail(e);
@@ -101,8 +101,8 @@ public class BrickletJoystickTest {
   public void testgetPosition(TestContext context) {
     try {
       BrickletJoystick.Position value = device.getPosition();
-      context.assertEquals(Utils.getRandomShort(), value.x);
-      context.assertEquals(Utils.getRandomShort(), value.y);
+      context.assertEquals(Utils.getDefaultShort(), value.x);
+      context.assertEquals(Utils.getDefaultShort(), value.y);
       
     } catch (Exception e) {
       context.fail(e);
@@ -89,7 +89,7 @@ public class BrickletLEDStripTest {
   public void testgetSupplyVoltage(TestContext context) {
     try {
       int value = device.getSupplyVoltage();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -89,7 +89,7 @@ public class BrickletLaserRangeFinderTest {
   public void testgetVelocity(TestContext context) {
     try {
       short value = device.getVelocity();
-      context.assertEquals(Utils.getRandomShort(), value);
+      context.assertEquals(Utils.getDefaultShort(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -100,7 +100,7 @@ public class BrickletLaserRangeFinderTest {
   public void testgetDistance(TestContext context) {
     try {
       int value = device.getDistance();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
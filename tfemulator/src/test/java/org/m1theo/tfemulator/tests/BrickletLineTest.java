@@ -89,7 +89,7 @@ public class BrickletLineTest {
   public void testgetReflectivity(TestContext context) {
     try {
       int value = device.getReflectivity();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
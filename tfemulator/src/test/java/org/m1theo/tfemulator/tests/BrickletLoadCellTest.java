@@ -89,7 +89,7 @@ public class BrickletLoadCellTest {
   public void testgetWeight(TestContext context) {
     try {
       int value = device.getWeight();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
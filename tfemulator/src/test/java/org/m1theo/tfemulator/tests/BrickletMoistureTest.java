@@ -89,7 +89,7 @@ public class BrickletMoistureTest {
   public void testgetMoistureValue(TestContext context) {
     try {
       int value = device.getMoistureValue();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -89,7 +89,7 @@ public class BrickletMotionDetectorTest {
   public void testgetMotionDetected(TestContext context) {
     try {
       short value = device.getMotionDetected();
-      context.assertEquals(Utils.getRandomShort(), value);
+      context.assertEquals(Utils.getDefaultShort(), value);
       
     } catch (Exception e) {
       context.fail(e);
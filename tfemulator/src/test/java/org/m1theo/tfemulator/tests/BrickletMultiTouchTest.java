@@ -89,7 +89,7 @@ public class BrickletMultiTouchTest {
   public void testgetTouchState(TestContext context) {
     try {
       int value = device.getTouchState();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
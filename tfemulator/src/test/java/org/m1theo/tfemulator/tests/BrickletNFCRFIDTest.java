@@ -89,8 +89,8 @@ public class BrickletNFCRFIDTest {
   public void testgetState(TestContext context) {
     try {
       BrickletNFCRFID.State value = device.getState();
-      context.assertEquals(Utils.getRandomShort(), value.state);
-      context.assertEquals(Utils.getRandomBoolean(), value.idle);
+      context.assertEquals(Utils.getDefaultShort(), value.state);
+      context.assertEquals(Utils.getDefaultBoolean(), value.idle);
       
     } catch (Exception e) {
       context.fail(e);
@@ -101,10 +101,10 @@ public class BrickletNFCRFIDTest {
   public void testgetTagID(TestContext context) {
     try {
       BrickletNFCRFID.TagID value = device.getTagID();
-      context.assertEquals(Utils.getRandomShort(), value.tagType);
-      context.assertEquals(Utils.getRandomShort(), value.tidLength);
+      context.assertEquals(Utils.getDefaultShort(), value.tagType);
+      context.assertEquals(Utils.getDefaultShort(), value.tidLength);
             for (int i = 0; i < value.tid.length; i++) {
-        context.assertEquals(Utils.getRandomShort(), value.tid[i]);
+        context.assertEquals(Utils.getDefaultShort(), value.tid[i]);
       }
 
     } catch (Exception e) {
@@ -117,7 +117,7 @@ public class BrickletNFCRFIDTest {
     try {
       short[] value = device.getPage();
             for (int i = 0; i < value.length; i++) {
-        context.assertEquals(Utils.getRandomShort(), value[i]);
+        context.assertEquals(Utils.getDefaultShort(), value[i]);
       }
 
     } catch (Exception e) {
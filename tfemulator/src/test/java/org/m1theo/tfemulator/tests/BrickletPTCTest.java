@@ -89,7 +89,7 @@ public class BrickletPTCTest {
   public void testgetTemperature(TestContext context) {
     try {
       int value = device.getTemperature();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -100,7 +100,7 @@ public class BrickletPTCTest {
   public void testgetResistance(TestContext context) {
     try {
       int value = device.getResistance();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
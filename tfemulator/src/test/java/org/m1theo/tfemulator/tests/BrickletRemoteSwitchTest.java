@@ -89,7 +89,7 @@ public class BrickletRemoteSwitchTest {
   public void testgetSwitchingState(TestContext context) {
     try {
       short value = device.getSwitchingState();
-      context.assertEquals(Utils.getRandomShort(), value);
+      context.assertEquals(Utils.getDefaultShort(), value);
       
     } catch (Exception e) {
       context.fail(e);
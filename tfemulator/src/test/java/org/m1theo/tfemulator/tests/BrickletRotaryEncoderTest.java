@@ -89,7 +89,7 @@ public class BrickletRotaryEncoderTest {
   public void test1getCount(TestContext context) {
     try {
       int value = device.getCount(true);
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -100,7 +100,7 @@ public class BrickletRotaryEncoderTest {
   public void test2getCount(TestContext context) {
     try {
       int value = device.getCount(false);
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -89,7 +89,7 @@ public class BrickletSegmentDisplay4x7Test {
   public void testgetCounterValue(TestContext context) {
     try {
       int value = device.getCounterValue();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -89,7 +89,7 @@ public class BrickletSoundIntensityTest {
   public void testgetIntensity(TestContext context) {
     try {
       int value = device.getIntensity();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -89,7 +89,7 @@ public class BrickletTemperatureIRTest {
   public void testgetObjectTemperature(TestContext context) {
     try {
       short value = device.getObjectTemperature();
-      context.assertEquals(Utils.getRandomShort(), value);
+      context.assertEquals(Utils.getDefaultShort(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -100,7 +100,7 @@ public class BrickletTemperatureIRTest {
   public void testgetAmbientTemperature(TestContext context) {
     try {
       short value = device.getAmbientTemperature();
-      context.assertEquals(Utils.getRandomShort(), value);
+      context.assertEquals(Utils.getDefaultShort(), value);
       
     } catch (Exception e) {
       context.fail(e);
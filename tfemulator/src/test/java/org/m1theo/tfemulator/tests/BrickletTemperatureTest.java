@@ -89,7 +89,7 @@ public class BrickletTemperatureTest {
   public void testgetTemperature(TestContext context) {
     try {
       short value = device.getTemperature();
-      context.assertEquals(Utils.getRandomShort(), value);
+      context.assertEquals(Utils.getDefaultShort(), value);
       
     } catch (Exception e) {
       context.fail(e);
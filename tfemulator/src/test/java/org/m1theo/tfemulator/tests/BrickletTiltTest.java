@@ -89,7 +89,7 @@ public class BrickletTiltTest {
   public void testgetTiltState(TestContext context) {
     try {
       short value = device.getTiltState();
-      context.assertEquals(Utils.getRandomShort(), value);
+      context.assertEquals(Utils.getDefaultShort(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -89,7 +89,7 @@ public class BrickletVoltageCurrentTest {
   public void testgetCurrent(TestContext context) {
     try {
       int value = device.getCurrent();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -100,7 +100,7 @@ public class BrickletVoltageCurrentTest {
   public void testgetVoltage(TestContext context) {
     try {
       int value = device.getVoltage();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -111,7 +111,7 @@ public class BrickletVoltageCurrentTest {
   public void testgetPower(TestContext context) {
     try {
       int value = device.getPower();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
       
     } catch (Exception e) {
       context.fail(e);
@@ -0,0 +1,152 @@
+package org.m1theo.tfemulator.testshandmade;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.m1theo.tfemulator.OutboundQueue;
+import org.m1theo.tfemulator.Router;
+import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.devices.BrickletTemperature;
+import org.m1theo.tfemulator.protocol.FrameDecoder;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.NetClientOptions;
+import io.vertx.core.net.NetSocket;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/*
+ * A client that stops reading while fast callbacks are running: with "pause" it gets no more
+ * callbacks until it caught up, with "drop" it loses callbacks but never a response, with
+ * "disconnect" it is thrown out.
+ */
+@RunWith(VertxUnitRunner.class)
+public class BackpressureTest {
+  private final static String[] UIDS = {"c1", "c2", "c3", "c4", "c5", "c6", "c7", "c8", "c9"};
+  private final static String HOST = "localhost";
+  private final static int PORT = 1234;
+
+  Vertx vertx;
+
+  private void deploy(TestContext context, String policy, Handler<Void> deployed) {
+    JsonArray devices = new JsonArray();
+    for (String uid : UIDS) {
+      devices.add(new JsonObject().put("type", "BrickletTemperature").put("uid", uid)
+          .put("enabled", true));
+    }
+    JsonObject emuconfig = new JsonObject()
+        .put("server", new JsonObject().put("sendBufferSize", 4096))
+        .put("outbound", new JsonObject().put("policy", policy).put("writeQueueMaxSize", 1024)
+            .put("highWatermark", 8192).put("lowWatermark", 1024))
+        .put("devices", devices);
+    vertx = Vertx.vertx();
+    vertx.deployVerticle("org.m1theo.tfemulator.Brickd",
+        new DeploymentOptions().setConfig(emuconfig), context.asyncAssertSuccess(id -> {
+          vertx.setTimer(500, t -> deployed.handle(null));
+        }));
+  }
+
+  @After
+  public void after(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  /*
+   * Connects with a small receive buffer, starts the callbacks of all devices with a period of
+   * 1 ms and stops reading.
+   */
+  private void connectAndStall(Handler<NetSocket> stalled) {
+    vertx.createNetClient(new NetClientOptions().setReceiveBufferSize(4096)).connect(PORT, HOST,
+        res -> {
+          NetSocket socket = res.result();
+          for (String uid : UIDS) {
+            socket.write(Utils.createHeader(Utils.uid2long(uid), (byte) 12,
+                BrickletTemperature.FUNCTION_SET_TEMPERATURE_CALLBACK_PERIOD, (byte) 0x10,
+                (byte) 0).appendBytes(Utils.getUInt32(1)));
+          }
+          socket.pause();
+          stalled.handle(socket);
+        });
+  }
+
+  @Test
+  public void testPause(TestContext context) {
+    Async async = context.async();
+    deploy(context, "pause", v -> connectAndStall(socket -> {
+      OutboundQueue.Stats stats = OutboundQueue.Stats.get(vertx);
+      Router router = Router.get(vertx);
+      vertx.setPeriodic(50, id -> {
+        if (stats.pauses() == 0) {
+          return;
+        }
+        vertx.cancelTimer(id);
+        context.assertEquals(1, router.connections().length);
+        context.assertEquals(0, router.callbackConnections().length);
+        // reading again, the callbacks come back
+        socket.handler(data -> {
+        });
+        socket.resume();
+        vertx.setPeriodic(50, id2 -> {
+          if (router.callbackConnections().length == 1) {
+            vertx.cancelTimer(id2);
+            async.complete();
+          }
+        });
+      });
+    }));
+  }
+
+  @Test
+  public void testDrop(TestContext context) {
+    Async async = context.async();
+    deploy(context, "drop", v -> connectAndStall(socket -> {
+      OutboundQueue.Stats stats = OutboundQueue.Stats.get(vertx);
+      vertx.setPeriodic(50, id -> {
+        if (stats.dropped() == 0) {
+          return;
+        }
+        vertx.cancelTimer(id);
+        // a request while the callbacks are dropped
+        socket.write(Utils.createHeader(Utils.uid2long(UIDS[0]), (byte) 8,
+            BrickletTemperature.FUNCTION_GET_TEMPERATURE, (byte) 0x78, (byte) 0));
+        AtomicBoolean answered = new AtomicBoolean();
+        socket.handler(new FrameDecoder(packet -> {
+          if (packet.getFunctionId() == BrickletTemperature.FUNCTION_GET_TEMPERATURE
+              && packet.getSequenceNumber() == 7 && answered.compareAndSet(false, true)) {
+            async.complete();
+          }
+        })::handle);
+        vertx.setTimer(200, t -> socket.resume());
+      });
+    }));
+  }
+
+  @Test
+  public void testDisconnect(TestContext context) {
+    Async async = context.async();
+    deploy(context, "disconnect", v -> connectAndStall(socket -> {
+      socket.closeHandler(c -> {
+        context.assertEquals(1L, OutboundQueue.Stats.get(vertx).disconnects());
+        // the server side of the connection goes away soon after
+        vertx.setPeriodic(20, id -> {
+          if (Router.get(vertx).connections().length == 0) {
+            vertx.cancelTimer(id);
+            async.complete();
+          }
+        });
+      });
+      socket.handler(data -> {
+      });
+      // the close is only noticed while reading
+      vertx.setTimer(1000, t -> socket.resume());
+    }));
+  }
+}
@@ -0,0 +1,104 @@
+package org.m1theo.tfemulator.testshandmade;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Utils;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.NetClient;
+import io.vertx.core.net.NetSocket;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/*
+ * Answers go to the requesting connection only, enumerate callbacks go to every connection.
+ */
+@RunWith(VertxUnitRunner.class)
+public class BrickdConnectionsTest {
+  private final static String UID = "a1";
+  private final static String HOST = "localhost";
+  private final static int PORT = 1234;
+
+  Vertx vertx;
+
+  @Before
+  public void before(TestContext context) {
+    JsonObject emuconfig = new JsonObject().put("devices", new JsonArray().add(
+        new JsonObject().put("type", "BrickletTemperature").put("uid", UID).put("enabled", true)));
+    DeploymentOptions deploymentOptions = new DeploymentOptions().setConfig(emuconfig);
+
+    vertx = Vertx.vertx();
+    Async async = context.async();
+    vertx.deployVerticle("org.m1theo.tfemulator.Brickd", deploymentOptions, res -> {
+      vertx.setTimer(500, t -> async.complete());
+    });
+  }
+
+  @After
+  public void after(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  @Test
+  public void testAnswerOnlyRequester(TestContext context) {
+    int requests = 50;
+    Buffer request =
+        Utils.createHeader(Utils.uid2long(UID), (byte) 8, (byte) 1, (byte) 0x18, (byte) 0);
+    AtomicInteger receivedA = new AtomicInteger();
+    AtomicInteger receivedB = new AtomicInteger();
+    Async async = context.async();
+    NetClient client = vertx.createNetClient();
+    client.connect(PORT, HOST, resB -> {
+      NetSocket socketB = resB.result();
+      socketB.handler(buffer -> receivedB.addAndGet(buffer.length()));
+      client.connect(PORT, HOST, resA -> {
+        NetSocket socketA = resA.result();
+        socketA.handler(buffer -> {
+          if (receivedA.addAndGet(buffer.length()) == requests * 10) {
+            // give stray answers to B some time to arrive
+            vertx.setTimer(200, t -> {
+              context.assertEquals(0, receivedB.get());
+              async.complete();
+            });
+          }
+        });
+        for (int i = 0; i < requests; i++) {
+          socketA.write(request);
+        }
+      });
+    });
+  }
+
+  @Test
+  public void testEnumerateIsBroadcast(TestContext context) {
+    Buffer enumerate =
+        Utils.createHeader(0, (byte) 8, CommonServices.FUNCTION_ENUMERATE, (byte) 0x10, (byte) 0);
+    Async asyncA = context.async();
+    Async asyncB = context.async();
+    NetClient client = vertx.createNetClient();
+    client.connect(PORT, HOST, resB -> {
+      resB.result().handler(buffer -> {
+        context.assertEquals(34, buffer.length());
+        asyncB.complete();
+      });
+      client.connect(PORT, HOST, resA -> {
+        NetSocket socketA = resA.result();
+        socketA.handler(buffer -> {
+          context.assertEquals(34, buffer.length());
+          asyncA.complete();
+        });
+        socketA.write(enumerate);
+      });
+    });
+  }
+}
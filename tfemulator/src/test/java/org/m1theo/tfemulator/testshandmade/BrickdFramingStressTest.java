@@ -0,0 +1,140 @@
+package org.m1theo.tfemulator.testshandmade;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.m1theo.tfemulator.Utils;
+
+import com.tinkerforge.AlreadyConnectedException;
+import com.tinkerforge.BrickletTemperature;
+import com.tinkerforge.IPConnection;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.NetSocket;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/*
+ * Pushes pipelined packets through one connection, the emulator has to answer every single one.
+ */
+@RunWith(VertxUnitRunner.class)
+public class BrickdFramingStressTest {
+  // only characters which are encoded equally by the emulator and the tinkerforge bindings
+  private final static String[] UIDS = {"a1", "a2", "a3", "a4", "b1", "b2", "b3", "b4"};
+  private final static int REQUESTS_PER_DEVICE = 500;
+  private final static String HOST = "localhost";
+  private final static int PORT = 1234;
+
+  Vertx vertx;
+  IPConnection ipcon;
+
+  @Before
+  public void before(TestContext context) {
+    JsonArray devices = new JsonArray();
+    for (String uid : UIDS) {
+      devices.add(new JsonObject().put("type", "BrickletTemperature").put("uid", uid)
+          .put("enabled", true));
+    }
+    JsonObject emuconfig = new JsonObject().put("devices", devices);
+    DeploymentOptions deploymentOptions = new DeploymentOptions().setConfig(emuconfig);
+
+    vertx = Vertx.vertx();
+    Async async = context.async();
+    vertx.deployVerticle("org.m1theo.tfemulator.Brickd", deploymentOptions, res -> {
+      async.complete();
+    });
+    ipcon = new IPConnection();
+    try {
+      try {
+        Thread.sleep(500);
+      } catch (InterruptedException e) {
+        e.printStackTrace();
+      }
+      ipcon.connect(HOST, PORT);
+    } catch (AlreadyConnectedException | IOException e) {
+      context.fail(e);
+    }
+  }
+
+  @After
+  public void after(TestContext context) {
+    try {
+      ipcon.disconnect();
+    } catch (Exception e) {
+      // already disconnected
+    }
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  @Test
+  public void testPipelinedRequests(TestContext context) throws InterruptedException {
+    AtomicInteger answers = new AtomicInteger();
+    List<Throwable> errors = new ArrayList<>();
+    List<Thread> threads = new ArrayList<>();
+    for (String uid : UIDS) {
+      BrickletTemperature device = new BrickletTemperature(uid, ipcon);
+      Thread thread = new Thread(() -> {
+        try {
+          for (int i = 0; i < REQUESTS_PER_DEVICE; i++) {
+            if (device.getTemperature() == Utils.getDefaultShort()) {
+              answers.incrementAndGet();
+            }
+          }
+        } catch (Exception e) {
+          synchronized (errors) {
+            errors.add(e);
+          }
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    context.assertTrue(errors.isEmpty(), "lost responses: " + errors);
+    context.assertEquals(UIDS.length * REQUESTS_PER_DEVICE, answers.get());
+  }
+
+  @Test
+  public void testSplitAndCoalescedWrites(TestContext context) {
+    int packets = 200;
+    // getTemperature requests for uid "a1" with response expected and sequence number 1
+    long uid = Utils.uid2long(UIDS[0]);
+    Buffer requests = Buffer.buffer();
+    for (int i = 0; i < packets; i++) {
+      requests.appendBuffer(Utils.createHeader(uid, (byte) 8, (byte) 1, (byte) 0x18, (byte) 0));
+    }
+    Async async = context.async();
+    vertx.createNetClient().connect(PORT, HOST, res -> {
+      context.assertTrue(res.succeeded());
+      NetSocket socket = res.result();
+      AtomicInteger received = new AtomicInteger();
+      socket.handler(buffer -> {
+        if (received.addAndGet(buffer.length()) == packets * 10) {
+          async.complete();
+        }
+      });
+      // odd sized chunks so that headers and packets are cut everywhere
+      int pos = 0;
+      int chunk = 3;
+      while (pos < requests.length()) {
+        int end = Math.min(pos + chunk, requests.length());
+        socket.write(requests.getBuffer(pos, end));
+        pos = end;
+        chunk = chunk % 29 + 5;
+      }
+    });
+  }
+}
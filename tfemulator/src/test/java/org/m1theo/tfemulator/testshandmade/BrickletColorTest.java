@@ -76,7 +76,7 @@ public class BrickletColorTest {
   public void testgetColorTemperature(TestContext context) {
     try {
       int value = device.getColorTemperature();
-      context.assertEquals(Utils.getRandomInt(), value);
+      context.assertEquals(Utils.getDefaultInt(), value);
     } catch (Exception e) {
       context.fail(e);
     }
@@ -86,10 +86,10 @@ public class BrickletColorTest {
   public void testgetColor(TestContext context) {
     try {
       com.tinkerforge.BrickletColor.Color color = device.getColor();
-      context.assertEquals(Utils.getRandomInt(), color.r);
-      context.assertEquals(Utils.getRandomInt(), color.b);
-      context.assertEquals(Utils.getRandomInt(), color.g);
-      context.assertEquals(Utils.getRandomInt(), color.c);
+      context.assertEquals(Utils.getDefaultInt(), color.r);
+      context.assertEquals(Utils.getDefaultInt(), color.b);
+      context.assertEquals(Utils.getDefaultInt(), color.g);
+      context.assertEquals(Utils.getDefaultInt(), color.c);
     } catch (Exception e) {
       context.fail(e);
     }
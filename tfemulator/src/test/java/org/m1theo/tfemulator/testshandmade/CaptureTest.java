@@ -0,0 +1,213 @@
+package org.m1theo.tfemulator.testshandmade;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.capture.PacketCapture;
+import org.m1theo.tfemulator.devices.BrickletTemperature;
+import org.m1theo.tfemulator.protocol.FrameDecoder;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.NetClient;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/*
+ * The requests and answers end up in pcapng files with one block per packet, the ring of files
+ * rotates, and the capture is turned off over JMX.
+ */
+@RunWith(VertxUnitRunner.class)
+public class CaptureTest {
+  private final static String HOST = "localhost";
+  private final static int PORT = 1244;
+  private final static String UID = "h1";
+  private final static int SECTION_HEADER_BLOCK = 0x0A0D0D0A;
+  private final static int INTERFACE_DESCRIPTION_BLOCK = 1;
+  private final static int ENHANCED_PACKET_BLOCK = 6;
+
+  Vertx vertx;
+  // kept, an unreachable NetClient closes its sockets when it is finalized
+  NetClient client;
+  Path directory;
+
+  /*
+   * An Enhanced Packet Block with the pseudo header taken apart.
+   */
+  static class Block {
+    long timestamp;
+    int connection;
+    int direction;
+    byte[] packet;
+  }
+
+  @Before
+  public void before() throws IOException {
+    directory = Files.createTempDirectory("capture");
+  }
+
+  @After
+  public void after(TestContext context) throws IOException {
+    vertx.close(context.asyncAssertSuccess());
+    try (Stream<Path> files = Files.walk(directory)) {
+      files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  private void deploy(TestContext context, JsonObject capture, Handler<Void> deployed) {
+    JsonObject emuconfig = new JsonObject().put("port", PORT)
+        .put("capture", capture.put("directory", directory.toString()))
+        .put("devices", new JsonArray().add(new JsonObject().put("type", "BrickletTemperature")
+            .put("uid", UID).put("enabled", true)));
+    vertx = Vertx.vertx();
+    vertx.deployVerticle("org.m1theo.tfemulator.Brickd",
+        new DeploymentOptions().setConfig(emuconfig),
+        context.asyncAssertSuccess(id -> deployed.handle(null)));
+  }
+
+  /*
+   * Sends count getTemperature requests, done is called with the answers.
+   */
+  private void requests(TestContext context, int count, Handler<Void> done) {
+    Buffer requests = Buffer.buffer();
+    for (int i = 0; i < count; i++) {
+      requests.appendBuffer(Utils.createHeader(Utils.uid2long(UID), (byte) 8,
+          BrickletTemperature.FUNCTION_GET_TEMPERATURE, (byte) (((i % 15) + 1) << 4 | 0x08),
+          (byte) 0));
+    }
+    int[] answers = new int[1];
+    client = vertx.createNetClient();
+    client.connect(PORT, HOST, context.asyncAssertSuccess(socket -> {
+      socket.handler(new FrameDecoder(packet -> {
+        if (++answers[0] == count) {
+          done.handle(null);
+        }
+      }));
+      socket.write(requests);
+    }));
+  }
+
+  private static List<Block> read(TestContext context, Path file) throws IOException {
+    ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+    context.assertEquals(SECTION_HEADER_BLOCK, in.getInt(0));
+    context.assertEquals(0x1A2B3C4D, in.getInt(8));
+    List<Block> blocks = new ArrayList<>();
+    while (in.hasRemaining()) {
+      int start = in.position();
+      int type = in.getInt(start);
+      int length = in.getInt(start + 4);
+      context.assertEquals(length, in.getInt(start + length - 4));
+      if (type == INTERFACE_DESCRIPTION_BLOCK) {
+        context.assertEquals(147, (int) in.getShort(start + 8));
+        // if_tsresol, nanoseconds
+        context.assertEquals(9, (int) in.getShort(start + 16));
+        context.assertEquals(9, (int) in.get(start + 20));
+      } else if (type == ENHANCED_PACKET_BLOCK) {
+        Block block = new Block();
+        block.timestamp = ((long) in.getInt(start + 12) << 32) | (in.getInt(start + 16) & 0xFFFFFFFFL);
+        int captured = in.getInt(start + 20);
+        ByteBuffer data = ByteBuffer.wrap(in.array(), start + 28, captured);
+        block.connection = data.getInt();
+        block.direction = data.get();
+        data.position(data.position() + 3);
+        block.packet = new byte[captured - 8];
+        data.get(block.packet);
+        blocks.add(block);
+      }
+      in.position(start + length);
+    }
+    return blocks;
+  }
+
+  @Test
+  public void testCapture(TestContext context) {
+    Async async = context.async();
+    long started = System.currentTimeMillis();
+    deploy(context, new JsonObject().put("jmxName", "capturetest"), v -> {
+      requests(context, 20, v2 -> {
+        PacketCapture capture = PacketCapture.get(vertx);
+        Path file = capture.file();
+        context.assertEquals(directory.resolve("brickd-0.pcapng"), file);
+        context.assertEquals(40L, capture.packets());
+        capture.disable();
+        try {
+          List<Block> blocks = read(context, file);
+          context.assertEquals(40, blocks.size());
+          int in = 0;
+          long last = 0;
+          for (Block block : blocks) {
+            context.assertEquals(blocks.get(0).connection, block.connection);
+            context.assertTrue(block.timestamp >= last);
+            context.assertTrue(block.timestamp / 1000000 >= started - 1000);
+            last = block.timestamp;
+            context.assertEquals(BrickletTemperature.FUNCTION_GET_TEMPERATURE, block.packet[5]);
+            if (block.direction == PacketCapture.FROM_CLIENT) {
+              context.assertEquals(8, block.packet.length);
+              in++;
+            } else {
+              context.assertEquals(PacketCapture.TO_CLIENT, block.direction);
+              context.assertEquals(10, block.packet.length);
+            }
+          }
+          context.assertEquals(20, in);
+        } catch (IOException e) {
+          context.fail(e);
+        }
+        async.complete();
+      });
+    });
+  }
+
+  @Test
+  public void testRingAndJmx(TestContext context) {
+    Async async = context.async();
+    deploy(context, new JsonObject().put("fileSize", 4096).put("files", 2)
+        .put("jmxName", "capturetest"), v -> {
+          requests(context, 200, v2 -> {
+            PacketCapture capture = PacketCapture.get(vertx);
+            try {
+              MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+              context.assertEquals(400L,
+                  mbeanServer.getAttribute(capture.objectName(), "Packets"));
+              mbeanServer.setAttribute(capture.objectName(), new Attribute("Enabled", false));
+              context.assertFalse(capture.enabled());
+              int blocks = 0;
+              for (int i = 0; i < 2; i++) {
+                Path file = directory.resolve("brickd-" + i + ".pcapng");
+                context.assertTrue(Files.size(file) <= 4096);
+                blocks += read(context, file).size();
+              }
+              // the first files were overwritten
+              context.assertTrue(blocks > 0 && blocks < 400, "blocks: " + blocks);
+            } catch (Exception e) {
+              context.fail(e);
+            }
+            requests(context, 5, v3 -> {
+              context.assertEquals(400L, capture.packets());
+              async.complete();
+            });
+          });
+        });
+  }
+}
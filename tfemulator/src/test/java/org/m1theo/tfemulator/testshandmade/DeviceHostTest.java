@@ -0,0 +1,100 @@
+package org.m1theo.tfemulator.testshandmade;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.devices.BrickletTemperature;
+import org.m1theo.tfemulator.protocol.FrameDecoder;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.NetSocket;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/*
+ * Devices running in DeviceHosts answer requests and enumerate like deployed devices.
+ */
+@RunWith(VertxUnitRunner.class)
+public class DeviceHostTest {
+  private final static String[] UIDS = {"b1", "b2", "b3", "b4", "b5"};
+  private final static String HOST = "localhost";
+  private final static int PORT = 1234;
+
+  Vertx vertx;
+
+  @Before
+  public void before(TestContext context) {
+    JsonArray devices = new JsonArray();
+    for (String uid : UIDS) {
+      devices.add(new JsonObject().put("type", "BrickletTemperature").put("uid", uid)
+          .put("enabled", true));
+    }
+    JsonObject emuconfig = new JsonObject().put("deviceHosts", 2).put("devices", devices);
+    DeploymentOptions deploymentOptions = new DeploymentOptions().setConfig(emuconfig);
+
+    vertx = Vertx.vertx();
+    Async async = context.async();
+    vertx.deployVerticle("org.m1theo.tfemulator.Brickd", deploymentOptions, res -> {
+      vertx.setTimer(500, t -> async.complete());
+    });
+  }
+
+  @After
+  public void after(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  @Test
+  public void testEnumerate(TestContext context) {
+    Buffer enumerate =
+        Utils.createHeader(0, (byte) 8, CommonServices.FUNCTION_ENUMERATE, (byte) 0x10, (byte) 0);
+    Set<Long> enumerated = new HashSet<>();
+    Async async = context.async();
+    FrameDecoder decoder = new FrameDecoder(packet -> {
+      context.assertEquals(34, packet.getLength());
+      context.assertEquals(CommonServices.CALLBACK_ENUMERATE, packet.getFunctionId());
+      enumerated.add(Utils.uid2long(packet.getUid()));
+      if (enumerated.size() == UIDS.length) {
+        async.complete();
+      }
+    });
+    vertx.createNetClient().connect(PORT, HOST, res -> {
+      NetSocket socket = res.result();
+      socket.handler(decoder::handle);
+      socket.write(enumerate);
+    });
+  }
+
+  @Test
+  public void testRequest(TestContext context) {
+    AtomicInteger answers = new AtomicInteger();
+    Async async = context.async();
+    FrameDecoder decoder = new FrameDecoder(packet -> {
+      context.assertEquals(BrickletTemperature.FUNCTION_GET_TEMPERATURE, packet.getFunctionId());
+      context.assertEquals(10, packet.getLength());
+      if (answers.incrementAndGet() == UIDS.length) {
+        async.complete();
+      }
+    });
+    vertx.createNetClient().connect(PORT, HOST, res -> {
+      NetSocket socket = res.result();
+      socket.handler(decoder::handle);
+      for (String uid : UIDS) {
+        socket.write(Utils.createHeader(Utils.uid2long(uid), (byte) 8,
+            BrickletTemperature.FUNCTION_GET_TEMPERATURE, (byte) 0x18, (byte) 0));
+      }
+    });
+  }
+}
@@ -0,0 +1,91 @@
+package org.m1theo.tfemulator.testshandmade;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.m1theo.tfemulator.BrickdException;
+import org.m1theo.tfemulator.DeviceConfig;
+import org.m1theo.tfemulator.DeviceTemplate;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/*
+ * The devices of a template share its config: expanding a template only adds a small DeviceConfig
+ * per device, and the heap of a started template per device stays flat as the template grows.
+ */
+@RunWith(VertxUnitRunner.class)
+public class DeviceTemplateHeapTest {
+  private final static long FIRST = 200000;
+  // a DeviceConfig is 32 bytes with compressed oops, a JsonObject with a map per device is more
+  private final static long MAX_CONFIG_BYTES = 40;
+
+  private static JsonObject template(int count) {
+    return new JsonObject().put("type", "BrickletTemperature").put("count", count)
+        .put("uidFrom", FIRST).put("connectedUid", "g1").put("seed", 42).put("enabled", true)
+        .put("values", new JsonObject().put("temperature",
+            new JsonObject().put("generator", "walk").put("start", 2100).put("step", 5)));
+  }
+
+  // the smallest heap in use over a few collections
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    long used = Long.MAX_VALUE;
+    for (int i = 0; i < 5; i++) {
+      System.gc();
+      used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+    }
+    return used;
+  }
+
+  private static long configBytes(TestContext context, int count) throws BrickdException {
+    DeviceTemplate template = new DeviceTemplate(template(count));
+    List<DeviceConfig> configs = new ArrayList<>(count);
+    long before = usedHeap();
+    template.forEach(1, 0, configs::add);
+    long bytes = (usedHeap() - before) / count;
+    context.assertEquals(count, configs.size());
+    return bytes;
+  }
+
+  @Test
+  public void testExpansion(TestContext context) throws BrickdException {
+    for (int count : new int[] {100000, 400000}) {
+      long bytes = configBytes(context, count);
+      context.assertTrue(bytes <= MAX_CONFIG_BYTES, count + " devices, bytes per config " + bytes);
+    }
+  }
+
+  /*
+   * Starts a template of count devices in its own Vert.x and hands the heap per device to done.
+   */
+  private void startupBytes(TestContext context, int count, Handler<Long> done) {
+    Vertx vertx = Vertx.vertx();
+    JsonObject emuconfig = new JsonObject().put("deviceHosts", 1)
+        .put("devices", new JsonArray().add(template(count)));
+    long before = usedHeap();
+    vertx.deployVerticle("org.m1theo.tfemulator.Brickd",
+        new DeploymentOptions().setConfig(emuconfig), context.asyncAssertSuccess(id -> {
+          long bytes = (usedHeap() - before) / count;
+          vertx.close(context.asyncAssertSuccess(v -> done.handle(bytes)));
+        }));
+  }
+
+  @Test
+  public void testStartup(TestContext context) {
+    Async async = context.async();
+    startupBytes(context, 1000, small -> startupBytes(context, 4000, large -> {
+      context.assertTrue(large <= small * 5 / 4,
+          "bytes per device, 1000 devices: " + small + ", 4000 devices: " + large);
+      async.complete();
+    }));
+  }
+}
@@ -0,0 +1,100 @@
+package org.m1theo.tfemulator.testshandmade;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.devices.BrickletTemperature;
+import org.m1theo.tfemulator.protocol.FrameDecoder;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/*
+ * A template for 300 devices next to a single device, with and without device hosts: enumerate
+ * finds all of them with the connected uid and position of the template.
+ */
+@RunWith(VertxUnitRunner.class)
+public class DeviceTemplateTest {
+  private final static String HOST = "localhost";
+  private final static int PORT = 1234;
+  private final static int COUNT = 300;
+  private final static long FIRST = 50000;
+  private final static String MASTER = "g1";
+
+  Vertx vertx;
+
+  @After
+  public void after(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  private void testTemplate(TestContext context, int deviceHosts) {
+    JsonObject emuconfig = new JsonObject().put("deviceHosts", deviceHosts).put("devices",
+        new JsonArray()
+            .add(new JsonObject().put("type", "BrickletTemperature").put("count", COUNT)
+                .put("uidFrom", Utils.base58Encode(FIRST)).put("connectedUid", MASTER)
+                .put("position", "c").put("enabled", true))
+            .add(new JsonObject().put("type", "BrickletTemperature").put("uid", "g2")
+                .put("enabled", true)));
+    vertx = Vertx.vertx();
+    Async async = context.async();
+    Set<Integer> enumerated = new HashSet<>();
+    vertx.deployVerticle("org.m1theo.tfemulator.Brickd",
+        new DeploymentOptions().setConfig(emuconfig), context.asyncAssertSuccess(id -> {
+          vertx.createNetClient().connect(PORT, HOST, context.asyncAssertSuccess(socket -> {
+            socket.handler(new FrameDecoder(packet -> {
+              if (packet.getFunctionId() == CommonServices.CALLBACK_ENUMERATE) {
+                long uid = packet.getUidValue() & 0xFFFFFFFFL;
+                Buffer payload = packet.copyPayload();
+                if (uid != Utils.uid2long("g2")) {
+                  context.assertTrue(uid >= FIRST && uid < FIRST + COUNT);
+                  context.assertEquals(MASTER, payload.getString(8, 8 + MASTER.length()));
+                  context.assertEquals((byte) 'c', payload.getByte(16));
+                }
+                enumerated.add(packet.getUidValue());
+                if (enumerated.size() == COUNT + 1) {
+                  // a device of the template answers requests
+                  socket.write(Utils.createHeader(FIRST + COUNT - 1, (byte) 8,
+                      BrickletTemperature.FUNCTION_GET_TEMPERATURE, (byte) 0x18, (byte) 0));
+                }
+              } else if (packet.getFunctionId() == BrickletTemperature.FUNCTION_GET_TEMPERATURE) {
+                async.complete();
+              }
+            })::handle);
+            socket.write(Utils.createHeader(0, (byte) 8, CommonServices.FUNCTION_ENUMERATE,
+                (byte) 0x10, (byte) 0));
+          }));
+        }));
+  }
+
+  @Test
+  public void testTemplate(TestContext context) {
+    testTemplate(context, 0);
+  }
+
+  @Test
+  public void testTemplateDeviceHosts(TestContext context) {
+    testTemplate(context, 3);
+  }
+
+  @Test
+  public void testInvalidTemplate(TestContext context) {
+    vertx = Vertx.vertx();
+    JsonObject emuconfig = new JsonObject().put("devices", new JsonArray().add(new JsonObject()
+        .put("type", "BrickletTemperature").put("count", 10).put("uidFrom", 100)
+        .put("uidTo", 104).put("enabled", true)));
+    vertx.deployVerticle("org.m1theo.tfemulator.Brickd",
+        new DeploymentOptions().setConfig(emuconfig), context.asyncAssertFailure());
+  }
+}
@@ -0,0 +1,88 @@
+package org.m1theo.tfemulator.testshandmade;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.devices.BrickletTemperature;
+import org.m1theo.tfemulator.protocol.FrameDecoder;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.NetSocket;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/*
+ * getIdentity and enumerate send the identity that is built when the device starts, repeated
+ * requests get the same bytes.
+ */
+@RunWith(VertxUnitRunner.class)
+public class IdentityTest {
+  private final static String UID = "a4";
+  private final static String HOST = "localhost";
+  private final static int PORT = 1234;
+
+  Vertx vertx;
+
+  @Before
+  public void before(TestContext context) {
+    JsonObject emuconfig = new JsonObject().put("devices", new JsonArray().add(
+        new JsonObject().put("type", "BrickletTemperature").put("uid", UID).put("enabled", true)));
+    DeploymentOptions deploymentOptions = new DeploymentOptions().setConfig(emuconfig);
+
+    vertx = Vertx.vertx();
+    Async async = context.async();
+    vertx.deployVerticle("org.m1theo.tfemulator.Brickd", deploymentOptions, res -> {
+      vertx.setTimer(500, t -> async.complete());
+    });
+  }
+
+  @After
+  public void after(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  @Test
+  public void testIdentity(TestContext context) {
+    Buffer getIdentity = Utils.createHeader(Utils.uid2long(UID), (byte) 8,
+        BrickletTemperature.FUNCTION_GET_IDENTITY, (byte) 0x18, (byte) 0);
+    Buffer enumerate =
+        Utils.createHeader(0, (byte) 8, CommonServices.FUNCTION_ENUMERATE, (byte) 0x10, (byte) 0);
+    Buffer expected = Utils.getIdentityPayload(UID, Utils.uid2long(UID),
+        BrickletTemperature.DEVICE_IDENTIFIER);
+    int[] received = new int[2];
+    Async async = context.async();
+    FrameDecoder decoder = new FrameDecoder(packet -> {
+      Buffer payload = packet.copyPayload();
+      if (packet.getFunctionId() == BrickletTemperature.FUNCTION_GET_IDENTITY) {
+        context.assertEquals(8 + Utils.IDENTITY_LENGTH, packet.getLength());
+        context.assertEquals(expected, payload);
+        received[0]++;
+      } else {
+        context.assertEquals(CommonServices.CALLBACK_ENUMERATE, packet.getFunctionId());
+        context.assertEquals(Utils.ENUMERATE_LENGTH, packet.getLength());
+        context.assertEquals(expected, payload.getBuffer(0, Utils.IDENTITY_LENGTH));
+        received[1]++;
+      }
+      if (received[0] == 3 && received[1] == 2) {
+        async.complete();
+      }
+    });
+    vertx.createNetClient().connect(PORT, HOST, res -> {
+      NetSocket socket = res.result();
+      socket.handler(decoder::handle);
+      for (int i = 0; i < 3; i++) {
+        socket.write(getIdentity);
+      }
+      socket.write(enumerate);
+      socket.write(enumerate);
+    });
+  }
+}
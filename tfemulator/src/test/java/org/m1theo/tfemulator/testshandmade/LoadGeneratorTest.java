@@ -0,0 +1,133 @@
+package org.m1theo.tfemulator.testshandmade;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.m1theo.tfemulator.BrickdException;
+import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.load.LoadGenerator;
+import org.m1theo.tfemulator.load.LoadReport;
+import org.m1theo.tfemulator.load.Scenario;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/*
+ * The load generator against an emulator with a fleet of temperature bricklets: the responses,
+ * latencies and callbacks arrive with both clients, and a rate limits the requests.
+ */
+@RunWith(VertxUnitRunner.class)
+public class LoadGeneratorTest {
+  private final static int PORT = 1242;
+  private final static int DEVICES = 50;
+
+  Vertx vertx;
+
+  @Before
+  public void before(TestContext context) {
+    JsonObject emuconfig = new JsonObject().put("port", PORT).put("devices",
+        new JsonArray().add(new JsonObject().put("type", "BrickletTemperature")
+            .put("uidFrom", Utils.base58Encode(150000)).put("count", DEVICES)
+            .put("enabled", true)));
+    vertx = Vertx.vertx();
+    vertx.deployVerticle("org.m1theo.tfemulator.Brickd",
+        new DeploymentOptions().setConfig(emuconfig), context.asyncAssertSuccess());
+  }
+
+  @After
+  public void after(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  private static JsonObject scenario(String client) {
+    return new JsonObject().put("port", PORT).put("client", client).put("warmup", 0)
+        .put("duration", 1).put("timeout", 500)
+        .put("devices", new JsonArray().add(new JsonObject().put("type", "BrickletTemperature")
+            .put("uidFrom", Utils.base58Encode(150000)).put("count", DEVICES)))
+        .put("mix", new JsonArray()
+            .add(new JsonObject().put("call", "getTemperature").put("weight", 9))
+            .add(new JsonObject().put("call", "setDebouncePeriod")
+                .put("args", new JsonArray().add(100)).put("payload", "64000000")))
+        .put("callbacks",
+            new JsonArray().add(new JsonObject().put("call", "setTemperatureCallbackPeriod")
+                .put("args", new JsonArray().add(50)).put("payload", "32000000")
+                .put("listener", "TemperatureListener")));
+  }
+
+  /*
+   * Runs the scenario on a worker thread, the load generator blocks until it is done.
+   */
+  private void run(TestContext context, JsonObject conf, Handler<LoadReport> done) {
+    vertx.<LoadReport>executeBlocking(future -> {
+      try {
+        future.complete(LoadGenerator.run(new Scenario(conf)));
+      } catch (Exception e) {
+        future.fail(e);
+      }
+    }, context.asyncAssertSuccess(done));
+  }
+
+  @Test
+  public void testRawClient(TestContext context) {
+    Async async = context.async();
+    run(context, scenario("raw").put("connections", 4).put("inFlight", 4), report -> {
+      context.assertTrue(report.requests() > 100, report.toString());
+      context.assertEquals(report.requests(), report.responses(), report.toString());
+      context.assertEquals(0L, report.errors());
+      context.assertEquals(0L, report.lost());
+      context.assertTrue(report.callbacks() > 0, report.toString());
+      context.assertEquals(report.responses(), report.latency().count());
+      context.assertEquals(report.responses(),
+          report.latency(0).count() + report.latency(1).count());
+      context.assertTrue(report.latency(0).count() > report.latency(1).count());
+      context.assertTrue(report.latency().percentile(50) <= report.latency().percentile(99.99));
+      context.assertTrue(report.latency().percentile(99.99) <= report.latency().max());
+      async.complete();
+    });
+  }
+
+  @Test
+  public void testIpConnectionClient(TestContext context) {
+    Async async = context.async();
+    run(context, scenario("ipconnection").put("connections", 2), report -> {
+      context.assertTrue(report.requests() > 10, report.toString());
+      context.assertEquals(report.requests(), report.responses(), report.toString());
+      context.assertEquals(0L, report.errors());
+      context.assertEquals(0L, report.lost());
+      context.assertEquals(0L, report.connectFailures());
+      context.assertTrue(report.callbacks() > 0, report.toString());
+      async.complete();
+    });
+  }
+
+  @Test
+  public void testRate(TestContext context) {
+    Async async = context.async();
+    run(context, scenario("raw").put("connections", 2).put("rate", 200), report -> {
+      // 2 connections with 200 requests per second for one second
+      context.assertTrue(report.requests() >= 360 && report.requests() <= 440,
+          report.toString());
+      context.assertEquals(report.requests(), report.responses(), report.toString());
+      async.complete();
+    });
+  }
+
+  @Test
+  public void testInvalidScenario(TestContext context) throws InterruptedException {
+    JsonObject conf = scenario("raw");
+    conf.getJsonArray("mix").add(new JsonObject().put("call", "getNothing"));
+    try {
+      LoadGenerator.run(new Scenario(conf));
+      context.fail("a call no device has was accepted");
+    } catch (BrickdException e) {
+      // expected
+    }
+  }
+}
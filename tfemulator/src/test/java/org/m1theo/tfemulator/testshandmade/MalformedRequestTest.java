@@ -0,0 +1,156 @@
+package org.m1theo.tfemulator.testshandmade;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.devices.BrickletTemperature;
+import org.m1theo.tfemulator.protocol.FrameDecoder;
+import org.m1theo.tfemulator.protocol.Packet;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.NetClient;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/*
+ * Requests a device can't carry out are answered with the error code in the flags if a response
+ * is expected, and ignored otherwise.
+ */
+@RunWith(VertxUnitRunner.class)
+public class MalformedRequestTest {
+  private final static String UID = "h6";
+  private final static String HOST = "localhost";
+  private final static int PORT = 1234;
+
+  Vertx vertx;
+  // kept, an unreachable NetClient closes its sockets when it is finalized
+  NetClient client;
+
+  @Before
+  public void before(TestContext context) {
+    JsonObject emuconfig = new JsonObject().put("devices", new JsonArray().add(
+        new JsonObject().put("type", "BrickletTemperature").put("uid", UID).put("enabled", true)));
+    vertx = Vertx.vertx();
+    vertx.deployVerticle("org.m1theo.tfemulator.Brickd",
+        new DeploymentOptions().setConfig(emuconfig), context.asyncAssertSuccess());
+  }
+
+  @After
+  public void after(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  private static Buffer request(byte functionId, boolean responseExpected, Buffer payload) {
+    int length = 8 + (payload != null ? payload.length() : 0);
+    Buffer request = Utils.createHeader(Utils.uid2long(UID), (byte) length, functionId,
+        (byte) (responseExpected ? 0x18 : 0x10), (byte) 0);
+    return payload != null ? request.appendBuffer(payload) : request;
+  }
+
+  /*
+   * Sends the requests, done gets the responses once the last request is answered.
+   */
+  private void send(TestContext context, List<Buffer> requests, Handler<List<Packet>> done) {
+    List<Packet> responses = new ArrayList<>();
+    byte last = requests.get(requests.size() - 1).getByte(5);
+    client = vertx.createNetClient();
+    client.connect(PORT, HOST, context.asyncAssertSuccess(socket -> {
+      socket.handler(new FrameDecoder(packet -> {
+        responses.add(packet.copy());
+        if (packet.getFunctionId() == last) {
+          done.handle(responses);
+        }
+      })::handle);
+      for (Buffer request : requests) {
+        socket.write(request);
+      }
+    }));
+  }
+
+  @Test
+  public void testUnknownFunction(TestContext context) {
+    Async async = context.async();
+    List<Buffer> requests = new ArrayList<>();
+    requests.add(request((byte) 201, false, null));
+    requests.add(request((byte) 200, true, null));
+    requests.add(request(BrickletTemperature.FUNCTION_GET_TEMPERATURE, true, null));
+    send(context, requests, responses -> {
+      context.assertEquals(2, responses.size());
+      Packet error = responses.get(0);
+      context.assertEquals((byte) 200, error.getFunctionId());
+      context.assertEquals(8, error.getLength());
+      context.assertEquals(Packet.ERROR_FUNCTION_NOT_SUPPORTED, error.getErrorCode());
+      context.assertEquals((byte) 0, responses.get(1).getErrorCode());
+      async.complete();
+    });
+  }
+
+  @Test
+  public void testShortCallbackPeriod(TestContext context) {
+    Async async = context.async();
+    List<Buffer> requests = new ArrayList<>();
+    byte set = BrickletTemperature.FUNCTION_SET_TEMPERATURE_CALLBACK_PERIOD;
+    byte get = BrickletTemperature.FUNCTION_GET_TEMPERATURE_CALLBACK_PERIOD;
+    // no payload, a short one, one without response, then a valid one
+    requests.add(request(set, true, null));
+    requests.add(request(set, true, Buffer.buffer(Utils.getUInt16(500))));
+    requests.add(request(set, false, Buffer.buffer(Utils.getUInt16(500))));
+    requests.add(request(get, true, null));
+    requests.add(request(set, true, Buffer.buffer(Utils.getUInt32(500))));
+    requests.add(request(get, true, null));
+    send(context, requests, responses -> {
+      if (responses.size() < 5) {
+        return;
+      }
+      context.assertEquals(5, responses.size());
+      context.assertEquals(Packet.ERROR_INVALID_PARAMETER, responses.get(0).getErrorCode());
+      context.assertEquals(Packet.ERROR_INVALID_PARAMETER, responses.get(1).getErrorCode());
+      // the period is still the one before
+      Packet period = responses.get(2);
+      context.assertEquals((byte) 0, period.getErrorCode());
+      context.assertEquals(12, period.getLength());
+      context.assertEquals((byte) 0, responses.get(3).getErrorCode());
+      context.assertEquals(500L, Utils.decodeUInt32(responses.get(4).copyPayload(), 0));
+      async.complete();
+    });
+  }
+
+  @Test
+  public void testShortThresholdAndDebounce(TestContext context) {
+    Async async = context.async();
+    List<Buffer> requests = new ArrayList<>();
+    byte setThreshold = BrickletTemperature.FUNCTION_SET_TEMPERATURE_CALLBACK_THRESHOLD;
+    byte setDebounce = BrickletTemperature.FUNCTION_SET_DEBOUNCE_PERIOD;
+    requests.add(request(setThreshold, true, null));
+    requests.add(request(setThreshold, true, Buffer.buffer().appendByte((byte) '>')
+        .appendBytes(Utils.getUInt16(2000))));
+    requests.add(request(setDebounce, true, null));
+    requests.add(request(setDebounce, true, Buffer.buffer(Utils.getUInt16(10))));
+    requests.add(request(BrickletTemperature.FUNCTION_GET_TEMPERATURE_CALLBACK_THRESHOLD, true,
+        null));
+    requests.add(request(BrickletTemperature.FUNCTION_GET_DEBOUNCE_PERIOD, true, null));
+    send(context, requests, responses -> {
+      context.assertEquals(6, responses.size());
+      for (int i = 0; i < 4; i++) {
+        context.assertEquals(Packet.ERROR_INVALID_PARAMETER, responses.get(i).getErrorCode());
+      }
+      // still the former values
+      context.assertEquals(8 + 5, responses.get(4).getLength());
+      context.assertEquals((byte) 0, responses.get(4).getErrorCode());
+      context.assertEquals(8 + 4, responses.get(5).getLength());
+      context.assertEquals((byte) 0, responses.get(5).getErrorCode());
+      async.complete();
+    });
+  }
+}
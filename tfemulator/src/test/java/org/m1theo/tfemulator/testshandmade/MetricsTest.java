@@ -0,0 +1,146 @@
+package org.m1theo.tfemulator.testshandmade;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.devices.BrickletTemperature;
+import org.m1theo.tfemulator.metrics.MetricsServer;
+import org.m1theo.tfemulator.protocol.FrameDecoder;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.NetClient;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/*
+ * The requests and callbacks of the devices and the bytes of the connections show up on the
+ * Prometheus endpoint and over JMX, and nothing is recorded without the metrics config.
+ */
+@RunWith(VertxUnitRunner.class)
+public class MetricsTest {
+  private final static String HOST = "localhost";
+  private final static int PORT = 1243;
+  private final static int METRICS_PORT = 9101;
+  private final static int REQUESTS = 20;
+
+  Vertx vertx;
+  // kept, an unreachable NetClient closes its sockets when it is finalized
+  NetClient client;
+
+  @After
+  public void after(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  private void deploy(TestContext context, JsonObject metrics, Handler<Void> deployed) {
+    JsonObject emuconfig = new JsonObject().put("port", PORT).put("devices",
+        new JsonArray()
+            .add(new JsonObject().put("type", "BrickletTemperature").put("uid", "f1")
+                .put("enabled", true))
+            .add(new JsonObject().put("type", "BrickletTemperature").put("uid", "f2")
+                .put("enabled", true)));
+    if (metrics != null) {
+      emuconfig.put("metrics", metrics);
+    }
+    vertx = Vertx.vertx();
+    vertx.deployVerticle("org.m1theo.tfemulator.Brickd",
+        new DeploymentOptions().setConfig(emuconfig),
+        context.asyncAssertSuccess(id -> deployed.handle(null)));
+  }
+
+  /*
+   * Asks f1 REQUESTS times for the temperature and turns on its temperature callback, calls done
+   * when the answers are there and some callbacks came in.
+   */
+  private void load(TestContext context, Handler<Void> done) {
+    long uid = Utils.uid2long("f1");
+    client = vertx.createNetClient();
+    client.connect(PORT, HOST, context.asyncAssertSuccess(socket -> {
+      int[] responses = new int[1];
+      socket.handler(new FrameDecoder(packet -> {
+        if (packet.getFunctionId() == BrickletTemperature.FUNCTION_GET_TEMPERATURE
+            && ++responses[0] == REQUESTS) {
+          vertx.setTimer(300, t -> done.handle(null));
+        }
+      }));
+      socket.write(Utils.createHeader(uid, (byte) 12,
+          BrickletTemperature.FUNCTION_SET_TEMPERATURE_CALLBACK_PERIOD, (byte) 0x10, (byte) 0)
+          .appendBuffer(Buffer.buffer(Utils.getUInt32(20))));
+      for (int i = 0; i < REQUESTS; i++) {
+        socket.write(Utils.createHeader(uid, (byte) 8,
+            BrickletTemperature.FUNCTION_GET_TEMPERATURE, (byte) 0x18, (byte) 0));
+      }
+    }));
+  }
+
+  @Test
+  public void testPrometheusAndJmx(TestContext context) {
+    Async async = context.async();
+    deploy(context,
+        new JsonObject().put("port", METRICS_PORT).put("jmxName", "metricstest"), v -> {
+          load(context, v2 -> {
+            vertx.createHttpClient().getNow(METRICS_PORT, HOST, "/metrics", response -> {
+              context.assertEquals(200, response.statusCode());
+              response.bodyHandler(body -> {
+                String metrics = body.toString();
+                context.assertTrue(metrics.contains(
+                    "tfemulator_request_duration_seconds_count{listener=\"\",uid=\"f1\","
+                        + "function=\"1\"} " + REQUESTS),
+                    metrics);
+                context.assertTrue(metrics.contains(
+                    "tfemulator_request_duration_seconds_bucket{listener=\"\",uid=\"f1\","
+                        + "function=\"1\",le=\"+Inf\"} " + REQUESTS));
+                context.assertTrue(metrics.contains(
+                    "tfemulator_request_duration_seconds_count{listener=\"\",uid=\"f1\","
+                        + "function=\"2\"} 1"));
+                context.assertTrue(metrics.contains(
+                    "tfemulator_callbacks_total{listener=\"\",uid=\"f1\",function=\"8\"}"));
+                context.assertFalse(metrics.contains("uid=\"f2\""));
+                context.assertTrue(metrics.contains("tfemulator_connections{listener=\"\"} 1"));
+                context.assertTrue(metrics.contains("tfemulator_device_queue_depth"));
+                // 20 requests and the setter
+                context.assertTrue(metrics.matches(
+                    "(?s).*tfemulator_connection_received_bytes_total\\{listener=\"\","
+                        + "connection=\"[^\"]*\"\\} " + (REQUESTS * 8 + 12) + "\n.*"));
+                try {
+                  ObjectName name = new ObjectName(
+                      "org.m1theo.tfemulator:type=Metrics,name=\"metricstest\"");
+                  long requests = (Long) ManagementFactory.getPlatformMBeanServer()
+                      .getAttribute(name, "Requests");
+                  context.assertEquals((long) REQUESTS + 1, requests);
+                  long callbacks = (Long) ManagementFactory.getPlatformMBeanServer()
+                      .getAttribute(name, "Callbacks");
+                  context.assertTrue(callbacks > 0);
+                } catch (Exception e) {
+                  context.fail(e);
+                }
+                async.complete();
+              });
+            });
+          });
+        });
+  }
+
+  @Test
+  public void testDisabled(TestContext context) {
+    Async async = context.async();
+    deploy(context, null, v -> {
+      load(context, v2 -> {
+        String metrics = MetricsServer.scrape(vertx);
+        context.assertFalse(metrics.contains("uid=\"f1\""), metrics);
+        async.complete();
+      });
+    });
+  }
+}
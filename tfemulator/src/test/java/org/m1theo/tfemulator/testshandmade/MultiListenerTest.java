@@ -0,0 +1,131 @@
+package org.m1theo.tfemulator.testshandmade;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.devices.BrickletTemperature;
+import org.m1theo.tfemulator.protocol.FrameDecoder;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.NetSocket;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/*
+ * Two listeners in one Brickd: each connection only sees the devices of its own listener, even
+ * when both listeners have a device with the same uid.
+ */
+@RunWith(VertxUnitRunner.class)
+public class MultiListenerTest {
+  private final static String HOST = "localhost";
+  private final static int PORT1 = 1235;
+  private final static int PORT2 = 1236;
+
+  Vertx vertx;
+
+  private static JsonObject temperature(String uid) {
+    return new JsonObject().put("type", "BrickletTemperature").put("uid", uid).put("enabled",
+        true);
+  }
+
+  private void deploy(TestContext context, int deviceHosts, Handler<Void> deployed) {
+    JsonObject emuconfig = new JsonObject().put("deviceHosts", deviceHosts).put("listeners",
+        new JsonArray()
+            .add(new JsonObject().put("name", "site1").put("port", PORT1).put("devices",
+                new JsonArray().add(temperature("d1")).add(temperature("d2"))))
+            .add(new JsonObject().put("name", "site2").put("port", PORT2).put("devices",
+                new JsonArray().add(temperature("d1")))));
+    vertx = Vertx.vertx();
+    vertx.deployVerticle("org.m1theo.tfemulator.Brickd",
+        new DeploymentOptions().setConfig(emuconfig), context.asyncAssertSuccess(id -> {
+          vertx.setTimer(500, t -> deployed.handle(null));
+        }));
+  }
+
+  @After
+  public void after(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  /*
+   * Enumerates the devices of the listener on port, calls done with their uids.
+   */
+  private void enumerate(int port, Handler<Set<Integer>> done) {
+    Set<Integer> uids = new HashSet<>();
+    vertx.createNetClient().connect(port, HOST, res -> {
+      NetSocket socket = res.result();
+      socket.handler(new FrameDecoder(packet -> {
+        if (packet.getFunctionId() == CommonServices.CALLBACK_ENUMERATE) {
+          uids.add(packet.getUidValue());
+        }
+      })::handle);
+      socket.write(Utils.createHeader(0, (byte) 8, CommonServices.FUNCTION_ENUMERATE,
+          (byte) 0x10, (byte) 0));
+      vertx.setTimer(300, t -> {
+        socket.close();
+        done.handle(uids);
+      });
+    });
+  }
+
+  private void testEnumerate(TestContext context, int deviceHosts) {
+    Async async = context.async();
+    deploy(context, deviceHosts, v -> enumerate(PORT1, site1 -> {
+      context.assertEquals(2, site1.size());
+      context.assertTrue(site1.contains((int) Utils.uid2long("d2")));
+      enumerate(PORT2, site2 -> {
+        context.assertEquals(1, site2.size());
+        context.assertTrue(site2.contains((int) Utils.uid2long("d1")));
+        async.complete();
+      });
+    }));
+  }
+
+  @Test
+  public void testEnumerate(TestContext context) {
+    testEnumerate(context, 0);
+  }
+
+  @Test
+  public void testEnumerateDeviceHosts(TestContext context) {
+    testEnumerate(context, 2);
+  }
+
+  @Test
+  public void testCallbacksStayOnTheirListener(TestContext context) {
+    Async async = context.async();
+    deploy(context, 0, v -> vertx.createNetClient().connect(PORT1, HOST, res1 -> {
+      NetSocket site1 = res1.result();
+      site1.handler(new FrameDecoder(packet -> {
+        context.fail("site1 got a packet: " + packet);
+      })::handle);
+      vertx.createNetClient().connect(PORT2, HOST, res2 -> {
+        NetSocket site2 = res2.result();
+        int[] callbacks = new int[1];
+        site2.handler(new FrameDecoder(packet -> {
+          context.assertEquals(BrickletTemperature.CALLBACK_TEMPERATURE, packet.getFunctionId());
+          callbacks[0]++;
+        })::handle);
+        Buffer setPeriod = Utils.createHeader(Utils.uid2long("d1"), (byte) 12,
+            BrickletTemperature.FUNCTION_SET_TEMPERATURE_CALLBACK_PERIOD, (byte) 0x10, (byte) 0)
+            .appendBytes(Utils.getUInt32(10));
+        site2.write(setPeriod);
+        vertx.setTimer(300, t -> {
+          context.assertTrue(callbacks[0] > 5);
+          async.complete();
+        });
+      });
+    }));
+  }
+}
@@ -0,0 +1,88 @@
+package org.m1theo.tfemulator.testshandmade;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.m1theo.tfemulator.OutboundQueue;
+import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.devices.BrickletTemperature;
+import org.m1theo.tfemulator.protocol.FrameDecoder;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.NetClient;
+import io.vertx.core.net.NetSocket;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/*
+ * The answers to a burst of requests are written in a few socket writes, every packet arrives
+ * complete and in order.
+ */
+@RunWith(VertxUnitRunner.class)
+public class OutboundQueueTest {
+  private final static String UID = "a7";
+  private final static String HOST = "localhost";
+  private final static int PORT = 1234;
+  private final static int REQUESTS = 50;
+
+  Vertx vertx;
+  // kept, an unreachable NetClient closes its sockets when it is finalized
+  NetClient client;
+
+  @Before
+  public void before(TestContext context) {
+    JsonObject emuconfig = new JsonObject()
+        .put("outbound", new JsonObject().put("maxDelay", 20))
+        .put("devices", new JsonArray().add(new JsonObject().put("type", "BrickletTemperature")
+            .put("uid", UID).put("enabled", true)));
+    DeploymentOptions deploymentOptions = new DeploymentOptions().setConfig(emuconfig);
+
+    vertx = Vertx.vertx();
+    Async async = context.async();
+    vertx.deployVerticle("org.m1theo.tfemulator.Brickd", deploymentOptions, res -> {
+      vertx.setTimer(500, t -> async.complete());
+    });
+  }
+
+  @After
+  public void after(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  @Test
+  public void testCoalescing(TestContext context) {
+    Buffer requests = Buffer.buffer();
+    for (int i = 0; i < REQUESTS; i++) {
+      requests.appendBuffer(Utils.createHeader(Utils.uid2long(UID), (byte) 8,
+          BrickletTemperature.FUNCTION_GET_TEMPERATURE, (byte) (((i % 15) + 1) << 4 | 0x08),
+          (byte) 0));
+    }
+    AtomicInteger answers = new AtomicInteger();
+    Async async = context.async();
+    FrameDecoder decoder = new FrameDecoder(packet -> {
+      int i = answers.getAndIncrement();
+      context.assertEquals(BrickletTemperature.FUNCTION_GET_TEMPERATURE, packet.getFunctionId());
+      context.assertEquals((byte) ((i % 15) + 1), packet.getSequenceNumber());
+      if (i + 1 == REQUESTS) {
+        OutboundQueue.Stats stats = OutboundQueue.Stats.get(vertx);
+        context.assertEquals((long) REQUESTS, stats.packets());
+        context.assertTrue(stats.packetsPerFlush() > 5, "per flush: " + stats.packetsPerFlush());
+        async.complete();
+      }
+    });
+    client = vertx.createNetClient();
+    client.connect(PORT, HOST, res -> {
+      NetSocket socket = res.result();
+      socket.handler(decoder::handle);
+      socket.write(requests);
+    });
+  }
+}
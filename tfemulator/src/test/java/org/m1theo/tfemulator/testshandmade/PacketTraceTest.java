@@ -0,0 +1,58 @@
+package org.m1theo.tfemulator.testshandmade;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.m1theo.tfemulator.BrickdException;
+import org.m1theo.tfemulator.protocol.PacketTrace;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/*
+ * The packet trace logs every packet by default and about 1 in sample packets when it is sampled.
+ * The test logging config has the packets logger at debug.
+ */
+public class PacketTraceTest {
+  private final static int CALLS = 100000;
+
+  Vertx vertx;
+
+  @Before
+  public void before() {
+    vertx = Vertx.vertx();
+  }
+
+  @After
+  public void after() {
+    vertx.close();
+  }
+
+  private int sampled(PacketTrace trace) {
+    int sampled = 0;
+    for (int i = 0; i < CALLS; i++) {
+      if (trace.sampled()) {
+        sampled++;
+      }
+    }
+    return sampled;
+  }
+
+  @Test
+  public void testSampling() throws BrickdException {
+    PacketTrace trace = PacketTrace.get(vertx);
+    assertEquals(CALLS, sampled(trace));
+    trace.configure(new JsonObject().put("sample", 100));
+    assertEquals(100, PacketTrace.get(vertx).sample());
+    int sampled = sampled(trace);
+    assertTrue("sampled " + sampled, sampled > CALLS / 200 && sampled < CALLS / 50);
+  }
+
+  @Test(expected = BrickdException.class)
+  public void testInvalidSample() throws BrickdException {
+    PacketTrace.get(vertx).configure(new JsonObject().put("sample", 0));
+  }
+}
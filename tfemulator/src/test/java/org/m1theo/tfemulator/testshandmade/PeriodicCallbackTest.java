@@ -0,0 +1,92 @@
+package org.m1theo.tfemulator.testshandmade;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.devices.BrickletTemperature;
+import org.m1theo.tfemulator.protocol.FrameDecoder;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.NetSocket;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/*
+ * A callback period set by the client starts the callback, a period of 0 stops it again.
+ */
+@RunWith(VertxUnitRunner.class)
+public class PeriodicCallbackTest {
+  private final static String UID = "a2";
+  private final static String HOST = "localhost";
+  private final static int PORT = 1234;
+
+  Vertx vertx;
+
+  @Before
+  public void before(TestContext context) {
+    JsonObject emuconfig = new JsonObject().put("devices", new JsonArray().add(
+        new JsonObject().put("type", "BrickletTemperature").put("uid", UID).put("enabled", true)));
+    DeploymentOptions deploymentOptions = new DeploymentOptions().setConfig(emuconfig);
+
+    vertx = Vertx.vertx();
+    Async async = context.async();
+    vertx.deployVerticle("org.m1theo.tfemulator.Brickd", deploymentOptions, res -> {
+      vertx.setTimer(500, t -> async.complete());
+    });
+  }
+
+  @After
+  public void after(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  private Buffer setPeriod(long period) {
+    return Utils.createHeader(Utils.uid2long(UID), (byte) 12,
+        BrickletTemperature.FUNCTION_SET_TEMPERATURE_CALLBACK_PERIOD, (byte) 0x18, (byte) 0)
+        .appendBytes(Utils.getUInt32(period));
+  }
+
+  @Test
+  public void testCallbackPeriod(TestContext context) {
+    AtomicInteger callbacks = new AtomicInteger();
+    AtomicInteger answers = new AtomicInteger();
+    FrameDecoder decoder = new FrameDecoder(packet -> {
+      if (packet.getFunctionId() == BrickletTemperature.CALLBACK_TEMPERATURE) {
+        context.assertEquals(10, packet.getLength());
+        context.assertEquals((byte) 0, packet.getSequenceNumber());
+        callbacks.incrementAndGet();
+      } else if (packet.getFunctionId() == BrickletTemperature.FUNCTION_SET_TEMPERATURE_CALLBACK_PERIOD) {
+        answers.incrementAndGet();
+      }
+    });
+    Async async = context.async();
+    vertx.createNetClient().connect(PORT, HOST, res -> {
+      NetSocket socket = res.result();
+      socket.handler(decoder::handle);
+      socket.write(setPeriod(10));
+      vertx.setTimer(300, t1 -> {
+        int running = callbacks.get();
+        // 30 at most, the timers of a loaded machine are late rather than early
+        context.assertTrue(running >= 10 && running <= 31, "callbacks: " + running);
+        socket.write(setPeriod(0));
+        vertx.setTimer(100, t2 -> {
+          int stopped = callbacks.get();
+          vertx.setTimer(200, t3 -> {
+            context.assertEquals(stopped, callbacks.get());
+            context.assertEquals(2, answers.get());
+            async.complete();
+          });
+        });
+      });
+    });
+  }
+}
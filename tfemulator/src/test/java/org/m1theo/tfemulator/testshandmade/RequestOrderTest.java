@@ -0,0 +1,77 @@
+package org.m1theo.tfemulator.testshandmade;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.devices.BrickletTemperature;
+import org.m1theo.tfemulator.protocol.FrameDecoder;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.NetClient;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/*
+ * A burst of requests far larger than the inbox ring of the device context, so part of it goes
+ * through the overflow, is handled in order: every get returns the period of the set before it.
+ */
+@RunWith(VertxUnitRunner.class)
+public class RequestOrderTest {
+  private final static String UID = "h7";
+  private final static String HOST = "localhost";
+  private final static int PORT = 1234;
+  private final static int PAIRS = 1000;
+
+  Vertx vertx;
+  // kept, an unreachable NetClient closes its sockets when it is finalized
+  NetClient client;
+
+  @Before
+  public void before(TestContext context) {
+    JsonObject emuconfig = new JsonObject().put("devices", new JsonArray().add(
+        new JsonObject().put("type", "BrickletTemperature").put("uid", UID).put("enabled", true)));
+    vertx = Vertx.vertx();
+    vertx.deployVerticle("org.m1theo.tfemulator.Brickd",
+        new DeploymentOptions().setConfig(emuconfig), context.asyncAssertSuccess());
+  }
+
+  @After
+  public void after(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  @Test
+  public void testBurst(TestContext context) {
+    Async async = context.async();
+    long uid = Utils.uid2long(UID);
+    Buffer burst = Buffer.buffer();
+    for (int i = 1; i <= PAIRS; i++) {
+      burst.appendBuffer(Utils.createHeader(uid, (byte) 12,
+          BrickletTemperature.FUNCTION_SET_TEMPERATURE_CALLBACK_PERIOD, (byte) 0x10, (byte) 0)
+          .appendBytes(Utils.getUInt32(i)));
+      burst.appendBuffer(Utils.createHeader(uid, (byte) 8,
+          BrickletTemperature.FUNCTION_GET_TEMPERATURE_CALLBACK_PERIOD, (byte) 0x18, (byte) 0));
+    }
+    int[] expected = new int[] {1};
+    client = vertx.createNetClient();
+    client.connect(PORT, HOST, context.asyncAssertSuccess(socket -> {
+      socket.handler(new FrameDecoder(packet -> {
+        context.assertEquals(BrickletTemperature.FUNCTION_GET_TEMPERATURE_CALLBACK_PERIOD,
+            packet.getFunctionId());
+        context.assertEquals((long) expected[0],
+            Utils.decodeUInt32(packet.copyPayload(), 0));
+        if (expected[0]++ == PAIRS) {
+          async.complete();
+        }
+      })::handle);
+      socket.write(burst);
+    }));
+  }
+}
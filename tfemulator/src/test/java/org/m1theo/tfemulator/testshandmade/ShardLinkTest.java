@@ -0,0 +1,139 @@
+package org.m1theo.tfemulator.testshandmade;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.m1theo.tfemulator.OutboundQueue.Policy;
+import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.devices.BrickletTemperature;
+import org.m1theo.tfemulator.shard.ShardLink;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.NetClient;
+import io.vertx.core.net.NetServer;
+import io.vertx.core.net.NetSocket;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/*
+ * A shard link to a peer that stopped reading doesn't gather more than its high watermark: with
+ * the pause policy the source is paused until the peer reads again, with the drop policy the
+ * callbacks are dropped.
+ */
+@RunWith(VertxUnitRunner.class)
+public class ShardLinkTest {
+  private final static String HOST = "localhost";
+  private final static int PORT = 1245;
+  private final static long HIGH_WATERMARK = 64 * 1024;
+  private final static int BATCH = 100;
+  // far more than the socket buffers take
+  private final static long LIMIT = 256L * 1024 * 1024;
+
+  Vertx vertx;
+  NetServer server;
+  // kept, an unreachable NetClient closes its sockets when it is finalized
+  NetClient client;
+  NetSocket peer;
+
+  @Before
+  public void before(TestContext context) {
+    vertx = Vertx.vertx();
+    // the peer doesn't read until the test resumes it
+    server = vertx.createNetServer().connectHandler(socket -> {
+      socket.handler(buffer -> {
+      });
+      socket.pause();
+      peer = socket;
+    }).listen(PORT, HOST, context.asyncAssertSuccess());
+  }
+
+  @After
+  public void after(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  private void connect(TestContext context, Policy policy, Handler<Boolean> pauseHandler,
+      Handler<ShardLink> connected) {
+    JsonObject conf = new JsonObject().put("highWatermark", HIGH_WATERMARK);
+    client = vertx.createNetClient();
+    client.connect(PORT, HOST, context.asyncAssertSuccess(socket -> {
+      ShardLink[] link = new ShardLink[1];
+      link[0] = new ShardLink(vertx, socket, conf, policy, (connection, type, frame) -> {
+      }, pauseHandler);
+      connected.handle(link[0]);
+    }));
+  }
+
+  private static Buffer callback() {
+    return Utils.createHeader(Utils.uid2long("h2"), (byte) 10,
+        BrickletTemperature.CALLBACK_TEMPERATURE, (byte) 0, (byte) 0)
+        .appendBytes(Utils.getUInt16(2000));
+  }
+
+  @Test
+  public void testPause(TestContext context) {
+    Async async = context.async();
+    Buffer packet = callback();
+    AtomicLong written = new AtomicLong();
+    boolean[] stopped = new boolean[1];
+    connect(context, Policy.PAUSE, pause -> {
+      if (pause) {
+        stopped[0] = true;
+        // the source stops, the peer starts reading
+        peer.resume();
+      } else {
+        async.complete();
+      }
+    }, link -> {
+      vertx.setPeriodic(1, id -> {
+        if (stopped[0]) {
+          vertx.cancelTimer(id);
+          return;
+        }
+        context.assertTrue(written.get() < LIMIT, "never paused");
+        for (int i = 0; i < BATCH; i++) {
+          link.write(1, ShardLink.DATA, packet);
+          written.addAndGet(packet.length());
+        }
+        context.assertTrue(link.pending() <= HIGH_WATERMARK + BATCH * 32,
+            "pending: " + link.pending());
+      });
+    });
+  }
+
+  @Test
+  public void testDrop(TestContext context) {
+    Async async = context.async();
+    Buffer packet = callback();
+    AtomicLong written = new AtomicLong();
+    connect(context, Policy.DROP, pause -> context.fail("paused"), link -> {
+      vertx.setPeriodic(1, id -> {
+        for (int i = 0; i < BATCH; i++) {
+          link.write(1, ShardLink.DATA, packet);
+          written.addAndGet(packet.length());
+        }
+        context.assertTrue(link.pending() <= HIGH_WATERMARK + BATCH * 32,
+            "pending: " + link.pending());
+        if (written.get() > 4 * HIGH_WATERMARK && link.pending() > HIGH_WATERMARK / 2) {
+          // far behind without growing, let the peer catch up
+          vertx.cancelTimer(id);
+          peer.resume();
+          vertx.setPeriodic(10, id2 -> {
+            if (link.pending() == 0) {
+              vertx.cancelTimer(id2);
+              async.complete();
+            }
+          });
+        }
+        context.assertTrue(written.get() < LIMIT, "never fell behind");
+      });
+    });
+  }
+}
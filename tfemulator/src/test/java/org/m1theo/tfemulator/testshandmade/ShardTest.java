@@ -0,0 +1,122 @@
+package org.m1theo.tfemulator.testshandmade;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.devices.BrickletTemperature;
+import org.m1theo.tfemulator.protocol.FrameDecoder;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.NetSocket;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/*
+ * Two shards with one device each behind a front, every Vertx instance stands for one emulator
+ * process. The client of the front sees both devices.
+ */
+@RunWith(VertxUnitRunner.class)
+public class ShardTest {
+  private final static String UID1 = "e1";
+  private final static String UID2 = "e2";
+  private final static String HOST = "localhost";
+  private final static int PORT = 1234;
+
+  Vertx front;
+  Vertx shard1;
+  Vertx shard2;
+
+  private static Vertx deploy(TestContext context, JsonObject config, Handler<Void> deployed) {
+    Vertx vertx = Vertx.vertx();
+    vertx.deployVerticle("org.m1theo.tfemulator.Brickd",
+        new DeploymentOptions().setConfig(config), context.asyncAssertSuccess(id -> {
+          vertx.setTimer(500, t -> deployed.handle(null));
+        }));
+    return vertx;
+  }
+
+  private static JsonObject shard(String uid, int port, int linkPort) {
+    return new JsonObject().put("port", port)
+        .put("shard", new JsonObject().put("port", linkPort))
+        .put("devices", new JsonArray().add(new JsonObject().put("type", "BrickletTemperature")
+            .put("uid", uid).put("enabled", true)));
+  }
+
+  @Before
+  public void before(TestContext context) {
+    Async async = context.async();
+    shard1 = deploy(context, shard(UID1, 1237, 1240), v1 -> {
+      shard2 = deploy(context, shard(UID2, 1238, 1241), v2 -> {
+        // the front connects once the shards listen
+        front = deploy(context, new JsonObject().put("port", PORT).put("front",
+            new JsonObject().put("shards", new JsonArray()
+                .add(new JsonObject().put("port", 1240).put("from", UID1).put("to", UID1))
+                .add(new JsonObject().put("port", 1241).put("from", UID2).put("to", UID2)))),
+            v3 -> async.complete());
+      });
+    });
+  }
+
+  @After
+  public void after(TestContext context) {
+    front.close(context.asyncAssertSuccess());
+    shard1.close(context.asyncAssertSuccess());
+    shard2.close(context.asyncAssertSuccess());
+  }
+
+  @Test
+  public void testShardPortInUse(TestContext context) {
+    // the link port of shard1 is taken, Brickd must not start
+    Vertx vertx = Vertx.vertx();
+    Async async = context.async();
+    vertx.deployVerticle("org.m1theo.tfemulator.Brickd",
+        new DeploymentOptions().setConfig(shard("e3", 1239, 1240)), res -> {
+          context.assertTrue(res.failed());
+          vertx.close(context.asyncAssertSuccess(v -> async.complete()));
+        });
+  }
+
+  @Test
+  public void testThroughFront(TestContext context) {
+    Async async = context.async();
+    Set<Integer> enumerated = new HashSet<>();
+    boolean[] identity = new boolean[1];
+    int[] callbacks = new int[1];
+    front.createNetClient().connect(PORT, HOST, res -> {
+      NetSocket socket = res.result();
+      socket.handler(new FrameDecoder(packet -> {
+        if (packet.getFunctionId() == CommonServices.CALLBACK_ENUMERATE) {
+          enumerated.add(packet.getUidValue());
+        } else if (packet.getFunctionId() == BrickletTemperature.FUNCTION_GET_IDENTITY) {
+          context.assertEquals((int) Utils.uid2long(UID2), packet.getUidValue());
+          context.assertEquals((byte) 5, packet.getSequenceNumber());
+          identity[0] = true;
+        } else if (packet.getFunctionId() == BrickletTemperature.CALLBACK_TEMPERATURE) {
+          context.assertEquals((int) Utils.uid2long(UID1), packet.getUidValue());
+          callbacks[0]++;
+        }
+        if (enumerated.size() == 2 && identity[0] && callbacks[0] >= 3) {
+          async.complete();
+        }
+      })::handle);
+      socket.write(Utils.createHeader(0, (byte) 8, CommonServices.FUNCTION_ENUMERATE,
+          (byte) 0x10, (byte) 0));
+      socket.write(Utils.createHeader(Utils.uid2long(UID2), (byte) 8,
+          BrickletTemperature.FUNCTION_GET_IDENTITY, (byte) 0x58, (byte) 0));
+      socket.write(Utils.createHeader(Utils.uid2long(UID1), (byte) 12,
+          BrickletTemperature.FUNCTION_SET_TEMPERATURE_CALLBACK_PERIOD, (byte) 0x10, (byte) 0)
+          .appendBytes(Utils.getUInt32(10)));
+    });
+  }
+}
@@ -0,0 +1,183 @@
+package org.m1theo.tfemulator.testshandmade;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.m1theo.tfemulator.OutboundQueue;
+import org.m1theo.tfemulator.SimulationClock;
+import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.devices.BrickletTemperature;
+import org.m1theo.tfemulator.protocol.FrameDecoder;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.NetClient;
+import io.vertx.core.net.NetSocket;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/*
+ * With the discrete clock an hour of callbacks with a period of one second arrives in a few
+ * seconds, the clock stands still until the client sets the period. A client that stops reading
+ * stops the clock as well, even the drop policy loses no callbacks. The getter and the callback
+ * report the same value at the same instant.
+ */
+@RunWith(VertxUnitRunner.class)
+public class SimulationClockTest {
+  private final static String UID = "a6";
+  private final static String HOST = "localhost";
+  private final static int PORT = 1234;
+  private final static long START = 1434000000000L;
+
+  Vertx vertx;
+  // kept, an unreachable NetClient closes its sockets when it is finalized
+  NetClient client;
+
+  @Before
+  public void before() {
+    vertx = Vertx.vertx();
+  }
+
+  @After
+  public void after(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  private void deploy(TestContext context, JsonObject outbound, Handler<Void> deployed) {
+    deploy(context, outbound, new JsonObject(), deployed);
+  }
+
+  private void deploy(TestContext context, JsonObject outbound, JsonObject values,
+      Handler<Void> deployed) {
+    JsonObject emuconfig = new JsonObject()
+        .put("clock", new JsonObject().put("mode", "discrete").put("start", START))
+        .put("outbound", outbound)
+        .put("devices", new JsonArray().add(new JsonObject().put("type", "BrickletTemperature")
+            .put("uid", UID).put("enabled", true).put("values", values)));
+    DeploymentOptions deploymentOptions = new DeploymentOptions().setConfig(emuconfig);
+    vertx.deployVerticle("org.m1theo.tfemulator.Brickd", deploymentOptions,
+        context.asyncAssertSuccess(id -> deployed.handle(null)));
+  }
+
+  private static Buffer setPeriod(long period) {
+    return Utils.createHeader(Utils.uid2long(UID), (byte) 12,
+        BrickletTemperature.FUNCTION_SET_TEMPERATURE_CALLBACK_PERIOD, (byte) 0x18, (byte) 0)
+        .appendBytes(Utils.getUInt32(period));
+  }
+
+  @Test
+  public void testDiscreteClock(TestContext context) {
+    deploy(context, new JsonObject(), v -> vertx.setTimer(500, t -> discreteClock(context)));
+  }
+
+  private void discreteClock(TestContext context) {
+    SimulationClock clock = SimulationClock.get(vertx);
+    context.assertEquals(SimulationClock.Mode.DISCRETE, clock.mode());
+    context.assertEquals(START, clock.now());
+    AtomicInteger callbacks = new AtomicInteger();
+    long started = System.currentTimeMillis();
+    Async async = context.async();
+    FrameDecoder decoder = new FrameDecoder(packet -> {
+      if (packet.getFunctionId() == BrickletTemperature.CALLBACK_TEMPERATURE
+          && callbacks.incrementAndGet() == 3600) {
+        // the clock may already be a few deadlines further when we read the packet
+        long now = clock.now();
+        context.assertTrue(now >= START + 3600 * 1000, "clock: " + now);
+        context.assertTrue(System.currentTimeMillis() - started < 60000);
+        async.complete();
+      }
+    });
+    client = vertx.createNetClient();
+    client.connect(PORT, HOST, res -> {
+      NetSocket socket = res.result();
+      socket.handler(decoder::handle);
+      socket.write(setPeriod(1000));
+    });
+  }
+
+  @Test
+  public void testSlowReader(TestContext context) {
+    int count = 500;
+    // the packets wait in the queue for the delayed flush
+    JsonObject outbound = new JsonObject().put("maxDelay", 5).put("policy", "drop")
+        .put("highWatermark", 1024)
+        .put("lowWatermark", 256).put("writeQueueMaxSize", 1024);
+    Async async = context.async();
+    deploy(context, outbound, v -> {
+      SimulationClock clock = SimulationClock.get(vertx);
+      OutboundQueue.Stats stats = OutboundQueue.Stats.get(vertx);
+      AtomicInteger callbacks = new AtomicInteger();
+      FrameDecoder decoder = new FrameDecoder(packet -> {
+        if (packet.getFunctionId() == BrickletTemperature.CALLBACK_TEMPERATURE
+            && callbacks.incrementAndGet() == count) {
+          context.assertEquals(0L, stats.dropped());
+          async.complete();
+        }
+      });
+      client = vertx.createNetClient();
+      client.connect(PORT, HOST, context.asyncAssertSuccess(socket -> {
+        socket.handler(decoder::handle);
+        socket.write(setPeriod(1));
+        // reads for 20 ms out of every 100 ms
+        int[] ticks = new int[1];
+        vertx.setPeriodic(20, id -> {
+          if (callbacks.get() >= count) {
+            vertx.cancelTimer(id);
+            return;
+          }
+          context.assertEquals(0L, stats.dropped(), "clock: " + (clock.now() - START));
+          if (++ticks[0] % 5 == 0) {
+            socket.resume();
+          } else {
+            socket.pause();
+          }
+        });
+      }));
+    });
+  }
+
+  @Test
+  public void testGetterMatchesCallback(TestContext context) {
+    int count = 10;
+    JsonObject values = new JsonObject().put("temperature",
+        new JsonObject().put("generator", "walk").put("start", 2000).put("step", 50));
+    Async async = context.async();
+    deploy(context, new JsonObject(), values, v -> {
+      SimulationClock clock = SimulationClock.get(vertx);
+      Buffer getTemperature = Utils.createHeader(Utils.uid2long(UID), (byte) 8,
+          BrickletTemperature.FUNCTION_GET_TEMPERATURE, (byte) 0x28, (byte) 0);
+      int[] callbacks = new int[1];
+      short[] last = new short[1];
+      client = vertx.createNetClient();
+      client.connect(PORT, HOST, context.asyncAssertSuccess(socket -> {
+        socket.handler(new FrameDecoder(packet -> {
+          byte functionId = packet.getFunctionId();
+          if (functionId == BrickletTemperature.CALLBACK_TEMPERATURE) {
+            last[0] = Short.reverseBytes(packet.copyPayload().getShort(0));
+            if (++callbacks[0] == count) {
+              // the clock stands still at the last deadline
+              socket.write(setPeriod(0));
+            }
+          } else if (functionId == BrickletTemperature.FUNCTION_SET_TEMPERATURE_CALLBACK_PERIOD
+              && callbacks[0] >= count) {
+            // a step may still be under way
+            vertx.setTimer(200, t -> socket.write(getTemperature));
+          } else if (functionId == BrickletTemperature.FUNCTION_GET_TEMPERATURE) {
+            context.assertEquals(START + 1000L * callbacks[0], clock.now());
+            context.assertEquals(last[0], Short.reverseBytes(packet.copyPayload().getShort(0)));
+            async.complete();
+          }
+        }));
+        socket.write(setPeriod(1000));
+      }));
+    });
+  }
+}
@@ -0,0 +1,113 @@
+package org.m1theo.tfemulator.testshandmade;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.m1theo.tfemulator.CommonServices;
+import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.protocol.FrameDecoder;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/*
+ * Brickd is deployed once it listens, and it only listens when all devices are there: a client
+ * connecting right away enumerates all of them. A device that fails to deploy fails Brickd, unless
+ * partialStart is set.
+ */
+@RunWith(VertxUnitRunner.class)
+public class StartupTest {
+  private final static String HOST = "localhost";
+  private final static int PORT = 1234;
+  private final static int DEVICES = 500;
+
+  Vertx vertx;
+
+  @After
+  public void after(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  @Test
+  public void testListensWhenReady(TestContext context) {
+    JsonArray devices = new JsonArray();
+    for (int i = 0; i < DEVICES; i++) {
+      devices.add(new JsonObject()
+          .put("type", i % 2 == 0 ? "BrickletTemperature" : "BrickletHumidity")
+          .put("uid", Utils.base58Encode(100000 + i)).put("enabled", true));
+    }
+    // not deployed
+    devices.add(
+        new JsonObject().put("type", "BrickletUnknown").put("uid", "1").put("enabled", true));
+    JsonObject emuconfig =
+        new JsonObject().put("deployBatchSize", 64).put("devices", devices);
+    vertx = Vertx.vertx();
+    Async async = context.async();
+    Set<Integer> enumerated = new HashSet<>();
+    vertx.deployVerticle("org.m1theo.tfemulator.Brickd",
+        new DeploymentOptions().setConfig(emuconfig), context.asyncAssertSuccess(id -> {
+          vertx.createNetClient().connect(PORT, HOST, context.asyncAssertSuccess(socket -> {
+            socket.handler(new FrameDecoder(packet -> {
+              if (packet.getFunctionId() == CommonServices.CALLBACK_ENUMERATE
+                  && enumerated.add(packet.getUidValue()) && enumerated.size() == DEVICES) {
+                async.complete();
+              }
+            })::handle);
+            socket.write(Utils.createHeader(0, (byte) 8, CommonServices.FUNCTION_ENUMERATE,
+                (byte) 0x10, (byte) 0));
+          }));
+        }));
+  }
+
+  @Test
+  public void testPortInUse(TestContext context) throws IOException {
+    vertx = Vertx.vertx();
+    JsonObject emuconfig = new JsonObject().put("devices", new JsonArray());
+    ServerSocket blocker = new ServerSocket(PORT);
+    vertx.deployVerticle("org.m1theo.tfemulator.Brickd",
+        new DeploymentOptions().setConfig(emuconfig), context.asyncAssertFailure(cause -> {
+          try {
+            blocker.close();
+          } catch (IOException e) {
+            context.fail(e);
+          }
+        }));
+  }
+
+  private static JsonObject failingDevices() {
+    // the device fails in start()
+    JsonObject values = new JsonObject().put("temperature",
+        new JsonObject().put("generator", "unknown"));
+    return new JsonObject().put("devices", new JsonArray()
+        .add(new JsonObject().put("type", "BrickletTemperature").put("uid", "h4")
+            .put("enabled", true))
+        .add(new JsonObject().put("type", "BrickletTemperature").put("uid", "h5")
+            .put("enabled", true).put("values", values)));
+  }
+
+  @Test
+  public void testFailedDeployment(TestContext context) {
+    vertx = Vertx.vertx();
+    vertx.deployVerticle("org.m1theo.tfemulator.Brickd",
+        new DeploymentOptions().setConfig(failingDevices()), context.asyncAssertFailure(
+            cause -> context.assertEquals("1 of 3 deployments failed", cause.getMessage())));
+  }
+
+  @Test
+  public void testPartialStart(TestContext context) {
+    vertx = Vertx.vertx();
+    vertx.deployVerticle("org.m1theo.tfemulator.Brickd",
+        new DeploymentOptions().setConfig(failingDevices().put("partialStart", true)),
+        context.asyncAssertSuccess());
+  }
+}
@@ -0,0 +1,122 @@
+package org.m1theo.tfemulator.testshandmade;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.devices.BrickletTemperature;
+import org.m1theo.tfemulator.protocol.FrameDecoder;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.NetSocket;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/*
+ * The reached callback is sent while the temperature meets the threshold, at most once per
+ * debounce period.
+ */
+@RunWith(VertxUnitRunner.class)
+public class ThresholdCallbackTest {
+  private final static String UID = "a3";
+  private final static String HOST = "localhost";
+  private final static int PORT = 1234;
+
+  Vertx vertx;
+
+  @Before
+  public void before(TestContext context) {
+    JsonObject emuconfig = new JsonObject().put("devices", new JsonArray().add(
+        new JsonObject().put("type", "BrickletTemperature").put("uid", UID).put("enabled", true)));
+    DeploymentOptions deploymentOptions = new DeploymentOptions().setConfig(emuconfig);
+
+    vertx = Vertx.vertx();
+    Async async = context.async();
+    vertx.deployVerticle("org.m1theo.tfemulator.Brickd", deploymentOptions, res -> {
+      vertx.setTimer(500, t -> async.complete());
+    });
+  }
+
+  @After
+  public void after(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  private Buffer setThreshold(char option, short min, short max) {
+    return Utils.createHeader(Utils.uid2long(UID), (byte) 13,
+        BrickletTemperature.FUNCTION_SET_TEMPERATURE_CALLBACK_THRESHOLD, (byte) 0x18, (byte) 0)
+        .appendByte((byte) option).appendShort(Short.reverseBytes(min))
+        .appendShort(Short.reverseBytes(max));
+  }
+
+  private Buffer setDebouncePeriod(long period) {
+    return Utils.createHeader(Utils.uid2long(UID), (byte) 12,
+        BrickletTemperature.FUNCTION_SET_DEBOUNCE_PERIOD, (byte) 0x18, (byte) 0)
+        .appendBytes(Utils.getUInt32(period));
+  }
+
+  private FrameDecoder countReached(TestContext context, AtomicInteger reached) {
+    return new FrameDecoder(packet -> {
+      if (packet.getFunctionId() == BrickletTemperature.CALLBACK_TEMPERATURE_REACHED) {
+        context.assertEquals(10, packet.getLength());
+        context.assertEquals((short) 100,
+            Short.reverseBytes(packet.getBuffer().getShort(packet.getOffset() + 8)));
+        reached.incrementAndGet();
+      }
+    });
+  }
+
+  @Test
+  public void testDebounce(TestContext context) {
+    AtomicInteger reached = new AtomicInteger();
+    Async async = context.async();
+    vertx.createNetClient().connect(PORT, HOST, res -> {
+      NetSocket socket = res.result();
+      socket.handler(countReached(context, reached)::handle);
+      socket.write(setDebouncePeriod(50));
+      // the emulated temperature is 100
+      socket.write(setThreshold('>', (short) 50, (short) 0));
+      vertx.setTimer(300, t1 -> {
+        int running = reached.get();
+        context.assertTrue(running >= 3 && running <= 7, "callbacks: " + running);
+        socket.write(setThreshold('x', (short) 0, (short) 0));
+        vertx.setTimer(100, t2 -> {
+          int stopped = reached.get();
+          vertx.setTimer(200, t3 -> {
+            context.assertEquals(stopped, reached.get());
+            async.complete();
+          });
+        });
+      });
+    });
+  }
+
+  @Test
+  public void testOptions(TestContext context) {
+    AtomicInteger reached = new AtomicInteger();
+    Async async = context.async();
+    vertx.createNetClient().connect(PORT, HOST, res -> {
+      NetSocket socket = res.result();
+      socket.handler(countReached(context, reached)::handle);
+      socket.write(setThreshold('<', (short) 50, (short) 0));
+      socket.write(setThreshold('o', (short) 0, (short) 200));
+      vertx.setTimer(200, t1 -> {
+        context.assertEquals(0, reached.get());
+        socket.write(setThreshold('i', (short) 0, (short) 200));
+        vertx.setTimer(200, t2 -> {
+          // the first one is sent right away, the default debounce period is 100 ms
+          context.assertTrue(reached.get() >= 1, "callbacks: " + reached.get());
+          async.complete();
+        });
+      });
+    });
+  }
+}
@@ -0,0 +1,103 @@
+package org.m1theo.tfemulator.testshandmade;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.m1theo.tfemulator.callbacks.TimingWheel;
+
+/*
+ * Timeouts expire exactly at their deadline, also when they have to be cascaded down from the
+ * upper levels of the wheel.
+ */
+public class TimingWheelTest {
+
+  static class Recorder extends TimingWheel.Timeout {
+    final List<Long> expired = new ArrayList<>();
+
+    @Override
+    protected void expire(long now) {
+      expired.add(now);
+    }
+  }
+
+  @Test
+  public void testDeadlinesOnAllLevels() {
+    TimingWheel wheel = new TimingWheel(100);
+    long[] deadlines = {100, 101, 355, 356, 70000, 16777300, 16777316};
+    List<Recorder> timeouts = new ArrayList<>();
+    for (long deadline : deadlines) {
+      Recorder timeout = new Recorder();
+      wheel.schedule(timeout, deadline);
+      timeouts.add(timeout);
+    }
+    assertEquals(deadlines.length, wheel.size());
+    for (long now = 100; now <= 16777400; now += 97) {
+      wheel.advance(now);
+    }
+    assertTrue(wheel.isEmpty());
+    for (int i = 0; i < deadlines.length; i++) {
+      assertEquals(1, timeouts.get(i).expired.size());
+      assertEquals(deadlines[i], (long) timeouts.get(i).expired.get(0));
+    }
+  }
+
+  @Test
+  public void testCancelAndReschedule() {
+    TimingWheel wheel = new TimingWheel(0);
+    Recorder cancelled = new Recorder();
+    Recorder moved = new Recorder();
+    wheel.schedule(cancelled, 300);
+    wheel.schedule(moved, 300);
+    wheel.cancel(cancelled);
+    wheel.schedule(moved, 1000);
+    assertFalse(cancelled.isScheduled());
+    assertEquals(1, wheel.size());
+    wheel.advance(999);
+    assertTrue(moved.expired.isEmpty());
+    wheel.advance(1000);
+    assertTrue(cancelled.expired.isEmpty());
+    assertEquals(1000L, (long) moved.expired.get(0));
+  }
+
+  @Test
+  public void testRescheduleFromExpire() {
+    TimingWheel wheel = new TimingWheel(0);
+    List<Long> expired = new ArrayList<>();
+    TimingWheel.Timeout periodic = new TimingWheel.Timeout() {
+      @Override
+      protected void expire(long now) {
+        expired.add(now);
+        wheel.schedule(this, deadline() + 100);
+      }
+    };
+    wheel.schedule(periodic, 100);
+    wheel.advance(1000);
+    assertEquals(10, expired.size());
+    assertEquals(1000L, (long) expired.get(9));
+    assertEquals(1, wheel.size());
+  }
+
+  @Test
+  public void testNextEventJumpsToDeadlines() {
+    TimingWheel wheel = new TimingWheel(1);
+    assertEquals(Long.MAX_VALUE, wheel.nextEvent());
+    Recorder timeout = new Recorder();
+    wheel.schedule(timeout, 100000);
+    // advancing from event to event expires the timeout at its deadline in a few steps
+    int steps = 0;
+    while (timeout.expired.isEmpty()) {
+      long next = wheel.nextEvent();
+      assertTrue(next <= 100000);
+      wheel.advance(next);
+      steps++;
+    }
+    assertEquals(100000L, (long) timeout.expired.get(0));
+    assertTrue("steps: " + steps, steps < 1000);
+    assertEquals(Long.MAX_VALUE, wheel.nextEvent());
+  }
+}
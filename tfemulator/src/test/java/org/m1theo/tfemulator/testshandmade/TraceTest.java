@@ -0,0 +1,92 @@
+package org.m1theo.tfemulator.testshandmade;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.m1theo.tfemulator.BrickdException;
+import org.m1theo.tfemulator.values.TraceConverter;
+import org.m1theo.tfemulator.values.TraceFile;
+import org.m1theo.tfemulator.values.TraceFile.ColumnType;
+import org.m1theo.tfemulator.values.ValueSource;
+
+import io.vertx.core.json.JsonObject;
+
+/*
+ * A CSV converted to a trace file is played back at the speed of the clock, seek() finds the rows
+ * across the index strides.
+ */
+public class TraceTest {
+  // more than two index strides
+  private final static int ROWS = 3000;
+  private final static long START = 1434000000000L;
+
+  Path csv;
+  Path trace;
+
+  @Before
+  public void before() throws IOException, BrickdException {
+    csv = Files.createTempFile("trace", ".csv");
+    trace = Files.createTempFile("trace", ".trace");
+    StringBuilder lines = new StringBuilder("timestamp,temperature,humidity\n");
+    for (int i = 0; i < ROWS; i++) {
+      // one reading every 10 s, humidity only every other row
+      lines.append(START + i * 10000L).append(',').append(2000 + i).append(',')
+          .append(i % 2 == 0 ? String.valueOf(i / 2 + 0.5) : "").append('\n');
+    }
+    Files.write(csv, lines.toString().getBytes(StandardCharsets.UTF_8));
+    TraceConverter.convert(csv, trace,
+        Collections.singletonMap("temperature", ColumnType.INT16));
+  }
+
+  @After
+  public void after() throws IOException {
+    Files.deleteIfExists(csv);
+    Files.deleteIfExists(trace);
+  }
+
+  @Test
+  public void testSeek() throws BrickdException {
+    TraceFile file = TraceFile.open(trace.toString());
+    assertEquals(ROWS, file.rows());
+    int temperature = file.column("temperature");
+    int humidity = file.column("humidity");
+    assertEquals(0, file.seek(START - 1));
+    assertEquals(0, file.seek(START + 9999));
+    assertEquals(1024, file.seek(START + 10240000));
+    assertEquals(2500, file.seek(START + 25000005));
+    assertEquals(ROWS - 1, file.seek(Long.MAX_VALUE));
+    assertEquals(4500, file.value(temperature, 2500), 0);
+    // the empty value repeats the one before
+    assertEquals(1250.5, file.value(humidity, 2501), 0);
+  }
+
+  @Test
+  public void testPlayback() throws BrickdException {
+    AtomicLong clock = new AtomicLong(5000);
+    JsonObject conf = new JsonObject().put("generator", "trace").put("file", trace.toString())
+        .put("column", "temperature").put("start", START + 1000 * 10000L).put("speed", 10.0);
+    ValueSource source = ValueSource.create(conf, new SplittableRandom(), clock::get);
+    assertEquals(3000, source.next(), 0);
+    // 10 times as fast: one row per second
+    clock.addAndGet(1000);
+    assertEquals(3001, source.next(), 0);
+    clock.addAndGet(999);
+    assertEquals(3001, source.next(), 0);
+    // far ahead, past the next index stride
+    clock.addAndGet(1500001);
+    assertEquals(4502, source.next(), 0);
+    // at the end it starts over at start
+    clock.addAndGet(500000);
+    assertEquals(3002, source.next(), 0);
+  }
+}
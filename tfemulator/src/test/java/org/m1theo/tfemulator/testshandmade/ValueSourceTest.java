@@ -0,0 +1,152 @@
+package org.m1theo.tfemulator.testshandmade;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.m1theo.tfemulator.BrickdException;
+import org.m1theo.tfemulator.DeviceConfig;
+import org.m1theo.tfemulator.Utils;
+import org.m1theo.tfemulator.devices.BrickletTemperature;
+import org.m1theo.tfemulator.protocol.FrameDecoder;
+import org.m1theo.tfemulator.values.DeviceValues;
+import org.m1theo.tfemulator.values.ValueSource;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.NetSocket;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/*
+ * The configured value generators: the same seed gives the same values, the bounds are kept, the
+ * users of a value share one sample per clock time and the devices answer with the configured
+ * values.
+ */
+@RunWith(VertxUnitRunner.class)
+public class ValueSourceTest {
+  private final static String UID = "a5";
+  private final static String HOST = "localhost";
+  private final static int PORT = 1234;
+
+  Vertx vertx;
+
+  @Before
+  public void before(TestContext context) {
+    JsonObject values = new JsonObject().put("temperature",
+        new JsonObject().put("generator", "constant").put("value", 2150));
+    JsonObject emuconfig = new JsonObject().put("devices",
+        new JsonArray().add(new JsonObject().put("type", "BrickletTemperature").put("uid", UID)
+            .put("enabled", true).put("values", values)));
+    DeploymentOptions deploymentOptions = new DeploymentOptions().setConfig(emuconfig);
+
+    vertx = Vertx.vertx();
+    Async async = context.async();
+    vertx.deployVerticle("org.m1theo.tfemulator.Brickd", deploymentOptions, res -> {
+      vertx.setTimer(500, t -> async.complete());
+    });
+  }
+
+  @After
+  public void after(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  private static DeviceConfig device(long seed, JsonObject values) {
+    return new DeviceConfig(
+        new JsonObject().put("uid", "b1").put("seed", seed).put("values", values));
+  }
+
+  // a millisecond later on every call, each next() takes a new sample
+  private static LongSupplier ticking() {
+    long[] time = {0};
+    return () -> time[0]++;
+  }
+
+  @Test
+  public void testSameSeedSameValues(TestContext context) throws BrickdException {
+    JsonObject values = new JsonObject()
+        .put("acceleration", new JsonObject().put("generator", "gaussian").put("stddev", 50))
+        .put("default", new JsonObject().put("generator", "uniform").put("min", 0).put("max", 10));
+    ValueSource[] first = new DeviceValues(device(7, values), ticking()).sources("acceleration", 3);
+    ValueSource[] second =
+        new DeviceValues(device(7, values), ticking()).sources("acceleration", 3);
+    ValueSource[] other = new DeviceValues(device(8, values), ticking()).sources("acceleration", 3);
+    boolean differs = false;
+    for (int i = 0; i < 100; i++) {
+      for (int field = 0; field < 3; field++) {
+        double value = first[field].next();
+        context.assertEquals(value, second[field].next());
+        differs |= value != other[field].next();
+      }
+    }
+    context.assertTrue(differs);
+  }
+
+  @Test
+  public void testBounds(TestContext context) throws BrickdException {
+    JsonObject values = new JsonObject()
+        .put("temperature", new JsonObject().put("generator", "walk").put("start", 50)
+            .put("step", 7).put("min", 0).put("max", 60))
+        .put("default", new JsonObject().put("generator", "uniform").put("min", -5).put("max", 5));
+    DeviceValues deviceValues = new DeviceValues(device(1, values), ticking());
+    ValueSource walk = deviceValues.sources("temperature", 1)[0];
+    ValueSource uniform = deviceValues.sources("illuminance", 1)[0];
+    for (int i = 0; i < 10000; i++) {
+      double value = walk.next();
+      context.assertTrue(value >= 0 && value <= 60, "walk out of bounds: " + value);
+      value = uniform.next();
+      context.assertTrue(value >= -5 && value < 5, "uniform out of bounds: " + value);
+    }
+  }
+
+  @Test
+  public void testSharedSample(TestContext context) throws BrickdException {
+    JsonObject values = new JsonObject().put("temperature",
+        new JsonObject().put("generator", "gaussian").put("stddev", 50));
+    AtomicLong clock = new AtomicLong();
+    DeviceValues deviceValues = new DeviceValues(device(1, values), clock::get);
+    // the getter and the callbacks
+    ValueSource[] getter = deviceValues.sources("temperature", 1);
+    ValueSource[] callback = deviceValues.sources("temperature", 1);
+    context.assertTrue(getter == callback);
+    double value = getter[0].next();
+    context.assertEquals(value, callback[0].next());
+    context.assertEquals(value, getter[0].next());
+    clock.incrementAndGet();
+    double next = callback[0].next();
+    context.assertNotEquals(value, next);
+    context.assertEquals(next, getter[0].next());
+  }
+
+  @Test
+  public void testUnconfiguredIsConstant(TestContext context) throws BrickdException {
+    ValueSource source = new DeviceValues(device(1, new JsonObject()), () -> 0)
+        .sources("temperature", 1)[0];
+    context.assertEquals(ValueSource.DEFAULT_VALUE, source.next());
+  }
+
+  @Test
+  public void testConfiguredGetter(TestContext context) {
+    Buffer getTemperature = Utils.createHeader(Utils.uid2long(UID), (byte) 8,
+        BrickletTemperature.FUNCTION_GET_TEMPERATURE, (byte) 0x18, (byte) 0);
+    Async async = context.async();
+    FrameDecoder decoder = new FrameDecoder(packet -> {
+      context.assertEquals(BrickletTemperature.FUNCTION_GET_TEMPERATURE, packet.getFunctionId());
+      context.assertEquals((short) 2150, Short.reverseBytes(packet.copyPayload().getShort(0)));
+      async.complete();
+    });
+    vertx.createNetClient().connect(PORT, HOST, res -> {
+      NetSocket socket = res.result();
+      socket.handler(decoder::handle);
+      socket.write(getTemperature);
+    });
+  }
+}